@@ -24,6 +24,7 @@ import java.awt.image.WritableRaster;
 
 import mpicbg.trakem2.transform.TransformMeshMappingWithMasks.ImageProcessorWithMasks;
 
+import org.janelia.alignment.mipmap.CanvasLoadingPool;
 import org.janelia.alignment.util.ImageProcessorCache;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -89,6 +90,27 @@ public class ArgbRenderer {
         Renderer.renderToBufferedImage(renderParameters, targetImage, imageProcessorCache, CONVERTER);
     }
 
+    /**
+     * Constructs a renderer instance and renders to the specified image,
+     * concurrently loading source tiles with the specified pool.
+     *
+     * @param  renderParameters     specifies what to render.
+     * @param  targetImage          target for rendered result.
+     * @param  imageProcessorCache  cache of source tile data.
+     * @param  canvasLoadingPool    pool for concurrently loading source tiles
+     *                              (or null if tiles should be loaded sequentially).
+     *
+     * @throws IllegalArgumentException
+     *   if rendering fails for any reason.
+     */
+    public static void render(final RenderParameters renderParameters,
+                              final BufferedImage targetImage,
+                              final ImageProcessorCache imageProcessorCache,
+                              final CanvasLoadingPool canvasLoadingPool)
+            throws IllegalArgumentException {
+        Renderer.renderToBufferedImage(renderParameters, targetImage, imageProcessorCache, canvasLoadingPool, CONVERTER);
+    }
+
     /**
      * Constructs a renderer instance and renders an image optionally pre-filled with noise.
      *
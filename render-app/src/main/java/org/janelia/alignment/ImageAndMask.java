@@ -150,7 +150,12 @@ public class ImageAndMask implements Serializable {
         if ((scheme == null) || FILE_SCHEME.equals(scheme)) {
             final File file;
             try {
-                file = new File(uri);
+                if (uri.getFragment() == null) {
+                    file = new File(uri);
+                } else {
+                    // fragments identify content within a file (e.g. a level within a mipmap pyramid file)
+                    file = new File(uri.getPath());
+                }
             } catch (final Exception e) {
                 throw new IllegalArgumentException("failed to convert '" + uri + "' to a file reference", e);
             }
@@ -432,6 +432,56 @@ public class RenderParameters implements Serializable {
 
     }
 
+    /**
+     * Builds a copy of these parameters for a (typically smaller) region that only includes
+     * the specified tile specs.  This allows parameters retrieved for a large region
+     * to be sliced into many smaller render requests without re-retrieving any tile data.
+     * Tile specs are shared (not copied), so they should not be modified after slicing.
+     *
+     * @param  regionX          left coordinate of the region.
+     * @param  regionY          top coordinate of the region.
+     * @param  regionWidth      width of the region.
+     * @param  regionHeight     height of the region.
+     * @param  regionTileSpecs  tile specs to render for the region.
+     *
+     * @return parameters for rendering the specified region.
+     */
+    public RenderParameters copyForRegion(final double regionX,
+                                          final double regionY,
+                                          final int regionWidth,
+                                          final int regionHeight,
+                                          final List<TileSpec> regionTileSpecs) {
+
+        final RenderParameters copy =
+                new RenderParameters(null, regionX, regionY, regionWidth, regionHeight, scale);
+
+        copy.meshCellSize = meshCellSize;
+        copy.minMeshCellSize = minMeshCellSize;
+        copy.in = in;
+        copy.out = out;
+        copy.areaOffset = areaOffset;
+        copy.minIntensity = minIntensity;
+        copy.maxIntensity = maxIntensity;
+        copy.convertToGray = convertToGray;
+        copy.quality = quality;
+        copy.numberOfThreads = numberOfThreads;
+        copy.skipInterpolation = skipInterpolation;
+        copy.binaryMask = binaryMask;
+        copy.excludeMask = excludeMask;
+        copy.doFilter = doFilter;
+        copy.backgroundRGBColor = backgroundRGBColor;
+        copy.channels = channels;
+        copy.mipmapPathBuilder = mipmapPathBuilder;
+        copy.setFilterSpecs(filterSpecs);
+        copy.minBoundsMeshCellSize = minBoundsMeshCellSize;
+
+        copy.tileSpecs.addAll(regionTileSpecs);
+
+        copy.initializeDerivedValues();
+
+        return copy;
+    }
+
     /**
      * Initialize derived parameter values.
      */
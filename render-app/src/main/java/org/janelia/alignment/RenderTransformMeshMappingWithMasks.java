@@ -17,8 +17,6 @@
 package org.janelia.alignment;
 
 import java.util.ArrayList;
-import java.util.List;
-import java.util.concurrent.atomic.AtomicInteger;
 
 import mpicbg.models.AffineModel2D;
 import mpicbg.trakem2.util.Pair;
@@ -44,57 +42,53 @@ public class RenderTransformMeshMappingWithMasks {
         map(pixelMapper, Runtime.getRuntime().availableProcessors());
     }
 
+    /**
+     * Maps all triangles using the {@link TriangleMappingPool#getSharedInstance() shared pool}
+     * when more than one thread is requested.
+     *
+     * @param  pixelMapper  mapper for triangle pixels.
+     * @param  numThreads   maximum number of threads to use for this mapping.
+     */
     public final void map(final PixelMapper pixelMapper,
                           final int numThreads) {
+        map(pixelMapper, numThreads, TriangleMappingPool.getSharedInstance());
+    }
+
+    /**
+     * Maps all triangles using the specified pool when more than one thread is requested.
+     *
+     * @param  pixelMapper          mapper for triangle pixels.
+     * @param  numThreads           maximum number of threads to use for this mapping.
+     * @param  triangleMappingPool  pool of reusable mapping threads.
+     */
+    public final void map(final PixelMapper pixelMapper,
+                          final int numThreads,
+                          final TriangleMappingPool triangleMappingPool) {
 
         final ArrayList<Pair<AffineModel2D, double[][]>> av = transform.getAV();
+        final ScanlineTriangleRasterizer rasterizer = new ScanlineTriangleRasterizer(pixelMapper);
         if (numThreads > 1) {
-            final AtomicInteger i = new AtomicInteger(0);
-            final ArrayList<Thread> threads = new ArrayList<>(numThreads);
-            for (int k = 0; k < numThreads; ++k) {
-                final Thread mtt = new MapTriangleThread(i, av, pixelMapper);
-                threads.add(mtt);
-                mtt.start();
-            }
-            for (final Thread mtt : threads) {
-                try {
-                    mtt.join();
-                } catch (final InterruptedException e) {
-                    LOG.warn("ignoring exception", e);
-                }
-            }
+            triangleMappingPool.map(av, rasterizer, numThreads);
         } else {
             for (final Pair<AffineModel2D, double[][]> triangle : av) {
-                mapTriangle(triangle, pixelMapper);
-            }
-        }
-    }
-
-    private static final class MapTriangleThread extends Thread {
-        private final AtomicInteger i;
-        private final List<Pair<AffineModel2D, double[][]>> triangles;
-        private final PixelMapper pixelMapper;
-
-        MapTriangleThread(final AtomicInteger i,
-                          final List<Pair<AffineModel2D, double[][]>> triangles,
-                          final PixelMapper pixelMapper) {
-            this.i = i;
-            this.triangles = triangles;
-            this.pixelMapper = pixelMapper;
-        }
-
-        @Override
-        final public void run() {
-            int k = i.getAndIncrement();
-            while (!isInterrupted() && k < triangles.size()) {
-                mapTriangle(triangles.get(k), pixelMapper);
-                k = i.getAndIncrement();
+                rasterizer.mapTriangle(triangle);
             }
         }
     }
 
-    private static void mapTriangle(final Pair<AffineModel2D, double[][]> ai,
-                                    final PixelMapper pixelMapper) {
+    /**
+     * Maps a triangle by testing every pixel within its target bounding box and applying the
+     * full inverse affine to each pixel inside the triangle.
+     *
+     * This was the original mapping implementation.  It is now only used for tiny or degenerate
+     * triangles by the {@link ScanlineTriangleRasterizer} and is otherwise retained
+     * for regression testing and benchmark comparisons.
+     *
+     * @param  ai           triangle affine and source/target vertices.
+     * @param  pixelMapper  mapper for triangle pixels.
+     */
+    public static void mapTriangleWithBoundingBox(final Pair<AffineModel2D, double[][]> ai,
+                                                  final PixelMapper pixelMapper) {
 
         final int w = pixelMapper.getTargetWidth() - 1;
         final int h = pixelMapper.getTargetHeight() - 1;
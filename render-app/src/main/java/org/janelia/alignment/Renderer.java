@@ -24,6 +24,7 @@ import java.util.Set;
 import mpicbg.trakem2.transform.TransformMeshMappingWithMasks.ImageProcessorWithMasks;
 
 import org.janelia.alignment.mipmap.AveragedChannelMipmapSource;
+import org.janelia.alignment.mipmap.CanvasLoadingPool;
 import org.janelia.alignment.mipmap.MipmapSource;
 import org.janelia.alignment.mipmap.RenderedCanvasMipmapSource;
 import org.janelia.alignment.util.ImageProcessorCache;
@@ -57,6 +58,7 @@ public class Renderer {
 
     private final RenderParameters renderParameters;
     private final ImageProcessorCache imageProcessorCache;
+    private final CanvasLoadingPool canvasLoadingPool;
 
     /**
      * Creates a renderer instance.
@@ -66,8 +68,23 @@ public class Renderer {
      */
     public Renderer(final RenderParameters renderParameters,
                     final ImageProcessorCache imageProcessorCache) {
+        this(renderParameters, imageProcessorCache, null);
+    }
+
+    /**
+     * Creates a renderer instance.
+     *
+     * @param  renderParameters     specifies what to render.
+     * @param  imageProcessorCache  cache of source tile data.
+     * @param  canvasLoadingPool    pool for concurrently loading source tiles
+     *                              (or null if tiles should be loaded sequentially).
+     */
+    public Renderer(final RenderParameters renderParameters,
+                    final ImageProcessorCache imageProcessorCache,
+                    final CanvasLoadingPool canvasLoadingPool) {
         this.renderParameters = renderParameters;
         this.imageProcessorCache = imageProcessorCache;
+        this.canvasLoadingPool = canvasLoadingPool;
     }
 
     /**
@@ -127,7 +144,7 @@ public class Renderer {
 
         if (renderParameters.numberOfTileSpecs() > 0) {
             final RenderedCanvasMipmapSource renderedCanvasMipmapSource =
-                    new RenderedCanvasMipmapSource(renderParameters, imageProcessorCache);
+                    new RenderedCanvasMipmapSource(renderParameters, imageProcessorCache, canvasLoadingPool);
             canvasChannels = renderedCanvasMipmapSource.getChannels(0);
         } else {
             canvasChannels = new ChannelMap();
@@ -150,7 +167,7 @@ public class Renderer {
 
         if (renderParameters.numberOfTileSpecs() > 0) {
             final RenderedCanvasMipmapSource renderedCanvasMipmapSource =
-                    new RenderedCanvasMipmapSource(renderParameters, imageProcessorCache);
+                    new RenderedCanvasMipmapSource(renderParameters, imageProcessorCache, canvasLoadingPool);
 
             final MipmapSource canvas;
             final Set<String> channelNames = renderParameters.getChannelNames();
@@ -238,7 +255,29 @@ public class Renderer {
                                              final ImageProcessorCache imageProcessorCache,
                                              final ProcessorWithMasksConverter converter)
             throws IllegalArgumentException {
-        final Renderer renderer = new Renderer(renderParameters, imageProcessorCache);
+        renderToBufferedImage(renderParameters, targetImage, imageProcessorCache, null, converter);
+    }
+
+    /**
+     * Constructs a renderer instance and renders to the specified image.
+     *
+     * @param  renderParameters     specifies what to render.
+     * @param  targetImage          target for rendered result.
+     * @param  imageProcessorCache  cache of source tile data.
+     * @param  canvasLoadingPool    pool for concurrently loading source tiles
+     *                              (or null if tiles should be loaded sequentially).
+     * @param  converter            converts to the desired output type.
+     *
+     * @throws IllegalArgumentException
+     *   if rendering fails for any reason.
+     */
+    public static void renderToBufferedImage(final RenderParameters renderParameters,
+                                             final BufferedImage targetImage,
+                                             final ImageProcessorCache imageProcessorCache,
+                                             final CanvasLoadingPool canvasLoadingPool,
+                                             final ProcessorWithMasksConverter converter)
+            throws IllegalArgumentException {
+        final Renderer renderer = new Renderer(renderParameters, imageProcessorCache, canvasLoadingPool);
         renderer.renderToBufferedImage(converter, targetImage);
     }
 
@@ -0,0 +1,403 @@
+package org.janelia.alignment;
+
+import mpicbg.models.AffineModel2D;
+import mpicbg.trakem2.util.Pair;
+import mpicbg.util.Util;
+
+import org.janelia.alignment.mapper.MultiChannelMapper;
+import org.janelia.alignment.mapper.MultiChannelWithAlphaMapper;
+import org.janelia.alignment.mapper.MultiChannelWithBinaryMaskMapper;
+import org.janelia.alignment.mapper.PixelMapper;
+import org.janelia.alignment.mapper.SingleChannelMapper;
+import org.janelia.alignment.mapper.SingleChannelWithAlphaMapper;
+import org.janelia.alignment.mapper.SingleChannelWithBinaryMaskMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Maps the pixels of {@link RenderTransformMesh} triangles one scanline (row) at a time.
+ *
+ * The original bounding box implementation
+ * ({@link RenderTransformMeshMappingWithMasks#mapTriangleWithBoundingBox}) tests every pixel in a
+ * triangle's bounding box and applies the full inverse affine to every pixel inside the triangle.
+ * This implementation instead:
+ *
+ * <ul>
+ *     <li>derives each row's span from the triangle edges (only testing the span end points),</li>
+ *     <li>applies the inverse affine once per row and then simply adds the x derivatives for each pixel, and</li>
+ *     <li>maps each span with a loop that is specialized for the concrete mapper type so that
+ *         per pixel mapper calls stay monomorphic (and can be inlined by the JIT).</li>
+ * </ul>
+ *
+ * Mapped pixel sets are identical to the bounding box implementation.
+ * Source coordinates are calculated incrementally, so they can differ from the bounding box
+ * source coordinates by tiny floating point rounding errors.
+ *
+ * Instances are immutable and can be shared by multiple threads mapping different triangles.
+ *
+ * @author Eric Trautman
+ */
+public class ScanlineTriangleRasterizer {
+
+    /**
+     * Triangles with (twice) their area smaller than this are mapped with the bounding box implementation
+     * since they cover at most a pixel or two and since span derivation is not reliable for
+     * (nearly) degenerate triangles.
+     */
+    private static final double MIN_SCANLINE_DOUBLE_AREA = 1.0;
+
+    private final PixelMapper pixelMapper;
+    private final SpanMapper spanMapper;
+    private final int maxTargetX;
+    private final int maxTargetY;
+
+    /**
+     * @param  pixelMapper  mapper for triangle pixels.
+     */
+    public ScanlineTriangleRasterizer(final PixelMapper pixelMapper) {
+        this.pixelMapper = pixelMapper;
+        this.spanMapper = buildSpanMapper(pixelMapper);
+        this.maxTargetX = pixelMapper.getTargetWidth() - 1;
+        this.maxTargetY = pixelMapper.getTargetHeight() - 1;
+    }
+
+    /**
+     * Maps all target pixels within the specified triangle.
+     *
+     * @param  triangle  triangle affine and source/target vertices.
+     */
+    public void mapTriangle(final Pair<AffineModel2D, double[][]> triangle) {
+
+        final double[][] pq = triangle.b;
+
+        final double ax = pq[2][0];
+        final double ay = pq[3][0];
+        final double bx = pq[2][1];
+        final double by = pq[3][1];
+        final double cx = pq[2][2];
+        final double cy = pq[3][2];
+
+        final double doubleArea = (bx - ax) * (cy - ay) - (by - ay) * (cx - ax);
+        if (Math.abs(doubleArea) < MIN_SCANLINE_DOUBLE_AREA) {
+            RenderTransformMeshMappingWithMasks.mapTriangleWithBoundingBox(triangle, pixelMapper);
+            return;
+        }
+
+        // use the same (rounded and clipped) bounds as the bounding box implementation
+        final int minX = Math.max(0, Util.roundPos(Math.min(ax, Math.min(bx, cx))));
+        final int minY = Math.max(0, Util.roundPos(Math.min(ay, Math.min(by, cy))));
+        final int maxX = Math.min(maxTargetX, Util.roundPos(Math.max(ax, Math.max(bx, cx))));
+        final int maxY = Math.min(maxTargetY, Util.roundPos(Math.max(ay, Math.max(by, cy))));
+
+        if ((minX > maxX) || (minY > maxY)) {
+            return;
+        }
+
+        // forward affine is { m00, m10, m01, m11, m02, m12 }
+        final double[] m = new double[6];
+        triangle.a.toArray(m);
+
+        final double determinant = m[0] * m[3] - m[2] * m[1];
+        if (determinant == 0) {
+            LOG.warn("mapTriangle: ignoring triangle with non-invertible affine {}", triangle.a);
+            return;
+        }
+
+        final double i00 = m[3] / determinant;
+        final double i01 = -m[2] / determinant;
+        final double i10 = -m[1] / determinant;
+        final double i11 = m[0] / determinant;
+
+        final double[] span = new double[2];
+
+        for (int targetY = minY; targetY <= maxY; ++targetY) {
+
+            span[0] = Double.POSITIVE_INFINITY;
+            span[1] = Double.NEGATIVE_INFINITY;
+
+            addEdgeIntersection(ax, ay, bx, by, targetY, span);
+            addEdgeIntersection(bx, by, cx, cy, targetY, span);
+            addEdgeIntersection(cx, cy, ax, ay, targetY, span);
+
+            if (span[0] > span[1]) {
+                continue;
+            }
+
+            // Pad the derived span by a pixel to absorb rounding errors and then
+            // shrink it to the first and last pixels that pass the (bounding box) in-triangle test.
+            // Since the in-triangle test is monotonic along a row, all pixels in between also pass.
+            int startX = (int) Math.max(minX, Math.floor(span[0]) - 1);
+            int stopX = (int) Math.min(maxX, Math.ceil(span[1]) + 1);
+
+            while ((startX <= stopX) && (! RenderTransformMesh.isInTargetTriangle(pq, startX, targetY))) {
+                startX++;
+            }
+
+            while ((stopX > startX) && (! RenderTransformMesh.isInTargetTriangle(pq, stopX, targetY))) {
+                stopX--;
+            }
+
+            if (startX <= stopX) {
+                final double dx = startX - m[4];
+                final double dy = targetY - m[5];
+                spanMapper.mapSpan(i00 * dx + i01 * dy,
+                                   i10 * dx + i11 * dy,
+                                   i00,
+                                   i10,
+                                   startX,
+                                   stopX,
+                                   targetY);
+            }
+        }
+    }
+
+    /**
+     * Expands the specified span to include the x coordinate where the edge (x1, y1) - (x2, y2)
+     * intersects row y (if it intersects at all).
+     */
+    private static void addEdgeIntersection(final double x1,
+                                            final double y1,
+                                            final double x2,
+                                            final double y2,
+                                            final double y,
+                                            final double[] span) {
+
+        if (((y < y1) && (y < y2)) || ((y > y1) && (y > y2))) {
+            return;
+        }
+
+        if (y1 == y2) {
+            span[0] = Math.min(span[0], Math.min(x1, x2));
+            span[1] = Math.max(span[1], Math.max(x1, x2));
+        } else {
+            final double x = x1 + (y - y1) * (x2 - x1) / (y2 - y1);
+            span[0] = Math.min(span[0], x);
+            span[1] = Math.max(span[1], x);
+        }
+    }
+
+    /**
+     * Maps the pixels in one row span of a triangle.
+     */
+    private interface SpanMapper {
+
+        /**
+         * @param  sourceX   source x coordinate for the first target pixel in the span.
+         * @param  sourceY   source y coordinate for the first target pixel in the span.
+         * @param  dSourceX  change in source x for each target x increment.
+         * @param  dSourceY  change in source y for each target x increment.
+         * @param  startX    first target x in the span.
+         * @param  stopX     last target x in the span (inclusive).
+         * @param  targetY   target y for the span.
+         */
+        void mapSpan(final double sourceX,
+                     final double sourceY,
+                     final double dSourceX,
+                     final double dSourceY,
+                     final int startX,
+                     final int stopX,
+                     final int targetY);
+    }
+
+    /**
+     * Each returned span mapper has its own (copy of the) loop with a concretely typed mapper so that
+     * the JIT sees exactly one receiver type at each per pixel call site.
+     * The class comparisons are exact so that subclasses from elsewhere fall through to the generic loops.
+     *
+     * The loops are intentionally not factored into one shared loop (e.g. one that calls a method reference
+     * bound to the concrete mapper).  A shared loop has a single per pixel call site whose type profile
+     * collects every mapper type used in the JVM, so once a server has rendered with more than two mapper
+     * types the call becomes megamorphic and is no longer inlined.
+     * Use the {@code org.janelia.render.benchmark.MeshMappingBenchmark} in the render-benchmarks module
+     * (which covers every mapperType/interpolated combination) to check any change to these loops.
+     *
+     * @return span mapper specialized for the concrete type of the specified pixel mapper.
+     */
+    private static SpanMapper buildSpanMapper(final PixelMapper pixelMapper) {
+
+        final Class<?> mapperClass = pixelMapper.getClass();
+        final boolean isMappingInterpolated = pixelMapper.isMappingInterpolated();
+
+        final SpanMapper spanMapper;
+
+        if (mapperClass == SingleChannelMapper.class) {
+
+            final SingleChannelMapper mapper = (SingleChannelMapper) pixelMapper;
+            if (isMappingInterpolated) {
+                spanMapper = (sourceX, sourceY, dSourceX, dSourceY, startX, stopX, targetY) -> {
+                    double x = sourceX;
+                    double y = sourceY;
+                    for (int targetX = startX; targetX <= stopX; ++targetX) {
+                        mapper.mapInterpolated(x, y, targetX, targetY);
+                        x += dSourceX;
+                        y += dSourceY;
+                    }
+                };
+            } else {
+                spanMapper = (sourceX, sourceY, dSourceX, dSourceY, startX, stopX, targetY) -> {
+                    double x = sourceX;
+                    double y = sourceY;
+                    for (int targetX = startX; targetX <= stopX; ++targetX) {
+                        mapper.map(x, y, targetX, targetY);
+                        x += dSourceX;
+                        y += dSourceY;
+                    }
+                };
+            }
+
+        } else if (mapperClass == SingleChannelWithAlphaMapper.class) {
+
+            final SingleChannelWithAlphaMapper mapper = (SingleChannelWithAlphaMapper) pixelMapper;
+            if (isMappingInterpolated) {
+                spanMapper = (sourceX, sourceY, dSourceX, dSourceY, startX, stopX, targetY) -> {
+                    double x = sourceX;
+                    double y = sourceY;
+                    for (int targetX = startX; targetX <= stopX; ++targetX) {
+                        mapper.mapInterpolated(x, y, targetX, targetY);
+                        x += dSourceX;
+                        y += dSourceY;
+                    }
+                };
+            } else {
+                spanMapper = (sourceX, sourceY, dSourceX, dSourceY, startX, stopX, targetY) -> {
+                    double x = sourceX;
+                    double y = sourceY;
+                    for (int targetX = startX; targetX <= stopX; ++targetX) {
+                        mapper.map(x, y, targetX, targetY);
+                        x += dSourceX;
+                        y += dSourceY;
+                    }
+                };
+            }
+
+        } else if (mapperClass == SingleChannelWithBinaryMaskMapper.class) {
+
+            final SingleChannelWithBinaryMaskMapper mapper = (SingleChannelWithBinaryMaskMapper) pixelMapper;
+            if (isMappingInterpolated) {
+                spanMapper = (sourceX, sourceY, dSourceX, dSourceY, startX, stopX, targetY) -> {
+                    double x = sourceX;
+                    double y = sourceY;
+                    for (int targetX = startX; targetX <= stopX; ++targetX) {
+                        mapper.mapInterpolated(x, y, targetX, targetY);
+                        x += dSourceX;
+                        y += dSourceY;
+                    }
+                };
+            } else {
+                spanMapper = (sourceX, sourceY, dSourceX, dSourceY, startX, stopX, targetY) -> {
+                    double x = sourceX;
+                    double y = sourceY;
+                    for (int targetX = startX; targetX <= stopX; ++targetX) {
+                        mapper.map(x, y, targetX, targetY);
+                        x += dSourceX;
+                        y += dSourceY;
+                    }
+                };
+            }
+
+        } else if (mapperClass == MultiChannelMapper.class) {
+
+            final MultiChannelMapper mapper = (MultiChannelMapper) pixelMapper;
+            if (isMappingInterpolated) {
+                spanMapper = (sourceX, sourceY, dSourceX, dSourceY, startX, stopX, targetY) -> {
+                    double x = sourceX;
+                    double y = sourceY;
+                    for (int targetX = startX; targetX <= stopX; ++targetX) {
+                        mapper.mapInterpolated(x, y, targetX, targetY);
+                        x += dSourceX;
+                        y += dSourceY;
+                    }
+                };
+            } else {
+                spanMapper = (sourceX, sourceY, dSourceX, dSourceY, startX, stopX, targetY) -> {
+                    double x = sourceX;
+                    double y = sourceY;
+                    for (int targetX = startX; targetX <= stopX; ++targetX) {
+                        mapper.map(x, y, targetX, targetY);
+                        x += dSourceX;
+                        y += dSourceY;
+                    }
+                };
+            }
+
+        } else if (mapperClass == MultiChannelWithAlphaMapper.class) {
+
+            final MultiChannelWithAlphaMapper mapper = (MultiChannelWithAlphaMapper) pixelMapper;
+            if (isMappingInterpolated) {
+                spanMapper = (sourceX, sourceY, dSourceX, dSourceY, startX, stopX, targetY) -> {
+                    double x = sourceX;
+                    double y = sourceY;
+                    for (int targetX = startX; targetX <= stopX; ++targetX) {
+                        mapper.mapInterpolated(x, y, targetX, targetY);
+                        x += dSourceX;
+                        y += dSourceY;
+                    }
+                };
+            } else {
+                spanMapper = (sourceX, sourceY, dSourceX, dSourceY, startX, stopX, targetY) -> {
+                    double x = sourceX;
+                    double y = sourceY;
+                    for (int targetX = startX; targetX <= stopX; ++targetX) {
+                        mapper.map(x, y, targetX, targetY);
+                        x += dSourceX;
+                        y += dSourceY;
+                    }
+                };
+            }
+
+        } else if (mapperClass == MultiChannelWithBinaryMaskMapper.class) {
+
+            final MultiChannelWithBinaryMaskMapper mapper = (MultiChannelWithBinaryMaskMapper) pixelMapper;
+            if (isMappingInterpolated) {
+                spanMapper = (sourceX, sourceY, dSourceX, dSourceY, startX, stopX, targetY) -> {
+                    double x = sourceX;
+                    double y = sourceY;
+                    for (int targetX = startX; targetX <= stopX; ++targetX) {
+                        mapper.mapInterpolated(x, y, targetX, targetY);
+                        x += dSourceX;
+                        y += dSourceY;
+                    }
+                };
+            } else {
+                spanMapper = (sourceX, sourceY, dSourceX, dSourceY, startX, stopX, targetY) -> {
+                    double x = sourceX;
+                    double y = sourceY;
+                    for (int targetX = startX; targetX <= stopX; ++targetX) {
+                        mapper.map(x, y, targetX, targetY);
+                        x += dSourceX;
+                        y += dSourceY;
+                    }
+                };
+            }
+
+        } else if (isMappingInterpolated) {
+
+            spanMapper = (sourceX, sourceY, dSourceX, dSourceY, startX, stopX, targetY) -> {
+                double x = sourceX;
+                double y = sourceY;
+                for (int targetX = startX; targetX <= stopX; ++targetX) {
+                    pixelMapper.mapInterpolated(x, y, targetX, targetY);
+                    x += dSourceX;
+                    y += dSourceY;
+                }
+            };
+
+        } else {
+
+            spanMapper = (sourceX, sourceY, dSourceX, dSourceY, startX, stopX, targetY) -> {
+                double x = sourceX;
+                double y = sourceY;
+                for (int targetX = startX; targetX <= stopX; ++targetX) {
+                    pixelMapper.map(x, y, targetX, targetY);
+                    x += dSourceX;
+                    y += dSourceY;
+                }
+            };
+
+        }
+
+        return spanMapper;
+    }
+
+    private static final Logger LOG = LoggerFactory.getLogger(ScanlineTriangleRasterizer.class);
+}
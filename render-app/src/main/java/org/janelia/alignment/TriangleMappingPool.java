@@ -0,0 +1,237 @@
+package org.janelia.alignment;
+
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import mpicbg.models.AffineModel2D;
+import mpicbg.trakem2.util.Pair;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Work-stealing pool for mapping the triangles of a {@link RenderTransformMesh}.
+ *
+ * Previously, each multi-threaded map call created and joined its own set of threads.
+ * This pool allows threads to be reused across map calls (and across concurrent render requests)
+ * so that thread creation costs are avoided and cores are shared fairly between requests.
+ *
+ * Each map call splits the triangle list into small chunks that are claimed by at most
+ * maxNumberOfThreads workers, capping the parallelism of any single call
+ * while idle pool threads pick up work from other calls.
+ *
+ * @author Eric Trautman
+ */
+public class TriangleMappingPool {
+
+    /** Default number of triangles claimed by a worker at a time. */
+    public static final int DEFAULT_CHUNK_SIZE = 16;
+
+    /**
+     * System property for the number of shared pool threads (for processes that do not explicitly
+     * size the shared pool with {@link #initializeSharedInstance}).
+     */
+    public static final String THREADS_PROPERTY_NAME = "render.triangleMappingThreads";
+
+    private static volatile TriangleMappingPool sharedInstance;
+
+    /**
+     * @return the process-wide pool (with one thread per available processor unless the
+     *         render.triangleMappingThreads system property specifies a different number of threads).
+     */
+    public static TriangleMappingPool getSharedInstance() {
+        if (sharedInstance == null) {
+            setSharedInstance();
+        }
+        return sharedInstance;
+    }
+
+    /**
+     * Creates the process-wide pool with the specified number of threads if it has not already been created.
+     * Processes with their own configuration (e.g. the render web service) should call this
+     * before any triangles are mapped.
+     *
+     * @param  parallelism  number of pool threads (values less than 1 default to one thread per available processor).
+     *
+     * @return the process-wide pool.
+     */
+    public static synchronized TriangleMappingPool initializeSharedInstance(final int parallelism) {
+        if (sharedInstance == null) {
+            final int sharedParallelism = parallelism < 1 ? Runtime.getRuntime().availableProcessors() : parallelism;
+            sharedInstance = new TriangleMappingPool(sharedParallelism, DEFAULT_CHUNK_SIZE);
+            LOG.info("initializeSharedInstance: created {}", sharedInstance);
+        } else if ((parallelism > 0) && (parallelism != sharedInstance.forkJoinPool.getParallelism())) {
+            LOG.warn("initializeSharedInstance: ignoring parallelism {} since {} was already created",
+                     parallelism, sharedInstance);
+        }
+        return sharedInstance;
+    }
+
+    private static synchronized void setSharedInstance() {
+        if (sharedInstance == null) {
+            final int parallelism = Math.max(1, Integer.getInteger(THREADS_PROPERTY_NAME,
+                                                                   Runtime.getRuntime().availableProcessors()));
+            sharedInstance = new TriangleMappingPool(parallelism, DEFAULT_CHUNK_SIZE);
+            LOG.info("setSharedInstance: created {}", sharedInstance);
+        }
+    }
+
+    private final ForkJoinPool forkJoinPool;
+    private final int chunkSize;
+
+    /**
+     * @param  parallelism  number of pool threads.
+     * @param  chunkSize    number of triangles claimed by a worker at a time.
+     *
+     * @throws IllegalArgumentException
+     *   if the parallelism or chunk size is less than 1.
+     */
+    public TriangleMappingPool(final int parallelism,
+                               final int chunkSize)
+            throws IllegalArgumentException {
+
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("parallelism must be greater than 0");
+        }
+
+        if (chunkSize < 1) {
+            throw new IllegalArgumentException("chunkSize must be greater than 0");
+        }
+
+        final AtomicInteger threadCount = new AtomicInteger(0);
+        final ForkJoinPool.ForkJoinWorkerThreadFactory threadFactory = pool -> {
+            final ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+            thread.setName("triangle-mapper-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+
+        this.forkJoinPool = new ForkJoinPool(parallelism, threadFactory, null, false);
+        this.chunkSize = chunkSize;
+    }
+
+    /**
+     * @return number of threads in this pool.
+     */
+    public int getParallelism() {
+        return forkJoinPool.getParallelism();
+    }
+
+    /**
+     * Maps all triangles using at most the specified number of threads.
+     * The calling thread participates in the mapping, so at most maxNumberOfThreads - 1 pool threads are used.
+     *
+     * @param  triangles           list of triangles to map.
+     * @param  rasterizer          rasterizer for triangle pixels.
+     * @param  maxNumberOfThreads  maximum number of threads to use for this call.
+     */
+    public void map(final List<Pair<AffineModel2D, double[][]>> triangles,
+                    final ScanlineTriangleRasterizer rasterizer,
+                    final int maxNumberOfThreads) {
+
+        final int numberOfChunks = (triangles.size() + chunkSize - 1) / chunkSize;
+        final int numberOfWorkers = Math.max(1, Math.min(maxNumberOfThreads, numberOfChunks));
+
+        final MappingState state = new MappingState(numberOfChunks);
+
+        // Helpers that are still queued behind other requests when the last chunk is claimed will simply
+        // find no work, so only wait for claimed chunks to be mapped (instead of joining every helper).
+        for (int i = 1; i < numberOfWorkers; i++) {
+            forkJoinPool.execute(new MapTrianglesTask(state, triangles, rasterizer, chunkSize));
+        }
+
+        new MapTrianglesTask(state, triangles, rasterizer, chunkSize).compute();
+
+        state.awaitMappedChunks();
+    }
+
+    @Override
+    public String toString() {
+        return "{parallelism: " + getParallelism() + ", chunkSize: " + chunkSize + '}';
+    }
+
+    /**
+     * Chunk claiming and completion state shared by all workers for one map call.
+     */
+    private static class MappingState {
+
+        private final AtomicInteger nextTriangleIndex;
+        private final CountDownLatch unmappedChunks;
+        private final AtomicReference<Throwable> failure;
+
+        MappingState(final int numberOfChunks) {
+            this.nextTriangleIndex = new AtomicInteger(0);
+            this.unmappedChunks = new CountDownLatch(numberOfChunks);
+            this.failure = new AtomicReference<>();
+        }
+
+        void awaitMappedChunks() {
+            try {
+                unmappedChunks.await();
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("interrupted while waiting for triangles to be mapped", e);
+            }
+
+            final Throwable t = failure.get();
+            if (t instanceof RuntimeException) {
+                throw (RuntimeException) t;
+            } else if (t instanceof Error) {
+                throw (Error) t;
+            } else if (t != null) {
+                throw new IllegalStateException("failed to map triangles", t);
+            }
+        }
+    }
+
+    /**
+     * Repeatedly claims and maps the next chunk of triangles until all triangles have been claimed.
+     */
+    private static class MapTrianglesTask
+            extends RecursiveAction {
+
+        private final MappingState state;
+        private final List<Pair<AffineModel2D, double[][]>> triangles;
+        private final ScanlineTriangleRasterizer rasterizer;
+        private final int chunkSize;
+
+        MapTrianglesTask(final MappingState state,
+                         final List<Pair<AffineModel2D, double[][]>> triangles,
+                         final ScanlineTriangleRasterizer rasterizer,
+                         final int chunkSize) {
+            this.state = state;
+            this.triangles = triangles;
+            this.rasterizer = rasterizer;
+            this.chunkSize = chunkSize;
+        }
+
+        @Override
+        protected void compute() {
+            final int numberOfTriangles = triangles.size();
+            int start = state.nextTriangleIndex.getAndAdd(chunkSize);
+            while (start < numberOfTriangles) {
+                final int stop = Math.min(start + chunkSize, numberOfTriangles);
+                try {
+                    // skip remaining chunks once any worker has failed
+                    if (state.failure.get() == null) {
+                        for (int i = start; i < stop; i++) {
+                            rasterizer.mapTriangle(triangles.get(i));
+                        }
+                    }
+                } catch (final Throwable t) {
+                    state.failure.compareAndSet(null, t);
+                } finally {
+                    state.unmappedChunks.countDown();
+                }
+                start = state.nextTriangleIndex.getAndAdd(chunkSize);
+            }
+        }
+    }
+
+    private static final Logger LOG = LoggerFactory.getLogger(TriangleMappingPool.class);
+}
@@ -0,0 +1,229 @@
+package org.janelia.alignment.match;
+
+import java.awt.geom.Point2D;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import mpicbg.imagefeatures.Feature;
+import mpicbg.models.Point;
+import mpicbg.models.PointMatch;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Base class for descriptor matchers that copy descriptors into flat arrays and then
+ * find the two nearest neighbors of each first canvas feature (optionally using multiple threads).
+ * Subclasses only need to provide the nearest neighbor search.
+ *
+ * @author Eric Trautman
+ */
+public abstract class AbstractDescriptorMatcher
+        implements DescriptorMatcher {
+
+    /** Number of query features claimed by a thread at a time. */
+    private static final int CHUNK_SIZE = 64;
+
+    private final int numberOfThreads;
+
+    /**
+     * @param  numberOfThreads  number of threads to use for each match call.
+     *
+     * @throws IllegalArgumentException
+     *   if the number of threads is less than 1.
+     */
+    protected AbstractDescriptorMatcher(final int numberOfThreads)
+            throws IllegalArgumentException {
+        if (numberOfThreads < 1) {
+            throw new IllegalArgumentException("numberOfThreads must be greater than 0");
+        }
+        this.numberOfThreads = numberOfThreads;
+    }
+
+    public int getNumberOfThreads() {
+        return numberOfThreads;
+    }
+
+    @Override
+    public List<PointMatch> matchFeatures(final List<Feature> features1,
+                                          final List<Feature> features2,
+                                          final double rod) {
+
+        final List<PointMatch> matches = new ArrayList<>();
+
+        // rod test requires at least two neighbors
+        if ((features1.size() > 0) && (features2.size() > 1)) {
+
+            final FeatureDescriptors queries = new FeatureDescriptors(features1);
+            final FeatureDescriptors targets = new FeatureDescriptors(features2);
+
+            if (queries.getDimension() != targets.getDimension()) {
+                throw new IllegalArgumentException("features1 descriptors have dimension " + queries.getDimension() +
+                                                   " but features2 descriptors have dimension " +
+                                                   targets.getDimension());
+            }
+
+            final SearcherFactory searcherFactory = index(targets);
+
+            final int[] matchedTargetIndexes = new int[queries.size()];
+            Arrays.fill(matchedTargetIndexes, -1);
+
+            final AtomicInteger nextChunkStart = new AtomicInteger(0);
+            final Runnable matchQueries = () -> {
+                final Searcher searcher = searcherFactory.buildSearcher();
+                final NearestNeighbors neighbors = new NearestNeighbors();
+                for (int start = nextChunkStart.getAndAdd(CHUNK_SIZE);
+                     start < queries.size();
+                     start = nextChunkStart.getAndAdd(CHUNK_SIZE)) {
+
+                    final int end = Math.min(start + CHUNK_SIZE, queries.size());
+                    for (int queryIndex = start; queryIndex < end; queryIndex++) {
+                        neighbors.reset();
+                        searcher.findTwoNearest(queries, queryIndex, neighbors);
+                        if (neighbors.passesRatioTest(rod)) {
+                            matchedTargetIndexes[queryIndex] = neighbors.bestIndex;
+                        }
+                    }
+                }
+            };
+
+            final int threadCount = Math.min(numberOfThreads, (queries.size() / CHUNK_SIZE) + 1);
+            if (threadCount > 1) {
+                MatchWorkPool.runWithHelpers(matchQueries, threadCount, "descriptor matching");
+            } else {
+                matchQueries.run();
+            }
+
+            addUnambiguousMatches(features1, features2, matchedTargetIndexes, matches);
+        }
+
+        return matches;
+    }
+
+    /**
+     * Builds (or simply wraps) a search index for the specified target descriptors.
+     *
+     * @param  targets  descriptors to search.
+     *
+     * @return factory for (thread confined) searchers of the index.
+     */
+    protected abstract SearcherFactory index(final FeatureDescriptors targets);
+
+    /**
+     * Builds searchers that can be used concurrently (one per thread) to search a shared index.
+     */
+    protected interface SearcherFactory {
+        Searcher buildSearcher();
+    }
+
+    /**
+     * Finds the nearest neighbors of query descriptors.  Instances are used by only one thread.
+     */
+    protected interface Searcher {
+        void findTwoNearest(final FeatureDescriptors queries,
+                            final int queryIndex,
+                            final NearestNeighbors neighbors);
+    }
+
+    /**
+     * Tracks the two nearest neighbors found for a query.
+     * Comparisons mirror mpicbg FeatureTransform#matchFeatures so that exact searches produce identical matches.
+     */
+    protected static class NearestNeighbors {
+
+        private int bestIndex;
+        private double bestDistance;
+        private double bestSquaredDistance;
+        private double secondBestDistance;
+        private double secondBestSquaredDistance;
+
+        protected NearestNeighbors() {
+            reset();
+        }
+
+        protected void reset() {
+            bestIndex = -1;
+            bestDistance = Double.MAX_VALUE;
+            bestSquaredDistance = Double.MAX_VALUE;
+            secondBestDistance = Double.MAX_VALUE;
+            secondBestSquaredDistance = Double.MAX_VALUE;
+        }
+
+        /**
+         * @return squared distance beyond which candidates cannot change the nearest neighbors.
+         */
+        protected double getSquaredDistanceLimit() {
+            return secondBestSquaredDistance;
+        }
+
+        /**
+         * Updates the nearest neighbors if the specified candidate is closer than one of them.
+         */
+        protected void offer(final int candidateIndex,
+                             final double squaredDistance) {
+            if (squaredDistance < secondBestSquaredDistance) {
+                final double distance = Math.sqrt(squaredDistance);
+                if (distance < bestDistance) {
+                    secondBestDistance = bestDistance;
+                    secondBestSquaredDistance = bestSquaredDistance;
+                    bestDistance = distance;
+                    bestSquaredDistance = squaredDistance;
+                    bestIndex = candidateIndex;
+                } else if (distance < secondBestDistance) {
+                    secondBestDistance = distance;
+                    secondBestSquaredDistance = squaredDistance;
+                }
+            }
+        }
+
+        private boolean passesRatioTest(final double rod) {
+            return (bestIndex >= 0) &&
+                   (secondBestDistance < Double.MAX_VALUE) &&
+                   ((bestDistance / secondBestDistance) < rod);
+        }
+    }
+
+    /**
+     * Converts matched indexes into point matches, removing ambiguous matches
+     * (all matches that share a target location) just like mpicbg FeatureTransform#matchFeatures.
+     */
+    private static void addUnambiguousMatches(final List<Feature> features1,
+                                              final List<Feature> features2,
+                                              final int[] matchedTargetIndexes,
+                                              final List<PointMatch> matches) {
+
+        final Map<Point2D.Double, Integer> targetLocationCounts = new HashMap<>();
+        for (final int targetIndex : matchedTargetIndexes) {
+            if (targetIndex >= 0) {
+                targetLocationCounts.merge(getLocationKey(features2.get(targetIndex)), 1, Integer::sum);
+            }
+        }
+
+        int ambiguousCount = 0;
+        for (int queryIndex = 0; queryIndex < matchedTargetIndexes.length; queryIndex++) {
+            final int targetIndex = matchedTargetIndexes[queryIndex];
+            if (targetIndex >= 0) {
+                final Feature target = features2.get(targetIndex);
+                if (targetLocationCounts.get(getLocationKey(target)) == 1) {
+                    matches.add(new PointMatch(new Point(features1.get(queryIndex).location),
+                                               new Point(target.location)));
+                } else {
+                    ambiguousCount++;
+                }
+            }
+        }
+
+        LOG.debug("addUnambiguousMatches: added {} matches, removed {} ambiguous matches",
+                  matches.size(), ambiguousCount);
+    }
+
+    private static Point2D.Double getLocationKey(final Feature feature) {
+        return new Point2D.Double(feature.location[0], feature.location[1]);
+    }
+
+    private static final Logger LOG = LoggerFactory.getLogger(AbstractDescriptorMatcher.class);
+}
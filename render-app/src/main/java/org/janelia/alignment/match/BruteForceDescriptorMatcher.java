@@ -0,0 +1,39 @@
+package org.janelia.alignment.match;
+
+/**
+ * Exact descriptor matcher that compares every pair of descriptors (like mpicbg FeatureTransform#matchFeatures)
+ * but scans flat descriptor arrays, stops each distance calculation as soon as a candidate is too far away
+ * to matter, and can split the work across multiple threads.  Produces the same matches as
+ * mpicbg FeatureTransform#matchFeatures.
+ *
+ * @author Eric Trautman
+ */
+public class BruteForceDescriptorMatcher
+        extends AbstractDescriptorMatcher {
+
+    /**
+     * @param  numberOfThreads  number of threads to use for each match call.
+     */
+    public BruteForceDescriptorMatcher(final int numberOfThreads) {
+        super(numberOfThreads);
+    }
+
+    @Override
+    protected SearcherFactory index(final FeatureDescriptors targets) {
+        return () -> (queries, queryIndex, neighbors) -> {
+            for (int targetIndex = 0; targetIndex < targets.size(); targetIndex++) {
+                neighbors.offer(targetIndex,
+                                queries.squaredDistance(queryIndex,
+                                                        targets,
+                                                        targetIndex,
+                                                        neighbors.getSquaredDistanceLimit()));
+            }
+        };
+    }
+
+    @Override
+    public String toString() {
+        return "{type: 'BRUTE_FORCE', numberOfThreads: " + getNumberOfThreads() + '}';
+    }
+
+}
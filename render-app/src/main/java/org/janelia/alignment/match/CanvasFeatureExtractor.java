@@ -1,12 +1,18 @@
 package org.janelia.alignment.match;
 
 import ij.ImagePlus;
+import ij.plugin.filter.GaussianBlur;
+import ij.process.FloatProcessor;
+import ij.process.ImageProcessor;
 
 import java.awt.image.BufferedImage;
 import java.io.File;
 import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 
 import mpicbg.ij.SIFT;
 import mpicbg.imagefeatures.Feature;
@@ -31,9 +37,10 @@ public class CanvasFeatureExtractor implements Serializable {
     private final double minScale;
     private final double maxScale;
     private final boolean fillWithNoise;
+    private final int numberOfThreads;
 
     /**
-     * Sets up everything that is needed to extract the feature list for a canvas.
+     * Sets up everything that is needed to extract the feature list for a canvas using a single thread.
      *
      * @param  coreSiftParameters  core SIFT parameters for feature extraction.
      * @param  minScale            SIFT minimum scale (minSize * minScale < size < maxSize * maxScale).
@@ -45,6 +52,33 @@ public class CanvasFeatureExtractor implements Serializable {
                                   final double minScale,
                                   final double maxScale,
                                   final boolean fillWithNoise) {
+        this(coreSiftParameters, minScale, maxScale, fillWithNoise, 1);
+    }
+
+    /**
+     * Sets up everything that is needed to extract the feature list for a canvas.
+     *
+     * @param  coreSiftParameters  core SIFT parameters for feature extraction.
+     * @param  minScale            SIFT minimum scale (minSize * minScale < size < maxSize * maxScale).
+     * @param  maxScale            SIFT maximum scale (minSize * minScale < size < maxSize * maxScale).
+     * @param  fillWithNoise       indicates whether the rendered canvas image should be filled with
+     *                             noise before rendering to improve point match derivation.
+     * @param  numberOfThreads     number of threads to use when extracting features from a single canvas
+     *                             (large canvases are split into bands that are processed concurrently).
+     *
+     * @throws IllegalArgumentException
+     *   if the number of threads is less than 1.
+     */
+    public CanvasFeatureExtractor(final FloatArray2DSIFT.Param coreSiftParameters,
+                                  final double minScale,
+                                  final double maxScale,
+                                  final boolean fillWithNoise,
+                                  final int numberOfThreads)
+            throws IllegalArgumentException {
+
+        if (numberOfThreads < 1) {
+            throw new IllegalArgumentException("numberOfThreads must be greater than 0");
+        }
 
         // clone provided parameters since they get modified during feature extraction
         this.coreSiftParameters = coreSiftParameters.clone();
@@ -52,6 +86,7 @@ public class CanvasFeatureExtractor implements Serializable {
         this.minScale = minScale;
         this.maxScale = maxScale;
         this.fillWithNoise = fillWithNoise;
+        this.numberOfThreads = numberOfThreads;
     }
 
     /**
@@ -124,11 +159,14 @@ public class CanvasFeatureExtractor implements Serializable {
         // fewer extracted features when bufferedImage was loaded from disk.
         final ImagePlus imagePlus = new ImagePlus("", bufferedImage);
 
-        final FloatArray2DSIFT sift = new FloatArray2DSIFT(siftParameters);
-        final SIFT ijSIFT = new SIFT(sift);
-
-        final List<Feature> featureList = new ArrayList<>();
-        ijSIFT.extractFeatures(imagePlus.getProcessor(), featureList);
+        final ImageProcessor imageProcessor = imagePlus.getProcessor();
+        final List<Feature> featureList;
+        if (canSplitCanvas(w, h, siftParameters)) {
+            featureList = extractFeaturesConcurrently(imageProcessor, siftParameters);
+        } else {
+            featureList = new ArrayList<>();
+            extractFeatures(imageProcessor, siftParameters, featureList);
+        }
 
         if (featureList.size() == 0) {
 
@@ -163,5 +201,232 @@ public class CanvasFeatureExtractor implements Serializable {
         return featureList;
     }
 
+    private static void extractFeatures(final ImageProcessor imageProcessor,
+                                        final FloatArray2DSIFT.Param siftParameters,
+                                        final List<Feature> featureList) {
+        final FloatArray2DSIFT sift = new FloatArray2DSIFT(siftParameters);
+        final SIFT ijSIFT = new SIFT(sift);
+        ijSIFT.extractFeatures(imageProcessor, featureList);
+    }
+
+    /**
+     * @return scale mpicbg SIFT applies to a canvas with the specified dimensions before extracting features
+     *         (canvases larger than the max octave size get scaled down).
+     */
+    private static double getSourceScale(final int width,
+                                         final int height,
+                                         final FloatArray2DSIFT.Param siftParameters) {
+        // same integer rounding protection as mpicbg.ij.SIFT
+        final double maxSize = siftParameters.maxOctaveSize - 1;
+        double scale = 1.0;
+        if ((maxSize < width) || (maxSize < height)) {
+            scale = Math.min(maxSize / width, maxSize / height);
+        }
+        return scale;
+    }
+
+    private int getBandMargin() {
+        // generous enough to cover the difference of gaussian kernels and
+        // (rotated) descriptor windows for all features in the first octave
+        return Math.max(64, 16 * coreSiftParameters.fdSize);
+    }
+
+    private int getNumberOfBands(final int scaledHeight) {
+        // only split if each band's core is at least as tall as its overlapping margins
+        return Math.min(numberOfThreads, scaledHeight / (2 * getBandMargin()));
+    }
+
+    private boolean canSplitCanvas(final int width,
+                                   final int height,
+                                   final FloatArray2DSIFT.Param siftParameters) {
+        boolean canSplit = false;
+        if (numberOfThreads > 1) {
+            final double scale = getSourceScale(width, height, siftParameters);
+            final int scaledWidth = (int) Math.round(width * scale);
+            final int scaledHeight = (int) Math.round(height * scale);
+            // first octave must be part of the standard extraction for band results to be equivalent
+            canSplit = (Math.min(scaledWidth, scaledHeight) >= siftParameters.minOctaveSize) &&
+                       (getNumberOfBands(scaledHeight) > 1);
+        }
+        return canSplit;
+    }
+
+    /**
+     * Produces features equivalent (within tolerance) to a single threaded mpicbg SIFT extraction
+     * by splitting the work for large canvases:
+     *
+     * <ul>
+     *     <li>
+     *         First octave features (most of the work) are extracted from overlapping horizontal bands
+     *         of the canvas.  Each band only extracts its first octave and only keeps the features located
+     *         within its non-overlapping core so that features found near band seams are not duplicated.
+     *     </li>
+     *     <li>
+     *         Features for all remaining octaves are extracted from a smoothed
+     *         half scale copy of the canvas, just like the second and later mpicbg scale octaves.
+     *     </li>
+     * </ul>
+     *
+     * The calling thread and helpers from the shared {@link MatchWorkPool} claim these extractions,
+     * so concurrent extraction of multiple canvases does not oversubscribe the host.
+     */
+    private List<Feature> extractFeaturesConcurrently(final ImageProcessor imageProcessor,
+                                                      final FloatArray2DSIFT.Param siftParameters) {
+
+        final int width = imageProcessor.getWidth();
+        final int height = imageProcessor.getHeight();
+        final double sourceScale = getSourceScale(width, height, siftParameters);
+
+        // work with a float copy so that scaling, cropping, and smoothing do not lose precision,
+        // keeping the original display range so that mpicbg normalizes intensities the same way
+        final double displayMin = imageProcessor.getMin();
+        final double displayMax = imageProcessor.getMax();
+        FloatProcessor source = (FloatProcessor) imageProcessor.convertToFloat();
+        if (source == imageProcessor) {
+            source = (FloatProcessor) source.duplicate();
+        }
+        if (sourceScale < 1.0) {
+            source = downScale(source, sourceScale);
+        }
+        source.setMinAndMax(displayMin, displayMax);
+
+        final int sourceWidth = source.getWidth();
+        final int sourceHeight = source.getHeight();
+        final int margin = getBandMargin();
+        final int numberOfBands = getNumberOfBands(sourceHeight);
+        final int coreHeight = (int) Math.ceil(sourceHeight / (double) numberOfBands);
+
+        final List<Callable<List<Feature>>> bandExtractions = new ArrayList<>(numberOfBands);
+
+        for (int coreMinY = 0; coreMinY < sourceHeight; coreMinY += coreHeight) {
+
+            final int coreMaxY = Math.min(coreMinY + coreHeight, sourceHeight);
+            final int bandMinY = Math.max(0, coreMinY - margin);
+            final int bandMaxY = Math.min(sourceHeight, coreMaxY + margin);
+            final int bandHeight = bandMaxY - bandMinY;
+
+            source.setRoi(0, bandMinY, sourceWidth, bandHeight);
+            final ImageProcessor band = source.crop();
+            band.setMinAndMax(displayMin, displayMax);
+
+            // restrict band extraction to its first octave and make sure the band does not get scaled
+            final FloatArray2DSIFT.Param bandParameters = siftParameters.clone();
+            bandParameters.minOctaveSize = (int) Math.ceil(0.75 * Math.min(sourceWidth, bandHeight));
+            bandParameters.maxOctaveSize = Math.max(sourceWidth, bandHeight) + 2;
+
+            final int finalCoreMinY = coreMinY;
+            bandExtractions.add(() -> {
+                final List<Feature> bandFeatures = new ArrayList<>();
+                extractFeatures(band, bandParameters, bandFeatures);
+                final List<Feature> coreFeatures = new ArrayList<>(bandFeatures.size());
+                for (final Feature feature : bandFeatures) {
+                    final double y = feature.location[1] + bandMinY;
+                    if ((y >= finalCoreMinY) && (y < coreMaxY)) {
+                        coreFeatures.add(scaleFeature(feature, 1.0 / sourceScale, 0, bandMinY));
+                    }
+                }
+                return coreFeatures;
+            });
+        }
+        source.resetRoi();
+
+        // remaining octaves are extracted from a smoothed half scale copy (claimed first since it is the largest item)
+        final FloatProcessor halfScaleSource = buildNextOctaveSource(source);
+        halfScaleSource.setMinAndMax(displayMin, displayMax);
+        final List<Feature> coarseFeatures = new ArrayList<>();
+        final List<Callable<List<Feature>>> extractions = new ArrayList<>(bandExtractions.size() + 1);
+        extractions.add(() -> {
+            extractFeatures(halfScaleSource, siftParameters.clone(), coarseFeatures);
+            return coarseFeatures;
+        });
+        extractions.addAll(bandExtractions);
+
+        // the calling thread and pool helpers claim extractions until all have been claimed
+        final AtomicReferenceArray<List<Feature>> extractedFeatures = new AtomicReferenceArray<>(extractions.size());
+        final AtomicInteger nextExtraction = new AtomicInteger(0);
+        final Runnable extractClaimedItems = () -> {
+            for (int i = nextExtraction.getAndIncrement(); i < extractions.size(); i = nextExtraction.getAndIncrement()) {
+                try {
+                    extractedFeatures.set(i, extractions.get(i).call());
+                } catch (final Exception e) {
+                    throw new IllegalStateException("failed to extract features for item " + i, e);
+                }
+            }
+        };
+
+        MatchWorkPool.runWithHelpers(extractClaimedItems, numberOfBands + 1, "feature extraction");
+
+        final List<Feature> featureList = new ArrayList<>();
+        for (int i = 1; i < extractions.size(); i++) {
+            featureList.addAll(extractedFeatures.get(i));
+        }
+
+        final int firstOctaveCount = featureList.size();
+
+        for (final Feature feature : coarseFeatures) {
+            featureList.add(scaleFeature(feature, 2.0 / sourceScale, 0, 0));
+        }
+
+        LOG.info("extractFeaturesConcurrently: extracted {} first octave features from {} bands " +
+                 "and {} features from remaining octaves",
+                 firstOctaveCount, bandExtractions.size(), coarseFeatures.size());
+
+        return featureList;
+    }
+
+    /**
+     * @return copy of the specified feature with its location offset and then scaled.
+     */
+    private static Feature scaleFeature(final Feature feature,
+                                        final double scale,
+                                        final double xOffset,
+                                        final double yOffset) {
+        final double[] location = {
+                (feature.location[0] + xOffset) * scale,
+                (feature.location[1] + yOffset) * scale
+        };
+        return new Feature(feature.scale * scale, feature.orientation, location, feature.descriptor);
+    }
+
+    /**
+     * @return specified source smoothed (assuming an original sigma of 0.5) and scaled down for SIFT
+     *         like mpicbg does for canvases that are larger than the max octave size.
+     */
+    private static FloatProcessor downScale(final FloatProcessor source,
+                                            final double scale) {
+        final FloatProcessor smoothed = (FloatProcessor) source.duplicate();
+        final double sigma = Math.sqrt((0.25 / (scale * scale)) - 0.25);
+        new GaussianBlur().blurGaussian(smoothed, sigma, sigma, 0.002);
+        smoothed.setInterpolationMethod(ImageProcessor.BILINEAR);
+        return (FloatProcessor) smoothed.resize((int) Math.round(source.getWidth() * scale),
+                                                (int) Math.round(source.getHeight() * scale));
+    }
+
+    /**
+     * @return half scale copy of the specified source built like the base of the second mpicbg scale octave
+     *         (smoothed to twice the assumed original sigma of 0.5 and then sampled at every other pixel).
+     */
+    private static FloatProcessor buildNextOctaveSource(final FloatProcessor source) {
+
+        final FloatProcessor smoothed = (FloatProcessor) source.duplicate();
+        final double sigma = Math.sqrt(1.0 - 0.25);
+        new GaussianBlur().blurGaussian(smoothed, sigma, sigma, 0.002);
+
+        final int width = smoothed.getWidth();
+        final int halfWidth = (width + 1) / 2;
+        final int halfHeight = (smoothed.getHeight() + 1) / 2;
+        final float[] pixels = (float[]) smoothed.getPixels();
+        final float[] halfPixels = new float[halfWidth * halfHeight];
+        for (int y = 0; y < halfHeight; y++) {
+            final int rowOffset = 2 * y * width;
+            final int halfRowOffset = y * halfWidth;
+            for (int x = 0; x < halfWidth; x++) {
+                halfPixels[halfRowOffset + x] = pixels[rowOffset + (2 * x)];
+            }
+        }
+
+        return new FloatProcessor(halfWidth, halfHeight, halfPixels, null);
+    }
+
     private static final Logger LOG = LoggerFactory.getLogger(CanvasFeatureExtractor.class);
 }
@@ -4,6 +4,7 @@ import java.io.File;
 import java.io.IOException;
 import java.io.Reader;
 import java.io.Serializable;
+import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.List;
@@ -62,6 +63,10 @@ public class CanvasFeatureList implements Serializable {
         return renderScale;
     }
 
+    Double getRenderScaleOrNull() {
+        return renderScale;
+    }
+
     public Integer getClipWidth() {
         return clipWidth;
     }
@@ -79,6 +84,9 @@ public class CanvasFeatureList implements Serializable {
     }
 
     /**
+     * Reads persisted features for the specified canvas, preferring binary storage
+     * (see {@link CanvasFeatureStorageFormat}) when both binary and JSON files exist.
+     *
      * @param  rootDirectory  root directory for all features extracted in a particular run.
      * @param  canvasId       identifies the desired canvas.
      *
@@ -90,13 +98,56 @@ public class CanvasFeatureList implements Serializable {
     public static CanvasFeatureList readFromStorage(final File rootDirectory,
                                                     final CanvasId canvasId)
             throws IOException {
-        final Path path = getStoragePath(rootDirectory, canvasId);
-        final Reader reader = new FileUtil().getExtensionBasedReader(path.toString());
-        return JsonUtils.FAST_MAPPER.readValue(reader, CanvasFeatureList.class);
+        return readFromFile(findStoragePath(rootDirectory, canvasId));
+    }
+
+    /**
+     * @param  rootDirectory  root directory for all features extracted in a particular run.
+     * @param  canvasId       identifies the desired canvas.
+     *
+     * @return most recently modified storage path for the specified canvas if files exist in both formats,
+     *         the binary storage path if only it exists, or otherwise the JSON storage path.
+     */
+    public static Path findStoragePath(final File rootDirectory,
+                                       final CanvasId canvasId) {
+        final Path binaryPath = getStoragePath(rootDirectory, canvasId, CanvasFeatureStorageFormat.BINARY);
+        final Path jsonPath = getStoragePath(rootDirectory, canvasId, CanvasFeatureStorageFormat.JSON);
+        final File binaryFile = binaryPath.toFile();
+        final File jsonFile = jsonPath.toFile();
+        final Path path;
+        if (binaryFile.exists()) {
+            // files written before stale formats were removed may still exist in both formats
+            path = jsonFile.lastModified() > binaryFile.lastModified() ? jsonPath : binaryPath;
+        } else {
+            path = jsonPath;
+        }
+        return path;
+    }
+
+    /**
+     * @param  path  path of a persisted feature list file in any {@link CanvasFeatureStorageFormat}
+     *               (format is detected from the file content).
+     *
+     * @return feature list stored in the specified file.
+     *
+     * @throws IOException
+     *   if the file cannot be found or parsed.
+     */
+    public static CanvasFeatureList readFromFile(final Path path)
+            throws IOException {
+        final CanvasFeatureList canvasFeatureList;
+        if (CanvasFeatureListBinaryFormat.isBinaryFile(path)) {
+            canvasFeatureList = CanvasFeatureListBinaryFormat.read(path);
+        } else {
+            try (final Reader reader = new FileUtil().getExtensionBasedReader(path.toString())) {
+                canvasFeatureList = JsonUtils.FAST_MAPPER.readValue(reader, CanvasFeatureList.class);
+            }
+        }
+        return canvasFeatureList;
     }
 
     /**
-     * Persists the specified feature data to disk (see {@link #getStoragePath(File, CanvasId)}).
+     * Persists the specified feature data to disk in JSON format (see {@link #getStoragePath(File, CanvasId)}).
      *
      * @param  rootDirectory      root directory for all features extracted in the current run.
      * @param  canvasFeatureList  feature data to persist.
@@ -107,13 +158,40 @@ public class CanvasFeatureList implements Serializable {
     public static void writeToStorage(final File rootDirectory,
                                       final CanvasFeatureList canvasFeatureList)
             throws IOException {
-        final Path path = getStoragePath(rootDirectory, canvasFeatureList.canvasId);
+        writeToStorage(rootDirectory, canvasFeatureList, CanvasFeatureStorageFormat.JSON);
+    }
+
+    /**
+     * Persists the specified feature data to disk
+     * (see {@link #getStoragePath(File, CanvasId, CanvasFeatureStorageFormat)})
+     * and removes any previously persisted data for the canvas that was stored in a different format.
+     *
+     * @param  rootDirectory      root directory for all features extracted in the current run.
+     * @param  canvasFeatureList  feature data to persist.
+     * @param  format             storage format.
+     *
+     * @throws IOException
+     *   if the feature data cannot be persisted.
+     */
+    public static void writeToStorage(final File rootDirectory,
+                                      final CanvasFeatureList canvasFeatureList,
+                                      final CanvasFeatureStorageFormat format)
+            throws IOException {
+        final Path path = getStoragePath(rootDirectory, canvasFeatureList.canvasId, format);
         FileUtil.ensureWritableDirectory(path.getParent().toFile());
-        FileUtil.saveJsonFile(path.toString(), canvasFeatureList, JsonUtils.FAST_MAPPER);
+        if (format.isBinary()) {
+            CanvasFeatureListBinaryFormat.write(path, canvasFeatureList, format.getCompression());
+        } else {
+            FileUtil.saveJsonFile(path.toString(), canvasFeatureList, JsonUtils.FAST_MAPPER);
+        }
+
+        final CanvasFeatureStorageFormat staleFormat =
+                format.isBinary() ? CanvasFeatureStorageFormat.JSON : CanvasFeatureStorageFormat.BINARY;
+        Files.deleteIfExists(getStoragePath(rootDirectory, canvasFeatureList.canvasId, staleFormat));
     }
 
     /**
-     * Builds a standard storage path for the specified canvas of the form:
+     * Builds a standard JSON storage path for the specified canvas of the form:
      * [root]/[canvas_group_id]/[canvas_id].features.json.gz
      *
      * @param  rootDirectory  root directory for all features extracted in a particular run.
@@ -123,13 +201,29 @@ public class CanvasFeatureList implements Serializable {
      */
     public static Path getStoragePath(final File rootDirectory,
                                       final CanvasId canvasId) {
+        return getStoragePath(rootDirectory, canvasId, CanvasFeatureStorageFormat.JSON);
+    }
+
+    /**
+     * Builds a standard storage path for the specified canvas of the form:
+     * [root]/[canvas_group_id]/[canvas_id].[format_extension]
+     *
+     * @param  rootDirectory  root directory for all features extracted in a particular run.
+     * @param  canvasId       the current canvas.
+     * @param  format         storage format.
+     *
+     * @return standard storage path for the specified canvas' feature data.
+     */
+    public static Path getStoragePath(final File rootDirectory,
+                                      final CanvasId canvasId,
+                                      final CanvasFeatureStorageFormat format) {
         String name = canvasId.getId();
         if (canvasId.getRelativePosition() != null) {
             name = name + "__" + canvasId.getRelativePosition();
         }
         return Paths.get(rootDirectory.getAbsolutePath(),
                          canvasId.getGroupId(),
-                         name + ".features.json.gz");
+                         name + format.getFileExtension());
     }
 
 }
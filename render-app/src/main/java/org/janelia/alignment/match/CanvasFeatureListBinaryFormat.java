@@ -0,0 +1,375 @@
+package org.janelia.alignment.match;
+
+import com.google.common.hash.Hashing;
+
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.FloatBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.Inflater;
+
+import mpicbg.imagefeatures.Feature;
+
+/**
+ * Versioned binary storage format for {@link CanvasFeatureList} data.
+ *
+ * Files contain a header (magic number, version, compression, canvas id with clip offsets,
+ * render parameters URL and hash, render scale, clip size, feature count, descriptor size)
+ * followed by a body of packed big-endian float32 values for each feature:
+ * x, y, scale, orientation, descriptor[0] ... descriptor[descriptorSize - 1].
+ *
+ * The body starts on a 4 byte boundary so that uncompressed files can be memory mapped and
+ * bulk copied straight into {@link Feature} objects.  Bodies can optionally be deflate compressed.
+ *
+ * Locations are stored with float32 precision (plenty for pixel coordinates),
+ * so locations read from this format may differ slightly from the originally extracted values.
+ *
+ * @author Eric Trautman
+ */
+public class CanvasFeatureListBinaryFormat {
+
+    /** Supported feature body compression options. */
+    public enum Compression {
+        NONE, DEFLATE
+    }
+
+    /** First four bytes of every binary feature file ("RCFL"). */
+    public static final int MAGIC_NUMBER = 0x5243464C;
+
+    public static final int CURRENT_VERSION = 1;
+
+    /** Number of float values stored for each feature in addition to its descriptor. */
+    private static final int FLOATS_PER_FEATURE_WITHOUT_DESCRIPTOR = 4;
+
+    /**
+     * @param  path  path of file to check.
+     *
+     * @return true if the specified file starts with the binary format magic number; otherwise false.
+     *
+     * @throws IOException
+     *   if the file cannot be read.
+     */
+    public static boolean isBinaryFile(final Path path)
+            throws IOException {
+        boolean isBinary = false;
+        try (final DataInputStream in = new DataInputStream(new FileInputStream(path.toFile()))) {
+            if (in.available() >= 4) {
+                isBinary = (in.readInt() == MAGIC_NUMBER);
+            }
+        }
+        return isBinary;
+    }
+
+    /**
+     * @param  renderParametersUrl  URL to hash.
+     *
+     * @return hash of the specified render parameters URL (or 0 if the URL is null).
+     */
+    public static long getRenderParametersHash(final String renderParametersUrl) {
+        long hash = 0;
+        if (renderParametersUrl != null) {
+            hash = Hashing.murmur3_128().hashString(renderParametersUrl, StandardCharsets.UTF_8).asLong();
+        }
+        return hash;
+    }
+
+    /**
+     * Writes the specified feature data to the specified path.
+     *
+     * @param  path               path of file to write.
+     * @param  canvasFeatureList  feature data to write.
+     * @param  compression        compression to use for the feature body.
+     *
+     * @throws IOException
+     *   if the data cannot be written.
+     *
+     * @throws IllegalArgumentException
+     *   if the features do not all have descriptors with the same size.
+     */
+    public static void write(final Path path,
+                             final CanvasFeatureList canvasFeatureList,
+                             final Compression compression)
+            throws IOException, IllegalArgumentException {
+
+        final List<Feature> featureList = canvasFeatureList.getFeatureList() == null ?
+                                          Collections.emptyList() : canvasFeatureList.getFeatureList();
+        final int descriptorSize = getDescriptorSize(featureList);
+        final CanvasId canvasId = canvasFeatureList.getCanvasId();
+        final String renderParametersUrl = canvasFeatureList.getRenderParametersUrl();
+
+        try (final DataOutputStream out =
+                     new DataOutputStream(new BufferedOutputStream(new FileOutputStream(path.toFile())))) {
+
+            out.writeInt(MAGIC_NUMBER);
+            out.writeInt(CURRENT_VERSION);
+            out.writeByte(compression.ordinal());
+
+            writeString(out, canvasId.getGroupId());
+            writeString(out, canvasId.getId());
+            final MontageRelativePosition relativePosition = canvasId.getRelativePosition();
+            writeString(out, relativePosition == null ? null : relativePosition.name());
+            final double[] clipOffsets = canvasId.getClipOffsets();
+            out.writeDouble(clipOffsets[0]);
+            out.writeDouble(clipOffsets[1]);
+
+            writeString(out, renderParametersUrl);
+            out.writeLong(getRenderParametersHash(renderParametersUrl));
+
+            final Double renderScale = canvasFeatureList.getRenderScaleOrNull();
+            out.writeBoolean(renderScale != null);
+            out.writeDouble(renderScale == null ? 0.0 : renderScale);
+            writeNullableInt(out, canvasFeatureList.getClipWidth());
+            writeNullableInt(out, canvasFeatureList.getClipHeight());
+
+            out.writeInt(featureList.size());
+            out.writeInt(descriptorSize);
+
+            // align body so that it can be viewed directly as a float buffer
+            while ((out.size() % 4) != 0) {
+                out.writeByte(0);
+            }
+
+            if (Compression.DEFLATE.equals(compression)) {
+                final Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+                try {
+                    final DeflaterOutputStream deflaterOut = new DeflaterOutputStream(out, deflater, 65536);
+                    final DataOutputStream bodyOut = new DataOutputStream(deflaterOut);
+                    writeFeatures(bodyOut, featureList);
+                    bodyOut.flush();
+                    deflaterOut.finish();
+                } finally {
+                    deflater.end();
+                }
+            } else {
+                writeFeatures(out, featureList);
+            }
+
+        } catch (final Throwable t) {
+            throw new IOException("failed to write " + path, t);
+        }
+    }
+
+    /**
+     * Reads feature data from the specified path.
+     * Files are memory mapped and feature values are bulk copied from the mapped (or inflated) body.
+     *
+     * @param  path  path of file to read.
+     *
+     * @return feature data read from the specified path.
+     *
+     * @throws IOException
+     *   if the file cannot be read or is not a valid binary feature file.
+     */
+    public static CanvasFeatureList read(final Path path)
+            throws IOException {
+
+        final ByteBuffer buffer;
+        try (final FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+
+        try {
+
+            final int magicNumber = buffer.getInt();
+            if (magicNumber != MAGIC_NUMBER) {
+                throw new IOException("missing binary feature format magic number");
+            }
+
+            final int version = buffer.getInt();
+            if (version != CURRENT_VERSION) {
+                throw new IOException("unsupported binary feature format version " + version);
+            }
+
+            final Compression compression = Compression.values()[buffer.get()];
+
+            final String groupId = readString(buffer);
+            final String id = readString(buffer);
+            final String relativePositionName = readString(buffer);
+            final CanvasId canvasId = new CanvasId(groupId,
+                                                   id,
+                                                   relativePositionName == null ?
+                                                   null : MontageRelativePosition.valueOf(relativePositionName));
+            final double[] clipOffsets = { buffer.getDouble(), buffer.getDouble() };
+            if ((clipOffsets[0] != 0.0) || (clipOffsets[1] != 0.0)) {
+                canvasId.setClipOffsets(clipOffsets);
+            }
+
+            final String renderParametersUrl = readString(buffer);
+            final long renderParametersHash = buffer.getLong();
+            if (renderParametersHash != getRenderParametersHash(renderParametersUrl)) {
+                throw new IOException("render parameters hash does not match render parameters URL");
+            }
+
+            final boolean hasRenderScale = (buffer.get() != 0);
+            final double renderScaleValue = buffer.getDouble();
+            final Double renderScale = hasRenderScale ? renderScaleValue : null;
+            final Integer clipWidth = readNullableInt(buffer);
+            final Integer clipHeight = readNullableInt(buffer);
+
+            final int featureCount = buffer.getInt();
+            final int descriptorSize = buffer.getInt();
+
+            buffer.position(buffer.position() + ((4 - (buffer.position() % 4)) % 4));
+
+            final int bodyLength = getBodyLength(featureCount, descriptorSize);
+            final ByteBuffer body;
+            if (Compression.DEFLATE.equals(compression)) {
+                body = ByteBuffer.wrap(inflate(buffer, bodyLength));
+            } else {
+                if (buffer.remaining() < bodyLength) {
+                    throw new IOException("feature body is truncated");
+                }
+                body = buffer.slice();
+            }
+
+            final List<Feature> featureList = readFeatures(body.asFloatBuffer(), featureCount, descriptorSize);
+
+            return new CanvasFeatureList(canvasId,
+                                         renderParametersUrl,
+                                         renderScale,
+                                         clipWidth,
+                                         clipHeight,
+                                         featureList);
+
+        } catch (final IOException | RuntimeException e) {
+            throw new IOException("failed to read binary features from " + path, e);
+        }
+    }
+
+    private static int getDescriptorSize(final List<Feature> featureList)
+            throws IllegalArgumentException {
+        final int descriptorSize = featureList.size() == 0 ? 0 : featureList.get(0).descriptor.length;
+        for (final Feature feature : featureList) {
+            if (feature.descriptor.length != descriptorSize) {
+                throw new IllegalArgumentException("feature descriptors must all have the same size (" +
+                                                   descriptorSize + ") but one has size " +
+                                                   feature.descriptor.length);
+            }
+        }
+        return descriptorSize;
+    }
+
+    private static int getBodyLength(final int featureCount,
+                                     final int descriptorSize)
+            throws IOException {
+        if ((featureCount < 0) || (descriptorSize < 0)) {
+            throw new IOException("invalid feature count (" + featureCount + ") or descriptor size (" +
+                                  descriptorSize + ")");
+        }
+        final long bodyLength =
+                (long) featureCount * (FLOATS_PER_FEATURE_WITHOUT_DESCRIPTOR + descriptorSize) * Float.BYTES;
+        if (bodyLength > Integer.MAX_VALUE) {
+            throw new IOException("feature body length " + bodyLength + " is too large");
+        }
+        return (int) bodyLength;
+    }
+
+    private static void writeFeatures(final DataOutputStream out,
+                                      final List<Feature> featureList)
+            throws IOException {
+        for (final Feature feature : featureList) {
+            out.writeFloat((float) feature.location[0]);
+            out.writeFloat((float) feature.location[1]);
+            out.writeFloat((float) feature.scale);
+            out.writeFloat((float) feature.orientation);
+            for (final float value : feature.descriptor) {
+                out.writeFloat(value);
+            }
+        }
+    }
+
+    private static List<Feature> readFeatures(final FloatBuffer floats,
+                                              final int featureCount,
+                                              final int descriptorSize) {
+        final List<Feature> featureList = new ArrayList<>(featureCount);
+        for (int i = 0; i < featureCount; i++) {
+            final double x = floats.get();
+            final double y = floats.get();
+            final double scale = floats.get();
+            final double orientation = floats.get();
+            final float[] descriptor = new float[descriptorSize];
+            floats.get(descriptor);
+            featureList.add(new Feature(scale, orientation, new double[] { x, y }, descriptor));
+        }
+        return featureList;
+    }
+
+    private static byte[] inflate(final ByteBuffer buffer,
+                                  final int bodyLength)
+            throws IOException {
+
+        final byte[] compressed = new byte[buffer.remaining()];
+        buffer.get(compressed);
+
+        final byte[] body = new byte[bodyLength];
+        final Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(compressed);
+            int offset = 0;
+            while (offset < bodyLength) {
+                final int count = inflater.inflate(body, offset, bodyLength - offset);
+                if ((count == 0) && (inflater.finished() || inflater.needsInput())) {
+                    throw new IOException("compressed feature body is truncated");
+                }
+                offset += count;
+            }
+        } catch (final DataFormatException e) {
+            throw new IOException("compressed feature body is corrupt", e);
+        } finally {
+            inflater.end();
+        }
+
+        return body;
+    }
+
+    private static void writeString(final DataOutputStream out,
+                                    final String value)
+            throws IOException {
+        if (value == null) {
+            out.writeInt(-1);
+        } else {
+            final byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            out.writeInt(bytes.length);
+            out.write(bytes);
+        }
+    }
+
+    private static String readString(final ByteBuffer buffer) {
+        String value = null;
+        final int length = buffer.getInt();
+        if (length >= 0) {
+            final byte[] bytes = new byte[length];
+            buffer.get(bytes);
+            value = new String(bytes, StandardCharsets.UTF_8);
+        }
+        return value;
+    }
+
+    private static void writeNullableInt(final DataOutputStream out,
+                                         final Integer value)
+            throws IOException {
+        out.writeBoolean(value != null);
+        out.writeInt(value == null ? 0 : value);
+    }
+
+    private static Integer readNullableInt(final ByteBuffer buffer) {
+        final boolean hasValue = (buffer.get() != 0);
+        final int value = buffer.getInt();
+        return hasValue ? value : null;
+    }
+
+}
@@ -5,7 +5,6 @@ import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 
-import mpicbg.ij.FeatureTransform;
 import mpicbg.imagefeatures.Feature;
 import mpicbg.models.Model;
 import mpicbg.models.NotEnoughDataPointsException;
@@ -47,9 +46,12 @@ public class CanvasFeatureMatcher implements Serializable {
     private final int minNumInliers;
     private final Integer maxNumInliers;
     private final FilterType filterType;
+    private final DescriptorMatcher descriptorMatcher;
+    private final ParallelRansac parallelRansac;
 
     /**
-     * Sets up everything that is needed to derive point matches from the feature lists of two canvases.
+     * Sets up everything that is needed to derive point matches from the feature lists of two canvases
+     * using the original (mpicbg) descriptor matcher.
      *
      * @param  rod             ratio of distances (e.g. 0.92f).
      * @param  modelType       type of model to use for filter.
@@ -70,6 +72,65 @@ public class CanvasFeatureMatcher implements Serializable {
                                 final double maxTrust,
                                 final Integer maxNumInliers,
                                 final FilterType filterType) {
+        this(rod, modelType, iterations, maxEpsilon, minInlierRatio, minNumInliers, maxTrust, maxNumInliers,
+             filterType, new MpicbgDescriptorMatcher());
+    }
+
+    /**
+     * Sets up everything that is needed to derive point matches from the feature lists of two canvases.
+     *
+     * @param  rod                ratio of distances (e.g. 0.92f).
+     * @param  modelType          type of model to use for filter.
+     * @param  iterations         filter iterations (e.g. 1000).
+     * @param  maxEpsilon         minimal allowed transfer error (e.g. 20.0f).
+     * @param  minInlierRatio     minimal ratio of inliers to candidates (e.g. 0.0f).
+     * @param  minNumInliers      minimal absolute number of inliers for matches (e.g. 10).
+     * @param  maxTrust           reject candidates with a cost larger than maxTrust * median cost (e.g. 3).
+     * @param  maxNumInliers      (optional) maximum number of inliers for matches; null indicates no maximum.
+     * @param  filterType         type of match filtering.
+     * @param  descriptorMatcher  matcher for identifying candidate matches from feature descriptors.
+     */
+    public CanvasFeatureMatcher(final float rod,
+                                final ModelType modelType,
+                                final int iterations,
+                                final float maxEpsilon,
+                                final float minInlierRatio,
+                                final int minNumInliers,
+                                final double maxTrust,
+                                final Integer maxNumInliers,
+                                final FilterType filterType,
+                                final DescriptorMatcher descriptorMatcher) {
+        this(rod, modelType, iterations, maxEpsilon, minInlierRatio, minNumInliers, maxTrust, maxNumInliers,
+             filterType, descriptorMatcher, null);
+    }
+
+    /**
+     * Sets up everything that is needed to derive point matches from the feature lists of two canvases.
+     *
+     * @param  rod                ratio of distances (e.g. 0.92f).
+     * @param  modelType          type of model to use for filter.
+     * @param  iterations         filter iterations (e.g. 1000).
+     * @param  maxEpsilon         minimal allowed transfer error (e.g. 20.0f).
+     * @param  minInlierRatio     minimal ratio of inliers to candidates (e.g. 0.0f).
+     * @param  minNumInliers      minimal absolute number of inliers for matches (e.g. 10).
+     * @param  maxTrust           reject candidates with a cost larger than maxTrust * median cost (e.g. 3).
+     * @param  maxNumInliers      (optional) maximum number of inliers for matches; null indicates no maximum.
+     * @param  filterType         type of match filtering.
+     * @param  descriptorMatcher  matcher for identifying candidate matches from feature descriptors.
+     * @param  parallelRansac     (optional) RANSAC engine to use for filtering;
+     *                            null indicates that the original mpicbg RANSAC filter should be used.
+     */
+    public CanvasFeatureMatcher(final float rod,
+                                final ModelType modelType,
+                                final int iterations,
+                                final float maxEpsilon,
+                                final float minInlierRatio,
+                                final int minNumInliers,
+                                final double maxTrust,
+                                final Integer maxNumInliers,
+                                final FilterType filterType,
+                                final DescriptorMatcher descriptorMatcher,
+                                final ParallelRansac parallelRansac) {
         this.rod = rod;
         this.modelType = modelType;
         this.iterations = iterations;
@@ -79,6 +140,8 @@ public class CanvasFeatureMatcher implements Serializable {
         this.maxTrust = maxTrust;
         this.maxNumInliers = maxNumInliers;
         this.filterType = filterType;
+        this.descriptorMatcher = descriptorMatcher;
+        this.parallelRansac = parallelRansac;
     }
 
     /**
@@ -90,16 +153,14 @@ public class CanvasFeatureMatcher implements Serializable {
     public CanvasFeatureMatchResult deriveMatchResult(final List<Feature> canvas1Features,
                                                       final List<Feature> canvas2Features) {
 
-        LOG.info("deriveMatchResult: entry, canvas1Features.size={}, canvas2Features.size={}",
-                 canvas1Features.size(), canvas2Features.size());
+        LOG.info("deriveMatchResult: entry, canvas1Features.size={}, canvas2Features.size={}, descriptorMatcher={}, parallelRansac={}",
+                 canvas1Features.size(), canvas2Features.size(), descriptorMatcher, parallelRansac);
 
         final Timer timer = new Timer();
         timer.start();
 
         final Model model = modelType.getInstance();
-        final List<PointMatch> candidates = new ArrayList<>(canvas1Features.size());
-
-        FeatureTransform.matchFeatures(canvas1Features, canvas2Features, candidates, rod);
+        final List<PointMatch> candidates = descriptorMatcher.matchFeatures(canvas1Features, canvas2Features, rod);
 
         CanvasFeatureMatchResult result = null;
         switch (filterType) {
@@ -134,13 +195,24 @@ public class CanvasFeatureMatcher implements Serializable {
 
         if (candidates.size() > 0) {
             try {
-                model.filterRansac(candidates,
-                                   inliers,
-                                   iterations,
-                                   maxEpsilon,
-                                   minInlierRatio,
-                                   minNumInliers,
-                                   maxTrust);
+                if (parallelRansac == null) {
+                    model.filterRansac(candidates,
+                                       inliers,
+                                       iterations,
+                                       maxEpsilon,
+                                       minInlierRatio,
+                                       minNumInliers,
+                                       maxTrust);
+                } else {
+                    parallelRansac.filterRansac(model,
+                                                candidates,
+                                                inliers,
+                                                iterations,
+                                                maxEpsilon,
+                                                minInlierRatio,
+                                                minNumInliers,
+                                                maxTrust);
+                }
             } catch (final NotEnoughDataPointsException e) {
                 LOG.warn("failed to filter outliers", e);
             }
@@ -161,36 +233,30 @@ public class CanvasFeatureMatcher implements Serializable {
      *     Saalfeld's Hot Knife MultiConsensusFilter
      * </a>
      *
+     * Both the sequential (mpicbg) and parallel implementations filter each set
+     * with this matcher's configured maxTrust (just like {@link #filterMatches}),
+     * so the number of filter threads never changes which consensus sets are found.
+     *
      * @param  candidates  list of all candidate matches.
      *
      * @return list of consensus set match lists in order of quality.
      */
     public List<List<PointMatch>> filterConsensusMatches(final List<PointMatch> candidates) {
 
-        final List<List<PointMatch>> listOfInliersLists = new ArrayList<>();
         final int totalNumberOfCandidates = candidates.size();
+        final List<List<PointMatch>> listOfInliersLists;
+        if (parallelRansac == null) {
+            listOfInliersLists = filterConsensusMatchesWithMpicbg(candidates);
+        } else {
+            listOfInliersLists = parallelRansac.filterConsensusSets(modelType,
+                                                                    candidates,
+                                                                    iterations,
+                                                                    maxEpsilon,
+                                                                    minInlierRatio,
+                                                                    minNumInliers,
+                                                                    maxTrust);
+        }
 
-        boolean modelFound;
-        do {
-            final Model model = modelType.getInstance();
-            final List<PointMatch> modelInliers = new ArrayList<>();
-            try {
-                modelFound = model.filterRansac(candidates,
-                                                modelInliers,
-                                                iterations,
-                                                maxEpsilon,
-                                                minInlierRatio,
-                                                minNumInliers);
-            } catch (final NotEnoughDataPointsException e) {
-                modelFound = false;
-            }
-
-            if (modelFound) {
-                listOfInliersLists.add(modelInliers);
-                candidates.removeAll(modelInliers);
-            }
-
-        } while (modelFound);
 
         // additional post processing of inliers is needed to apply maxNumInliers constraint and address minNumInliers bug
 
@@ -216,6 +282,36 @@ public class CanvasFeatureMatcher implements Serializable {
         return processedListOfInliersLists;
     }
 
+    private List<List<PointMatch>> filterConsensusMatchesWithMpicbg(final List<PointMatch> candidates) {
+
+        final List<List<PointMatch>> listOfInliersLists = new ArrayList<>();
+
+        boolean modelFound;
+        do {
+            final Model model = modelType.getInstance();
+            final List<PointMatch> modelInliers = new ArrayList<>();
+            try {
+                modelFound = model.filterRansac(candidates,
+                                                modelInliers,
+                                                iterations,
+                                                maxEpsilon,
+                                                minInlierRatio,
+                                                minNumInliers,
+                                                maxTrust);
+            } catch (final NotEnoughDataPointsException e) {
+                modelFound = false;
+            }
+
+            if (modelFound) {
+                listOfInliersLists.add(modelInliers);
+                candidates.removeAll(modelInliers);
+            }
+
+        } while (modelFound);
+
+        return listOfInliersLists;
+    }
+
     private void postProcessInliers(final List<PointMatch> inliers) {
 
         // TODO: remove this extra check once RANSAC filter issue is fixed
@@ -0,0 +1,40 @@
+package org.janelia.alignment.match;
+
+/**
+ * Supported formats for persisted {@link CanvasFeatureList} data.
+ *
+ * @author Eric Trautman
+ */
+public enum CanvasFeatureStorageFormat {
+
+    /** Original gzipped JSON format. */
+    JSON(".features.json.gz", null),
+
+    /** Versioned binary format with an uncompressed (memory mappable) feature body. */
+    BINARY(".features.bin", CanvasFeatureListBinaryFormat.Compression.NONE),
+
+    /** Versioned binary format with a deflate compressed feature body. */
+    DEFLATED_BINARY(".features.bin", CanvasFeatureListBinaryFormat.Compression.DEFLATE);
+
+    private final String fileExtension;
+    private final CanvasFeatureListBinaryFormat.Compression compression;
+
+    CanvasFeatureStorageFormat(final String fileExtension,
+                               final CanvasFeatureListBinaryFormat.Compression compression) {
+        this.fileExtension = fileExtension;
+        this.compression = compression;
+    }
+
+    public String getFileExtension() {
+        return fileExtension;
+    }
+
+    public boolean isBinary() {
+        return compression != null;
+    }
+
+    public CanvasFeatureListBinaryFormat.Compression getCompression() {
+        return compression;
+    }
+
+}
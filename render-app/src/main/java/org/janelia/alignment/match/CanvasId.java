@@ -122,6 +122,15 @@ public class CanvasId
         }
     }
 
+    /**
+     * Restores previously derived clip offsets (e.g. when reading persisted feature data).
+     *
+     * @param  clipOffsets  full scale x[0] and y[1] offsets (or null if the canvas is not clipped).
+     */
+    void setClipOffsets(final double[] clipOffsets) {
+        this.clipOffsets = clipOffsets;
+    }
+
     @Override
     public boolean equals(final Object that) {
         if (this == that) {
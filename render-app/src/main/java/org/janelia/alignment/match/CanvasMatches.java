@@ -83,6 +83,35 @@ public class CanvasMatches implements Serializable, Comparable<CanvasMatches> {
         normalize();
     }
 
+    /**
+     * Unlike the basic constructor, this does not normalize p and q ordering or check for missing values,
+     * so stored matches can be loaded exactly as they are (just like matches parsed with {@link #fromJson}).
+     *
+     * @param  pGroupId          group (or section) identifier for the source canvas (or tile).
+     * @param  pId               identifier for the source canvas (or tile).
+     * @param  qGroupId          group (or section) identifier for the target canvas (or tile).
+     * @param  qId               identifier for the target canvas (or tile).
+     * @param  consensusSetData  information about this consensus set of matches (or null if there is only one set).
+     * @param  matches           weighted source-target point correspondences.
+     *
+     * @return matches with the specified values.
+     */
+    public static CanvasMatches buildWithoutNormalizing(final String pGroupId,
+                                                        final String pId,
+                                                        final String qGroupId,
+                                                        final String qId,
+                                                        final ConsensusSetData consensusSetData,
+                                                        final Matches matches) {
+        final CanvasMatches canvasMatches = new CanvasMatches();
+        canvasMatches.pGroupId = pGroupId;
+        canvasMatches.pId = pId;
+        canvasMatches.qGroupId = qGroupId;
+        canvasMatches.qId = qId;
+        canvasMatches.consensusSetData = consensusSetData;
+        canvasMatches.matches = matches;
+        return canvasMatches;
+    }
+
     /**
      * Ensures that for any two canvases (tiles), the source (p) and target (q) are consistently assigned.
      * This is done by using lexicographic ordering of the group and canvas ids.
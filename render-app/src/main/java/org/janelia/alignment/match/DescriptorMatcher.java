@@ -0,0 +1,33 @@
+package org.janelia.alignment.match;
+
+import java.io.Serializable;
+import java.util.List;
+
+import mpicbg.imagefeatures.Feature;
+import mpicbg.models.PointMatch;
+
+/**
+ * Finds candidate point matches between two feature lists by comparing feature descriptors.
+ *
+ * All implementations apply the same ratio of distances (rod) test as
+ * {@link mpicbg.ij.FeatureTransform#matchFeatures}: a feature is matched with its nearest neighbor
+ * only if the distance to that neighbor is less than rod times the distance to the second nearest neighbor.
+ * Ambiguous candidates (where more than one feature matches the same target location) are removed.
+ *
+ * @author Eric Trautman
+ */
+public interface DescriptorMatcher
+        extends Serializable {
+
+    /**
+     * @param  features1  features for the first canvas.
+     * @param  features2  features for the second canvas.
+     * @param  rod        ratio of distances (e.g. 0.92f).
+     *
+     * @return list of candidate matches (in features1 order) with p1 from features1 and p2 from features2.
+     */
+    List<PointMatch> matchFeatures(final List<Feature> features1,
+                                   final List<Feature> features2,
+                                   final double rod);
+
+}
@@ -0,0 +1,47 @@
+package org.janelia.alignment.match;
+
+/**
+ * Supported {@link DescriptorMatcher} implementations.
+ *
+ * @author Eric Trautman
+ */
+public enum DescriptorMatcherType {
+
+    /** Original single threaded exact matcher (mpicbg FeatureTransform#matchFeatures). */
+    MPICBG,
+
+    /** Exact (multithreaded) matcher that produces the same matches as MPICBG. */
+    BRUTE_FORCE,
+
+    /** Approximate (multithreaded) matcher that searches a forest of randomized kd-trees. */
+    KD_FOREST;
+
+    /** Fixed seed so that approximate matches can be reproduced. */
+    private static final long KD_FOREST_SEED = 42L;
+
+    /**
+     * @param  numberOfThreads  number of threads for multithreaded matchers.
+     * @param  numberOfTrees    number of trees for kd forest matchers.
+     * @param  maxChecks        maximum number of descriptor comparisons per feature for kd forest matchers.
+     *
+     * @return a matcher instance of this type.
+     */
+    public DescriptorMatcher buildInstance(final int numberOfThreads,
+                                           final int numberOfTrees,
+                                           final int maxChecks) {
+        final DescriptorMatcher matcher;
+        switch (this) {
+            case BRUTE_FORCE:
+                matcher = new BruteForceDescriptorMatcher(numberOfThreads);
+                break;
+            case KD_FOREST:
+                matcher = new KdForestDescriptorMatcher(numberOfTrees, maxChecks, KD_FOREST_SEED, numberOfThreads);
+                break;
+            default:
+                matcher = new MpicbgDescriptorMatcher();
+                break;
+        }
+        return matcher;
+    }
+
+}
@@ -0,0 +1,93 @@
+package org.janelia.alignment.match;
+
+import java.util.List;
+
+import mpicbg.imagefeatures.Feature;
+
+/**
+ * Copies the descriptors for a list of features into one flat array so that distance calculations
+ * can scan contiguous memory instead of chasing a separate array reference for every feature.
+ *
+ * @author Eric Trautman
+ */
+class FeatureDescriptors {
+
+    private final int size;
+    private final int dimension;
+    private final float[] data;
+
+    /**
+     * @param  features  features to copy.
+     *
+     * @throws IllegalArgumentException
+     *   if the features do not all have descriptors with the same dimension.
+     */
+    FeatureDescriptors(final List<Feature> features)
+            throws IllegalArgumentException {
+
+        this.size = features.size();
+        this.dimension = size == 0 ? 0 : features.get(0).descriptor.length;
+        this.data = new float[size * dimension];
+
+        int offset = 0;
+        for (final Feature feature : features) {
+            if (feature.descriptor.length != dimension) {
+                throw new IllegalArgumentException("feature descriptors must all have the same dimension (" +
+                                                   dimension + ") but one has dimension " +
+                                                   feature.descriptor.length);
+            }
+            System.arraycopy(feature.descriptor, 0, data, offset, dimension);
+            offset += dimension;
+        }
+    }
+
+    int size() {
+        return size;
+    }
+
+    int getDimension() {
+        return dimension;
+    }
+
+    /**
+     * @return value of the specified descriptor component.
+     */
+    float get(final int index,
+              final int component) {
+        return data[(index * dimension) + component];
+    }
+
+    /**
+     * @return squared euclidean distance between the specified descriptor in this set and
+     *         the specified descriptor in the other set or a value greater than or equal to
+     *         the specified limit if the distance is at least that large
+     *         (allows callers to stop calculating as soon as a candidate is clearly too far away).
+     */
+    double squaredDistance(final int index,
+                           final FeatureDescriptors other,
+                           final int otherIndex,
+                           final double limit) {
+
+        final float[] otherData = other.data;
+        int i = index * dimension;
+        int j = otherIndex * dimension;
+        final int end = i + dimension;
+
+        // check the limit in blocks of 16 components to keep the inner loop tight
+        double sum = 0;
+        while (i < end) {
+            final int blockEnd = Math.min(i + 16, end);
+            for (; i < blockEnd; i++, j++) {
+                // same arithmetic as mpicbg Feature#descriptorDistance so that results are identical
+                final double a = data[i] - otherData[j];
+                sum += a * a;
+            }
+            if (sum >= limit) {
+                break;
+            }
+        }
+
+        return sum;
+    }
+
+}
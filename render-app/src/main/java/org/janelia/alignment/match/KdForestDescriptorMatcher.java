@@ -0,0 +1,440 @@
+package org.janelia.alignment.match;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Approximate descriptor matcher that searches a forest of randomized kd-trees
+ * (in the style of FLANN, see Muja and Lowe, "Fast Approximate Nearest Neighbors with Automatic
+ * Algorithm Configuration").
+ *
+ * Each tree splits the second canvas descriptors on a dimension randomly chosen from the dimensions
+ * with the highest variance.  A query descends every tree and then continues exploring the closest
+ * unexplored branches (across all trees) until the maximum number of descriptors has been checked.
+ * The nearest neighbors found are then subjected to the same ratio of distances test used by the
+ * exact matchers, so the result is a (typically large) subset of the exact candidate matches
+ * found in a fraction of the time.
+ *
+ * @author Eric Trautman
+ */
+public class KdForestDescriptorMatcher
+        extends AbstractDescriptorMatcher {
+
+    /** Default number of randomized trees in each forest. */
+    public static final int DEFAULT_NUMBER_OF_TREES = 4;
+
+    /** Default maximum number of descriptors to compare for each query. */
+    public static final int DEFAULT_MAX_CHECKS = 256;
+
+    /** Maximum number of descriptors in a tree leaf. */
+    private static final int LEAF_SIZE = 8;
+
+    /** Number of descriptors sampled to choose each split. */
+    private static final int SPLIT_SAMPLE_SIZE = 100;
+
+    /** Number of highest variance dimensions to randomly choose from for each split. */
+    private static final int SPLIT_CANDIDATE_DIMENSIONS = 5;
+
+    private final int numberOfTrees;
+    private final int maxChecks;
+    private final long seed;
+
+    /**
+     * @param  numberOfTrees    number of randomized trees to build for each match call.
+     * @param  maxChecks        maximum number of descriptors to compare for each query
+     *                          (higher values improve accuracy but take longer).
+     * @param  seed             seed for tree randomization (allows results to be reproduced).
+     * @param  numberOfThreads  number of threads to use for each match call.
+     *
+     * @throws IllegalArgumentException
+     *   if any of the parameters are less than 1.
+     */
+    public KdForestDescriptorMatcher(final int numberOfTrees,
+                                     final int maxChecks,
+                                     final long seed,
+                                     final int numberOfThreads)
+            throws IllegalArgumentException {
+
+        super(numberOfThreads);
+
+        if (numberOfTrees < 1) {
+            throw new IllegalArgumentException("numberOfTrees must be greater than 0");
+        }
+        if (maxChecks < 1) {
+            throw new IllegalArgumentException("maxChecks must be greater than 0");
+        }
+
+        this.numberOfTrees = numberOfTrees;
+        this.maxChecks = maxChecks;
+        this.seed = seed;
+    }
+
+    @Override
+    protected SearcherFactory index(final FeatureDescriptors targets) {
+
+        final Random random = new Random(seed);
+        final KdTree[] trees = new KdTree[numberOfTrees];
+        for (int i = 0; i < trees.length; i++) {
+            trees[i] = new KdTree(targets, random);
+        }
+
+        return () -> new ForestSearcher(targets, trees, maxChecks);
+    }
+
+    @Override
+    public String toString() {
+        return "{type: 'KD_FOREST', numberOfTrees: " + numberOfTrees +
+               ", maxChecks: " + maxChecks +
+               ", seed: " + seed +
+               ", numberOfThreads: " + getNumberOfThreads() +
+               '}';
+    }
+
+    /**
+     * Randomized kd-tree stored in flat arrays.
+     * Leaves reference a contiguous range of the tree's descriptor index permutation.
+     */
+    private static class KdTree {
+
+        private final int[] descriptorIndexes;
+
+        private int nodeCount;
+        private int[] splitDimensions;   // -1 for leaves
+        private float[] splitValues;
+        private int[] lowChildren;       // for leaves: start of descriptor range
+        private int[] highChildren;      // for leaves: end (exclusive) of descriptor range
+
+        private KdTree(final FeatureDescriptors descriptors,
+                       final Random random) {
+
+            final int size = descriptors.size();
+
+            descriptorIndexes = new int[size];
+            for (int i = 0; i < size; i++) {
+                descriptorIndexes[i] = i;
+            }
+
+            // shuffle so that split samples (taken from the start of each range) are random
+            for (int i = size - 1; i > 0; i--) {
+                final int j = random.nextInt(i + 1);
+                final int swap = descriptorIndexes[i];
+                descriptorIndexes[i] = descriptorIndexes[j];
+                descriptorIndexes[j] = swap;
+            }
+
+            final int initialCapacity = Math.max(16, 4 * size / LEAF_SIZE);
+            nodeCount = 0;
+            splitDimensions = new int[initialCapacity];
+            splitValues = new float[initialCapacity];
+            lowChildren = new int[initialCapacity];
+            highChildren = new int[initialCapacity];
+
+            buildNode(descriptors, 0, size, random);
+        }
+
+        private boolean isLeaf(final int node) {
+            return splitDimensions[node] < 0;
+        }
+
+        private int buildNode(final FeatureDescriptors descriptors,
+                              final int start,
+                              final int end,
+                              final Random random) {
+
+            final int node = addNode();
+
+            if ((end - start) <= LEAF_SIZE) {
+                setLeaf(node, start, end);
+                return node;
+            }
+
+            final int dimension = descriptors.getDimension();
+            final int sampleEnd = Math.min(end, start + SPLIT_SAMPLE_SIZE);
+            final int sampleSize = sampleEnd - start;
+
+            final double[] mean = new double[dimension];
+            final double[] variance = new double[dimension];
+            for (int i = start; i < sampleEnd; i++) {
+                for (int d = 0; d < dimension; d++) {
+                    mean[d] += descriptors.get(descriptorIndexes[i], d);
+                }
+            }
+            for (int d = 0; d < dimension; d++) {
+                mean[d] /= sampleSize;
+            }
+            for (int i = start; i < sampleEnd; i++) {
+                for (int d = 0; d < dimension; d++) {
+                    final double delta = descriptors.get(descriptorIndexes[i], d) - mean[d];
+                    variance[d] += delta * delta;
+                }
+            }
+
+            final int splitDimension = chooseSplitDimension(variance, random);
+            final float splitValue = (float) mean[splitDimension];
+
+            // partition range so that descriptors with values below the split come first
+            int low = start;
+            int high = end - 1;
+            while (low <= high) {
+                if (descriptors.get(descriptorIndexes[low], splitDimension) < splitValue) {
+                    low++;
+                } else {
+                    final int swap = descriptorIndexes[low];
+                    descriptorIndexes[low] = descriptorIndexes[high];
+                    descriptorIndexes[high] = swap;
+                    high--;
+                }
+            }
+
+            int middle = low;
+            if ((middle == start) || (middle == end)) {
+                // all sampled values are the same, so just split the range in half
+                middle = (start + end) / 2;
+            }
+
+            splitDimensions[node] = splitDimension;
+            splitValues[node] = splitValue;
+
+            final int lowChild = buildNode(descriptors, start, middle, random);
+            final int highChild = buildNode(descriptors, middle, end, random);
+            lowChildren[node] = lowChild;
+            highChildren[node] = highChild;
+
+            return node;
+        }
+
+        private int addNode() {
+            if (nodeCount == splitDimensions.length) {
+                final int capacity = nodeCount * 2;
+                splitDimensions = Arrays.copyOf(splitDimensions, capacity);
+                splitValues = Arrays.copyOf(splitValues, capacity);
+                lowChildren = Arrays.copyOf(lowChildren, capacity);
+                highChildren = Arrays.copyOf(highChildren, capacity);
+            }
+            final int node = nodeCount;
+            nodeCount++;
+            return node;
+        }
+
+        private void setLeaf(final int node,
+                             final int start,
+                             final int end) {
+            splitDimensions[node] = -1;
+            lowChildren[node] = start;
+            highChildren[node] = end;
+        }
+
+        private static int chooseSplitDimension(final double[] variance,
+                                                final Random random) {
+
+            // find the highest variance dimensions (insertion into a small sorted array)
+            final int candidateCount = Math.min(SPLIT_CANDIDATE_DIMENSIONS, variance.length);
+            final int[] candidates = new int[candidateCount];
+            int found = 0;
+            for (int d = 0; d < variance.length; d++) {
+                int position = found;
+                while ((position > 0) && (variance[candidates[position - 1]] < variance[d])) {
+                    position--;
+                }
+                if (position < candidateCount) {
+                    final int moveCount = Math.min(found, candidateCount - 1) - position;
+                    if (moveCount > 0) {
+                        System.arraycopy(candidates, position, candidates, position + 1, moveCount);
+                    }
+                    candidates[position] = d;
+                    found = Math.min(found + 1, candidateCount);
+                }
+            }
+
+            return candidates[random.nextInt(found)];
+        }
+    }
+
+    /**
+     * Best-bin-first search across all trees of a forest.  Instances are confined to one thread.
+     */
+    private static class ForestSearcher
+            implements Searcher {
+
+        private final FeatureDescriptors targets;
+        private final KdTree[] trees;
+        private final int maxChecks;
+
+        private final int[] checkedStamps;
+        private int stamp;
+        private int checkCount;
+
+        private final BranchHeap branches;
+
+        private ForestSearcher(final FeatureDescriptors targets,
+                               final KdTree[] trees,
+                               final int maxChecks) {
+            this.targets = targets;
+            this.trees = trees;
+            this.maxChecks = maxChecks;
+            this.checkedStamps = new int[targets.size()];
+            this.stamp = 0;
+            this.branches = new BranchHeap();
+        }
+
+        @Override
+        public void findTwoNearest(final FeatureDescriptors queries,
+                                   final int queryIndex,
+                                   final NearestNeighbors neighbors) {
+
+            // use a new stamp for each query so that descriptors found in more than one tree are only checked once
+            stamp++;
+            if (stamp == Integer.MAX_VALUE) {
+                Arrays.fill(checkedStamps, 0);
+                stamp = 1;
+            }
+            checkCount = 0;
+            branches.clear();
+
+            for (int tree = 0; tree < trees.length; tree++) {
+                descend(queries, queryIndex, tree, 0, 0.0, neighbors);
+            }
+
+            while ((checkCount < maxChecks) && (! branches.isEmpty())) {
+                if (branches.peekBound() >= neighbors.getSquaredDistanceLimit()) {
+                    break; // no remaining branch can contain a closer descriptor
+                }
+                final int tree = branches.peekTree();
+                final int node = branches.peekNode();
+                final double bound = branches.peekBound();
+                branches.pop();
+                descend(queries, queryIndex, tree, node, bound, neighbors);
+            }
+        }
+
+        private void descend(final FeatureDescriptors queries,
+                             final int queryIndex,
+                             final int treeIndex,
+                             final int startNode,
+                             final double bound,
+                             final NearestNeighbors neighbors) {
+
+            final KdTree tree = trees[treeIndex];
+
+            int node = startNode;
+            while (! tree.isLeaf(node)) {
+                final double delta = queries.get(queryIndex, tree.splitDimensions[node]) - tree.splitValues[node];
+                final int nearChild;
+                final int farChild;
+                if (delta < 0) {
+                    nearChild = tree.lowChildren[node];
+                    farChild = tree.highChildren[node];
+                } else {
+                    nearChild = tree.highChildren[node];
+                    farChild = tree.lowChildren[node];
+                }
+                branches.push(bound + (delta * delta), treeIndex, farChild);
+                node = nearChild;
+            }
+
+            final int end = tree.highChildren[node];
+            for (int i = tree.lowChildren[node]; i < end; i++) {
+                final int targetIndex = tree.descriptorIndexes[i];
+                if (checkedStamps[targetIndex] != stamp) {
+                    checkedStamps[targetIndex] = stamp;
+                    checkCount++;
+                    neighbors.offer(targetIndex,
+                                    queries.squaredDistance(queryIndex,
+                                                            targets,
+                                                            targetIndex,
+                                                            neighbors.getSquaredDistanceLimit()));
+                }
+            }
+        }
+    }
+
+    /**
+     * Minimal binary min-heap of unexplored branches (ordered by lower distance bound)
+     * that avoids allocating an object for every branch.
+     */
+    private static class BranchHeap {
+
+        private double[] bounds = new double[256];
+        private int[] treeIndexes = new int[256];
+        private int[] nodes = new int[256];
+        private int size = 0;
+
+        private void clear() {
+            size = 0;
+        }
+
+        private boolean isEmpty() {
+            return size == 0;
+        }
+
+        private double peekBound() {
+            return bounds[0];
+        }
+
+        private int peekTree() {
+            return treeIndexes[0];
+        }
+
+        private int peekNode() {
+            return nodes[0];
+        }
+
+        private void push(final double bound,
+                          final int treeIndex,
+                          final int node) {
+
+            if (size == bounds.length) {
+                bounds = Arrays.copyOf(bounds, size * 2);
+                treeIndexes = Arrays.copyOf(treeIndexes, size * 2);
+                nodes = Arrays.copyOf(nodes, size * 2);
+            }
+
+            int child = size;
+            size++;
+            while (child > 0) {
+                final int parent = (child - 1) / 2;
+                if (bounds[parent] <= bound) {
+                    break;
+                }
+                set(child, bounds[parent], treeIndexes[parent], nodes[parent]);
+                child = parent;
+            }
+            set(child, bound, treeIndex, node);
+        }
+
+        private void pop() {
+
+            size--;
+            if (size > 0) {
+                final double bound = bounds[size];
+                final int treeIndex = treeIndexes[size];
+                final int node = nodes[size];
+
+                int parent = 0;
+                int child = 1;
+                while (child < size) {
+                    if (((child + 1) < size) && (bounds[child + 1] < bounds[child])) {
+                        child++;
+                    }
+                    if (bound <= bounds[child]) {
+                        break;
+                    }
+                    set(parent, bounds[child], treeIndexes[child], nodes[child]);
+                    parent = child;
+                    child = (2 * parent) + 1;
+                }
+                set(parent, bound, treeIndex, node);
+            }
+        }
+
+        private void set(final int index,
+                         final double bound,
+                         final int treeIndex,
+                         final int node) {
+            bounds[index] = bound;
+            treeIndexes[index] = treeIndex;
+            nodes[index] = node;
+        }
+    }
+
+}
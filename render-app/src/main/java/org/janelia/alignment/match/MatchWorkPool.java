@@ -0,0 +1,97 @@
+package org.janelia.alignment.match;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Process wide daemon pool shared by concurrent feature extraction, descriptor matching, and RANSAC
+ * so that concurrent match derivations share one bounded set of threads.
+ *
+ * The pool size defaults to the number of available processors and can be changed with the
+ * render.matchWorkThreads system property.
+ *
+ * @author Eric Trautman
+ */
+public class MatchWorkPool {
+
+    /** System property for the number of shared pool threads. */
+    public static final String THREADS_PROPERTY_NAME = "render.matchWorkThreads";
+
+    private static volatile ExecutorService sharedExecutor;
+
+    /**
+     * Runs the specified worker on the calling thread and on up to (numberOfWorkers - 1) pool threads.
+     *
+     * Workers must repeatedly claim work from shared state (e.g. an atomic counter) until none is left,
+     * so that the calling thread alone can complete all of the work.  Once the calling thread's worker
+     * returns, all work has been claimed.  Helpers that are still queued (e.g. behind other requests)
+     * are then cancelled and only helpers that have already started (and may be finishing claimed work)
+     * are waited for.
+     *
+     * @param  worker           worker to run.
+     * @param  numberOfWorkers  maximum number of workers (including the calling thread).
+     * @param  context          context for error messages.
+     *
+     * @throws IllegalStateException
+     *   if any worker fails or if the calling thread is interrupted while waiting for helpers.
+     */
+    public static void runWithHelpers(final Runnable worker,
+                                      final int numberOfWorkers,
+                                      final String context)
+            throws IllegalStateException {
+
+        final ExecutorService executorService = getSharedExecutor();
+        final List<Future<?>> helpers = new ArrayList<>(Math.max(0, numberOfWorkers - 1));
+        for (int i = 1; i < numberOfWorkers; i++) {
+            helpers.add(executorService.submit(worker));
+        }
+
+        try {
+            worker.run();
+            for (final Future<?> helper : helpers) {
+                // cancel fails for helpers that have started (or finished), so only those are waited for
+                if (! helper.cancel(false)) {
+                    helper.get();
+                }
+            }
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(context + " was interrupted", e);
+        } catch (final ExecutionException e) {
+            throw new IllegalStateException(context + " failed", e.getCause());
+        } finally {
+            for (final Future<?> helper : helpers) {
+                helper.cancel(true);
+            }
+        }
+    }
+
+    private static ExecutorService getSharedExecutor() {
+        if (sharedExecutor == null) {
+            setSharedExecutor();
+        }
+        return sharedExecutor;
+    }
+
+    private static synchronized void setSharedExecutor() {
+        if (sharedExecutor == null) {
+            final int numberOfThreads = Math.max(1, Integer.getInteger(THREADS_PROPERTY_NAME,
+                                                                       Runtime.getRuntime().availableProcessors()));
+            sharedExecutor = Executors.newFixedThreadPool(
+                    numberOfThreads,
+                    new ThreadFactoryBuilder().setNameFormat("match-work-%d").setDaemon(true).build());
+            LOG.info("setSharedExecutor: created pool with {} threads", numberOfThreads);
+        }
+    }
+
+    private static final Logger LOG = LoggerFactory.getLogger(MatchWorkPool.class);
+}
@@ -0,0 +1,32 @@
+package org.janelia.alignment.match;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import mpicbg.ij.FeatureTransform;
+import mpicbg.imagefeatures.Feature;
+import mpicbg.models.PointMatch;
+
+/**
+ * Original single threaded brute force matcher that simply delegates to mpicbg FeatureTransform#matchFeatures.
+ *
+ * @author Eric Trautman
+ */
+public class MpicbgDescriptorMatcher
+        implements DescriptorMatcher {
+
+    @Override
+    public List<PointMatch> matchFeatures(final List<Feature> features1,
+                                          final List<Feature> features2,
+                                          final double rod) {
+        final List<PointMatch> matches = new ArrayList<>(features1.size());
+        FeatureTransform.matchFeatures(features1, features2, matches, rod);
+        return matches;
+    }
+
+    @Override
+    public String toString() {
+        return "{type: 'MPICBG'}";
+    }
+
+}
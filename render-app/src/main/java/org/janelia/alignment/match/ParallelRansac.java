@@ -0,0 +1,528 @@
+package org.janelia.alignment.match;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import mpicbg.models.IllDefinedDataPointsException;
+import mpicbg.models.Model;
+import mpicbg.models.NotEnoughDataPointsException;
+import mpicbg.models.PointMatch;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * RANSAC implementation that mirrors mpicbg Model#filterRansac but:
+ *
+ * <ul>
+ *     <li>
+ *         evaluates hypotheses across multiple threads that share the best model found so far,
+ *     </li>
+ *     <li>
+ *         (optionally) stops as soon as enough hypotheses have been evaluated to find the best model
+ *         with the configured confidence given the best inlier ratio observed so far
+ *         (the configured number of iterations is always the upper limit), and
+ *     </li>
+ *     <li>
+ *         evaluates hypotheses against flat candidate coordinate arrays and tracks remaining candidates
+ *         with reusable index arrays so that consensus set rounds do not rebuild point match lists.
+ *     </li>
+ * </ul>
+ *
+ * Hypotheses are evaluated exactly like mpicbg (fit to a random minimal set, then repeatedly refit to
+ * all inliers until the inlier set stops growing) and the best hypothesis is filtered with
+ * mpicbg Model#filter, so results are compatible with mpicbg Model#filterRansac.
+ *
+ * @author Eric Trautman
+ */
+public class ParallelRansac
+        implements Serializable {
+
+    /** Seed for hypothesis sampling so that single threaded runs are repeatable. */
+    private static final long DEFAULT_SEED = 69997;
+
+    private final int numberOfThreads;
+    private final Double confidence;
+
+    /**
+     * @param  numberOfThreads  number of threads to use for evaluating hypotheses.
+     * @param  confidence       (optional) desired probability of finding the best model (e.g. 0.99)
+     *                          used to stop RANSAC early, null indicates that all iterations should be run.
+     *
+     * @throws IllegalArgumentException
+     *   if the number of threads is less than 1 or the confidence is not between 0 and 1.
+     */
+    public ParallelRansac(final int numberOfThreads,
+                          final Double confidence)
+            throws IllegalArgumentException {
+
+        if (numberOfThreads < 1) {
+            throw new IllegalArgumentException("numberOfThreads must be greater than 0");
+        }
+        if ((confidence != null) && ((confidence <= 0.0) || (confidence >= 1.0))) {
+            throw new IllegalArgumentException("confidence must be greater than 0 and less than 1");
+        }
+
+        this.numberOfThreads = numberOfThreads;
+        this.confidence = confidence;
+    }
+
+    /**
+     * Filters the specified candidates into a single inlier set (like mpicbg Model#filterRansac).
+     *
+     * @param  model           model to fit (will be set to the filtered inlier model if one is found).
+     * @param  candidates      candidate matches.
+     * @param  inliers         collection to populate with filtered inliers.
+     * @param  iterations      maximum number of hypotheses to evaluate.
+     * @param  maxEpsilon      maximal allowed transfer error.
+     * @param  minInlierRatio  minimal ratio of inliers to candidates.
+     * @param  minNumInliers   minimal absolute number of inliers.
+     * @param  maxTrust        reject candidates with a cost larger than maxTrust * median cost.
+     *
+     * @return true if a model was found; otherwise false.
+     *
+     * @throws NotEnoughDataPointsException
+     *   if there are not enough candidates to fit the model.
+     */
+    public boolean filterRansac(final Model<?> model,
+                                final List<PointMatch> candidates,
+                                final Collection<PointMatch> inliers,
+                                final int iterations,
+                                final double maxEpsilon,
+                                final double minInlierRatio,
+                                final int minNumInliers,
+                                final double maxTrust)
+            throws NotEnoughDataPointsException {
+
+        final CandidateSet candidateSet = new CandidateSet(candidates);
+        return filterRemaining(model, candidateSet, inliers, iterations, maxEpsilon,
+                               minInlierRatio, minNumInliers, maxTrust);
+    }
+
+    /**
+     * Repeatedly filters inlier sets from the specified candidates until no more models can be found
+     * (like the mpicbg Model#filterRansac loop in Saalfeld's Hot Knife MultiConsensusFilter).
+     * Inliers for each consensus set are removed from the candidates list.
+     *
+     * @param  modelType       type of model to fit.
+     * @param  candidates      candidate matches.
+     * @param  iterations      maximum number of hypotheses to evaluate for each consensus set.
+     * @param  maxEpsilon      maximal allowed transfer error.
+     * @param  minInlierRatio  minimal ratio of inliers to (remaining) candidates.
+     * @param  minNumInliers   minimal absolute number of inliers.
+     * @param  maxTrust        reject candidates with a cost larger than maxTrust * median cost.
+     *
+     * @return list of consensus set inlier lists in the order they were found.
+     */
+    public List<List<PointMatch>> filterConsensusSets(final ModelType modelType,
+                                                      final List<PointMatch> candidates,
+                                                      final int iterations,
+                                                      final double maxEpsilon,
+                                                      final double minInlierRatio,
+                                                      final int minNumInliers,
+                                                      final double maxTrust) {
+
+        final List<List<PointMatch>> listOfInliersLists = new ArrayList<>();
+        final CandidateSet candidateSet = new CandidateSet(candidates);
+
+        boolean modelFound;
+        do {
+            final Model model = modelType.getInstance();
+            final List<PointMatch> modelInliers = new ArrayList<>();
+            try {
+                modelFound = filterRemaining(model, candidateSet, modelInliers, iterations, maxEpsilon,
+                                             minInlierRatio, minNumInliers, maxTrust);
+            } catch (final NotEnoughDataPointsException e) {
+                modelFound = false;
+            }
+
+            if (modelFound) {
+                listOfInliersLists.add(modelInliers);
+                candidateSet.remove(modelInliers);
+            }
+
+        } while (modelFound);
+
+        // keep candidates list consistent with the mpicbg consensus loop (that removes inliers from it)
+        if (listOfInliersLists.size() > 0) {
+            final List<PointMatch> remainingCandidates = candidateSet.getRemainingMatches();
+            candidates.clear();
+            candidates.addAll(remainingCandidates);
+        }
+
+        return listOfInliersLists;
+    }
+
+    @Override
+    public String toString() {
+        return "{numberOfThreads: " + numberOfThreads + ", confidence: " + confidence + '}';
+    }
+
+    private boolean filterRemaining(final Model<?> model,
+                                    final CandidateSet candidateSet,
+                                    final Collection<PointMatch> inliers,
+                                    final int iterations,
+                                    final double maxEpsilon,
+                                    final double minInlierRatio,
+                                    final int minNumInliers,
+                                    final double maxTrust)
+            throws NotEnoughDataPointsException {
+
+        inliers.clear();
+
+        final int minNumMatches = model.getMinNumMatches();
+        if (candidateSet.remainingCount < minNumMatches) {
+            throw new NotEnoughDataPointsException(candidateSet.remainingCount + " data points are not enough to " +
+                                                   "solve the Model, at least " + minNumMatches +
+                                                   " data points required.");
+        }
+
+        final Hypothesis best = findBestHypothesis(model, candidateSet, iterations, maxEpsilon,
+                                                   minInlierRatio, minNumInliers);
+
+        boolean modelFound = false;
+        if (best != null) {
+            final List<PointMatch> ransacInliers = candidateSet.getMatches(best.inlierPositions, best.inlierCount);
+            modelFound = model.filter(ransacInliers, inliers, maxTrust, minNumInliers);
+            if (! modelFound) {
+                inliers.clear();
+            }
+        }
+
+        return modelFound;
+    }
+
+    private Hypothesis findBestHypothesis(final Model<?> model,
+                                          final CandidateSet candidateSet,
+                                          final int iterations,
+                                          final double maxEpsilon,
+                                          final double minInlierRatio,
+                                          final int minNumInliers) {
+
+        final AtomicReference<Hypothesis> best = new AtomicReference<>();
+        final AtomicInteger nextIteration = new AtomicInteger(0);
+        final AtomicInteger requiredIterations = new AtomicInteger(iterations);
+        final double squaredEpsilon = maxEpsilon * maxEpsilon;
+
+        final Runnable evaluateHypotheses = () -> {
+            final HypothesisEvaluator evaluator = new HypothesisEvaluator(model.copy(),
+                                                                          candidateSet,
+                                                                          squaredEpsilon,
+                                                                          minInlierRatio,
+                                                                          minNumInliers);
+            for (int i = nextIteration.getAndIncrement();
+                 i < requiredIterations.get();
+                 i = nextIteration.getAndIncrement()) {
+
+                final Hypothesis hypothesis = evaluator.evaluate(i);
+                if (hypothesis != null) {
+                    final Hypothesis updatedBest = best.accumulateAndGet(hypothesis, Hypothesis::better);
+                    if ((updatedBest == hypothesis) && (confidence != null)) {
+                        final int adaptiveIterations = getAdaptiveIterations(hypothesis.inlierCount,
+                                                                             candidateSet.remainingCount,
+                                                                             model.getMinNumMatches());
+                        requiredIterations.accumulateAndGet(adaptiveIterations, Math::min);
+                    }
+                }
+            }
+        };
+
+        if (numberOfThreads > 1) {
+            MatchWorkPool.runWithHelpers(evaluateHypotheses, numberOfThreads, "RANSAC");
+        } else {
+            evaluateHypotheses.run();
+        }
+
+        LOG.debug("findBestHypothesis: evaluated {} of {} hypotheses for {} candidates, best is {}",
+                  Math.min(nextIteration.get(), iterations), iterations, candidateSet.remainingCount, best.get());
+
+        return best.get();
+    }
+
+    /**
+     * @return standard number of iterations needed to draw at least one outlier free minimal set with
+     *         the configured confidence given the specified inlier ratio.
+     */
+    private int getAdaptiveIterations(final int inlierCount,
+                                      final int candidateCount,
+                                      final int minNumMatches) {
+        final double inlierRatio = inlierCount / (double) candidateCount;
+        final double outlierFreeProbability = Math.pow(inlierRatio, minNumMatches);
+        final int adaptiveIterations;
+        if (outlierFreeProbability >= 1.0) {
+            adaptiveIterations = 1;
+        } else if (outlierFreeProbability <= 0.0) {
+            adaptiveIterations = Integer.MAX_VALUE;
+        } else {
+            final double n = Math.log(1.0 - confidence) / Math.log(1.0 - outlierFreeProbability);
+            adaptiveIterations = n < Integer.MAX_VALUE ? (int) Math.ceil(n) : Integer.MAX_VALUE;
+        }
+        return adaptiveIterations;
+    }
+
+    /**
+     * Flat candidate coordinates along with a reusable array of the positions of candidates
+     * that have not yet been assigned to a consensus set.
+     */
+    private static class CandidateSet {
+
+        private final List<PointMatch> matches;
+        private final double[] p1x;
+        private final double[] p1y;
+        private final double[] p2x;
+        private final double[] p2y;
+        private final int[] remainingPositions;
+        private int remainingCount;
+        private Map<PointMatch, Integer> matchToPosition;
+
+        private CandidateSet(final List<PointMatch> matches) {
+            this.matches = matches;
+            final int size = matches.size();
+            this.p1x = new double[size];
+            this.p1y = new double[size];
+            this.p2x = new double[size];
+            this.p2y = new double[size];
+            this.remainingPositions = new int[size];
+            for (int i = 0; i < size; i++) {
+                final PointMatch match = matches.get(i);
+                final double[] l1 = match.getP1().getL();
+                final double[] w2 = match.getP2().getW();
+                p1x[i] = l1[0];
+                p1y[i] = l1[1];
+                p2x[i] = w2[0];
+                p2y[i] = w2[1];
+                remainingPositions[i] = i;
+            }
+            this.remainingCount = size;
+            this.matchToPosition = null;
+        }
+
+        private List<PointMatch> getMatches(final int[] positions,
+                                            final int count) {
+            final List<PointMatch> list = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                list.add(matches.get(positions[i]));
+            }
+            return list;
+        }
+
+        private List<PointMatch> getRemainingMatches() {
+            return getMatches(remainingPositions, remainingCount);
+        }
+
+        /**
+         * Removes the specified matches from the remaining positions (preserving the order of the others).
+         */
+        private void remove(final List<PointMatch> removedMatches) {
+
+            if (matchToPosition == null) {
+                matchToPosition = new IdentityHashMap<>(matches.size());
+                for (int i = 0; i < matches.size(); i++) {
+                    matchToPosition.put(matches.get(i), i);
+                }
+            }
+
+            final boolean[] isRemoved = new boolean[matches.size()];
+            for (final PointMatch match : removedMatches) {
+                isRemoved[matchToPosition.get(match)] = true;
+            }
+
+            int count = 0;
+            for (int i = 0; i < remainingCount; i++) {
+                final int position = remainingPositions[i];
+                if (! isRemoved[position]) {
+                    remainingPositions[count] = position;
+                    count++;
+                }
+            }
+            remainingCount = count;
+        }
+    }
+
+    /**
+     * Inliers for an evaluated hypothesis.
+     */
+    private static class Hypothesis {
+
+        private final int iteration;
+        private final int[] inlierPositions;
+        private final int inlierCount;
+
+        private Hypothesis(final int iteration,
+                           final int[] inlierPositions,
+                           final int inlierCount) {
+            this.iteration = iteration;
+            this.inlierPositions = inlierPositions;
+            this.inlierCount = inlierCount;
+        }
+
+        /**
+         * @return the hypothesis with more inliers (mpicbg cost is 1 - inlier ratio),
+         *         using the earlier iteration to break ties so that results do not depend upon thread timing.
+         */
+        private static Hypothesis better(final Hypothesis a,
+                                         final Hypothesis b) {
+            final Hypothesis better;
+            if (a == null) {
+                better = b;
+            } else if (a.inlierCount == b.inlierCount) {
+                better = a.iteration <= b.iteration ? a : b;
+            } else {
+                better = a.inlierCount > b.inlierCount ? a : b;
+            }
+            return better;
+        }
+
+        @Override
+        public String toString() {
+            return "{iteration: " + iteration + ", inlierCount: " + inlierCount + '}';
+        }
+    }
+
+    /**
+     * Evaluates hypotheses for one thread using its own model copy and reusable buffers.
+     */
+    private static class HypothesisEvaluator {
+
+        private final Model<?> model;
+        private final CandidateSet candidateSet;
+        private final double squaredEpsilon;
+        private final double minInlierRatio;
+        private final int minNumInliers;
+        private final int[] minimalSetPositions;
+        private final List<PointMatch> fitMatches;
+        private final double[] location;
+        private int[] inlierPositions;
+        private int[] previousInlierPositions;
+
+        private HypothesisEvaluator(final Model<?> model,
+                                    final CandidateSet candidateSet,
+                                    final double squaredEpsilon,
+                                    final double minInlierRatio,
+                                    final int minNumInliers) {
+            this.model = model;
+            this.candidateSet = candidateSet;
+            this.squaredEpsilon = squaredEpsilon;
+            this.minInlierRatio = minInlierRatio;
+            this.minNumInliers = minNumInliers;
+            this.minimalSetPositions = new int[model.getMinNumMatches()];
+            this.fitMatches = new ArrayList<>(candidateSet.remainingCount);
+            this.location = new double[2];
+            this.inlierPositions = new int[candidateSet.remainingCount];
+            this.previousInlierPositions = new int[candidateSet.remainingCount];
+        }
+
+        /**
+         * @return inliers for the specified iteration's hypothesis or null if the hypothesis is not good.
+         */
+        private Hypothesis evaluate(final int iteration) {
+
+            final int remainingCount = candidateSet.remainingCount;
+            final int[] remainingPositions = candidateSet.remainingPositions;
+
+            // draw a distinct random minimal set
+            final SplittableRandom random = new SplittableRandom(DEFAULT_SEED + iteration);
+            for (int j = 0; j < minimalSetPositions.length; j++) {
+                int position;
+                boolean isDuplicate;
+                do {
+                    position = remainingPositions[random.nextInt(remainingCount)];
+                    isDuplicate = false;
+                    for (int k = 0; k < j; k++) {
+                        if (minimalSetPositions[k] == position) {
+                            isDuplicate = true;
+                            break;
+                        }
+                    }
+                } while (isDuplicate);
+                minimalSetPositions[j] = position;
+            }
+
+            if (! fit(minimalSetPositions, minimalSetPositions.length)) {
+                return null;
+            }
+
+            int inlierCount = countInliers();
+            boolean isGood = isGood(inlierCount, model.getMinNumMatches());
+
+            // refit to all inliers until the inlier set stops growing
+            int previousInlierCount = 0;
+            while (isGood && (previousInlierCount < inlierCount)) {
+                previousInlierCount = inlierCount;
+                swapInlierBuffers();
+                if (! fit(previousInlierPositions, previousInlierCount)) {
+                    return null;
+                }
+                inlierCount = countInliers();
+                isGood = isGood(inlierCount, minNumInliers);
+            }
+
+            Hypothesis hypothesis = null;
+            if (isGood && (inlierCount >= minNumInliers)) {
+                hypothesis = new Hypothesis(iteration, Arrays.copyOf(inlierPositions, inlierCount), inlierCount);
+            }
+            return hypothesis;
+        }
+
+        private boolean isGood(final int inlierCount,
+                               final int minCount) {
+            final float inlierRatio = (float) inlierCount / (float) candidateSet.remainingCount;
+            return (inlierCount >= minCount) && (inlierRatio > minInlierRatio);
+        }
+
+        private void swapInlierBuffers() {
+            final int[] swap = previousInlierPositions;
+            previousInlierPositions = inlierPositions;
+            inlierPositions = swap;
+        }
+
+        private boolean fit(final int[] positions,
+                            final int count) {
+            fitMatches.clear();
+            for (int i = 0; i < count; i++) {
+                fitMatches.add(candidateSet.matches.get(positions[i]));
+            }
+            boolean fitSucceeded = true;
+            try {
+                model.fit(fitMatches);
+            } catch (final NotEnoughDataPointsException | IllDefinedDataPointsException e) {
+                fitSucceeded = false;
+            }
+            return fitSucceeded;
+        }
+
+        /**
+         * Populates inlierPositions with the remaining candidates that are within epsilon of the current model.
+         *
+         * @return number of inliers.
+         */
+        private int countInliers() {
+            final int remainingCount = candidateSet.remainingCount;
+            final int[] remainingPositions = candidateSet.remainingPositions;
+            int inlierCount = 0;
+            for (int i = 0; i < remainingCount; i++) {
+                final int position = remainingPositions[i];
+                location[0] = candidateSet.p1x[position];
+                location[1] = candidateSet.p1y[position];
+                model.applyInPlace(location);
+                final double dx = location[0] - candidateSet.p2x[position];
+                final double dy = location[1] - candidateSet.p2y[position];
+                if (((dx * dx) + (dy * dy)) < squaredEpsilon) {
+                    inlierPositions[inlierCount] = position;
+                    inlierCount++;
+                }
+            }
+            return inlierCount;
+        }
+    }
+
+    private static final Logger LOG = LoggerFactory.getLogger(ParallelRansac.class);
+}
@@ -0,0 +1,230 @@
+package org.janelia.alignment.mipmap;
+
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.janelia.alignment.TransformableCanvas;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Bounded pool of threads used to concurrently load, filter, and mesh the
+ * {@link TransformableCanvas} components of a {@link RenderedCanvasMipmapSource}.
+ *
+ * Pools can optionally include a separate (typically larger) set of threads for prefetching
+ * component pixels into a cache.  Prefetching is I/O bound, so it can usefully run many more
+ * loads concurrently than there are processors.  Each prefetch request is limited to a maximum
+ * number of in-flight loads so that one large request cannot monopolize the prefetch threads.
+ *
+ * A single pool instance is intended to be shared across all render requests in a process
+ * (e.g. a web server) so that the total number of concurrent component loads stays bounded
+ * no matter how many requests are being processed.
+ *
+ * @author Eric Trautman
+ */
+public class CanvasLoadingPool {
+
+    private final int numberOfThreads;
+    private final ExecutorService executorService;
+    private final int numberOfPrefetchThreads;
+    private final int maxPrefetchesPerRequest;
+    private final ExecutorService prefetchExecutorService;
+
+    /**
+     * Constructs a pool without prefetch support.
+     *
+     * @param  numberOfThreads  maximum number of canvas components to load concurrently.
+     *
+     * @throws IllegalArgumentException
+     *   if the number of threads is less than 1.
+     */
+    public CanvasLoadingPool(final int numberOfThreads)
+            throws IllegalArgumentException {
+        this(numberOfThreads, 0, 0);
+    }
+
+    /**
+     * @param  numberOfThreads          maximum number of canvas components to load concurrently.
+     * @param  numberOfPrefetchThreads  maximum number of component pixel loads to prefetch concurrently
+     *                                  across all requests (specify 0 to disable prefetching).
+     * @param  maxPrefetchesPerRequest  maximum number of concurrent prefetch loads for a single request.
+     *
+     * @throws IllegalArgumentException
+     *   if the number of threads is less than 1 or prefetching is enabled
+     *   with a per request maximum less than 1.
+     */
+    public CanvasLoadingPool(final int numberOfThreads,
+                             final int numberOfPrefetchThreads,
+                             final int maxPrefetchesPerRequest)
+            throws IllegalArgumentException {
+
+        if (numberOfThreads < 1) {
+            throw new IllegalArgumentException("numberOfThreads must be greater than 0");
+        }
+
+        if ((numberOfPrefetchThreads > 0) && (maxPrefetchesPerRequest < 1)) {
+            throw new IllegalArgumentException("maxPrefetchesPerRequest must be greater than 0");
+        }
+
+        this.numberOfThreads = numberOfThreads;
+        this.executorService = Executors.newFixedThreadPool(numberOfThreads,
+                                                            buildThreadFactory("canvas-loader-"));
+
+        this.numberOfPrefetchThreads = Math.max(0, numberOfPrefetchThreads);
+        this.maxPrefetchesPerRequest = maxPrefetchesPerRequest;
+
+        if (this.numberOfPrefetchThreads > 0) {
+            this.prefetchExecutorService = Executors.newFixedThreadPool(this.numberOfPrefetchThreads,
+                                                                        buildThreadFactory("canvas-prefetcher-"));
+        } else {
+            this.prefetchExecutorService = null;
+        }
+    }
+
+    /**
+     * @return maximum number of canvas components loaded concurrently by this pool.
+     */
+    public int getNumberOfThreads() {
+        return numberOfThreads;
+    }
+
+    /**
+     * @return true if this pool supports prefetching; otherwise false.
+     */
+    public boolean isPrefetchEnabled() {
+        return prefetchExecutorService != null;
+    }
+
+    /**
+     * Submits a load task for asynchronous execution.
+     *
+     * @param  task  task to execute.
+     *
+     * @return future for the task result.
+     */
+    public <T> Future<T> submit(final Callable<T> task) {
+        return executorService.submit(task);
+    }
+
+    /**
+     * Starts asynchronously running the specified prefetch loads (in list order)
+     * with no more than this pool's maximum number of prefetches per request running at the same time.
+     * Prefetch failures are logged and otherwise ignored since the subsequent "real" load
+     * will encounter (and report) the same problem.
+     *
+     * @param  prefetchLoads  list of loads to run.
+     *
+     * @return request that can be used to cancel any loads that have not yet started.
+     *
+     * @throws IllegalStateException
+     *   if prefetching is not enabled for this pool.
+     */
+    public PrefetchRequest prefetch(final List<Runnable> prefetchLoads)
+            throws IllegalStateException {
+
+        if (prefetchExecutorService == null) {
+            throw new IllegalStateException("prefetching is not enabled for this pool");
+        }
+
+        final PrefetchRequest request = new PrefetchRequest(prefetchLoads);
+        for (int i = 0; i < maxPrefetchesPerRequest; i++) {
+            request.submitNextLoad();
+        }
+        return request;
+    }
+
+    /**
+     * Stops accepting new tasks (previously submitted tasks are still executed).
+     */
+    public void shutdown() {
+        executorService.shutdown();
+        if (prefetchExecutorService != null) {
+            prefetchExecutorService.shutdown();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "{numberOfThreads: " + numberOfThreads +
+               ", numberOfPrefetchThreads: " + numberOfPrefetchThreads +
+               ", maxPrefetchesPerRequest: " + maxPrefetchesPerRequest +
+               '}';
+    }
+
+    /**
+     * Tracks the loads for one prefetch request.
+     * Each completed load submits the request's next load so that the number of
+     * in-flight loads for the request stays bounded without blocking any threads.
+     */
+    public class PrefetchRequest {
+
+        private final List<Runnable> prefetchLoads;
+        private final AtomicInteger nextLoadIndex;
+        private final AtomicInteger completedLoadCount;
+        private volatile boolean isCancelled;
+
+        private PrefetchRequest(final List<Runnable> prefetchLoads) {
+            this.prefetchLoads = prefetchLoads;
+            this.nextLoadIndex = new AtomicInteger(0);
+            this.completedLoadCount = new AtomicInteger(0);
+            this.isCancelled = false;
+        }
+
+        /**
+         * Prevents any loads that have not yet started from running.
+         */
+        public void cancel() {
+            isCancelled = true;
+        }
+
+        /**
+         * @return number of loads that have been completed (successfully or not) for this request.
+         */
+        public int getCompletedLoadCount() {
+            return completedLoadCount.get();
+        }
+
+        private void submitNextLoad() {
+            if (! isCancelled) {
+                final int loadIndex = nextLoadIndex.getAndIncrement();
+                if (loadIndex < prefetchLoads.size()) {
+                    try {
+                        prefetchExecutorService.execute(() -> runLoad(loadIndex));
+                    } catch (final RejectedExecutionException e) {
+                        LOG.debug("submitNextLoad: prefetch load {} rejected, pool is shutting down", loadIndex);
+                    }
+                }
+            }
+        }
+
+        private void runLoad(final int loadIndex) {
+            try {
+                if (! isCancelled) {
+                    prefetchLoads.get(loadIndex).run();
+                }
+            } catch (final Throwable t) {
+                LOG.debug("runLoad: ignoring failure of prefetch load " + loadIndex, t);
+            } finally {
+                completedLoadCount.incrementAndGet();
+                submitNextLoad();
+            }
+        }
+    }
+
+    private static ThreadFactory buildThreadFactory(final String threadNamePrefix) {
+        final AtomicInteger threadCount = new AtomicInteger(0);
+        return runnable -> {
+            final Thread thread = new Thread(runnable, threadNamePrefix + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    private static final Logger LOG = LoggerFactory.getLogger(CanvasLoadingPool.class);
+}
@@ -73,6 +73,13 @@ public class FilteredMipmapSource
         return channels;
     }
 
+    @Override
+    public void prefetchChannels(final int mipmapLevel)
+            throws IllegalArgumentException {
+        // filters are applied to copies when channels are retrieved, so only the source data can be prefetched
+        source.prefetchChannels(mipmapLevel);
+    }
+
     private static final Logger LOG = LoggerFactory.getLogger(FilteredMipmapSource.class);
 
 }
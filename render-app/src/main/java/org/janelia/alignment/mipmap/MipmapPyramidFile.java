@@ -0,0 +1,725 @@
+package org.janelia.alignment.mipmap;
+
+import ij.process.ByteProcessor;
+import ij.process.ColorProcessor;
+import ij.process.FloatProcessor;
+import ij.process.ImageProcessor;
+import ij.process.ShortProcessor;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+import org.janelia.alignment.Utils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * <p>
+ *     A single file container for all of the mipmap levels derived from a source image (or mask).
+ *     Storing all levels in one file (instead of one file per level) drastically reduces the number of
+ *     files that shared file systems need to track and allows any level to be read without
+ *     opening (and decoding) a separate image file.
+ * </p>
+ *
+ * <p>
+ *     Only the index and the bytes for the requested level are read (with positional channel reads),
+ *     and no file handles or memory mappings are retained between reads.
+ *     Levels can optionally be (deflate) compressed, in which case the requested level's bytes are
+ *     inflated after they are read.
+ * </p>
+ *
+ * <p>
+ *     File layout (all values are little endian):
+ * <pre>
+ *         header:  magic (int), version (int), entry count (int)
+ *         entries: is mask (byte), level (int), pixel type (byte), width (int), height (int),
+ *                  compression (byte), data offset (long), data length (long), min (double), max (double)
+ *         data:    pixel bytes for each entry
+ * </pre>
+ * </p>
+ *
+ * <p>
+ *     Individual levels are identified by URLs with the form:
+ * <pre>
+ *         file:[pyramid file path]#[image|mask]/[level]
+ * </pre>
+ * </p>
+ *
+ * @author Eric Trautman
+ */
+public class MipmapPyramidFile {
+
+    /** File extension for pyramid files. */
+    public static final String EXTENSION = "pyr";
+
+    private final File file;
+    private final List<Entry> entries;
+
+    /**
+     * Reads the index for the specified pyramid file.
+     *
+     * @param  file  pyramid file.
+     *
+     * @throws IOException
+     *   if the file cannot be read or is not a pyramid file.
+     */
+    public MipmapPyramidFile(final File file)
+            throws IOException {
+
+        this.file = file;
+
+        try (final RandomAccessFile randomAccessFile = new RandomAccessFile(file, "r");
+             final FileChannel channel = randomAccessFile.getChannel()) {
+            this.entries = readEntries(file, channel);
+        }
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    /**
+     * @return sorted list of levels stored in this file for images (or masks).
+     */
+    public List<Integer> getLevels(final boolean isMask) {
+        final List<Integer> levels = new ArrayList<>();
+        for (final Entry entry : entries) {
+            if (entry.isMask == isMask) {
+                levels.add(entry.level);
+            }
+        }
+        Collections.sort(levels);
+        return levels;
+    }
+
+    /**
+     * @return true if the specified level is stored in this file; otherwise false.
+     */
+    public boolean hasLevel(final int level,
+                            final boolean isMask) {
+        return findEntry(level, isMask) != null;
+    }
+
+    /**
+     * @param  level   mipmap level.
+     * @param  isMask  indicates whether the mask (instead of the image) should be returned.
+     *
+     * @return a new processor containing the pixels for the specified level.
+     *
+     * @throws IllegalArgumentException
+     *   if the level is not stored in this file or cannot be read.
+     */
+    public ImageProcessor getProcessor(final int level,
+                                       final boolean isMask)
+            throws IllegalArgumentException {
+
+        final Entry entry = getEntry(file, entries, level, isMask);
+
+        try (final RandomAccessFile randomAccessFile = new RandomAccessFile(file, "r");
+             final FileChannel channel = randomAccessFile.getChannel()) {
+            return readProcessor(file, channel, entry);
+        } catch (final IOException e) {
+            throw new IllegalArgumentException("failed to read level " + level + " from " + file.getAbsolutePath(), e);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "{file: '" + file.getAbsolutePath() + "', numberOfEntries: " + entries.size() + '}';
+    }
+
+    /**
+     * @return true if the specified URL identifies a level within a pyramid file; otherwise false.
+     */
+    public static boolean isLevelUrl(final String url) {
+        return (url != null) && url.contains(LEVEL_URL_SEPARATOR);
+    }
+
+    /**
+     * @param  fileUrl  URL for the pyramid file.
+     * @param  level    mipmap level.
+     * @param  isMask   indicates whether the URL identifies the level's mask.
+     *
+     * @return URL for the specified level within the specified pyramid file.
+     */
+    public static String getLevelUrl(final String fileUrl,
+                                     final int level,
+                                     final boolean isMask) {
+        return fileUrl + '#' + (isMask ? MASK_FRAGMENT : IMAGE_FRAGMENT) + '/' + level;
+    }
+
+    /**
+     * @param  levelUrl  URL for a level within a pyramid file (see {@link #getLevelUrl}).
+     *
+     * @return a new processor containing the pixels for the specified level.
+     *
+     * @throws IllegalArgumentException
+     *   if the URL is invalid or the level cannot be read.
+     */
+    public static ImageProcessor readLevel(final String levelUrl)
+            throws IllegalArgumentException {
+
+        final LevelLocation location = new LevelLocation(levelUrl);
+
+        // read the index and the level with the same channel in case the file is replaced between reads
+        try (final RandomAccessFile randomAccessFile = new RandomAccessFile(location.file, "r");
+             final FileChannel channel = randomAccessFile.getChannel()) {
+            final Entry entry = getEntry(location.file,
+                                         readEntries(location.file, channel),
+                                         location.level,
+                                         location.isMask);
+            return readProcessor(location.file, channel, entry);
+        } catch (final IOException e) {
+            throw new IllegalArgumentException("failed to read mipmap pyramid level for '" + levelUrl + "'", e);
+        }
+    }
+
+    /**
+     * Verifies that the level identified by the specified URL is stored in its pyramid file
+     * without reading the level's pixels.
+     *
+     * @param  levelUrl  URL for a level within a pyramid file (see {@link #getLevelUrl}).
+     *
+     * @throws IllegalArgumentException
+     *   if the URL is invalid, the pyramid file cannot be read, or the level is not stored in the file.
+     */
+    public static void validateLevelUrl(final String levelUrl)
+            throws IllegalArgumentException {
+
+        final LevelLocation location = new LevelLocation(levelUrl);
+
+        try (final RandomAccessFile randomAccessFile = new RandomAccessFile(location.file, "r");
+             final FileChannel channel = randomAccessFile.getChannel()) {
+            getEntry(location.file, readEntries(location.file, channel), location.level, location.isMask);
+        } catch (final IOException e) {
+            throw new IllegalArgumentException("failed to read mipmap pyramid index for '" + levelUrl + "'", e);
+        }
+    }
+
+    /**
+     * @return the pyramid file for the specified URL (ignoring any level fragment).
+     */
+    public static File getFile(final String url) {
+        final URI uri = Utils.convertPathOrUriStringToUri(url);
+        return new File(uri.getPath());
+    }
+
+    private Entry findEntry(final int level,
+                            final boolean isMask) {
+        return findEntry(entries, level, isMask);
+    }
+
+    private static Entry findEntry(final List<Entry> entries,
+                                   final int level,
+                                   final boolean isMask) {
+        Entry foundEntry = null;
+        for (final Entry entry : entries) {
+            if ((entry.level == level) && (entry.isMask == isMask)) {
+                foundEntry = entry;
+                break;
+            }
+        }
+        return foundEntry;
+    }
+
+    private static Entry getEntry(final File file,
+                                  final List<Entry> entries,
+                                  final int level,
+                                  final boolean isMask)
+            throws IllegalArgumentException {
+        final Entry entry = findEntry(entries, level, isMask);
+        if (entry == null) {
+            throw new IllegalArgumentException("level " + level + (isMask ? " mask" : " image") +
+                                               " is not stored in " + file.getAbsolutePath());
+        }
+        return entry;
+    }
+
+    private static List<Entry> readEntries(final File file,
+                                           final FileChannel channel)
+            throws IOException {
+
+        final long fileLength = channel.size();
+
+        final ByteBuffer header = ByteBuffer.allocate(HEADER_LENGTH).order(BYTE_ORDER);
+        if ((fileLength < HEADER_LENGTH) || (! readFully(channel, header, 0)) || (header.getInt() != MAGIC)) {
+            throw new IOException(file.getAbsolutePath() + " is not a mipmap pyramid file");
+        }
+
+        final int version = header.getInt();
+        if (version != VERSION) {
+            throw new IOException("unsupported version " + version + " for mipmap pyramid file " +
+                                  file.getAbsolutePath());
+        }
+
+        final int entryCount = header.getInt();
+        final long indexLength = (long) entryCount * ENTRY_LENGTH;
+        if ((entryCount < 0) || (HEADER_LENGTH + indexLength > fileLength)) {
+            throw new IOException("invalid entry count " + entryCount + " for mipmap pyramid file " +
+                                  file.getAbsolutePath());
+        }
+
+        final ByteBuffer index = ByteBuffer.allocate((int) indexLength).order(BYTE_ORDER);
+        if (! readFully(channel, index, HEADER_LENGTH)) {
+            throw new IOException("failed to read index for mipmap pyramid file " + file.getAbsolutePath());
+        }
+
+        final List<Entry> entryList = new ArrayList<>(entryCount);
+        for (int i = 0; i < entryCount; i++) {
+            final Entry entry = new Entry(index);
+            // entries are read into a single array, so they cannot be larger than 2GB
+            if ((entry.offset < 0) || (entry.length < 0) || (entry.length > Integer.MAX_VALUE) ||
+                (entry.offset + entry.length > fileLength)) {
+                throw new IOException("invalid data location (offset " + entry.offset + ", length " +
+                                      entry.length + ") for entry " + i + " in mipmap pyramid file " +
+                                      file.getAbsolutePath());
+            }
+            entryList.add(entry);
+        }
+
+        return Collections.unmodifiableList(entryList);
+    }
+
+    private static ImageProcessor readProcessor(final File file,
+                                                final FileChannel channel,
+                                                final Entry entry)
+            throws IOException, IllegalArgumentException {
+
+        ByteBuffer pixelBytes = ByteBuffer.allocate((int) entry.length);
+        if (! readFully(channel, pixelBytes, entry.offset)) {
+            throw new IOException("failed to read " + entry.length + " bytes at offset " + entry.offset +
+                                  " from mipmap pyramid file " + file.getAbsolutePath());
+        }
+
+        if (entry.compression == DEFLATE_COMPRESSION) {
+            pixelBytes = inflate(file, pixelBytes, entry.getPixelByteCount());
+        } else if (entry.length != entry.getPixelByteCount()) {
+            throw new IllegalArgumentException("level " + entry.level + (entry.isMask ? " mask" : " image") +
+                                               " has " + entry.length + " bytes instead of " +
+                                               entry.getPixelByteCount() + " bytes in " + file.getAbsolutePath());
+        }
+        pixelBytes.order(BYTE_ORDER);
+
+        return entry.buildProcessor(pixelBytes);
+    }
+
+    /**
+     * Fills the specified buffer with bytes read from the specified (long) channel position
+     * and then flips the buffer.
+     *
+     * @return true if the buffer was filled; false if the end of the channel was reached first.
+     */
+    private static boolean readFully(final FileChannel channel,
+                                     final ByteBuffer buffer,
+                                     final long position)
+            throws IOException {
+        long readPosition = position;
+        while (buffer.hasRemaining()) {
+            final int count = channel.read(buffer, readPosition);
+            if (count < 0) {
+                return false;
+            }
+            readPosition += count;
+        }
+        buffer.flip();
+        return true;
+    }
+
+    private static ByteBuffer inflate(final File file,
+                                      final ByteBuffer compressedBytes,
+                                      final int pixelByteCount)
+            throws IllegalArgumentException {
+
+        final byte[] input = new byte[compressedBytes.remaining()];
+        compressedBytes.get(input);
+
+        final byte[] output = new byte[pixelByteCount];
+        final Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(input);
+            int inflatedByteCount = 0;
+            while ((inflatedByteCount < pixelByteCount) && (! inflater.finished())) {
+                final int count = inflater.inflate(output, inflatedByteCount, pixelByteCount - inflatedByteCount);
+                if ((count == 0) && (inflater.needsInput() || inflater.needsDictionary())) {
+                    break;
+                }
+                inflatedByteCount += count;
+            }
+            if (inflatedByteCount != pixelByteCount) {
+                throw new IllegalArgumentException("inflated " + inflatedByteCount + " bytes instead of " +
+                                                   pixelByteCount + " bytes from " + file.getAbsolutePath());
+            }
+        } catch (final DataFormatException e) {
+            throw new IllegalArgumentException("failed to inflate data from " + file.getAbsolutePath(), e);
+        } finally {
+            inflater.end();
+        }
+
+        return ByteBuffer.wrap(output);
+    }
+
+    /**
+     * Collects levels and then writes them to a pyramid file.
+     */
+    public static class Writer {
+
+        private final List<Entry> entries;
+        private final List<byte[]> data;
+
+        public Writer() {
+            this.entries = new ArrayList<>();
+            this.data = new ArrayList<>();
+        }
+
+        /**
+         * Adds the specified level to the pyramid.
+         *
+         * @param  level           mipmap level.
+         * @param  isMask          indicates whether the processor contains mask pixels.
+         * @param  imageProcessor  pixels for the level (byte, short, float, or color).
+         * @param  compress        indicates whether the level's pixels should be (deflate) compressed.
+         */
+        public void addLevel(final int level,
+                             final boolean isMask,
+                             final ImageProcessor imageProcessor,
+                             final boolean compress) {
+
+            final Entry entry = new Entry(level, isMask, imageProcessor, compress);
+
+            final ByteBuffer pixelBytes =
+                    ByteBuffer.allocate(entry.getPixelByteCount()).order(BYTE_ORDER);
+            final Object pixels = imageProcessor.getPixels();
+            if (pixels instanceof byte[]) {
+                pixelBytes.put((byte[]) pixels);
+            } else if (pixels instanceof short[]) {
+                pixelBytes.asShortBuffer().put((short[]) pixels);
+            } else if (pixels instanceof float[]) {
+                pixelBytes.asFloatBuffer().put((float[]) pixels);
+            } else {
+                pixelBytes.asIntBuffer().put((int[]) pixels);
+            }
+
+            byte[] bytes = pixelBytes.array();
+            if (compress) {
+                bytes = deflate(bytes);
+            }
+
+            entry.length = bytes.length;
+
+            entries.add(entry);
+            data.add(bytes);
+        }
+
+        /**
+         * Adds all levels stored in the specified pyramid that have not already been added to this writer,
+         * so that rewriting a pyramid with only some regenerated levels preserves its other levels.
+         * Level bytes are copied as stored (compressed levels are not inflated).
+         *
+         * @param  existingPyramid  pyramid containing levels to preserve.
+         *
+         * @throws IOException
+         *   if the existing levels cannot be read.
+         */
+        public void addMissingLevels(final MipmapPyramidFile existingPyramid)
+                throws IOException {
+
+            final File existingFile = existingPyramid.file;
+
+            try (final RandomAccessFile randomAccessFile = new RandomAccessFile(existingFile, "r");
+                 final FileChannel channel = randomAccessFile.getChannel()) {
+
+                for (final Entry existingEntry : existingPyramid.entries) {
+                    if (findEntry(entries, existingEntry.level, existingEntry.isMask) == null) {
+
+                        final ByteBuffer bytes = ByteBuffer.allocate((int) existingEntry.length);
+                        if (! readFully(channel, bytes, existingEntry.offset)) {
+                            throw new IOException("failed to read " + existingEntry.length + " bytes at offset " +
+                                                  existingEntry.offset + " from mipmap pyramid file " +
+                                                  existingFile.getAbsolutePath());
+                        }
+
+                        entries.add(new Entry(existingEntry));
+                        data.add(bytes.array());
+                    }
+                }
+            }
+        }
+
+        /**
+         * Writes all added levels to the specified file.
+         * Data is written to a uniquely named temporary file in the same directory that is then
+         * (atomically when possible) moved into place, so that readers never see partially written pyramids
+         * and concurrent writers of the same pyramid cannot corrupt each other's data.
+         *
+         * @param  file  pyramid file.
+         *
+         * @throws IOException
+         *   if the file cannot be written.
+         */
+        public void write(final File file)
+                throws IOException {
+
+            long offset = HEADER_LENGTH + (entries.size() * ENTRY_LENGTH);
+            for (final Entry entry : entries) {
+                entry.offset = offset;
+                offset += entry.length;
+            }
+
+            final ByteBuffer index = ByteBuffer.allocate(HEADER_LENGTH + (entries.size() * ENTRY_LENGTH));
+            index.order(BYTE_ORDER);
+            index.putInt(MAGIC);
+            index.putInt(VERSION);
+            index.putInt(entries.size());
+            for (final Entry entry : entries) {
+                entry.write(index);
+            }
+            index.flip();
+
+            final Path targetPath = file.getAbsoluteFile().toPath();
+
+            // use a unique temporary file since parallel clients may write the same (e.g. shared mask) pyramid
+            final Path tempPath = Files.createTempFile(targetPath.getParent(), "." + file.getName() + ".", ".tmp");
+            try {
+                try (final FileChannel channel = FileChannel.open(tempPath, StandardOpenOption.WRITE)) {
+                    writeFully(channel, index);
+                    for (final byte[] bytes : data) {
+                        writeFully(channel, ByteBuffer.wrap(bytes));
+                    }
+                }
+                try {
+                    Files.move(tempPath, targetPath, StandardCopyOption.ATOMIC_MOVE);
+                } catch (final AtomicMoveNotSupportedException e) {
+                    Files.move(tempPath, targetPath, StandardCopyOption.REPLACE_EXISTING);
+                }
+            } finally {
+                Files.deleteIfExists(tempPath);
+            }
+
+            LOG.debug("write: saved {} levels to {}", entries.size(), file.getAbsolutePath());
+        }
+
+        private static void writeFully(final FileChannel channel,
+                                       final ByteBuffer bytes)
+                throws IOException {
+            while (bytes.hasRemaining()) {
+                channel.write(bytes);
+            }
+        }
+
+        private static byte[] deflate(final byte[] bytes) {
+            final Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+            final ByteArrayOutputStream outputStream = new ByteArrayOutputStream(bytes.length / 2 + 64);
+            try {
+                deflater.setInput(bytes);
+                deflater.finish();
+                final byte[] chunk = new byte[64 * 1024];
+                while (! deflater.finished()) {
+                    final int count = deflater.deflate(chunk);
+                    outputStream.write(chunk, 0, count);
+                }
+            } finally {
+                deflater.end();
+            }
+            return outputStream.toByteArray();
+        }
+    }
+
+    /**
+     * File, level, and image/mask type parsed from a level URL.
+     */
+    private static class LevelLocation {
+
+        private final File file;
+        private final int level;
+        private final boolean isMask;
+
+        LevelLocation(final String levelUrl)
+                throws IllegalArgumentException {
+
+            final URI uri = Utils.convertPathOrUriStringToUri(levelUrl);
+            final String fragment = uri.getFragment();
+            final int slashIndex = fragment == null ? -1 : fragment.indexOf('/');
+
+            if ((uri.getPath() == null) || (slashIndex == -1)) {
+                throw new IllegalArgumentException("invalid mipmap pyramid level url '" + levelUrl + "'");
+            }
+
+            this.file = new File(uri.getPath());
+            this.isMask = MASK_FRAGMENT.equals(fragment.substring(0, slashIndex));
+            try {
+                this.level = Integer.parseInt(fragment.substring(slashIndex + 1));
+            } catch (final NumberFormatException e) {
+                throw new IllegalArgumentException("invalid level in mipmap pyramid level url '" + levelUrl + "'", e);
+            }
+        }
+    }
+
+    /**
+     * Index entry for one level.
+     */
+    private static class Entry {
+
+        private final boolean isMask;
+        private final int level;
+        private final byte pixelType;
+        private final int width;
+        private final int height;
+        private final byte compression;
+        private long offset;
+        private long length;
+        private final double min;
+        private final double max;
+
+        Entry(final int level,
+              final boolean isMask,
+              final ImageProcessor imageProcessor,
+              final boolean compress)
+                throws IllegalArgumentException {
+
+            this.isMask = isMask;
+            this.level = level;
+
+            if (imageProcessor instanceof ByteProcessor) {
+                this.pixelType = BYTE_PIXELS;
+            } else if (imageProcessor instanceof ShortProcessor) {
+                this.pixelType = SHORT_PIXELS;
+            } else if (imageProcessor instanceof FloatProcessor) {
+                this.pixelType = FLOAT_PIXELS;
+            } else if (imageProcessor instanceof ColorProcessor) {
+                this.pixelType = COLOR_PIXELS;
+            } else {
+                throw new IllegalArgumentException("unsupported processor type " + imageProcessor.getClass());
+            }
+
+            this.width = imageProcessor.getWidth();
+            this.height = imageProcessor.getHeight();
+            this.compression = compress ? DEFLATE_COMPRESSION : NO_COMPRESSION;
+            this.offset = 0;
+            this.length = 0;
+            this.min = imageProcessor.getMin();
+            this.max = imageProcessor.getMax();
+        }
+
+        /**
+         * Copies the specified entry (with an unset offset) so that its data can be written to another file.
+         */
+        Entry(final Entry entry) {
+            this.isMask = entry.isMask;
+            this.level = entry.level;
+            this.pixelType = entry.pixelType;
+            this.width = entry.width;
+            this.height = entry.height;
+            this.compression = entry.compression;
+            this.offset = 0;
+            this.length = entry.length;
+            this.min = entry.min;
+            this.max = entry.max;
+        }
+
+        Entry(final ByteBuffer index) {
+            this.isMask = index.get() != 0;
+            this.level = index.getInt();
+            this.pixelType = index.get();
+            this.width = index.getInt();
+            this.height = index.getInt();
+            this.compression = index.get();
+            this.offset = index.getLong();
+            this.length = index.getLong();
+            this.min = index.getDouble();
+            this.max = index.getDouble();
+        }
+
+        void write(final ByteBuffer index) {
+            index.put(isMask ? (byte) 1 : (byte) 0);
+            index.putInt(level);
+            index.put(pixelType);
+            index.putInt(width);
+            index.putInt(height);
+            index.put(compression);
+            index.putLong(offset);
+            index.putLong(length);
+            index.putDouble(min);
+            index.putDouble(max);
+        }
+
+        int getPixelByteCount() {
+            final int bytesPerPixel;
+            if (pixelType == BYTE_PIXELS) {
+                bytesPerPixel = 1;
+            } else if (pixelType == SHORT_PIXELS) {
+                bytesPerPixel = 2;
+            } else {
+                bytesPerPixel = 4;
+            }
+            return width * height * bytesPerPixel;
+        }
+
+        ImageProcessor buildProcessor(final ByteBuffer pixelBytes) {
+
+            final int pixelCount = width * height;
+
+            final ImageProcessor imageProcessor;
+            if (pixelType == BYTE_PIXELS) {
+                final byte[] pixels = new byte[pixelCount];
+                pixelBytes.get(pixels);
+                imageProcessor = new ByteProcessor(width, height, pixels, null);
+            } else if (pixelType == SHORT_PIXELS) {
+                final short[] pixels = new short[pixelCount];
+                pixelBytes.asShortBuffer().get(pixels);
+                imageProcessor = new ShortProcessor(width, height, pixels, null);
+            } else if (pixelType == FLOAT_PIXELS) {
+                final float[] pixels = new float[pixelCount];
+                pixelBytes.asFloatBuffer().get(pixels);
+                imageProcessor = new FloatProcessor(width, height, pixels, null);
+            } else {
+                final int[] pixels = new int[pixelCount];
+                pixelBytes.asIntBuffer().get(pixels);
+                imageProcessor = new ColorProcessor(width, height, pixels);
+            }
+
+            if (pixelType != COLOR_PIXELS) {
+                imageProcessor.setMinAndMax(min, max);
+            }
+
+            return imageProcessor;
+        }
+    }
+
+    private static final Logger LOG = LoggerFactory.getLogger(MipmapPyramidFile.class);
+
+    private static final int MAGIC = 0x52505952; // "RPYR"
+    private static final int VERSION = 1;
+    private static final ByteOrder BYTE_ORDER = ByteOrder.LITTLE_ENDIAN;
+
+    private static final int HEADER_LENGTH = 12;
+    private static final int ENTRY_LENGTH = 47;
+
+    private static final byte BYTE_PIXELS = 8;
+    private static final byte SHORT_PIXELS = 16;
+    private static final byte FLOAT_PIXELS = 32;
+    private static final byte COLOR_PIXELS = 24;
+
+    private static final byte NO_COMPRESSION = 0;
+    private static final byte DEFLATE_COMPRESSION = 1;
+
+    private static final String IMAGE_FRAGMENT = "image";
+    private static final String MASK_FRAGMENT = "mask";
+    private static final String LEVEL_URL_SEPARATOR = '.' + EXTENSION + '#';
+}
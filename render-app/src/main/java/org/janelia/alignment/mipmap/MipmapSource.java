@@ -37,4 +37,18 @@ public interface MipmapSource extends Serializable {
     ChannelMap getChannels(final int mipmapLevel)
             throws IllegalArgumentException;
 
+    /**
+     * Starts loading (e.g. into a shared cache) any data needed to retrieve channels for the specified level
+     * so that a subsequent {@link #getChannels} call returns more quickly.
+     * The default implementation does nothing.
+     *
+     * @param  mipmapLevel  level in a power of 2 scale pyramid.
+     *
+     * @throws IllegalArgumentException
+     *   if data for the specified level cannot be loaded.
+     */
+    default void prefetchChannels(final int mipmapLevel)
+            throws IllegalArgumentException {
+    }
+
 }
@@ -6,6 +6,9 @@ import ij.process.FloatProcessor;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 
 import mpicbg.models.AffineModel2D;
 import mpicbg.models.CoordinateTransform;
@@ -53,6 +56,7 @@ public class RenderedCanvasMipmapSource
     private final boolean skipInterpolation;
     private final boolean hasMasks;
     private final boolean binaryMask;
+    private final CanvasLoadingPool canvasLoadingPool;
 
     /**
      * Constructs a canvas based upon {@link RenderParameters} that is dynamically
@@ -63,6 +67,21 @@ public class RenderedCanvasMipmapSource
      */
     public RenderedCanvasMipmapSource(final RenderParameters renderParameters,
                                       final ImageProcessorCache imageProcessorCache) {
+        this(renderParameters, imageProcessorCache, null);
+    }
+
+    /**
+     * Constructs a canvas based upon {@link RenderParameters} that is dynamically
+     * rendered when {@link #getChannels} is called.
+     *
+     * @param  renderParameters     parameters specifying tiles, transformations, and render context.
+     * @param  imageProcessorCache  cache of previously loaded pixel data (or null if caching is not desired).
+     * @param  canvasLoadingPool    pool for concurrently loading canvas components
+     *                              (or null if components should be loaded sequentially).
+     */
+    public RenderedCanvasMipmapSource(final RenderParameters renderParameters,
+                                      final ImageProcessorCache imageProcessorCache,
+                                      final CanvasLoadingPool canvasLoadingPool) {
 
         this("canvas",
              renderParameters.getChannelNames(),
@@ -76,7 +95,8 @@ public class RenderedCanvasMipmapSource
              renderParameters.getNumberOfThreads(),
              renderParameters.skipInterpolation(),
              renderParameters.hasMasks(),
-             renderParameters.binaryMask());
+             renderParameters.binaryMask(),
+             canvasLoadingPool);
     }
 
     /**
@@ -96,6 +116,8 @@ public class RenderedCanvasMipmapSource
      * @param  skipInterpolation       enable sloppy but fast rendering by skipping interpolation.
      * @param  hasMasks                true if this canvas contains at least one source with a mask.
      * @param  binaryMask              render only 100% opaque pixels.
+     * @param  canvasLoadingPool       pool for concurrently loading canvas components
+     *                                 (or null if components should be loaded sequentially).
      */
     public RenderedCanvasMipmapSource(final String canvasName,
                                       final Set<String> channelNames,
@@ -109,7 +131,8 @@ public class RenderedCanvasMipmapSource
                                       final int numberOfMappingThreads,
                                       final boolean skipInterpolation,
                                       final boolean hasMasks,
-                                      final boolean binaryMask) {
+                                      final boolean binaryMask,
+                                      final CanvasLoadingPool canvasLoadingPool) {
         this.canvasName = canvasName;
         this.channelNames = channelNames;
         this.canvasList = canvasList;
@@ -123,6 +146,7 @@ public class RenderedCanvasMipmapSource
         this.skipInterpolation = skipInterpolation;
         this.hasMasks = hasMasks;
         this.binaryMask = binaryMask;
+        this.canvasLoadingPool = canvasLoadingPool;
     }
 
     @Override
@@ -158,44 +182,231 @@ public class RenderedCanvasMipmapSource
                                        null));
         }
 
-        long totalScaleDerivationTime = 0;
+        final AtomicReferenceArray<ScaledCanvas> scaledCanvases = new AtomicReferenceArray<>(canvasList.size());
 
-        for (final TransformableCanvas canvas : canvasList) {
+        CanvasLoadingPool.PrefetchRequest prefetchRequest = null;
+        if ((canvasLoadingPool != null) && canvasLoadingPool.isPrefetchEnabled() && (canvasList.size() > 1)) {
+            prefetchRequest = prefetchCanvases(levelScale, scaledCanvases);
+        }
 
-            final long scaleDerivationStart = System.currentTimeMillis();
+        try {
 
-            final CoordinateTransformList<CoordinateTransform> renderTransformList =
-                    addRenderScaleAndOffset(canvas.getTransformList(), levelZeroScale, levelScale, x, y);
+            if ((canvasLoadingPool == null) || (canvasList.size() < 2)) {
 
-            final MipmapSource source = canvas.getSource();
+                long totalScaleDerivationTime = 0;
 
-            final double averageScale = Utils.sampleAverageScale(renderTransformList,
-                                                                 source.getFullScaleWidth(),
-                                                                 source.getFullScaleHeight(),
-                                                                 meshCellSize);
+                for (int i = 0; i < canvasList.size(); i++) {
+                    final LoadedSource loadedSource = loadCanvas(scaledCanvases, i, levelScale);
+                    totalScaleDerivationTime += loadedSource.scaleDerivationTime;
+                    mapLoadedSource(loadedSource, targetChannels);
+                }
 
-            final int componentMipmapLevel = Utils.bestMipmapLevel(averageScale);
+                LOG.debug("getChannels: deriving average scale for {} canvases took {} milliseconds",
+                          canvasList.size(),
+                          totalScaleDerivationTime);
 
-            totalScaleDerivationTime += (System.currentTimeMillis() - scaleDerivationStart);
+            } else {
+                loadCanvasesConcurrently(levelScale, scaledCanvases, targetChannels);
+            }
 
-            mapPixels(source,
-                      componentMipmapLevel,
-                      renderTransformList,
-                      meshCellSize,
-                      hasMasks,
-                      binaryMask,
-                      numberOfMappingThreads,
-                      skipInterpolation,
-                      targetChannels);
+        } finally {
+            if (prefetchRequest != null) {
+                // no need to keep prefetching once everything has been mapped (or mapping has failed)
+                prefetchRequest.cancel();
+            }
         }
 
-        LOG.debug("getChannels: deriving average scale for {} canvases took {} milliseconds",
-                  canvasList.size(),
-                  totalScaleDerivationTime);
-
         return targetChannels;
     }
 
+    /**
+     * Starts prefetching (in canvas order) each canvas component's pixels using this canvas's loading pool.
+     * Each prefetch task derives its component's mipmap level (off of the request thread) and shares
+     * the derived result with the later component load.
+     * Mapping can begin as soon as the first component has been loaded since subsequent component loads
+     * will find the prefetched pixels in the cache or wait for in-progress prefetch loads to complete
+     * (image loads are shared by the image cache and mask loads by its distinct mask tier).
+     *
+     * @param  levelScale      scale factor for transformed components at the target mipmap level.
+     * @param  scaledCanvases  array for derived (scaled) canvas components.
+     *
+     * @return the prefetch request.
+     */
+    private CanvasLoadingPool.PrefetchRequest prefetchCanvases(final double levelScale,
+                                                               final AtomicReferenceArray<ScaledCanvas> scaledCanvases) {
+
+        final List<Runnable> prefetchLoads = new ArrayList<>(scaledCanvases.length());
+        for (int i = 0; i < scaledCanvases.length(); i++) {
+            final int canvasIndex = i;
+            prefetchLoads.add(() -> {
+                final ScaledCanvas scaledCanvas = getScaledCanvas(scaledCanvases, canvasIndex, levelScale);
+                scaledCanvas.source.prefetchChannels(scaledCanvas.mipmapLevel);
+            });
+        }
+
+        return canvasLoadingPool.prefetch(prefetchLoads);
+    }
+
+    /**
+     * Loads, filters, and meshes canvas components concurrently using this canvas's loading pool.
+     * To preserve the sequential (last drawn wins) blending semantics, loaded components are always
+     * mapped to the target in canvas list order.  The number of loaded but not yet mapped components
+     * is limited to the pool size to bound memory usage for large canvases.
+     *
+     * @param  levelScale      scale factor for transformed components at the target mipmap level.
+     * @param  scaledCanvases  array of previously derived (scaled) canvas components
+     *                         (null elements are derived as needed).
+     * @param  targetChannels  target channels for mapped results.
+     *
+     * @throws IllegalArgumentException
+     *   if any component cannot be loaded or mapped.
+     */
+    private void loadCanvasesConcurrently(final double levelScale,
+                                          final AtomicReferenceArray<ScaledCanvas> scaledCanvases,
+                                          final ChannelMap targetChannels)
+            throws IllegalArgumentException {
+
+        final long loadStart = System.currentTimeMillis();
+
+        final int numberOfCanvases = canvasList.size();
+        final int maxPendingLoads = canvasLoadingPool.getNumberOfThreads();
+        final List<Future<LoadedSource>> futureList = new ArrayList<>(numberOfCanvases);
+
+        int nextCanvasIndex = 0;
+        for (; (nextCanvasIndex < numberOfCanvases) && (nextCanvasIndex < maxPendingLoads); nextCanvasIndex++) {
+            futureList.add(submitLoad(scaledCanvases, nextCanvasIndex, levelScale));
+        }
+
+        long totalWaitTime = 0;
+
+        try {
+
+            for (int i = 0; i < numberOfCanvases; i++) {
+
+                final long waitStart = System.currentTimeMillis();
+                final LoadedSource loadedSource = getLoadedSource(futureList.get(i));
+                totalWaitTime += (System.currentTimeMillis() - waitStart);
+
+                // release reference so that source pixels can be collected as soon as they have been mapped
+                futureList.set(i, null);
+
+                if (nextCanvasIndex < numberOfCanvases) {
+                    futureList.add(submitLoad(scaledCanvases, nextCanvasIndex, levelScale));
+                    nextCanvasIndex++;
+                }
+
+                mapLoadedSource(loadedSource, targetChannels);
+            }
+
+        } finally {
+            for (final Future<LoadedSource> future : futureList) {
+                if (future != null) {
+                    future.cancel(true);
+                }
+            }
+        }
+
+        LOG.debug("loadCanvasesConcurrently: loaded and mapped {} canvases in {} milliseconds using {}, waited {} milliseconds for loads",
+                  numberOfCanvases,
+                  System.currentTimeMillis() - loadStart,
+                  canvasLoadingPool,
+                  totalWaitTime);
+    }
+
+    private Future<LoadedSource> submitLoad(final AtomicReferenceArray<ScaledCanvas> scaledCanvases,
+                                            final int canvasIndex,
+                                            final double levelScale) {
+        return canvasLoadingPool.submit(() -> loadCanvas(scaledCanvases, canvasIndex, levelScale));
+    }
+
+    private LoadedSource loadCanvas(final AtomicReferenceArray<ScaledCanvas> scaledCanvases,
+                                    final int canvasIndex,
+                                    final double levelScale) {
+
+        final ScaledCanvas scaledCanvas = getScaledCanvas(scaledCanvases, canvasIndex, levelScale);
+
+        final LoadedSource loadedSource = loadSource(scaledCanvas.source,
+                                                     scaledCanvas.mipmapLevel,
+                                                     scaledCanvas.renderTransformList,
+                                                     meshCellSize,
+                                                     hasMasks);
+        loadedSource.scaleDerivationTime = scaledCanvas.scaleDerivationTime;
+
+        return loadedSource;
+    }
+
+    /**
+     * @return the previously derived (scaled) canvas component for the specified index
+     *         or a newly derived one (that is shared with other threads) if it has not yet been derived.
+     */
+    private ScaledCanvas getScaledCanvas(final AtomicReferenceArray<ScaledCanvas> scaledCanvases,
+                                         final int canvasIndex,
+                                         final double levelScale) {
+        ScaledCanvas scaledCanvas = scaledCanvases.get(canvasIndex);
+        if (scaledCanvas == null) {
+            scaledCanvas = scaleCanvas(canvasList.get(canvasIndex), levelScale);
+            if (! scaledCanvases.compareAndSet(canvasIndex, null, scaledCanvas)) {
+                scaledCanvas = scaledCanvases.get(canvasIndex);
+            }
+        }
+        return scaledCanvas;
+    }
+
+    private ScaledCanvas scaleCanvas(final TransformableCanvas canvas,
+                                     final double levelScale) {
+
+        final long scaleDerivationStart = System.currentTimeMillis();
+
+        // Build the render list around (instead of appending to) the canvas's shared transform list
+        // since a prefetch task and a load task may both derive the same component concurrently.
+        final CoordinateTransformList<CoordinateTransform> renderTransformList = new CoordinateTransformList<>();
+        renderTransformList.add(canvas.getTransformList());
+        addRenderScaleAndOffset(renderTransformList, levelZeroScale, levelScale, x, y);
+
+        final MipmapSource source = canvas.getSource();
+
+        final double averageScale = Utils.sampleAverageScale(renderTransformList,
+                                                             source.getFullScaleWidth(),
+                                                             source.getFullScaleHeight(),
+                                                             meshCellSize);
+
+        final int componentMipmapLevel = Utils.bestMipmapLevel(averageScale);
+
+        final long scaleDerivationTime = System.currentTimeMillis() - scaleDerivationStart;
+
+        return new ScaledCanvas(source, renderTransformList, componentMipmapLevel, scaleDerivationTime);
+    }
+
+    private void mapLoadedSource(final LoadedSource loadedSource,
+                                 final ChannelMap targetChannels) {
+        mapSource(loadedSource,
+                  hasMasks,
+                  binaryMask,
+                  numberOfMappingThreads,
+                  skipInterpolation,
+                  targetChannels);
+    }
+
+    private static LoadedSource getLoadedSource(final Future<LoadedSource> future)
+            throws IllegalArgumentException {
+
+        final LoadedSource loadedSource;
+        try {
+            loadedSource = future.get();
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalArgumentException("interrupted while waiting for canvas to load", e);
+        } catch (final ExecutionException e) {
+            final Throwable cause = e.getCause();
+            if (cause instanceof IllegalArgumentException) {
+                throw (IllegalArgumentException) cause;
+            }
+            throw new IllegalArgumentException("failed to load canvas", cause);
+        }
+
+        return loadedSource;
+    }
+
     /**
      * @return a list of {@link TransformableCanvas} objects for the specified parameters.
      */
@@ -206,6 +417,9 @@ public class RenderedCanvasMipmapSource
 
         final List<TransformableCanvas> canvasList = new ArrayList<>(renderParameters.numberOfTileSpecs());
 
+        // pixel mapping only reads source pixels, so cached pixels can be shared unless they will be filtered
+        final boolean readOnlyPixels = ! renderParameters.hasFilters();
+
         MipmapSource source;
         for (final TileSpec tileSpec : renderParameters.getTileSpecs()) {
 
@@ -216,7 +430,8 @@ public class RenderedCanvasMipmapSource
                                          renderParameters.getMinIntensity(),
                                          renderParameters.getMaxIntensity(),
                                          renderParameters.excludeMask(),
-                                         imageProcessorCache);
+                                         imageProcessorCache,
+                                         readOnlyPixels);
 
             if (renderParameters.hasFilters()) {
                 source = new FilteredMipmapSource("filtered " + source.getSourceName(),
@@ -325,11 +540,47 @@ public class RenderedCanvasMipmapSource
                                  final boolean skipInterpolation,
                                  final ChannelMap targetChannels) {
 
+        final LoadedSource loadedSource = loadSource(source,
+                                                     mipmapLevel,
+                                                     renderTransformList,
+                                                     meshCellSize,
+                                                     canvasHasMasks);
+        mapSource(loadedSource,
+                  canvasHasMasks,
+                  binaryMask,
+                  numberOfMappingThreads,
+                  skipInterpolation,
+                  targetChannels);
+    }
+
+    /**
+     * Loads source pixels and creates the mesh needed to map them.
+     * This work is independent of the target so it can safely be done concurrently for different sources.
+     *
+     * @param  source               source pixel data.
+     * @param  mipmapLevel          source mipmap level.
+     * @param  renderTransformList  list of transforms for the render context.
+     * @param  meshCellSize         desired size of a mesh cell (triangle) in pixels.
+     * @param  canvasHasMasks       true if at least one source in the larger canvas being rendered has a mask
+     *                              (even if this source does not have a mask).
+     *
+     * @return the loaded source data.
+     */
+    private static LoadedSource loadSource(final MipmapSource source,
+                                           final int mipmapLevel,
+                                           final CoordinateTransformList<CoordinateTransform> renderTransformList,
+                                           final double meshCellSize,
+                                           final boolean canvasHasMasks) {
+
+        final long loadStart = System.currentTimeMillis();
+
         final ChannelMap sourceChannels = source.getChannels(mipmapLevel);
 
+        final LoadedSource loadedSource = new LoadedSource(source, sourceChannels);
+
         if (sourceChannels.size() > 0) {
 
-            final long mapStart = System.currentTimeMillis();
+            final long meshCreationStart = System.currentTimeMillis();
 
             // all channels should have same size, so we only need to look at the first channel
             final ImageProcessorWithMasks firstChannel = sourceChannels.getFirstChannel();
@@ -337,14 +588,6 @@ public class RenderedCanvasMipmapSource
             final int mipmapHeight = firstChannel.ip.getHeight();
 
             if (canvasHasMasks) {
-                // add target mask for each channel if it does not already exist
-                for (final ImageProcessorWithMasks targetChannel : targetChannels.values()) {
-                    if (targetChannel.mask == null) {
-                        targetChannel.mask = new ByteProcessor(targetChannel.ip.getWidth(),
-                                                               targetChannel.ip.getHeight());
-                    }
-                }
-
                 // add empty (inverted) source mask for each channel if it does not already exist
                 for (final ImageProcessorWithMasks sourceChannel : sourceChannels.values()) {
                     if (sourceChannel.mask == null) {
@@ -355,6 +598,58 @@ public class RenderedCanvasMipmapSource
                 }
             }
 
+            loadedSource.mesh = createRenderMesh(mipmapLevel,
+                                                 renderTransformList,
+                                                 source.getFullScaleWidth(),
+                                                 meshCellSize,
+                                                 mipmapWidth,
+                                                 mipmapHeight);
+
+            final long meshCreationStop = System.currentTimeMillis();
+
+            loadedSource.loadTime = meshCreationStart - loadStart;
+            loadedSource.meshCreationTime = meshCreationStop - meshCreationStart;
+        }
+
+        return loadedSource;
+    }
+
+    /**
+     * Maps previously loaded source pixels to a target.
+     * Sources must be mapped sequentially (in canvas order) since they may overlap in the target.
+     *
+     * @param  loadedSource            loaded source pixel data and mesh.
+     * @param  canvasHasMasks          true if at least one source in the larger canvas being rendered has a mask
+     *                                 (even if this source does not have a mask).
+     * @param  binaryMask              render only 100% opaque pixels.
+     * @param  numberOfMappingThreads  number of threads to use for pixel mapping.
+     * @param  skipInterpolation       enable sloppy but fast rendering by skipping interpolation.
+     * @param  targetChannels          target channels for mapped results.
+     */
+    private static void mapSource(final LoadedSource loadedSource,
+                                  final boolean canvasHasMasks,
+                                  final boolean binaryMask,
+                                  final int numberOfMappingThreads,
+                                  final boolean skipInterpolation,
+                                  final ChannelMap targetChannels) {
+
+        final MipmapSource source = loadedSource.source;
+        final ChannelMap sourceChannels = loadedSource.sourceChannels;
+
+        if (sourceChannels.size() > 0) {
+
+            final long mapStart = System.currentTimeMillis();
+
+            if (canvasHasMasks) {
+                // add target mask for each channel if it does not already exist
+                for (final ImageProcessorWithMasks targetChannel : targetChannels.values()) {
+                    if (targetChannel.mask == null) {
+                        targetChannel.mask = new ByteProcessor(targetChannel.ip.getWidth(),
+                                                               targetChannel.ip.getHeight());
+                    }
+                }
+            }
+
             final PixelMapper tilePixelMapper = getPixelMapper(sourceChannels,
                                                                canvasHasMasks,
                                                                binaryMask,
@@ -362,16 +657,8 @@ public class RenderedCanvasMipmapSource
                                                                targetChannels);
             if (tilePixelMapper != null) {
 
-                final RenderTransformMesh mesh = createRenderMesh(mipmapLevel,
-                                                                  renderTransformList,
-                                                                  source.getFullScaleWidth(),
-                                                                  meshCellSize,
-                                                                  mipmapWidth,
-                                                                  mipmapHeight);
-
-                final long meshCreationStop = System.currentTimeMillis();
-
-                final RenderTransformMeshMappingWithMasks mapping = new RenderTransformMeshMappingWithMasks(mesh);
+                final RenderTransformMeshMappingWithMasks mapping =
+                        new RenderTransformMeshMappingWithMasks(loadedSource.mesh);
 
                 final String mapType = skipInterpolation ? "" : " interpolated";
                 mapping.map(tilePixelMapper, numberOfMappingThreads);
@@ -385,12 +672,13 @@ public class RenderedCanvasMipmapSource
 
                 final long mapStop = System.currentTimeMillis();
 
-                LOG.debug("mapPixels: mapping of {} took {} milliseconds to process (mesh:{}, map{}:{})",
+                LOG.debug("mapPixels: mapping of {} took {} milliseconds to process (load:{}, mesh:{}, map{}:{})",
                           source.getSourceName(),
-                          mapStop - mapStart,
-                          meshCreationStop - mapStart,
+                          loadedSource.loadTime + loadedSource.meshCreationTime + (mapStop - mapStart),
+                          loadedSource.loadTime,
+                          loadedSource.meshCreationTime,
                           mapType,
-                          mapStop - meshCreationStop);
+                          mapStop - mapStart);
             }
 
         } else {
@@ -466,6 +754,50 @@ public class RenderedCanvasMipmapSource
         return tilePixelMapper;
     }
 
+    /**
+     * Render transforms and mipmap level for one canvas component that is ready to be loaded.
+     */
+    private static class ScaledCanvas {
+
+        private final MipmapSource source;
+        private final CoordinateTransformList<CoordinateTransform> renderTransformList;
+        private final int mipmapLevel;
+        private final long scaleDerivationTime;
+
+        ScaledCanvas(final MipmapSource source,
+                     final CoordinateTransformList<CoordinateTransform> renderTransformList,
+                     final int mipmapLevel,
+                     final long scaleDerivationTime) {
+            this.source = source;
+            this.renderTransformList = renderTransformList;
+            this.mipmapLevel = mipmapLevel;
+            this.scaleDerivationTime = scaleDerivationTime;
+        }
+    }
+
+    /**
+     * Source pixel data and render mesh for one canvas component that is ready to be mapped.
+     */
+    private static class LoadedSource {
+
+        private final MipmapSource source;
+        private final ChannelMap sourceChannels;
+        private RenderTransformMesh mesh;
+        private long scaleDerivationTime;
+        private long loadTime;
+        private long meshCreationTime;
+
+        LoadedSource(final MipmapSource source,
+                     final ChannelMap sourceChannels) {
+            this.source = source;
+            this.sourceChannels = sourceChannels;
+            this.mesh = null;
+            this.scaleDerivationTime = 0;
+            this.loadTime = 0;
+            this.meshCreationTime = 0;
+        }
+    }
+
     private static final Logger LOG = LoggerFactory.getLogger(RenderedCanvasMipmapSource.class);
 
 }
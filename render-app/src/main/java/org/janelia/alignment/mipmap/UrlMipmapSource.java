@@ -31,9 +31,11 @@ public class UrlMipmapSource
     private final Double renderMaxIntensity;
     private final boolean excludeMask;
     private final ImageProcessorCache imageProcessorCache;
+    private final boolean readOnlyPixels;
+    private long copiedByteCount;
 
     /**
-     * Constructs a source that will load data when {@link #getChannels} is called.
+     * Constructs a source that will load (copies of) data when {@link #getChannels} is called.
      *
      * @param  sourceName           name of this source.
      * @param  fullScaleWidth       full scale (level 0) width of this source (specify as -1 if unknown).
@@ -52,6 +54,40 @@ public class UrlMipmapSource
                            final Double renderMaxIntensity,
                            final boolean excludeMask,
                            final ImageProcessorCache imageProcessorCache) {
+        this(sourceName,
+             fullScaleWidth,
+             fullScaleHeight,
+             channelSpecList,
+             renderMinIntensity,
+             renderMaxIntensity,
+             excludeMask,
+             imageProcessorCache,
+             false);
+    }
+
+    /**
+     * Constructs a source that will load data when {@link #getChannels} is called.
+     *
+     * @param  sourceName           name of this source.
+     * @param  fullScaleWidth       full scale (level 0) width of this source (specify as -1 if unknown).
+     * @param  fullScaleHeight      full scale (level 0) height of this source (specify as -1 if unknown).
+     * @param  channelSpecList      list of channel specifications for this source.
+     * @param  renderMinIntensity   minimum intensity value for all channel specs (or null to use spec intensity values).
+     * @param  renderMaxIntensity   maximum intensity value for all channel specs (or null to use spec intensity values).
+     * @param  excludeMask          flag indicating whether mask data should be excluded.
+     * @param  imageProcessorCache  cache of previously loaded pixel data (or null if caching is not desired).
+     * @param  readOnlyPixels       if true, loaded channels share pixels with cached data and must not be modified
+     *                              (e.g. by filters); otherwise loaded channels are safe to modify copies.
+     */
+    public UrlMipmapSource(final String sourceName,
+                           final int fullScaleWidth,
+                           final int fullScaleHeight,
+                           final List<ChannelSpec> channelSpecList,
+                           final Double renderMinIntensity,
+                           final Double renderMaxIntensity,
+                           final boolean excludeMask,
+                           final ImageProcessorCache imageProcessorCache,
+                           final boolean readOnlyPixels) {
         this.sourceName = sourceName;
         this.fullScaleWidth = fullScaleWidth;
         this.fullScaleHeight = fullScaleHeight;
@@ -64,6 +100,8 @@ public class UrlMipmapSource
         } else {
             this.imageProcessorCache = imageProcessorCache;
         }
+        this.readOnlyPixels = readOnlyPixels;
+        this.copiedByteCount = 0;
     }
 
     @Override
@@ -114,10 +152,10 @@ public class UrlMipmapSource
                         " mipmap is needed.  Upscaling is not currently supported.");
             }
 
-            final ImageProcessor imageProcessor = imageProcessorCache.get(imageAndMask.getImageUrl(),
-                                                                          downSampleLevels,
-                                                                          false,
-                                                                          firstChannelSpec.is16Bit());
+            final ImageProcessor imageProcessor = loadProcessor(imageAndMask.getImageUrl(),
+                                                                downSampleLevels,
+                                                                false,
+                                                                firstChannelSpec.is16Bit());
             final long loadMipStop = System.currentTimeMillis();
 
             if (imageProcessor.getWidth() == 0 || imageProcessor.getHeight() == 0) {
@@ -131,7 +169,7 @@ public class UrlMipmapSource
                 final ImageProcessor maskProcessor;
                 final String maskUrl = imageAndMask.getMaskUrl();
                 if ((maskUrl != null) && (!excludeMask)) {
-                    maskProcessor = imageProcessorCache.get(maskUrl, downSampleLevels, true, false);
+                    maskProcessor = loadProcessor(maskUrl, downSampleLevels, true, false);
                 } else {
                     maskProcessor = null;
                 }
@@ -162,7 +200,7 @@ public class UrlMipmapSource
 
                 final long loadAdditionalChannelsStop = System.currentTimeMillis();
 
-                LOG.debug("getChannels: {} took {} milliseconds to load level {} (first mip:{}, downSampleLevels:{}, first mask:{}, additional channels:{}), cacheSize:{}",
+                LOG.debug("getChannels: {} took {} milliseconds to load level {} (first mip:{}, downSampleLevels:{}, first mask:{}, additional channels:{}), cacheSize:{}, copiedBytes:{}",
                           sourceName,
                           loadAdditionalChannelsStop - loadMipStart,
                           mipmapLevel,
@@ -170,13 +208,44 @@ public class UrlMipmapSource
                           downSampleLevels,
                           loadMaskStop - loadMipStop,
                           loadAdditionalChannelsStop - loadMaskStop,
-                          imageProcessorCache.size());
+                          imageProcessorCache.size(),
+                          copiedByteCount);
             }
         }
 
         return channels;
     }
 
+    /**
+     * Loads each channel's image and mask for the specified level into this source's cache
+     * (without copying any pixels) so that they are ready when {@link #getChannels} is called.
+     * Nothing is loaded if caching is disabled for this source.
+     */
+    @Override
+    public void prefetchChannels(final int mipmapLevel)
+            throws IllegalArgumentException {
+
+        if ((channelSpecList != null) && (imageProcessorCache != ImageProcessorCache.DISABLED_CACHE)) {
+
+            for (final ChannelSpec channelSpec : channelSpecList) {
+
+                final Map.Entry<Integer, ImageAndMask> mipmapEntry = channelSpec.getFloorMipmapEntry(mipmapLevel);
+                final ImageAndMask imageAndMask = mipmapEntry.getValue();
+                final int downSampleLevels = Math.max(0, mipmapLevel - mipmapEntry.getKey());
+
+                imageProcessorCache.prefetch(imageAndMask.getImageUrl(),
+                                             downSampleLevels,
+                                             false,
+                                             channelSpec.is16Bit());
+
+                final String maskUrl = imageAndMask.getMaskUrl();
+                if ((maskUrl != null) && (! excludeMask)) {
+                    imageProcessorCache.prefetch(maskUrl, downSampleLevels, true, false);
+                }
+            }
+        }
+    }
+
     /**
      * Loads remaining channel data for multi-channel images.
      *
@@ -203,10 +272,10 @@ public class UrlMipmapSource
                 downSampleLevels = mipmapLevel - currentMipmapLevel;
             }
 
-            final ImageProcessor imageProcessor = imageProcessorCache.get(imageAndMask.getImageUrl(),
-                                                                          downSampleLevels,
-                                                                          false,
-                                                                          channelSpec.is16Bit());
+            final ImageProcessor imageProcessor = loadProcessor(imageAndMask.getImageUrl(),
+                                                                downSampleLevels,
+                                                                false,
+                                                                channelSpec.is16Bit());
 
             if (imageProcessor.getWidth() == firstChannelWidth && imageProcessor.getWidth() == firstChannelHeight) {
 
@@ -214,7 +283,7 @@ public class UrlMipmapSource
                 final ImageProcessor maskProcessor;
                 final String maskUrl = imageAndMask.getMaskUrl();
                 if ((maskUrl != null) && (! excludeMask)) {
-                    maskProcessor = imageProcessorCache.get(maskUrl, downSampleLevels, true, false);
+                    maskProcessor = loadProcessor(maskUrl, downSampleLevels, true, false);
                 } else {
                     maskProcessor = null;
                 }
@@ -250,14 +319,31 @@ public class UrlMipmapSource
         final ChannelSpec firstChannelSpec = channelSpecList.get(0);
         final Map.Entry<Integer, ImageAndMask> mipmapEntry = firstChannelSpec.getFloorMipmapEntry(0);
         final ImageAndMask imageAndMask = mipmapEntry.getValue();
-        final ImageProcessor imageProcessor = imageProcessorCache.get(imageAndMask.getImageUrl(),
-                                                                      0,
-                                                                      false,
-                                                                      firstChannelSpec.is16Bit());
+        // only dimensions are needed here, so there is no need to copy pixels
+        final ImageProcessor imageProcessor = imageProcessorCache.getReadOnlyView(imageAndMask.getImageUrl(),
+                                                                                  0,
+                                                                                  false,
+                                                                                  firstChannelSpec.is16Bit());
         fullScaleWidth = imageProcessor.getWidth();
         fullScaleHeight = imageProcessor.getHeight();
     }
 
+    private ImageProcessor loadProcessor(final String url,
+                                         final int downSampleLevels,
+                                         final boolean isMask,
+                                         final boolean convertTo16Bit) {
+        final ImageProcessor imageProcessor;
+        if (readOnlyPixels) {
+            imageProcessor = imageProcessorCache.getReadOnlyView(url, downSampleLevels, isMask, convertTo16Bit);
+        } else {
+            imageProcessor = imageProcessorCache.get(url, downSampleLevels, isMask, convertTo16Bit);
+        }
+        if ((! readOnlyPixels) || (! ImageProcessorCache.supportsReadOnlyView(imageProcessor))) {
+            copiedByteCount += ImageProcessorCache.getByteCount(imageProcessor);
+        }
+        return imageProcessor;
+    }
+
     private void setMinAndMaxIntensity(final ImageProcessor imageProcessor,
                                        final ChannelSpec channelSpec) {
         final double minChannelIntensity = (renderMinIntensity == null) ? channelSpec.getMinIntensity() : renderMinIntensity;
@@ -0,0 +1,230 @@
+package org.janelia.alignment.protocol.s3;
+
+import com.google.common.hash.Hashing;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Local (on-disk) read-through cache for S3 objects.
+ *
+ * Each object is stored in its own file named with a hash of the object's url.
+ * Files are written to a temporary location and then atomically moved into place,
+ * so concurrent readers (including other processes sharing the directory) never see partial files.
+ * When the cache grows beyond its maximum size, the least recently used files are removed.
+ *
+ * Objects are assumed to be immutable (as source tile images typically are), so cached files are
+ * never revalidated against S3.  Clear the cache directory if source objects are replaced.
+ *
+ * @author Eric Trautman
+ */
+public class S3DiskCache {
+
+    private static final String FILE_SUFFIX = ".s3";
+
+    private final File directory;
+    private final long maximumBytes;
+    private final AtomicLong currentBytes;
+    private final AtomicLong hitCount;
+    private final AtomicLong missCount;
+
+    /**
+     * @param  directory     root directory for cached objects (will be created if necessary).
+     * @param  maximumBytes  maximum number of bytes to keep in the cache.
+     *
+     * @throws IOException
+     *   if the directory cannot be created.
+     */
+    public S3DiskCache(final File directory,
+                       final long maximumBytes)
+            throws IOException {
+
+        if ((! directory.exists()) && (! directory.mkdirs()) && (! directory.exists())) {
+            throw new IOException("failed to create " + directory.getAbsolutePath());
+        }
+
+        this.directory = directory;
+        this.maximumBytes = maximumBytes;
+        this.currentBytes = new AtomicLong(0);
+        this.hitCount = new AtomicLong(0);
+        this.missCount = new AtomicLong(0);
+
+        for (final File file : listCachedFiles()) {
+            currentBytes.addAndGet(file.length());
+        }
+    }
+
+    /**
+     * @return the cached data for the specified url or null if it is not cached.
+     */
+    public S3ObjectReader.ObjectData get(final String url) {
+
+        S3ObjectReader.ObjectData objectData = null;
+
+        final File file = getFile(url);
+        if (file.exists()) {
+            try (final DataInputStream in =
+                         new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+                final String contentType = in.readUTF();
+                final byte[] bytes = new byte[in.readInt()];
+                in.readFully(bytes);
+                objectData = new S3ObjectReader.ObjectData(contentType.isEmpty() ? null : contentType, bytes);
+                // track use for least recently used eviction
+                if (! file.setLastModified(System.currentTimeMillis())) {
+                    LOG.debug("get: failed to update last modified time for {}", file);
+                }
+            } catch (final IOException e) {
+                LOG.warn("get: ignoring unreadable cache file " + file.getAbsolutePath(), e);
+                remove(file);
+            }
+        }
+
+        if (objectData == null) {
+            missCount.incrementAndGet();
+        } else {
+            hitCount.incrementAndGet();
+        }
+
+        return objectData;
+    }
+
+    /**
+     * Saves the specified data to the cache.
+     * Failures are logged but otherwise ignored since the data can always be retrieved from S3 again.
+     */
+    public void put(final String url,
+                    final S3ObjectReader.ObjectData objectData) {
+
+        final File file = getFile(url);
+        final File parentDirectory = file.getParentFile();
+
+        File tempFile = null;
+        try {
+
+            if ((! parentDirectory.exists()) && (! parentDirectory.mkdirs()) && (! parentDirectory.exists())) {
+                throw new IOException("failed to create " + parentDirectory.getAbsolutePath());
+            }
+
+            tempFile = File.createTempFile(file.getName(), ".tmp", parentDirectory);
+
+            final String contentType = objectData.getContentType() == null ? "" : objectData.getContentType();
+            try (final DataOutputStream out =
+                         new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tempFile)))) {
+                out.writeUTF(contentType);
+                out.writeInt(objectData.getBytes().length);
+                out.write(objectData.getBytes());
+            }
+
+            final long previousLength = file.length();
+            Files.move(tempFile.toPath(), file.toPath(),
+                       StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            tempFile = null;
+
+            if (currentBytes.addAndGet(file.length() - previousLength) > maximumBytes) {
+                evictLeastRecentlyUsedFiles();
+            }
+
+        } catch (final IOException e) {
+            LOG.warn("put: failed to cache " + url, e);
+        } finally {
+            if (tempFile != null) {
+                remove(tempFile);
+            }
+        }
+    }
+
+    /**
+     * @return the number of bytes currently in the cache.
+     */
+    public long getCurrentBytes() {
+        return currentBytes.get();
+    }
+
+    @Override
+    public String toString() {
+        return "{directory: '" + directory.getAbsolutePath() + '\'' +
+               ", maximumBytes: " + maximumBytes +
+               ", currentBytes: " + currentBytes +
+               ", hitCount: " + hitCount +
+               ", missCount: " + missCount +
+               '}';
+    }
+
+    private File getFile(final String url) {
+        final String hash = Hashing.sha1().hashString(url, StandardCharsets.UTF_8).toString();
+        // spread files across sub-directories to keep individual directory sizes reasonable
+        return new File(new File(directory, hash.substring(0, 2)), hash + FILE_SUFFIX);
+    }
+
+    private List<File> listCachedFiles() {
+        final List<File> fileList = new ArrayList<>();
+        final File[] subDirectories = directory.listFiles(File::isDirectory);
+        if (subDirectories != null) {
+            for (final File subDirectory : subDirectories) {
+                final File[] files = subDirectory.listFiles((dir, name) -> name.endsWith(FILE_SUFFIX));
+                if (files != null) {
+                    for (final File file : files) {
+                        fileList.add(file);
+                    }
+                }
+            }
+        }
+        return fileList;
+    }
+
+    /**
+     * Removes least recently used files until the cache is 10% below its maximum size.
+     */
+    private synchronized void evictLeastRecentlyUsedFiles() {
+
+        if (currentBytes.get() > maximumBytes) {
+
+            final long targetBytes = (long) (maximumBytes * 0.9);
+            final List<File> fileList = listCachedFiles();
+            fileList.sort(Comparator.comparingLong(File::lastModified));
+
+            int removedCount = 0;
+            for (final File file : fileList) {
+                if (currentBytes.get() <= targetBytes) {
+                    break;
+                }
+                if (remove(file)) {
+                    removedCount++;
+                }
+            }
+
+            LOG.info("evictLeastRecentlyUsedFiles: removed {} files, cache is now {}", removedCount, this);
+        }
+    }
+
+    private boolean remove(final File file) {
+        final long length = file.length();
+        final boolean removed = file.delete();
+        if (removed) {
+            if (file.getName().endsWith(FILE_SUFFIX)) {
+                currentBytes.addAndGet(-length);
+            }
+        } else {
+            LOG.warn("remove: failed to delete {}", file.getAbsolutePath());
+        }
+        return removed;
+    }
+
+    private static final Logger LOG = LoggerFactory.getLogger(S3DiskCache.class);
+}
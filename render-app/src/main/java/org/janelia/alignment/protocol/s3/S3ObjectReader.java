@@ -0,0 +1,568 @@
+package org.janelia.alignment.protocol.s3;
+
+import com.amazonaws.AmazonClientException;
+import com.amazonaws.AmazonServiceException;
+import com.amazonaws.ClientConfiguration;
+import com.amazonaws.auth.DefaultAWSCredentialsProviderChain;
+import com.amazonaws.client.builder.AwsClientBuilder;
+import com.amazonaws.services.s3.AmazonS3;
+import com.amazonaws.services.s3.AmazonS3ClientBuilder;
+import com.amazonaws.services.s3.AmazonS3URI;
+import com.amazonaws.services.s3.Headers;
+import com.amazonaws.services.s3.model.GetObjectRequest;
+import com.amazonaws.services.s3.model.ObjectMetadata;
+import com.amazonaws.services.s3.model.S3Object;
+import com.google.common.io.ByteStreams;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.URLDecoder;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Reads complete S3 objects into memory using a single (pooled) client.
+ *
+ * Objects larger than the configured range size are read with parallel ranged GET requests
+ * directly into one byte array sized for the whole object.  Failed range reads are retried
+ * (in addition to the request level retries handled by the client itself).
+ * Readers can optionally be backed by a local {@link S3DiskCache} so that objects only need to
+ * be retrieved from S3 once.
+ *
+ * The range reader pool is only created when an object actually needs multiple ranges
+ * and idle range threads are released, so unused readers do not hold on to any threads.
+ * Readers that are no longer needed can also be explicitly {@link #close closed}.
+ *
+ * The shared reader instance used by {@link S3Opener} and {@link S3Handler} is configured with the
+ * following (optional) system properties:
+ * <pre>
+ *   render.s3.endpoint         service endpoint for S3 compatible stores (default is AWS)
+ *   render.s3.region           signing region for the endpoint (default is us-east-1)
+ *   render.s3.maxConnections   maximum number of pooled http connections (default is 100)
+ *   render.s3.maxErrorRetry    maximum number of retries for failed requests (default is 5)
+ *   render.s3.rangeSizeMb      size of ranged reads, 0 disables ranged reads (default is 8)
+ *   render.s3.rangeThreads     maximum number of concurrent ranged reads (default is 16)
+ *   render.s3.cacheDirectory   local directory for cached objects (default is no caching)
+ *   render.s3.cacheMaxGb       maximum size of the local cache (default is 10)
+ * </pre>
+ *
+ * @author Eric Trautman
+ */
+public class S3ObjectReader
+        implements Closeable {
+
+    /**
+     * The bytes and content type of an S3 object.
+     */
+    public static class ObjectData {
+
+        private final String contentType;
+        private final byte[] bytes;
+
+        public ObjectData(final String contentType,
+                          final byte[] bytes) {
+            this.contentType = contentType;
+            this.bytes = bytes;
+        }
+
+        public String getContentType() {
+            return contentType;
+        }
+
+        public byte[] getBytes() {
+            return bytes;
+        }
+    }
+
+    /**
+     * Thrown when an object changes between ranged reads (so that retrying the read cannot help).
+     */
+    public static class ObjectChangedException extends IOException {
+        public ObjectChangedException(final String message) {
+            super(message);
+        }
+    }
+
+    /** Default size for ranged reads is 8MB. */
+    public static final long DEFAULT_RANGE_SIZE_BYTES = 8 * 1024 * 1024;
+
+    /** Default maximum number of concurrent ranged reads. */
+    public static final int DEFAULT_RANGE_THREADS = 16;
+
+    private static final int MAX_RANGE_ATTEMPTS = 3;
+
+    /** Number of seconds idle range reader threads are kept alive. */
+    private static final long RANGE_THREAD_KEEP_ALIVE_SECONDS = 60;
+
+    private static volatile S3ObjectReader sharedInstance;
+
+    /**
+     * @return the reader shared by all s3:// protocol handlers and openers in this process
+     *         (built from system properties the first time it is requested).
+     *
+     * @throws IOException
+     *   if the shared reader cannot be built.
+     */
+    public static S3ObjectReader getSharedInstance()
+            throws IOException {
+        S3ObjectReader instance = sharedInstance;
+        if (instance == null) {
+            instance = setSharedInstance();
+        }
+        return instance;
+    }
+
+    private final AmazonS3 s3Client;
+    private final long rangeSizeBytes;
+    private final int numberOfRangeThreads;
+    private ThreadPoolExecutor rangeExecutorService;
+    private final S3DiskCache diskCache;
+    private final AtomicLong objectCount;
+    private final AtomicLong requestCount;
+    private final AtomicLong retryCount;
+
+    /**
+     * Constructs a reader that uses default range settings and does not cache objects.
+     *
+     * @param  s3Client  client for all S3 requests.
+     */
+    public S3ObjectReader(final AmazonS3 s3Client) {
+        this(s3Client, DEFAULT_RANGE_SIZE_BYTES, DEFAULT_RANGE_THREADS, null);
+    }
+
+    /**
+     * @param  s3Client              client for all S3 requests.
+     * @param  rangeSizeBytes        size of each ranged read (specify 0 to read objects with one request).
+     * @param  numberOfRangeThreads  maximum number of concurrent ranged reads
+     *                               (specify 1 to read ranges sequentially).
+     * @param  diskCache             local cache for objects (or null if objects should not be cached).
+     */
+    public S3ObjectReader(final AmazonS3 s3Client,
+                          final long rangeSizeBytes,
+                          final int numberOfRangeThreads,
+                          final S3DiskCache diskCache) {
+
+        this.s3Client = s3Client;
+        this.rangeSizeBytes = Math.max(0, rangeSizeBytes);
+        this.numberOfRangeThreads = Math.max(1, numberOfRangeThreads);
+
+        this.rangeExecutorService = null;
+        this.diskCache = diskCache;
+        this.objectCount = new AtomicLong(0);
+        this.requestCount = new AtomicLong(0);
+        this.retryCount = new AtomicLong(0);
+    }
+
+    /**
+     * @param  url  s3:// url for the object.
+     *
+     * @return the bytes and content type for the specified object.
+     *
+     * @throws IOException
+     *   if the object cannot be read.
+     */
+    public ObjectData read(final String url)
+            throws IOException {
+
+        ObjectData objectData = null;
+
+        if (diskCache != null) {
+            objectData = diskCache.get(url);
+        }
+
+        if (objectData == null) {
+
+            final AmazonS3URI s3uri = new AmazonS3URI(url);
+            objectData = readObject(s3uri.getBucket(), getDecodedKey(s3uri));
+            objectCount.incrementAndGet();
+
+            if (diskCache != null) {
+                diskCache.put(url, objectData);
+            }
+        }
+
+        return objectData;
+    }
+
+    /**
+     * @return the number of objects retrieved from S3 (excluding those read from the disk cache).
+     */
+    public long getObjectCount() {
+        return objectCount.get();
+    }
+
+    /**
+     * @return the number of GET requests sent to S3 (including retries).
+     */
+    public long getRequestCount() {
+        return requestCount.get();
+    }
+
+    /**
+     * @return the number of retried range reads.
+     */
+    public long getRetryCount() {
+        return retryCount.get();
+    }
+
+    /**
+     * Shuts down this reader's range reader pool (if one was created).
+     * Subsequent multi-range reads will create a new pool.
+     */
+    @Override
+    public synchronized void close() {
+        if (rangeExecutorService != null) {
+            rangeExecutorService.shutdown();
+            rangeExecutorService = null;
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "{rangeSizeBytes: " + rangeSizeBytes +
+               ", numberOfRangeThreads: " + numberOfRangeThreads +
+               ", diskCache: " + diskCache +
+               ", objectCount: " + objectCount +
+               ", requestCount: " + requestCount +
+               ", retryCount: " + retryCount +
+               '}';
+    }
+
+    /**
+     * Reads the first range of the object (which also identifies the object's full length)
+     * and then reads any remaining ranges.
+     */
+    private ObjectData readObject(final String bucket,
+                                  final String key)
+            throws IOException {
+
+        final GetObjectRequest firstRequest = new GetObjectRequest(bucket, key);
+        if (rangeSizeBytes > 0) {
+            firstRequest.setRange(0, rangeSizeBytes - 1);
+        }
+
+        S3Object firstObject;
+        try {
+            firstObject = getObject(firstRequest);
+        } catch (final IOException e) {
+            if ((rangeSizeBytes > 0) && isInvalidRangeError(e.getCause())) {
+                // ranges are not satisfiable for empty objects, so simply get the whole (empty) object
+                firstObject = getObject(new GetObjectRequest(bucket, key));
+            } else {
+                throw e;
+            }
+        }
+
+        final String contentType;
+        final String eTag;
+        final byte[] firstBytes;
+        final long objectLength;
+
+        try (final S3Object s3Object = firstObject) {
+            final ObjectMetadata metadata = s3Object.getObjectMetadata();
+            contentType = metadata.getContentType();
+            eTag = metadata.getETag();
+            firstBytes = readFully(s3Object.getObjectContent(), metadata.getContentLength(), key);
+            objectLength = getObjectLength(metadata, firstBytes.length);
+        }
+
+        final byte[] bytes;
+        if (objectLength > firstBytes.length) {
+
+            if (objectLength > Integer.MAX_VALUE) {
+                throw new IOException("s3 object " + key + " is too large (" + objectLength + " bytes) to read");
+            }
+
+            bytes = new byte[(int) objectLength];
+            System.arraycopy(firstBytes, 0, bytes, 0, firstBytes.length);
+            readRemainingRanges(bucket, key, eTag, bytes, firstBytes.length);
+
+        } else {
+            bytes = firstBytes;
+        }
+
+        return new ObjectData(contentType, bytes);
+    }
+
+    /**
+     * Reads the remaining ranges of an object, requiring each range to come from the same
+     * version of the object (identified by eTag) as the first range.
+     */
+    private void readRemainingRanges(final String bucket,
+                                     final String key,
+                                     final String eTag,
+                                     final byte[] bytes,
+                                     final int firstOffset)
+            throws IOException {
+
+        final List<long[]> rangeList = new ArrayList<>();
+        for (long start = firstOffset; start < bytes.length; start += rangeSizeBytes) {
+            rangeList.add(new long[] { start, Math.min(start + rangeSizeBytes, bytes.length) - 1 });
+        }
+
+        if ((numberOfRangeThreads == 1) || (rangeList.size() == 1)) {
+
+            for (final long[] range : rangeList) {
+                readRange(bucket, key, eTag, bytes, range[0], range[1]);
+            }
+
+        } else {
+
+            final ExecutorService executorService = getRangeExecutorService();
+            final List<Future<Void>> futureList = new ArrayList<>(rangeList.size());
+
+            try {
+                for (final long[] range : rangeList) {
+                    futureList.add(executorService.submit(() -> {
+                        readRange(bucket, key, eTag, bytes, range[0], range[1]);
+                        return null;
+                    }));
+                }
+                for (final Future<Void> future : futureList) {
+                    future.get();
+                }
+            } catch (final RejectedExecutionException e) {
+                throw new IOException("reader was closed while reading ranges for s3 object " + key, e);
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("interrupted while reading ranges for s3 object " + key, e);
+            } catch (final ExecutionException e) {
+                final Throwable cause = e.getCause();
+                if (cause instanceof IOException) {
+                    throw (IOException) cause;
+                }
+                throw new IOException("failed to read ranges for s3 object " + key, cause);
+            } finally {
+                for (final Future<Void> future : futureList) {
+                    future.cancel(true);
+                }
+            }
+        }
+    }
+
+    /**
+     * @return this reader's range reader pool (created the first time it is needed).
+     */
+    private synchronized ExecutorService getRangeExecutorService() {
+        if (rangeExecutorService == null) {
+            final AtomicInteger threadCount = new AtomicInteger(0);
+            rangeExecutorService = new ThreadPoolExecutor(numberOfRangeThreads,
+                                                          numberOfRangeThreads,
+                                                          RANGE_THREAD_KEEP_ALIVE_SECONDS,
+                                                          TimeUnit.SECONDS,
+                                                          new LinkedBlockingQueue<>(),
+                                                          runnable -> {
+                final Thread thread = new Thread(runnable, "s3-range-reader-" + threadCount.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+            // release idle threads so that readers which are rarely used do not hold on to them
+            rangeExecutorService.allowCoreThreadTimeOut(true);
+        }
+        return rangeExecutorService;
+    }
+
+    private void readRange(final String bucket,
+                           final String key,
+                           final String eTag,
+                           final byte[] bytes,
+                           final long start,
+                           final long end)
+            throws IOException {
+
+        final GetObjectRequest rangeRequest = new GetObjectRequest(bucket, key);
+        rangeRequest.setRange(start, end);
+        if (eTag != null) {
+            rangeRequest.withMatchingETagConstraint(eTag);
+        }
+
+        final int length = (int) (end - start + 1);
+
+        for (int attempt = 1; ; attempt++) {
+            try (final S3Object s3Object = getObject(rangeRequest)) {
+                if (s3Object == null) {
+                    // the client returns null when the object no longer matches the eTag constraint
+                    throw new ObjectChangedException("s3 object " + key + " changed while it was being read (bytes " +
+                                                     start + "-" + end + " no longer match eTag " + eTag + ")");
+                }
+                readFully(s3Object.getObjectContent(), bytes, (int) start, length, key);
+                break;
+            } catch (final IOException e) {
+                if ((attempt >= MAX_RANGE_ATTEMPTS) || (e instanceof ObjectChangedException) ||
+                    isClientError(e.getCause())) {
+                    throw e;
+                }
+                retryCount.incrementAndGet();
+                LOG.warn("readRange: retrying failed read of bytes {}-{} for s3 object {}", start, end, key, e);
+            }
+        }
+    }
+
+    private S3Object getObject(final GetObjectRequest request)
+            throws IOException {
+        requestCount.incrementAndGet();
+        try {
+            return s3Client.getObject(request);
+        } catch (final AmazonServiceException ase) {
+            throw new IOException("Amazon S3 service failure for error type " + ase.getErrorType(), ase);
+        } catch (final AmazonClientException ace) {
+            throw new IOException("Amazon S3 client failure", ace);
+        }
+    }
+
+    private static boolean isClientError(final Throwable t) {
+        return (t instanceof AmazonServiceException) &&
+               (((AmazonServiceException) t).getErrorType() == AmazonServiceException.ErrorType.Client);
+    }
+
+    private static boolean isInvalidRangeError(final Throwable t) {
+        return (t instanceof AmazonServiceException) && (((AmazonServiceException) t).getStatusCode() == 416);
+    }
+
+    /**
+     * @return the full length of the object derived from the Content-Range header of a ranged response
+     *         or the specified length if the response was not ranged (i.e. contained the whole object).
+     */
+    private static long getObjectLength(final ObjectMetadata metadata,
+                                        final long responseLength) {
+        long objectLength = responseLength;
+        final Object contentRange = metadata.getRawMetadataValue(Headers.CONTENT_RANGE);
+        if (contentRange != null) {
+            // format is: bytes <first>-<last>/<length>
+            final String contentRangeString = contentRange.toString();
+            final int lengthStart = contentRangeString.lastIndexOf('/') + 1;
+            if ((lengthStart > 0) && (lengthStart < contentRangeString.length())) {
+                try {
+                    objectLength = Long.parseLong(contentRangeString.substring(lengthStart).trim());
+                } catch (final NumberFormatException e) {
+                    LOG.warn("getObjectLength: ignoring invalid content range '{}'", contentRangeString);
+                }
+            }
+        }
+        return objectLength;
+    }
+
+    private static byte[] readFully(final InputStream inputStream,
+                                    final long contentLength,
+                                    final String key)
+            throws IOException {
+
+        final byte[] bytes;
+        if ((contentLength >= 0) && (contentLength <= Integer.MAX_VALUE)) {
+            bytes = new byte[(int) contentLength];
+            readFully(inputStream, bytes, 0, bytes.length, key);
+        } else {
+            bytes = ByteStreams.toByteArray(inputStream);
+        }
+        return bytes;
+    }
+
+    private static void readFully(final InputStream inputStream,
+                                  final byte[] bytes,
+                                  final int offset,
+                                  final int length,
+                                  final String key)
+            throws IOException {
+
+        int totalRead = 0;
+        while (totalRead < length) {
+            final int bytesRead = inputStream.read(bytes, offset + totalRead, length - totalRead);
+            if (bytesRead < 0) {
+                throw new IOException("only read " + totalRead + " of " + length + " bytes starting at " +
+                                      offset + " for s3 object " + key);
+            }
+            totalRead += bytesRead;
+        }
+    }
+
+    private static String getDecodedKey(final AmazonS3URI s3uri) {
+        String s3key;
+        try {
+            s3key = URLDecoder.decode(s3uri.getKey(), "UTF-8");
+        } catch (final UnsupportedEncodingException e) {
+            LOG.warn("failed to decode key, using raw key instead", e);
+            s3key = s3uri.getKey();
+        }
+        return s3key;
+    }
+
+    private static synchronized S3ObjectReader setSharedInstance()
+            throws IOException {
+
+        if (sharedInstance == null) {
+
+            final ClientConfiguration clientConfiguration = new ClientConfiguration();
+            clientConfiguration.setMaxConnections(getIntegerProperty("render.s3.maxConnections", 100));
+            clientConfiguration.setMaxErrorRetry(getIntegerProperty("render.s3.maxErrorRetry", 5));
+            clientConfiguration.setUseTcpKeepAlive(true);
+
+            final AmazonS3ClientBuilder builder = AmazonS3ClientBuilder.standard()
+                    .withCredentials(new DefaultAWSCredentialsProviderChain())
+                    .withClientConfiguration(clientConfiguration);
+
+            final String endpoint = System.getProperty("render.s3.endpoint");
+            if (endpoint != null) {
+                final String region = System.getProperty("render.s3.region", "us-east-1");
+                builder.withEndpointConfiguration(new AwsClientBuilder.EndpointConfiguration(endpoint, region))
+                        .withPathStyleAccessEnabled(true);
+            }
+
+            final AmazonS3 s3Client;
+            try {
+                s3Client = builder.build();
+            } catch (final AmazonServiceException ase) {
+                throw new IOException("Amazon S3 service failure for error type " + ase.getErrorType(), ase);
+            } catch (final AmazonClientException ace) {
+                throw new IOException("Amazon S3 client failure", ace);
+            }
+
+            S3DiskCache diskCache = null;
+            final String cacheDirectory = System.getProperty("render.s3.cacheDirectory");
+            if (cacheDirectory != null) {
+                final long maxCacheBytes = getIntegerProperty("render.s3.cacheMaxGb", 10) * 1_000_000_000L;
+                diskCache = new S3DiskCache(new File(cacheDirectory), maxCacheBytes);
+            }
+
+            sharedInstance = new S3ObjectReader(s3Client,
+                                                getIntegerProperty("render.s3.rangeSizeMb", 8) * 1024L * 1024L,
+                                                getIntegerProperty("render.s3.rangeThreads", DEFAULT_RANGE_THREADS),
+                                                diskCache);
+
+            LOG.info("setSharedInstance: exit, created {}", sharedInstance);
+        }
+
+        return sharedInstance;
+    }
+
+    private static int getIntegerProperty(final String name,
+                                          final int defaultValue) {
+        int value = defaultValue;
+        final String stringValue = System.getProperty(name);
+        if (stringValue != null) {
+            try {
+                value = Integer.parseInt(stringValue.trim());
+            } catch (final NumberFormatException e) {
+                LOG.warn("getIntegerProperty: ignoring invalid {} value '{}', using {}",
+                         name, stringValue, defaultValue);
+            }
+        }
+        return value;
+    }
+
+    private static final Logger LOG = LoggerFactory.getLogger(S3ObjectReader.class);
+}
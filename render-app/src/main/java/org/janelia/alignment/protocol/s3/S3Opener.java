@@ -1,21 +1,13 @@
 package org.janelia.alignment.protocol.s3;
 
-import com.amazonaws.AmazonClientException;
-import com.amazonaws.AmazonServiceException;
-import com.amazonaws.auth.AWSCredentialsProvider;
-import com.amazonaws.auth.DefaultAWSCredentialsProviderChain;
-import com.amazonaws.services.s3.AmazonS3;
-import com.amazonaws.services.s3.AmazonS3ClientBuilder;
 import com.google.common.net.MediaType;
 
 import ij.ImagePlus;
 
 import java.awt.Image;
 import java.awt.Toolkit;
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
-import java.io.InputStream;
-import java.net.URL;
-import java.net.URLConnection;
 import java.util.Locale;
 
 import javax.imageio.ImageIO;
@@ -27,14 +19,14 @@ import org.slf4j.LoggerFactory;
  * Wrapper to the ij.io.Opener for render.
  *
  * This is a kludge as -Djava.protocol.handler.pkgs=org.janelia.alignment.protocol does not seem to work with Jetty.
+ *
+ * S3 objects are read once (with the process wide {@link S3ObjectReader#getSharedInstance shared reader})
+ * and then decoded directly from the retrieved bytes.
  */
 public class S3Opener extends ij.io.Opener {
 
-    private S3Handler handler;
-
     public S3Opener() {
         super();
-        this.handler = null;
     }
 
     @Override
@@ -52,31 +44,27 @@ public class S3Opener extends ij.io.Opener {
 
             try {
 
-                if (handler == null) {
-                    buildS3Handler();
-                }
+                final S3ObjectReader.ObjectData objectData = S3ObjectReader.getSharedInstance().read(url);
+                final byte[] bytes = objectData.getBytes();
 
-                final URL u = new URL(null, url, handler);
-                final URLConnection uc = u.openConnection();
-
-                // assumes content type is always available, should be ok
-                final MediaType contentType = MediaType.parse(uc.getContentType());
+                final MediaType contentType =
+                        objectData.getContentType() == null ? null : MediaType.parse(objectData.getContentType());
 
                 final String lowerCaseUrl = url.toLowerCase(Locale.US);
 
                 // honor content type over resource naming conventions, check for most common source image types first
-                if (contentType.equals(MediaType.TIFF)) {
-                    imagePlus = super.openTiff(u.openStream(), name);
-                } else if (contentType.equals(MediaType.PNG)) {
-                    imagePlus = openPngUsingURL(name, u);
-                } else if (contentType.equals(MediaType.JPEG) || contentType.equals(MediaType.GIF)) {
-                    imagePlus = openJpegOrGifUsingURL(name, u);
+                if (MediaType.TIFF.equals(contentType)) {
+                    imagePlus = super.openTiff(new ByteArrayInputStream(bytes), name);
+                } else if (MediaType.PNG.equals(contentType)) {
+                    imagePlus = openPngUsingBytes(name, bytes);
+                } else if (MediaType.JPEG.equals(contentType) || MediaType.GIF.equals(contentType)) {
+                    imagePlus = openJpegOrGifUsingBytes(name, bytes);
                 } else if (lowerCaseUrl.endsWith(".tif") || lowerCaseUrl.endsWith(".tiff")) {
-                    imagePlus = super.openTiff(u.openStream(), name);
+                    imagePlus = super.openTiff(new ByteArrayInputStream(bytes), name);
                 } else if (lowerCaseUrl.endsWith(".png")) {
-                    imagePlus = openPngUsingURL(name, u);
+                    imagePlus = openPngUsingBytes(name, bytes);
                 } else if (lowerCaseUrl.endsWith(".jpg") || lowerCaseUrl.endsWith(".gif")) {
-                    imagePlus = openJpegOrGifUsingURL(name, u);
+                    imagePlus = openJpegOrGifUsingBytes(name, bytes);
                 } else {
                     throw new IOException("unsupported content type " + contentType + " for " + url);
                 }
@@ -94,34 +82,18 @@ public class S3Opener extends ij.io.Opener {
     }
 
     /* The following are based on protected methods from ij.io.Opener. */
-    private ImagePlus openJpegOrGifUsingURL(final String title,
-                                            final URL url) {
-        final Image img = Toolkit.getDefaultToolkit().createImage(url);
+    private ImagePlus openJpegOrGifUsingBytes(final String title,
+                                              final byte[] bytes) {
+        final Image img = Toolkit.getDefaultToolkit().createImage(bytes);
         return new ImagePlus(title, img);
     }
 
-    private ImagePlus openPngUsingURL(final String title,
-                                      final URL url)
+    private ImagePlus openPngUsingBytes(final String title,
+                                        final byte[] bytes)
             throws IOException {
-        final Image img;
-        final InputStream in = url.openStream();
-        img = ImageIO.read(in);
+        final Image img = ImageIO.read(new ByteArrayInputStream(bytes));
         return new ImagePlus(title, img);
     }
 
-    private synchronized void buildS3Handler() throws IOException {
-        if (handler == null) {
-            try {
-                final AWSCredentialsProvider credentialsProvider = new DefaultAWSCredentialsProviderChain();
-                final AmazonS3 s3Client = AmazonS3ClientBuilder.standard().withCredentials(credentialsProvider).build();
-                handler = new S3Handler(s3Client);
-            } catch (final AmazonServiceException ase) {
-                throw new IOException("Amazon S3 service failure for error type " + ase.getErrorType(), ase);
-            } catch (final AmazonClientException ace) {
-                throw new IOException("Amazon S3 client failure", ace);
-            }
-        }
-    }
-
     private static final Logger LOG = LoggerFactory.getLogger(S3Opener.class);
 }
@@ -0,0 +1,216 @@
+package org.janelia.alignment.solver;
+
+import java.util.Arrays;
+
+/**
+ * Square sparse matrix made up of dense (blockSize x blockSize) blocks that are stored
+ * in compressed block row form.  Block values are stored row major and contiguously
+ * so that rows can be populated and multiplied concurrently without any locking.
+ *
+ * @author Eric Trautman
+ */
+class BlockSparseMatrix {
+
+    private final int rowCount;
+    private final int blockSize;
+    private final int blockLength;
+    private final int[] rowStart;
+    private final int[] columns;
+    private final double[] values;
+
+    /**
+     * @param  blockSize  number of rows (and columns) in each block.
+     * @param  rowStart   index of the first block in each block row (with a trailing total block count).
+     * @param  columns    sorted block column indices for each block row.
+     */
+    BlockSparseMatrix(final int blockSize,
+                      final int[] rowStart,
+                      final int[] columns) {
+        this.rowCount = rowStart.length - 1;
+        this.blockSize = blockSize;
+        this.blockLength = blockSize * blockSize;
+        this.rowStart = rowStart;
+        this.columns = columns;
+        this.values = new double[columns.length * blockLength];
+    }
+
+    int getRowCount() {
+        return rowCount;
+    }
+
+    int getBlockSize() {
+        return blockSize;
+    }
+
+    int getBlockCount() {
+        return columns.length;
+    }
+
+    /**
+     * @return offset of the specified block within {@link #getValues()} or -1 if the block is not stored.
+     */
+    int getBlockOffset(final int row,
+                       final int column) {
+        final int index = Arrays.binarySearch(columns, rowStart[row], rowStart[row + 1], column);
+        return index < 0 ? -1 : index * blockLength;
+    }
+
+    double[] getValues() {
+        return values;
+    }
+
+    /**
+     * Computes y = A * x for the specified block rows.
+     */
+    void multiply(final double[] x,
+                  final double[] y,
+                  final int fromRow,
+                  final int toRow) {
+
+        for (int row = fromRow; row < toRow; row++) {
+
+            final int yOffset = row * blockSize;
+            Arrays.fill(y, yOffset, yOffset + blockSize, 0.0);
+
+            for (int block = rowStart[row]; block < rowStart[row + 1]; block++) {
+                final int xOffset = columns[block] * blockSize;
+                int valueOffset = block * blockLength;
+                for (int i = 0; i < blockSize; i++) {
+                    double sum = 0.0;
+                    for (int j = 0; j < blockSize; j++) {
+                        sum += values[valueOffset + j] * x[xOffset + j];
+                    }
+                    y[yOffset + i] += sum;
+                    valueOffset += blockSize;
+                }
+            }
+        }
+    }
+
+    /**
+     * Populates inverses of the diagonal blocks for the specified rows (for use as a block Jacobi preconditioner).
+     * Diagonal blocks that cannot be inverted are replaced with inverses of their diagonal values.
+     *
+     * @param  inverses  array (with rowCount * blockSize * blockSize values) for inverted blocks.
+     */
+    void invertDiagonalBlocks(final double[] inverses,
+                              final int fromRow,
+                              final int toRow) {
+
+        final double[] scratch = new double[blockLength];
+
+        for (int row = fromRow; row < toRow; row++) {
+            final int blockOffset = getBlockOffset(row, row);
+            final int inverseOffset = row * blockLength;
+            System.arraycopy(values, blockOffset, scratch, 0, blockLength);
+            if (! invert(scratch, inverses, inverseOffset)) {
+                Arrays.fill(inverses, inverseOffset, inverseOffset + blockLength, 0.0);
+                for (int i = 0; i < blockSize; i++) {
+                    final double d = values[blockOffset + (i * blockSize) + i];
+                    inverses[inverseOffset + (i * blockSize) + i] = d > 0.0 ? 1.0 / d : 1.0;
+                }
+            }
+        }
+    }
+
+    /**
+     * Computes y = M * x for the specified rows using previously inverted diagonal blocks M.
+     */
+    void multiplyBlockDiagonal(final double[] inverses,
+                               final double[] x,
+                               final double[] y,
+                               final int fromRow,
+                               final int toRow) {
+        for (int row = fromRow; row < toRow; row++) {
+            final int offset = row * blockSize;
+            int valueOffset = row * blockLength;
+            for (int i = 0; i < blockSize; i++) {
+                double sum = 0.0;
+                for (int j = 0; j < blockSize; j++) {
+                    sum += inverses[valueOffset + j] * x[offset + j];
+                }
+                y[offset + i] = sum;
+                valueOffset += blockSize;
+            }
+        }
+    }
+
+    /**
+     * Inverts the specified block using Gauss-Jordan elimination with partial pivoting.
+     *
+     * @param  block          block to invert (will be overwritten).
+     * @param  inverse        array for inverse values.
+     * @param  inverseOffset  offset of the inverse within the inverse array.
+     *
+     * @return true if the block was inverted; false if it is (nearly) singular.
+     */
+    private boolean invert(final double[] block,
+                           final double[] inverse,
+                           final int inverseOffset) {
+
+        final int n = blockSize;
+
+        double maxAbsValue = 0.0;
+        for (final double value : block) {
+            maxAbsValue = Math.max(maxAbsValue, Math.abs(value));
+        }
+        final double minPivot = maxAbsValue * 1e-14;
+
+        for (int i = 0; i < n; i++) {
+            for (int j = 0; j < n; j++) {
+                inverse[inverseOffset + (i * n) + j] = i == j ? 1.0 : 0.0;
+            }
+        }
+
+        for (int column = 0; column < n; column++) {
+
+            int pivotRow = column;
+            for (int row = column + 1; row < n; row++) {
+                if (Math.abs(block[(row * n) + column]) > Math.abs(block[(pivotRow * n) + column])) {
+                    pivotRow = row;
+                }
+            }
+
+            final double pivot = block[(pivotRow * n) + column];
+            if ((maxAbsValue == 0.0) || (Math.abs(pivot) <= minPivot)) {
+                return false;
+            }
+
+            if (pivotRow != column) {
+                swapRows(block, 0, pivotRow, column);
+                swapRows(inverse, inverseOffset, pivotRow, column);
+            }
+
+            for (int j = 0; j < n; j++) {
+                block[(column * n) + j] /= pivot;
+                inverse[inverseOffset + (column * n) + j] /= pivot;
+            }
+
+            for (int row = 0; row < n; row++) {
+                final double factor = block[(row * n) + column];
+                if ((row != column) && (factor != 0.0)) {
+                    for (int j = 0; j < n; j++) {
+                        block[(row * n) + j] -= factor * block[(column * n) + j];
+                        inverse[inverseOffset + (row * n) + j] -= factor * inverse[inverseOffset + (column * n) + j];
+                    }
+                }
+            }
+        }
+
+        return true;
+    }
+
+    private void swapRows(final double[] matrix,
+                          final int offset,
+                          final int row1,
+                          final int row2) {
+        for (int j = 0; j < blockSize; j++) {
+            final int index1 = offset + (row1 * blockSize) + j;
+            final int index2 = offset + (row2 * blockSize) + j;
+            final double swap = matrix[index1];
+            matrix[index1] = matrix[index2];
+            matrix[index2] = swap;
+        }
+    }
+
+}
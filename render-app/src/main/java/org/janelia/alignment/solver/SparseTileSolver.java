@@ -0,0 +1,1018 @@
+package org.janelia.alignment.solver;
+
+import java.awt.geom.AffineTransform;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.janelia.alignment.match.Matches;
+import org.janelia.alignment.match.ModelType;
+import org.janelia.alignment.util.ProcessTimer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Sparse least squares solver that aligns tiles using point matches between them.
+ *
+ * Each tile that is not fixed gets a correction model (of the configured {@link ModelType}) that is applied
+ * after the tile's current transforms.  Corrections are found by minimizing the weighted squared distances
+ * between corrected match points while regularizing each correction towards identity (the starting model):
+ *
+ * <pre>
+ *     sum( w * | C_p(p) - C_q(q) |^2 )  +  sum( | R (C - identity) |^2 )
+ * </pre>
+ *
+ * The normal equations are assembled concurrently into a {@link BlockSparseMatrix} with one block row
+ * per tile and are solved with a block Jacobi preconditioned conjugate gradient method.
+ *
+ * Correction parameters are expressed relative to the centroid of each tile's match points, which keeps
+ * the system well conditioned for large world coordinates.  Regularization weights are scaled by each
+ * parameter's data term, so lambda values do not depend upon image scale or the number of matches.
+ * Rigid corrections linearize rotation about each tile's centroid and are not iteratively refined,
+ * so they leave roughly (angle^2 / 2) * (distance from centroid) of error (e.g. 0.15 pixels 1000 pixels
+ * from the centroid of a tile rotated by 1 degree).  They are only intended for the small rotations
+ * expected when correcting a starting alignment.
+ *
+ * Translation is only constrained by fixed tiles or by translation regularization, so solves must
+ * include at least one fixed tile or use a positive translation lambda.
+ *
+ * @author Eric Trautman
+ */
+public class SparseTileSolver {
+
+    /**
+     * Solver results.
+     */
+    public static class Solution implements Serializable {
+
+        private final Map<String, AffineTransform> tileIdToCorrection;
+        private final int iterations;
+        private final double relativeResidual;
+        private final double startingRootMeanSquareError;
+        private final double rootMeanSquareError;
+        private final int tilePairCount;
+
+        private Solution(final Map<String, AffineTransform> tileIdToCorrection,
+                         final int tilePairCount,
+                         final int iterations,
+                         final double relativeResidual,
+                         final double startingRootMeanSquareError,
+                         final double rootMeanSquareError) {
+            this.tileIdToCorrection = tileIdToCorrection;
+            this.tilePairCount = tilePairCount;
+            this.iterations = iterations;
+            this.relativeResidual = relativeResidual;
+            this.startingRootMeanSquareError = startingRootMeanSquareError;
+            this.rootMeanSquareError = rootMeanSquareError;
+        }
+
+        /**
+         * @return correction to be applied after the specified tile's current transforms
+         *         (identity for fixed tiles) or null if the tile is not known.
+         */
+        public AffineTransform getCorrection(final String tileId) {
+            return tileIdToCorrection.get(tileId);
+        }
+
+        public Map<String, AffineTransform> getTileIdToCorrection() {
+            return tileIdToCorrection;
+        }
+
+        /**
+         * @return number of tile pairs with matches that constrained the solution.
+         */
+        public int getTilePairCount() {
+            return tilePairCount;
+        }
+
+        public int getIterations() {
+            return iterations;
+        }
+
+        public double getRelativeResidual() {
+            return relativeResidual;
+        }
+
+        /**
+         * @return root mean square distance between all match points before correction.
+         */
+        public double getStartingRootMeanSquareError() {
+            return startingRootMeanSquareError;
+        }
+
+        /**
+         * @return root mean square distance between all match points after correction.
+         */
+        public double getRootMeanSquareError() {
+            return rootMeanSquareError;
+        }
+
+        /**
+         * @return the root mean square match error (in pixels) after correction
+         *         or -1 if no tile pairs constrained the solution (so that unmatched tiles are never
+         *         mistaken for well aligned tiles).
+         */
+        public double getAlignmentQuality() {
+            return tilePairCount > 0 ? rootMeanSquareError : -1.0;
+        }
+
+        @Override
+        public String toString() {
+            return "{numberOfTiles: " + tileIdToCorrection.size() +
+                   ", tilePairCount: " + tilePairCount +
+                   ", iterations: " + iterations +
+                   ", relativeResidual: " + relativeResidual +
+                   ", startingRootMeanSquareError: " + startingRootMeanSquareError +
+                   ", rootMeanSquareError: " + rootMeanSquareError + '}';
+        }
+    }
+
+    private final ModelType modelType;
+    private final Parameterization parameterization;
+    private final double regularizationLambda;
+    private final double translationRegularizationLambda;
+    private final int maxIterations;
+    private final double tolerance;
+    private final int numberOfThreads;
+
+    private final Map<String, Integer> tileIdToIndex;
+    private final List<String> tileIds;
+    private final BitSet fixedTiles;
+    private final List<TilePair> tilePairs;
+
+    /**
+     * @param  modelType                        type of correction model to derive for each tile.
+     * @param  regularizationLambda             relative weight for keeping the non-translation parameters
+     *                                          of each correction close to identity (e.g. 0.01).
+     * @param  translationRegularizationLambda  relative weight for keeping the translation parameters
+     *                                          of each correction close to identity (e.g. 0.0).
+     * @param  maxIterations                    maximum number of conjugate gradient iterations.
+     * @param  tolerance                        stop iterating once the residual norm relative to the
+     *                                          right hand side norm is less than this value (e.g. 1e-10).
+     * @param  numberOfThreads                  number of threads to use for assembly and iterations.
+     *
+     * @throws IllegalArgumentException
+     *   if any of the parameters are invalid.
+     */
+    public SparseTileSolver(final ModelType modelType,
+                            final double regularizationLambda,
+                            final double translationRegularizationLambda,
+                            final int maxIterations,
+                            final double tolerance,
+                            final int numberOfThreads)
+            throws IllegalArgumentException {
+
+        if ((regularizationLambda < 0) || (translationRegularizationLambda < 0)) {
+            throw new IllegalArgumentException("regularization lambda values must not be negative");
+        }
+        if (maxIterations < 1) {
+            throw new IllegalArgumentException("maxIterations must be greater than 0");
+        }
+        if (numberOfThreads < 1) {
+            throw new IllegalArgumentException("numberOfThreads must be greater than 0");
+        }
+
+        this.modelType = modelType;
+        this.parameterization = Parameterization.forModelType(modelType);
+        this.regularizationLambda = regularizationLambda;
+        this.translationRegularizationLambda = translationRegularizationLambda;
+        this.maxIterations = maxIterations;
+        this.tolerance = tolerance;
+        this.numberOfThreads = numberOfThreads;
+
+        this.tileIdToIndex = new HashMap<>();
+        this.tileIds = new ArrayList<>();
+        this.fixedTiles = new BitSet();
+        this.tilePairs = new ArrayList<>();
+    }
+
+    /**
+     * Adds the specified tile to the solve (does nothing if the tile has already been added).
+     */
+    public void addTile(final String tileId) {
+        if (! tileIdToIndex.containsKey(tileId)) {
+            tileIdToIndex.put(tileId, tileIds.size());
+            tileIds.add(tileId);
+        }
+    }
+
+    /**
+     * Keeps the specified tile in its current (starting) location.
+     *
+     * @throws IllegalArgumentException
+     *   if the tile has not been added.
+     */
+    public void fixTile(final String tileId)
+            throws IllegalArgumentException {
+        fixedTiles.set(getTileIndex(tileId));
+    }
+
+    /**
+     * Adds matches between two tiles.
+     *
+     * @param  pTileId       identifies the tile for the p match points.
+     * @param  qTileId       identifies the tile for the q match points.
+     * @param  worldMatches  matches with points in the (starting) world coordinates of each tile.
+     *
+     * @throws IllegalArgumentException
+     *   if either tile has not been added.
+     */
+    public void addMatches(final String pTileId,
+                           final String qTileId,
+                           final Matches worldMatches)
+            throws IllegalArgumentException {
+
+        final int pTile = getTileIndex(pTileId);
+        final int qTile = getTileIndex(qTileId);
+
+        if ((pTile != qTile) && (worldMatches.getWs().length > 0)) {
+            tilePairs.add(new TilePair(pTile, qTile, worldMatches));
+        }
+    }
+
+    public int getTileCount() {
+        return tileIds.size();
+    }
+
+    public int getTilePairCount() {
+        return tilePairs.size();
+    }
+
+    @Override
+    public String toString() {
+        return "{modelType: " + modelType +
+               ", regularizationLambda: " + regularizationLambda +
+               ", translationRegularizationLambda: " + translationRegularizationLambda +
+               ", maxIterations: " + maxIterations +
+               ", tolerance: " + tolerance +
+               ", numberOfThreads: " + numberOfThreads + '}';
+    }
+
+    /**
+     * @return corrections for all tiles that minimize match distances.
+     *
+     * @throws IllegalStateException
+     *   if no tiles are fixed and translation is not regularized (since the system would be singular).
+     */
+    public Solution solve()
+            throws IllegalStateException {
+
+        if (fixedTiles.isEmpty() && (translationRegularizationLambda <= 0.0)) {
+            throw new IllegalStateException(
+                    "at least one tile must be fixed when translationRegularizationLambda is not positive");
+        }
+
+        LOG.info("solve: entry, solving {} tiles ({} fixed) with {} tile pairs, solver={}",
+                 tileIds.size(), fixedTiles.cardinality(), tilePairs.size(), this);
+
+        final ProcessTimer timer = new ProcessTimer();
+
+        final int tileCount = tileIds.size();
+        final int blockSize = parameterization.size;
+
+        // assign block rows to free tiles
+        final int[] tileToRow = new int[tileCount];
+        int rowCount = 0;
+        for (int tile = 0; tile < tileCount; tile++) {
+            if (fixedTiles.get(tile)) {
+                tileToRow[tile] = -1;
+            } else {
+                tileToRow[tile] = rowCount;
+                rowCount++;
+            }
+        }
+
+        final int[][] rowPairs = buildRowPairs(tileToRow, rowCount);
+        final BlockSparseMatrix matrix = buildMatrixStructure(tileToRow, rowPairs, blockSize);
+
+        final double[] centers = new double[rowCount * 2];
+        final double[] b = new double[rowCount * blockSize];
+        final double[] x = new double[rowCount * blockSize];
+
+        final ExecutorService executorService = numberOfThreads > 1 ?
+                                                Executors.newFixedThreadPool(numberOfThreads) : null;
+
+        final int iterations;
+        final double relativeResidual;
+        try {
+
+            runForRows(rowCount,
+                       (fromRow, toRow) -> deriveCenters(tileToRow, rowPairs, centers, fromRow, toRow),
+                       executorService);
+
+            runForRows(rowCount,
+                       (fromRow, toRow) -> assembleRows(tileToRow, rowPairs, centers, matrix, b, fromRow, toRow),
+                       executorService);
+
+            LOG.info("solve: assembled {} x {} system with {} blocks, elapsedTime={}ms",
+                     b.length, b.length, matrix.getBlockCount(), timer.getElapsedMilliseconds());
+
+            for (int row = 0; row < rowCount; row++) {
+                System.arraycopy(parameterization.identity, 0, x, row * blockSize, blockSize);
+            }
+
+            final double[] result = solveWithConjugateGradient(matrix, b, x, executorService);
+            iterations = (int) result[0];
+            relativeResidual = result[1];
+
+        } finally {
+            if (executorService != null) {
+                executorService.shutdownNow();
+            }
+        }
+
+        final Map<String, AffineTransform> tileIdToCorrection = new LinkedHashMap<>(tileCount * 2);
+        final AffineTransform[] corrections = new AffineTransform[tileCount];
+        for (int tile = 0; tile < tileCount; tile++) {
+            final int row = tileToRow[tile];
+            if ((row < 0) || (rowPairs[row].length == 0)) {
+                corrections[tile] = new AffineTransform();
+            } else {
+                corrections[tile] = parameterization.buildCorrection(x,
+                                                                     row * blockSize,
+                                                                     centers[row * 2],
+                                                                     centers[(row * 2) + 1]);
+            }
+            tileIdToCorrection.put(tileIds.get(tile), corrections[tile]);
+        }
+
+        final Solution solution = new Solution(tileIdToCorrection,
+                                               tilePairs.size(),
+                                               iterations,
+                                               relativeResidual,
+                                               getRootMeanSquareError(null),
+                                               getRootMeanSquareError(corrections));
+
+        LOG.info("solve: exit, returning {}, elapsedTime={}ms", solution, timer.getElapsedMilliseconds());
+
+        return solution;
+    }
+
+    private int getTileIndex(final String tileId)
+            throws IllegalArgumentException {
+        final Integer index = tileIdToIndex.get(tileId);
+        if (index == null) {
+            throw new IllegalArgumentException("tile '" + tileId + "' has not been added to the solver");
+        }
+        return index;
+    }
+
+    /**
+     * @return indexes of the tile pairs that include each block row's tile.
+     */
+    private int[][] buildRowPairs(final int[] tileToRow,
+                                  final int rowCount) {
+
+        final int[] counts = new int[rowCount];
+        for (final TilePair pair : tilePairs) {
+            for (final int tile : pair.getTiles()) {
+                if (tileToRow[tile] >= 0) {
+                    counts[tileToRow[tile]]++;
+                }
+            }
+        }
+
+        final int[][] rowPairs = new int[rowCount][];
+        for (int row = 0; row < rowCount; row++) {
+            rowPairs[row] = new int[counts[row]];
+            counts[row] = 0;
+        }
+
+        for (int pairIndex = 0; pairIndex < tilePairs.size(); pairIndex++) {
+            for (final int tile : tilePairs.get(pairIndex).getTiles()) {
+                final int row = tileToRow[tile];
+                if (row >= 0) {
+                    rowPairs[row][counts[row]] = pairIndex;
+                    counts[row]++;
+                }
+            }
+        }
+
+        return rowPairs;
+    }
+
+    private BlockSparseMatrix buildMatrixStructure(final int[] tileToRow,
+                                                   final int[][] rowPairs,
+                                                   final int blockSize) {
+
+        final int rowCount = rowPairs.length;
+        final int[] rowStart = new int[rowCount + 1];
+        final int[][] rowColumns = new int[rowCount][];
+
+        for (int row = 0; row < rowCount; row++) {
+
+            final int[] columns = new int[rowPairs[row].length + 1];
+            int columnCount = 0;
+            columns[columnCount++] = row;
+            for (final int pairIndex : rowPairs[row]) {
+                final int otherRow = tileToRow[tilePairs.get(pairIndex).getOtherTile(row, tileToRow)];
+                if (otherRow >= 0) {
+                    columns[columnCount++] = otherRow;
+                }
+            }
+
+            Arrays.sort(columns, 0, columnCount);
+
+            int distinctCount = 0;
+            for (int i = 0; i < columnCount; i++) {
+                if ((distinctCount == 0) || (columns[i] != columns[distinctCount - 1])) {
+                    columns[distinctCount++] = columns[i];
+                }
+            }
+
+            rowColumns[row] = Arrays.copyOf(columns, distinctCount);
+            rowStart[row + 1] = rowStart[row] + distinctCount;
+        }
+
+        final int[] allColumns = new int[rowStart[rowCount]];
+        for (int row = 0; row < rowCount; row++) {
+            System.arraycopy(rowColumns[row], 0, allColumns, rowStart[row], rowColumns[row].length);
+        }
+
+        return new BlockSparseMatrix(blockSize, rowStart, allColumns);
+    }
+
+    /**
+     * Derives the weighted centroid of each tile's match points.
+     */
+    private void deriveCenters(final int[] tileToRow,
+                               final int[][] rowPairs,
+                               final double[] centers,
+                               final int fromRow,
+                               final int toRow) {
+
+        for (int row = fromRow; row < toRow; row++) {
+
+            double sumX = 0.0;
+            double sumY = 0.0;
+            double sumW = 0.0;
+            for (final int pairIndex : rowPairs[row]) {
+                final TilePair pair = tilePairs.get(pairIndex);
+                final boolean isP = tileToRow[pair.pTile] == row;
+                final double[] ownX = isP ? pair.px : pair.qx;
+                final double[] ownY = isP ? pair.py : pair.qy;
+                for (int i = 0; i < pair.w.length; i++) {
+                    sumX += pair.w[i] * ownX[i];
+                    sumY += pair.w[i] * ownY[i];
+                    sumW += pair.w[i];
+                }
+            }
+
+            if (sumW > 0.0) {
+                centers[row * 2] = sumX / sumW;
+                centers[(row * 2) + 1] = sumY / sumW;
+            }
+        }
+    }
+
+    /**
+     * Populates normal equation blocks and right hand side values for the specified block rows.
+     * Each row only writes its own blocks, so rows can be assembled concurrently.
+     */
+    private void assembleRows(final int[] tileToRow,
+                              final int[][] rowPairs,
+                              final double[] centers,
+                              final BlockSparseMatrix matrix,
+                              final double[] b,
+                              final int fromRow,
+                              final int toRow) {
+
+        final int k = parameterization.size;
+        final double[] values = matrix.getValues();
+        final double[] ownJx = new double[k];
+        final double[] ownJy = new double[k];
+        final double[] otherJx = new double[k];
+        final double[] otherJy = new double[k];
+        final double[] ownConstant = new double[2];
+        final double[] otherConstant = new double[2];
+
+        for (int row = fromRow; row < toRow; row++) {
+
+            final int diagonalOffset = matrix.getBlockOffset(row, row);
+            final int bOffset = row * k;
+            final double ownCenterX = centers[row * 2];
+            final double ownCenterY = centers[(row * 2) + 1];
+
+            for (final int pairIndex : rowPairs[row]) {
+
+                final TilePair pair = tilePairs.get(pairIndex);
+                final boolean isP = tileToRow[pair.pTile] == row;
+                final double[] ownX = isP ? pair.px : pair.qx;
+                final double[] ownY = isP ? pair.py : pair.qy;
+                final double[] otherX = isP ? pair.qx : pair.px;
+                final double[] otherY = isP ? pair.qy : pair.py;
+                final int otherRow = tileToRow[isP ? pair.qTile : pair.pTile];
+                final int offDiagonalOffset = otherRow < 0 ? -1 : matrix.getBlockOffset(row, otherRow);
+                final double otherCenterX = otherRow < 0 ? 0.0 : centers[otherRow * 2];
+                final double otherCenterY = otherRow < 0 ? 0.0 : centers[(otherRow * 2) + 1];
+
+                for (int i = 0; i < pair.w.length; i++) {
+
+                    final double w = pair.w[i];
+
+                    parameterization.fill(ownX[i] - ownCenterX, ownY[i] - ownCenterY, ownJx, ownJy, ownConstant);
+                    double dx = ownCenterX + ownConstant[0];
+                    double dy = ownCenterY + ownConstant[1];
+
+                    if (otherRow < 0) {
+                        // fixed tiles keep their starting (world) match locations
+                        dx -= otherX[i];
+                        dy -= otherY[i];
+                    } else {
+                        parameterization.fill(otherX[i] - otherCenterX, otherY[i] - otherCenterY,
+                                              otherJx, otherJy, otherConstant);
+                        dx -= otherCenterX + otherConstant[0];
+                        dy -= otherCenterY + otherConstant[1];
+                        addOuterProducts(values, offDiagonalOffset, -w, ownJx, ownJy, otherJx, otherJy);
+                    }
+
+                    addOuterProducts(values, diagonalOffset, w, ownJx, ownJy, ownJx, ownJy);
+
+                    for (int j = 0; j < k; j++) {
+                        b[bOffset + j] -= w * ((ownJx[j] * dx) + (ownJy[j] * dy));
+                    }
+                }
+            }
+
+            // regularize towards identity with weights relative to each parameter's data term
+            final boolean hasData = rowPairs[row].length > 0;
+            for (int j = 0; j < k; j++) {
+                final int index = diagonalOffset + (j * k) + j;
+                final double weight;
+                if (hasData && (values[index] > 0.0)) {
+                    final double lambda = parameterization.isTranslation(j) ?
+                                          translationRegularizationLambda : regularizationLambda;
+                    weight = lambda * values[index];
+                } else {
+                    weight = 1.0;
+                }
+                values[index] += weight;
+                b[bOffset + j] += weight * parameterization.identity[j];
+            }
+        }
+    }
+
+    /**
+     * Adds weight * (aX^T * bX + aY^T * bY) to the specified block.
+     */
+    private void addOuterProducts(final double[] values,
+                                  final int offset,
+                                  final double weight,
+                                  final double[] aX,
+                                  final double[] aY,
+                                  final double[] bX,
+                                  final double[] bY) {
+        final int k = aX.length;
+        int index = offset;
+        for (int i = 0; i < k; i++) {
+            final double wX = weight * aX[i];
+            final double wY = weight * aY[i];
+            for (int j = 0; j < k; j++) {
+                values[index] += (wX * bX[j]) + (wY * bY[j]);
+                index++;
+            }
+        }
+    }
+
+    /**
+     * Solves A * x = b using a block Jacobi preconditioned conjugate gradient method.
+     *
+     * @param  x  initial guess that will be updated with the solution.
+     *
+     * @return array containing the number of iterations and the final relative residual.
+     */
+    private double[] solveWithConjugateGradient(final BlockSparseMatrix matrix,
+                                                final double[] b,
+                                                final double[] x,
+                                                final ExecutorService executorService) {
+
+        final int rowCount = matrix.getRowCount();
+        final int k = matrix.getBlockSize();
+        final int n = b.length;
+
+        final double[] inverses = new double[rowCount * k * k];
+        final double[] r = new double[n];
+        final double[] z = new double[n];
+        final double[] p = new double[n];
+        final double[] ap = new double[n];
+
+        runForRows(rowCount, (fromRow, toRow) -> {
+            matrix.invertDiagonalBlocks(inverses, fromRow, toRow);
+            matrix.multiply(x, ap, fromRow, toRow);
+        }, executorService);
+
+        for (int i = 0; i < n; i++) {
+            r[i] = b[i] - ap[i];
+        }
+
+        runForRows(rowCount,
+                   (fromRow, toRow) -> matrix.multiplyBlockDiagonal(inverses, r, z, fromRow, toRow),
+                   executorService);
+
+        System.arraycopy(z, 0, p, 0, n);
+
+        double rz = dot(r, z);
+        final double bNorm = Math.sqrt(dot(b, b));
+        final double normalizer = bNorm > 0.0 ? bNorm : 1.0;
+        double relativeResidual = Math.sqrt(dot(r, r)) / normalizer;
+
+        int iteration = 0;
+        while ((iteration < maxIterations) && (relativeResidual > tolerance)) {
+
+            runForRows(rowCount, (fromRow, toRow) -> matrix.multiply(p, ap, fromRow, toRow), executorService);
+
+            final double pAp = dot(p, ap);
+            if (pAp <= 0.0) {
+                // remaining directions are in the null space, so the solution cannot be improved
+                break;
+            }
+
+            final double alpha = rz / pAp;
+            for (int i = 0; i < n; i++) {
+                x[i] += alpha * p[i];
+                r[i] -= alpha * ap[i];
+            }
+
+            runForRows(rowCount,
+                       (fromRow, toRow) -> matrix.multiplyBlockDiagonal(inverses, r, z, fromRow, toRow),
+                       executorService);
+
+            final double rzNext = dot(r, z);
+            final double beta = rzNext / rz;
+            for (int i = 0; i < n; i++) {
+                p[i] = z[i] + (beta * p[i]);
+            }
+            rz = rzNext;
+
+            relativeResidual = Math.sqrt(dot(r, r)) / normalizer;
+            iteration++;
+
+            if ((iteration % 100) == 0) {
+                LOG.debug("solveWithConjugateGradient: iteration {}, relativeResidual {}",
+                          iteration, relativeResidual);
+            }
+        }
+
+        LOG.info("solveWithConjugateGradient: stopped after {} iterations with relativeResidual {}",
+                 iteration, relativeResidual);
+
+        return new double[] { iteration, relativeResidual };
+    }
+
+    private static double dot(final double[] a,
+                              final double[] b) {
+        double sum = 0.0;
+        for (int i = 0; i < a.length; i++) {
+            sum += a[i] * b[i];
+        }
+        return sum;
+    }
+
+    /**
+     * @param  corrections  corrections for each tile or null to calculate the error for starting locations.
+     *
+     * @return root mean square (weighted) distance between all match points.
+     */
+    private double getRootMeanSquareError(final AffineTransform[] corrections) {
+
+        final double[] pMatrix = new double[6];
+        final double[] qMatrix = new double[6];
+        double sumSquaredDistance = 0.0;
+        double sumW = 0.0;
+
+        for (final TilePair pair : tilePairs) {
+
+            getMatrix(corrections, pair.pTile, pMatrix);
+            getMatrix(corrections, pair.qTile, qMatrix);
+
+            for (int i = 0; i < pair.w.length; i++) {
+                final double dx = transformX(pMatrix, pair.px[i], pair.py[i]) -
+                                  transformX(qMatrix, pair.qx[i], pair.qy[i]);
+                final double dy = transformY(pMatrix, pair.px[i], pair.py[i]) -
+                                  transformY(qMatrix, pair.qx[i], pair.qy[i]);
+                sumSquaredDistance += pair.w[i] * ((dx * dx) + (dy * dy));
+                sumW += pair.w[i];
+            }
+        }
+
+        return sumW > 0.0 ? Math.sqrt(sumSquaredDistance / sumW) : 0.0;
+    }
+
+    private static void getMatrix(final AffineTransform[] corrections,
+                                  final int tile,
+                                  final double[] matrix) {
+        if (corrections == null) {
+            new AffineTransform().getMatrix(matrix);
+        } else {
+            corrections[tile].getMatrix(matrix);
+        }
+    }
+
+    // AffineTransform.getMatrix order is { m00, m10, m01, m11, m02, m12 }
+
+    private static double transformX(final double[] matrix,
+                                     final double x,
+                                     final double y) {
+        return (matrix[0] * x) + (matrix[2] * y) + matrix[4];
+    }
+
+    private static double transformY(final double[] matrix,
+                                     final double x,
+                                     final double y) {
+        return (matrix[1] * x) + (matrix[3] * y) + matrix[5];
+    }
+
+    private interface RowRangeTask {
+        void run(final int fromRow,
+                 final int toRow);
+    }
+
+    private void runForRows(final int rowCount,
+                            final RowRangeTask task,
+                            final ExecutorService executorService) {
+
+        if ((executorService == null) || (rowCount < numberOfThreads)) {
+
+            task.run(0, rowCount);
+
+        } else {
+
+            final int chunkCount = numberOfThreads * 4;
+            final int chunkSize = (rowCount + chunkCount - 1) / chunkCount;
+            final List<Future<?>> futures = new ArrayList<>(chunkCount);
+            for (int fromRow = 0; fromRow < rowCount; fromRow += chunkSize) {
+                final int chunkFromRow = fromRow;
+                final int chunkToRow = Math.min(rowCount, fromRow + chunkSize);
+                futures.add(executorService.submit(() -> task.run(chunkFromRow, chunkToRow)));
+            }
+
+            try {
+                for (final Future<?> future : futures) {
+                    future.get();
+                }
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("solve was interrupted", e);
+            } catch (final ExecutionException e) {
+                throw new IllegalStateException("solve failed", e.getCause());
+            }
+        }
+    }
+
+    /**
+     * Matches between two tiles with flattened (world) coordinates.
+     */
+    private static class TilePair {
+
+        private final int pTile;
+        private final int qTile;
+        private final double[] px;
+        private final double[] py;
+        private final double[] qx;
+        private final double[] qy;
+        private final double[] w;
+
+        private TilePair(final int pTile,
+                         final int qTile,
+                         final Matches matches) {
+            this.pTile = pTile;
+            this.qTile = qTile;
+            this.px = matches.getPs()[0];
+            this.py = matches.getPs()[1];
+            this.qx = matches.getQs()[0];
+            this.qy = matches.getQs()[1];
+            this.w = matches.getWs();
+        }
+
+        private int[] getTiles() {
+            return new int[] { pTile, qTile };
+        }
+
+        private int getOtherTile(final int row,
+                                 final int[] tileToRow) {
+            return tileToRow[pTile] == row ? qTile : pTile;
+        }
+    }
+
+    /**
+     * Linear parameterization of a correction model about a tile center:
+     * corrected = J(point - center) * parameters + center + constant.
+     */
+    private static abstract class Parameterization {
+
+        private final int size;
+        private final double[] identity;
+
+        private Parameterization(final double[] identity) {
+            this.size = identity.length;
+            this.identity = identity;
+        }
+
+        /**
+         * Populates the x and y Jacobian rows and constant offsets for the specified centered point.
+         */
+        abstract void fill(final double dx,
+                           final double dy,
+                           final double[] jx,
+                           final double[] jy,
+                           final double[] constant);
+
+        abstract boolean isTranslation(final int parameterIndex);
+
+        /**
+         * @return (uncentered) affine correction for the specified parameters.
+         */
+        abstract AffineTransform buildCorrection(final double[] parameters,
+                                                 final int offset,
+                                                 final double centerX,
+                                                 final double centerY);
+
+        static AffineTransform buildCenteredCorrection(final double m00,
+                                                       final double m01,
+                                                       final double m10,
+                                                       final double m11,
+                                                       final double tx,
+                                                       final double ty,
+                                                       final double centerX,
+                                                       final double centerY) {
+            return new AffineTransform(m00, m10, m01, m11,
+                                       centerX + tx - ((m00 * centerX) + (m01 * centerY)),
+                                       centerY + ty - ((m10 * centerX) + (m11 * centerY)));
+        }
+
+        static Parameterization forModelType(final ModelType modelType) {
+            final Parameterization parameterization;
+            switch (modelType) {
+                case TRANSLATION:
+                    parameterization = new TranslationParameterization();
+                    break;
+                case RIGID:
+                    parameterization = new RigidParameterization();
+                    break;
+                case SIMILARITY:
+                    parameterization = new SimilarityParameterization();
+                    break;
+                default:
+                    parameterization = new AffineParameterization();
+                    break;
+            }
+            return parameterization;
+        }
+    }
+
+    /** Parameters are { tx, ty }. */
+    private static class TranslationParameterization extends Parameterization {
+
+        private TranslationParameterization() {
+            super(new double[] { 0, 0 });
+        }
+
+        @Override
+        void fill(final double dx,
+                  final double dy,
+                  final double[] jx,
+                  final double[] jy,
+                  final double[] constant) {
+            jx[0] = 1;  jx[1] = 0;
+            jy[0] = 0;  jy[1] = 1;
+            constant[0] = dx;
+            constant[1] = dy;
+        }
+
+        @Override
+        boolean isTranslation(final int parameterIndex) {
+            return true;
+        }
+
+        @Override
+        AffineTransform buildCorrection(final double[] parameters,
+                                        final int offset,
+                                        final double centerX,
+                                        final double centerY) {
+            return AffineTransform.getTranslateInstance(parameters[offset], parameters[offset + 1]);
+        }
+    }
+
+    /** Parameters are { angle, tx, ty } with the rotation linearized (sin(angle) ~ angle, cos(angle) ~ 1). */
+    private static class RigidParameterization extends Parameterization {
+
+        private RigidParameterization() {
+            super(new double[] { 0, 0, 0 });
+        }
+
+        @Override
+        void fill(final double dx,
+                  final double dy,
+                  final double[] jx,
+                  final double[] jy,
+                  final double[] constant) {
+            jx[0] = -dy;  jx[1] = 1;  jx[2] = 0;
+            jy[0] = dx;   jy[1] = 0;  jy[2] = 1;
+            constant[0] = dx;
+            constant[1] = dy;
+        }
+
+        @Override
+        boolean isTranslation(final int parameterIndex) {
+            return parameterIndex > 0;
+        }
+
+        @Override
+        AffineTransform buildCorrection(final double[] parameters,
+                                        final int offset,
+                                        final double centerX,
+                                        final double centerY) {
+            // linearized solution is a similarity with scale sqrt(1 + angle^2), so remove that scale
+            final double angle = Math.atan(parameters[offset]);
+            final double cos = Math.cos(angle);
+            final double sin = Math.sin(angle);
+            return buildCenteredCorrection(cos, -sin, sin, cos,
+                                           parameters[offset + 1], parameters[offset + 2],
+                                           centerX, centerY);
+        }
+    }
+
+    /** Parameters are { a, b, tx, ty } where m00 = m11 = a and m10 = -m01 = b. */
+    private static class SimilarityParameterization extends Parameterization {
+
+        private SimilarityParameterization() {
+            super(new double[] { 1, 0, 0, 0 });
+        }
+
+        @Override
+        void fill(final double dx,
+                  final double dy,
+                  final double[] jx,
+                  final double[] jy,
+                  final double[] constant) {
+            jx[0] = dx;  jx[1] = -dy;  jx[2] = 1;  jx[3] = 0;
+            jy[0] = dy;  jy[1] = dx;   jy[2] = 0;  jy[3] = 1;
+            constant[0] = 0;
+            constant[1] = 0;
+        }
+
+        @Override
+        boolean isTranslation(final int parameterIndex) {
+            return parameterIndex > 1;
+        }
+
+        @Override
+        AffineTransform buildCorrection(final double[] parameters,
+                                        final int offset,
+                                        final double centerX,
+                                        final double centerY) {
+            final double a = parameters[offset];
+            final double b = parameters[offset + 1];
+            return buildCenteredCorrection(a, -b, b, a,
+                                           parameters[offset + 2], parameters[offset + 3],
+                                           centerX, centerY);
+        }
+    }
+
+    /** Parameters are { m00, m01, tx, m10, m11, ty }. */
+    private static class AffineParameterization extends Parameterization {
+
+        private AffineParameterization() {
+            super(new double[] { 1, 0, 0, 0, 1, 0 });
+        }
+
+        @Override
+        void fill(final double dx,
+                  final double dy,
+                  final double[] jx,
+                  final double[] jy,
+                  final double[] constant) {
+            jx[0] = dx;  jx[1] = dy;  jx[2] = 1;  jx[3] = 0;   jx[4] = 0;   jx[5] = 0;
+            jy[0] = 0;   jy[1] = 0;   jy[2] = 0;  jy[3] = dx;  jy[4] = dy;  jy[5] = 1;
+            constant[0] = 0;
+            constant[1] = 0;
+        }
+
+        @Override
+        boolean isTranslation(final int parameterIndex) {
+            return (parameterIndex == 2) || (parameterIndex == 5);
+        }
+
+        @Override
+        AffineTransform buildCorrection(final double[] parameters,
+                                        final int offset,
+                                        final double centerX,
+                                        final double centerY) {
+            return buildCenteredCorrection(parameters[offset], parameters[offset + 1],
+                                           parameters[offset + 3], parameters[offset + 4],
+                                           parameters[offset + 2], parameters[offset + 5],
+                                           centerX, centerY);
+        }
+    }
+
+    private static final Logger LOG = LoggerFactory.getLogger(SparseTileSolver.class);
+}
@@ -10,6 +10,7 @@ import com.github.davidmoten.rtree.geometry.Rectangle;
 import java.awt.geom.Area;
 import java.awt.geom.Rectangle2D;
 import java.util.ArrayList;
+import java.util.Comparator;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
@@ -86,6 +87,35 @@ public class TileBoundsRTree {
         return convertResultsToList(searchResults);
     }
 
+    /**
+     * Tree geometries are stored with float precision, so this pads the tree search
+     * and then filters the candidate tiles using their exact (double precision) bounds.
+     *
+     * @return all tiles that intersect the specified bounding box (boundaries inclusive) sorted by tileId.
+     */
+    public List<TileBounds> findTilesIntersectingBox(final double minX,
+                                                     final double minY,
+                                                     final double maxX,
+                                                     final double maxY) {
+
+        final List<TileBounds> candidates = findTilesInBox(minX - SEARCH_PADDING,
+                                                           minY - SEARCH_PADDING,
+                                                           maxX + SEARCH_PADDING,
+                                                           maxY + SEARCH_PADDING);
+
+        final List<TileBounds> intersectingTiles = new ArrayList<>(candidates.size());
+        for (final TileBounds tileBounds : candidates) {
+            if ((tileBounds.getMinX() <= maxX) && (tileBounds.getMinY() <= maxY) &&
+                (tileBounds.getMaxX() >= minX) && (tileBounds.getMaxY() >= minY)) {
+                intersectingTiles.add(tileBounds);
+            }
+        }
+
+        intersectingTiles.sort(Comparator.comparing(TileBounds::getTileId));
+
+        return intersectingTiles;
+    }
+
     /**
      * @return all tiles that intersect the specified circle.
      */
@@ -317,4 +347,7 @@ public class TileBoundsRTree {
 
     private static final Logger LOG = LoggerFactory.getLogger(TileBoundsRTree.class);
 
+    /** Padding (in pixels) applied to exact bounds searches to account for float precision geometries. */
+    private static final double SEARCH_PADDING = 1.0;
+
 }
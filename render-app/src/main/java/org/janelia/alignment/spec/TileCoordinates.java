@@ -7,8 +7,14 @@ import java.io.Reader;
 import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
+import mpicbg.models.CoordinateTransform;
+import mpicbg.models.CoordinateTransformList;
 import mpicbg.models.NoninvertibleModelException;
 
 import org.janelia.alignment.json.JsonUtils;
@@ -116,6 +122,33 @@ public class TileCoordinates implements Serializable {
             final double x,
             final double y)
             throws IllegalStateException {
+        return getLocalCoordinates(tileSpecList, x, y, null, null);
+    }
+
+    /**
+     * @param  tileSpecList  list of tiles that contain the specified point
+     *                       (order of list is assumed to be the same order used for rendering).
+     *
+     * @param  x             x coordinate.
+     * @param  y             y coordinate.
+     *
+     * @param  meshCache     cache of previously built inverse meshes (or null to build a new mesh for each tile).
+     *
+     * @param  versionKey    identifies the version of the specified tile specs in the mesh cache
+     *                       (e.g. stack id plus last modified timestamp).
+     *
+     * @return a local {@link TileCoordinates} instance with the inverse of the specified world point.
+     *
+     * @throws IllegalStateException
+     *   if the specified point cannot be inverted for any of the specified tiles.
+     */
+    public static List<TileCoordinates> getLocalCoordinates(
+            final List<TileSpec> tileSpecList,
+            final double x,
+            final double y,
+            final TileInverseMeshCache meshCache,
+            final String versionKey)
+            throws IllegalStateException {
 
 
         final List<TileCoordinates> tileCoordinatesList = new ArrayList<>();
@@ -124,7 +157,11 @@ public class TileCoordinates implements Serializable {
         TileCoordinates tileCoordinates;
         for (final TileSpec tileSpec : tileSpecList) {
             try {
-                local = tileSpec.getLocalCoordinates(x, y, tileSpec.getMeshCellSize());
+                if (meshCache == null) {
+                    local = tileSpec.getLocalCoordinates(x, y, tileSpec.getMeshCellSize());
+                } else {
+                    local = meshCache.get(versionKey, tileSpec, tileSpec.getMeshCellSize()).getLocalCoordinates(x, y);
+                }
                 tileCoordinates = buildLocalInstance(tileSpec.getTileId(), local);
                 tileCoordinatesList.add(tileCoordinates);
             } catch (final NoninvertibleModelException e) {
@@ -155,6 +192,137 @@ public class TileCoordinates implements Serializable {
         return tileCoordinatesList;
     }
 
+    /**
+     * Inversely transforms a batch of world points, grouping the points by tile so that
+     * each tile's inverse mesh is retrieved (or built) only once for the entire batch.
+     *
+     * @param  worldCoordinatesList  world coordinates to invert (only the first two world values are used).
+     *
+     * @param  tileSpecLists         list of tiles that contain each world point
+     *                               (order of each list is assumed to be the same order used for rendering).
+     *                               A null list indicates that the corresponding point has already failed
+     *                               (e.g. missing data) and should not be inverted.
+     *
+     * @param  meshCache             cache of previously built inverse meshes (or null to build a new mesh
+     *                               for each tile in the batch).
+     *
+     * @param  versionKey            identifies the version of the specified tile specs in the mesh cache
+     *                               (e.g. stack id plus last modified timestamp).
+     *
+     * @return list of local coordinates lists (one list per world point in the same order as the world points).
+     *         Points that cannot be inverted for any of their tiles are returned as a single element list
+     *         containing the original world coordinates with an error message.
+     */
+    public static List<List<TileCoordinates>> getLocalCoordinates(
+            final List<TileCoordinates> worldCoordinatesList,
+            final List<List<TileSpec>> tileSpecLists,
+            final TileInverseMeshCache meshCache,
+            final String versionKey) {
+
+        final int numberOfPoints = worldCoordinatesList.size();
+
+        // group the (point, tile) pairs by tile id, retaining the first spec for each tile
+        final Map<String, TileSpec> tileIdToSpec = new LinkedHashMap<>();
+        final Map<String, List<int[]>> tileIdToPointTilePairs = new HashMap<>();
+        final double[][][] localValues = new double[numberOfPoints][][];
+
+        for (int pointIndex = 0; pointIndex < numberOfPoints; pointIndex++) {
+            final List<TileSpec> tileSpecList = tileSpecLists.get(pointIndex);
+            if (tileSpecList != null) {
+                localValues[pointIndex] = new double[tileSpecList.size()][];
+                for (int tileIndex = 0; tileIndex < tileSpecList.size(); tileIndex++) {
+                    final TileSpec tileSpec = tileSpecList.get(tileIndex);
+                    tileIdToSpec.putIfAbsent(tileSpec.getTileId(), tileSpec);
+                    tileIdToPointTilePairs.computeIfAbsent(tileSpec.getTileId(),
+                                                           k -> new ArrayList<>()).add(new int[] {pointIndex, tileIndex});
+                }
+            }
+        }
+
+        // invert all points for each tile together
+        final String[] buildErrors = new String[numberOfPoints];
+        for (final TileSpec tileSpec : tileIdToSpec.values()) {
+
+            final List<int[]> pointTilePairs = tileIdToPointTilePairs.get(tileSpec.getTileId());
+
+            TileInverseMesh inverseMesh;
+            try {
+                if (meshCache == null) {
+                    inverseMesh = tileSpec.getInverseMesh(tileSpec.getMeshCellSize());
+                } else {
+                    inverseMesh = meshCache.get(versionKey, tileSpec, tileSpec.getMeshCellSize());
+                }
+            } catch (final IllegalStateException e) {
+                LOG.warn("getLocalCoordinates: failed to build inverse mesh for tile " + tileSpec.getTileId(), e);
+                for (final int[] pointTilePair : pointTilePairs) {
+                    buildErrors[pointTilePair[0]] = e.getMessage();
+                }
+                continue;
+            }
+
+            for (final int[] pointTilePair : pointTilePairs) {
+                final double[] world = worldCoordinatesList.get(pointTilePair[0]).getWorld();
+                try {
+                    localValues[pointTilePair[0]][pointTilePair[1]] = inverseMesh.getLocalCoordinates(world[0],
+                                                                                                      world[1]);
+                } catch (final NoninvertibleModelException e) {
+                    // leave local values null for non-invertible tiles
+                }
+            }
+        }
+
+        // assemble results for each point in tile (render) order
+        final List<List<TileCoordinates>> localCoordinatesLists = new ArrayList<>(numberOfPoints);
+        for (int pointIndex = 0; pointIndex < numberOfPoints; pointIndex++) {
+
+            final TileCoordinates worldCoordinates = worldCoordinatesList.get(pointIndex);
+            final List<TileSpec> tileSpecList = tileSpecLists.get(pointIndex);
+
+            if (tileSpecList == null) {
+                localCoordinatesLists.add(Collections.singletonList(worldCoordinates));
+                continue;
+            }
+
+            final List<TileCoordinates> tileCoordinatesList = new ArrayList<>(tileSpecList.size());
+            List<String> nonInvertibleTileIds = null;
+            for (int tileIndex = 0; tileIndex < tileSpecList.size(); tileIndex++) {
+                final double[] local = localValues[pointIndex][tileIndex];
+                final String tileId = tileSpecList.get(tileIndex).getTileId();
+                if (local == null) {
+                    if (nonInvertibleTileIds == null) {
+                        nonInvertibleTileIds = new ArrayList<>();
+                    }
+                    nonInvertibleTileIds.add(tileId);
+                } else {
+                    tileCoordinatesList.add(buildLocalInstance(tileId, local));
+                }
+            }
+
+            final int numberOfInvertibleCoordinates = tileCoordinatesList.size();
+            if (numberOfInvertibleCoordinates == 0) {
+
+                final double[] world = worldCoordinates.getWorld();
+                if (buildErrors[pointIndex] == null) {
+                    worldCoordinates.setError("world coordinate (" + world[0] + ", " + world[1] +
+                                              ") found in tile id(s) " + nonInvertibleTileIds +
+                                              " cannot be inverted");
+                } else {
+                    worldCoordinates.setError(buildErrors[pointIndex]);
+                }
+                localCoordinatesLists.add(Collections.singletonList(worldCoordinates));
+
+            } else {
+
+                // see single point method above for visibility details
+                tileCoordinatesList.get(numberOfInvertibleCoordinates - 1).setVisible(true);
+                localCoordinatesLists.add(tileCoordinatesList);
+
+            }
+        }
+
+        return localCoordinatesLists;
+    }
+
     public static TileCoordinates getWorldCoordinates(final TileSpec tileSpec,
                                                       final double x,
                                                       final double y) {
@@ -162,6 +330,18 @@ public class TileCoordinates implements Serializable {
         return buildWorldInstance(tileSpec.getTileId(), world);
     }
 
+    /**
+     * @return world coordinates for the specified tile using a previously built transform list
+     *         (see {@link TileSpec#getWorldCoordinates(CoordinateTransformList, double, double)}).
+     */
+    public static TileCoordinates getWorldCoordinates(final TileSpec tileSpec,
+                                                      final CoordinateTransformList<CoordinateTransform> transformList,
+                                                      final double x,
+                                                      final double y) {
+        final double[] world = tileSpec.getWorldCoordinates(transformList, x, y);
+        return buildWorldInstance(tileSpec.getTileId(), world);
+    }
+
     public String toJson() {
         return JSON_HELPER.toJson(this);
     }
@@ -0,0 +1,319 @@
+package org.janelia.alignment.spec;
+
+import java.util.List;
+
+import mpicbg.models.AffineModel2D;
+import mpicbg.models.IllDefinedDataPointsException;
+import mpicbg.models.NotEnoughDataPointsException;
+import mpicbg.models.NoninvertibleModelException;
+import mpicbg.trakem2.util.Pair;
+
+import org.janelia.alignment.RenderTransformMesh;
+
+/**
+ * Immutable inverse (world to local) mapping for a tile that can be reused for any number of points.
+ *
+ * Building a mesh is by far the most expensive part of inversely transforming a point,
+ * so instances are built once from a tile's transform list and then retained
+ * (see {@link TileInverseMeshCache}) for subsequent lookups.
+ *
+ * Each mesh triangle's inverse affine is pre-fit and triangles are indexed by a uniform grid
+ * covering the mesh's world bounds so that only the few triangles overlapping a point's grid cell
+ * need to be checked when locating the point.  Mesh triangles are nearly uniform in size,
+ * so a grid with roughly one cell per triangle gives constant time point location.
+ *
+ * @author Eric Trautman
+ */
+public class TileInverseMesh {
+
+    private final String tileId;
+    private final Double z;
+
+    /** World (target) vertices for each triangle: ax, ay, bx, by, cx, cy. */
+    private final double[] vertices;
+
+    /** Inverse (world to local) affine for each triangle: m00, m10, m01, m11, m02, m12. */
+    private final double[] inverseAffines;
+
+    private final int numberOfTriangles;
+
+    private final double minX;
+    private final double minY;
+    private final double maxX;
+    private final double maxY;
+    private final double cellWidth;
+    private final double cellHeight;
+    private final int numberOfColumns;
+    private final int numberOfRows;
+
+    /** Triangle indexes for each grid cell (in mesh order). */
+    private final int[][] cellTriangles;
+
+    /**
+     * Builds an inverse mesh for a tile (see {@link TileSpec#getInverseMesh}).
+     *
+     * @param  tileId  identifies the tile.
+     * @param  z       z value for the tile (or null if undefined).
+     * @param  mesh    the tile's forward transform mesh or null if the tile has no transforms.
+     */
+    TileInverseMesh(final String tileId,
+                    final Double z,
+                    final RenderTransformMesh mesh) {
+
+        this.tileId = tileId;
+        this.z = z;
+
+        if (mesh != null) {
+
+            final List<Pair<AffineModel2D, double[][]>> av = mesh.getAV();
+
+            final double[] allVertices = new double[av.size() * 6];
+            final double[] allInverseAffines = new double[av.size() * 6];
+            final double[] m = new double[6];
+
+            double minWorldX = Double.MAX_VALUE;
+            double minWorldY = Double.MAX_VALUE;
+            double maxWorldX = -Double.MAX_VALUE;
+            double maxWorldY = -Double.MAX_VALUE;
+
+            int count = 0;
+            for (final Pair<AffineModel2D, double[][]> triangle : av) {
+
+                final double[][] pq = triangle.b;
+
+                // fit the inverse (target to source) affine directly
+                final AffineModel2D inverse = new AffineModel2D();
+                try {
+                    inverse.fit(new double[][] { pq[2], pq[3] },
+                                new double[][] { pq[0], pq[1] },
+                                mesh.unitWeights);
+                } catch (final NotEnoughDataPointsException | IllDefinedDataPointsException e) {
+                    // degenerate (zero area) triangles cannot contain any points, so simply skip them
+                    continue;
+                }
+
+                inverse.toArray(m);
+
+                final int offset = count * 6;
+                for (int i = 0; i < 3; i++) {
+                    final double x = pq[2][i];
+                    final double y = pq[3][i];
+                    allVertices[offset + (i * 2)] = x;
+                    allVertices[offset + (i * 2) + 1] = y;
+                    minWorldX = Math.min(minWorldX, x);
+                    minWorldY = Math.min(minWorldY, y);
+                    maxWorldX = Math.max(maxWorldX, x);
+                    maxWorldY = Math.max(maxWorldY, y);
+                }
+                System.arraycopy(m, 0, allInverseAffines, offset, 6);
+
+                count++;
+            }
+
+            this.numberOfTriangles = count;
+            this.vertices = allVertices;
+            this.inverseAffines = allInverseAffines;
+
+            if (count > 0) {
+
+                final int cellsPerSide = Math.max(1, (int) Math.sqrt(count));
+
+                this.minX = minWorldX;
+                this.minY = minWorldY;
+                this.maxX = maxWorldX;
+                this.maxY = maxWorldY;
+                this.numberOfColumns = cellsPerSide;
+                this.numberOfRows = cellsPerSide;
+                this.cellWidth = Math.max(Double.MIN_NORMAL, (maxWorldX - minWorldX) / cellsPerSide);
+                this.cellHeight = Math.max(Double.MIN_NORMAL, (maxWorldY - minWorldY) / cellsPerSide);
+                this.cellTriangles = buildCellIndex();
+
+            } else {
+                this.minX = 0;
+                this.minY = 0;
+                this.maxX = -1;
+                this.maxY = -1;
+                this.numberOfColumns = 0;
+                this.numberOfRows = 0;
+                this.cellWidth = 1;
+                this.cellHeight = 1;
+                this.cellTriangles = new int[0][];
+            }
+
+        } else {
+
+            // tiles without transforms are simply passed through (see isIdentity)
+            this.numberOfTriangles = 0;
+            this.vertices = null;
+            this.inverseAffines = null;
+            this.minX = 0;
+            this.minY = 0;
+            this.maxX = -1;
+            this.maxY = -1;
+            this.numberOfColumns = 0;
+            this.numberOfRows = 0;
+            this.cellWidth = 1;
+            this.cellHeight = 1;
+            this.cellTriangles = null;
+        }
+
+    }
+
+    public String getTileId() {
+        return tileId;
+    }
+
+    /**
+     * @return true if the tile has no transforms (world coordinates are the same as local coordinates).
+     */
+    public boolean isIdentity() {
+        return (vertices == null);
+    }
+
+    /**
+     * @return the number of (non-degenerate) triangles in this mesh.
+     */
+    public int getNumberOfTriangles() {
+        return numberOfTriangles;
+    }
+
+    /**
+     * @param  x  world x coordinate to inversely transform into local coordinate.
+     * @param  y  world y coordinate to inversely transform into local coordinate.
+     *
+     * @return local coordinates (x, y, z) for the specified world coordinates.
+     *         The results are the same as {@link TileSpec#getLocalCoordinates} would return.
+     *
+     * @throws NoninvertibleModelException
+     *   if the specified point is not inside this mesh.
+     */
+    public double[] getLocalCoordinates(final double x,
+                                        final double y)
+            throws NoninvertibleModelException {
+
+        final double[] localCoordinates;
+        final double[] l = new double[] {x, y};
+        if (! isIdentity()) {
+            applyInverseInPlace(l);
+        }
+
+        if (z == null) {
+            localCoordinates = l;
+        } else {
+            localCoordinates = new double[]{l[0], l[1], z};
+        }
+
+        return localCoordinates;
+    }
+
+    /**
+     * Inversely transforms the specified world location into a local location.
+     *
+     * @param  location  world location (only x and y are used) that will be replaced with the local location.
+     *
+     * @throws NoninvertibleModelException
+     *   if the specified location is not inside this mesh.
+     */
+    public void applyInverseInPlace(final double[] location)
+            throws NoninvertibleModelException {
+
+        final double x = location[0];
+        final double y = location[1];
+
+        if ((x >= minX) && (x <= maxX) && (y >= minY) && (y <= maxY)) {
+
+            final int column = getColumn(x);
+            final int row = getRow(y);
+
+            for (final int triangle : cellTriangles[(row * numberOfColumns) + column]) {
+                final int offset = triangle * 6;
+                if (RenderTransformMesh.isInTriangle(vertices[offset],
+                                                     vertices[offset + 1],
+                                                     vertices[offset + 2],
+                                                     vertices[offset + 3],
+                                                     vertices[offset + 4],
+                                                     vertices[offset + 5],
+                                                     x, y)) {
+                    location[0] = (inverseAffines[offset] * x) +
+                                  (inverseAffines[offset + 2] * y) +
+                                  inverseAffines[offset + 4];
+                    location[1] = (inverseAffines[offset + 1] * x) +
+                                  (inverseAffines[offset + 3] * y) +
+                                  inverseAffines[offset + 5];
+                    return;
+                }
+            }
+
+        }
+
+        throw new NoninvertibleModelException("Noninvertible location ( " + x + ", " + y + " )");
+    }
+
+    @Override
+    public String toString() {
+        return "{tileId: '" + tileId +
+               "', numberOfTriangles: " + numberOfTriangles +
+               ", gridSize: " + numberOfColumns + "x" + numberOfRows +
+               '}';
+    }
+
+    private int getColumn(final double x) {
+        return Math.min(numberOfColumns - 1, (int) ((x - minX) / cellWidth));
+    }
+
+    private int getRow(final double y) {
+        return Math.min(numberOfRows - 1, (int) ((y - minY) / cellHeight));
+    }
+
+    /**
+     * @return triangle indexes for each grid cell, where each triangle is included in every cell
+     *         overlapped by its bounding box.
+     */
+    private int[][] buildCellIndex() {
+
+        final int numberOfCells = numberOfColumns * numberOfRows;
+        final int[] cellCounts = new int[numberOfCells];
+        final int[] triangleCellBounds = new int[numberOfTriangles * 4];
+
+        for (int triangle = 0; triangle < numberOfTriangles; triangle++) {
+
+            final int offset = triangle * 6;
+            final double triangleMinX = Math.min(vertices[offset], Math.min(vertices[offset + 2], vertices[offset + 4]));
+            final double triangleMinY = Math.min(vertices[offset + 1], Math.min(vertices[offset + 3], vertices[offset + 5]));
+            final double triangleMaxX = Math.max(vertices[offset], Math.max(vertices[offset + 2], vertices[offset + 4]));
+            final double triangleMaxY = Math.max(vertices[offset + 1], Math.max(vertices[offset + 3], vertices[offset + 5]));
+
+            final int boundsOffset = triangle * 4;
+            triangleCellBounds[boundsOffset] = getColumn(triangleMinX);
+            triangleCellBounds[boundsOffset + 1] = getRow(triangleMinY);
+            triangleCellBounds[boundsOffset + 2] = getColumn(triangleMaxX);
+            triangleCellBounds[boundsOffset + 3] = getRow(triangleMaxY);
+
+            for (int row = triangleCellBounds[boundsOffset + 1]; row <= triangleCellBounds[boundsOffset + 3]; row++) {
+                for (int column = triangleCellBounds[boundsOffset]; column <= triangleCellBounds[boundsOffset + 2]; column++) {
+                    cellCounts[(row * numberOfColumns) + column]++;
+                }
+            }
+        }
+
+        final int[][] index = new int[numberOfCells][];
+        for (int cell = 0; cell < numberOfCells; cell++) {
+            index[cell] = new int[cellCounts[cell]];
+            cellCounts[cell] = 0;
+        }
+
+        for (int triangle = 0; triangle < numberOfTriangles; triangle++) {
+            final int boundsOffset = triangle * 4;
+            for (int row = triangleCellBounds[boundsOffset + 1]; row <= triangleCellBounds[boundsOffset + 3]; row++) {
+                for (int column = triangleCellBounds[boundsOffset]; column <= triangleCellBounds[boundsOffset + 2]; column++) {
+                    final int cell = (row * numberOfColumns) + column;
+                    index[cell][cellCounts[cell]] = triangle;
+                    cellCounts[cell]++;
+                }
+            }
+        }
+
+        return index;
+    }
+
+}
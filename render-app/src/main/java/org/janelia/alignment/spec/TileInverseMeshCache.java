@@ -0,0 +1,165 @@
+package org.janelia.alignment.spec;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import com.google.common.cache.Weigher;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+
+import java.util.concurrent.ExecutionException;
+
+/**
+ * Cache of {@link TileInverseMesh} instances for mapping world coordinates to local coordinates.
+ * Each cache is constrained by a max triangle count parameter which should roughly correlate to max memory usage
+ * (about 120 bytes per triangle).  Once a cache is full, least recently used instances are removed to make room.
+ *
+ * Cached meshes are keyed by a caller provided version key along with tile id and mesh cell size.
+ * The version key (e.g. stack id plus stack last modified timestamp) must change whenever tile specs
+ * might change so that stale meshes are never used.  Stale entries are simply aged out of the cache.
+ *
+ * @author Eric Trautman
+ */
+public class TileInverseMeshCache {
+
+    /** Default max number of triangles is 2,000,000 (or roughly 800 2K x 2K tiles with a 64 pixel mesh cell size). */
+    public static final long DEFAULT_MAX_CACHED_TRIANGLES = 2_000_000;
+
+    private final long maximumNumberOfCachedTriangles;
+
+    private final Cache<CacheKey, TileInverseMesh> cache;
+
+    /**
+     * Constructs a cache instance with default parameters.
+     */
+    public TileInverseMeshCache() {
+        this(DEFAULT_MAX_CACHED_TRIANGLES);
+    }
+
+    /**
+     * Constructs a cache instance using the specified parameters.
+     *
+     * @param  maximumNumberOfCachedTriangles  the maximum number of triangles to maintain in the cache.
+     *                                         This should roughly correlate to the maximum amount of
+     *                                         memory for the cache.
+     */
+    public TileInverseMeshCache(final long maximumNumberOfCachedTriangles) {
+
+        this.maximumNumberOfCachedTriangles = maximumNumberOfCachedTriangles;
+
+        // identity meshes still occupy a little memory, so give them a nominal weight
+        final Weigher<CacheKey, TileInverseMesh> weigher =
+                (key, value) -> Math.max(1, value.getNumberOfTriangles());
+
+        this.cache = CacheBuilder.newBuilder()
+                .maximumWeight(maximumNumberOfCachedTriangles)
+                .weigher(weigher)
+                .recordStats()
+                .build();
+    }
+
+    /**
+     * @param  versionKey    identifies the version of the tile spec (e.g. stack id plus last modified timestamp).
+     * @param  tileSpec      tile to invert.
+     * @param  meshCellSize  mesh cell size for the tile's transform mesh.
+     *
+     * @return the cached inverse mesh for the specified tile.
+     *         If the mesh is not already cached, it will be built and added to the cache.
+     *
+     * @throws IllegalStateException
+     *   if the mesh cannot be built.
+     */
+    public TileInverseMesh get(final String versionKey,
+                               final TileSpec tileSpec,
+                               final double meshCellSize)
+            throws IllegalStateException {
+
+        final CacheKey key = new CacheKey(versionKey, tileSpec.getTileId(), meshCellSize);
+        final TileInverseMesh inverseMesh;
+        try {
+            inverseMesh = cache.get(key, () -> tileSpec.getInverseMesh(meshCellSize));
+        } catch (final ExecutionException | UncheckedExecutionException e) {
+            final Throwable cause = e.getCause();
+            if (cause instanceof IllegalStateException) {
+                throw (IllegalStateException) cause;
+            }
+            throw new IllegalStateException("failed to build inverse mesh for " + key, cause);
+        }
+        return inverseMesh;
+    }
+
+    /**
+     * @return the number of entries currently in this cache.
+     */
+    public long size() {
+        return cache.size();
+    }
+
+    /**
+     * Discards all entries in the cache.
+     */
+    public void invalidateAll() {
+        cache.invalidateAll();
+    }
+
+    /**
+     * @return a current snapshot of this cache's cumulative statistics.
+     */
+    public CacheStats getStats() {
+        return cache.stats();
+    }
+
+    @Override
+    public String toString() {
+        return "{numberOfEntries: " + size() +
+               ", maximumNumberOfCachedTriangles: " + maximumNumberOfCachedTriangles +
+               '}';
+    }
+
+    /**
+     * Key that combines a version key with a tile's id and mesh cell size.
+     */
+    private static class CacheKey {
+
+        private final String versionKey;
+        private final String tileId;
+        private final double meshCellSize;
+
+        CacheKey(final String versionKey,
+                 final String tileId,
+                 final double meshCellSize) {
+            this.versionKey = versionKey == null ? "" : versionKey;
+            this.tileId = tileId == null ? "" : tileId;
+            this.meshCellSize = meshCellSize;
+        }
+
+        @Override
+        public String toString() {
+            return "{versionKey: '" + versionKey + "', tileId: '" + tileId + "', meshCellSize: " + meshCellSize + '}';
+        }
+
+        @Override
+        public boolean equals(final Object o) {
+            boolean result = true;
+            if (this != o) {
+                if (o instanceof CacheKey) {
+                    final CacheKey that = (CacheKey) o;
+                    result = this.tileId.equals(that.tileId) &&
+                             (Double.compare(this.meshCellSize, that.meshCellSize) == 0) &&
+                             this.versionKey.equals(that.versionKey);
+                } else {
+                    result = false;
+                }
+            }
+            return result;
+        }
+
+        @Override
+        public int hashCode() {
+            int result = tileId.hashCode();
+            result = 31 * result + versionKey.hashCode();
+            result = 31 * result + Double.hashCode(meshCellSize);
+            return result;
+        }
+    }
+
+}
@@ -31,6 +31,7 @@ import java.util.TreeMap;
 
 import org.janelia.alignment.ImageAndMask;
 import org.janelia.alignment.RenderParameters;
+import org.janelia.alignment.RenderTransformMesh;
 import org.janelia.alignment.json.JsonUtils;
 import org.janelia.alignment.spec.stack.MipmapPathBuilder;
 
@@ -200,6 +201,32 @@ public class TileSpec implements Serializable {
                                            height);
     }
 
+    /**
+     * @return an inverse mesh built from this spec's list of transforms that can be reused
+     *         to efficiently map any number of world points to local points.
+     *
+     * @throws IllegalStateException
+     *   if width or height have not been defined for this tile.
+     */
+    public TileInverseMesh getInverseMesh(final double meshCellSize)
+            throws IllegalStateException {
+
+        RenderTransformMesh mesh = null;
+        if (hasTransforms()) {
+
+            if (! hasWidthAndHeightDefined()) {
+                throw new IllegalStateException("width and height must be set to create transform mesh");
+            }
+
+            mesh = new RenderTransformMesh(getTransformList(),
+                                           getNumberOfTrianglesCoveringWidth(meshCellSize),
+                                           width,
+                                           height);
+        }
+
+        return new TileInverseMesh(tileId, z, mesh);
+    }
+
 
     /**
      * Derives this tile's bounding box attributes.
@@ -330,11 +357,25 @@ public class TileSpec implements Serializable {
      * @return world coordinates (x, y, z) for the specified local coordinates.
      */
     public double[] getWorldCoordinates(final double x, final double y) {
+        return getWorldCoordinates(hasTransforms() ? getTransformList() : null, x, y);
+    }
+
+    /**
+     * @param  ctl  previously built transform list for this tile (see {@link #getTransformList()})
+     *              that allows the list to be reused when transforming many points
+     *              (or null if this tile has no transforms).
+     * @param  x    local x coordinate to transform into world coordinate.
+     * @param  y    local y coordinate to transform into world coordinate.
+     *
+     * @return world coordinates (x, y, z) for the specified local coordinates.
+     */
+    public double[] getWorldCoordinates(final CoordinateTransformList<CoordinateTransform> ctl,
+                                        final double x,
+                                        final double y) {
         final double[] worldCoordinates;
         final double[] w = new double[] {x, y};
 
-        if (hasTransforms()) {
-            final CoordinateTransformList<CoordinateTransform> ctl = getTransformList();
+        if (ctl != null) {
             ctl.applyInPlace(w);
         }
 
@@ -6,6 +6,7 @@ import java.util.Map;
 
 import org.janelia.alignment.ImageAndMask;
 import org.janelia.alignment.json.JsonUtils;
+import org.janelia.alignment.mipmap.MipmapPyramidFile;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -42,6 +43,22 @@ import io.swagger.annotations.ApiModelProperty;
  *     The level is placed before the source file path to reduce the number of files in any one directory.
  * </p>
  *
+ * <p>
+ *     When the extension is {@link MipmapPyramidFile#EXTENSION}, all levels for a source image (or mask)
+ *     are stored in a single {@link MipmapPyramidFile} and derived paths instead have the form:
+ * <pre>
+ *         file:[root path]/[source (level 0) path].pyr#[image|mask]/[level]
+ * </pre>
+ *
+ *     Using the example above, the derived level 2 path would be:
+ * <pre>
+ *         file:/tier2/flyTEM/mipmaps/groups/flyTEM/data/row2col3.tif.pyr#image/2
+ * </pre>
+ *
+ *     Since mask pyramids are derived from mask source paths, all tiles that share a mask also share
+ *     the mask's pyramid file.
+ * </p>
+ *
  * @author Eric Trautman
  */
 public class MipmapPathBuilder
@@ -99,11 +116,40 @@ public class MipmapPathBuilder
 
     @ApiModelProperty(
             value = "file extension (without dot) for all mipmaps",
-            allowableValues = "tif, jpg, png")
+            allowableValues = "tif, jpg, png, pyr")
     public String getExtension() {
         return extension;
     }
 
+    /**
+     * @return true if all levels for each source image are stored in a single {@link MipmapPyramidFile};
+     *         otherwise false.
+     */
+    public boolean usesPyramidFiles() {
+        return MipmapPyramidFile.EXTENSION.equals(extension);
+    }
+
+    /**
+     * @return URL of the pyramid file for the specified source (level 0) image URL.
+     */
+    public String getPyramidFileUrl(final String sourceUrlString) {
+
+        final StringBuilder sb = new StringBuilder(256);
+
+        if (rootPath.indexOf(':') == -1) {
+            sb.append("file:");
+        }
+
+        // root path always ends with a slash
+        sb.append(rootPath, 0, rootPath.length() - 1);
+        appendSourcePath(sourceUrlString, sb);
+
+        sb.append('.');
+        sb.append(extension);
+
+        return sb.toString();
+    }
+
     public boolean hasSamePathAndExtension(final MipmapPathBuilder that) {
         return this.rootPath.equals(that.rootPath) && this.extension.equals(that.extension);
     }
@@ -131,11 +177,23 @@ public class MipmapPathBuilder
 
         final ImageAndMask sourceImageAndMask = sourceEntry.getValue();
 
-        final String derivedImageUrl = deriveMipmapUrl(sourceImageAndMask.getImageUrl(), derivedLevel);
-
+        final String derivedImageUrl;
         String derivedMaskUrl = null;
-        if (sourceImageAndMask.hasMask()) {
-            derivedMaskUrl = deriveMipmapUrl(sourceImageAndMask.getMaskUrl(), derivedLevel);
+
+        if (usesPyramidFiles()) {
+            derivedImageUrl = MipmapPyramidFile.getLevelUrl(getPyramidFileUrl(sourceImageAndMask.getImageUrl()),
+                                                            derivedLevel,
+                                                            false);
+            if (sourceImageAndMask.hasMask()) {
+                derivedMaskUrl = MipmapPyramidFile.getLevelUrl(getPyramidFileUrl(sourceImageAndMask.getMaskUrl()),
+                                                               derivedLevel,
+                                                               true);
+            }
+        } else {
+            derivedImageUrl = deriveMipmapUrl(sourceImageAndMask.getImageUrl(), derivedLevel);
+            if (sourceImageAndMask.hasMask()) {
+                derivedMaskUrl = deriveMipmapUrl(sourceImageAndMask.getMaskUrl(), derivedLevel);
+            }
         }
 
         final ImageAndMask derivedImageAndMask = new ImageAndMask(derivedImageUrl, derivedMaskUrl);
@@ -144,6 +202,13 @@ public class MipmapPathBuilder
         try {
             if (validate) {
                 derivedImageAndMask.validate();
+                if (usesPyramidFiles()) {
+                    // pyramid files may not contain every level, so make sure the derived level is actually stored
+                    MipmapPyramidFile.validateLevelUrl(derivedImageUrl);
+                    if (derivedMaskUrl != null) {
+                        MipmapPyramidFile.validateLevelUrl(derivedMaskUrl);
+                    }
+                }
             }
             derivedEntry = new AbstractMap.SimpleEntry<>(derivedLevel, derivedImageAndMask);
         } catch (final Throwable t) {
@@ -160,7 +225,16 @@ public class MipmapPathBuilder
         final StringBuilder sb = new StringBuilder(256);
         sb.append(rootPath);
         sb.append(derivedLevel);
+        appendSourcePath(urlString, sb);
 
+        sb.append('.');
+        sb.append(extension);
+
+        return sb.toString();
+    }
+
+    private void appendSourcePath(final String urlString,
+                                  final StringBuilder sb) {
         final int colonIndex = urlString.indexOf(':');
         if (colonIndex > -1) {
             sb.append(urlString.substring(colonIndex + 1));
@@ -170,11 +244,6 @@ public class MipmapPathBuilder
             sb.append('/');
             sb.append(urlString);
         }
-
-        sb.append('.');
-        sb.append(extension);
-
-        return sb.toString();
     }
 
     private static final Logger LOG = LoggerFactory.getLogger(MipmapPathBuilder.class);
@@ -172,6 +172,25 @@ public class StackVersion
         return alignmentQuality;
     }
 
+    /**
+     * @param  alignmentQuality  quality of the alignment stored in the new version.
+     *
+     * @return a copy of this version with a new create timestamp and the specified alignment quality.
+     */
+    public StackVersion getNextVersionWithAlignmentQuality(final Double alignmentQuality) {
+        return new StackVersion(new Date(),
+                                versionNotes,
+                                cycleNumber,
+                                cycleStepNumber,
+                                stackResolutionX,
+                                stackResolutionY,
+                                stackResolutionZ,
+                                materializedBoxRootPath,
+                                mipmapPathBuilder,
+                                alignmentQuality,
+                                defaultChannel);
+    }
+
     String getDefaultChannel() {
         return defaultChannel;
     }
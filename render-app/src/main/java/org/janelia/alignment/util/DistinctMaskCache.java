@@ -0,0 +1,265 @@
+package org.janelia.alignment.util;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.Weigher;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+
+import ij.process.ImageProcessor;
+
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+/**
+ * Dedicated cache tier for mask {@link ImageProcessor} instances.
+ *
+ * Most tiles share a small number of distinct masks (e.g. one per camera), but masks are often referenced
+ * through many different URLs and would otherwise compete with (and be evicted by) tile images.
+ * This cache keeps masks in their own weight constrained tier and identifies cached instances by a digest
+ * of their pixel content, so identical masks loaded through different URLs (or keys) share one cached
+ * processor and consume cache weight only once.
+ *
+ * Note that masks are still requested and loaded by key (URL): the digest is only known after a load,
+ * so each distinct key is loaded once (concurrent requests for the same key share that load) even when
+ * its content matches a mask that is already cached.
+ *
+ * Each cache is constrained by a max weight (pixel bytes) for distinct masks.
+ * Key to digest mappings are small and are constrained separately by count.
+ *
+ * @param  <K>  type of key for cached masks.
+ *
+ * @author Eric Trautman
+ */
+public class DistinctMaskCache<K> {
+
+    /** Default maximum number of keys (not distinct masks) to track is 100,000. */
+    public static final long DEFAULT_MAX_KEYS = 100_000;
+
+    private final long maximumMaskBytes;
+    private final Function<K, ImageProcessor> loader;
+    private final Cache<K, String> keyToDigest;
+    private final Cache<String, ImageProcessor> digestToMask;
+    private final AtomicLong hitCount;
+    private final AtomicLong loadCount;
+    private final AtomicLong sharedLoadCount;
+
+    /**
+     * Constructs a cache instance using the specified parameters.
+     *
+     * @param  maximumMaskBytes  the maximum number of pixel bytes for distinct cached masks.
+     * @param  loader            function for loading masks that are not cached.
+     */
+    public DistinctMaskCache(final long maximumMaskBytes,
+                             final Function<K, ImageProcessor> loader) {
+
+        this.maximumMaskBytes = maximumMaskBytes;
+        this.loader = loader;
+
+        this.keyToDigest = CacheBuilder.newBuilder()
+                .maximumSize(DEFAULT_MAX_KEYS)
+                .build();
+
+        final Weigher<String, ImageProcessor> weigher =
+                (key, value) -> ImageProcessorCache.getByteCount(value);
+
+        this.digestToMask = CacheBuilder.newBuilder()
+                .maximumWeight(maximumMaskBytes)
+                .weigher(weigher)
+                .build();
+
+        this.hitCount = new AtomicLong(0);
+        this.loadCount = new AtomicLong(0);
+        this.sharedLoadCount = new AtomicLong(0);
+    }
+
+    /**
+     * @return the cached mask for the specified key, loading it if necessary.
+     *
+     * @throws IllegalArgumentException
+     *   if the mask cannot be loaded.
+     */
+    public ImageProcessor get(final K key)
+            throws IllegalArgumentException {
+
+        final String cachedDigest = keyToDigest.getIfPresent(key);
+        if (cachedDigest != null) {
+            final ImageProcessor cachedMask = digestToMask.getIfPresent(cachedDigest);
+            if (cachedMask != null) {
+                hitCount.incrementAndGet();
+                return cachedMask;
+            }
+            // mask was evicted, so drop the stale mapping (unless another thread has already replaced it)
+            keyToDigest.asMap().remove(key, cachedDigest);
+        }
+
+        // loading through the key cache ensures that concurrent requests for the same key share one load
+        final ImageProcessor[] loadedMask = { null };
+        final String digest;
+        try {
+            digest = keyToDigest.get(key, () -> {
+                final ImageProcessor mask = loader.apply(key);
+                loadCount.incrementAndGet();
+                final String maskDigest = getDigest(mask);
+                loadedMask[0] = digestToMask.get(maskDigest, () -> mask);
+                if (loadedMask[0] != mask) {
+                    sharedLoadCount.incrementAndGet();
+                }
+                return maskDigest;
+            });
+        } catch (final ExecutionException | UncheckedExecutionException e) {
+            throw new IllegalArgumentException("failed to load mask for " + key, e.getCause());
+        }
+
+        ImageProcessor mask = loadedMask[0];
+
+        if (mask == null) {
+            // another thread loaded the mask while this thread waited
+            mask = digestToMask.getIfPresent(digest);
+            if (mask == null) {
+                // mask is too large to be retained, so simply load it without caching
+                mask = loader.apply(key);
+                loadCount.incrementAndGet();
+            } else {
+                hitCount.incrementAndGet();
+            }
+        }
+
+        return mask;
+    }
+
+    /**
+     * @return the cached mask for the specified key or null if it is not cached.
+     */
+    public ImageProcessor getIfPresent(final K key) {
+        ImageProcessor mask = null;
+        final String digest = keyToDigest.getIfPresent(key);
+        if (digest != null) {
+            mask = digestToMask.getIfPresent(digest);
+        }
+        return mask;
+    }
+
+    /**
+     * Adds the specified mask to the cache.
+     *
+     * @return the cached instance for the mask's content
+     *         (which may be a previously cached instance loaded for a different key).
+     */
+    public ImageProcessor put(final K key,
+                              final ImageProcessor mask) {
+
+        final String digest = getDigest(mask);
+
+        ImageProcessor cachedMask;
+        try {
+            cachedMask = digestToMask.get(digest, () -> mask);
+        } catch (final ExecutionException e) {
+            // should never happen since the value loader simply returns the mask
+            cachedMask = mask;
+        }
+
+        keyToDigest.put(key, digest);
+
+        return cachedMask;
+    }
+
+    /**
+     * @return the number of keys currently tracked by this cache.
+     */
+    public long size() {
+        return keyToDigest.size();
+    }
+
+    /**
+     * @return the number of distinct masks currently in this cache.
+     */
+    public long getDistinctMaskCount() {
+        return digestToMask.size();
+    }
+
+    /**
+     * Discards all entries in the cache.
+     */
+    public void invalidateAll() {
+        keyToDigest.invalidateAll();
+        digestToMask.invalidateAll();
+    }
+
+    /**
+     * @return map of current cache metrics suitable for reporting.
+     */
+    public Map<String, Object> getMetrics() {
+        long maskByteCount = 0;
+        for (final ImageProcessor mask : digestToMask.asMap().values()) {
+            maskByteCount += ImageProcessorCache.getByteCount(mask);
+        }
+        final Map<String, Object> metrics = new LinkedHashMap<>();
+        metrics.put("maskKeyCount", size());
+        metrics.put("distinctMaskCount", getDistinctMaskCount());
+        metrics.put("maskByteCount", maskByteCount);
+        metrics.put("maximumMaskBytes", maximumMaskBytes);
+        metrics.put("maskHitCount", hitCount.get());
+        metrics.put("maskLoadCount", loadCount.get());
+        metrics.put("maskSharedLoadCount", sharedLoadCount.get());
+        return metrics;
+    }
+
+    @Override
+    public String toString() {
+        return "{numberOfKeys: " + size() +
+               ", numberOfDistinctMasks: " + getDistinctMaskCount() +
+               ", maximumMaskBytes: " + maximumMaskBytes + '}';
+    }
+
+    /**
+     * @return digest of the specified processor's dimensions, type, and pixels.
+     */
+    public static String getDigest(final ImageProcessor imageProcessor) {
+
+        final MessageDigest messageDigest;
+        try {
+            messageDigest = MessageDigest.getInstance("MD5");
+        } catch (final NoSuchAlgorithmException e) {
+            throw new IllegalStateException("failed to create MD5 message digest for masks", e);
+        }
+
+        final ByteBuffer header = ByteBuffer.allocate(12);
+        header.putInt(imageProcessor.getWidth());
+        header.putInt(imageProcessor.getHeight());
+        header.putInt(imageProcessor.getBitDepth());
+        messageDigest.update(header.array());
+
+        final Object pixels = imageProcessor.getPixels();
+        if (pixels instanceof byte[]) {
+            messageDigest.update((byte[]) pixels);
+        } else {
+            final ByteBuffer pixelBytes;
+            if (pixels instanceof short[]) {
+                final short[] array = (short[]) pixels;
+                pixelBytes = ByteBuffer.allocate(array.length * 2);
+                pixelBytes.asShortBuffer().put(array);
+            } else if (pixels instanceof float[]) {
+                final float[] array = (float[]) pixels;
+                pixelBytes = ByteBuffer.allocate(array.length * 4);
+                pixelBytes.asFloatBuffer().put(array);
+            } else {
+                final int[] array = (int[]) pixels;
+                pixelBytes = ByteBuffer.allocate(array.length * 4);
+                pixelBytes.asIntBuffer().put(array);
+            }
+            messageDigest.update(pixelBytes.array());
+        }
+
+        // create string representation of digest that matches output generated by tools like md5sum
+        final BigInteger bigInt = new BigInteger(1, messageDigest.digest());
+        return bigInt.toString(16);
+    }
+
+}
@@ -4,16 +4,25 @@ import com.google.common.cache.CacheBuilder;
 import com.google.common.cache.CacheLoader;
 import com.google.common.cache.CacheStats;
 import com.google.common.cache.LoadingCache;
+import com.google.common.cache.RemovalListener;
 import com.google.common.cache.Weigher;
 
 import ij.ImagePlus;
 import ij.io.Opener;
+import ij.process.ByteProcessor;
+import ij.process.FloatProcessor;
 import ij.process.ImageProcessor;
+import ij.process.ShortProcessor;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
 
 import javax.annotation.Nullable;
 
 import mpicbg.trakem2.util.Downsampler;
 
+import org.janelia.alignment.mipmap.MipmapPyramidFile;
 import org.janelia.alignment.protocol.s3.S3Opener;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -25,6 +34,17 @@ import org.slf4j.LoggerFactory;
  * Cache instances are thread safe and do not depend upon garbage collection or independent threads to evict
  * stale entries, making the instances safer for use in application servers.
  *
+ * Since cached processors are mutable, {@link #get} returns a copy of each cached processor.
+ * Consumers that only read pixels (e.g. pixel mapping during rendering) can instead use
+ * {@link #getReadOnlyView} to avoid copying the full pixel array for every request.
+ *
+ * Caches can optionally be backed by an {@link OffHeapPixelStore} that retains the pixels of processors
+ * evicted from the (on-heap) cache so that they can be restored without reloading the source image.
+ *
+ * Caches can also optionally keep masks in a separate {@link DistinctMaskCache} tier so that masks
+ * (typically shared by many tiles) are never evicted to make room for images and identical masks
+ * referenced through different URLs are only retained once (each URL is still loaded once).
+ *
  * For gory details about the cache implementation, see
  * <a href="https://code.google.com/p/guava-libraries/wiki/CachesExplained">
  *     https://code.google.com/p/guava-libraries/wiki/CachesExplained
@@ -43,8 +63,16 @@ public class ImageProcessorCache {
     private final long maximumNumberOfCachedPixels;
     private final boolean recordStats;
     private final boolean cacheOriginalsForDownSampledImages;
+    private final long maximumOffHeapBytes;
+    private final long maximumNumberOfCachedMaskBytes;
 
     private final LoadingCache<CacheKey, ImageProcessor> cache;
+    private final OffHeapPixelStore<CacheKey> offHeapStore;
+    private final DistinctMaskCache<CacheKey> maskCache;
+
+    private final AtomicLong copyCount;
+    private final AtomicLong copiedByteCount;
+    private final AtomicLong viewCount;
 
     /**
      * Constructs an instance with default parameters.
@@ -72,10 +100,88 @@ public class ImageProcessorCache {
     public ImageProcessorCache(final long maximumNumberOfCachedPixels,
                                final boolean recordStats,
                                final boolean cacheOriginalsForDownSampledImages) {
+        this(maximumNumberOfCachedPixels, recordStats, cacheOriginalsForDownSampledImages, 0);
+    }
+
+    /**
+     * Constructs a cache instance using the specified parameters.
+     *
+     * @param  maximumNumberOfCachedPixels         the maximum number of pixels to maintain in the cache.
+     *                                             This should roughly correlate to the maximum amount of
+     *                                             memory for the cache.
+     *
+     * @param  recordStats                         if true, useful tuning stats like cache hits and loads will be
+     *                                             maintained (presumably at some nominal overhead cost);
+     *                                             otherwise stats are not maintained.
+     *
+     * @param  cacheOriginalsForDownSampledImages  if true, when down sampled images are requested their source
+     *                                             images will also be cached (presumably improving the speed
+     *                                             of future down sampling to a different level);
+     *                                             otherwise only the down sampled result images are cached.
+     *
+     * @param  maximumOffHeapBytes                 the maximum number of bytes of evicted pixels to retain
+     *                                             off-heap (specify 0 to disable off-heap storage).
+     */
+    public ImageProcessorCache(final long maximumNumberOfCachedPixels,
+                               final boolean recordStats,
+                               final boolean cacheOriginalsForDownSampledImages,
+                               final long maximumOffHeapBytes) {
+        this(maximumNumberOfCachedPixels, recordStats, cacheOriginalsForDownSampledImages, maximumOffHeapBytes, 0);
+    }
+
+    /**
+     * Constructs a cache instance using the specified parameters.
+     *
+     * @param  maximumNumberOfCachedPixels         the maximum number of pixels to maintain in the cache.
+     *                                             This should roughly correlate to the maximum amount of
+     *                                             memory for the cache.
+     *
+     * @param  recordStats                         if true, useful tuning stats like cache hits and loads will be
+     *                                             maintained (presumably at some nominal overhead cost);
+     *                                             otherwise stats are not maintained.
+     *
+     * @param  cacheOriginalsForDownSampledImages  if true, when down sampled images are requested their source
+     *                                             images will also be cached (presumably improving the speed
+     *                                             of future down sampling to a different level);
+     *                                             otherwise only the down sampled result images are cached.
+     *
+     * @param  maximumOffHeapBytes                 the maximum number of bytes of evicted pixels to retain
+     *                                             off-heap (specify 0 to disable off-heap storage).
+     *
+     * @param  maximumNumberOfCachedMaskBytes      the maximum number of distinct mask pixel bytes to maintain in
+     *                                             a separate mask tier (specify 0 to cache masks with images).
+     */
+    public ImageProcessorCache(final long maximumNumberOfCachedPixels,
+                               final boolean recordStats,
+                               final boolean cacheOriginalsForDownSampledImages,
+                               final long maximumOffHeapBytes,
+                               final long maximumNumberOfCachedMaskBytes) {
 
         this.maximumNumberOfCachedPixels = maximumNumberOfCachedPixels;
         this.recordStats = recordStats;
         this.cacheOriginalsForDownSampledImages = cacheOriginalsForDownSampledImages;
+        this.maximumOffHeapBytes = maximumOffHeapBytes;
+        this.maximumNumberOfCachedMaskBytes = maximumNumberOfCachedMaskBytes;
+
+        if (maximumOffHeapBytes > 0) {
+            this.offHeapStore = new OffHeapPixelStore<>(maximumOffHeapBytes);
+        } else {
+            this.offHeapStore = null;
+        }
+
+        if (maximumNumberOfCachedMaskBytes > 0) {
+            this.maskCache = new DistinctMaskCache<>(maximumNumberOfCachedMaskBytes,
+                                                     key -> loadImageProcessor(key.getUri(),
+                                                                               key.getDownSampleLevels(),
+                                                                               true,
+                                                                               key.isConvertTo16Bit()));
+        } else {
+            this.maskCache = null;
+        }
+
+        this.copyCount = new AtomicLong(0);
+        this.copiedByteCount = new AtomicLong(0);
+        this.viewCount = new AtomicLong(0);
 
         final Weigher<CacheKey, ImageProcessor> weigher =
                 (key, value) -> {
@@ -83,7 +189,7 @@ public class ImageProcessorCache {
                     if (value == null) {
                         weight = 0;
                     } else {
-                        weight = value.getPixelCount() * value.getBitDepth() / 8;
+                        weight = getByteCount(value);
                     }
                     return weight;
                 };
@@ -96,23 +202,42 @@ public class ImageProcessorCache {
                             throws Exception {
                         ImageProcessor imageProcessor = null;
                         if (key != null) {
-                            imageProcessor = loadImageProcessor(key.getUri(), key.getDownSampleLevels(), key.isMask(),key.isConvertTo16Bit());
+                            if (offHeapStore != null) {
+                                imageProcessor = offHeapStore.get(key);
+                            }
+                            if (imageProcessor == null) {
+                                imageProcessor = loadImageProcessor(key.getUri(), key.getDownSampleLevels(), key.isMask(),key.isConvertTo16Bit());
+                            }
                         }
                         return imageProcessor;
                     }
                 };
 
+        // move evicted pixels off-heap (explicitly invalidated or replaced pixels are simply dropped),
+        // pixels are copied by the store's background thread to keep the copy off of the request path
+        final RemovalListener<CacheKey, ImageProcessor> removalListener =
+                notification -> {
+                    final CacheKey key = notification.getKey();
+                    final ImageProcessor value = notification.getValue();
+                    if (notification.wasEvicted() && (key != null) && (value != null) &&
+                        (offHeapStore != null) && (! offHeapStore.contains(key))) {
+                        offHeapStore.putInBackground(key, value);
+                    }
+                };
+
 
         if (recordStats) {
             cache = CacheBuilder.newBuilder()
                     .maximumWeight(maximumNumberOfCachedPixels)
                     .weigher(weigher)
+                    .removalListener(removalListener)
                     .recordStats()
                     .build(loader);
         } else {
             cache = CacheBuilder.newBuilder()
                     .maximumWeight(maximumNumberOfCachedPixels)
                     .weigher(weigher)
+                    .removalListener(removalListener)
                     .build(loader);
         }
 
@@ -142,21 +267,86 @@ public class ImageProcessorCache {
                               final boolean convertTo16Bit)
             throws IllegalArgumentException {
 
-        final CacheKey key = new CacheKey(url, downSampleLevels, isMask,convertTo16Bit);
-        final ImageProcessor imageProcessor;
-        try {
-            imageProcessor = cache.get(key);
-        } catch (final Throwable t) {
-            throw new IllegalArgumentException("failed to retrieve " + key + " from cache", t);
+        final ImageProcessor imageProcessor = getCachedInstance(url, downSampleLevels, isMask, convertTo16Bit);
+        return duplicate(imageProcessor);
+    }
+
+    /**
+     * @param  url               url for the image.
+     *
+     * @param  downSampleLevels  number of levels to further down sample the image.
+     *                           Negative values are considered the same as zero.
+     *
+     * @param  isMask            indicates whether the image is a mask.
+     *
+     * @param  convertTo16Bit    indicates whether the loaded image processor should be converted to 16-bit.
+     *
+     * @return a view of the cached image processor for the specified url string that shares
+     *         the cached processor's pixel array.  If the source processor is not already cached,
+     *         it will be loaded into the cache.
+     *         The view's pixels must NOT be modified, but other view state (e.g. min and max intensity or
+     *         interpolation method) can be safely changed.
+     *         Processor types that modify pixels when their state changes (e.g. {@link ij.process.ColorProcessor})
+     *         are duplicated instead.
+     *
+     * @throws IllegalArgumentException
+     *   if the image cannot be loaded.
+     */
+    public ImageProcessor getReadOnlyView(final String url,
+                                          final int downSampleLevels,
+                                          final boolean isMask,
+                                          final boolean convertTo16Bit)
+            throws IllegalArgumentException {
+
+        final ImageProcessor imageProcessor = getCachedInstance(url, downSampleLevels, isMask, convertTo16Bit);
+
+        final ImageProcessor view;
+        if (supportsReadOnlyView(imageProcessor)) {
+            view = buildReadOnlyView(imageProcessor);
+            viewCount.incrementAndGet();
+        } else {
+            view = duplicate(imageProcessor);
+        }
+
+        return view;
+    }
+
+    /**
+     * Loads the specified processor into this cache (if it is not already cached) without copying it
+     * so that it is ready for a subsequent {@link #get} or {@link #getReadOnlyView} call.
+     * Nothing is loaded if this cache is disabled (has a zero maximum size).
+     *
+     * @param  url               url for the image.
+     *
+     * @param  downSampleLevels  number of levels to further down sample the image.
+     *                           Negative values are considered the same as zero.
+     *
+     * @param  isMask            indicates whether the image is a mask.
+     *
+     * @param  convertTo16Bit    indicates whether the loaded image processor should be converted to 16-bit.
+     *
+     * @throws IllegalArgumentException
+     *   if the image cannot be loaded.
+     */
+    public void prefetch(final String url,
+                         final int downSampleLevels,
+                         final boolean isMask,
+                         final boolean convertTo16Bit)
+            throws IllegalArgumentException {
+        if (maximumNumberOfCachedPixels > 0) {
+            getCachedInstance(url, downSampleLevels, isMask, convertTo16Bit);
         }
-        return imageProcessor.duplicate();
     }
 
     /**
      * @return the number of entries currently in this cache.
      */
     public long size() {
-        return cache.size();
+        long size = cache.size();
+        if (maskCache != null) {
+            size += maskCache.size();
+        }
+        return size;
     }
 
     /**
@@ -164,6 +354,12 @@ public class ImageProcessorCache {
      */
     public void invalidateAll() {
         cache.invalidateAll();
+        if (offHeapStore != null) {
+            offHeapStore.invalidateAll();
+        }
+        if (maskCache != null) {
+            maskCache.invalidateAll();
+        }
     }
 
     /**
@@ -174,15 +370,66 @@ public class ImageProcessorCache {
         return cache.stats();
     }
 
+    /**
+     * @return map of cumulative cache statistics along with counts of the processors
+     *         copied (and bytes copied) or shared through read-only views.
+     */
+    public Map<String, Object> getMetrics() {
+        final CacheStats stats = cache.stats();
+        final Map<String, Object> metrics = new LinkedHashMap<>();
+        metrics.put("numberOfEntries", size());
+        metrics.put("hitCount", stats.hitCount());
+        metrics.put("missCount", stats.missCount());
+        metrics.put("hitRate", stats.hitRate());
+        metrics.put("evictionCount", stats.evictionCount());
+        metrics.put("copyCount", copyCount.get());
+        metrics.put("copiedByteCount", copiedByteCount.get());
+        metrics.put("viewCount", viewCount.get());
+        if (offHeapStore != null) {
+            final CacheStats offHeapStats = offHeapStore.getStats();
+            metrics.put("offHeapNumberOfEntries", offHeapStore.size());
+            metrics.put("offHeapByteCount", offHeapStore.getStoredByteCount());
+            metrics.put("offHeapHitCount", offHeapStats.hitCount());
+            metrics.put("offHeapMissCount", offHeapStats.missCount());
+            metrics.put("offHeapEvictionCount", offHeapStats.evictionCount());
+            metrics.put("offHeapPooledByteCount", offHeapStore.getPooledByteCount());
+            metrics.put("offHeapDroppedPutCount", offHeapStore.getDroppedBackgroundPutCount());
+        }
+        if (maskCache != null) {
+            metrics.putAll(maskCache.getMetrics());
+        }
+        return metrics;
+    }
+
     @Override
     public String toString() {
         return "{numberOfEntries: " + size() +
                ", maximumNumberOfCachedPixels: " + maximumNumberOfCachedPixels +
                ", recordStats: " + recordStats +
                ", cacheOriginalsForDownSampledImages: " + cacheOriginalsForDownSampledImages +
+               ", maximumOffHeapBytes: " + maximumOffHeapBytes +
+               ", maximumNumberOfCachedMaskBytes: " + maximumNumberOfCachedMaskBytes +
                '}';
     }
 
+    /**
+     * @return true if {@link #getReadOnlyView} can share the pixels of the specified processor;
+     *         false if the processor will be duplicated instead.
+     */
+    public static boolean supportsReadOnlyView(final ImageProcessor imageProcessor) {
+        // ColorProcessor.setMinAndMax modifies pixels, so color processors can't be shared
+        return (imageProcessor instanceof ByteProcessor) ||
+               (imageProcessor instanceof ShortProcessor) ||
+               (imageProcessor instanceof FloatProcessor);
+    }
+
+    /**
+     * @return (approximate) number of bytes used by the specified processor's pixels.
+     */
+    public static int getByteCount(final ImageProcessor imageProcessor) {
+        return imageProcessor.getPixelCount() * imageProcessor.getBitDepth() / 8;
+    }
+
     /**
      * @param  url               url for the image.
      * @param  downSampleLevels  number of levels to further down sample the image.
@@ -202,6 +449,75 @@ public class ImageProcessorCache {
         return DISABLED_CACHE.loadImageProcessor(url, downSampleLevels, isMask, convertTo16Bit);
     }
 
+    private ImageProcessor getCachedInstance(final String url,
+                                             final int downSampleLevels,
+                                             final boolean isMask,
+                                             final boolean convertTo16Bit)
+            throws IllegalArgumentException {
+        final CacheKey key = new CacheKey(url, downSampleLevels, isMask,convertTo16Bit);
+        final ImageProcessor imageProcessor;
+        try {
+            if (isMask && (maskCache != null)) {
+                imageProcessor = maskCache.get(key);
+            } else {
+                imageProcessor = cache.get(key);
+            }
+        } catch (final Throwable t) {
+            throw new IllegalArgumentException("failed to retrieve " + key + " from cache", t);
+        }
+        return imageProcessor;
+    }
+
+    private ImageProcessor getIfPresent(final CacheKey key) {
+        final ImageProcessor imageProcessor;
+        if (key.isMask() && (maskCache != null)) {
+            imageProcessor = maskCache.getIfPresent(key);
+        } else {
+            imageProcessor = cache.getIfPresent(key);
+        }
+        return imageProcessor;
+    }
+
+    private void put(final CacheKey key,
+                     final ImageProcessor imageProcessor) {
+        if (key.isMask() && (maskCache != null)) {
+            maskCache.put(key, imageProcessor);
+        } else {
+            cache.put(key, imageProcessor);
+        }
+    }
+
+    private ImageProcessor duplicate(final ImageProcessor imageProcessor) {
+        copyCount.incrementAndGet();
+        copiedByteCount.addAndGet(getByteCount(imageProcessor));
+        return imageProcessor.duplicate();
+    }
+
+    /**
+     * @return a new processor instance that shares the specified processor's pixel array.
+     */
+    private static ImageProcessor buildReadOnlyView(final ImageProcessor imageProcessor) {
+
+        final int width = imageProcessor.getWidth();
+        final int height = imageProcessor.getHeight();
+
+        final ImageProcessor view;
+        if (imageProcessor instanceof ByteProcessor) {
+            view = new ByteProcessor(width, height, (byte[]) imageProcessor.getPixels(),
+                                     imageProcessor.getColorModel());
+        } else if (imageProcessor instanceof ShortProcessor) {
+            view = new ShortProcessor(width, height, (short[]) imageProcessor.getPixels(),
+                                      imageProcessor.getColorModel());
+        } else {
+            view = new FloatProcessor(width, height, (float[]) imageProcessor.getPixels(),
+                                      imageProcessor.getColorModel());
+        }
+
+        view.setMinAndMax(imageProcessor.getMin(), imageProcessor.getMax());
+
+        return view;
+    }
+
     /**
      * The core method used to load image processor instances that is called when cache misses occur.
      *
@@ -229,24 +545,32 @@ public class ImageProcessorCache {
 
         // if we need to down sample, see if source image is already cached before trying to load it
         if (downSampleLevels > 0) {
-            imageProcessor = cache.getIfPresent(new CacheKey(url, 0, isMask,convertTo16Bit));
+            imageProcessor = getIfPresent(new CacheKey(url, 0, isMask,convertTo16Bit));
         }
 
         // load the image as needed
         if (imageProcessor == null) {
 
-            // TODO: use Bio Formats to load strange formats
+            if (MipmapPyramidFile.isLevelUrl(url)) {
 
-            // openers keep state about the file being opened, so we need to create a new opener for each load
-            final Opener opener = new S3Opener();
-            opener.setSilentMode(true);
+                // pyramid levels are read directly from pyramid files (using positional channel reads)
+                imageProcessor = MipmapPyramidFile.readLevel(url);
 
-            final ImagePlus imagePlus = opener.openURL(url);
-            if (imagePlus == null) {
-                throw new IllegalArgumentException("failed to create imagePlus instance for '" + url + "'");
-            }
+            } else {
 
-            imageProcessor = imagePlus.getProcessor();
+                // TODO: use Bio Formats to load strange formats
+
+                // openers keep state about the file being opened, so we need to create a new opener for each load
+                final Opener opener = new S3Opener();
+                opener.setSilentMode(true);
+
+                final ImagePlus imagePlus = opener.openURL(url);
+                if (imagePlus == null) {
+                    throw new IllegalArgumentException("failed to create imagePlus instance for '" + url + "'");
+                }
+
+                imageProcessor = imagePlus.getProcessor();
+            }
 
             // Force images to 16-bit, to allow for testing of mixed 8-bit and 16-bit mipmap levels.
             if ((! isMask) && (imageProcessor.getBitDepth() == 8) && convertTo16Bit) {
@@ -261,7 +585,7 @@ public class ImageProcessorCache {
                     LOG.debug("loadImageProcessor: caching level 0 for {}", url);
                 }
 
-                cache.put(new CacheKey(url, 0, isMask,convertTo16Bit), imageProcessor);
+                put(new CacheKey(url, 0, isMask,convertTo16Bit), imageProcessor);
             }
 
         }
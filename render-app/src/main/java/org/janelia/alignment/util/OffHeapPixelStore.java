@@ -0,0 +1,370 @@
+package org.janelia.alignment.util;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import com.google.common.cache.RemovalListener;
+import com.google.common.cache.Weigher;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import ij.process.ByteProcessor;
+import ij.process.ColorProcessor;
+import ij.process.FloatProcessor;
+import ij.process.ImageProcessor;
+import ij.process.ShortProcessor;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Deque;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Off-heap (direct buffer) store of {@link ImageProcessor} pixels.
+ *
+ * The store is intended to be a second level behind an on-heap {@link ImageProcessorCache},
+ * allowing many more source images to be retained without increasing garbage collection costs.
+ * Only a small index (keys and buffer references) lives on the heap.
+ * Pixels are copied into the store when processors are evicted from the on-heap cache and are copied back
+ * into new processors when they are requested again (which is much cheaper than reloading and decoding
+ * the source image).
+ *
+ * The store is constrained by a max byte count parameter.
+ * Once the store is full, least recently used pixels are removed to make room.
+ * Direct buffers are only released by garbage collection, so buffers for removed pixels are kept
+ * in a small free pool (up to 10% of the max byte count) and reused for later pixels with the same size
+ * (typically all tiles in a stack have the same size).
+ * Since direct buffer memory is limited by the JVM -XX:MaxDirectMemorySize option,
+ * that option must be set to a value larger than the store's max byte count plus the free pool.
+ *
+ * Evicted processors can be handed to {@link #putInBackground} so that their pixels are copied
+ * by a background thread instead of the thread that caused the eviction.
+ *
+ * Only byte, short, float, and color processors with default lookup tables are stored.
+ *
+ * @param  <K>  type of key for stored pixels.
+ *
+ * @author Eric Trautman
+ */
+public class OffHeapPixelStore<K> {
+
+    /** Maximum number of processors waiting to be copied in the background. */
+    private static final int MAX_BACKGROUND_PUTS = 32;
+
+    private final long maximumBytes;
+    private final long maximumPooledBytes;
+    private final Cache<K, StoredPixels> cache;
+    private final ConcurrentHashMap<Integer, Deque<ByteBuffer>> capacityToFreeBuffers;
+    private final AtomicLong pooledByteCount;
+    private final AtomicLong droppedBackgroundPutCount;
+    private final ThreadPoolExecutor backgroundPutExecutor;
+
+    /**
+     * Constructs a store instance using the specified parameters.
+     *
+     * @param  maximumBytes  the maximum number of pixel bytes to store off-heap.
+     */
+    public OffHeapPixelStore(final long maximumBytes) {
+
+        this.maximumBytes = maximumBytes;
+        this.maximumPooledBytes = maximumBytes / 10;
+        this.capacityToFreeBuffers = new ConcurrentHashMap<>();
+        this.pooledByteCount = new AtomicLong(0);
+        this.droppedBackgroundPutCount = new AtomicLong(0);
+
+        final Weigher<K, StoredPixels> weigher = (key, value) -> value.buffer.capacity();
+
+        // removed pixels can no longer be read, so their buffers can be reused
+        final RemovalListener<K, StoredPixels> removalListener = notification -> {
+            final StoredPixels storedPixels = notification.getValue();
+            if (storedPixels != null) {
+                final ByteBuffer buffer = storedPixels.release();
+                if (buffer != null) {
+                    releaseBuffer(buffer);
+                }
+            }
+        };
+
+        // Guava divides the maximum weight evenly across cache segments,
+        // so use a single segment to allow large buffers to use the entire budget
+        this.cache = CacheBuilder.newBuilder()
+                .concurrencyLevel(1)
+                .maximumWeight(maximumBytes)
+                .weigher(weigher)
+                .removalListener(removalListener)
+                .recordStats()
+                .build();
+
+        // single idle timeout thread with a bounded queue, background puts are dropped if it falls behind
+        this.backgroundPutExecutor =
+                new ThreadPoolExecutor(1, 1,
+                                       60, TimeUnit.SECONDS,
+                                       new ArrayBlockingQueue<>(MAX_BACKGROUND_PUTS),
+                                       new ThreadFactoryBuilder().setNameFormat("off-heap-pixel-store-%d")
+                                               .setDaemon(true).build());
+        this.backgroundPutExecutor.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * @return true if pixels for the specified processor can be stored; otherwise false.
+     */
+    public static boolean isStorable(final ImageProcessor imageProcessor) {
+        final boolean storable;
+        if (imageProcessor instanceof ColorProcessor) {
+            storable = true;
+        } else if ((imageProcessor instanceof ByteProcessor) ||
+                   (imageProcessor instanceof ShortProcessor) ||
+                   (imageProcessor instanceof FloatProcessor)) {
+            // custom lookup tables are not retained, so don't store processors that have them
+            storable = imageProcessor.isDefaultLut() && (! imageProcessor.isInvertedLut());
+        } else {
+            storable = false;
+        }
+        return storable;
+    }
+
+    /**
+     * Copies the specified processor's pixels into the store
+     * (silently ignoring processors that are not {@link #isStorable storable}).
+     *
+     * @param  key             key for the pixels.
+     * @param  imageProcessor  processor to store.
+     */
+    public void put(final K key,
+                    final ImageProcessor imageProcessor) {
+
+        if (isStorable(imageProcessor)) {
+
+            final Object pixels = imageProcessor.getPixels();
+            final ByteBuffer buffer;
+
+            if (pixels instanceof byte[]) {
+                final byte[] array = (byte[]) pixels;
+                buffer = allocate(array.length);
+                buffer.put(array);
+            } else if (pixels instanceof short[]) {
+                final short[] array = (short[]) pixels;
+                buffer = allocate(array.length * 2);
+                buffer.asShortBuffer().put(array);
+            } else if (pixels instanceof float[]) {
+                final float[] array = (float[]) pixels;
+                buffer = allocate(array.length * 4);
+                buffer.asFloatBuffer().put(array);
+            } else {
+                final int[] array = (int[]) pixels;
+                buffer = allocate(array.length * 4);
+                buffer.asIntBuffer().put(array);
+            }
+
+            cache.put(key, new StoredPixels(imageProcessor, buffer));
+        }
+    }
+
+    /**
+     * Queues the specified processor's pixels to be copied into the store by a background thread.
+     * The copy is skipped if the pixels are already stored or if too many copies are already queued.
+     *
+     * @param  key             key for the pixels.
+     * @param  imageProcessor  processor to store (must not be modified after this call).
+     */
+    public void putInBackground(final K key,
+                                final ImageProcessor imageProcessor) {
+        if (isStorable(imageProcessor)) {
+            try {
+                backgroundPutExecutor.execute(() -> {
+                    if (! contains(key)) {
+                        put(key, imageProcessor);
+                    }
+                });
+            } catch (final RejectedExecutionException e) {
+                droppedBackgroundPutCount.incrementAndGet();
+            }
+        }
+    }
+
+    /**
+     * @return a new processor with a copy of the stored pixels for the specified key or
+     *         null if pixels for the key are not stored.
+     */
+    public ImageProcessor get(final K key) {
+
+        ImageProcessor imageProcessor = null;
+
+        final StoredPixels storedPixels = cache.getIfPresent(key);
+        if (storedPixels != null) {
+            imageProcessor = storedPixels.buildProcessor();
+        }
+
+        return imageProcessor;
+    }
+
+    /**
+     * @return true if pixels for the specified key are stored; otherwise false.
+     */
+    public boolean contains(final K key) {
+        return cache.asMap().containsKey(key);
+    }
+
+    /**
+     * @return the number of entries currently in this store.
+     */
+    public long size() {
+        return cache.size();
+    }
+
+    /**
+     * @return total number of pixel bytes currently in this store.
+     */
+    public long getStoredByteCount() {
+        long byteCount = 0;
+        for (final StoredPixels storedPixels : cache.asMap().values()) {
+            byteCount += storedPixels.buffer.capacity();
+        }
+        return byteCount;
+    }
+
+    /**
+     * @return total number of bytes in free (reusable) buffers.
+     */
+    public long getPooledByteCount() {
+        return pooledByteCount.get();
+    }
+
+    /**
+     * @return number of background puts that were dropped because too many copies were already queued.
+     */
+    public long getDroppedBackgroundPutCount() {
+        return droppedBackgroundPutCount.get();
+    }
+
+    /**
+     * Discards all entries in the store.
+     */
+    public void invalidateAll() {
+        cache.invalidateAll();
+    }
+
+    /**
+     * @return a current snapshot of this store's cumulative statistics.
+     */
+    public CacheStats getStats() {
+        return cache.stats();
+    }
+
+    @Override
+    public String toString() {
+        return "{numberOfEntries: " + size() + ", maximumBytes: " + maximumBytes + '}';
+    }
+
+    private ByteBuffer allocate(final int capacity) {
+        ByteBuffer buffer = null;
+        final Deque<ByteBuffer> freeBuffers = capacityToFreeBuffers.get(capacity);
+        if (freeBuffers != null) {
+            buffer = freeBuffers.pollFirst();
+        }
+        if (buffer == null) {
+            buffer = ByteBuffer.allocateDirect(capacity);
+        } else {
+            pooledByteCount.addAndGet(-capacity);
+            buffer.clear();
+        }
+        return buffer.order(ByteOrder.nativeOrder());
+    }
+
+    private void releaseBuffer(final ByteBuffer buffer) {
+        final int capacity = buffer.capacity();
+        if (pooledByteCount.addAndGet(capacity) <= maximumPooledBytes) {
+            capacityToFreeBuffers.computeIfAbsent(capacity, c -> new ConcurrentLinkedDeque<>()).addFirst(buffer);
+        } else {
+            // pool is full, so leave buffer for the garbage collector
+            pooledByteCount.addAndGet(-capacity);
+        }
+    }
+
+    /**
+     * Off-heap pixels along with the processor attributes needed to rebuild them.
+     */
+    private static class StoredPixels {
+
+        private final boolean isColor;
+        private final int width;
+        private final int height;
+        private final double min;
+        private final double max;
+        private final ByteBuffer buffer;
+        private boolean released;
+
+        StoredPixels(final ImageProcessor imageProcessor,
+                     final ByteBuffer buffer) {
+            this.isColor = imageProcessor instanceof ColorProcessor;
+            this.width = imageProcessor.getWidth();
+            this.height = imageProcessor.getHeight();
+            this.min = imageProcessor.getMin();
+            this.max = imageProcessor.getMax();
+            this.buffer = buffer;
+            this.released = false;
+        }
+
+        /**
+         * Marks these pixels as released once any in-progress copy has completed.
+         *
+         * @return the released buffer or null if it was already released.
+         */
+        synchronized ByteBuffer release() {
+            final ByteBuffer releasedBuffer = released ? null : buffer;
+            released = true;
+            return releasedBuffer;
+        }
+
+        /**
+         * @return a new processor with a copy of these pixels or null if the pixels have been released
+         *         (and their buffer may have been reused).
+         */
+        synchronized ImageProcessor buildProcessor() {
+
+            if (released) {
+                return null;
+            }
+
+            // duplicate buffer so that concurrent readers have independent positions
+            final ByteBuffer source = buffer.duplicate();
+            source.clear();
+            source.order(ByteOrder.nativeOrder());
+            final int pixelCount = width * height;
+
+            // bytes per pixel identifies the processor type (color processors are flagged since they are also 4)
+            final int bytesPerPixel = pixelCount == 0 ? 1 : buffer.capacity() / pixelCount;
+
+            final ImageProcessor imageProcessor;
+            if (isColor) {
+                final int[] pixels = new int[pixelCount];
+                source.asIntBuffer().get(pixels);
+                imageProcessor = new ColorProcessor(width, height, pixels);
+            } else if (bytesPerPixel == 1) {
+                final byte[] pixels = new byte[pixelCount];
+                source.get(pixels);
+                imageProcessor = new ByteProcessor(width, height, pixels, null);
+            } else if (bytesPerPixel == 2) {
+                final short[] pixels = new short[pixelCount];
+                source.asShortBuffer().get(pixels);
+                imageProcessor = new ShortProcessor(width, height, pixels, null);
+            } else {
+                final float[] pixels = new float[pixelCount];
+                source.asFloatBuffer().get(pixels);
+                imageProcessor = new FloatProcessor(width, height, pixels, null);
+            }
+
+            if (! isColor) {
+                imageProcessor.setMinAndMax(min, max);
+            }
+
+            return imageProcessor;
+        }
+    }
+
+}
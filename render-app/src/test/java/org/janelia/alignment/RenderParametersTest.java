@@ -155,5 +155,34 @@ public class RenderParametersTest {
         }
     }
 
+    @Test
+    public void testCopyForRegion() {
+
+        final RenderParameters parameters = new RenderParameters(null, 0, 1000, 8000, 500, 0.5);
+        parameters.setBinaryMask(true);
+        parameters.setChannels("DAPI");
+        parameters.setMinIntensity(10.0);
+        for (int i = 0; i < 3; i++) {
+            final TileSpec tileSpec = new TileSpec();
+            tileSpec.setTileId("tile-" + i);
+            parameters.addTileSpec(tileSpec);
+        }
+
+        final List<TileSpec> regionTileSpecs = parameters.getTileSpecs().subList(1, 2);
+        final RenderParameters copy = parameters.copyForRegion(2000, 1000, 500, 500, regionTileSpecs);
+
+        Assert.assertEquals("invalid x", 2000, copy.getX(), 0.001);
+        Assert.assertEquals("invalid y", 1000, copy.getY(), 0.001);
+        Assert.assertEquals("invalid width", 500, copy.getWidth());
+        Assert.assertEquals("invalid height", 500, copy.getHeight());
+        Assert.assertEquals("scale not copied", 0.5, copy.getScale(), 0.001);
+        Assert.assertTrue("binaryMask not copied", copy.binaryMask);
+        Assert.assertEquals("channels not copied", parameters.getChannelNames(), copy.getChannelNames());
+        Assert.assertEquals("minIntensity not copied", 10.0, copy.getMinIntensity(), 0.001);
+        Assert.assertEquals("invalid number of tile specs", 1, copy.numberOfTileSpecs());
+        Assert.assertSame("tile spec should be shared", regionTileSpecs.get(0), copy.getTileSpecs().get(0));
+        Assert.assertEquals("source tile specs should not change", 3, parameters.numberOfTileSpecs());
+    }
+
 
 }
@@ -0,0 +1,169 @@
+package org.janelia.alignment;
+
+import ij.process.ByteProcessor;
+import ij.process.FloatProcessor;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import mpicbg.models.AffineModel2D;
+import mpicbg.trakem2.transform.TransformMeshMappingWithMasks.ImageProcessorWithMasks;
+import mpicbg.trakem2.util.Pair;
+
+import org.janelia.alignment.mapper.PixelMapper;
+import org.janelia.alignment.mapper.SingleChannelMapper;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Tests the {@link ScanlineTriangleRasterizer} class.
+ *
+ * @author Eric Trautman
+ */
+public class ScanlineTriangleRasterizerTest {
+
+    private static final int TARGET_WIDTH = 500;
+    private static final int TARGET_HEIGHT = 400;
+
+    @Test
+    public void testMappedPixelsMatchBoundingBoxPixels() throws Exception {
+
+        final AffineModel2D[] models = {
+                buildModel(1.0, 0.0, 0.0, 1.0, 0.0, 0.0),
+                buildModel(0.98, 0.17, -0.17, 0.98, 40.0, 20.0),
+                buildModel(0.31, -0.05, 0.07, 0.29, 3.7, 11.2),
+                buildModel(1.7, 0.4, -0.2, 1.3, -120.5, -60.25)
+        };
+
+        for (final AffineModel2D model : models) {
+
+            final RenderTransformMesh mesh = new RenderTransformMesh(model, 16, 400, 300);
+            mesh.updateAffines();
+
+            final int[] boundingBoxCounts = new int[TARGET_WIDTH * TARGET_HEIGHT];
+            for (final Pair<AffineModel2D, double[][]> triangle : mesh.getAV()) {
+                RenderTransformMeshMappingWithMasks.mapTriangleWithBoundingBox(triangle,
+                                                                               new CountingMapper(boundingBoxCounts));
+            }
+
+            final int[] scanlineCounts = new int[TARGET_WIDTH * TARGET_HEIGHT];
+            final ScanlineTriangleRasterizer rasterizer =
+                    new ScanlineTriangleRasterizer(new CountingMapper(scanlineCounts));
+            for (final Pair<AffineModel2D, double[][]> triangle : mesh.getAV()) {
+                rasterizer.mapTriangle(triangle);
+            }
+
+            Assert.assertTrue("scanline pixels differ from bounding box pixels for " + model,
+                              Arrays.equals(boundingBoxCounts, scanlineCounts));
+        }
+    }
+
+    @Test
+    public void testMappedValuesMatchBoundingBoxValues() throws Exception {
+
+        final int width = 400;
+        final int height = 300;
+
+        final ByteProcessor sourceProcessor = new ByteProcessor(width, height);
+        final byte[] sourcePixels = (byte[]) sourceProcessor.getPixels();
+        new Random(23).nextBytes(sourcePixels);
+
+        final RenderTransformMesh mesh = new RenderTransformMesh(buildModel(0.98, 0.17, -0.17, 0.98, 40.0, 20.0),
+                                                                 16,
+                                                                 width,
+                                                                 height);
+        mesh.updateAffines();
+
+        for (final boolean isMappingInterpolated : new boolean[] { true, false }) {
+
+            final ImageProcessorWithMasks source =
+                    new ImageProcessorWithMasks(sourceProcessor.convertToFloat(), null, null);
+
+            final ImageProcessorWithMasks boundingBoxTarget =
+                    new ImageProcessorWithMasks(new FloatProcessor(TARGET_WIDTH, TARGET_HEIGHT), null, null);
+            final SingleChannelMapper boundingBoxMapper =
+                    new SingleChannelMapper(source, boundingBoxTarget, isMappingInterpolated);
+            for (final Pair<AffineModel2D, double[][]> triangle : mesh.getAV()) {
+                RenderTransformMeshMappingWithMasks.mapTriangleWithBoundingBox(triangle, boundingBoxMapper);
+            }
+
+            final ImageProcessorWithMasks scanlineTarget =
+                    new ImageProcessorWithMasks(new FloatProcessor(TARGET_WIDTH, TARGET_HEIGHT), null, null);
+            final RenderTransformMeshMappingWithMasks mapping = new RenderTransformMeshMappingWithMasks(mesh);
+            mapping.map(new SingleChannelMapper(source, scanlineTarget, isMappingInterpolated), 1);
+
+            final float[] expectedPixels = (float[]) boundingBoxTarget.ip.getPixels();
+            final float[] actualPixels = (float[]) scanlineTarget.ip.getPixels();
+
+            // incrementally derived source coordinates can differ by tiny rounding errors,
+            // so allow for a (very) small number of nearest neighbor differences
+            int differenceCount = 0;
+            for (int i = 0; i < expectedPixels.length; i++) {
+                if (isMappingInterpolated) {
+                    Assert.assertEquals("interpolated pixel " + i + " differs from bounding box result",
+                                        expectedPixels[i], actualPixels[i], 0.001);
+                } else if (expectedPixels[i] != actualPixels[i]) {
+                    differenceCount++;
+                }
+            }
+
+            Assert.assertTrue("too many (" + differenceCount + ") nearest neighbor pixels differ",
+                              differenceCount < 10);
+        }
+    }
+
+    private static AffineModel2D buildModel(final double m00,
+                                            final double m10,
+                                            final double m01,
+                                            final double m11,
+                                            final double m02,
+                                            final double m12) {
+        final AffineModel2D model = new AffineModel2D();
+        model.set(m00, m10, m01, m11, m02, m12);
+        return model;
+    }
+
+    /**
+     * Counts the number of times each target pixel is mapped.
+     */
+    private static class CountingMapper implements PixelMapper {
+
+        private final int[] counts;
+
+        CountingMapper(final int[] counts) {
+            this.counts = counts;
+        }
+
+        @Override
+        public int getTargetWidth() {
+            return TARGET_WIDTH;
+        }
+
+        @Override
+        public int getTargetHeight() {
+            return TARGET_HEIGHT;
+        }
+
+        @Override
+        public boolean isMappingInterpolated() {
+            return false;
+        }
+
+        @Override
+        public void map(final double sourceX,
+                        final double sourceY,
+                        final int targetX,
+                        final int targetY) {
+            counts[targetY * TARGET_WIDTH + targetX]++;
+        }
+
+        @Override
+        public void mapInterpolated(final double sourceX,
+                                    final double sourceY,
+                                    final int targetX,
+                                    final int targetY) {
+            map(sourceX, sourceY, targetX, targetY);
+        }
+    }
+
+}
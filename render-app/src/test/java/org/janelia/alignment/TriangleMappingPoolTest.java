@@ -0,0 +1,82 @@
+package org.janelia.alignment;
+
+import ij.process.ByteProcessor;
+import ij.process.FloatProcessor;
+
+import java.util.Random;
+
+import mpicbg.models.AffineModel2D;
+import mpicbg.trakem2.transform.TransformMeshMappingWithMasks.ImageProcessorWithMasks;
+
+import org.janelia.alignment.mapper.SingleChannelMapper;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Tests the {@link TriangleMappingPool} class.
+ *
+ * @author Eric Trautman
+ */
+public class TriangleMappingPoolTest {
+
+    @Test
+    public void testMap() throws Exception {
+
+        final int width = 400;
+        final int height = 300;
+
+        final ByteProcessor sourceProcessor = new ByteProcessor(width, height);
+        final byte[] sourcePixels = (byte[]) sourceProcessor.getPixels();
+        new Random(17).nextBytes(sourcePixels);
+
+        final AffineModel2D rotateAndShift = new AffineModel2D();
+        rotateAndShift.set(0.98, 0.17, -0.17, 0.98, 40.0, 20.0);
+
+        final RenderTransformMesh mesh = new RenderTransformMesh(rotateAndShift, 16, width, height);
+        mesh.updateAffines();
+
+        final float[] singleThreadPixels = map(sourceProcessor, mesh, 1, null);
+
+        final TriangleMappingPool pool = new TriangleMappingPool(3, 4);
+        final float[] pooledPixels = map(sourceProcessor, mesh, 3, pool);
+
+        assertPixelsMatch("pooled", singleThreadPixels, pooledPixels);
+
+        final float[] sharedPoolPixels = map(sourceProcessor, mesh, 8, TriangleMappingPool.getSharedInstance());
+
+        assertPixelsMatch("shared pool", singleThreadPixels, sharedPoolPixels);
+    }
+
+    private void assertPixelsMatch(final String context,
+                                   final float[] expectedPixels,
+                                   final float[] actualPixels) {
+
+        Assert.assertEquals(context + " pixel count differs", expectedPixels.length, actualPixels.length);
+
+        // edge pixels shared by adjacent triangles may be mapped in a different order,
+        // so allow for tiny numeric differences between the (otherwise identical) triangle affines
+        for (int i = 0; i < expectedPixels.length; i++) {
+            Assert.assertEquals(context + " pixel " + i + " differs from single thread result",
+                                expectedPixels[i], actualPixels[i], 0.001);
+        }
+    }
+
+    private float[] map(final ByteProcessor sourceProcessor,
+                        final RenderTransformMesh mesh,
+                        final int numberOfThreads,
+                        final TriangleMappingPool pool) {
+
+        final ImageProcessorWithMasks source = new ImageProcessorWithMasks(sourceProcessor.convertToFloat(),
+                                                                           null,
+                                                                           null);
+        final ImageProcessorWithMasks target = new ImageProcessorWithMasks(new FloatProcessor(500, 400),
+                                                                           null,
+                                                                           null);
+
+        final RenderTransformMeshMappingWithMasks mapping = new RenderTransformMeshMappingWithMasks(mesh);
+        mapping.map(new SingleChannelMapper(source, target, true), numberOfThreads, pool);
+
+        return (float[]) target.ip.getPixels();
+    }
+
+}
@@ -0,0 +1,115 @@
+package org.janelia.alignment.match;
+
+import java.awt.image.BufferedImage;
+import java.util.List;
+
+import mpicbg.imagefeatures.Feature;
+import mpicbg.imagefeatures.FloatArray2DSIFT;
+
+import org.janelia.alignment.Utils;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Compares features extracted concurrently by {@link CanvasFeatureExtractor} with
+ * features extracted from the same canvas using a single thread.
+ *
+ * @author Eric Trautman
+ */
+public class CanvasFeatureExtractorTest {
+
+    private static BufferedImage image;
+
+    @BeforeClass
+    public static void loadImage() throws Exception {
+        image = Utils.openImage("src/test/resources/match-test/col0066_row0102_cam3.png");
+    }
+
+    @Test
+    public void testConcurrentExtraction() throws Exception {
+        // full scale crop of the image
+        compareExtractors(image.getSubimage(0, 0, 1200, 1000), 0.25, 1.1);
+    }
+
+    @Test
+    public void testConcurrentExtractionOfScaledCanvas() throws Exception {
+        // canvas gets scaled down before extraction
+        compareExtractors(image, 0.1, 0.4);
+    }
+
+    private void compareExtractors(final BufferedImage canvas,
+                                   final double minScale,
+                                   final double maxScale) {
+
+        final FloatArray2DSIFT.Param coreSiftParameters = new FloatArray2DSIFT.Param();
+        coreSiftParameters.fdSize = 4;
+        coreSiftParameters.steps = 3;
+
+        final List<Feature> expectedFeatures =
+                new CanvasFeatureExtractor(coreSiftParameters, minScale, maxScale, false, 1)
+                        .extractFeaturesFromImage(canvas);
+        final List<Feature> features =
+                new CanvasFeatureExtractor(coreSiftParameters, minScale, maxScale, false, 4)
+                        .extractFeaturesFromImage(canvas);
+
+        Assert.assertTrue("too few features for a meaningful comparison", expectedFeatures.size() > 100);
+
+        int foundCount = 0;
+        for (final Feature expected : expectedFeatures) {
+            for (final Feature feature : features) {
+                if (isEquivalent(expected, feature)) {
+                    foundCount++;
+                    break;
+                }
+            }
+        }
+
+        final double recall = foundCount / (double) expectedFeatures.size();
+        final double sizeRatio = features.size() / (double) expectedFeatures.size();
+
+        LOG.info("compareExtractors: found {} of {} single threaded features in {} concurrently extracted features",
+                 foundCount, expectedFeatures.size(), features.size());
+
+        Assert.assertTrue("recall of " + recall + " is too low", recall > 0.85);
+        Assert.assertTrue("size ratio of " + sizeRatio + " is out of range", (sizeRatio > 0.85) && (sizeRatio < 1.15));
+    }
+
+    /**
+     * @return true if the features have similar locations, scales, and orientations and
+     *         similar enough descriptors to be matched with each other.
+     */
+    private static boolean isEquivalent(final Feature expected,
+                                        final Feature actual) {
+        final double maxLocationDelta = Math.max(1.0, expected.scale / 2);
+        return (Math.abs(expected.location[0] - actual.location[0]) < maxLocationDelta) &&
+               (Math.abs(expected.location[1] - actual.location[1]) < maxLocationDelta) &&
+               (Math.abs(expected.scale - actual.scale) < (expected.scale * 0.2)) &&
+               (getOrientationDelta(expected, actual) < MAX_ORIENTATION_DELTA) &&
+               (expected.descriptorDistance(actual) < (getDescriptorLength(expected) * MAX_DESCRIPTOR_DISTANCE_RATIO));
+    }
+
+    private static double getOrientationDelta(final Feature expected,
+                                              final Feature actual) {
+        final double delta = Math.abs(expected.orientation - actual.orientation) % (2 * Math.PI);
+        return Math.min(delta, (2 * Math.PI) - delta);
+    }
+
+    private static double getDescriptorLength(final Feature feature) {
+        double sumOfSquares = 0;
+        for (final float value : feature.descriptor) {
+            sumOfSquares += value * value;
+        }
+        return Math.sqrt(sumOfSquares);
+    }
+
+    /** Maximum orientation difference (in radians) for equivalent features. */
+    private static final double MAX_ORIENTATION_DELTA = 0.2;
+
+    /** Maximum descriptor distance (as a fraction of the expected descriptor's length) for equivalent features. */
+    private static final double MAX_DESCRIPTOR_DISTANCE_RATIO = 0.25;
+
+    private static final Logger LOG = LoggerFactory.getLogger(CanvasFeatureExtractorTest.class);
+}
@@ -17,6 +17,7 @@
 package org.janelia.alignment.match;
 
 import java.io.File;
+import java.nio.file.Path;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.Date;
@@ -84,5 +85,110 @@ public class CanvasFeatureListTest {
                             featureList.size(), storedCanvasFeatureList.getFeatureList().size());
     }
 
+    @Test
+    public void testBinaryWriteRead() throws Exception {
+
+        final List<Feature> featureList = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            final float[] descriptor = new float[64];
+            for (int j = 0; j < descriptor.length; j++) {
+                descriptor[j] = (i + j) / 128.0f;
+            }
+            featureList.add(new Feature(1.5 + i, -0.25 * i, new double[] {10.5 + i, 2000.25 - i}, descriptor));
+        }
+
+        final CanvasId canvasId = new CanvasId("testGroup", "testId", MontageRelativePosition.LEFT);
+        canvasId.setClipOffsets(2000, 2000, 300, null);
+
+        final CanvasFeatureList canvasFeatureList = new CanvasFeatureList(canvasId,
+                                                                          "http://foo.com/render-parameters",
+                                                                          0.4,
+                                                                          300,
+                                                                          null,
+                                                                          featureList);
+
+        for (final CanvasFeatureStorageFormat format : new CanvasFeatureStorageFormat[] {
+                CanvasFeatureStorageFormat.BINARY, CanvasFeatureStorageFormat.DEFLATED_BINARY }) {
+
+            CanvasFeatureList.writeToStorage(rootFeatureListDirectory, canvasFeatureList, format);
+
+            final Path path = CanvasFeatureList.getStoragePath(rootFeatureListDirectory, canvasId, format);
+            Assert.assertTrue(format + " file should be detected as binary",
+                              CanvasFeatureListBinaryFormat.isBinaryFile(path));
+
+            final CanvasFeatureList stored = CanvasFeatureList.readFromStorage(rootFeatureListDirectory, canvasId);
+
+            Assert.assertEquals("invalid stored canvasId for " + format, canvasId, stored.getCanvasId());
+            Assert.assertArrayEquals("invalid stored clip offsets for " + format,
+                                     canvasId.getClipOffsets(), stored.getCanvasId().getClipOffsets(), 0.0);
+            Assert.assertEquals("invalid stored render parameters URL for " + format,
+                                canvasFeatureList.getRenderParametersUrl(), stored.getRenderParametersUrl());
+            Assert.assertEquals("invalid stored render scale for " + format,
+                                canvasFeatureList.getRenderScale(), stored.getRenderScale(), 0.0);
+            Assert.assertEquals("invalid stored clip width for " + format,
+                                canvasFeatureList.getClipWidth(), stored.getClipWidth());
+            Assert.assertNull("invalid stored clip height for " + format, stored.getClipHeight());
+            Assert.assertEquals("invalid number of stored features for " + format,
+                                featureList.size(), stored.size());
+
+            for (int i = 0; i < featureList.size(); i++) {
+                final Feature expected = featureList.get(i);
+                final Feature actual = stored.getFeatureList().get(i);
+                Assert.assertArrayEquals("invalid location for feature " + i + " in " + format,
+                                         expected.location, actual.location, 0.001);
+                Assert.assertEquals("invalid scale for feature " + i + " in " + format,
+                                    expected.scale, actual.scale, 0.001);
+                Assert.assertEquals("invalid orientation for feature " + i + " in " + format,
+                                    expected.orientation, actual.orientation, 0.001);
+                Assert.assertArrayEquals("invalid descriptor for feature " + i + " in " + format,
+                                         expected.descriptor, actual.descriptor, 0.0f);
+            }
+        }
+    }
+
+    @Test
+    public void testFormatDetection() throws Exception {
+
+        final List<Feature> featureList = new ArrayList<>();
+        featureList.add(new Feature(0.1, 0.2, new double[] {0.3, 0.4}, new float[] {0.5f, 0.6f}));
+
+        final CanvasId canvasId = new CanvasId("testGroup", "testId");
+        final CanvasFeatureList canvasFeatureList = new CanvasFeatureList(canvasId, null, null, null, null,
+                                                                          featureList);
+
+        CanvasFeatureList.writeToStorage(rootFeatureListDirectory, canvasFeatureList);
+
+        final Path jsonPath = CanvasFeatureList.getStoragePath(rootFeatureListDirectory, canvasId);
+        Assert.assertEquals("JSON path should be found when binary file does not exist",
+                            jsonPath, CanvasFeatureList.findStoragePath(rootFeatureListDirectory, canvasId));
+        Assert.assertFalse("JSON file should not be detected as binary",
+                           CanvasFeatureListBinaryFormat.isBinaryFile(jsonPath));
+
+        // binary content with a non-standard name should still be detected
+        final Path renamedBinaryPath = jsonPath.resolveSibling("renamed.features.json.gz");
+        CanvasFeatureListBinaryFormat.write(renamedBinaryPath,
+                                            canvasFeatureList,
+                                            CanvasFeatureListBinaryFormat.Compression.NONE);
+        final CanvasFeatureList renamed = CanvasFeatureList.readFromFile(renamedBinaryPath);
+        Assert.assertEquals("invalid canvasId read from renamed binary file", canvasId, renamed.getCanvasId());
+        Assert.assertNull("render parameters URL should be null", renamed.getRenderParametersUrl());
+        Assert.assertEquals("invalid number of features read from renamed binary file", 1, renamed.size());
+
+        CanvasFeatureList.writeToStorage(rootFeatureListDirectory,
+                                         canvasFeatureList,
+                                         CanvasFeatureStorageFormat.BINARY);
+        Assert.assertEquals("binary path should be preferred when it exists",
+                            CanvasFeatureList.getStoragePath(rootFeatureListDirectory,
+                                                             canvasId,
+                                                             CanvasFeatureStorageFormat.BINARY),
+                            CanvasFeatureList.findStoragePath(rootFeatureListDirectory, canvasId));
+        Assert.assertFalse("stale JSON file should be removed when binary file is written",
+                           jsonPath.toFile().exists());
+
+        CanvasFeatureList.writeToStorage(rootFeatureListDirectory, canvasFeatureList);
+        Assert.assertEquals("JSON path should be found after JSON file is rewritten",
+                            jsonPath, CanvasFeatureList.findStoragePath(rootFeatureListDirectory, canvasId));
+    }
+
     private static final Logger LOG = LoggerFactory.getLogger(CanvasFeatureListTest.class);
 }
@@ -42,11 +42,28 @@ public class CanvasFeatureMatcherTest {
         final List<PointMatch> candidates =
                 CanvasFeatureMatchResult.convertMatchesToPointMatchList(canvasMatches.getMatches());
 
-        testRANSACFilterWithMinValue(candidates, 6, 6);
-        testRANSACFilterWithMinValue(candidates, 10, 0);
+        testRANSACFilterWithMinValue(candidates, 6, 6, null);
+        testRANSACFilterWithMinValue(candidates, 10, 0, null);
 
         // TODO: uncomment this test to see bug
-//        testRANSACFilterWithMinValue(candidates, 8, 0);
+//        testRANSACFilterWithMinValue(candidates, 8, 0, null);
+    }
+
+    @Test
+    public void testParallelRANSACFilter() throws Exception {
+
+        final CanvasMatches canvasMatches = CanvasMatches.fromJson(SCALED_MATCH_JSON);
+
+        final List<PointMatch> candidates =
+                CanvasFeatureMatchResult.convertMatchesToPointMatchList(canvasMatches.getMatches());
+
+        final ParallelRansac parallelRansac = new ParallelRansac(4, 0.99);
+
+        testRANSACFilterWithMinValue(candidates, 6, 6, parallelRansac);
+        testRANSACFilterWithMinValue(candidates, 10, 0, parallelRansac);
+
+        Assert.assertEquals("candidates should not be modified by filter",
+                            canvasMatches.size(), candidates.size());
     }
 
     @Test
@@ -61,6 +78,23 @@ public class CanvasFeatureMatcherTest {
                               1);
     }
 
+    @Test
+    public void testParallelFilterConsensusMatches() throws Exception {
+
+        final ParallelRansac parallelRansac = new ParallelRansac(4, 0.99);
+
+        validateConsensusSets("parallel fold test",
+                              getFoldTestMatches(),
+                              getTestMatcher(5f, 6, parallelRansac),
+                              4);
+
+        final CanvasMatches noFoldMatches = CanvasMatches.fromJson(CanvasFeatureMatcherTest.NO_FOLD_MATCH_JSON);
+        validateConsensusSets("parallel no fold test",
+                              noFoldMatches,
+                              getTestMatcher(5f, 40, parallelRansac),
+                              1);
+    }
+
     // This test is ignored because it tries to pull data from a remote render web service.
     // You can comment out the Ignore annotation and update parameters to run the test manually.
     @Ignore
@@ -138,7 +172,8 @@ public class CanvasFeatureMatcherTest {
 
     private void testRANSACFilterWithMinValue(final List<PointMatch> candidates,
                                               final int minNumInliers,
-                                              final int expectedInliersSizeAfterFilter)
+                                              final int expectedInliersSizeAfterFilter,
+                                              final ParallelRansac parallelRansac)
             throws NotEnoughDataPointsException {
 
         final List<PointMatch> inliers = new ArrayList<>();
@@ -150,13 +185,24 @@ public class CanvasFeatureMatcherTest {
 
         final AffineModel2D model = new AffineModel2D();
 
-        model.filterRansac(candidates,
-                           inliers,
-                           iterations,
-                           maxEpsilon,
-                           minInlierRatio,
-                           minNumInliers,
-                           maxTrust);
+        if (parallelRansac == null) {
+            model.filterRansac(candidates,
+                               inliers,
+                               iterations,
+                               maxEpsilon,
+                               minInlierRatio,
+                               minNumInliers,
+                               maxTrust);
+        } else {
+            parallelRansac.filterRansac(model,
+                                        candidates,
+                                        inliers,
+                                        iterations,
+                                        maxEpsilon,
+                                        minInlierRatio,
+                                        minNumInliers,
+                                        maxTrust);
+        }
 
         Assert.assertEquals("invalid number of inliers found with min " + minNumInliers,
                             expectedInliersSizeAfterFilter, inliers.size());
@@ -201,6 +247,12 @@ public class CanvasFeatureMatcherTest {
 
     private static CanvasFeatureMatcher getTestMatcher(final float maxEpsilon,
                                                        final int minNumInliers) {
+        return getTestMatcher(maxEpsilon, minNumInliers, null);
+    }
+
+    private static CanvasFeatureMatcher getTestMatcher(final float maxEpsilon,
+                                                       final int minNumInliers,
+                                                       final ParallelRansac parallelRansac) {
         return new CanvasFeatureMatcher(0.92f,
                                         ModelType.RIGID,
                                         1000,
@@ -209,7 +261,9 @@ public class CanvasFeatureMatcherTest {
                                         minNumInliers,
                                         3.0,
                                         null,
-                                        CanvasFeatureMatcher.FilterType.SINGLE_SET);
+                                        CanvasFeatureMatcher.FilterType.SINGLE_SET,
+                                        new MpicbgDescriptorMatcher(),
+                                        parallelRansac);
     }
 
     private static List<List<PointMatch>> validateConsensusSets(final String context,
@@ -0,0 +1,140 @@
+package org.janelia.alignment.match;
+
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import mpicbg.imagefeatures.Feature;
+import mpicbg.imagefeatures.FloatArray2DSIFT;
+import mpicbg.models.PointMatch;
+
+import org.janelia.alignment.Utils;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Compares the results and performance of {@link DescriptorMatcher} implementations with
+ * mpicbg FeatureTransform#matchFeatures for features extracted from two overlapping
+ * regions of a {@link FeatureExtractionTest} image.
+ *
+ * @author Eric Trautman
+ */
+public class DescriptorMatcherTest {
+
+    private static final double ROD = 0.92f;
+
+    private static List<Feature> canvas1Features;
+    private static List<Feature> canvas2Features;
+    private static List<PointMatch> expectedMatches;
+    private static long expectedMatchMilliseconds;
+
+    @BeforeClass
+    public static void extractFeatures() throws Exception {
+
+        final BufferedImage image = Utils.openImage("src/test/resources/match-test/col0066_row0102_cam3.png");
+
+        final int canvasWidth = image.getWidth() * 3 / 4;
+        final int canvasHeight = image.getHeight() * 3 / 4;
+        final int xOffset = image.getWidth() - canvasWidth;
+        final int yOffset = image.getHeight() - canvasHeight;
+
+        final FloatArray2DSIFT.Param coreSiftParameters = new FloatArray2DSIFT.Param();
+        coreSiftParameters.fdSize = 8;
+        coreSiftParameters.steps = 3;
+
+        final CanvasFeatureExtractor extractor = new CanvasFeatureExtractor(coreSiftParameters, 0.25, 0.25, false);
+
+        canvas1Features = extractor.extractFeaturesFromImage(image.getSubimage(0, 0, canvasWidth, canvasHeight));
+        canvas2Features = extractor.extractFeaturesFromImage(image.getSubimage(xOffset, yOffset,
+                                                                               canvasWidth, canvasHeight));
+
+        final long start = System.currentTimeMillis();
+        expectedMatches = new MpicbgDescriptorMatcher().matchFeatures(canvas1Features, canvas2Features, ROD);
+        expectedMatchMilliseconds = System.currentTimeMillis() - start;
+
+        LOG.info("extractFeatures: {} and {} features produced {} mpicbg matches in {}ms",
+                 canvas1Features.size(), canvas2Features.size(), expectedMatches.size(), expectedMatchMilliseconds);
+
+        Assert.assertTrue("too few matches for a meaningful comparison", expectedMatches.size() > 20);
+    }
+
+    @Test
+    public void testBruteForceMatcher() throws Exception {
+
+        for (final int numberOfThreads : new int[] {1, 4}) {
+
+            final DescriptorMatcher matcher = new BruteForceDescriptorMatcher(numberOfThreads);
+            final List<PointMatch> matches = timeMatch(matcher);
+
+            Assert.assertEquals("invalid number of matches for " + matcher, expectedMatches.size(), matches.size());
+            for (int i = 0; i < matches.size(); i++) {
+                Assert.assertEquals("invalid match " + i + " for " + matcher,
+                                    getKey(expectedMatches.get(i)), getKey(matches.get(i)));
+            }
+        }
+    }
+
+    @Test
+    public void testKdForestMatcher() throws Exception {
+
+        final Set<String> expectedKeys = new HashSet<>();
+        expectedMatches.forEach(match -> expectedKeys.add(getKey(match)));
+
+        for (final int numberOfThreads : new int[] {1, 4}) {
+
+            final DescriptorMatcher matcher =
+                    new KdForestDescriptorMatcher(KdForestDescriptorMatcher.DEFAULT_NUMBER_OF_TREES,
+                                                  KdForestDescriptorMatcher.DEFAULT_MAX_CHECKS,
+                                                  42L,
+                                                  numberOfThreads);
+            final List<PointMatch> matches = timeMatch(matcher);
+
+            int foundCount = 0;
+            for (final PointMatch match : matches) {
+                if (expectedKeys.contains(getKey(match))) {
+                    foundCount++;
+                }
+            }
+
+            final double recall = foundCount / (double) expectedMatches.size();
+            final double precision = matches.size() == 0 ? 0 : foundCount / (double) matches.size();
+
+            LOG.info("testKdForestMatcher: {} recall is {}, precision is {}", matcher, recall, precision);
+
+            // approximate matches can include extra candidates (when the true second nearest neighbor is missed),
+            // so only recall is verified - RANSAC filtering handles any extra candidates
+            Assert.assertTrue("recall of " + recall + " is too low for " + matcher, recall > 0.75);
+        }
+    }
+
+    @Test
+    public void testNotEnoughFeatures() throws Exception {
+        final DescriptorMatcher matcher = new BruteForceDescriptorMatcher(1);
+        Assert.assertEquals("single target should not produce matches",
+                            0, matcher.matchFeatures(canvas1Features, canvas2Features.subList(0, 1), ROD).size());
+        Assert.assertEquals("empty features should not produce matches",
+                            0, matcher.matchFeatures(new ArrayList<>(), canvas2Features, ROD).size());
+    }
+
+    private static List<PointMatch> timeMatch(final DescriptorMatcher matcher) {
+        final long start = System.currentTimeMillis();
+        final List<PointMatch> matches = matcher.matchFeatures(canvas1Features, canvas2Features, ROD);
+        final long elapsed = System.currentTimeMillis() - start;
+        LOG.info("timeMatch: {} found {} matches in {}ms (mpicbg took {}ms)",
+                 matcher, matches.size(), elapsed, expectedMatchMilliseconds);
+        return matches;
+    }
+
+    private static String getKey(final PointMatch match) {
+        final double[] p1 = match.getP1().getL();
+        final double[] p2 = match.getP2().getL();
+        return p1[0] + "," + p1[1] + ":" + p2[0] + "," + p2[1];
+    }
+
+    private static final Logger LOG = LoggerFactory.getLogger(DescriptorMatcherTest.class);
+}
@@ -0,0 +1,150 @@
+package org.janelia.alignment.mipmap;
+
+import ij.process.ByteProcessor;
+import ij.process.FloatProcessor;
+import ij.process.ImageProcessor;
+import ij.process.ShortProcessor;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.Arrays;
+
+import org.janelia.alignment.util.ImageProcessorCache;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests the {@link MipmapPyramidFile} class.
+ *
+ * @author Eric Trautman
+ */
+public class MipmapPyramidFileTest {
+
+    private File pyramidFile;
+
+    @Before
+    public void setup() throws Exception {
+        pyramidFile = File.createTempFile("test_pyramid_", "." + MipmapPyramidFile.EXTENSION);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        if (pyramidFile.exists()) {
+            if (! pyramidFile.delete()) {
+                pyramidFile.deleteOnExit();
+            }
+        }
+    }
+
+    @Test
+    public void testWriteAndRead() throws Exception {
+
+        final ShortProcessor level1Image = new ShortProcessor(40, 30);
+        level1Image.set(5, 6, 1234);
+        level1Image.setMinAndMax(0, 4095);
+
+        final ByteProcessor level1Mask = new ByteProcessor(40, 30);
+        level1Mask.set(5, 6, 255);
+
+        final FloatProcessor level2Image = new FloatProcessor(20, 15);
+        level2Image.setf(5, 6, 0.5f);
+        level2Image.setMinAndMax(0.0, 1.0);
+
+        final MipmapPyramidFile.Writer writer = new MipmapPyramidFile.Writer();
+        writer.addLevel(1, false, level1Image, false);
+        writer.addLevel(1, true, level1Mask, true);
+        writer.addLevel(2, false, level2Image, true);
+        writer.write(pyramidFile);
+
+        final MipmapPyramidFile pyramid = new MipmapPyramidFile(pyramidFile);
+
+        Assert.assertEquals("invalid image levels", Arrays.asList(1, 2), pyramid.getLevels(false));
+        Assert.assertEquals("invalid mask levels", Arrays.asList(1), pyramid.getLevels(true));
+        Assert.assertFalse("level 2 mask should not exist", pyramid.hasLevel(2, true));
+
+        validateProcessor("level 1 image", level1Image, pyramid.getProcessor(1, false));
+        validateProcessor("level 1 mask", level1Mask, pyramid.getProcessor(1, true));
+        validateProcessor("level 2 image", level2Image, pyramid.getProcessor(2, false));
+
+        final String fileUrl = pyramidFile.toURI().toString();
+        final String level2Url = MipmapPyramidFile.getLevelUrl(fileUrl, 2, false);
+
+        Assert.assertTrue("level url not identified", MipmapPyramidFile.isLevelUrl(level2Url));
+        Assert.assertFalse("file url should not be a level url", MipmapPyramidFile.isLevelUrl(fileUrl));
+
+        validateProcessor("level 2 image from url", level2Image, MipmapPyramidFile.readLevel(level2Url));
+
+        final ImageProcessor cachedMask =
+                ImageProcessorCache.getNonCachedImage(MipmapPyramidFile.getLevelUrl(fileUrl, 1, true), 0, true, false);
+        validateProcessor("level 1 mask from cache", level1Mask, cachedMask);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testMissingLevel() throws Exception {
+        final MipmapPyramidFile.Writer writer = new MipmapPyramidFile.Writer();
+        writer.addLevel(1, false, new ByteProcessor(10, 10), false);
+        writer.write(pyramidFile);
+        new MipmapPyramidFile(pyramidFile).getProcessor(3, false);
+    }
+
+    @Test
+    public void testValidateLevelUrl() throws Exception {
+        final MipmapPyramidFile.Writer writer = new MipmapPyramidFile.Writer();
+        writer.addLevel(1, false, new ByteProcessor(10, 10), false);
+        writer.write(pyramidFile);
+
+        final String fileUrl = pyramidFile.toURI().toString();
+        MipmapPyramidFile.validateLevelUrl(MipmapPyramidFile.getLevelUrl(fileUrl, 1, false));
+
+        for (final String missingLevelUrl : Arrays.asList(MipmapPyramidFile.getLevelUrl(fileUrl, 3, false),
+                                                          MipmapPyramidFile.getLevelUrl(fileUrl, 1, true))) {
+            try {
+                MipmapPyramidFile.validateLevelUrl(missingLevelUrl);
+                Assert.fail("missing level " + missingLevelUrl + " should not be valid");
+            } catch (final IllegalArgumentException e) {
+                Assert.assertTrue("unexpected message '" + e.getMessage() + "'",
+                                  e.getMessage().contains("is not stored in"));
+            }
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testShortUncompressedEntry() throws Exception {
+        final MipmapPyramidFile.Writer writer = new MipmapPyramidFile.Writer();
+        writer.addLevel(1, false, new ByteProcessor(10, 10), false);
+        writer.write(pyramidFile);
+
+        // overwrite the (little endian) length of the only entry: 12 byte header + 23 bytes into the entry
+        try (final RandomAccessFile randomAccessFile = new RandomAccessFile(pyramidFile, "rw")) {
+            randomAccessFile.seek(35);
+            randomAccessFile.write(new byte[] { 50, 0, 0, 0, 0, 0, 0, 0 });
+        }
+
+        MipmapPyramidFile.readLevel(MipmapPyramidFile.getLevelUrl(pyramidFile.toURI().toString(), 1, false));
+    }
+
+    @Test(expected = IOException.class)
+    public void testTruncatedFile() throws Exception {
+        final MipmapPyramidFile.Writer writer = new MipmapPyramidFile.Writer();
+        writer.addLevel(1, false, new ByteProcessor(10, 10), false);
+        writer.write(pyramidFile);
+        try (final RandomAccessFile randomAccessFile = new RandomAccessFile(pyramidFile, "rw")) {
+            randomAccessFile.setLength(randomAccessFile.length() - 1);
+        }
+        new MipmapPyramidFile(pyramidFile);
+    }
+
+    private void validateProcessor(final String context,
+                                   final ImageProcessor expected,
+                                   final ImageProcessor actual) {
+        Assert.assertEquals(context + " has invalid class", expected.getClass(), actual.getClass());
+        Assert.assertEquals(context + " has invalid width", expected.getWidth(), actual.getWidth());
+        Assert.assertEquals(context + " has invalid height", expected.getHeight(), actual.getHeight());
+        Assert.assertEquals(context + " has invalid pixel", expected.getf(5, 6), actual.getf(5, 6), 0.0);
+        Assert.assertEquals(context + " has invalid max", expected.getMax(), actual.getMax(), 0.0);
+    }
+
+}
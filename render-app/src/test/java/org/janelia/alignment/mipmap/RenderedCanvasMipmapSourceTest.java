@@ -0,0 +1,89 @@
+package org.janelia.alignment.mipmap;
+
+import java.util.Arrays;
+
+import mpicbg.trakem2.transform.TransformMeshMappingWithMasks.ImageProcessorWithMasks;
+
+import org.janelia.alignment.RenderParameters;
+import org.janelia.alignment.util.ImageProcessorCache;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Tests the {@link RenderedCanvasMipmapSource} class.
+ *
+ * @author Eric Trautman
+ */
+public class RenderedCanvasMipmapSourceTest {
+
+    private static final String[] ARGS = {
+            "--tile_spec_url", "src/test/resources/stitch-test/test_4_tiles.json",
+            "--out", "not-applicable-but-required-file-name.png",
+            "--width", "4576",
+            "--height", "4173",
+            "--scale", "0.05"
+    };
+
+    @Test
+    public void testConcurrentCanvasLoading() throws Exception {
+
+        final ImageProcessorWithMasks sequentialResult = render(null, ImageProcessorCache.DISABLED_CACHE);
+
+        final CanvasLoadingPool canvasLoadingPool = new CanvasLoadingPool(2);
+        final ImageProcessorWithMasks concurrentResult;
+        try {
+            concurrentResult = render(canvasLoadingPool, ImageProcessorCache.DISABLED_CACHE);
+        } finally {
+            canvasLoadingPool.shutdown();
+        }
+
+        validateResultsMatch("concurrently loaded", sequentialResult, concurrentResult);
+    }
+
+    @Test
+    public void testPrefetchedCanvasLoading() throws Exception {
+
+        final ImageProcessorWithMasks sequentialResult = render(null, ImageProcessorCache.DISABLED_CACHE);
+
+        final ImageProcessorCache imageProcessorCache = new ImageProcessorCache();
+        final CanvasLoadingPool canvasLoadingPool = new CanvasLoadingPool(1, 4, 2);
+        final ImageProcessorWithMasks prefetchedResult;
+        try {
+            prefetchedResult = render(canvasLoadingPool, imageProcessorCache);
+        } finally {
+            canvasLoadingPool.shutdown();
+        }
+
+        validateResultsMatch("prefetched", sequentialResult, prefetchedResult);
+
+        // 4 tiles share the same mask, so there should be at least 4 images and 1 mask in the cache
+        Assert.assertTrue("prefetched tiles missing from cache, cache is " + imageProcessorCache,
+                          imageProcessorCache.size() >= 5);
+    }
+
+    private void validateResultsMatch(final String context,
+                                      final ImageProcessorWithMasks sequentialResult,
+                                      final ImageProcessorWithMasks concurrentResult) {
+
+        final float[] sequentialPixels = (float[]) sequentialResult.ip.getPixels();
+        final float[] concurrentPixels = (float[]) concurrentResult.ip.getPixels();
+        Assert.assertTrue(context + " pixels differ from sequentially loaded pixels",
+                          Arrays.equals(sequentialPixels, concurrentPixels));
+
+        final byte[] sequentialMask = (byte[]) sequentialResult.mask.getPixels();
+        final byte[] concurrentMask = (byte[]) concurrentResult.mask.getPixels();
+        Assert.assertTrue(context + " mask differs from sequentially loaded mask",
+                          Arrays.equals(sequentialMask, concurrentMask));
+    }
+
+    private ImageProcessorWithMasks render(final CanvasLoadingPool canvasLoadingPool,
+                                           final ImageProcessorCache imageProcessorCache) {
+
+        final RenderParameters renderParameters = RenderParameters.parseCommandLineArgs(ARGS);
+        final RenderedCanvasMipmapSource source = new RenderedCanvasMipmapSource(renderParameters,
+                                                                                 imageProcessorCache,
+                                                                                 canvasLoadingPool);
+        return source.getChannels(0).getFirstChannel();
+    }
+
+}
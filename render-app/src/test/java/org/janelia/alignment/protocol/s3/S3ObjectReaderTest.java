@@ -0,0 +1,204 @@
+package org.janelia.alignment.protocol.s3;
+
+import com.amazonaws.services.s3.AbstractAmazonS3;
+import com.amazonaws.services.s3.Headers;
+import com.amazonaws.services.s3.model.GetObjectRequest;
+import com.amazonaws.services.s3.model.ObjectMetadata;
+import com.amazonaws.services.s3.model.S3Object;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+
+import org.janelia.alignment.util.FileUtil;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests the {@link S3ObjectReader} class using an in-memory stand-in for S3.
+ *
+ * @author Eric Trautman
+ */
+public class S3ObjectReaderTest {
+
+    private static final String URL = "s3://test-bucket/tiles/tile.tif";
+
+    private byte[] objectBytes;
+    private InMemoryS3 s3Client;
+    private File cacheDirectory;
+
+    @Before
+    public void setup() throws Exception {
+        objectBytes = new byte[1_000_000];
+        new Random(42).nextBytes(objectBytes);
+        s3Client = new InMemoryS3(objectBytes);
+        cacheDirectory = Files.createTempDirectory("test_s3_disk_cache_").toFile();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        FileUtil.deleteRecursive(cacheDirectory);
+    }
+
+    @Test
+    public void testRangedRead() throws Exception {
+
+        final S3ObjectReader reader = new S3ObjectReader(s3Client, 300_000, 3, null);
+
+        final S3ObjectReader.ObjectData objectData = reader.read(URL);
+
+        Assert.assertArrayEquals("invalid bytes read", objectBytes, objectData.getBytes());
+        Assert.assertEquals("invalid content type", "image/tiff", objectData.getContentType());
+        Assert.assertEquals("invalid number of ranged requests", 4, s3Client.requestCount.get());
+
+        // closed readers should recreate their range pool when needed
+        reader.close();
+        Assert.assertArrayEquals("invalid bytes read after close", objectBytes, reader.read(URL).getBytes());
+        reader.close();
+    }
+
+    @Test
+    public void testSingleRequestRead() throws Exception {
+
+        final S3ObjectReader reader = new S3ObjectReader(s3Client, 0, 1, null);
+
+        Assert.assertArrayEquals("invalid bytes read", objectBytes, reader.read(URL).getBytes());
+        Assert.assertEquals("invalid number of requests", 1, s3Client.requestCount.get());
+    }
+
+    @Test
+    public void testRetriedRangeRead() throws Exception {
+
+        s3Client.truncateNextRangeRead = true;
+
+        final S3ObjectReader reader = new S3ObjectReader(s3Client, 600_000, 1, null);
+
+        Assert.assertArrayEquals("invalid bytes read", objectBytes, reader.read(URL).getBytes());
+        Assert.assertEquals("invalid number of retries", 1, reader.getRetryCount());
+    }
+
+    @Test
+    public void testObjectChangedBetweenRanges() throws Exception {
+
+        s3Client.changeAfterFirstRead = true;
+
+        final S3ObjectReader reader = new S3ObjectReader(s3Client, 300_000, 1, null);
+
+        try {
+            reader.read(URL);
+            Assert.fail("read of changed object should have failed");
+        } catch (final S3ObjectReader.ObjectChangedException e) {
+            Assert.assertEquals("changed ranges should not be retried", 0, reader.getRetryCount());
+        }
+    }
+
+    @Test
+    public void testDiskCache() throws Exception {
+
+        final S3DiskCache diskCache = new S3DiskCache(cacheDirectory, 10_000_000);
+        final S3ObjectReader reader = new S3ObjectReader(s3Client, 300_000, 3, diskCache);
+
+        reader.read(URL);
+        final int requestCountAfterFirstRead = s3Client.requestCount.get();
+
+        final S3ObjectReader.ObjectData cachedData = reader.read(URL);
+
+        Assert.assertArrayEquals("invalid cached bytes", objectBytes, cachedData.getBytes());
+        Assert.assertEquals("invalid cached content type", "image/tiff", cachedData.getContentType());
+        Assert.assertEquals("second read should not send requests",
+                            requestCountAfterFirstRead, s3Client.requestCount.get());
+        Assert.assertEquals("invalid number of objects retrieved from S3", 1, reader.getObjectCount());
+
+        // a new cache for the same directory should find the previously cached object
+        final S3DiskCache reopenedCache = new S3DiskCache(cacheDirectory, 10_000_000);
+        Assert.assertTrue("reopened cache is empty", reopenedCache.getCurrentBytes() > objectBytes.length);
+
+        // age the existing cache file so that it is clearly the least recently used
+        try (final Stream<Path> pathStream = Files.walk(cacheDirectory.toPath())) {
+            pathStream.filter(Files::isRegularFile)
+                    .forEach(path -> Assert.assertTrue(path.toFile().setLastModified(System.currentTimeMillis() - 60_000)));
+        }
+
+        // a cache that is too small for two objects should evict the least recently used object
+        final S3DiskCache smallCache = new S3DiskCache(cacheDirectory, 1_500_000);
+        smallCache.put("s3://test-bucket/tiles/another.tif", new S3ObjectReader.ObjectData(null, objectBytes));
+        Assert.assertNull("least recently used object should have been evicted", smallCache.get(URL));
+        Assert.assertNotNull("most recently used object should be cached",
+                             smallCache.get("s3://test-bucket/tiles/another.tif"));
+    }
+
+    /**
+     * Stand-in for S3 that serves one object (for any key) and supports ranged requests.
+     */
+    private static class InMemoryS3 extends AbstractAmazonS3 {
+
+        private final byte[] bytes;
+        private final AtomicInteger requestCount;
+        private volatile boolean truncateNextRangeRead;
+        private volatile boolean changeAfterFirstRead;
+        private volatile String eTag;
+
+        InMemoryS3(final byte[] bytes) {
+            this.bytes = bytes;
+            this.requestCount = new AtomicInteger(0);
+            this.truncateNextRangeRead = false;
+            this.changeAfterFirstRead = false;
+            this.eTag = "etag-1";
+        }
+
+        @Override
+        public S3Object getObject(final GetObjectRequest getObjectRequest) {
+
+            requestCount.incrementAndGet();
+
+            // like the real client, return null when the object does not match the requested eTag
+            final List<String> matchingETags = getObjectRequest.getMatchingETagConstraints();
+            if ((matchingETags != null) && (matchingETags.size() > 0) && (! matchingETags.contains(eTag))) {
+                return null;
+            }
+
+            final ObjectMetadata metadata = new ObjectMetadata();
+            metadata.setContentType("image/tiff");
+            metadata.setHeader(Headers.ETAG, eTag);
+
+            int start = 0;
+            int end = bytes.length - 1;
+            final long[] range = getObjectRequest.getRange();
+            if (range != null) {
+                start = (int) range[0];
+                end = (int) Math.min(range[1], bytes.length - 1);
+                metadata.setHeader(Headers.CONTENT_RANGE, "bytes " + start + "-" + end + "/" + bytes.length);
+            }
+
+            final int length = end - start + 1;
+            metadata.setContentLength(length);
+
+            int streamLength = length;
+            if ((start > 0) && truncateNextRangeRead) {
+                truncateNextRangeRead = false;
+                streamLength = length / 2;
+            }
+
+            final S3Object s3Object = new S3Object();
+            s3Object.setBucketName(getObjectRequest.getBucketName());
+            s3Object.setKey(getObjectRequest.getKey());
+            s3Object.setObjectMetadata(metadata);
+            s3Object.setObjectContent(new ByteArrayInputStream(bytes, start, streamLength));
+
+            if (changeAfterFirstRead) {
+                changeAfterFirstRead = false;
+                eTag = "etag-2";
+            }
+
+            return s3Object;
+        }
+    }
+
+}
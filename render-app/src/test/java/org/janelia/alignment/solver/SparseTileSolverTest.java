@@ -0,0 +1,213 @@
+package org.janelia.alignment.solver;
+
+import java.awt.geom.AffineTransform;
+import java.awt.geom.NoninvertibleTransformException;
+import java.awt.geom.Point2D;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.janelia.alignment.match.Matches;
+import org.janelia.alignment.match.ModelType;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Tests the {@link SparseTileSolver} class.
+ *
+ * @author Eric Trautman
+ */
+public class SparseTileSolverTest {
+
+    private static final int GRID_SIZE = 3;
+    private static final double TILE_SIZE = 1000;
+    private static final double TILE_SPACING = 900;
+
+    @Test
+    public void testTranslationSolve() throws Exception {
+        validateSolve(ModelType.TRANSLATION, 0.0, 1);
+    }
+
+    @Test
+    public void testRigidSolve() throws Exception {
+        validateSolve(ModelType.RIGID, 0.003, 2);
+    }
+
+    @Test
+    public void testSimilaritySolve() throws Exception {
+        validateSolve(ModelType.SIMILARITY, 0.003, 1);
+    }
+
+    @Test
+    public void testAffineSolve() throws Exception {
+        validateSolve(ModelType.AFFINE, 0.003, 2);
+    }
+
+    @Test
+    public void testUnmatchedTileIsNotChanged() throws Exception {
+
+        final List<AffineTransform> startingTransforms = buildStartingTransforms(0.0);
+        final SparseTileSolver solver = buildSolver(ModelType.AFFINE, 0.01, startingTransforms, 1);
+        solver.addTile("unmatched");
+
+        final SparseTileSolver.Solution solution = solver.solve();
+
+        Assert.assertTrue("unmatched tile should not be corrected",
+                          solution.getCorrection("unmatched").isIdentity());
+        Assert.assertTrue("fixed tile should not be corrected",
+                          solution.getCorrection(getTileId(0)).isIdentity());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testMatchesForUnknownTile() throws Exception {
+        final SparseTileSolver solver = new SparseTileSolver(ModelType.AFFINE, 0.01, 0.0, 100, 1e-10, 1);
+        solver.addTile("a");
+        solver.addMatches("a", "b", new Matches(new double[][] {{0}, {0}}, new double[][] {{0}, {0}}, new double[] {1}));
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testSolveWithoutFixedTileOrTranslationLambda() throws Exception {
+        final SparseTileSolver solver = new SparseTileSolver(ModelType.AFFINE, 0.01, 0.0, 100, 1e-10, 1);
+        solver.addTile("a");
+        solver.solve();
+    }
+
+    @Test
+    public void testAlignmentQualityWithoutTilePairs() throws Exception {
+        final SparseTileSolver solver = new SparseTileSolver(ModelType.AFFINE, 0.01, 0.0, 100, 1e-10, 1);
+        solver.addTile("a");
+        solver.addTile("b");
+        solver.fixTile("a");
+
+        final SparseTileSolver.Solution solution = solver.solve();
+
+        Assert.assertEquals("invalid tile pair count for " + solution, 0, solution.getTilePairCount());
+        Assert.assertEquals("solution without tile pairs should have invalid quality",
+                            -1.0, solution.getAlignmentQuality(), 0.0);
+    }
+
+    private void validateSolve(final ModelType modelType,
+                               final double maxRotation,
+                               final int numberOfThreads)
+            throws NoninvertibleTransformException {
+
+        final List<AffineTransform> startingTransforms = buildStartingTransforms(maxRotation);
+        final SparseTileSolver solver = buildSolver(modelType, 0.0, startingTransforms, numberOfThreads);
+
+        final SparseTileSolver.Solution solution = solver.solve();
+
+        final String context = modelType + " solution " + solution;
+
+        Assert.assertTrue("starting error is too small for " + context,
+                          solution.getStartingRootMeanSquareError() > 1.0);
+        Assert.assertTrue("error was not removed for " + context,
+                          solution.getRootMeanSquareError() < 0.01);
+
+        // corrected starting locations should match ground truth locations
+        for (int tile = 0; tile < startingTransforms.size(); tile++) {
+            final Point2D center = new Point2D.Double(TILE_SIZE / 2, TILE_SIZE / 2);
+            final Point2D expected = getGroundTruthTransform(tile).transform(center, null);
+            final Point2D starting = startingTransforms.get(tile).transform(center, null);
+            final Point2D actual = solution.getCorrection(getTileId(tile)).transform(starting, null);
+            Assert.assertEquals("invalid corrected location for tile " + tile + " in " + context,
+                                0.0, expected.distance(actual), 0.01);
+        }
+    }
+
+    private SparseTileSolver buildSolver(final ModelType modelType,
+                                         final double regularizationLambda,
+                                         final List<AffineTransform> startingTransforms,
+                                         final int numberOfThreads)
+            throws NoninvertibleTransformException {
+
+        final SparseTileSolver solver =
+                new SparseTileSolver(modelType, regularizationLambda, 0.0, 1000, 1e-14, numberOfThreads);
+
+        for (int tile = 0; tile < startingTransforms.size(); tile++) {
+            solver.addTile(getTileId(tile));
+        }
+        solver.fixTile(getTileId(0));
+
+        for (int row = 0; row < GRID_SIZE; row++) {
+            for (int column = 0; column < GRID_SIZE; column++) {
+                final int tile = (row * GRID_SIZE) + column;
+                if (column + 1 < GRID_SIZE) {
+                    addMatches(solver, startingTransforms, tile, tile + 1);
+                }
+                if (row + 1 < GRID_SIZE) {
+                    addMatches(solver, startingTransforms, tile, tile + GRID_SIZE);
+                }
+            }
+        }
+
+        return solver;
+    }
+
+    private static List<AffineTransform> buildStartingTransforms(final double maxRotation) {
+        final List<AffineTransform> startingTransforms = new ArrayList<>();
+        for (int tile = 0; tile < GRID_SIZE * GRID_SIZE; tile++) {
+            final AffineTransform transform = getGroundTruthTransform(tile);
+            if (tile > 0) {
+                // deterministic perturbation of all but the fixed first tile
+                transform.translate(((tile * 7) % 11) - 5, ((tile * 5) % 13) - 6);
+                transform.rotate(maxRotation * (((tile % 3) - 1) + 0.5), TILE_SIZE / 2, TILE_SIZE / 2);
+            }
+            startingTransforms.add(transform);
+        }
+        return startingTransforms;
+    }
+
+    private static AffineTransform getGroundTruthTransform(final int tile) {
+        return AffineTransform.getTranslateInstance((tile % GRID_SIZE) * TILE_SPACING,
+                                                    (tile / GRID_SIZE) * TILE_SPACING);
+    }
+
+    private static String getTileId(final int tile) {
+        return "tile_" + tile;
+    }
+
+    /**
+     * Adds matches for a grid of points in the true overlap of the specified tiles
+     * (using each tile's starting location for the match coordinates).
+     */
+    private static void addMatches(final SparseTileSolver solver,
+                                   final List<AffineTransform> startingTransforms,
+                                   final int pTile,
+                                   final int qTile)
+            throws NoninvertibleTransformException {
+
+        final AffineTransform pTruth = getGroundTruthTransform(pTile);
+        final AffineTransform qTruth = getGroundTruthTransform(qTile);
+
+        final double minX = Math.max(pTruth.getTranslateX(), qTruth.getTranslateX());
+        final double minY = Math.max(pTruth.getTranslateY(), qTruth.getTranslateY());
+        final double maxX = Math.min(pTruth.getTranslateX(), qTruth.getTranslateX()) + TILE_SIZE;
+        final double maxY = Math.min(pTruth.getTranslateY(), qTruth.getTranslateY()) + TILE_SIZE;
+
+        final int pointsPerDimension = 4;
+        final int count = pointsPerDimension * pointsPerDimension;
+        final double[][] p = new double[2][count];
+        final double[][] q = new double[2][count];
+        final double[] w = new double[count];
+
+        int i = 0;
+        for (int row = 0; row < pointsPerDimension; row++) {
+            for (int column = 0; column < pointsPerDimension; column++) {
+                final Point2D world = new Point2D.Double(minX + ((maxX - minX) * (column + 0.5) / pointsPerDimension),
+                                                         minY + ((maxY - minY) * (row + 0.5) / pointsPerDimension));
+                final Point2D pStart = startingTransforms.get(pTile).transform(pTruth.inverseTransform(world, null),
+                                                                               null);
+                final Point2D qStart = startingTransforms.get(qTile).transform(qTruth.inverseTransform(world, null),
+                                                                               null);
+                p[0][i] = pStart.getX();
+                p[1][i] = pStart.getY();
+                q[0][i] = qStart.getX();
+                q[1][i] = qStart.getY();
+                w[i] = 1.0;
+                i++;
+            }
+        }
+
+        solver.addMatches(getTileId(pTile), getTileId(qTile), new Matches(p, q, w));
+    }
+
+}
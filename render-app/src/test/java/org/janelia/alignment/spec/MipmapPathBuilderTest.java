@@ -1,5 +1,10 @@
 package org.janelia.alignment.spec;
 
+import java.util.AbstractMap;
+import java.util.Map;
+
+import org.janelia.alignment.ImageAndMask;
+import org.janelia.alignment.mipmap.MipmapPyramidFile;
 import org.janelia.alignment.spec.stack.MipmapPathBuilder;
 import org.junit.Assert;
 import org.junit.Test;
@@ -23,4 +28,28 @@ public class MipmapPathBuilderTest {
         Assert.assertNotNull("null builder returned from json parse", parsedBuilder);
     }
 
+    @Test
+    public void testDeriveImageAndMask() throws Exception {
+
+        final Map.Entry<Integer, ImageAndMask> sourceEntry =
+                new AbstractMap.SimpleEntry<>(0, new ImageAndMask("file:/data/row2col3.tif",
+                                                                  "file:/data/mask.tif"));
+
+        final MipmapPathBuilder fileBuilder = new MipmapPathBuilder("/mipmaps", 3, "png");
+        ImageAndMask derived = fileBuilder.deriveImageAndMask(2, sourceEntry, false).getValue();
+
+        Assert.assertEquals("invalid image url", "file:/mipmaps/2/data/row2col3.tif.png", derived.getImageUrl());
+        Assert.assertEquals("invalid mask url", "file:/mipmaps/2/data/mask.tif.png", derived.getMaskUrl());
+
+        final MipmapPathBuilder pyramidBuilder = new MipmapPathBuilder("/mipmaps", 3, MipmapPyramidFile.EXTENSION);
+        Assert.assertTrue("pyramid builder not identified", pyramidBuilder.usesPyramidFiles());
+
+        derived = pyramidBuilder.deriveImageAndMask(2, sourceEntry, false).getValue();
+
+        Assert.assertEquals("invalid pyramid image url",
+                            "file:/mipmaps/data/row2col3.tif.pyr#image/2", derived.getImageUrl());
+        Assert.assertEquals("invalid pyramid mask url",
+                            "file:/mipmaps/data/mask.tif.pyr#mask/2", derived.getMaskUrl());
+    }
+
 }
@@ -55,6 +55,27 @@ public class TileBoundsRTreeTest {
 
     }
 
+    @Test
+    public void testFindTilesIntersectingBox() {
+
+        // box corner point touches edges of four tiles
+        List<TileBounds> intersectingTiles = tree.findTilesIntersectingBox(10.0, 10.0, 10.0, 10.0);
+        final List<String> expectedTileIds = Arrays.asList(getTileId(0, z),
+                                                           getTileId(1, z),
+                                                           getTileId(3, z),
+                                                           getTileId(4, z));
+        final List<String> actualTileIds = new ArrayList<>();
+        for (final TileBounds tileBounds : intersectingTiles) {
+            actualTileIds.add(tileBounds.getTileId());
+        }
+        Assert.assertEquals("invalid tiles (or order) for edge touching box", expectedTileIds, actualTileIds);
+
+        // padded tree search finds neighboring tiles that must be filtered out
+        intersectingTiles = tree.findTilesIntersectingBox(10.5, 10.5, 17.5, 17.5);
+        Assert.assertEquals("invalid number of tiles for interior box", 1, intersectingTiles.size());
+        Assert.assertEquals("invalid tile for interior box", getTileId(4, z), intersectingTiles.get(0).getTileId());
+    }
+
     @Test
     public void testGetCircleNeighbors()
             throws Exception {
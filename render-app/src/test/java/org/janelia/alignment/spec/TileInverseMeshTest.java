@@ -0,0 +1,139 @@
+package org.janelia.alignment.spec;
+
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import mpicbg.models.NoninvertibleModelException;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Tests the {@link TileInverseMesh} and {@link TileInverseMeshCache} classes.
+ *
+ * @author Eric Trautman
+ */
+public class TileInverseMeshTest {
+
+    @Test
+    public void testGetLocalCoordinates() throws Exception {
+
+        for (final String jsonFileName : TEST_TILE_FILE_NAMES) {
+
+            final TileSpec tileSpec = loadTileSpec(jsonFileName);
+            final TileInverseMesh inverseMesh = tileSpec.getInverseMesh(tileSpec.getMeshCellSize());
+
+            Assert.assertTrue("mesh for " + jsonFileName + " has no triangles",
+                              inverseMesh.getNumberOfTriangles() > 0);
+
+            int comparisonCount = 0;
+            for (double localX = 5; localX < tileSpec.getWidth(); localX += 97) {
+                for (double localY = 5; localY < tileSpec.getHeight(); localY += 89) {
+
+                    final double[] world = tileSpec.getWorldCoordinates(localX, localY);
+
+                    final double[] expected;
+                    try {
+                        expected = tileSpec.getLocalCoordinates(world[0], world[1], tileSpec.getMeshCellSize());
+                    } catch (final NoninvertibleModelException e) {
+                        continue;
+                    }
+
+                    final double[] actual = inverseMesh.getLocalCoordinates(world[0], world[1]);
+
+                    Assert.assertEquals("incorrect length for " + jsonFileName + " local coordinates",
+                                        expected.length, actual.length);
+                    for (int i = 0; i < expected.length; i++) {
+                        Assert.assertEquals("incorrect local value " + i + " for " + jsonFileName +
+                                            " world point " + Arrays.toString(world),
+                                            expected[i], actual[i], MAX_DOUBLE_DELTA);
+                    }
+
+                    comparisonCount++;
+                }
+            }
+
+            Assert.assertTrue("no points compared for " + jsonFileName, comparisonCount > 0);
+        }
+    }
+
+    @Test(expected = NoninvertibleModelException.class)
+    public void testOutsideMesh() throws Exception {
+        final TileSpec tileSpec = loadTileSpec(TEST_TILE_FILE_NAMES[0]);
+        final TileInverseMesh inverseMesh = tileSpec.getInverseMesh(tileSpec.getMeshCellSize());
+        inverseMesh.getLocalCoordinates(-99999.0, -99999.0);
+    }
+
+    @Test
+    public void testCacheAndBatch() throws Exception {
+
+        final TileSpec tileSpec = loadTileSpec(TEST_TILE_FILE_NAMES[0]);
+        final TileInverseMeshCache cache = new TileInverseMeshCache();
+
+        final TileInverseMesh firstMesh = cache.get("v1", tileSpec, tileSpec.getMeshCellSize());
+        Assert.assertSame("cached mesh not returned for same version",
+                          firstMesh, cache.get("v1", tileSpec, tileSpec.getMeshCellSize()));
+        Assert.assertNotSame("cached mesh returned for different version",
+                             firstMesh, cache.get("v2", tileSpec, tileSpec.getMeshCellSize()));
+        Assert.assertEquals("invalid number of cache entries", 2, cache.size());
+
+        final List<TileCoordinates> worldCoordinatesList = new ArrayList<>();
+        final List<List<TileSpec>> tileSpecLists = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            final double[] world = tileSpec.getWorldCoordinates(50 + (i * 70), 60 + (i * 55));
+            worldCoordinatesList.add(TileCoordinates.buildWorldInstance(null, world));
+            tileSpecLists.add(Collections.singletonList(tileSpec));
+        }
+
+        // add point outside of tile
+        worldCoordinatesList.add(TileCoordinates.buildWorldInstance(null, new double[] {-99999.0, -99999.0}));
+        tileSpecLists.add(Collections.singletonList(tileSpec));
+
+        // add point that was not looked up
+        worldCoordinatesList.add(TileCoordinates.buildWorldInstance(null, new double[] {1.0, 2.0}));
+        tileSpecLists.add(null);
+
+        final List<List<TileCoordinates>> batchResults =
+                TileCoordinates.getLocalCoordinates(worldCoordinatesList, tileSpecLists, cache, "v1");
+
+        Assert.assertEquals("invalid number of batch results", worldCoordinatesList.size(), batchResults.size());
+
+        for (int i = 0; i < 10; i++) {
+            final double[] world = worldCoordinatesList.get(i).getWorld();
+            final List<TileCoordinates> expectedList =
+                    TileCoordinates.getLocalCoordinates(tileSpecLists.get(i), world[0], world[1]);
+            final List<TileCoordinates> actualList = batchResults.get(i);
+            Assert.assertEquals("invalid number of coordinates for point " + i, expectedList.size(), actualList.size());
+            final TileCoordinates expected = expectedList.get(0);
+            final TileCoordinates actual = actualList.get(0);
+            Assert.assertEquals("invalid tile for point " + i, expected.getTileId(), actual.getTileId());
+            Assert.assertTrue("point " + i + " should be visible", actual.isVisible());
+            Assert.assertEquals("invalid local x for point " + i,
+                                expected.getLocal()[0], actual.getLocal()[0], MAX_DOUBLE_DELTA);
+            Assert.assertEquals("invalid local y for point " + i,
+                                expected.getLocal()[1], actual.getLocal()[1], MAX_DOUBLE_DELTA);
+        }
+
+        Assert.assertTrue("error missing for point outside of tile", batchResults.get(10).get(0).hasError());
+        Assert.assertSame("original coordinates not returned for skipped point",
+                          worldCoordinatesList.get(11), batchResults.get(11).get(0));
+
+        Assert.assertEquals("batch should have reused cached mesh", 2, cache.size());
+    }
+
+    private static TileSpec loadTileSpec(final String jsonFileName) throws Exception {
+        final byte[] jsonBytes = Files.readAllBytes(Paths.get("src/test/resources/tile-test/" + jsonFileName));
+        return TileSpec.fromJson(new String(jsonBytes));
+    }
+
+    private static final String[] TEST_TILE_FILE_NAMES = {
+            "tile_with_only_affine_transforms.json",
+            "tile_with_non_invertible_transforms.json"
+    };
+
+    private static final double MAX_DOUBLE_DELTA = 0.01;
+}
@@ -0,0 +1,115 @@
+package org.janelia.alignment.util;
+
+import ij.process.ByteProcessor;
+import ij.process.ImageProcessor;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Tests the {@link DistinctMaskCache} class.
+ *
+ * @author Eric Trautman
+ */
+public class DistinctMaskCacheTest {
+
+    @Test
+    public void testSharedMasks() throws Exception {
+
+        final DistinctMaskCache<String> cache = new DistinctMaskCache<>(1_000_000L, this::buildMask);
+
+        final ImageProcessor maskA = cache.get("a-mask");
+        final ImageProcessor maskACopy = cache.get("a-mask-copy");
+        final ImageProcessor maskB = cache.get("b-mask");
+
+        Assert.assertSame("masks with identical pixels should share one instance", maskA, maskACopy);
+        Assert.assertNotSame("masks with different pixels should not be shared", maskA, maskB);
+        Assert.assertSame("cached mask should be returned for same key", maskA, cache.get("a-mask"));
+
+        Assert.assertEquals("invalid number of keys", 3, cache.size());
+        Assert.assertEquals("invalid number of distinct masks", 2, cache.getDistinctMaskCount());
+
+        final Map<String, Object> metrics = cache.getMetrics();
+        Assert.assertEquals("invalid hit count", 1L, metrics.get("maskHitCount"));
+        Assert.assertEquals("invalid load count", 3L, metrics.get("maskLoadCount"));
+        Assert.assertEquals("invalid shared load count", 1L, metrics.get("maskSharedLoadCount"));
+
+        cache.invalidateAll();
+        Assert.assertNull("mask should not be cached after invalidation", cache.getIfPresent("a-mask"));
+    }
+
+    @Test
+    public void testConcurrentLoadsShareOneLoad() throws Exception {
+
+        final CountDownLatch loadStarted = new CountDownLatch(1);
+        final CountDownLatch releaseLoad = new CountDownLatch(1);
+        final AtomicInteger loaderCallCount = new AtomicInteger(0);
+
+        final DistinctMaskCache<String> cache = new DistinctMaskCache<>(1_000_000L, key -> {
+            loaderCallCount.incrementAndGet();
+            loadStarted.countDown();
+            try {
+                releaseLoad.await(10, TimeUnit.SECONDS);
+            } catch (final InterruptedException e) {
+                throw new IllegalStateException(e);
+            }
+            return buildMask(key);
+        });
+
+        final int numberOfRequests = 4;
+        final ExecutorService executorService = Executors.newFixedThreadPool(numberOfRequests);
+        try {
+            final List<Future<ImageProcessor>> futures = new ArrayList<>();
+            for (int i = 0; i < numberOfRequests; i++) {
+                futures.add(executorService.submit(() -> cache.get("a-mask")));
+            }
+
+            Assert.assertTrue("load never started", loadStarted.await(10, TimeUnit.SECONDS));
+            Thread.sleep(100); // give the other requests a chance to queue behind the first load
+            releaseLoad.countDown();
+
+            final ImageProcessor firstMask = futures.get(0).get(10, TimeUnit.SECONDS);
+            for (final Future<ImageProcessor> future : futures) {
+                Assert.assertSame("all requests should share one mask instance",
+                                  firstMask, future.get(10, TimeUnit.SECONDS));
+            }
+        } finally {
+            executorService.shutdownNow();
+        }
+
+        Assert.assertEquals("mask should only be loaded once", 1, loaderCallCount.get());
+        Assert.assertEquals("invalid load count", 1L, cache.getMetrics().get("maskLoadCount"));
+    }
+
+    @Test
+    public void testGetDigest() throws Exception {
+
+        final ByteProcessor mask = new ByteProcessor(10, 10);
+        final String emptyDigest = DistinctMaskCache.getDigest(mask);
+
+        Assert.assertEquals("digest should only depend upon content",
+                            emptyDigest, DistinctMaskCache.getDigest(new ByteProcessor(10, 10)));
+        Assert.assertNotEquals("digest should include dimensions",
+                               emptyDigest, DistinctMaskCache.getDigest(new ByteProcessor(20, 5)));
+
+        mask.set(3, 4, 255);
+        Assert.assertNotEquals("digest should include pixels", emptyDigest, DistinctMaskCache.getDigest(mask));
+    }
+
+    private ImageProcessor buildMask(final String key) {
+        final ByteProcessor mask = new ByteProcessor(10, 10);
+        mask.set(0, 0, key.startsWith("a") ? 255 : 0);
+        return mask;
+    }
+
+}
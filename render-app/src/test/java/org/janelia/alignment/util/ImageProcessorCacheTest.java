@@ -0,0 +1,68 @@
+package org.janelia.alignment.util;
+
+import ij.process.ByteProcessor;
+import ij.process.ColorProcessor;
+import ij.process.ImageProcessor;
+
+import java.util.Map;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Tests the {@link ImageProcessorCache} class.
+ *
+ * @author Eric Trautman
+ */
+public class ImageProcessorCacheTest {
+
+    @Test
+    public void testReadOnlyViews() throws Exception {
+
+        final ImageProcessorCache cache = new TestCache();
+
+        final ImageProcessor viewA = cache.getReadOnlyView("byte", 0, false, false);
+        final ImageProcessor viewB = cache.getReadOnlyView("byte", 0, false, false);
+
+        Assert.assertNotSame("views should be distinct instances", viewA, viewB);
+        Assert.assertSame("views should share pixels", viewA.getPixels(), viewB.getPixels());
+
+        viewA.setMinAndMax(10, 20);
+        Assert.assertEquals("view state should not be shared", 255.0, viewB.getMax(), 0.0);
+
+        final ImageProcessor copy = cache.get("byte", 0, false, false);
+        Assert.assertNotSame("get should copy pixels", viewA.getPixels(), copy.getPixels());
+
+        final ImageProcessor colorView = cache.getReadOnlyView("color", 0, false, false);
+        final ImageProcessor colorViewB = cache.getReadOnlyView("color", 0, false, false);
+        Assert.assertNotSame("color processors should be copied", colorView.getPixels(), colorViewB.getPixels());
+
+        final Map<String, Object> metrics = cache.getMetrics();
+        Assert.assertEquals("invalid view count", 2L, metrics.get("viewCount"));
+        Assert.assertEquals("invalid copy count", 3L, metrics.get("copyCount"));
+        Assert.assertEquals("invalid copied byte count",
+                            (long) (WIDTH * HEIGHT) + (2L * WIDTH * HEIGHT * 3),
+                            metrics.get("copiedByteCount"));
+    }
+
+    private static class TestCache extends ImageProcessorCache {
+
+        @Override
+        protected ImageProcessor loadImageProcessor(final String url,
+                                                    final int downSampleLevels,
+                                                    final boolean isMask,
+                                                    final boolean convertTo16Bit)
+                throws IllegalArgumentException {
+            final ImageProcessor imageProcessor;
+            if ("color".equals(url)) {
+                imageProcessor = new ColorProcessor(WIDTH, HEIGHT);
+            } else {
+                imageProcessor = new ByteProcessor(WIDTH, HEIGHT);
+            }
+            return imageProcessor;
+        }
+    }
+
+    private static final int WIDTH = 10;
+    private static final int HEIGHT = 20;
+}
@@ -0,0 +1,139 @@
+package org.janelia.alignment.util;
+
+import ij.process.ByteProcessor;
+import ij.process.ColorProcessor;
+import ij.process.FloatProcessor;
+import ij.process.ImageProcessor;
+import ij.process.ShortProcessor;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Tests the {@link OffHeapPixelStore} class.
+ *
+ * @author Eric Trautman
+ */
+public class OffHeapPixelStoreTest {
+
+    @Test
+    public void testRoundTrips() throws Exception {
+
+        final OffHeapPixelStore<String> store = new OffHeapPixelStore<>(1_000_000);
+
+        final ByteProcessor byteProcessor = new ByteProcessor(WIDTH, HEIGHT);
+        byteProcessor.set(3, 4, 200);
+        validateRoundTrip(store, "byte", byteProcessor);
+
+        final ShortProcessor shortProcessor = new ShortProcessor(WIDTH, HEIGHT);
+        shortProcessor.set(3, 4, 40000);
+        shortProcessor.setMinAndMax(100, 50000);
+        validateRoundTrip(store, "short", shortProcessor);
+
+        final FloatProcessor floatProcessor = new FloatProcessor(WIDTH, HEIGHT);
+        floatProcessor.setf(3, 4, 1.25f);
+        floatProcessor.setMinAndMax(0, 2.0);
+        validateRoundTrip(store, "float", floatProcessor);
+
+        final ColorProcessor colorProcessor = new ColorProcessor(WIDTH, HEIGHT);
+        colorProcessor.set(3, 4, 0x00123456);
+        validateRoundTrip(store, "color", colorProcessor);
+
+        Assert.assertEquals("invalid number of entries", 4, store.size());
+        Assert.assertEquals("invalid stored byte count",
+                            WIDTH * HEIGHT * (1 + 2 + 4 + 4),
+                            store.getStoredByteCount());
+
+        Assert.assertNull("missing key should return null", store.get("missing"));
+
+        store.invalidateAll();
+        Assert.assertEquals("entries should have been removed", 0, store.size());
+    }
+
+    @Test
+    public void testEviction() throws Exception {
+
+        final int maximumBytes = WIDTH * HEIGHT * 20;
+        final OffHeapPixelStore<Integer> store = new OffHeapPixelStore<>(maximumBytes);
+
+        for (int i = 0; i < 100; i++) {
+            store.put(i, new ByteProcessor(WIDTH, HEIGHT));
+        }
+
+        Assert.assertTrue("store should not exceed max bytes",
+                          store.getStoredByteCount() <= maximumBytes);
+        Assert.assertTrue("most recent entry should be retained", store.contains(99));
+        Assert.assertFalse("oldest entry should have been evicted", store.contains(0));
+    }
+
+    @Test
+    public void testBufferReuse() throws Exception {
+
+        final int maximumBytes = WIDTH * HEIGHT * 20;
+        final OffHeapPixelStore<Integer> store = new OffHeapPixelStore<>(maximumBytes);
+
+        for (int i = 0; i < 100; i++) {
+            final ByteProcessor byteProcessor = new ByteProcessor(WIDTH, HEIGHT);
+            byteProcessor.set(3, 4, i);
+            store.put(i, byteProcessor);
+        }
+
+        Assert.assertTrue("evicted buffers should have been pooled", store.getPooledByteCount() > 0);
+        Assert.assertTrue("pool should not exceed 10% of max bytes",
+                          store.getPooledByteCount() <= (maximumBytes / 10));
+
+        // entries stored in reused buffers should not be affected by the previous buffer contents
+        for (int i = 90; i < 100; i++) {
+            final ImageProcessor restored = store.get(i);
+            Assert.assertNotNull("entry " + i + " should be stored", restored);
+            Assert.assertEquals("invalid pixel for entry " + i, i, restored.get(3, 4));
+        }
+
+        final long pooledBytesBeforeInvalidation = store.getPooledByteCount();
+        store.invalidateAll();
+        Assert.assertTrue("invalidated buffers should have been pooled",
+                          store.getPooledByteCount() >= pooledBytesBeforeInvalidation);
+    }
+
+    @Test
+    public void testPutInBackground() throws Exception {
+
+        final OffHeapPixelStore<String> store = new OffHeapPixelStore<>(1_000_000);
+
+        final ByteProcessor byteProcessor = new ByteProcessor(WIDTH, HEIGHT);
+        byteProcessor.set(3, 4, 200);
+        store.putInBackground("byte", byteProcessor);
+
+        for (int i = 0; (i < 100) && (! store.contains("byte")); i++) {
+            Thread.sleep(50);
+        }
+
+        final ImageProcessor restored = store.get("byte");
+        Assert.assertNotNull("pixels should have been stored in the background", restored);
+        Assert.assertEquals("pixel changed", 200, restored.get(3, 4));
+    }
+
+    private void validateRoundTrip(final OffHeapPixelStore<String> store,
+                                   final String key,
+                                   final ImageProcessor original) {
+
+        store.put(key, original);
+
+        final ImageProcessor restored = store.get(key);
+
+        Assert.assertNotNull(key + " pixels should have been stored", restored);
+        Assert.assertEquals(key + " processor class changed", original.getClass(), restored.getClass());
+        Assert.assertNotSame(key + " pixels should have been copied", original.getPixels(), restored.getPixels());
+        Assert.assertEquals(key + " width changed", original.getWidth(), restored.getWidth());
+        Assert.assertEquals(key + " height changed", original.getHeight(), restored.getHeight());
+        Assert.assertEquals(key + " pixel changed", original.get(3, 4), restored.get(3, 4));
+        Assert.assertEquals(key + " min changed", original.getMin(), restored.getMin(), 0.0);
+        Assert.assertEquals(key + " max changed", original.getMax(), restored.getMax(), 0.0);
+
+        final ImageProcessor restoredAgain = store.get(key);
+        Assert.assertEquals(key + " pixel changed for second restore", original.get(3, 4), restoredAgain.get(3, 4));
+    }
+
+    private static final int WIDTH = 10;
+    private static final int HEIGHT = 20;
+}
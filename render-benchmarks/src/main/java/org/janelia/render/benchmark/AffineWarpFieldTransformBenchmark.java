@@ -0,0 +1,87 @@
+package org.janelia.render.benchmark;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.janelia.alignment.transform.AffineWarpField;
+import org.janelia.alignment.transform.AffineWarpFieldTransform;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures {@link AffineWarpFieldTransform#applyInPlace} for a block of locations
+ * (roughly the number of mesh vertices for a large tile) using warp fields of different resolutions.
+ *
+ * @author Eric Trautman
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class AffineWarpFieldTransformBenchmark {
+
+    private static final int NUMBER_OF_LOCATIONS = 10000;
+    private static final double FIELD_SIZE = 100000.0;
+
+    @Param({"4", "32"})
+    public int fieldRowAndColumnCount;
+
+    private AffineWarpFieldTransform transform;
+    private double[][] locations;
+    private double[] location;
+
+    @Setup(Level.Trial)
+    public void setup() {
+
+        final Random random = new Random(11);
+
+        final AffineWarpField affineWarpField =
+                new AffineWarpField(FIELD_SIZE,
+                                    FIELD_SIZE,
+                                    fieldRowAndColumnCount,
+                                    fieldRowAndColumnCount,
+                                    AffineWarpField.getDefaultInterpolatorFactory());
+
+        for (int row = 0; row < fieldRowAndColumnCount; row++) {
+            for (int column = 0; column < fieldRowAndColumnCount; column++) {
+                final double angle = (random.nextDouble() - 0.5) * 0.02;
+                affineWarpField.set(row, column, new double[] {
+                        Math.cos(angle), Math.sin(angle), -Math.sin(angle), Math.cos(angle),
+                        random.nextDouble() * 50, random.nextDouble() * 50
+                });
+            }
+        }
+
+        transform = new AffineWarpFieldTransform(AffineWarpFieldTransform.EMPTY_OFFSETS, affineWarpField);
+
+        locations = new double[NUMBER_OF_LOCATIONS][];
+        for (int i = 0; i < NUMBER_OF_LOCATIONS; i++) {
+            locations[i] = new double[] { random.nextDouble() * FIELD_SIZE, random.nextDouble() * FIELD_SIZE };
+        }
+
+        location = new double[2];
+    }
+
+    @Benchmark
+    public double[] applyInPlace() {
+        for (final double[] originalLocation : locations) {
+            location[0] = originalLocation[0];
+            location[1] = originalLocation[1];
+            transform.applyInPlace(location);
+        }
+        return location;
+    }
+
+}
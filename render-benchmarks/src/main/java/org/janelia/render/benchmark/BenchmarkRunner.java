@@ -0,0 +1,289 @@
+package org.janelia.render.benchmark;
+
+import com.beust.jcommander.JCommander;
+import com.beust.jcommander.Parameter;
+import com.beust.jcommander.ParameterException;
+import com.beust.jcommander.Parameters;
+import com.fasterxml.jackson.databind.JsonNode;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.janelia.alignment.json.JsonUtils;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Runs benchmarks, saves the JMH JSON results, and compares them with a baseline JSON report
+ * (typically a render-benchmarks/baseline/jmh-baseline.json file created on the reference machine) so that
+ * regressions are easy to spot after each commit.
+ *
+ * Benchmarks with a score that is worse than the baseline score by more than the regression threshold
+ * are flagged in the logged comparison report and cause a non-zero exit code when
+ * --failOnRegression is specified.  With --failOnRegression, a missing baseline is also treated
+ * as a failure (before any benchmarks are run) unless --updateBaseline is specified to create it.
+ *
+ * @author Eric Trautman
+ */
+public class BenchmarkRunner {
+
+    @Parameters
+    public static class RunnerParameters {
+
+        @Parameter(names = "--help", description = "Display this note", help = true)
+        public boolean help;
+
+        @Parameter(
+                names = "--include",
+                description = "Regular expression for the benchmarks to run (omit to run all benchmarks)")
+        public String include = ".*Benchmark.*";
+
+        @Parameter(
+                names = "--resultFile",
+                description = "File for JSON results of this run")
+        public String resultFile = "target/jmh-result.json";
+
+        @Parameter(
+                names = "--baselineFile",
+                description = "Baseline JSON results for comparison")
+        public String baselineFile = "baseline/jmh-baseline.json";
+
+        @Parameter(
+                names = "--regressionThreshold",
+                description = "Fraction of the baseline score that a result can worsen before it is flagged as a regression")
+        public double regressionThreshold = 0.10;
+
+        @Parameter(
+                names = "--failOnRegression",
+                description = "Exit with a non-zero code if any regressions are found",
+                arity = 0)
+        public boolean failOnRegression = false;
+
+        @Parameter(
+                names = "--updateBaseline",
+                description = "Replace the baseline file with the results of this run",
+                arity = 0)
+        public boolean updateBaseline = false;
+
+        @Parameter(
+                names = "--quick",
+                description = "Use single short warmup and measurement iterations (for smoke testing only)",
+                arity = 0)
+        public boolean quick = false;
+    }
+
+    public static void main(final String[] args) {
+
+        final RunnerParameters parameters = new RunnerParameters();
+        final JCommander jCommander = new JCommander(parameters);
+        jCommander.setProgramName("java -cp target/benchmarks.jar " + BenchmarkRunner.class.getName());
+
+        try {
+            jCommander.parse(args);
+        } catch (final ParameterException pe) {
+            JCommander.getConsole().println("\nERROR: failed to parse command line arguments\n\n" + pe.getMessage());
+            parameters.help = true;
+        }
+
+        if (parameters.help) {
+            jCommander.usage();
+            System.exit(1);
+        }
+
+        int exitCode = 0;
+        try {
+            final int regressionCount = new BenchmarkRunner(parameters).run();
+            if (parameters.failOnRegression && (regressionCount > 0)) {
+                exitCode = 2;
+            }
+        } catch (final Throwable t) {
+            LOG.error("main: caught exception", t);
+            exitCode = 1;
+        }
+
+        System.exit(exitCode);
+    }
+
+    private final RunnerParameters parameters;
+
+    public BenchmarkRunner(final RunnerParameters parameters) {
+        this.parameters = parameters;
+    }
+
+    /**
+     * Runs the benchmarks and compares results with the baseline (if it exists).
+     *
+     * @return number of regressions found.
+     *
+     * @throws IllegalArgumentException
+     *   if regressions should cause failure but the baseline does not exist.
+     */
+    public int run()
+            throws IllegalArgumentException, IOException, RunnerException {
+
+        final File baselineFile = new File(parameters.baselineFile).getAbsoluteFile();
+
+        // a missing baseline would otherwise silently skip the comparison and let every build pass
+        if (parameters.failOnRegression && (! parameters.updateBaseline) && (! baselineFile.exists())) {
+            throw new IllegalArgumentException(
+                    "baseline " + baselineFile + " not found, --failOnRegression requires a baseline " +
+                    "(create one on the reference machine with --updateBaseline)");
+        }
+
+        final File resultFile = new File(parameters.resultFile).getAbsoluteFile();
+        final File resultDirectory = resultFile.getParentFile();
+        if (! resultDirectory.exists() && ! resultDirectory.mkdirs()) {
+            throw new IOException("failed to create " + resultDirectory);
+        }
+
+        final ChainedOptionsBuilder optionsBuilder = new OptionsBuilder()
+                .include(parameters.include)
+                .resultFormat(ResultFormatType.JSON)
+                .result(resultFile.getAbsolutePath());
+
+        if (parameters.quick) {
+            optionsBuilder.warmupIterations(1).measurementIterations(1).forks(1);
+        }
+
+        new Runner(optionsBuilder.build()).run();
+
+        int regressionCount = 0;
+
+        if (baselineFile.exists()) {
+            regressionCount = compare(loadScores(baselineFile), loadScores(resultFile));
+        } else {
+            LOG.info("run: baseline {} not found, skipping comparison", baselineFile);
+        }
+
+        if (parameters.updateBaseline) {
+            final File baselineDirectory = baselineFile.getParentFile();
+            if (! baselineDirectory.exists() && ! baselineDirectory.mkdirs()) {
+                throw new IOException("failed to create " + baselineDirectory);
+            }
+            Files.copy(resultFile.toPath(), baselineFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            LOG.info("run: updated baseline {}", baselineFile);
+        }
+
+        return regressionCount;
+    }
+
+    private int compare(final Map<String, Score> baselineScores,
+                        final Map<String, Score> currentScores) {
+
+        final String format = "%-100s  %12s  %12s  %8s  %s%n";
+
+        // build the whole table before logging it so that its columns stay aligned
+        final StringBuilder report = new StringBuilder();
+        report.append(String.format(format, "benchmark", "baseline", "current", "change", ""));
+
+        final List<String> regressions = new ArrayList<>();
+
+        for (final String key : currentScores.keySet()) {
+
+            final Score current = currentScores.get(key);
+            final Score baseline = baselineScores.get(key);
+
+            if ((baseline == null) || (baseline.value == 0.0)) {
+
+                report.append(String.format(format, key, "-", current, "-", "(new)"));
+
+            } else {
+
+                final double change = (current.value - baseline.value) / baseline.value;
+                // scores for throughput modes improve as they increase, all other mode scores improve as they decrease
+                final double worsening = current.isHigherBetter() ? -change : change;
+                final boolean isRegression = worsening > parameters.regressionThreshold;
+
+                if (isRegression) {
+                    regressions.add(key);
+                }
+
+                report.append(String.format(format,
+                                            key,
+                                            baseline,
+                                            current,
+                                            String.format("%+.1f%%", change * 100),
+                                            isRegression ? "REGRESSION" : ""));
+            }
+        }
+
+        LOG.info("compare: results\n\n{}", report);
+        LOG.info("compare: {} regression(s) found with threshold {}",
+                 regressions.size(), String.format("%.0f%%", parameters.regressionThreshold * 100));
+
+        return regressions.size();
+    }
+
+    /**
+     * @return map of benchmark keys (name plus sorted parameters) to scores from the specified JMH JSON report.
+     */
+    static Map<String, Score> loadScores(final File jmhJsonFile)
+            throws IOException {
+
+        final JsonNode results = JsonUtils.MAPPER.readTree(jmhJsonFile);
+
+        final Map<String, Score> scores = new LinkedHashMap<>();
+        for (final JsonNode result : results) {
+
+            final StringBuilder key = new StringBuilder(result.path("benchmark").asText());
+
+            final JsonNode params = result.path("params");
+            if (params.size() > 0) {
+                final Map<String, String> sortedParams = new TreeMap<>();
+                final Iterator<Map.Entry<String, JsonNode>> fields = params.fields();
+                while (fields.hasNext()) {
+                    final Map.Entry<String, JsonNode> field = fields.next();
+                    sortedParams.put(field.getKey(), field.getValue().asText());
+                }
+                key.append(sortedParams);
+            }
+
+            final JsonNode primaryMetric = result.path("primaryMetric");
+            scores.put(key.toString(),
+                       new Score(result.path("mode").asText(),
+                                 primaryMetric.path("score").asDouble(),
+                                 primaryMetric.path("scoreUnit").asText()));
+        }
+
+        return scores;
+    }
+
+    static class Score {
+
+        private final String mode;
+        private final double value;
+        private final String unit;
+
+        Score(final String mode,
+              final double value,
+              final String unit) {
+            this.mode = mode;
+            this.value = value;
+            this.unit = unit;
+        }
+
+        boolean isHigherBetter() {
+            return "thrpt".equals(mode);
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%.3f %s", value, unit);
+        }
+    }
+
+    private static final Logger LOG = LoggerFactory.getLogger(BenchmarkRunner.class);
+}
@@ -0,0 +1,87 @@
+package org.janelia.render.benchmark;
+
+import java.awt.image.BufferedImage;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import mpicbg.imagefeatures.Feature;
+import mpicbg.imagefeatures.FloatArray2DSIFT;
+
+import org.janelia.alignment.Utils;
+import org.janelia.alignment.match.CanvasFeatureExtractor;
+import org.janelia.alignment.match.CanvasFeatureMatchResult;
+import org.janelia.alignment.match.CanvasFeatureMatcher;
+import org.janelia.alignment.match.ModelType;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures {@link CanvasFeatureMatcher#deriveMatchResult} for features extracted from
+ * two overlapping regions of a perf-test mipmap.
+ *
+ * @author Eric Trautman
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CanvasFeatureMatcherBenchmark {
+
+    @Param({"NONE", "SINGLE_SET", "CONSENSUS_SETS"})
+    public CanvasFeatureMatcher.FilterType filterType;
+
+    private List<Feature> canvas1Features;
+    private List<Feature> canvas2Features;
+    private CanvasFeatureMatcher matcher;
+
+    @Setup(Level.Trial)
+    public void setup() {
+
+        final BufferedImage image = Utils.openImage(
+                PerfTestData.getTestResource(
+                        "perf-test/mipmaps/png/col0060_row0140_cam0.tif_level_1_mipmap.png").getAbsolutePath());
+
+        final int canvasWidth = image.getWidth() * 3 / 4;
+        final int canvasHeight = image.getHeight() * 3 / 4;
+        final int xOffset = image.getWidth() - canvasWidth;
+        final int yOffset = image.getHeight() - canvasHeight;
+
+        final FloatArray2DSIFT.Param coreSiftParameters = new FloatArray2DSIFT.Param();
+        coreSiftParameters.fdSize = 8;
+        coreSiftParameters.steps = 3;
+
+        final CanvasFeatureExtractor extractor = new CanvasFeatureExtractor(coreSiftParameters, 0.25, 1.0, false);
+
+        canvas1Features = extractor.extractFeaturesFromImage(image.getSubimage(0, 0, canvasWidth, canvasHeight));
+        canvas2Features = extractor.extractFeaturesFromImage(image.getSubimage(xOffset, yOffset,
+                                                                               canvasWidth, canvasHeight));
+
+        matcher = new CanvasFeatureMatcher(0.92f,
+                                           ModelType.AFFINE,
+                                           1000,
+                                           20f,
+                                           0.0f,
+                                           10,
+                                           3.0,
+                                           null,
+                                           filterType);
+    }
+
+    @Benchmark
+    public CanvasFeatureMatchResult deriveMatchResult() {
+        return matcher.deriveMatchResult(canvas1Features, canvas2Features);
+    }
+
+}
@@ -0,0 +1,87 @@
+package org.janelia.render.benchmark;
+
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.TimeUnit;
+
+import org.janelia.alignment.ArgbRenderer;
+import org.janelia.alignment.RenderParameters;
+import org.janelia.alignment.util.ImageProcessorCache;
+import org.janelia.render.service.util.BufferedImageStreamingOutput;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the JPEG, PNG, and TIFF encoders used by the web service
+ * ({@link BufferedImageStreamingOutput}) for a rendered perf-test image.
+ *
+ * @author Eric Trautman
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class ImageEncoderBenchmark {
+
+    @Param({"jpg", "png", "tiff"})
+    public String format;
+
+    @Param({"1", "2"})
+    public int mipmapLevel;
+
+    private BufferedImage targetImage;
+    private CountingOutputStream outputStream;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+
+        final RenderParameters renderParameters = PerfTestData.loadRenderParameters("tif", mipmapLevel);
+
+        targetImage = renderParameters.openTargetImage();
+        ArgbRenderer.render(renderParameters, targetImage, ImageProcessorCache.DISABLED_CACHE);
+
+        outputStream = new CountingOutputStream();
+    }
+
+    @Benchmark
+    public long write() throws IOException {
+        final BufferedImageStreamingOutput streamingOutput =
+                new BufferedImageStreamingOutput(targetImage, format, false, 0.85f);
+        streamingOutput.write(outputStream);
+        return outputStream.count;
+    }
+
+    /**
+     * Discards written bytes (but counts them so that the JIT cannot discard the writes).
+     */
+    private static class CountingOutputStream extends OutputStream {
+
+        private long count = 0;
+
+        @Override
+        public void write(final int b) {
+            count++;
+        }
+
+        @Override
+        public void write(final byte[] b,
+                          final int off,
+                          final int len) {
+            count += len;
+        }
+    }
+
+}
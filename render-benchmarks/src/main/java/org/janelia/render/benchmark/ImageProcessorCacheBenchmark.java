@@ -0,0 +1,62 @@
+package org.janelia.render.benchmark;
+
+import ij.process.ImageProcessor;
+
+import java.util.concurrent.TimeUnit;
+
+import org.janelia.alignment.util.ImageProcessorCache;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures {@link ImageProcessorCache} loads for cache hits (previously loaded image) and
+ * cache misses (disabled cache, so every request loads the image) of a perf-test mipmap.
+ *
+ * @author Eric Trautman
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class ImageProcessorCacheBenchmark {
+
+    @Param({"jpg", "tif"})
+    public String format;
+
+    @Param({"1", "3"})
+    public int mipmapLevel;
+
+    private String url;
+    private ImageProcessorCache cache;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        url = PerfTestData.getTestResource("perf-test/mipmaps/" + format + "/col0060_row0140_cam0.tif_level_" +
+                                           mipmapLevel + "_mipmap." + format).getAbsolutePath();
+        cache = new ImageProcessorCache();
+        cache.get(url, 0, false, false);
+    }
+
+    @Benchmark
+    public ImageProcessor cacheHit() {
+        return cache.get(url, 0, false, false);
+    }
+
+    @Benchmark
+    public ImageProcessor cacheMiss() {
+        return ImageProcessorCache.DISABLED_CACHE.get(url, 0, false, false);
+    }
+
+}
@@ -0,0 +1,71 @@
+package org.janelia.render.benchmark;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import mpicbg.models.CoordinateTransform;
+import mpicbg.models.CoordinateTransformList;
+
+import org.janelia.alignment.RenderParameters;
+import org.janelia.alignment.RenderTransformMesh;
+import org.janelia.alignment.TransformableCanvas;
+import org.janelia.alignment.mipmap.RenderedCanvasMipmapSource;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures {@link RenderTransformMesh} construction (including affine updates) for the first tile
+ * in the perf-test data at different mesh cell sizes.
+ *
+ * @author Eric Trautman
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class MeshConstructionBenchmark {
+
+    @Param({"16", "64"})
+    public double meshCellSize;
+
+    private final int mipmapLevel = 1;
+    private CoordinateTransformList<CoordinateTransform> renderTransformList;
+    private int fullScaleWidth;
+    private int mipmapWidth;
+    private int mipmapHeight;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+
+        final RenderParameters renderParameters = PerfTestData.loadRenderParameters("tif", mipmapLevel);
+        final TransformableCanvas canvas = PerfTestData.getFirstCanvas(renderParameters);
+
+        renderTransformList = PerfTestData.getRenderTransformList(renderParameters, canvas);
+        fullScaleWidth = canvas.getSource().getFullScaleWidth();
+        mipmapWidth = (int) (fullScaleWidth * renderParameters.getScale() + 0.5);
+        mipmapHeight = (int) (canvas.getSource().getFullScaleHeight() * renderParameters.getScale() + 0.5);
+    }
+
+    @Benchmark
+    public RenderTransformMesh createRenderMesh() {
+        return RenderedCanvasMipmapSource.createRenderMesh(mipmapLevel,
+                                                           renderTransformList,
+                                                           fullScaleWidth,
+                                                           meshCellSize,
+                                                           mipmapWidth,
+                                                           mipmapHeight);
+    }
+
+}
@@ -0,0 +1,189 @@
+package org.janelia.render.benchmark;
+
+import ij.process.ByteProcessor;
+import ij.process.FloatProcessor;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import mpicbg.models.AffineModel2D;
+import mpicbg.models.CoordinateTransform;
+import mpicbg.models.CoordinateTransformList;
+import mpicbg.trakem2.transform.TransformMeshMappingWithMasks.ImageProcessorWithMasks;
+import mpicbg.trakem2.util.Pair;
+
+import org.janelia.alignment.ChannelMap;
+import org.janelia.alignment.RenderParameters;
+import org.janelia.alignment.RenderTransformMesh;
+import org.janelia.alignment.RenderTransformMeshMappingWithMasks;
+import org.janelia.alignment.ScanlineTriangleRasterizer;
+import org.janelia.alignment.TransformableCanvas;
+import org.janelia.alignment.mapper.MultiChannelMapper;
+import org.janelia.alignment.mapper.MultiChannelWithAlphaMapper;
+import org.janelia.alignment.mapper.MultiChannelWithBinaryMaskMapper;
+import org.janelia.alignment.mapper.PixelMapper;
+import org.janelia.alignment.mapper.SingleChannelMapper;
+import org.janelia.alignment.mapper.SingleChannelWithAlphaMapper;
+import org.janelia.alignment.mapper.SingleChannelWithBinaryMaskMapper;
+import org.janelia.alignment.mipmap.RenderedCanvasMipmapSource;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures {@link RenderTransformMeshMappingWithMasks#map} (which uses the {@link ScanlineTriangleRasterizer})
+ * for each mapper type and compares it with the original bounding box triangle mapping implementation.
+ *
+ * Source pixels are the level 1 tif mipmap of the first tile in the render-app perf-test data
+ * (render-app/src/test/resources/perf-test) and mapping is done with a single thread.
+ *
+ * @author Eric Trautman
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class MeshMappingBenchmark {
+
+    @Param({"scanline", "boundingBox"})
+    public String rasterizer;
+
+    @Param({
+            "SingleChannel", "SingleChannelWithAlpha", "SingleChannelWithBinaryMask",
+            "MultiChannel", "MultiChannelWithAlpha", "MultiChannelWithBinaryMask"
+    })
+    public String mapperType;
+
+    @Param({"true", "false"})
+    public boolean interpolated;
+
+    private List<Pair<AffineModel2D, double[][]>> triangles;
+    private PixelMapper pixelMapper;
+    private RenderTransformMeshMappingWithMasks mapping;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+
+        final int mipmapLevel = 1;
+        final RenderParameters renderParameters = PerfTestData.loadRenderParameters("tif", mipmapLevel);
+        final TransformableCanvas canvas = PerfTestData.getFirstCanvas(renderParameters);
+        final CoordinateTransformList<CoordinateTransform> renderTransformList =
+                PerfTestData.getRenderTransformList(renderParameters, canvas);
+
+        final ImageProcessorWithMasks source = canvas.getSource().getChannels(mipmapLevel).getFirstChannel();
+        if (source.mask == null) {
+            source.mask = new ByteProcessor(source.ip.getWidth(), source.ip.getHeight());
+            source.mask.invert();
+        }
+
+        final RenderTransformMesh mesh =
+                RenderedCanvasMipmapSource.createRenderMesh(mipmapLevel,
+                                                            renderTransformList,
+                                                            canvas.getSource().getFullScaleWidth(),
+                                                            renderParameters.getRes(),
+                                                            source.ip.getWidth(),
+                                                            source.ip.getHeight());
+
+        final double scale = renderParameters.getScale();
+        final int targetWidth = (int) (renderParameters.getWidth() * scale + 0.5);
+        final int targetHeight = (int) (renderParameters.getHeight() * scale + 0.5);
+
+        triangles = new ArrayList<>(mesh.getAV());
+        pixelMapper = buildPixelMapper(mapperType, source, targetWidth, targetHeight, interpolated);
+        mapping = new RenderTransformMeshMappingWithMasks(mesh);
+    }
+
+    @Benchmark
+    public PixelMapper mapTriangles() {
+        if ("scanline".equals(rasterizer)) {
+            mapping.map(pixelMapper, 1);
+        } else {
+            for (final Pair<AffineModel2D, double[][]> triangle : triangles) {
+                RenderTransformMeshMappingWithMasks.mapTriangleWithBoundingBox(triangle, pixelMapper);
+            }
+        }
+        return pixelMapper;
+    }
+
+    private static PixelMapper buildPixelMapper(final String mapperType,
+                                                final ImageProcessorWithMasks source,
+                                                final int targetWidth,
+                                                final int targetHeight,
+                                                final boolean interpolated) {
+
+        final PixelMapper pixelMapper;
+
+        switch (mapperType) {
+            case "SingleChannel":
+                pixelMapper = new SingleChannelMapper(source,
+                                                      buildTarget(targetWidth, targetHeight),
+                                                      interpolated);
+                break;
+            case "SingleChannelWithAlpha":
+                pixelMapper = new SingleChannelWithAlphaMapper(source,
+                                                               buildTarget(targetWidth, targetHeight),
+                                                               interpolated);
+                break;
+            case "SingleChannelWithBinaryMask":
+                pixelMapper = new SingleChannelWithBinaryMaskMapper(source,
+                                                                    buildTarget(targetWidth, targetHeight),
+                                                                    interpolated);
+                break;
+            case "MultiChannel":
+                pixelMapper = new MultiChannelMapper(buildSourceChannels(source),
+                                                     buildTargetChannels(targetWidth, targetHeight),
+                                                     interpolated);
+                break;
+            case "MultiChannelWithAlpha":
+                pixelMapper = new MultiChannelWithAlphaMapper(buildSourceChannels(source),
+                                                              buildTargetChannels(targetWidth, targetHeight),
+                                                              interpolated);
+                break;
+            case "MultiChannelWithBinaryMask":
+                pixelMapper = new MultiChannelWithBinaryMaskMapper(buildSourceChannels(source),
+                                                                   buildTargetChannels(targetWidth, targetHeight),
+                                                                   interpolated);
+                break;
+            default:
+                throw new IllegalArgumentException("unsupported mapperType '" + mapperType + "'");
+        }
+
+        return pixelMapper;
+    }
+
+    private static ImageProcessorWithMasks buildTarget(final int width,
+                                                       final int height) {
+        return new ImageProcessorWithMasks(new FloatProcessor(width, height),
+                                           new ByteProcessor(width, height),
+                                           null);
+    }
+
+    private static ChannelMap buildSourceChannels(final ImageProcessorWithMasks source) {
+        final ChannelMap sourceChannels = new ChannelMap();
+        sourceChannels.put("a", source);
+        sourceChannels.put("b", new ImageProcessorWithMasks(source.ip.duplicate(), source.mask.duplicate(), null));
+        return sourceChannels;
+    }
+
+    private static ChannelMap buildTargetChannels(final int width,
+                                                  final int height) {
+        final ChannelMap targetChannels = new ChannelMap();
+        targetChannels.put("a", buildTarget(width, height));
+        targetChannels.put("b", buildTarget(width, height));
+        return targetChannels;
+    }
+
+}
@@ -0,0 +1,108 @@
+package org.janelia.render.benchmark;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+import mpicbg.models.CoordinateTransform;
+import mpicbg.models.CoordinateTransformList;
+
+import org.janelia.alignment.RenderParameters;
+import org.janelia.alignment.TransformableCanvas;
+import org.janelia.alignment.mipmap.RenderedCanvasMipmapSource;
+import org.janelia.alignment.util.ImageProcessorCache;
+
+/**
+ * Utilities for loading the render-app perf-test data (render-app/src/test/resources/perf-test)
+ * used by many of the benchmarks.
+ *
+ * The render parameters in that data set use image paths that are relative to the render-app directory,
+ * so paths are resolved against the test resources directory identified by the render.test.resources
+ * system property (default is ../render-app/src/test/resources for runs from the render-benchmarks directory).
+ *
+ * @author Eric Trautman
+ */
+public class PerfTestData {
+
+    public static final String TEST_RESOURCES_PROPERTY = "render.test.resources";
+
+    /**
+     * @return the render-app test resources directory.
+     *
+     * @throws IllegalStateException
+     *   if the directory cannot be found.
+     */
+    public static File getTestResourcesDirectory()
+            throws IllegalStateException {
+
+        final File directory = new File(System.getProperty(TEST_RESOURCES_PROPERTY,
+                                                           "../render-app/src/test/resources"));
+        if (! directory.isDirectory()) {
+            throw new IllegalStateException("render-app test resources directory " + directory.getAbsolutePath() +
+                                            " not found, set -D" + TEST_RESOURCES_PROPERTY + " to its location");
+        }
+        return directory;
+    }
+
+    /**
+     * @param  relativePath  path relative to the render-app test resources directory.
+     *
+     * @return the specified test resource file.
+     */
+    public static File getTestResource(final String relativePath) {
+        return new File(getTestResourcesDirectory(), relativePath);
+    }
+
+    /**
+     * @param  format       mipmap format (jpg or tif).
+     * @param  mipmapLevel  level to render (scale is 1 / 2^level).
+     *
+     * @return initialized and validated render parameters for the perf-test data.
+     *
+     * @throws IOException
+     *   if the parameters cannot be loaded.
+     */
+    public static RenderParameters loadRenderParameters(final String format,
+                                                        final int mipmapLevel)
+            throws IOException {
+
+        final File resourcesDirectory = getTestResourcesDirectory();
+        final File jsonFile = new File(resourcesDirectory,
+                                       "perf-test/json/" + format + "/render-1600-3200-1600-1600.json");
+        final String json = new String(Files.readAllBytes(jsonFile.toPath()), StandardCharsets.UTF_8);
+
+        final RenderParameters renderParameters =
+                RenderParameters.parseJson(json.replace("src/test/resources/",
+                                                        resourcesDirectory.getAbsolutePath() + "/"));
+        renderParameters.setScale(1.0 / Math.pow(2, mipmapLevel));
+        renderParameters.initializeDerivedValues();
+        renderParameters.validate();
+
+        return renderParameters;
+    }
+
+    /**
+     * @return canvas for the first tile in the specified parameters (loaded without a cache).
+     */
+    public static TransformableCanvas getFirstCanvas(final RenderParameters renderParameters) {
+        return RenderedCanvasMipmapSource.buildCanvasList(renderParameters,
+                                                          ImageProcessorCache.DISABLED_CACHE).get(0);
+    }
+
+    /**
+     * @return the canvas transform list with the render scale and offset added.
+     */
+    public static CoordinateTransformList<CoordinateTransform> getRenderTransformList(
+            final RenderParameters renderParameters,
+            final TransformableCanvas canvas) {
+
+        final double scale = renderParameters.getScale();
+        return RenderedCanvasMipmapSource.addRenderScaleAndOffset(canvas.getTransformList(),
+                                                                  scale,
+                                                                  scale,
+                                                                  renderParameters.getX(),
+                                                                  renderParameters.getY());
+    }
+
+}
@@ -0,0 +1,209 @@
+package org.janelia.render.benchmark;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import mpicbg.models.AffineModel2D;
+import mpicbg.models.Point;
+import mpicbg.models.PointMatch;
+import mpicbg.models.Tile;
+import mpicbg.models.TileConfiguration;
+
+import org.janelia.alignment.match.Matches;
+import org.janelia.alignment.match.ModelType;
+import org.janelia.alignment.solver.SparseTileSolver;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compares an affine {@link SparseTileSolver} solve with mpicbg's {@link TileConfiguration#optimize}
+ * for a synthetic square grid montage with randomly offset starting tile locations.
+ *
+ * @author Eric Trautman
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 1)
+@Measurement(iterations = 3)
+@Fork(1)
+public class SparseTileSolverBenchmark {
+
+    public enum SolverType { SPARSE, MPICBG }
+
+    @Param({"10000", "100000"})
+    public int tileCount;
+
+    @Param({"SPARSE", "MPICBG"})
+    public SolverType solverType;
+
+    private static final double TILE_SIZE = 2000;
+    private static final double TILE_SPACING = 1800;
+    private static final int POINTS_PER_DIMENSION = 4;
+
+    private SparseTileSolver sparseSolver;
+    private TileConfiguration tileConfiguration;
+
+    @Setup(Level.Invocation)
+    public void setup() {
+
+        final int gridSize = (int) Math.ceil(Math.sqrt(tileCount));
+        final Random random = new Random(gridSize);
+
+        final List<double[]> startingOffsets = new ArrayList<>(gridSize * gridSize);
+        for (int tile = 0; tile < gridSize * gridSize; tile++) {
+            final double[] offset = { (tile % gridSize) * TILE_SPACING, (tile / gridSize) * TILE_SPACING };
+            if (tile > 0) {
+                offset[0] += (random.nextDouble() - 0.5) * 40;
+                offset[1] += (random.nextDouble() - 0.5) * 40;
+            }
+            startingOffsets.add(offset);
+        }
+
+        if (SolverType.SPARSE.equals(solverType)) {
+            setupSparseSolver(gridSize, startingOffsets);
+        } else {
+            setupTileConfiguration(gridSize, startingOffsets);
+        }
+    }
+
+    @Benchmark
+    public Object solve()
+            throws Exception {
+        final Object result;
+        if (SolverType.SPARSE.equals(solverType)) {
+            result = sparseSolver.solve();
+        } else {
+            tileConfiguration.optimize(0.01, 5000, 1000);
+            result = tileConfiguration.getError();
+        }
+        return result;
+    }
+
+    private void setupSparseSolver(final int gridSize,
+                                   final List<double[]> startingOffsets) {
+
+        sparseSolver = new SparseTileSolver(ModelType.AFFINE,
+                                            0.01,
+                                            0.0,
+                                            5000,
+                                            1e-10,
+                                            Runtime.getRuntime().availableProcessors());
+
+        for (int tile = 0; tile < startingOffsets.size(); tile++) {
+            sparseSolver.addTile(String.valueOf(tile));
+        }
+        sparseSolver.fixTile("0");
+
+        forEachNeighborPair(gridSize, (pTile, qTile) -> {
+            final double[][] localPoints = getOverlapLocalPoints(pTile, qTile, gridSize);
+            final double[] pOffset = startingOffsets.get(pTile);
+            final double[] qOffset = startingOffsets.get(qTile);
+            final int count = localPoints[0].length;
+            final double[][] ps = new double[2][count];
+            final double[][] qs = new double[2][count];
+            final double[] ws = new double[count];
+            for (int i = 0; i < count; i++) {
+                ps[0][i] = localPoints[0][i] + pOffset[0];
+                ps[1][i] = localPoints[1][i] + pOffset[1];
+                qs[0][i] = localPoints[2][i] + qOffset[0];
+                qs[1][i] = localPoints[3][i] + qOffset[1];
+                ws[i] = 1.0;
+            }
+            sparseSolver.addMatches(String.valueOf(pTile), String.valueOf(qTile), new Matches(ps, qs, ws));
+        });
+    }
+
+    private void setupTileConfiguration(final int gridSize,
+                                        final List<double[]> startingOffsets) {
+
+        final List<Tile<AffineModel2D>> tiles = new ArrayList<>(startingOffsets.size());
+        for (final double[] offset : startingOffsets) {
+            final AffineModel2D model = new AffineModel2D();
+            model.set(1.0, 0.0, 0.0, 1.0, offset[0], offset[1]);
+            tiles.add(new Tile<>(model));
+        }
+
+        forEachNeighborPair(gridSize, (pTile, qTile) -> {
+            final double[][] localPoints = getOverlapLocalPoints(pTile, qTile, gridSize);
+            final List<PointMatch> pointMatches = new ArrayList<>(localPoints[0].length);
+            for (int i = 0; i < localPoints[0].length; i++) {
+                pointMatches.add(new PointMatch(new Point(new double[] { localPoints[0][i], localPoints[1][i] }),
+                                                new Point(new double[] { localPoints[2][i], localPoints[3][i] })));
+            }
+            tiles.get(pTile).connect(tiles.get(qTile), pointMatches);
+        });
+
+        tileConfiguration = new TileConfiguration();
+        tileConfiguration.addTiles(tiles);
+        tileConfiguration.fixTile(tiles.get(0));
+    }
+
+    private interface PairConsumer {
+        void accept(int pTile, int qTile);
+    }
+
+    private static void forEachNeighborPair(final int gridSize,
+                                            final PairConsumer consumer) {
+        for (int row = 0; row < gridSize; row++) {
+            for (int column = 0; column < gridSize; column++) {
+                final int tile = (row * gridSize) + column;
+                if (column + 1 < gridSize) {
+                    consumer.accept(tile, tile + 1);
+                }
+                if (row + 1 < gridSize) {
+                    consumer.accept(tile, tile + gridSize);
+                }
+            }
+        }
+    }
+
+    /**
+     * @return local {px, py, qx, qy} coordinates for a grid of points in the true overlap of the specified tiles.
+     */
+    private static double[][] getOverlapLocalPoints(final int pTile,
+                                                    final int qTile,
+                                                    final int gridSize) {
+
+        final double pX = (pTile % gridSize) * TILE_SPACING;
+        final double pY = (pTile / gridSize) * TILE_SPACING;
+        final double qX = (qTile % gridSize) * TILE_SPACING;
+        final double qY = (qTile / gridSize) * TILE_SPACING;
+
+        final double minX = Math.max(pX, qX);
+        final double minY = Math.max(pY, qY);
+        final double maxX = Math.min(pX, qX) + TILE_SIZE;
+        final double maxY = Math.min(pY, qY) + TILE_SIZE;
+
+        final int count = POINTS_PER_DIMENSION * POINTS_PER_DIMENSION;
+        final double[][] localPoints = new double[4][count];
+
+        int i = 0;
+        for (int row = 0; row < POINTS_PER_DIMENSION; row++) {
+            for (int column = 0; column < POINTS_PER_DIMENSION; column++) {
+                final double worldX = minX + ((maxX - minX) * (column + 0.5) / POINTS_PER_DIMENSION);
+                final double worldY = minY + ((maxY - minY) * (row + 0.5) / POINTS_PER_DIMENSION);
+                localPoints[0][i] = worldX - pX;
+                localPoints[1][i] = worldY - pY;
+                localPoints[2][i] = worldX - qX;
+                localPoints[3][i] = worldY - qY;
+                i++;
+            }
+        }
+
+        return localPoints;
+    }
+
+}
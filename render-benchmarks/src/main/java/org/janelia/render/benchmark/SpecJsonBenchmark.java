@@ -0,0 +1,53 @@
+package org.janelia.render.benchmark;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.janelia.alignment.RenderParameters;
+import org.janelia.alignment.spec.TileSpec;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures {@link TileSpec} JSON serialization and deserialization for a perf-test tile.
+ *
+ * @author Eric Trautman
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class SpecJsonBenchmark {
+
+    private TileSpec tileSpec;
+    private String tileSpecJson;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        final RenderParameters renderParameters = PerfTestData.loadRenderParameters("tif", 0);
+        tileSpec = renderParameters.getTileSpecs().get(0);
+        tileSpecJson = tileSpec.toJson();
+    }
+
+    @Benchmark
+    public String tileSpecToJson() {
+        return tileSpec.toJson();
+    }
+
+    @Benchmark
+    public TileSpec tileSpecFromJson() {
+        return TileSpec.fromJson(tileSpecJson);
+    }
+
+}
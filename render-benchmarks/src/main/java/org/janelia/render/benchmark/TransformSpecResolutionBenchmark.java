@@ -0,0 +1,108 @@
+package org.janelia.render.benchmark;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import mpicbg.models.CoordinateTransform;
+import mpicbg.models.CoordinateTransformList;
+import mpicbg.trakem2.transform.AffineModel2D;
+
+import org.janelia.alignment.RenderParameters;
+import org.janelia.alignment.spec.LeafTransformSpec;
+import org.janelia.alignment.spec.ListTransformSpec;
+import org.janelia.alignment.spec.ReferenceTransformSpec;
+import org.janelia.alignment.spec.ResolvedTileSpecCollection;
+import org.janelia.alignment.spec.TileSpec;
+import org.janelia.alignment.spec.TransformSpec;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures transform spec reference resolution for a layer of tiles that all reference
+ * the same shared (lens correction style) transform list and the subsequent
+ * creation of each tile's coordinate transform instances.
+ *
+ * Resolution modifies the collection, so an unresolved collection is parsed before each invocation.
+ *
+ * @author Eric Trautman
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class TransformSpecResolutionBenchmark {
+
+    @Param({"100", "1000"})
+    public int numberOfTiles;
+
+    private String unresolvedJson;
+    private ResolvedTileSpecCollection unresolvedCollection;
+    private ResolvedTileSpecCollection resolvedCollection;
+
+    @Setup(Level.Trial)
+    public void setupTrial() throws IOException {
+
+        final TileSpec templateTileSpec = PerfTestData.loadRenderParameters("tif", 0).getTileSpecs().get(0);
+        final String templateJson = templateTileSpec.toJson();
+
+        final String affineClassName = AffineModel2D.class.getName();
+        final ListTransformSpec sharedList = new ListTransformSpec("shared-lens", null);
+        sharedList.addSpec(new LeafTransformSpec(affineClassName, "1.0 0.0 0.0 1.0 0.0 0.0"));
+        sharedList.addSpec(new ReferenceTransformSpec("shared-leaf"));
+
+        final List<TransformSpec> transformSpecs = new ArrayList<>();
+        transformSpecs.add(new LeafTransformSpec("shared-leaf", null, affineClassName, "1.0 0.0 0.0 1.0 5.0 5.0"));
+        transformSpecs.add(sharedList);
+
+        final List<TileSpec> tileSpecs = new ArrayList<>(numberOfTiles);
+        for (int i = 0; i < numberOfTiles; i++) {
+            final TileSpec tileSpec = TileSpec.fromJson(templateJson);
+            tileSpec.setTileId("tile-" + i);
+            final ListTransformSpec tileTransforms = new ListTransformSpec();
+            tileTransforms.addSpec(new ReferenceTransformSpec(sharedList.getId()));
+            tileTransforms.addSpec(tileSpec.getTransforms());
+            tileSpec.setTransforms(tileTransforms);
+            tileSpecs.add(tileSpec);
+        }
+
+        unresolvedJson = new ResolvedTileSpecCollection(transformSpecs, tileSpecs).toJson();
+
+        resolvedCollection = ResolvedTileSpecCollection.fromJson(unresolvedJson);
+        resolvedCollection.resolveTileSpecs();
+    }
+
+    @Setup(Level.Invocation)
+    public void setupInvocation() {
+        unresolvedCollection = ResolvedTileSpecCollection.fromJson(unresolvedJson);
+    }
+
+    @Benchmark
+    public ResolvedTileSpecCollection resolveTileSpecs() {
+        unresolvedCollection.resolveTileSpecs();
+        return unresolvedCollection;
+    }
+
+    @Benchmark
+    public List<CoordinateTransformList<CoordinateTransform>> createTransformInstances() {
+        final List<CoordinateTransformList<CoordinateTransform>> instances = new ArrayList<>(numberOfTiles);
+        for (final TileSpec tileSpec : resolvedCollection.getTileSpecs()) {
+            instances.add(tileSpec.getTransforms().getNewInstanceAsList());
+        }
+        return instances;
+    }
+
+}
@@ -406,6 +406,7 @@ public class BoxGenerator implements Serializable {
         renderParameters.setSkipInterpolation(boxParameters.skipInterpolation);
         renderParameters.setBinaryMask(boxParameters.binaryMask);
         renderParameters.setBackgroundRGBColor(backgroundRGBColor);
+        renderParameters.setNumberOfThreads(boxParameters.numberOfRenderThreads);
 
         if (renderParameters.hasTileSpecs()) {
 
@@ -18,6 +18,7 @@ import mpicbg.imagefeatures.FloatArray2DSIFT;
 import org.janelia.alignment.RenderParameters;
 import org.janelia.alignment.match.CanvasFeatureExtractor;
 import org.janelia.alignment.match.CanvasFeatureList;
+import org.janelia.alignment.match.CanvasFeatureStorageFormat;
 import org.janelia.alignment.match.CanvasId;
 import org.janelia.alignment.match.CanvasRenderParametersUrlTemplate;
 import org.janelia.alignment.match.OrderedCanvasIdPair;
@@ -56,10 +57,16 @@ public class FeatureClient
 
         @Parameter(
                 names = "--rootFeatureDirectory",
-                description = "Root directory for saved feature lists (features saved to [root]/[canvas_group_id]/[canvas_id].features.json.gz)",
+                description = "Root directory for saved feature lists (features saved to [root]/[canvas_group_id]/[canvas_id].features.json.gz or [canvas_id].features.bin)",
                 required = true)
         public String rootFeatureDirectory;
 
+        @Parameter(
+                names = "--featureStorageFormat",
+                description = "Format for saved feature lists (BINARY formats are much smaller and faster to load than JSON)",
+                required = false)
+        public CanvasFeatureStorageFormat featureStorageFormat = CanvasFeatureStorageFormat.JSON;
+
         @Parameter(
                 names = "--pairJson",
                 description = "JSON file where tile pairs are stored (.json, .gz, or .zip)",
@@ -148,7 +155,8 @@ public class FeatureClient
                                         parameters.featureRender,
                                         parameters.featureRenderClip,
                                         parameters.featureExtraction,
-                                        new File(parameters.rootFeatureDirectory).getAbsoluteFile());
+                                        new File(parameters.rootFeatureDirectory).getAbsoluteFile(),
+                                        parameters.featureStorageFormat);
     }
 
     public static void generateFeatureListsForCanvases(final String renderParametersUrlTemplate,
@@ -156,7 +164,8 @@ public class FeatureClient
                                                        final FeatureRenderParameters featureRenderParameters,
                                                        final FeatureRenderClipParameters featureRenderClipParameters,
                                                        final FeatureExtractionParameters featureExtractionParameters,
-                                                       final File rootDirectory)
+                                                       final File rootDirectory,
+                                                       final CanvasFeatureStorageFormat storageFormat)
             throws IOException, URISyntaxException {
 
         final CanvasRenderParametersUrlTemplate urlTemplateForRun =
@@ -179,7 +188,8 @@ public class FeatureClient
                 new CanvasFeatureExtractor(siftParameters,
                                            featureExtractionParameters.minScale,
                                            featureExtractionParameters.maxScale,
-                                           featureRenderParameters.fillWithNoise);
+                                           featureRenderParameters.fillWithNoise,
+                                           featureExtractionParameters.numberOfThreads);
 
         final double renderScale = featureRenderParameters.renderScale;
 
@@ -203,7 +213,7 @@ public class FeatureClient
                                           urlTemplateForRun.getClipHeight(),
                                           featureList);
 
-            CanvasFeatureList.writeToStorage(rootDirectory, canvasFeatureList);
+            CanvasFeatureList.writeToStorage(rootDirectory, canvasFeatureList, storageFormat);
         }
 
 
@@ -0,0 +1,125 @@
+package org.janelia.render.client;
+
+import com.beust.jcommander.Parameter;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.janelia.alignment.match.CanvasFeatureList;
+import org.janelia.alignment.match.CanvasFeatureListBinaryFormat;
+import org.janelia.alignment.match.CanvasFeatureStorageFormat;
+import org.janelia.render.client.parameter.CommandLineParameters;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Java client for converting previously saved JSON feature lists
+ * (see {@link FeatureClient}) into another {@link CanvasFeatureStorageFormat}.
+ *
+ * @author Eric Trautman
+ */
+public class FeatureStorageConversionClient {
+
+    public static class Parameters extends CommandLineParameters {
+
+        @Parameter(
+                names = "--rootFeatureDirectory",
+                description = "Root directory for saved feature lists (all [root]/[canvas_group_id]/[canvas_id].features.json.gz files are converted)",
+                required = true)
+        public String rootFeatureDirectory;
+
+        @Parameter(
+                names = "--featureStorageFormat",
+                description = "Format for converted feature lists",
+                required = false)
+        public CanvasFeatureStorageFormat featureStorageFormat = CanvasFeatureStorageFormat.BINARY;
+
+        @Parameter(
+                names = "--removeJson",
+                description = "Remove each JSON feature list file after it has been successfully converted",
+                required = false,
+                arity = 0)
+        public boolean removeJson = false;
+    }
+
+    public static void main(final String[] args) {
+
+        final ClientRunner clientRunner = new ClientRunner(args) {
+            @Override
+            public void runClient(final String[] args) throws Exception {
+
+                final Parameters parameters = new Parameters();
+                parameters.parse(args);
+
+                LOG.info("runClient: entry, parameters={}", parameters);
+
+                final FeatureStorageConversionClient client = new FeatureStorageConversionClient(parameters);
+                client.convertAll();
+
+            }
+        };
+        clientRunner.run();
+
+    }
+
+    private final Parameters parameters;
+
+    public FeatureStorageConversionClient(final Parameters parameters) throws IllegalArgumentException {
+        if (! parameters.featureStorageFormat.isBinary()) {
+            throw new IllegalArgumentException("feature lists can only be converted to a binary format");
+        }
+        this.parameters = parameters;
+    }
+
+    public void convertAll() throws IOException {
+
+        final File rootDirectory = new File(parameters.rootFeatureDirectory).getAbsoluteFile();
+        final String jsonExtension = CanvasFeatureStorageFormat.JSON.getFileExtension();
+
+        final List<Path> jsonPaths;
+        try (final Stream<Path> pathStream = Files.walk(rootDirectory.toPath())) {
+            jsonPaths = pathStream
+                    .filter(path -> path.getFileName().toString().endsWith(jsonExtension))
+                    .sorted()
+                    .collect(Collectors.toList());
+        }
+
+        LOG.info("convertAll: found {} JSON feature lists in {}", jsonPaths.size(), rootDirectory);
+
+        long jsonBytes = 0;
+        long convertedBytes = 0;
+        for (final Path jsonPath : jsonPaths) {
+
+            final CanvasFeatureList canvasFeatureList = CanvasFeatureList.readFromFile(jsonPath);
+
+            // write converted file next to the original so that the loader finds it
+            final String jsonName = jsonPath.getFileName().toString();
+            final String convertedName = jsonName.substring(0, jsonName.length() - jsonExtension.length()) +
+                                         parameters.featureStorageFormat.getFileExtension();
+            final Path convertedPath = jsonPath.resolveSibling(convertedName);
+            CanvasFeatureListBinaryFormat.write(convertedPath,
+                                                canvasFeatureList,
+                                                parameters.featureStorageFormat.getCompression());
+
+            jsonBytes += Files.size(jsonPath);
+            convertedBytes += Files.size(convertedPath);
+
+            if (parameters.removeJson) {
+                Files.delete(jsonPath);
+            }
+
+            LOG.info("convertAll: converted {} features from {} to {}",
+                     canvasFeatureList.size(), jsonPath, convertedPath);
+        }
+
+        LOG.info("convertAll: converted {} feature lists, total size changed from {} to {} bytes",
+                 jsonPaths.size(), jsonBytes, convertedBytes);
+    }
+
+    private static final Logger LOG = LoggerFactory.getLogger(FeatureStorageConversionClient.class);
+}
@@ -5,6 +5,7 @@ import com.beust.jcommander.ParametersDelegate;
 
 import ij.ImagePlus;
 import ij.io.Opener;
+import ij.process.ByteProcessor;
 import ij.process.ImageProcessor;
 
 import java.awt.image.BufferedImage;
@@ -12,20 +13,30 @@ import java.awt.image.WritableRaster;
 import java.io.File;
 import java.io.IOException;
 import java.net.URI;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.AbstractMap;
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 import mpicbg.trakem2.util.Downsampler;
 
 import org.janelia.alignment.ImageAndMask;
 import org.janelia.alignment.Utils;
+import org.janelia.alignment.mipmap.MipmapPyramidFile;
 import org.janelia.alignment.spec.ChannelSpec;
 import org.janelia.alignment.spec.ResolvedTileSpecCollection;
 import org.janelia.alignment.spec.TileSpec;
 import org.janelia.alignment.spec.stack.MipmapPathBuilder;
 import org.janelia.alignment.spec.stack.StackMetaData;
 import org.janelia.alignment.spec.stack.StackVersion;
+import org.janelia.alignment.util.DistinctMaskCache;
 import org.janelia.render.client.parameter.CommandLineParameters;
 import org.janelia.render.client.parameter.MipmapParameters;
 import org.janelia.render.client.parameter.RenderWebServiceParameters;
@@ -34,7 +45,7 @@ import org.slf4j.LoggerFactory;
 
 /**
  * Java client for generating mipmap files into a {@link org.janelia.alignment.spec.stack.MipmapPathBuilder}
- * directory structure.
+ * directory structure (or into {@link MipmapPyramidFile pyramid files} when the pyr format is requested).
  *
  * @author Eric Trautman
  */
@@ -84,6 +95,8 @@ public class MipmapClient {
     private final String stack;
     private final MipmapPathBuilder mipmapPathBuilder;
     private final RenderDataClient renderDataClient;
+    private final Set<String> handledMaskUrls;
+    private final Map<String, String> maskDigestToGeneratedUrl;
 
     public MipmapClient(final RenderWebServiceParameters renderWebParameters,
                         final MipmapParameters parameters)
@@ -117,6 +130,8 @@ public class MipmapClient {
         }
 
         this.renderDataClient = renderWebParameters.getDataClient();
+        this.handledMaskUrls = new HashSet<>();
+        this.maskDigestToGeneratedUrl = new HashMap<>();
     }
 
     public MipmapPathBuilder getMipmapPathBuilder() {
@@ -208,15 +223,36 @@ public class MipmapClient {
                 throw new IllegalArgumentException("first entry mipmap image is missing from " + context);
             }
 
-            if (parameters.forceGeneration || isMissingMipmaps(channelSpec, firstEntry, sourceImageAndMask.hasMask())) {
+            // Masks are typically shared by many tiles, so only generate mipmaps once for each distinct mask.
+            // Masks are identified by content, so mipmaps for identical masks stored at different urls
+            // are linked to (or copied from) the mipmaps generated for the first url instead of being regenerated.
+            final String maskUrl = sourceImageAndMask.getMaskUrl();
+            ImageProcessor sourceMaskProcessor = null;
+            String maskDigest = null;
+            if (sourceImageAndMask.hasMask() && (! handledMaskUrls.contains(maskUrl))) {
+                sourceMaskProcessor = loadImageProcessor(maskUrl);
+                maskDigest = DistinctMaskCache.getDigest(sourceMaskProcessor);
+                final String generatedMaskUrl = maskDigestToGeneratedUrl.get(maskDigest);
+                if (generatedMaskUrl != null) {
+                    linkIdenticalMaskMipmaps(channelSpec, sourceImageAndMask.getImageUrl(), generatedMaskUrl, maskUrl);
+                    handledMaskUrls.add(maskUrl);
+                    sourceMaskProcessor = null;
+                }
+            }
+            final boolean isMaskNeeded = sourceMaskProcessor != null;
 
-                ImageProcessor sourceImageProcessor = loadImageProcessor(sourceImageAndMask.getImageUrl());
+            if (mipmapPathBuilder.usesPyramidFiles()) {
 
-                ImageProcessor sourceMaskProcessor = null;
-                if (sourceImageAndMask.hasMask()) {
-                    sourceMaskProcessor = loadImageProcessor(sourceImageAndMask.getMaskUrl());
+                generateMissingPyramidFile(channelSpec, sourceImageAndMask.getImageUrl(), null, false, context);
+                if (isMaskNeeded) {
+                    generateMissingPyramidFile(channelSpec, maskUrl, sourceMaskProcessor, true, context);
                 }
 
+            } else if (parameters.forceGeneration ||
+                       isMissingMipmaps(channelSpec, firstEntry, isMaskNeeded)) {
+
+                ImageProcessor sourceImageProcessor = loadImageProcessor(sourceImageAndMask.getImageUrl());
+
                 Map.Entry<Integer, ImageAndMask> derivedEntry;
                 ImageAndMask derivedImageAndMask;
                 File imageMipmapFile;
@@ -240,7 +276,7 @@ public class MipmapClient {
                                                                   channelSpec.getMaxIntensity(),
                                                                   isMipmapLevelInRange);
 
-                        if (sourceImageAndMask.hasMask()) {
+                        if (sourceMaskProcessor != null) {
                             if (isMipmapLevelInRange) {
                                 createMissingDirectories(derivedImageAndMask.getMaskUrl());
                             }
@@ -257,7 +293,183 @@ public class MipmapClient {
             } else {
                 LOG.info("generateMissingMipmapFiles: all mipmap files exist for ", context);
             }
+
+            if (isMaskNeeded) {
+                handledMaskUrls.add(maskUrl);
+                maskDigestToGeneratedUrl.put(maskDigest, maskUrl);
+            }
+        }
+    }
+
+    /**
+     * Generates all missing levels for the specified source image (or mask) and saves them in a single
+     * pyramid file along with any levels that were previously saved in the file.
+     * The source is loaded from its url when a previously loaded processor is not provided.
+     */
+    private void generateMissingPyramidFile(final ChannelSpec channelSpec,
+                                            final String sourceUrl,
+                                            final ImageProcessor loadedSourceProcessor,
+                                            final boolean isMask,
+                                            final String context)
+            throws IllegalArgumentException, IOException {
+
+        final String pyramidFileUrl = mipmapPathBuilder.getPyramidFileUrl(sourceUrl);
+        final File pyramidFile = getFileForUrlString(pyramidFileUrl);
+
+        if (parameters.forceGeneration || isMissingPyramidLevels(channelSpec, pyramidFile, isMask)) {
+
+            ImageProcessor sourceProcessor =
+                    loadedSourceProcessor == null ? loadImageProcessor(sourceUrl) : loadedSourceProcessor;
+
+            final MipmapPyramidFile.Writer writer = new MipmapPyramidFile.Writer();
+
+            for (int mipmapLevel = 1; mipmapLevel <= mipmapPathBuilder.getNumberOfLevels(); mipmapLevel++) {
+                sourceProcessor = Downsampler.downsampleImageProcessor(sourceProcessor, 1);
+                if ((mipmapLevel >= parameters.minLevel) && (! channelSpec.hasMipmap(mipmapLevel))) {
+                    writer.addLevel(mipmapLevel,
+                                    isMask,
+                                    getGrayProcessor(sourceProcessor,
+                                                     channelSpec.getMinIntensity(),
+                                                     channelSpec.getMaxIntensity()),
+                                    parameters.compressPyramidLevels);
+                }
+            }
+
+            // the writer replaces the whole file, so keep any previously generated levels that were not regenerated
+            if (pyramidFile.exists()) {
+                try {
+                    writer.addMissingLevels(new MipmapPyramidFile(pyramidFile));
+                } catch (final IOException e) {
+                    LOG.warn("generateMissingPyramidFile: failed to read existing levels from " +
+                             pyramidFile.getAbsolutePath() + ", they will be replaced", e);
+                }
+            }
+
+            createMissingDirectories(pyramidFileUrl);
+            writer.write(pyramidFile);
+
+        } else {
+            LOG.info("generateMissingPyramidFile: all {} mipmap levels exist for {}",
+                     (isMask ? "mask" : "image"), context);
+        }
+    }
+
+    /**
+     * Links (or copies when links are not supported) the mipmaps previously generated for an identical mask
+     * to the mipmap locations for the specified mask url so that the mask does not need to be down-sampled again.
+     */
+    private void linkIdenticalMaskMipmaps(final ChannelSpec channelSpec,
+                                          final String imageUrl,
+                                          final String generatedMaskUrl,
+                                          final String maskUrl)
+            throws IllegalArgumentException, IOException {
+
+        final List<String> generatedUrls = new ArrayList<>();
+        final List<String> targetUrls = new ArrayList<>();
+
+        if (mipmapPathBuilder.usesPyramidFiles()) {
+
+            final File targetPyramidFile = getFileForUrlString(mipmapPathBuilder.getPyramidFileUrl(maskUrl));
+            if (parameters.forceGeneration || isMissingPyramidLevels(channelSpec, targetPyramidFile, true)) {
+                generatedUrls.add(mipmapPathBuilder.getPyramidFileUrl(generatedMaskUrl));
+                targetUrls.add(mipmapPathBuilder.getPyramidFileUrl(maskUrl));
+            }
+
+        } else {
+
+            final Map.Entry<Integer, ImageAndMask> generatedEntry =
+                    new AbstractMap.SimpleEntry<>(0, new ImageAndMask(imageUrl, generatedMaskUrl));
+            final Map.Entry<Integer, ImageAndMask> targetEntry =
+                    new AbstractMap.SimpleEntry<>(0, new ImageAndMask(imageUrl, maskUrl));
+
+            String targetUrl;
+            for (int mipmapLevel = parameters.minLevel;
+                 mipmapLevel <= mipmapPathBuilder.getNumberOfLevels();
+                 mipmapLevel++) {
+                if (! channelSpec.hasMipmap(mipmapLevel)) {
+                    targetUrl = mipmapPathBuilder.deriveImageAndMask(mipmapLevel, targetEntry, false)
+                            .getValue().getMaskUrl();
+                    if (parameters.forceGeneration || (! getFileForUrlString(targetUrl).exists())) {
+                        generatedUrls.add(mipmapPathBuilder.deriveImageAndMask(mipmapLevel, generatedEntry, false)
+                                                  .getValue().getMaskUrl());
+                        targetUrls.add(targetUrl);
+                    }
+                }
+            }
+
+        }
+
+        for (int i = 0; i < targetUrls.size(); i++) {
+            final File generatedFile = getFileForUrlString(generatedUrls.get(i));
+            if (generatedFile.exists()) {
+                createMissingDirectories(targetUrls.get(i));
+                linkFile(generatedFile.toPath(), getFileForUrlString(targetUrls.get(i)).toPath());
+            }
         }
+
+        LOG.info("linkIdenticalMaskMipmaps: linked {} mipmap files for mask {} to identical mask {}",
+                 targetUrls.size(), maskUrl, generatedMaskUrl);
+    }
+
+    /**
+     * Atomically replaces the target file with a hard link to (or copy of) the source file.
+     */
+    private static void linkFile(final Path sourcePath,
+                                 final Path targetPath)
+            throws IOException {
+
+        final Path tempPath = Files.createTempFile(targetPath.getParent(),
+                                                   "." + targetPath.getFileName() + ".",
+                                                   ".tmp");
+        try {
+            Files.delete(tempPath);
+            try {
+                Files.createLink(tempPath, sourcePath);
+            } catch (final UnsupportedOperationException | IOException e) {
+                LOG.debug("linkFile: failed to link {}, copying it instead", sourcePath, e);
+                Files.copy(sourcePath, tempPath, StandardCopyOption.REPLACE_EXISTING);
+            }
+
+            try {
+                Files.move(tempPath, targetPath, StandardCopyOption.ATOMIC_MOVE);
+            } catch (final AtomicMoveNotSupportedException e) {
+                Files.move(tempPath, targetPath, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            Files.deleteIfExists(tempPath);
+        }
+    }
+
+    private boolean isMissingPyramidLevels(final ChannelSpec channelSpec,
+                                           final File pyramidFile,
+                                           final boolean isMask) {
+
+        boolean foundMissingLevel = false;
+
+        if (pyramidFile.exists()) {
+
+            try {
+                final MipmapPyramidFile existingPyramid = new MipmapPyramidFile(pyramidFile);
+                for (int mipmapLevel = parameters.minLevel;
+                     mipmapLevel <= mipmapPathBuilder.getNumberOfLevels();
+                     mipmapLevel++) {
+                    if ((! channelSpec.hasMipmap(mipmapLevel)) &&
+                        (! existingPyramid.hasLevel(mipmapLevel, isMask))) {
+                        foundMissingLevel = true;
+                        break;
+                    }
+                }
+            } catch (final IOException e) {
+                LOG.warn("isMissingPyramidLevels: failed to read " + pyramidFile.getAbsolutePath() +
+                         ", it will be regenerated", e);
+                foundMissingLevel = true;
+            }
+
+        } else {
+            foundMissingLevel = true;
+        }
+
+        return foundMissingLevel;
     }
 
     private boolean isMissingMipmaps(final ChannelSpec channelSpec,
@@ -342,15 +554,12 @@ public class MipmapClient {
                                                      final double minIntensity,
                                                      final double maxIntensity) {
 
-        downSampledProcessor.setMinAndMax(minIntensity, maxIntensity);
+        final ImageProcessor p = getGrayProcessor(downSampledProcessor, minIntensity, maxIntensity);
 
         final BufferedImage image;
-        final ImageProcessor p;
-        if (maxIntensity < 256) {
-            p = downSampledProcessor.convertToByteProcessor();
+        if (p instanceof ByteProcessor) {
             image = new BufferedImage(p.getWidth(), p.getHeight(), BufferedImage.TYPE_BYTE_GRAY);
         } else {
-            p = downSampledProcessor.convertToShortProcessor();
             image = new BufferedImage(p.getWidth(), p.getHeight(), BufferedImage.TYPE_USHORT_GRAY);
         }
 
@@ -360,6 +569,25 @@ public class MipmapClient {
         return image;
     }
 
+    /**
+     * @return an 8-bit (if maxIntensity is less than 256) or 16-bit version of the specified processor.
+     */
+    public static ImageProcessor getGrayProcessor(final ImageProcessor downSampledProcessor,
+                                                  final double minIntensity,
+                                                  final double maxIntensity) {
+
+        downSampledProcessor.setMinAndMax(minIntensity, maxIntensity);
+
+        final ImageProcessor p;
+        if (maxIntensity < 256) {
+            p = downSampledProcessor.convertToByteProcessor();
+        } else {
+            p = downSampledProcessor.convertToShortProcessor();
+        }
+
+        return p;
+    }
+
     public static ImageProcessor loadImageProcessor(final String url)
             throws IllegalArgumentException {
 
@@ -0,0 +1,247 @@
+package org.janelia.render.client;
+
+import com.beust.jcommander.Parameter;
+import com.beust.jcommander.ParametersDelegate;
+
+import ij.process.ImageProcessor;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URI;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.janelia.alignment.ImageAndMask;
+import org.janelia.alignment.Utils;
+import org.janelia.alignment.mipmap.MipmapPyramidFile;
+import org.janelia.alignment.spec.ChannelSpec;
+import org.janelia.alignment.spec.ResolvedTileSpecCollection;
+import org.janelia.alignment.spec.TileSpec;
+import org.janelia.alignment.spec.stack.MipmapPathBuilder;
+import org.janelia.alignment.spec.stack.StackMetaData;
+import org.janelia.render.client.parameter.CommandLineParameters;
+import org.janelia.render.client.parameter.RenderWebServiceParameters;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Java client for converting existing (one file per level) mipmaps for a stack into
+ * {@link MipmapPyramidFile pyramid files} (one file per source image).
+ *
+ * Existing mipmap files are not removed.
+ * Once all layers have been converted, the stack's mipmap path builder can be switched to the pyramid files.
+ * Tiles without pyramid files simply fall back to their source (level 0) images.
+ *
+ * @author Eric Trautman
+ */
+public class MipmapPyramidConversionClient {
+
+    public static class Parameters extends CommandLineParameters {
+
+        @ParametersDelegate
+        public RenderWebServiceParameters renderWeb = new RenderWebServiceParameters();
+
+        @Parameter(
+                names = "--stack",
+                description = "Stack name",
+                required = true)
+        public String stack;
+
+        @Parameter(
+                names = "--rootDirectory",
+                description = "Root directory for pyramid files (default is to use the stack's current mipmap root directory)",
+                required = false)
+        public String rootDirectory;
+
+        @Parameter(
+                names = "--compressPyramidLevels",
+                description = "Compress (deflate) levels saved in pyramid files",
+                required = false,
+                arity = 0)
+        public boolean compressPyramidLevels = false;
+
+        @Parameter(
+                names = "--updateStackMipmapPathBuilder",
+                description = "Switch the stack's mipmap path builder to use the pyramid files after conversion " +
+                              "(only specify this once all layers have been converted)",
+                required = false,
+                arity = 0)
+        public boolean updateStackMipmapPathBuilder = false;
+
+        @Parameter(
+                description = "Z values for layers to convert",
+                required = false)
+        public List<Double> zValues;
+
+    }
+
+    /**
+     * @param  args  see {@link Parameters} for command line argument details.
+     */
+    public static void main(final String[] args) {
+        final ClientRunner clientRunner = new ClientRunner(args) {
+            @Override
+            public void runClient(final String[] args) throws Exception {
+
+                final Parameters parameters = new Parameters();
+                parameters.parse(args);
+
+                LOG.info("runClient: entry, parameters={}", parameters);
+
+                final MipmapPyramidConversionClient client = new MipmapPyramidConversionClient(parameters);
+                client.convertStack();
+            }
+        };
+        clientRunner.run();
+    }
+
+    private final Parameters parameters;
+    private final RenderDataClient renderDataClient;
+    private final Set<String> convertedMaskUrls;
+
+    public MipmapPyramidConversionClient(final Parameters parameters) {
+        this.parameters = parameters;
+        this.renderDataClient = parameters.renderWeb.getDataClient();
+        this.convertedMaskUrls = new HashSet<>();
+    }
+
+    public void convertStack()
+            throws Exception {
+
+        final StackMetaData stackMetaData = renderDataClient.getStackMetaData(parameters.stack);
+        final MipmapPathBuilder sourceBuilder = stackMetaData.getCurrentMipmapPathBuilder();
+
+        if (sourceBuilder == null) {
+            throw new IllegalArgumentException("stack " + parameters.stack + " does not have a mipmap path builder");
+        } else if (sourceBuilder.usesPyramidFiles()) {
+            throw new IllegalArgumentException("stack " + parameters.stack + " mipmaps are already pyramid files");
+        }
+
+        final String rootDirectory =
+                parameters.rootDirectory == null ? sourceBuilder.getRootPath() : parameters.rootDirectory;
+        final MipmapPathBuilder pyramidBuilder = new MipmapPathBuilder(rootDirectory,
+                                                                       sourceBuilder.getNumberOfLevels(),
+                                                                       MipmapPyramidFile.EXTENSION);
+
+        if (parameters.zValues != null) {
+            for (final Double z : parameters.zValues) {
+                convertMipmapsForZ(z, sourceBuilder, pyramidBuilder);
+            }
+        }
+
+        if (parameters.updateStackMipmapPathBuilder) {
+            renderDataClient.setMipmapPathBuilder(parameters.stack, pyramidBuilder);
+        }
+    }
+
+    public int convertMipmapsForZ(final Double z,
+                                  final MipmapPathBuilder sourceBuilder,
+                                  final MipmapPathBuilder pyramidBuilder)
+            throws IOException {
+
+        LOG.info("convertMipmapsForZ: entry, z={}", z);
+
+        final ResolvedTileSpecCollection tiles = renderDataClient.getResolvedTiles(parameters.stack, z);
+
+        int pyramidCount = 0;
+        for (final TileSpec tileSpec : tiles.getTileSpecs()) {
+            pyramidCount += convertTileSpec(tileSpec, sourceBuilder, pyramidBuilder);
+        }
+
+        LOG.info("convertMipmapsForZ: exit, wrote {} pyramid files for {} tiles with z {}",
+                 pyramidCount, tiles.getTileCount(), z);
+
+        return pyramidCount;
+    }
+
+    /**
+     * Copies each channel's existing mipmap levels into pyramid files.
+     * Masks shared by many tiles are only converted once.
+     *
+     * @return number of pyramid files written.
+     */
+    public int convertTileSpec(final TileSpec tileSpec,
+                               final MipmapPathBuilder sourceBuilder,
+                               final MipmapPathBuilder pyramidBuilder)
+            throws IOException {
+
+        int pyramidCount = 0;
+
+        for (final ChannelSpec channelSpec : tileSpec.getAllChannels()) {
+
+            final Map.Entry<Integer, ImageAndMask> firstEntry = channelSpec.getFirstMipmapEntry();
+            if ((firstEntry == null) || (firstEntry.getValue() == null) || (! firstEntry.getValue().hasImage())) {
+                throw new IllegalArgumentException("first entry mipmap image is missing from tile '" +
+                                                   tileSpec.getTileId() + "'");
+            }
+
+            final ImageAndMask sourceImageAndMask = firstEntry.getValue();
+
+            pyramidCount += convertLevels(tileSpec, channelSpec, firstEntry, sourceImageAndMask.getImageUrl(), false,
+                                          sourceBuilder, pyramidBuilder);
+
+            final String maskUrl = sourceImageAndMask.getMaskUrl();
+            if (sourceImageAndMask.hasMask() && (! convertedMaskUrls.contains(maskUrl))) {
+                pyramidCount += convertLevels(tileSpec, channelSpec, firstEntry, maskUrl, true,
+                                              sourceBuilder, pyramidBuilder);
+                convertedMaskUrls.add(maskUrl);
+            }
+        }
+
+        return pyramidCount;
+    }
+
+    private int convertLevels(final TileSpec tileSpec,
+                              final ChannelSpec channelSpec,
+                              final Map.Entry<Integer, ImageAndMask> firstEntry,
+                              final String sourceUrl,
+                              final boolean isMask,
+                              final MipmapPathBuilder sourceBuilder,
+                              final MipmapPathBuilder pyramidBuilder)
+            throws IOException {
+
+        final MipmapPyramidFile.Writer writer = new MipmapPyramidFile.Writer();
+        int levelCount = 0;
+
+        for (int mipmapLevel = 1; mipmapLevel <= sourceBuilder.getNumberOfLevels(); mipmapLevel++) {
+
+            if (! channelSpec.hasMipmap(mipmapLevel)) {
+
+                final ImageAndMask levelImageAndMask =
+                        sourceBuilder.deriveImageAndMask(mipmapLevel, firstEntry, false).getValue();
+                final String levelUrl = isMask ? levelImageAndMask.getMaskUrl() : levelImageAndMask.getImageUrl();
+
+                if (getFileForUrlString(levelUrl).exists()) {
+                    final ImageProcessor imageProcessor = MipmapClient.loadImageProcessor(levelUrl);
+                    writer.addLevel(mipmapLevel, isMask, imageProcessor, parameters.compressPyramidLevels);
+                    levelCount++;
+                } else {
+                    LOG.warn("convertLevels: skipping missing level {} {} for tile '{}'",
+                             mipmapLevel, (isMask ? "mask" : "image"), tileSpec.getTileId());
+                }
+            }
+        }
+
+        int pyramidCount = 0;
+        if (levelCount > 0) {
+            final File pyramidFile = getFileForUrlString(pyramidBuilder.getPyramidFileUrl(sourceUrl));
+            final File pyramidDirectory = pyramidFile.getParentFile();
+            if ((! pyramidDirectory.exists()) && (! pyramidDirectory.mkdirs()) && (! pyramidDirectory.exists())) {
+                throw new IOException("failed to create directory " + pyramidDirectory.getAbsolutePath());
+            }
+            writer.write(pyramidFile);
+            pyramidCount++;
+        }
+
+        return pyramidCount;
+    }
+
+    private File getFileForUrlString(final String url) {
+        final URI uri = Utils.convertPathOrUriStringToUri(url);
+        return new File(uri);
+    }
+
+    private static final Logger LOG = LoggerFactory.getLogger(MipmapPyramidConversionClient.class);
+}
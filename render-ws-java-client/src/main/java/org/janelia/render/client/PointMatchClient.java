@@ -385,15 +385,7 @@ public class PointMatchClient {
 
         final List<CanvasFeatureMatcherThread> matcherList = new ArrayList<>(parameters.renderParameterUrls.size());
 
-        final CanvasFeatureMatcher matcher = new CanvasFeatureMatcher(parameters.match.matchRod,
-                                                                      parameters.match.matchModelType,
-                                                                      parameters.match.matchIterations,
-                                                                      parameters.match.matchMaxEpsilon,
-                                                                      parameters.match.matchMinInlierRatio,
-                                                                      parameters.match.matchMinNumInliers,
-                                                                      parameters.match.matchMaxTrust,
-                                                                      parameters.match.matchMaxNumInliers,
-                                                                      parameters.match.matchFilter);
+        final CanvasFeatureMatcher matcher = parameters.match.buildCanvasFeatureMatcher();
 
         String pUrlString;
         String qUrlString;
@@ -567,7 +559,8 @@ public class PointMatchClient {
             this.extractor = new CanvasFeatureExtractor(siftParameters,
                                                         clientParameters.featureExtraction.minScale,
                                                         clientParameters.featureExtraction.maxScale,
-                                                        clientParameters.fillWithNoise);
+                                                        clientParameters.fillWithNoise,
+                                                        clientParameters.featureExtraction.numberOfThreads);
         }
 
         @Override
@@ -97,16 +97,7 @@ public class RansacFilterClient {
 
     public void run() throws Exception {
 
-        final CanvasFeatureMatcher matcher =
-                new CanvasFeatureMatcher(parameters.matchDerivation.matchRod,
-                                         parameters.matchDerivation.matchModelType,
-                                         parameters.matchDerivation.matchIterations,
-                                         parameters.matchDerivation.matchMaxEpsilon,
-                                         parameters.matchDerivation.matchMinInlierRatio,
-                                         parameters.matchDerivation.matchMinNumInliers,
-                                         parameters.matchDerivation.matchMaxTrust,
-                                         parameters.matchDerivation.matchMaxNumInliers,
-                                         parameters.matchDerivation.matchFilter);
+        final CanvasFeatureMatcher matcher = parameters.matchDerivation.buildCanvasFeatureMatcher();
 
         final List<CanvasMatches> inlierCanvasMatchesLists = new ArrayList<>();
 
@@ -0,0 +1,377 @@
+package org.janelia.render.client;
+
+import com.beust.jcommander.Parameter;
+import com.beust.jcommander.ParametersDelegate;
+
+import java.awt.geom.AffineTransform;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import mpicbg.models.Affine2D;
+import mpicbg.models.CoordinateTransform;
+import mpicbg.models.CoordinateTransformList;
+import mpicbg.trakem2.transform.AffineModel2D;
+
+import org.janelia.alignment.match.CanvasMatches;
+import org.janelia.alignment.match.Matches;
+import org.janelia.alignment.solver.SparseTileSolver;
+import org.janelia.alignment.spec.LeafTransformSpec;
+import org.janelia.alignment.spec.ResolvedTileSpecCollection;
+import org.janelia.alignment.spec.TileSpec;
+import org.janelia.alignment.spec.TransformSpec;
+import org.janelia.alignment.spec.stack.StackMetaData;
+import org.janelia.alignment.spec.stack.StackVersion;
+import org.janelia.alignment.util.ProcessTimer;
+import org.janelia.render.client.parameter.CommandLineParameters;
+import org.janelia.render.client.parameter.RenderWebServiceParameters;
+import org.janelia.render.client.parameter.SparseSolverParameters;
+import org.janelia.render.client.parameter.ZRangeParameters;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Java client for aligning the tiles in a range of stack layers with the in-JVM {@link SparseTileSolver}
+ * (instead of the external EM_aligner tool).
+ *
+ * Point matches are pulled from a match collection, mapped into the source stack's world coordinates,
+ * and used to derive a correction for each tile.  Tiles with an affine last transform have that transform
+ * replaced with the corrected affine, other tiles simply get the correction appended.
+ *
+ * @author Eric Trautman
+ */
+public class SparseTileSolverClient {
+
+    public static class Parameters extends CommandLineParameters {
+
+        @ParametersDelegate
+        public RenderWebServiceParameters renderWeb = new RenderWebServiceParameters();
+
+        @Parameter(
+                names = "--stack",
+                description = "Name of stack with tiles to align",
+                required = true)
+        public String stack;
+
+        @ParametersDelegate
+        public ZRangeParameters layerRange = new ZRangeParameters();
+
+        @Parameter(
+                names = "--matchOwner",
+                description = "Owner of match collection (default is stack owner)",
+                required = false)
+        public String matchOwner;
+
+        @Parameter(
+                names = "--matchCollection",
+                description = "Name of match collection with matches for the stack tiles",
+                required = true)
+        public String matchCollection;
+
+        @Parameter(
+                names = "--zNeighborDistance",
+                description = "Only use matches between layers with z values less than or equal to this distance " +
+                              "from each other (default is to use all matches)",
+                required = false)
+        public Integer zNeighborDistance;
+
+        @Parameter(
+                names = "--fixedTileIds",
+                description = "Identifiers for tiles that should be kept in their current location",
+                required = false,
+                variableArity = true)
+        public List<String> fixedTileIds = new ArrayList<>();
+
+        @ParametersDelegate
+        public SparseSolverParameters solver = new SparseSolverParameters();
+
+        @Parameter(
+                names = "--targetProject",
+                description = "Name of target project that will contain aligned tiles (default is to reuse source project)",
+                required = false)
+        public String targetProject;
+
+        @Parameter(
+                names = "--targetStack",
+                description = "Name of target stack that will contain aligned tiles",
+                required = true)
+        public String targetStack;
+
+        @Parameter(
+                names = "--completeTargetStack",
+                description = "Complete the target stack after saving all aligned tiles",
+                required = false,
+                arity = 0)
+        public boolean completeTargetStack = false;
+
+        public String getMatchOwner() {
+            return matchOwner == null ? renderWeb.owner : matchOwner;
+        }
+
+        public String getTargetProject() {
+            return targetProject == null ? renderWeb.project : targetProject;
+        }
+    }
+
+    public static void main(final String[] args) {
+        final ClientRunner clientRunner = new ClientRunner(args) {
+            @Override
+            public void runClient(final String[] args) throws Exception {
+
+                final Parameters parameters = new Parameters();
+                parameters.parse(args);
+
+                LOG.info("runClient: entry, parameters={}", parameters);
+
+                final SparseTileSolverClient client = new SparseTileSolverClient(parameters);
+                client.run();
+            }
+        };
+        clientRunner.run();
+    }
+
+    private final Parameters parameters;
+    private final RenderDataClient sourceDataClient;
+    private final RenderDataClient matchDataClient;
+    private final RenderDataClient targetDataClient;
+
+    public SparseTileSolverClient(final Parameters parameters) {
+        this.parameters = parameters;
+        this.sourceDataClient = parameters.renderWeb.getDataClient();
+        this.matchDataClient = new RenderDataClient(parameters.renderWeb.baseDataUrl,
+                                                    parameters.getMatchOwner(),
+                                                    parameters.matchCollection);
+        this.targetDataClient = new RenderDataClient(parameters.renderWeb.baseDataUrl,
+                                                     parameters.renderWeb.owner,
+                                                     parameters.getTargetProject());
+    }
+
+    /**
+     * Loads tiles and matches, solves, and saves corrected tiles to the target stack.
+     *
+     * @return the solution.
+     *
+     * @throws IOException
+     *   if any data cannot be loaded or saved.
+     */
+    public SparseTileSolver.Solution run()
+            throws IOException {
+
+        final ProcessTimer timer = new ProcessTimer();
+
+        final List<Double> zValues = sourceDataClient.getStackZValues(parameters.stack,
+                                                                      parameters.layerRange.minZ,
+                                                                      parameters.layerRange.maxZ);
+
+        LOG.info("run: loading tiles for {} layers in {}", zValues.size(), parameters.stack);
+
+        final SparseTileSolver solver = parameters.solver.buildSolver();
+
+        final Map<Double, ResolvedTileSpecCollection> zToTiles = new LinkedHashMap<>(zValues.size() * 2);
+        final Map<String, TileSpec> tileIdToSpec = new HashMap<>();
+        final Set<String> sectionIds = new LinkedHashSet<>();
+
+        for (final Double z : zValues) {
+            final ResolvedTileSpecCollection resolvedTiles = sourceDataClient.getResolvedTiles(parameters.stack, z);
+            for (final TileSpec tileSpec : resolvedTiles.getTileSpecs()) {
+                solver.addTile(tileSpec.getTileId());
+                tileIdToSpec.put(tileSpec.getTileId(), tileSpec);
+                if (tileSpec.getSectionId() != null) {
+                    sectionIds.add(tileSpec.getSectionId());
+                }
+            }
+            zToTiles.put(z, resolvedTiles);
+        }
+
+        for (final String tileId : parameters.fixedTileIds) {
+            solver.fixTile(tileId);
+        }
+
+        if (parameters.fixedTileIds.isEmpty() && (parameters.solver.solverTranslationLambda <= 0.0)) {
+            // without a fixed tile (or translation regularization) the system is singular,
+            // so keep the tile nearest the center of the solve in its current location
+            final TileSpec centerTileSpec = getTileNearestCenter(tileIdToSpec.values());
+            if (centerTileSpec != null) {
+                solver.fixTile(centerTileSpec.getTileId());
+                LOG.info("run: no fixed tiles were specified, fixed center tile {}", centerTileSpec.getTileId());
+            }
+        }
+
+        LOG.info("run: loading matches for {} sections, elapsedTime={}s",
+                 sectionIds.size(), timer.getElapsedSeconds());
+
+        final Map<String, CoordinateTransformList<CoordinateTransform>> tileIdToTransformList = new HashMap<>();
+        int skippedPairCount = 0;
+
+        for (final String pGroupId : sectionIds) {
+            for (final CanvasMatches canvasMatches : matchDataClient.getMatchesWithPGroupId(pGroupId)) {
+
+                final TileSpec pTileSpec = tileIdToSpec.get(canvasMatches.getpId());
+                final TileSpec qTileSpec = tileIdToSpec.get(canvasMatches.getqId());
+
+                if ((pTileSpec != null) && (qTileSpec != null) && isWithinNeighborDistance(pTileSpec, qTileSpec)) {
+                    final Matches localMatches = canvasMatches.getMatches();
+                    final Matches worldMatches =
+                            new Matches(getWorldLocations(pTileSpec, localMatches.getPs(), tileIdToTransformList),
+                                        getWorldLocations(qTileSpec, localMatches.getQs(), tileIdToTransformList),
+                                        localMatches.getWs());
+                    solver.addMatches(pTileSpec.getTileId(), qTileSpec.getTileId(), worldMatches);
+                } else {
+                    skippedPairCount++;
+                }
+            }
+        }
+
+        LOG.info("run: loaded {} tile pairs and skipped {} pairs that are outside of the solve, elapsedTime={}s",
+                 solver.getTilePairCount(), skippedPairCount, timer.getElapsedSeconds());
+
+        final SparseTileSolver.Solution solution = solver.solve();
+
+        saveCorrectedTiles(zToTiles, solution);
+
+        LOG.info("run: exit, elapsedTime={}s", timer.getElapsedSeconds());
+
+        return solution;
+    }
+
+    private boolean isWithinNeighborDistance(final TileSpec pTileSpec,
+                                             final TileSpec qTileSpec) {
+        return (parameters.zNeighborDistance == null) ||
+               (Math.abs(pTileSpec.getZ() - qTileSpec.getZ()) <= parameters.zNeighborDistance);
+    }
+
+    /**
+     * @return the tile whose bounding box center is nearest to the center of all tile bounding boxes
+     *         (or the first tile if no bounding boxes are defined), null if there are no tiles.
+     */
+    static TileSpec getTileNearestCenter(final Collection<TileSpec> tileSpecs) {
+
+        double minX = Double.MAX_VALUE;
+        double minY = Double.MAX_VALUE;
+        double maxX = -Double.MAX_VALUE;
+        double maxY = -Double.MAX_VALUE;
+        for (final TileSpec tileSpec : tileSpecs) {
+            if (hasBounds(tileSpec)) {
+                minX = Math.min(minX, tileSpec.getMinX());
+                minY = Math.min(minY, tileSpec.getMinY());
+                maxX = Math.max(maxX, tileSpec.getMaxX());
+                maxY = Math.max(maxY, tileSpec.getMaxY());
+            }
+        }
+
+        final double centerX = (minX + maxX) / 2.0;
+        final double centerY = (minY + maxY) / 2.0;
+
+        TileSpec nearestTileSpec = null;
+        double nearestDistance = Double.MAX_VALUE;
+        for (final TileSpec tileSpec : tileSpecs) {
+            if (nearestTileSpec == null) {
+                nearestTileSpec = tileSpec;
+            }
+            if (hasBounds(tileSpec)) {
+                final double dx = ((tileSpec.getMinX() + tileSpec.getMaxX()) / 2.0) - centerX;
+                final double dy = ((tileSpec.getMinY() + tileSpec.getMaxY()) / 2.0) - centerY;
+                final double distance = (dx * dx) + (dy * dy);
+                if (distance < nearestDistance) {
+                    nearestTileSpec = tileSpec;
+                    nearestDistance = distance;
+                }
+            }
+        }
+
+        return nearestTileSpec;
+    }
+
+    private static boolean hasBounds(final TileSpec tileSpec) {
+        return (tileSpec.getMinX() != null) && (tileSpec.getMinY() != null) &&
+               (tileSpec.getMaxX() != null) && (tileSpec.getMaxY() != null);
+    }
+
+    static double[][] getWorldLocations(final TileSpec tileSpec,
+                                        final double[][] localLocations,
+                                        final Map<String, CoordinateTransformList<CoordinateTransform>> tileIdToTransformList) {
+
+        CoordinateTransformList<CoordinateTransform> transformList = tileIdToTransformList.get(tileSpec.getTileId());
+        if (transformList == null) {
+            transformList = tileSpec.getTransformList();
+            tileIdToTransformList.put(tileSpec.getTileId(), transformList);
+        }
+
+        final int count = localLocations[0].length;
+        final double[][] worldLocations = new double[2][count];
+        final double[] location = new double[2];
+        for (int i = 0; i < count; i++) {
+            location[0] = localLocations[0][i];
+            location[1] = localLocations[1][i];
+            transformList.applyInPlace(location);
+            worldLocations[0][i] = location[0];
+            worldLocations[1][i] = location[1];
+        }
+
+        return worldLocations;
+    }
+
+    private void saveCorrectedTiles(final Map<Double, ResolvedTileSpecCollection> zToTiles,
+                                    final SparseTileSolver.Solution solution)
+            throws IOException {
+
+        final StackMetaData sourceStackMetaData = sourceDataClient.getStackMetaData(parameters.stack);
+        targetDataClient.setupDerivedStack(sourceStackMetaData, parameters.targetStack);
+
+        for (final Double z : zToTiles.keySet()) {
+
+            final ResolvedTileSpecCollection resolvedTiles = zToTiles.get(z);
+
+            for (final TileSpec tileSpec : resolvedTiles.getTileSpecs()) {
+                final AffineTransform correction = solution.getCorrection(tileSpec.getTileId());
+                if ((correction != null) && (! correction.isIdentity())) {
+                    addCorrection(resolvedTiles, tileSpec, correction);
+                }
+            }
+
+            targetDataClient.saveResolvedTiles(resolvedTiles, parameters.targetStack, z);
+        }
+
+        // persist the solution quality with the target stack so that it can be compared with other solutions
+        final StackVersion targetVersion = targetDataClient.getStackMetaData(parameters.targetStack).getCurrentVersion();
+        targetDataClient.saveStackVersion(
+                parameters.targetStack,
+                targetVersion.getNextVersionWithAlignmentQuality(solution.getAlignmentQuality()));
+
+        if (parameters.completeTargetStack) {
+            targetDataClient.setStackState(parameters.targetStack, StackMetaData.StackState.COMPLETE);
+        }
+    }
+
+    static void addCorrection(final ResolvedTileSpecCollection resolvedTiles,
+                              final TileSpec tileSpec,
+                              final AffineTransform correction) {
+
+        final AffineTransform correctedTransform = new AffineTransform(correction);
+
+        boolean replaceLast = false;
+        final TransformSpec lastTransformSpec = tileSpec.getLastTransform();
+        if (lastTransformSpec != null) {
+            final CoordinateTransform lastTransform = lastTransformSpec.getNewInstance();
+            if (lastTransform instanceof Affine2D) {
+                correctedTransform.concatenate(((Affine2D<?>) lastTransform).createAffine());
+                replaceLast = true;
+            }
+        }
+
+        final AffineModel2D model = new AffineModel2D();
+        model.set(correctedTransform);
+
+        resolvedTiles.addTransformSpecToTile(tileSpec.getTileId(),
+                                             new LeafTransformSpec(model.getClass().getName(), model.toDataString()),
+                                             replaceLast);
+    }
+
+    private static final Logger LOG = LoggerFactory.getLogger(SparseTileSolverClient.class);
+}
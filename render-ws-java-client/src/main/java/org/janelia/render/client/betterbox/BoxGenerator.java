@@ -12,7 +12,9 @@ import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Date;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
 import mpicbg.trakem2.transform.AffineModel2D;
 
@@ -212,6 +214,20 @@ public class BoxGenerator
         final Progress progress = new Progress(z, level, boxList.size(), 300);
         final List<BoxData> renderedBoxList = new ArrayList<>(boxList.size());
 
+        // Sibling boxes are ordered together, so level 0 boxes alternate between two rows.
+        // Keep parameters for the two most recently used rows so that each row is only retrieved once.
+        final Map<Integer, BulkBoxRenderParameters> rowParametersCache;
+        if ((level == 0) && isBulkRenderParametersEnabled()) {
+            rowParametersCache = new LinkedHashMap<Integer, BulkBoxRenderParameters>(4, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(final Map.Entry<Integer, BulkBoxRenderParameters> eldest) {
+                    return size() > 2;
+                }
+            };
+        } else {
+            rowParametersCache = null;
+        }
+
         int renderedLevelBoxCount = 0;
         RenderedBoxParent cachedParent = null;
         BoxData siblingParentBox = null;
@@ -242,7 +258,7 @@ public class BoxGenerator
             }
 
             if (! skipRendering) {
-                renderBox(boxData, imageProcessorCache, cachedParent);
+                renderBox(boxData, imageProcessorCache, cachedParent, rowParametersCache);
                 renderedLevelBoxCount++;
             }
             renderedBoxList.add(boxData);
@@ -378,9 +394,48 @@ public class BoxGenerator
         LOG.info("renderOverview: exit, z={}", z);
     }
 
+    private boolean isBulkRenderParametersEnabled() {
+        return boxParameters.bulkRenderParameters && (stackBounds != null) && (stackBounds.getMaxX() != null);
+    }
+
+    /**
+     * @return render parameters for the specified level 0 box sliced from its row's bulk parameters
+     *         (retrieving the row's parameters if they have not already been cached).
+     */
+    private RenderParameters getBulkBoxParameters(final BoxData boxData,
+                                                  final Map<Integer, BulkBoxRenderParameters> rowParametersCache) {
+
+        final int row = boxData.getRow();
+
+        BulkBoxRenderParameters rowParameters = rowParametersCache.get(row);
+
+        if (rowParameters == null) {
+
+            final int rowY = row * boxHeight;
+            final int rowWidth = Math.max(boxWidth, (int) Math.ceil(stackBounds.getMaxX()));
+
+            String rowParametersUrl = webServiceUrls.getStackUrlString(stack) +
+                                      "/z/" + boxData.getZ() + "/box/0," + rowY + ',' +
+                                      rowWidth + ',' + boxHeight + ",1.0/bulk-render-parameters";
+            rowParametersUrl = RenderWebServiceUrls.addParameter("filterListName",
+                                                                 boxParameters.filterListName,
+                                                                 rowParametersUrl);
+
+            LOG.info("getBulkBoxParameters: loading {}", rowParametersUrl);
+
+            rowParameters = new BulkBoxRenderParameters(RenderParameters.loadFromUrl(rowParametersUrl));
+            rowParametersCache.put(row, rowParameters);
+
+            LOG.info("getBulkBoxParameters: loaded {} tile specs for row {}", rowParameters.getNumberOfTileSpecs(), row);
+        }
+
+        return rowParameters.getBoxParameters(boxData.getColumn() * boxWidth, row * boxHeight, boxWidth, boxHeight);
+    }
+
     private void renderBox(final BoxData boxData,
                            final ImageProcessorCache imageProcessorCache,
-                           final RenderedBoxParent cachedParent)
+                           final RenderedBoxParent cachedParent,
+                           final Map<Integer, BulkBoxRenderParameters> rowParametersCache)
             throws IOException {
 
         final File boxFile = boxData.getAbsoluteLevelFile(baseBoxPath, boxPathSuffix);
@@ -391,19 +446,31 @@ public class BoxGenerator
 
             if (boxData.getLevel() == 0) {
 
-                String boxParametersUrl = webServiceUrls.getStackUrlString(stack) +
-                                          boxData.getServicePath(boxWidth, boxHeight) +
-                                          "/render-parameters";
-                boxParametersUrl = RenderWebServiceUrls.addParameter("filterListName",
-                                                                     boxParameters.filterListName,
-                                                                     boxParametersUrl);
+                final RenderParameters renderParameters;
+
+                if (rowParametersCache == null) {
 
-                LOG.info("renderBoxFile: loading {}", boxParametersUrl);
+                    String boxParametersUrl = webServiceUrls.getStackUrlString(stack) +
+                                              boxData.getServicePath(boxWidth, boxHeight) +
+                                              "/render-parameters";
+                    boxParametersUrl = RenderWebServiceUrls.addParameter("filterListName",
+                                                                         boxParameters.filterListName,
+                                                                         boxParametersUrl);
+
+                    LOG.info("renderBoxFile: loading {}", boxParametersUrl);
+
+                    renderParameters = RenderParameters.loadFromUrl(boxParametersUrl);
+
+                } else {
+
+                    renderParameters = getBulkBoxParameters(boxData, rowParametersCache);
+
+                }
 
-                final RenderParameters renderParameters = RenderParameters.loadFromUrl(boxParametersUrl);
                 renderParameters.setSkipInterpolation(boxParameters.skipInterpolation);
                 renderParameters.setBinaryMask(boxParameters.binaryMask);
                 renderParameters.setBackgroundRGBColor(backgroundRGBColor);
+                renderParameters.setNumberOfThreads(boxParameters.numberOfRenderThreads);
 
                 if (renderParameters.hasTileSpecs()) {
 
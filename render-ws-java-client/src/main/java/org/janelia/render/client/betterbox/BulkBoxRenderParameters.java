@@ -0,0 +1,84 @@
+package org.janelia.render.client.betterbox;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.janelia.alignment.RenderParameters;
+import org.janelia.alignment.spec.TileBounds;
+import org.janelia.alignment.spec.TileBoundsRTree;
+import org.janelia.alignment.spec.TileSpec;
+
+/**
+ * Render parameters for a large region (typically a row of level 0 boxes) that can be
+ * sliced locally into parameters for each box within the region.
+ * Tile specs for the region are retrieved (and resolved) once and then shared by all of the region's boxes.
+ *
+ * @author Eric Trautman
+ */
+public class BulkBoxRenderParameters {
+
+    private final RenderParameters regionParameters;
+    private final Map<String, TileSpec> tileIdToSpecMap;
+    private final TileBoundsRTree tileBoundsRTree;
+
+    /**
+     * @param  regionParameters  render parameters for all tiles within the region.
+     */
+    public BulkBoxRenderParameters(final RenderParameters regionParameters) {
+
+        this.regionParameters = regionParameters;
+
+        final List<TileSpec> tileSpecs = regionParameters.getTileSpecs();
+        this.tileIdToSpecMap = new HashMap<>(tileSpecs.size() * 2);
+
+        final List<TileBounds> tileBoundsList = new ArrayList<>(tileSpecs.size());
+        Double z = null;
+        for (final TileSpec tileSpec : tileSpecs) {
+            tileIdToSpecMap.put(tileSpec.getTileId(), tileSpec);
+            tileBoundsList.add(new TileBounds(tileSpec.getTileId(),
+                                              tileSpec.getSectionId(),
+                                              tileSpec.getZ(),
+                                              tileSpec.getMinX(),
+                                              tileSpec.getMinY(),
+                                              tileSpec.getMaxX(),
+                                              tileSpec.getMaxY()));
+            z = tileSpec.getZ();
+        }
+
+        this.tileBoundsRTree = new TileBoundsRTree(z, tileBoundsList);
+    }
+
+    /**
+     * @return number of tiles within this region.
+     */
+    public int getNumberOfTileSpecs() {
+        return tileIdToSpecMap.size();
+    }
+
+    /**
+     * @return render parameters for the tiles that intersect the specified box.
+     *         Tiles are ordered by tileId (like the box render-parameters service API)
+     *         to ensure consistent coordinate mapping.
+     */
+    public RenderParameters getBoxParameters(final double x,
+                                             final double y,
+                                             final int width,
+                                             final int height) {
+
+        // tiles that touch the box edges are included, like the box render-parameters service API
+        final List<TileBounds> intersectingTiles = tileBoundsRTree.findTilesIntersectingBox(x,
+                                                                                            y,
+                                                                                            x + width,
+                                                                                            y + height);
+
+        final List<TileSpec> boxTileSpecs = new ArrayList<>(intersectingTiles.size());
+        for (final TileBounds tileBounds : intersectingTiles) {
+            boxTileSpecs.add(tileIdToSpecMap.get(tileBounds.getTileId()));
+        }
+
+        return regionParameters.copyForRegion(x, y, width, height, boxTileSpecs);
+    }
+
+}
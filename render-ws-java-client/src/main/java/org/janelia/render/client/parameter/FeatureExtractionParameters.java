@@ -36,4 +36,11 @@ public class FeatureExtractionParameters
             required = false)
     public Integer steps = 3;
 
+    @Parameter(
+            names = "--SIFTnumberOfThreads",
+            description = "Number of threads to use for extracting features from a single canvas " +
+                          "(large canvases are split into bands that are processed concurrently)",
+            required = false)
+    public Integer numberOfThreads = 1;
+
 }
@@ -5,7 +5,11 @@ import com.beust.jcommander.Parameter;
 import java.io.Serializable;
 
 import org.janelia.alignment.match.CanvasFeatureMatcher;
+import org.janelia.alignment.match.DescriptorMatcher;
+import org.janelia.alignment.match.DescriptorMatcherType;
+import org.janelia.alignment.match.KdForestDescriptorMatcher;
 import org.janelia.alignment.match.ModelType;
+import org.janelia.alignment.match.ParallelRansac;
 
 /**
  * Parameters for point match derivation.
@@ -68,4 +72,74 @@ public class MatchDerivationParameters implements Serializable {
             required = false)
     public CanvasFeatureMatcher.FilterType matchFilter = CanvasFeatureMatcher.FilterType.SINGLE_SET;
 
+    @Parameter(
+            names = "--matchDescriptorMatcher",
+            description = "Algorithm for finding candidate matches from feature descriptors " +
+                          "(BRUTE_FORCE produces the same candidates as MPICBG, KD_FOREST is approximate but much faster)",
+            required = false)
+    public DescriptorMatcherType matchDescriptorMatcher = DescriptorMatcherType.MPICBG;
+
+    @Parameter(
+            names = "--matchDescriptorThreads",
+            description = "Number of threads to use for BRUTE_FORCE and KD_FOREST descriptor matching of each canvas pair",
+            required = false)
+    public Integer matchDescriptorThreads = 1;
+
+    @Parameter(
+            names = "--matchKdTrees",
+            description = "Number of randomized trees for KD_FOREST descriptor matching",
+            required = false)
+    public Integer matchKdTrees = KdForestDescriptorMatcher.DEFAULT_NUMBER_OF_TREES;
+
+    @Parameter(
+            names = "--matchKdMaxChecks",
+            description = "Maximum number of descriptor comparisons per feature for KD_FOREST descriptor matching " +
+                          "(higher values find more of the exact candidates but take longer)",
+            required = false)
+    public Integer matchKdMaxChecks = KdForestDescriptorMatcher.DEFAULT_MAX_CHECKS;
+
+    @Parameter(
+            names = "--matchFilterThreads",
+            description = "Number of threads to use for RANSAC match filtering of each canvas pair",
+            required = false)
+    public Integer matchFilterThreads = 1;
+
+    @Parameter(
+            names = "--matchRansacConfidence",
+            description = "If specified, stop RANSAC match filtering once enough iterations have been evaluated " +
+                          "to find the best model with this probability (e.g. 0.99).  " +
+                          "The --matchIterations value remains the upper bound.",
+            required = false)
+    public Double matchRansacConfidence;
+
+    public DescriptorMatcher buildDescriptorMatcher() {
+        return matchDescriptorMatcher.buildInstance(matchDescriptorThreads, matchKdTrees, matchKdMaxChecks);
+    }
+
+    /**
+     * @return RANSAC engine for match filtering or null if the original mpicbg filter should be used.
+     */
+    public ParallelRansac buildParallelRansac() {
+        ParallelRansac parallelRansac = null;
+        if ((matchRansacConfidence != null) || ((matchFilterThreads != null) && (matchFilterThreads > 1))) {
+            final int numberOfThreads = matchFilterThreads == null ? 1 : matchFilterThreads;
+            parallelRansac = new ParallelRansac(numberOfThreads, matchRansacConfidence);
+        }
+        return parallelRansac;
+    }
+
+    public CanvasFeatureMatcher buildCanvasFeatureMatcher() {
+        return new CanvasFeatureMatcher(matchRod,
+                                        matchModelType,
+                                        matchIterations,
+                                        matchMaxEpsilon,
+                                        matchMinInlierRatio,
+                                        matchMinNumInliers,
+                                        matchMaxTrust,
+                                        matchMaxNumInliers,
+                                        matchFilter,
+                                        buildDescriptorMatcher(),
+                                        buildParallelRansac());
+    }
+
 }
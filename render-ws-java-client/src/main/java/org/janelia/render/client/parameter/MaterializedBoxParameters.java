@@ -81,6 +81,20 @@ public class MaterializedBoxParameters implements Serializable {
             arity = 0)
     public boolean binaryMask = false;
 
+    @Parameter(
+            names = "--numberOfRenderThreads",
+            description = "Maximum number of shared pool threads to use for mapping the pixels of each tile",
+            required = false)
+    public int numberOfRenderThreads = 1;
+
+    @Parameter(
+            names = "--bulkRenderParameters",
+            description = "Retrieve level 0 render parameters for each row of boxes with one request " +
+                          "(instead of one request per box) and select the tiles for each box locally",
+            required = false,
+            arity = 0)
+    public boolean bulkRenderParameters = false;
+
     @Parameter(
             names = "--label",
             description = "Generate single color tile labels instead of actual tile images",
@@ -131,6 +145,8 @@ public class MaterializedBoxParameters implements Serializable {
         p.maxOverviewWidthAndHeight = this.maxOverviewWidthAndHeight;
         p.skipInterpolation = this.skipInterpolation;
         p.binaryMask = this.binaryMask;
+        p.numberOfRenderThreads = this.numberOfRenderThreads;
+        p.bulkRenderParameters = this.bulkRenderParameters;
         p.label = this.label;
         p.createIGrid = this.createIGrid;
         p.forceGeneration = this.forceGeneration;
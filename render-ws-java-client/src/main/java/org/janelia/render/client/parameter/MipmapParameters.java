@@ -42,10 +42,18 @@ public class MipmapParameters implements Serializable {
 
     @Parameter(
             names = "--format",
-            description = "Format for mipmaps (tiff, jpg, png)",
+            description = "Format for mipmaps (tiff, jpg, png, pyr).  " +
+                          "The pyr format stores all levels and masks for each source image in one pyramid file.",
             required = false)
     public String format = Utils.TIFF_FORMAT;
 
+    @Parameter(
+            names = "--compressPyramidLevels",
+            description = "Compress (deflate) levels saved in pyr format mipmap files",
+            required = false,
+            arity = 0)
+    public boolean compressPyramidLevels = false;
+
     @Parameter(
             names = "--forceGeneration",
             description = "Regenerate mipmaps even if they already exist",
@@ -0,0 +1,66 @@
+package org.janelia.render.client.parameter;
+
+import com.beust.jcommander.Parameter;
+
+import java.io.Serializable;
+
+import org.janelia.alignment.match.ModelType;
+import org.janelia.alignment.solver.SparseTileSolver;
+
+/**
+ * Parameters for the in-JVM sparse least squares tile solver.
+ *
+ * @author Eric Trautman
+ */
+public class SparseSolverParameters implements Serializable {
+
+    @Parameter(
+            names = "--solverModelType",
+            description = "Type of correction model to derive for each tile.  " +
+                          "RIGID corrections linearize rotation (without iterative refinement), " +
+                          "so they are only accurate for small rotations " +
+                          "(e.g. a 1 degree rotation leaves about 0.15 pixels of error 1000 pixels from a tile's center)",
+            required = false)
+    public ModelType solverModelType = ModelType.AFFINE;
+
+    @Parameter(
+            names = "--solverLambda",
+            description = "Relative weight for keeping non-translation parameters close to each tile's starting model",
+            required = false)
+    public Double solverLambda = 0.01;
+
+    @Parameter(
+            names = "--solverTranslationLambda",
+            description = "Relative weight for keeping translation parameters close to each tile's starting model " +
+                          "(at least one tile must be fixed when this is 0)",
+            required = false)
+    public Double solverTranslationLambda = 0.0;
+
+    @Parameter(
+            names = "--solverMaxIterations",
+            description = "Maximum number of conjugate gradient iterations",
+            required = false)
+    public Integer solverMaxIterations = 10000;
+
+    @Parameter(
+            names = "--solverTolerance",
+            description = "Stop iterating once the residual norm relative to the right hand side norm is less than this value",
+            required = false)
+    public Double solverTolerance = 1e-10;
+
+    @Parameter(
+            names = "--solverThreads",
+            description = "Number of threads to use for system assembly and solver iterations",
+            required = false)
+    public Integer solverThreads = 1;
+
+    public SparseTileSolver buildSolver() {
+        return new SparseTileSolver(solverModelType,
+                                    solverLambda,
+                                    solverTranslationLambda,
+                                    solverMaxIterations,
+                                    solverTolerance,
+                                    solverThreads);
+    }
+
+}
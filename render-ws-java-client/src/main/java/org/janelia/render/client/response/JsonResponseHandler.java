@@ -1,6 +1,7 @@
 package org.janelia.render.client.response;
 
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.Reader;
 
@@ -12,7 +13,7 @@ import org.apache.http.client.ResponseHandler;
 import org.janelia.alignment.json.JsonUtils;
 
 /**
- * Translates JSON response content stream into an object of the specified class.
+ * Translates JSON (or binary Smile JSON) response content stream into an object of the specified class.
  *
  * @author Eric Trautman
  */
@@ -56,16 +57,29 @@ public class JsonResponseHandler<T>
 
         if (contentTypeHeader == null) {
             throw new ClientProtocolException("content type header missing for\n\n  " + getRequestContext() + "\n");
-        } else if (! JSON_MIME_TYPE.equals(contentTypeHeader.getValue())) {
-            throw new ClientProtocolException("invalid mime type '" + contentTypeHeader.getValue() + "' for\n\n  " +
-                                              getRequestContext() + "\n\n(expected '" + JSON_MIME_TYPE + "')");
         }
 
-        final Reader reader = new InputStreamReader(entity.getContent());
-        if (helper != null) {
-            return helper.fromJson(reader);
+        final String contentType = contentTypeHeader.getValue();
+        final T result;
+        if (JSON_MIME_TYPE.equals(contentType)) {
+            final Reader reader = new InputStreamReader(entity.getContent());
+            if (helper != null) {
+                result = helper.fromJson(reader);
+            } else {
+                result = genericHelper.fromJson(reader);
+            }
+        } else if (JsonUtils.SMILE_MIME_TYPE.equals(contentType)) {
+            final InputStream inputStream = entity.getContent();
+            if (helper != null) {
+                result = helper.fromSmile(inputStream);
+            } else {
+                result = genericHelper.fromSmile(inputStream);
+            }
         } else {
-            return genericHelper.fromJson(reader);
+            throw new ClientProtocolException("invalid mime type '" + contentType + "' for\n\n  " +
+                                              getRequestContext() + "\n\n(expected '" + JSON_MIME_TYPE + "')");
         }
+
+        return result;
     }
 }
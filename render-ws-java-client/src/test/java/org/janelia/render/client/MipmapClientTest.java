@@ -20,13 +20,19 @@ import ij.process.ImageProcessor;
 
 import java.io.File;
 import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
 import java.text.SimpleDateFormat;
+import java.util.Arrays;
 import java.util.Date;
+import java.util.List;
 import java.util.Map;
 
 import org.janelia.alignment.ImageAndMask;
+import org.janelia.alignment.mipmap.MipmapPyramidFile;
 import org.janelia.alignment.spec.ChannelSpec;
 import org.janelia.alignment.spec.TileSpec;
+import org.janelia.alignment.spec.stack.MipmapPathBuilder;
 import org.janelia.alignment.util.FileUtil;
 import org.janelia.render.client.parameter.CommandLineParameters;
 import org.junit.After;
@@ -154,6 +160,148 @@ public class MipmapClientTest {
 
     }
 
+    @Test
+    public void testGenerateMissingPyramidFile() throws Exception {
+
+        final MipmapClient.Parameters parameters = new MipmapClient.Parameters();
+        parameters.mipmap.rootDirectory = mipmapRootDirectory.getAbsolutePath();
+        parameters.mipmap.maxLevel = 2;
+        parameters.mipmap.format = MipmapPyramidFile.EXTENSION;
+        parameters.mipmap.compressPyramidLevels = true;
+
+        final MipmapClient mipmapClient = new MipmapClient(parameters.renderWeb, parameters.mipmap);
+
+        final ImageAndMask sourceImageAndMask = new ImageAndMask("src/test/resources/col0060_row0140_cam0.tif",
+                                                                 "src/test/resources/mask.tif");
+        final TileSpec tileSpec = new TileSpec();
+        tileSpec.setTileId("test-pyramid-tile");
+        final ChannelSpec channelSpec = new ChannelSpec();
+        channelSpec.putMipmap(0, sourceImageAndMask);
+        tileSpec.addChannel(channelSpec);
+        tileSpec.setMipmapPathBuilder(mipmapClient.getMipmapPathBuilder());
+
+        mipmapClient.generateMissingMipmapFiles(tileSpec);
+
+        ImageProcessor imageProcessor = MipmapClient.loadImageProcessor(sourceImageAndMask.getImageUrl());
+
+        for (int level = 1; level < 3; level++) {
+            final int expectedWidth = imageProcessor.getWidth() / 2;
+            final int expectedHeight = imageProcessor.getHeight() / 2;
+
+            final Map.Entry<Integer, ImageAndMask> mipmapEntry = channelSpec.getFloorMipmapEntry(level);
+            Assert.assertEquals("derived entry should not have reverted to source",
+                                level, mipmapEntry.getKey().intValue());
+
+            final ImageAndMask imageAndMask = mipmapEntry.getValue();
+            String url = imageAndMask.getImageUrl();
+
+            imageProcessor = MipmapPyramidFile.readLevel(url);
+            Assert.assertEquals("invalid width for level " + level + " image " + url,
+                                expectedWidth, imageProcessor.getWidth());
+            Assert.assertEquals("invalid height for level " + level + " image " + url,
+                                expectedHeight, imageProcessor.getHeight());
+
+            url = imageAndMask.getMaskUrl();
+            final ImageProcessor maskProcessor = MipmapPyramidFile.readLevel(url);
+            Assert.assertEquals("invalid width for level " + level + " mask " + url,
+                                expectedWidth, maskProcessor.getWidth());
+        }
+
+        final File pyramidFile = MipmapPyramidFile.getFile(
+                mipmapClient.getMipmapPathBuilder().getPyramidFileUrl(sourceImageAndMask.getImageUrl()));
+        final long expectedLastModified = pyramidFile.lastModified();
+
+        mipmapClient.generateMissingMipmapFiles(tileSpec);
+
+        Assert.assertEquals("pyramid file " + pyramidFile.getAbsolutePath() + " should NOT have been regenerated",
+                            expectedLastModified, pyramidFile.lastModified());
+    }
+
+    @Test
+    public void testRegeneratePyramidLevelPreservesOtherLevels() throws Exception {
+
+        final MipmapClient.Parameters parameters = new MipmapClient.Parameters();
+        parameters.mipmap.rootDirectory = mipmapRootDirectory.getAbsolutePath();
+        parameters.mipmap.maxLevel = 3;
+        parameters.mipmap.format = MipmapPyramidFile.EXTENSION;
+
+        final ImageAndMask sourceImageAndMask = new ImageAndMask("src/test/resources/col0060_row0140_cam0.tif",
+                                                                 "src/test/resources/mask.tif");
+        final TileSpec tileSpec = new TileSpec();
+        tileSpec.setTileId("test-pyramid-tile");
+        final ChannelSpec channelSpec = new ChannelSpec();
+        channelSpec.putMipmap(0, sourceImageAndMask);
+        tileSpec.addChannel(channelSpec);
+
+        new MipmapClient(parameters.renderWeb, parameters.mipmap).generateMissingMipmapFiles(tileSpec);
+
+        // regenerate only level 2
+        parameters.mipmap.minLevel = 2;
+        parameters.mipmap.maxLevel = 2;
+        parameters.mipmap.forceGeneration = true;
+        final MipmapClient mipmapClient = new MipmapClient(parameters.renderWeb, parameters.mipmap);
+
+        final File pyramidFile = MipmapPyramidFile.getFile(
+                mipmapClient.getMipmapPathBuilder().getPyramidFileUrl(sourceImageAndMask.getImageUrl()));
+        final File maskPyramidFile = MipmapPyramidFile.getFile(
+                mipmapClient.getMipmapPathBuilder().getPyramidFileUrl(sourceImageAndMask.getMaskUrl()));
+        final long originalLength = pyramidFile.length();
+
+        mipmapClient.generateMissingMipmapFiles(tileSpec);
+
+        final List<Integer> expectedLevels = Arrays.asList(1, 2, 3);
+        Assert.assertEquals("image levels should be preserved after regenerating level 2",
+                            expectedLevels, new MipmapPyramidFile(pyramidFile).getLevels(false));
+        Assert.assertEquals("mask levels should be preserved after regenerating level 2",
+                            expectedLevels, new MipmapPyramidFile(maskPyramidFile).getLevels(true));
+        Assert.assertEquals("regenerated pyramid should have the same size",
+                            originalLength, pyramidFile.length());
+
+        final ImageProcessor levelOneProcessor = new MipmapPyramidFile(pyramidFile).getProcessor(1, false);
+        final ImageProcessor sourceProcessor = MipmapClient.loadImageProcessor(sourceImageAndMask.getImageUrl());
+        Assert.assertEquals("invalid width for preserved level 1 image",
+                            sourceProcessor.getWidth() / 2, levelOneProcessor.getWidth());
+    }
+
+    @Test
+    public void testIdenticalMasksAreOnlyGeneratedOnce() throws Exception {
+
+        final MipmapClient.Parameters parameters = new MipmapClient.Parameters();
+        parameters.mipmap.rootDirectory = mipmapRootDirectory.getAbsolutePath();
+        parameters.mipmap.maxLevel = 2;
+        parameters.mipmap.format = MipmapPyramidFile.EXTENSION;
+
+        final MipmapClient mipmapClient = new MipmapClient(parameters.renderWeb, parameters.mipmap);
+
+        // store an identical copy of the mask at a different location
+        final File maskCopyDirectory = new File(mipmapRootDirectory, "mask_copy");
+        FileUtil.ensureWritableDirectory(maskCopyDirectory);
+        final File maskCopyFile = new File(maskCopyDirectory, "mask_copy.tif");
+        Files.copy(Paths.get("src/test/resources/mask.tif"), maskCopyFile.toPath());
+
+        final String imageUrl = "src/test/resources/col0060_row0140_cam0.tif";
+        final String[] maskUrls = { "src/test/resources/mask.tif", maskCopyFile.getAbsolutePath() };
+        for (int i = 0; i < maskUrls.length; i++) {
+            final TileSpec tileSpec = new TileSpec();
+            tileSpec.setTileId("test-mask-tile-" + i);
+            final ChannelSpec channelSpec = new ChannelSpec();
+            channelSpec.putMipmap(0, new ImageAndMask(imageUrl, maskUrls[i]));
+            tileSpec.addChannel(channelSpec);
+            mipmapClient.generateMissingMipmapFiles(tileSpec);
+        }
+
+        final MipmapPathBuilder mipmapPathBuilder = mipmapClient.getMipmapPathBuilder();
+        final File maskPyramidFile = MipmapPyramidFile.getFile(mipmapPathBuilder.getPyramidFileUrl(maskUrls[0]));
+        final File maskCopyPyramidFile = MipmapPyramidFile.getFile(mipmapPathBuilder.getPyramidFileUrl(maskUrls[1]));
+
+        Assert.assertTrue("missing pyramid " + maskCopyPyramidFile.getAbsolutePath() + " for mask copy",
+                          maskCopyPyramidFile.exists());
+        Assert.assertTrue("pyramid for mask copy should be linked to pyramid for original mask",
+                          Files.isSameFile(maskPyramidFile.toPath(), maskCopyPyramidFile.toPath()));
+        Assert.assertEquals("invalid levels for mask copy pyramid",
+                            Arrays.asList(1, 2), new MipmapPyramidFile(maskCopyPyramidFile).getLevels(true));
+    }
+
     public static File createTestDirectory(final String baseName)
             throws IOException {
         final SimpleDateFormat sdf = new SimpleDateFormat("yyyyMMddHHmmssSSS");
@@ -0,0 +1,92 @@
+package org.janelia.render.client;
+
+import ij.process.ImageProcessor;
+
+import java.io.File;
+
+import org.janelia.alignment.ImageAndMask;
+import org.janelia.alignment.mipmap.MipmapPyramidFile;
+import org.janelia.alignment.spec.ChannelSpec;
+import org.janelia.alignment.spec.TileSpec;
+import org.janelia.alignment.spec.stack.MipmapPathBuilder;
+import org.janelia.alignment.util.FileUtil;
+import org.janelia.render.client.parameter.CommandLineParameters;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests the {@link MipmapPyramidConversionClient} class.
+ *
+ * @author Eric Trautman
+ */
+public class MipmapPyramidConversionClientTest {
+
+    private File mipmapRootDirectory;
+
+    @Before
+    public void setup() throws Exception {
+        mipmapRootDirectory = MipmapClientTest.createTestDirectory("test_mipmap_pyramid_conversion");
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        FileUtil.deleteRecursive(mipmapRootDirectory);
+    }
+
+    @Test
+    public void testParameterParsing() throws Exception {
+        CommandLineParameters.parseHelp(new MipmapPyramidConversionClient.Parameters());
+    }
+
+    @Test
+    public void testConvertTileSpec() throws Exception {
+
+        final MipmapClient.Parameters mipmapParameters = new MipmapClient.Parameters();
+        mipmapParameters.mipmap.rootDirectory = mipmapRootDirectory.getAbsolutePath();
+        mipmapParameters.mipmap.maxLevel = 2;
+
+        final MipmapClient mipmapClient = new MipmapClient(mipmapParameters.renderWeb, mipmapParameters.mipmap);
+        final MipmapPathBuilder sourceBuilder = mipmapClient.getMipmapPathBuilder();
+
+        final ImageAndMask sourceImageAndMask = new ImageAndMask("src/test/resources/col0060_row0140_cam0.tif",
+                                                                 "src/test/resources/mask.tif");
+        final TileSpec tileSpec = new TileSpec();
+        tileSpec.setTileId("test-conversion-tile");
+        final ChannelSpec channelSpec = new ChannelSpec();
+        channelSpec.putMipmap(0, sourceImageAndMask);
+        tileSpec.addChannel(channelSpec);
+        tileSpec.setMipmapPathBuilder(sourceBuilder);
+
+        mipmapClient.generateMissingMipmapFiles(tileSpec);
+
+        final ImageAndMask level2Files = channelSpec.getFloorMipmapEntry(2).getValue();
+        final ImageProcessor expectedImage = MipmapClient.loadImageProcessor(level2Files.getImageUrl());
+
+        final MipmapPyramidConversionClient.Parameters parameters = new MipmapPyramidConversionClient.Parameters();
+        final MipmapPyramidConversionClient client = new MipmapPyramidConversionClient(parameters);
+
+        final MipmapPathBuilder pyramidBuilder = new MipmapPathBuilder(sourceBuilder.getRootPath(),
+                                                                       sourceBuilder.getNumberOfLevels(),
+                                                                       MipmapPyramidFile.EXTENSION);
+
+        final int pyramidCount = client.convertTileSpec(tileSpec, sourceBuilder, pyramidBuilder);
+        Assert.assertEquals("invalid number of image and mask pyramid files written", 2, pyramidCount);
+
+        tileSpec.setMipmapPathBuilder(pyramidBuilder);
+
+        final ImageAndMask level2Pyramid = channelSpec.getFloorMipmapEntry(2).getValue();
+        final ImageProcessor convertedImage = MipmapPyramidFile.readLevel(level2Pyramid.getImageUrl());
+
+        Assert.assertEquals("invalid converted width", expectedImage.getWidth(), convertedImage.getWidth());
+        Assert.assertEquals("invalid converted height", expectedImage.getHeight(), convertedImage.getHeight());
+        for (int i = 0; i < expectedImage.getPixelCount(); i++) {
+            Assert.assertEquals("converted pixel " + i + " differs", expectedImage.get(i), convertedImage.get(i));
+        }
+
+        final ImageProcessor convertedMask = MipmapPyramidFile.readLevel(level2Pyramid.getMaskUrl());
+        Assert.assertEquals("invalid converted mask width", expectedImage.getWidth(), convertedMask.getWidth());
+    }
+
+}
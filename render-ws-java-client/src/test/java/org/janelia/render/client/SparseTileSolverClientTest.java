@@ -0,0 +1,151 @@
+package org.janelia.render.client;
+
+import java.awt.geom.AffineTransform;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import mpicbg.models.CoordinateTransform;
+import mpicbg.models.CoordinateTransformList;
+
+import org.janelia.alignment.spec.ResolvedTileSpecCollection;
+import org.janelia.alignment.spec.TileSpec;
+import org.janelia.render.client.parameter.CommandLineParameters;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Tests the {@link SparseTileSolverClient} class.
+ *
+ * @author Eric Trautman
+ */
+public class SparseTileSolverClientTest {
+
+    @Test
+    public void testParameterParsing() throws Exception {
+        CommandLineParameters.parseHelp(new SparseTileSolverClient.Parameters());
+    }
+
+    @Test
+    public void testGetWorldLocations() throws Exception {
+
+        final TileSpec tileSpec = buildTileSpec("tile-a", "1 0 0 1 10 20");
+        final double[][] localLocations = { { 0.0, 5.0, 99.0 }, { 0.0, 7.0, 99.0 } };
+        final Map<String, CoordinateTransformList<CoordinateTransform>> tileIdToTransformList = new HashMap<>();
+
+        final double[][] worldLocations =
+                SparseTileSolverClient.getWorldLocations(tileSpec, localLocations, tileIdToTransformList);
+
+        Assert.assertArrayEquals("invalid world x values", new double[] { 10.0, 15.0, 109.0 }, worldLocations[0], 0.0001);
+        Assert.assertArrayEquals("invalid world y values", new double[] { 20.0, 27.0, 119.0 }, worldLocations[1], 0.0001);
+        Assert.assertArrayEquals("local x values should not be changed",
+                                 new double[] { 0.0, 5.0, 99.0 }, localLocations[0], 0.0);
+
+        Assert.assertTrue("transform list should be cached for the tile",
+                          tileIdToTransformList.containsKey(tileSpec.getTileId()));
+
+        final CoordinateTransformList<CoordinateTransform> cachedList = tileIdToTransformList.get(tileSpec.getTileId());
+        SparseTileSolverClient.getWorldLocations(tileSpec, localLocations, tileIdToTransformList);
+        Assert.assertSame("cached transform list should be reused",
+                          cachedList, tileIdToTransformList.get(tileSpec.getTileId()));
+    }
+
+    @Test
+    public void testAddCorrectionReplacesLastAffine() throws Exception {
+
+        final TileSpec tileSpec = buildTileSpec("tile-a", "1 0 0 1 10 20");
+        final ResolvedTileSpecCollection resolvedTiles = buildResolvedTiles(tileSpec);
+
+        SparseTileSolverClient.addCorrection(resolvedTiles,
+                                             tileSpec,
+                                             AffineTransform.getTranslateInstance(5.0, -3.0));
+
+        final TileSpec correctedTileSpec = resolvedTiles.getTileSpec(tileSpec.getTileId());
+        Assert.assertEquals("affine last transform should have been replaced",
+                            1, correctedTileSpec.getTransforms().size());
+        assertWorldLocation(correctedTileSpec, 1.0, 2.0, 16.0, 19.0);
+    }
+
+    @Test
+    public void testAddCorrectionAppendsWithoutAffineLastTransform() throws Exception {
+
+        final TileSpec tileSpec = buildTileSpec("tile-b", null);
+        final ResolvedTileSpecCollection resolvedTiles = buildResolvedTiles(tileSpec);
+
+        SparseTileSolverClient.addCorrection(resolvedTiles,
+                                             tileSpec,
+                                             AffineTransform.getTranslateInstance(5.0, -3.0));
+
+        final TileSpec correctedTileSpec = resolvedTiles.getTileSpec(tileSpec.getTileId());
+        Assert.assertEquals("correction should have been appended",
+                            1, correctedTileSpec.getTransforms().size());
+        assertWorldLocation(correctedTileSpec, 1.0, 2.0, 6.0, -1.0);
+    }
+
+    @Test
+    public void testGetTileNearestCenter() throws Exception {
+
+        final List<TileSpec> tileSpecs = new ArrayList<>();
+        for (int column = 0; column < 3; column++) {
+            final TileSpec tileSpec = buildTileSpec("tile-" + column, "1 0 0 1 " + (column * 90) + " 0");
+            tileSpec.deriveBoundingBox(tileSpec.getMeshCellSize(), true);
+            tileSpecs.add(tileSpec);
+        }
+
+        Assert.assertEquals("invalid center tile selected",
+                            "tile-1", SparseTileSolverClient.getTileNearestCenter(tileSpecs).getTileId());
+
+        final List<TileSpec> tileSpecsWithoutBounds =
+                Arrays.asList(buildTileSpec("first", null), buildTileSpec("second", null));
+        Assert.assertEquals("first tile should be selected when bounds are not defined",
+                            "first", SparseTileSolverClient.getTileNearestCenter(tileSpecsWithoutBounds).getTileId());
+
+        Assert.assertNull("no tile should be selected from empty list",
+                          SparseTileSolverClient.getTileNearestCenter(Collections.emptyList()));
+    }
+
+    private static TileSpec buildTileSpec(final String tileId,
+                                          final String affineDataString) {
+
+        String transformsJson = "";
+        if (affineDataString != null) {
+            transformsJson =
+                    ",\n" +
+                    "  \"transforms\": {\n" +
+                    "    \"type\": \"list\",\n" +
+                    "    \"specList\": [\n" +
+                    "      {\n" +
+                    "        \"className\": \"mpicbg.trakem2.transform.AffineModel2D\",\n" +
+                    "        \"dataString\": \"" + affineDataString + "\"\n" +
+                    "      }\n" +
+                    "    ]\n" +
+                    "  }\n";
+        }
+
+        return TileSpec.fromJson("{\n" +
+                                 "  \"tileId\": \"" + tileId + "\",\n" +
+                                 "  \"z\": 1.0,\n" +
+                                 "  \"width\": 100,\n" +
+                                 "  \"height\": 100" +
+                                 transformsJson +
+                                 "}");
+    }
+
+    private static ResolvedTileSpecCollection buildResolvedTiles(final TileSpec tileSpec) {
+        return new ResolvedTileSpecCollection(new ArrayList<>(), Collections.singletonList(tileSpec));
+    }
+
+    private static void assertWorldLocation(final TileSpec tileSpec,
+                                            final double localX,
+                                            final double localY,
+                                            final double expectedWorldX,
+                                            final double expectedWorldY) {
+        final double[] world = tileSpec.getWorldCoordinates(localX, localY);
+        Assert.assertEquals("invalid world x for " + tileSpec.getTileId(), expectedWorldX, world[0], 0.0001);
+        Assert.assertEquals("invalid world y for " + tileSpec.getTileId(), expectedWorldY, world[1], 0.0001);
+    }
+
+}
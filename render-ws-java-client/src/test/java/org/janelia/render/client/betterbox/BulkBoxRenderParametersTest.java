@@ -0,0 +1,117 @@
+package org.janelia.render.client.betterbox;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.janelia.alignment.RenderParameters;
+import org.janelia.alignment.spec.TileSpec;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Tests the {@link BulkBoxRenderParameters} class.
+ *
+ * @author Eric Trautman
+ */
+public class BulkBoxRenderParametersTest {
+
+    @Test
+    public void testGetBoxParameters() throws Exception {
+
+        // two rows of three tiles that exactly fill the box grid (so adjacent tiles share edges)
+        final List<TileSpec> tileSpecs = new ArrayList<>();
+        for (int row = 0; row < 2; row++) {
+            for (int column = 0; column < 3; column++) {
+                final double minX = BASE + (column * BOX_SIZE);
+                final double minY = BASE + (row * BOX_SIZE);
+                tileSpecs.add(buildTileSpec("tile_" + row + "_" + column,
+                                            minX, minY, minX + BOX_SIZE, minY + BOX_SIZE));
+            }
+        }
+
+        // tile just past the row's last column, closer than float precision at these coordinates
+        tileSpecs.add(buildTileSpec("tile_past_last_column",
+                                    BASE + (3 * BOX_SIZE) + 0.03, BASE + BOX_SIZE,
+                                    BASE + (4 * BOX_SIZE), BASE + (2 * BOX_SIZE)));
+
+        // tile just below the row, closer than float precision at these coordinates
+        tileSpecs.add(buildTileSpec("tile_below_row",
+                                    BASE, BASE + (2 * BOX_SIZE) + 0.03,
+                                    BASE + BOX_SIZE, BASE + (3 * BOX_SIZE)));
+
+        final double rowY = BASE + BOX_SIZE;
+        final RenderParameters rowParameters =
+                new RenderParameters(null, BASE, rowY, 3 * BOX_SIZE, BOX_SIZE, 1.0);
+        rowParameters.addTileSpecs(tileSpecs);
+
+        final BulkBoxRenderParameters bulkParameters = new BulkBoxRenderParameters(rowParameters);
+
+        Assert.assertEquals("invalid number of tile specs", tileSpecs.size(), bulkParameters.getNumberOfTileSpecs());
+
+        // first column includes tiles touching the row's left and top edges
+        validateBoxTileIds("first column", bulkParameters, BASE, rowY,
+                           Arrays.asList("tile_0_0", "tile_0_1", "tile_1_0", "tile_1_1"));
+
+        validateBoxTileIds("middle column", bulkParameters, BASE + BOX_SIZE, rowY,
+                           Arrays.asList("tile_0_0", "tile_0_1", "tile_0_2", "tile_1_0", "tile_1_1", "tile_1_2"));
+
+        // last column includes tiles touching its right edge but not the tile just past it
+        validateBoxTileIds("last column", bulkParameters, BASE + (2 * BOX_SIZE), rowY,
+                           Arrays.asList("tile_0_1", "tile_0_2", "tile_1_1", "tile_1_2"));
+
+        // box past the row's last column only includes tiles touching its left edge
+        validateBoxTileIds("past last column", bulkParameters, BASE + (3 * BOX_SIZE), rowY,
+                           Arrays.asList("tile_0_2", "tile_1_2", "tile_past_last_column"));
+
+        validateBoxTileIds("outside row", bulkParameters, BASE + (10 * BOX_SIZE), rowY,
+                           Collections.emptyList());
+
+        final RenderParameters boxParameters = bulkParameters.getBoxParameters(BASE, rowY, BOX_SIZE, BOX_SIZE);
+        Assert.assertEquals("invalid box x", BASE, boxParameters.getX(), 0.0);
+        Assert.assertEquals("invalid box y", rowY, boxParameters.getY(), 0.0);
+        Assert.assertEquals("invalid box width", BOX_SIZE, boxParameters.getWidth());
+        Assert.assertEquals("invalid box height", BOX_SIZE, boxParameters.getHeight());
+        Assert.assertSame("box tile spec should be shared with row",
+                          tileSpecs.get(0), boxParameters.getTileSpecs().get(0));
+    }
+
+    private static void validateBoxTileIds(final String context,
+                                           final BulkBoxRenderParameters bulkParameters,
+                                           final double x,
+                                           final double y,
+                                           final List<String> expectedTileIds) {
+
+        final RenderParameters boxParameters = bulkParameters.getBoxParameters(x, y, BOX_SIZE, BOX_SIZE);
+
+        final List<String> tileIds = new ArrayList<>();
+        for (final TileSpec tileSpec : boxParameters.getTileSpecs()) {
+            tileIds.add(tileSpec.getTileId());
+        }
+
+        Assert.assertEquals("invalid tiles selected for " + context + " box", expectedTileIds, tileIds);
+    }
+
+    private static TileSpec buildTileSpec(final String tileId,
+                                          final double minX,
+                                          final double minY,
+                                          final double maxX,
+                                          final double maxY) {
+        return TileSpec.fromJson("{\n" +
+                                 "  \"tileId\": \"" + tileId + "\",\n" +
+                                 "  \"z\": 1.0,\n" +
+                                 "  \"minX\": " + minX + ",\n" +
+                                 "  \"minY\": " + minY + ",\n" +
+                                 "  \"maxX\": " + maxX + ",\n" +
+                                 "  \"maxY\": " + maxY + ",\n" +
+                                 "  \"width\": " + BOX_SIZE + ",\n" +
+                                 "  \"height\": " + BOX_SIZE + "\n" +
+                                 "}");
+    }
+
+    /** Large world offset so that tree (float) precision is coarser than the edge distances being tested. */
+    private static final double BASE = 1000000.0;
+
+    private static final int BOX_SIZE = 100;
+}
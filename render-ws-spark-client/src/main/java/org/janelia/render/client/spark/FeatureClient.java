@@ -21,6 +21,7 @@ import org.apache.spark.api.java.function.Function;
 import org.apache.spark.broadcast.Broadcast;
 import org.janelia.alignment.match.CanvasFeatureExtractor;
 import org.janelia.alignment.match.CanvasFeatureList;
+import org.janelia.alignment.match.CanvasFeatureStorageFormat;
 import org.janelia.alignment.match.CanvasId;
 import org.janelia.alignment.match.CanvasRenderParametersUrlTemplate;
 import org.janelia.alignment.match.OrderedCanvasIdPair;
@@ -62,10 +63,16 @@ public class FeatureClient
 
         @Parameter(
                 names = "--rootFeatureDirectory",
-                description = "Root directory for saved feature lists (features saved to [root]/[canvas_group_id]/[canvas_id].features.json.gz)",
+                description = "Root directory for saved feature lists (features saved to [root]/[canvas_group_id]/[canvas_id].features.json.gz or [canvas_id].features.bin)",
                 required = true)
         public String rootFeatureDirectory;
 
+        @Parameter(
+                names = "--featureStorageFormat",
+                description = "Format for saved feature lists (BINARY formats are much smaller and faster to load than JSON)",
+                required = false)
+        public CanvasFeatureStorageFormat featureStorageFormat = CanvasFeatureStorageFormat.JSON;
+
         @Parameter(
                 names = "--pairJson",
                 description = "JSON file where tile pairs are stored (.json, .gz, or .zip)",
@@ -141,7 +148,8 @@ public class FeatureClient
                                         parameters.featureRender,
                                         parameters.featureRenderClip,
                                         parameters.featureExtraction,
-                                        new File(parameters.rootFeatureDirectory).getAbsoluteFile());
+                                        new File(parameters.rootFeatureDirectory).getAbsoluteFile(),
+                                        parameters.featureStorageFormat);
     }
 
     public static long generateFeatureListsForCanvases(final JavaSparkContext sparkContext,
@@ -150,7 +158,8 @@ public class FeatureClient
                                                        final FeatureRenderParameters featureRenderParameters,
                                                        final FeatureRenderClipParameters featureRenderClipParameters,
                                                        final FeatureExtractionParameters featureExtractionParameters,
-                                                       final File rootDirectory)
+                                                       final File rootDirectory,
+                                                       final CanvasFeatureStorageFormat storageFormat)
             throws IOException, URISyntaxException {
 
         final CanvasRenderParametersUrlTemplate urlTemplateForRun =
@@ -173,7 +182,8 @@ public class FeatureClient
                 new CanvasFeatureExtractor(siftParameters,
                                            featureExtractionParameters.minScale,
                                            featureExtractionParameters.maxScale,
-                                           featureRenderParameters.fillWithNoise);
+                                           featureRenderParameters.fillWithNoise,
+                                           featureExtractionParameters.numberOfThreads);
 
         final CanvasFeatureListLoader featureLoader = new CanvasFeatureListLoader(urlTemplateForRun,
                                                                                   featureExtractor);
@@ -199,7 +209,7 @@ public class FeatureClient
                                                   localFeatureLoader.getClipWidth(),
                                                   localFeatureLoader.getClipHeight(),
                                                   canvasFeatures.getFeatureList());
-                    CanvasFeatureList.writeToStorage(rootDirectory, canvasFeatureList);
+                    CanvasFeatureList.writeToStorage(rootDirectory, canvasFeatureList, storageFormat);
                     return 1;
                 }
         );
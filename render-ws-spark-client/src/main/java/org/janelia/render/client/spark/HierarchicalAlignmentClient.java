@@ -45,6 +45,7 @@ import org.janelia.render.client.parameter.FeatureRenderParameters;
 import org.janelia.render.client.parameter.FeatureStorageParameters;
 import org.janelia.render.client.parameter.MatchDerivationParameters;
 import org.janelia.render.client.parameter.RenderWebServiceParameters;
+import org.janelia.render.client.parameter.SparseSolverParameters;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -159,10 +160,23 @@ public class HierarchicalAlignmentClient
 
         @Parameter(
                 names = "--solverParametersTemplate",
-                description = "Full path for solver parameters json file to be used as template for all solver runs",
-                required = true)
+                description = "Full path for solver parameters json file to be used as template for all solver runs " +
+                              "(required unless --useSparseSolver is specified)",
+                required = false)
         public String solverParametersTemplate;
 
+        @Parameter(
+                names = "--useSparseSolver",
+                description = "Align tier stacks with the in-JVM sparse solver instead of the external EM_aligner solver " +
+                              "(note that tier alignment quality then is the solver's root mean square match error " +
+                              "in pixels, so --maxCompleteAlignmentQuality must be chosen for that metric)",
+                required = false,
+                arity = 0)
+        public boolean useSparseSolver = false;
+
+        @ParametersDelegate
+        public SparseSolverParameters sparseSolver = new SparseSolverParameters();
+
         @Parameter(
                 names = "--keepExisting",
                 description = "Pipeline stage for which all prior existing results should be kept",
@@ -215,6 +229,12 @@ public class HierarchicalAlignmentClient
 
     public HierarchicalAlignmentClient(final Parameters parameters,
                                        final SparkConf sparkConf) throws IllegalArgumentException {
+
+        if ((! parameters.useSparseSolver) && (parameters.solverParametersTemplate == null)) {
+            throw new IllegalArgumentException(
+                    "--solverParametersTemplate must be specified when --useSparseSolver is not specified");
+        }
+
         this.parameters = parameters;
         this.sparkContext = new JavaSparkContext(sparkConf);
 
@@ -721,15 +741,26 @@ public class HierarchicalAlignmentClient
 
             deriveSplitMatchesForConsensusSetCanvases(stacksToAlign);
 
-            // broadcast EM_aligner tool to ensure that solver is run serially on each node
-            final EMAlignerTool solver = new EMAlignerTool(new File(parameters.solverScript),
-                                                           new File(parameters.solverParametersTemplate));
-            final Broadcast<EMAlignerTool> broadcastEMAlignerTool = sparkContext.broadcast(solver);
+            final Function<HierarchicalStack, HierarchicalStack> solveStacksFunction;
+            if (parameters.useSparseSolver) {
+
+                solveStacksFunction =
+                        new HierarchicalTierSparseSolveFunction(parameters.renderWeb.baseDataUrl,
+                                                                parameters.zNeighborDistance,
+                                                                parameters.sparseSolver);
 
-            final HierarchicalTierSolveFunction solveStacksFunction =
-                    new HierarchicalTierSolveFunction(parameters.renderWeb.baseDataUrl,
-                                                      parameters.zNeighborDistance,
-                                                      broadcastEMAlignerTool);
+            } else {
+
+                // broadcast EM_aligner tool to ensure that solver is run serially on each node
+                final EMAlignerTool solver = new EMAlignerTool(new File(parameters.solverScript),
+                                                               new File(parameters.solverParametersTemplate));
+                final Broadcast<EMAlignerTool> broadcastEMAlignerTool = sparkContext.broadcast(solver);
+
+                solveStacksFunction =
+                        new HierarchicalTierSolveFunction(parameters.renderWeb.baseDataUrl,
+                                                          parameters.zNeighborDistance,
+                                                          broadcastEMAlignerTool);
+            }
 
             // remove any pre-existing alignment results ...
             for (final HierarchicalStack tierStack : stacksToAlign) {
@@ -0,0 +1,85 @@
+package org.janelia.render.client.spark;
+
+import org.apache.spark.api.java.function.Function;
+import org.janelia.alignment.match.MatchCollectionId;
+import org.janelia.alignment.solver.SparseTileSolver;
+import org.janelia.alignment.spec.Bounds;
+import org.janelia.alignment.spec.stack.HierarchicalStack;
+import org.janelia.alignment.spec.stack.StackId;
+import org.janelia.render.client.SparseTileSolverClient;
+import org.janelia.render.client.parameter.SparseSolverParameters;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Spark function for aligning a hierarchical tier stack with the in-JVM {@link SparseTileSolver}
+ * (instead of running the external EM_aligner tool like {@link HierarchicalTierSolveFunction}).
+ *
+ * The root mean square match error (in pixels) of each solution is used as the tier stack's alignment quality
+ * and is saved with the aligned stack's version.  This is not the same metric that EM_aligner reports,
+ * so --maxCompleteAlignmentQuality thresholds need to be chosen for the solver being used.
+ * Tiers without any loaded tile pairs are given a quality of -1 (like failed EM_aligner solves)
+ * so that they are never considered completely aligned.
+ * Tier stacks do not specify fixed tiles, so unless translation is regularized the client keeps
+ * the tile nearest the center of each tier in place.
+ *
+ * @author Eric Trautman
+ */
+public class HierarchicalTierSparseSolveFunction
+        implements Function<HierarchicalStack, HierarchicalStack> {
+
+    private final String baseDataUrl;
+    private final Integer zNeighborDistance;
+    private final SparseSolverParameters solverParameters;
+
+    public HierarchicalTierSparseSolveFunction(final String baseDataUrl,
+                                               final Integer zNeighborDistance,
+                                               final SparseSolverParameters solverParameters) {
+        this.baseDataUrl = baseDataUrl;
+        this.zNeighborDistance = zNeighborDistance;
+        this.solverParameters = solverParameters;
+    }
+
+    @Override
+    public HierarchicalStack call(final HierarchicalStack tierStack)
+            throws Exception {
+
+        final StackId splitStackId = tierStack.getSplitStackId();
+
+        LogUtilities.setupExecutorLog4j(splitStackId.getStack());
+
+        final Bounds bounds = tierStack.getFullScaleBounds();
+        final MatchCollectionId matchCollectionId = tierStack.getMatchCollectionId();
+        final StackId alignedStackId = tierStack.getAlignedStackId();
+
+        final SparseTileSolverClient.Parameters clientParameters = new SparseTileSolverClient.Parameters();
+        clientParameters.renderWeb.baseDataUrl = baseDataUrl;
+        clientParameters.renderWeb.owner = splitStackId.getOwner();
+        clientParameters.renderWeb.project = splitStackId.getProject();
+        clientParameters.stack = splitStackId.getStack();
+        clientParameters.layerRange.minZ = bounds.getMinZ();
+        clientParameters.layerRange.maxZ = bounds.getMaxZ();
+        clientParameters.matchOwner = matchCollectionId.getOwner();
+        clientParameters.matchCollection = matchCollectionId.getName();
+        clientParameters.zNeighborDistance = zNeighborDistance;
+        clientParameters.solver = solverParameters;
+        clientParameters.targetProject = alignedStackId.getProject();
+        clientParameters.targetStack = alignedStackId.getStack();
+        clientParameters.completeTargetStack = true;
+
+        final SparseTileSolverClient client = new SparseTileSolverClient(clientParameters);
+        final SparseTileSolver.Solution solution = client.run();
+
+        final double tierStackAlignmentQuality = solution.getAlignmentQuality();
+
+        LOG.info("setting alignment quality {} for {}, solution is {}",
+                 tierStackAlignmentQuality, splitStackId, solution);
+
+        tierStack.setAlignmentQuality(tierStackAlignmentQuality);
+
+        return tierStack;
+    }
+
+    private static final Logger LOG = LoggerFactory.getLogger(HierarchicalTierSparseSolveFunction.class);
+
+}
@@ -279,19 +279,12 @@ public class SIFTPointMatchClient
         return new CanvasFeatureExtractor(siftParameters,
                                           featureExtraction.minScale,
                                           featureExtraction.maxScale,
-                                          featureRender.fillWithNoise);
+                                          featureRender.fillWithNoise,
+                                          featureExtraction.numberOfThreads);
     }
 
     private static CanvasFeatureMatcher getCanvasFeatureMatcher(final MatchDerivationParameters matchParameters) {
-        return new CanvasFeatureMatcher(matchParameters.matchRod,
-                                        matchParameters.matchModelType,
-                                        matchParameters.matchIterations,
-                                        matchParameters.matchMaxEpsilon,
-                                        matchParameters.matchMinInlierRatio,
-                                        matchParameters.matchMinNumInliers,
-                                        matchParameters.matchMaxTrust,
-                                        matchParameters.matchMaxNumInliers,
-                                        matchParameters.matchFilter);
+        return matchParameters.buildCanvasFeatureMatcher();
     }
 
     private static final Logger LOG = LoggerFactory.getLogger(SIFTPointMatchClient.class);
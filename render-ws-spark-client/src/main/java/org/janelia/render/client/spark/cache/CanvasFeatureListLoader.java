@@ -69,12 +69,13 @@ public class CanvasFeatureListLoader
 
         if (rootFeatureStorageDirectory != null) {
 
-            final Path storagePath = CanvasFeatureList.getStoragePath(rootFeatureStorageDirectory, canvasId);
+            // binary or JSON storage path, the format of the file itself is detected when it is read
+            final Path storagePath = CanvasFeatureList.findStoragePath(rootFeatureStorageDirectory, canvasId);
 
             CanvasFeatureList canvasFeatureList = null;
             try {
 
-                canvasFeatureList = CanvasFeatureList.readFromStorage(rootFeatureStorageDirectory, canvasId);
+                canvasFeatureList = CanvasFeatureList.readFromFile(storagePath);
 
                 LOG.info("loaded {} features from {}", canvasFeatureList.size(), storagePath);
 
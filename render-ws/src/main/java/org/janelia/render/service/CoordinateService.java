@@ -1,9 +1,18 @@
 package org.janelia.render.service;
 
+import com.fasterxml.jackson.core.JsonGenerator;
+
+import java.io.IOException;
 import java.net.UnknownHostException;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.FutureTask;
 
 import javax.ws.rs.Consumes;
 import javax.ws.rs.GET;
@@ -16,11 +25,20 @@ import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.Response;
 import javax.ws.rs.core.StreamingOutput;
 
+import mpicbg.models.CoordinateTransform;
+import mpicbg.models.CoordinateTransformList;
+
+import org.janelia.alignment.json.JsonUtils;
 import org.janelia.alignment.spec.TileCoordinates;
+import org.janelia.alignment.spec.TileInverseMeshCache;
 import org.janelia.alignment.spec.TileSpec;
 import org.janelia.alignment.spec.stack.StackId;
 import org.janelia.render.service.dao.RenderDao;
+import org.janelia.render.service.model.ObjectNotFoundException;
+import org.janelia.render.service.util.JsonStreamingOutput;
 import org.janelia.render.service.util.RenderServiceUtil;
+import org.janelia.render.service.util.SharedCoordinateMappingPool;
+import org.janelia.render.service.util.SharedInverseMeshCache;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -181,7 +199,12 @@ public class CoordinateService {
     @PUT
     @Consumes(MediaType.APPLICATION_JSON)
     @Produces(MediaType.APPLICATION_JSON)
-    @ApiOperation(value = "Derive array of world coordinates for provided array of tile local coordinates")
+    @ApiOperation(
+            value = "Derive array of world coordinates for provided array of tile local coordinates",
+            notes = "Points are mapped concurrently.  Use the local-to-world-coordinates-stream path " +
+                    "to have results streamed in input order as soon as they are available.",
+            response = TileCoordinates.class,
+            responseContainer = "List")
     @ApiResponses(value = {
             @ApiResponse(code = 400, message = "missing tile or coordinate data"),
             @ApiResponse(code = 404, message = "tile not found")
@@ -191,66 +214,21 @@ public class CoordinateService {
                                                      @PathParam("stack") final String stack,
                                                      final List<TileCoordinates> localCoordinatesList) {
 
-        LOG.info("getWorldCoordinates: entry, owner={}, project={}, stack={}, localCoordinatesList.size()={}",
-                 owner, project, stack, localCoordinatesList.size());
-
-        final long startTime = System.currentTimeMillis();
-        long lastStatusTime = startTime;
-        final List<TileCoordinates> worldCoordinatesList = new ArrayList<>(localCoordinatesList.size());
-        final StackId stackId = new StackId(owner, project, stack);
-        TileSpec tileSpec;
-        TileCoordinates coordinates;
-        String tileId;
-        double[] local;
-        int errorCount = 0;
-        for (int i = 0; i < localCoordinatesList.size(); i++) {
-
-            coordinates = localCoordinatesList.get(i);
-            try {
-
-                if (coordinates == null) {
-                    throw new IllegalArgumentException("coordinates are missing");
-                }
-
-                tileId = coordinates.getTileId();
-                if (tileId == null) {
-                    throw new IllegalArgumentException("tileId is missing");
-                }
-
-                local = coordinates.getLocal();
-                if (local == null) {
-                    throw new IllegalArgumentException("local values are missing");
-                } else if (local.length < 2) {
-                    throw new IllegalArgumentException("local values must include both x and y");
-                }
-
-                tileSpec = renderDao.getTileSpec(stackId, tileId, true);
-                worldCoordinatesList.add(TileCoordinates.getWorldCoordinates(tileSpec, local[0], local[1]));
-
-            } catch (final Throwable t) {
-
-                LOG.warn("getWorldCoordinates: caught exception for list item {}, adding original coordinates with error message to list", i, t);
-
-                errorCount++;
-
-                if (coordinates == null) {
-                    coordinates = TileCoordinates.buildLocalInstance(null, null);
-                }
-                coordinates.setError(t.getMessage());
-
-                worldCoordinatesList.add(coordinates);
-            }
+        final WorldCoordinatesMapping mapping =
+                startWorldCoordinatesMapping(owner, project, stack, localCoordinatesList);
 
-            if ((System.currentTimeMillis() - lastStatusTime) > COORDINATE_PROCESSING_LOG_INTERVAL) {
-                lastStatusTime = System.currentTimeMillis();
-                LOG.info("getWorldCoordinates: transformed {} out of {} points",
-                         worldCoordinatesList.size(), localCoordinatesList.size());
+        final List<TileCoordinates> worldCoordinatesList = new ArrayList<>(mapping.size());
+        try {
+            for (int i = 0; i < mapping.size(); i++) {
+                worldCoordinatesList.add(mapping.getWorldCoordinates(i));
             }
-
+        } catch (final Throwable t) {
+            RenderServiceUtil.throwServiceException(t);
+        } finally {
+            mapping.cancelRemainingTasks();
         }
 
-        LOG.info("getWorldCoordinates: exit, transformed {} points with {} errors in {} ms",
-                 worldCoordinatesList.size(), errorCount, (System.currentTimeMillis() - startTime));
+        mapping.logExit("getWorldCoordinates");
 
         return worldCoordinatesList;
     }
@@ -261,8 +239,9 @@ public class CoordinateService {
     @Produces(MediaType.APPLICATION_JSON)
     @ApiOperation(
             value = "Derive array of world coordinates for provided array of tile local coordinates",
-            notes = "The z path parameter is not used or checked."
-    )
+            notes = "The z path parameter is not used or checked.",
+            response = TileCoordinates.class,
+            responseContainer = "List")
     @ApiResponses(value = {
             @ApiResponse(code = 400, message = "missing tile or coordinate data"),
             @ApiResponse(code = 404, message = "tile not found")
@@ -275,6 +254,34 @@ public class CoordinateService {
         return getWorldCoordinates(owner, project, stack, localCoordinatesList);
     }
 
+    @Path("v1/owner/{owner}/project/{project}/stack/{stack}/local-to-world-coordinates-stream")
+    @PUT
+    @Consumes(MediaType.APPLICATION_JSON)
+    @Produces(MediaType.APPLICATION_JSON)
+    @ApiOperation(
+            value = "Derive array of world coordinates for provided array of tile local coordinates",
+            notes = "Points are mapped concurrently and results are streamed in input order.",
+            response = TileCoordinates.class,
+            responseContainer = "List")
+    @ApiResponses(value = {
+            @ApiResponse(code = 400, message = "missing tile or coordinate data"),
+            @ApiResponse(code = 404, message = "tile not found")
+    })
+    public Response streamWorldCoordinates(@PathParam("owner") final String owner,
+                                           @PathParam("project") final String project,
+                                           @PathParam("stack") final String stack,
+                                           final List<TileCoordinates> localCoordinatesList) {
+
+        final WorldCoordinatesMapping mapping =
+                startWorldCoordinatesMapping(owner, project, stack, localCoordinatesList);
+
+        final JsonStreamingOutput responseOutput =
+                new JsonStreamingOutput(JsonUtils.STREAMING_MAPPER,
+                                        generator -> writeWorldCoordinates(generator, mapping));
+
+        return Response.ok(responseOutput, MediaType.APPLICATION_JSON_TYPE).build();
+    }
+
     @Path("v1/owner/{owner}/project/{project}/stack/{stack}/z/{z}/world-to-local-coordinates/{x},{y}")
     @GET
     @Produces(MediaType.APPLICATION_JSON)
@@ -297,10 +304,13 @@ public class CoordinateService {
         List<TileCoordinates> localCoordinatesList = null;
         try {
             final StackId stackId = new StackId(owner, project, stack);
+            final String versionKey = getInverseMeshVersionKey(stackId);
             final List<TileSpec> tileSpecList = renderDao.getTileSpecs(stackId, worldX, worldY, z);
             localCoordinatesList = TileCoordinates.getLocalCoordinates(tileSpecList,
                                                                        worldX,
-                                                                       worldY);
+                                                                       worldY,
+                                                                       getInverseMeshCache(versionKey),
+                                                                       versionKey);
         } catch (final Throwable t) {
             RenderServiceUtil.throwServiceException(t);
         }
@@ -360,12 +370,14 @@ public class CoordinateService {
             currentZ = z;
         }
 
-        final List<List<TileCoordinates>> localCoordinatesList = new ArrayList<>(worldCoordinatesList.size());
         final StackId stackId = new StackId(owner, project, stack);
-        List<TileSpec> tileSpecList;
+
+        // Find the tiles for every point first so that points can be grouped by tile before inverting them.
+        // This allows each tile's inverse mesh to be built (or retrieved from the cache) just once per request.
+        final List<TileCoordinates> validatedCoordinatesList = new ArrayList<>(worldCoordinatesList.size());
+        final List<List<TileSpec>> tileSpecLists = new ArrayList<>(worldCoordinatesList.size());
         TileCoordinates coordinates;
         double[] world;
-        int errorCount = 0;
         for (int i = 0; i < worldCoordinatesList.size(); i++) {
 
             coordinates = worldCoordinatesList.get(i);
@@ -391,39 +403,334 @@ public class CoordinateService {
                     throw new IllegalArgumentException("world values must include both x and y");
                 }
 
-                tileSpecList = renderDao.getTileSpecs(stackId, world[0], world[1], currentZ);
-                localCoordinatesList.add(TileCoordinates.getLocalCoordinates(tileSpecList,
-                                                                             world[0],
-                                                                             world[1]));
+                tileSpecLists.add(renderDao.getTileSpecs(stackId, world[0], world[1], currentZ));
 
             } catch (final Throwable t) {
 
                 LOG.warn("getLocalCoordinates: caught exception for list item {}, adding original coordinates with error message to list", i, t);
 
-                errorCount++;
-
                 if (coordinates == null) {
                     coordinates = TileCoordinates.buildWorldInstance(null, null);
                 }
                 coordinates.setError(t.getMessage());
 
-                localCoordinatesList.add(Collections.singletonList(coordinates));
+                tileSpecLists.add(null);
             }
 
+            validatedCoordinatesList.add(coordinates);
+
             if ((System.currentTimeMillis() - lastStatusTime) > COORDINATE_PROCESSING_LOG_INTERVAL) {
                 lastStatusTime = System.currentTimeMillis();
-                LOG.info("getLocalCoordinates: inversely transformed {} out of {} points",
-                         localCoordinatesList.size(), worldCoordinatesList.size());
+                LOG.info("getLocalCoordinates: found tiles for {} out of {} points",
+                         tileSpecLists.size(), worldCoordinatesList.size());
             }
 
         }
 
-        LOG.info("getLocalCoordinates: inversely transformed {} points with {} errors in {} ms",
+        List<List<TileCoordinates>> localCoordinatesList = null;
+        try {
+            final String versionKey = getInverseMeshVersionKey(stackId);
+            localCoordinatesList = TileCoordinates.getLocalCoordinates(validatedCoordinatesList,
+                                                                       tileSpecLists,
+                                                                       getInverseMeshCache(versionKey),
+                                                                       versionKey);
+        } catch (final Throwable t) {
+            RenderServiceUtil.throwServiceException(t);
+        }
+
+        int errorCount = 0;
+        for (final List<TileCoordinates> tileCoordinatesList : localCoordinatesList) {
+            if ((tileCoordinatesList.size() == 1) && tileCoordinatesList.get(0).hasError()) {
+                errorCount++;
+            }
+        }
+
+        LOG.info("getLocalCoordinates: inversely transformed {} points with {} errors in {} ms",
                  localCoordinatesList.size(), errorCount, (System.currentTimeMillis() - startTime));
 
         return localCoordinatesList;
     }
 
+    /**
+     * @return key that identifies the current version of the specified stack's tile specs
+     *         or null if the stack's tile specs may be changing (or the stack does not exist).
+     */
+    private String getInverseMeshVersionKey(final StackId stackId) {
+        // the shared inverse mesh cache holds meshes for all stacks, so qualify the dao's version key
+        final String stackVersionKey = renderDao.getCachedStackVersionKey(stackId);
+        return stackVersionKey == null ? null :
+               stackId.getOwner() + "::" + stackId.getProject() + "::" + stackId.getStack() + "::" + stackVersionKey;
+    }
+
+    /**
+     * @return the shared inverse mesh cache or null if meshes for the specified version should not be cached.
+     */
+    private static TileInverseMeshCache getInverseMeshCache(final String versionKey) {
+        return versionKey == null ? null : SharedInverseMeshCache.getInstance();
+    }
+
+    /**
+     * Validates the specified local coordinates, retrieves all of their tiles,
+     * and starts (or queues) a mapping task for each tile's points.
+     */
+    private WorldCoordinatesMapping startWorldCoordinatesMapping(final String owner,
+                                                                 final String project,
+                                                                 final String stack,
+                                                                 final List<TileCoordinates> localCoordinatesList) {
+
+        LOG.info("getWorldCoordinates: entry, owner={}, project={}, stack={}, localCoordinatesList.size()={}",
+                 owner, project, stack, localCoordinatesList.size());
+
+        final long startTime = System.currentTimeMillis();
+        final int numberOfPoints = localCoordinatesList.size();
+        final TileCoordinates[] worldCoordinatesArray = new TileCoordinates[numberOfPoints];
+        final StackId stackId = new StackId(owner, project, stack);
+
+        // validate coordinates and group them by tile so that each tile only needs to be retrieved,
+        // resolved, and converted to a transform list once
+        final Map<String, List<Integer>> tileIdToPointIndexes = new LinkedHashMap<>();
+        TileCoordinates coordinates;
+        String tileId;
+        double[] local;
+        for (int i = 0; i < numberOfPoints; i++) {
+
+            coordinates = localCoordinatesList.get(i);
+            try {
+
+                if (coordinates == null) {
+                    throw new IllegalArgumentException("coordinates are missing");
+                }
+
+                tileId = coordinates.getTileId();
+                if (tileId == null) {
+                    throw new IllegalArgumentException("tileId is missing");
+                }
+
+                local = coordinates.getLocal();
+                if (local == null) {
+                    throw new IllegalArgumentException("local values are missing");
+                } else if (local.length < 2) {
+                    throw new IllegalArgumentException("local values must include both x and y");
+                }
+
+                tileIdToPointIndexes.computeIfAbsent(tileId, k -> new ArrayList<>()).add(i);
+
+            } catch (final Throwable t) {
+                worldCoordinatesArray[i] = buildWorldCoordinatesError(i, coordinates, t);
+            }
+        }
+
+        final Map<String, TileSpec> tileIdToSpec = new HashMap<>();
+        final Map<String, Throwable> tileIdToProblem = new HashMap<>();
+        if (tileIdToPointIndexes.size() > 0) {
+            final List<String> tileIds = new ArrayList<>(tileIdToPointIndexes.keySet());
+            try {
+                for (final TileSpec tileSpec : renderDao.getTileSpecs(stackId, tileIds)) {
+                    tileIdToSpec.put(tileSpec.getTileId(), tileSpec);
+                }
+            } catch (final Throwable bulkProblem) {
+
+                // One unresolvable tile (or too many tiles) fails the bulk query,
+                // so retrieve tiles individually and only report errors for points on problem tiles.
+                LOG.warn("getWorldCoordinates: failed to retrieve {} tile specs in one query, retrieving them individually",
+                         tileIds.size(), bulkProblem);
+
+                tileIdToSpec.clear();
+                for (final String problemTileId : tileIds) {
+                    try {
+                        tileIdToSpec.put(problemTileId, renderDao.getTileSpec(stackId, problemTileId, true));
+                    } catch (final Throwable t) {
+                        tileIdToProblem.put(problemTileId, t);
+                    }
+                }
+            }
+        }
+
+        LOG.info("getWorldCoordinates: retrieved {} tile specs for {} distinct tile ids in {} ms",
+                 tileIdToSpec.size(), tileIdToPointIndexes.size(), (System.currentTimeMillis() - startTime));
+
+        // Map each tile's points with a separate task.  All points for a tile are mapped by the same thread
+        // since transform instances are not guaranteed to be thread safe.
+        final ExecutorService mappingPool = SharedCoordinateMappingPool.getInstance();
+        final List<FutureTask<Void>> pointMappingTasks = new ArrayList<>(Collections.nCopies(numberOfPoints, null));
+        for (final Map.Entry<String, List<Integer>> entry : tileIdToPointIndexes.entrySet()) {
+
+            final String pointsTileId = entry.getKey();
+            final TileSpec tileSpec = tileIdToSpec.get(pointsTileId);
+            final Throwable tileProblem = tileIdToProblem.get(pointsTileId);
+            final List<Integer> pointIndexes = entry.getValue();
+
+            final Runnable mapPoints = () -> mapTilePoints(stackId, pointsTileId, tileSpec, tileProblem,
+                                                           pointIndexes, localCoordinatesList, worldCoordinatesArray);
+            final FutureTask<Void> mappingTask = new FutureTask<>(mapPoints, null);
+
+            for (final Integer pointIndex : pointIndexes) {
+                pointMappingTasks.set(pointIndex, mappingTask);
+            }
+
+            if (mappingPool != null) {
+                mappingPool.execute(mappingTask);
+            }
+        }
+
+        return new WorldCoordinatesMapping(worldCoordinatesArray, pointMappingTasks, startTime);
+    }
+
+    /**
+     * Maps the specified points that are all on the same tile,
+     * saving each mapped (or error) result in the world coordinates array.
+     */
+    private static void mapTilePoints(final StackId stackId,
+                                      final String tileId,
+                                      final TileSpec tileSpec,
+                                      final Throwable tileRetrievalProblem,
+                                      final List<Integer> pointIndexes,
+                                      final List<TileCoordinates> localCoordinatesList,
+                                      final TileCoordinates[] worldCoordinatesArray) {
+
+        CoordinateTransformList<CoordinateTransform> transformList = null;
+        Throwable tileProblem = tileRetrievalProblem;
+        if (tileProblem != null) {
+            LOG.debug("mapTilePoints: skipping points for problem tile {}", tileId);
+        } else if (tileSpec == null) {
+            tileProblem = new ObjectNotFoundException("tile spec with id '" + tileId +
+                                                      "' does not exist in " + stackId);
+        } else {
+            try {
+                transformList = tileSpec.getTransformList();
+            } catch (final Throwable t) {
+                tileProblem = t;
+            }
+        }
+
+        for (final Integer pointIndex : pointIndexes) {
+            final TileCoordinates pointCoordinates = localCoordinatesList.get(pointIndex);
+            if (tileProblem == null) {
+                try {
+                    final double[] pointLocal = pointCoordinates.getLocal();
+                    worldCoordinatesArray[pointIndex] =
+                            TileCoordinates.getWorldCoordinates(tileSpec,
+                                                                transformList,
+                                                                pointLocal[0],
+                                                                pointLocal[1]);
+                } catch (final Throwable t) {
+                    worldCoordinatesArray[pointIndex] = buildWorldCoordinatesError(pointIndex,
+                                                                                   pointCoordinates,
+                                                                                   t);
+                }
+            } else {
+                worldCoordinatesArray[pointIndex] = buildWorldCoordinatesError(pointIndex,
+                                                                               pointCoordinates,
+                                                                               tileProblem);
+            }
+        }
+    }
+
+    /**
+     * Writes mapped world coordinates in input order so that results are streamed as soon as they are available.
+     */
+    private static void writeWorldCoordinates(final JsonGenerator generator,
+                                              final WorldCoordinatesMapping mapping)
+            throws IOException {
+
+        try {
+            generator.writeStartArray();
+            for (int i = 0; i < mapping.size(); i++) {
+                generator.writeObject(mapping.getWorldCoordinates(i));
+            }
+            generator.writeEndArray();
+        } finally {
+            // don't waste pool threads on remaining points if the response could not be written
+            mapping.cancelRemainingTasks();
+        }
+
+        mapping.logExit("streamWorldCoordinates");
+    }
+
+    private static TileCoordinates buildWorldCoordinatesError(final int listIndex,
+                                                              final TileCoordinates originalCoordinates,
+                                                              final Throwable t) {
+
+        LOG.warn("getWorldCoordinates: caught exception for list item {}, adding original coordinates with error message to list", listIndex, t);
+
+        final TileCoordinates coordinates;
+        if (originalCoordinates == null) {
+            coordinates = TileCoordinates.buildLocalInstance(null, null);
+        } else {
+            coordinates = originalCoordinates;
+        }
+        coordinates.setError(t.getMessage());
+
+        return coordinates;
+    }
+
+    /**
+     * Tracks the concurrent mapping of a batch of points to world coordinates.
+     */
+    private static class WorldCoordinatesMapping {
+
+        private final TileCoordinates[] worldCoordinatesArray;
+        private final List<FutureTask<Void>> pointMappingTasks;
+        private final long startTime;
+
+        WorldCoordinatesMapping(final TileCoordinates[] worldCoordinatesArray,
+                                final List<FutureTask<Void>> pointMappingTasks,
+                                final long startTime) {
+            this.worldCoordinatesArray = worldCoordinatesArray;
+            this.pointMappingTasks = pointMappingTasks;
+            this.startTime = startTime;
+        }
+
+        int size() {
+            return worldCoordinatesArray.length;
+        }
+
+        /**
+         * @return mapped (or error) world coordinates for the specified point,
+         *         waiting for (or running) the point's mapping task as needed.
+         */
+        TileCoordinates getWorldCoordinates(final int pointIndex)
+                throws IOException {
+
+            final FutureTask<Void> mappingTask = pointMappingTasks.get(pointIndex);
+
+            // points with validation errors do not have mapping tasks
+            if (mappingTask != null) {
+                // run the task on this thread if no pool thread has started it yet
+                mappingTask.run();
+                try {
+                    mappingTask.get();
+                } catch (final InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IOException("interrupted while mapping coordinates", e);
+                } catch (final ExecutionException e) {
+                    throw new IOException("failed to map coordinates", e.getCause());
+                }
+            }
+
+            return worldCoordinatesArray[pointIndex];
+        }
+
+        void cancelRemainingTasks() {
+            for (final FutureTask<Void> task : pointMappingTasks) {
+                if (task != null) {
+                    task.cancel(false);
+                }
+            }
+        }
+
+        void logExit(final String context) {
+            int errorCount = 0;
+            for (final TileCoordinates worldCoordinates : worldCoordinatesArray) {
+                if (worldCoordinates.hasError()) {
+                    errorCount++;
+                }
+            }
+            LOG.info("{}: exit, transformed {} points with {} errors in {} ms",
+                     context, worldCoordinatesArray.length, errorCount, (System.currentTimeMillis() - startTime));
+        }
+    }
+
     private static final Logger LOG = LoggerFactory.getLogger(CoordinateService.class);
 
     private static final long COORDINATE_PROCESSING_LOG_INTERVAL = 5000;
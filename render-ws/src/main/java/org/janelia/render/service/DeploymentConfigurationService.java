@@ -3,6 +3,7 @@ package org.janelia.render.service;
 import com.google.common.collect.Maps;
 
 import java.io.InputStream;
+import java.util.Collections;
 import java.util.Map;
 import java.util.Properties;
 
@@ -15,9 +16,15 @@ import javax.ws.rs.core.Response;
 
 import org.janelia.alignment.filter.FilterFactory;
 import org.janelia.alignment.util.ImageProcessorCache;
+import org.janelia.render.service.dao.LayerTileBoundsCache;
+import org.janelia.render.service.util.BoxMaterializationQueue;
 import org.janelia.render.service.util.RenderServerProperties;
 import org.janelia.render.service.util.RenderServiceUtil;
+import org.janelia.render.service.util.RenderedImageCache;
+import org.janelia.render.service.util.SharedBoxMaterializationQueue;
 import org.janelia.render.service.util.SharedImageProcessorCache;
+import org.janelia.render.service.util.SharedLayerTileBoundsCache;
+import org.janelia.render.service.util.SharedRenderedImageCache;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -100,6 +107,17 @@ public class DeploymentConfigurationService {
         return versionInfo;
     }
 
+    @Path("v1/imageProcessorCache/stats")
+    @GET
+    @Produces(MediaType.APPLICATION_JSON)
+    @ApiOperation(
+            tags = "Service Configuration APIs",
+            value = "Hit metrics and pixel copy counts for the shared source image cache",
+            produces = MediaType.APPLICATION_JSON)
+    public Map<String, Object> getImageProcessorCacheStats() {
+        return SharedImageProcessorCache.getInstance().getMetrics();
+    }
+
     @Path("v1/imageProcessorCache/allEntries")
     @DELETE
     @Produces(MediaType.APPLICATION_JSON)
@@ -122,6 +140,67 @@ public class DeploymentConfigurationService {
         return response;
     }
 
+    @Path("v1/renderedImageCache/stats")
+    @GET
+    @Produces(MediaType.APPLICATION_JSON)
+    @ApiOperation(
+            tags = "Service Configuration APIs",
+            value = "Hit and miss metrics for the server-side cache of rendered images",
+            produces = MediaType.APPLICATION_JSON)
+    public Map<String, Object> getRenderedImageCacheStats() {
+        final RenderedImageCache sharedCache = SharedRenderedImageCache.getInstance();
+        return sharedCache == null ? Collections.emptyMap() : sharedCache.getMetrics();
+    }
+
+    @Path("v1/boxMaterializationQueue/stats")
+    @GET
+    @Produces(MediaType.APPLICATION_JSON)
+    @ApiOperation(
+            tags = "Service Configuration APIs",
+            value = "Metrics for the queue of large data boxes waiting to be materialized",
+            produces = MediaType.APPLICATION_JSON)
+    public Map<String, Object> getBoxMaterializationQueueStats() {
+        final BoxMaterializationQueue sharedQueue = SharedBoxMaterializationQueue.getInstance();
+        return sharedQueue == null ? Collections.emptyMap() : sharedQueue.getMetrics();
+    }
+
+    @Path("v1/layerTileBoundsCache/stats")
+    @GET
+    @Produces(MediaType.APPLICATION_JSON)
+    @ApiOperation(
+            tags = "Service Configuration APIs",
+            value = "Hit rates and per-layer memory estimates for the server-side layer spatial index",
+            produces = MediaType.APPLICATION_JSON)
+    public Map<String, Object> getLayerTileBoundsCacheStats() {
+        final LayerTileBoundsCache sharedCache = SharedLayerTileBoundsCache.getInstance();
+        return sharedCache == null ? Collections.emptyMap() : sharedCache.getMetrics();
+    }
+
+    @Path("v1/renderedImageCache/allEntries")
+    @DELETE
+    @Produces(MediaType.APPLICATION_JSON)
+    @ApiOperation(
+            tags = "Service Configuration APIs",
+            value = "Discards all cached rendered images",
+            produces = MediaType.APPLICATION_JSON)
+    public Response invalidateRenderedImageCache() {
+        Response response = null;
+        try {
+            final RenderedImageCache sharedCache = SharedRenderedImageCache.getInstance();
+            if (sharedCache != null) {
+                LOG.info("invalidateRenderedImageCache: entry, current shared cache metrics are: {}",
+                         sharedCache.getMetrics());
+                sharedCache.invalidateAll();
+            }
+
+            response = Response.ok().build();
+        } catch (final Throwable t) {
+            RenderServiceUtil.throwServiceException(t);
+        }
+
+        return response;
+    }
+
     private FilterFactory getFilterFactory() {
         if (this.filterFactory == null) {
             // lazy-load factory configuration from JSON file
@@ -6,6 +6,7 @@ import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Iterator;
 import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
@@ -20,13 +21,19 @@ import javax.ws.rs.PathParam;
 import javax.ws.rs.Produces;
 import javax.ws.rs.QueryParam;
 import javax.ws.rs.core.Context;
+import javax.ws.rs.core.HttpHeaders;
 import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.Response;
 import javax.ws.rs.core.StreamingOutput;
 import javax.ws.rs.core.UriInfo;
 
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
 import org.janelia.alignment.RenderParameters;
 import org.janelia.alignment.filter.FilterFactory;
+import org.janelia.alignment.json.JsonUtils;
 import org.janelia.alignment.spec.Bounds;
 import org.janelia.alignment.spec.LastTileTransform;
 import org.janelia.alignment.spec.ResolvedTileSpecCollection;
@@ -42,6 +49,7 @@ import org.janelia.render.service.dao.TileSpecLayout;
 import org.janelia.render.service.model.IllegalServiceArgumentException;
 import org.janelia.render.service.model.ObjectNotFoundException;
 import org.janelia.render.service.model.RenderQueryParameters;
+import org.janelia.render.service.util.JsonStreamingOutput;
 import org.janelia.render.service.util.RenderServiceUtil;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -464,18 +472,48 @@ public class RenderDataService {
 
     @Path("v1/owner/{owner}/project/{project}/stack/{stack}/z/{z}/resolvedTiles")
     @GET
-    @Produces(MediaType.APPLICATION_JSON)
+    @Produces({MediaType.APPLICATION_JSON, JsonUtils.SMILE_MIME_TYPE})
     @ApiOperation(
             tags = "Section Data APIs",
-            value = "Get raw tile and transform specs for section with specified z")
+            value = "Get raw tile and transform specs for section with specified z",
+            notes = "Specs are streamed as they are retrieved.  Clients may request the binary Smile format by including " +
+                    JsonUtils.SMILE_MIME_TYPE + " in the Accept header.")
     @ApiResponses(value = {
             @ApiResponse(code = 400, message = "too many (> 50,000) tiles in section"),
             @ApiResponse(code = 404, message = "no tile specs found"),
     })
-    public ResolvedTileSpecCollection getResolvedTiles(@PathParam("owner") final String owner,
-                                                       @PathParam("project") final String project,
-                                                       @PathParam("stack") final String stack,
-                                                       @PathParam("z") final Double z) {
+    public Response streamResolvedTiles(@PathParam("owner") final String owner,
+                                        @PathParam("project") final String project,
+                                        @PathParam("stack") final String stack,
+                                        @PathParam("z") final Double z,
+                                        @Context final HttpHeaders httpHeaders) {
+
+        LOG.info("streamResolvedTiles: entry, owner={}, project={}, stack={}, z={}",
+                 owner, project, stack, z);
+
+        Response response = null;
+        try {
+            final StackId stackId = new StackId(owner, project, stack);
+            renderDao.validateResolvedTileCount(stackId, z);
+            final Map<String, TransformSpec> referencedTransformSpecs =
+                    renderDao.getReferencedTransformSpecs(stackId, z);
+            response = JsonStreamingOutput.buildResponse(
+                    httpHeaders,
+                    generator -> renderDao.writeResolvedTiles(stackId, z, referencedTransformSpecs, generator));
+        } catch (final Throwable t) {
+            RenderServiceUtil.throwServiceException(t);
+        }
+        return response;
+    }
+
+    /**
+     * @return resolved tile and transform specs for the section with the specified z
+     *         (non-streaming version of {@link #streamResolvedTiles(String, String, String, Double, HttpHeaders)}).
+     */
+    public ResolvedTileSpecCollection getResolvedTiles(final String owner,
+                                                       final String project,
+                                                       final String stack,
+                                                       final Double z) {
 
         LOG.info("getResolvedTiles: entry, owner={}, project={}, stack={}, z={}",
                  owner, project, stack, z);
@@ -492,24 +530,61 @@ public class RenderDataService {
 
     @Path("v1/owner/{owner}/project/{project}/stack/{stack}/resolvedTiles")
     @GET
-    @Produces(MediaType.APPLICATION_JSON)
+    @Produces({MediaType.APPLICATION_JSON, JsonUtils.SMILE_MIME_TYPE})
     @ApiOperation(
             tags = "Stack Data APIs",
-            value = "Get raw tile and transform specs for specified group or bounding box")
+            value = "Get raw tile and transform specs for specified group or bounding box",
+            notes = "Specs are streamed as they are retrieved.  Clients may request the binary Smile format by including " +
+                    JsonUtils.SMILE_MIME_TYPE + " in the Accept header.")
     @ApiResponses(value = {
             @ApiResponse(code = 400, message = "too many (> 50,000) matching tiles found"),
             @ApiResponse(code = 404, message = "no tile specs found"),
     })
-    public ResolvedTileSpecCollection getResolvedTiles(@PathParam("owner") final String owner,
-                                                       @PathParam("project") final String project,
-                                                       @PathParam("stack") final String stack,
-                                                       @QueryParam("minZ") final Double minZ,
-                                                       @QueryParam("maxZ") final Double maxZ,
-                                                       @QueryParam("groupId") final String groupId,
-                                                       @QueryParam("minX") final Double minX,
-                                                       @QueryParam("maxX") final Double maxX,
-                                                       @QueryParam("minY") final Double minY,
-                                                       @QueryParam("maxY") final Double maxY) {
+    public Response streamResolvedTiles(@PathParam("owner") final String owner,
+                                        @PathParam("project") final String project,
+                                        @PathParam("stack") final String stack,
+                                        @QueryParam("minZ") final Double minZ,
+                                        @QueryParam("maxZ") final Double maxZ,
+                                        @QueryParam("groupId") final String groupId,
+                                        @QueryParam("minX") final Double minX,
+                                        @QueryParam("maxX") final Double maxX,
+                                        @QueryParam("minY") final Double minY,
+                                        @QueryParam("maxY") final Double maxY,
+                                        @Context final HttpHeaders httpHeaders) {
+
+        LOG.info("streamResolvedTiles: entry, owner={}, project={}, stack={}, minZ={}, maxZ={}, groupId={}, minX={}, maxX={}, minY={}, maxY={}",
+                 owner, project, stack, minZ, maxZ, groupId, minX, maxX, minY, maxY);
+
+        Response response = null;
+        try {
+            final StackId stackId = new StackId(owner, project, stack);
+            renderDao.validateResolvedTileCount(stackId, minZ, maxZ, groupId, minX, maxX, minY, maxY);
+            final Map<String, TransformSpec> referencedTransformSpecs =
+                    renderDao.getReferencedTransformSpecs(stackId, minZ, maxZ, groupId, minX, maxX, minY, maxY);
+            response = JsonStreamingOutput.buildResponse(
+                    httpHeaders,
+                    generator -> renderDao.writeResolvedTiles(stackId, minZ, maxZ, groupId, minX, maxX, minY, maxY,
+                                                              referencedTransformSpecs, generator));
+        } catch (final Throwable t) {
+            RenderServiceUtil.throwServiceException(t);
+        }
+        return response;
+    }
+
+    /**
+     * @return resolved tile and transform specs for the specified group or bounding box
+     *         (non-streaming version of the corresponding streamResolvedTiles API).
+     */
+    public ResolvedTileSpecCollection getResolvedTiles(final String owner,
+                                                       final String project,
+                                                       final String stack,
+                                                       final Double minZ,
+                                                       final Double maxZ,
+                                                       final String groupId,
+                                                       final Double minX,
+                                                       final Double maxX,
+                                                       final Double minY,
+                                                       final Double maxY) {
 
         LOG.info("getResolvedTiles: entry, owner={}, project={}, stack={}, minZ={}, maxZ={}, groupId={}, minX={}, maxX={}, minY={}, maxY={}",
                  owner, project, stack, minZ, maxZ, groupId, minX, maxX, minY, maxY);
@@ -800,18 +875,45 @@ public class RenderDataService {
      */
     @Path("v1/owner/{owner}/project/{project}/stack/{stack}/z/{z}/tile-specs")
     @GET
-    @Produces(MediaType.APPLICATION_JSON)
+    @Produces({MediaType.APPLICATION_JSON, JsonUtils.SMILE_MIME_TYPE})
     @ApiOperation(
             tags = "Section Data APIs",
             value = "Get flattened tile specs with the specified z",
-            notes = "For each tile spec, nested transform lists are flattened and reference transforms are resolved.  This should make the specs suitable for external use.")
+            notes = "For each tile spec, nested transform lists are flattened and reference transforms are resolved.  This should make the specs suitable for external use.  Specs are streamed as they are resolved.")
     @ApiResponses(value = {
+            @ApiResponse(code = 400, message = "too many (> 50,000) tiles in section"),
             @ApiResponse(code = 404, message = "stack or tiles with z not found")
     })
-    public List<TileSpec> getTileSpecsForZ(@PathParam("owner") final String owner,
-                                           @PathParam("project") final String project,
-                                           @PathParam("stack") final String stack,
-                                           @PathParam("z") final Double z) {
+    public Response streamTileSpecsForZ(@PathParam("owner") final String owner,
+                                        @PathParam("project") final String project,
+                                        @PathParam("stack") final String stack,
+                                        @PathParam("z") final Double z,
+                                        @Context final HttpHeaders httpHeaders) {
+
+        LOG.info("streamTileSpecsForZ: entry, owner={}, project={}, stack={}, z={}",
+                 owner, project, stack, z);
+
+        Response response = null;
+        try {
+            final StackId stackId = new StackId(owner, project, stack);
+            renderDao.validateResolvedTileCount(stackId, z);
+            response = JsonStreamingOutput.buildResponse(
+                    httpHeaders,
+                    generator -> renderDao.writeFlattenedTileSpecs(stackId, z, generator));
+        } catch (final Throwable t) {
+            RenderServiceUtil.throwServiceException(t);
+        }
+        return response;
+    }
+
+    /**
+     * @return flattened tile specs for the specified layer
+     *         (non-streaming version of {@link #streamTileSpecsForZ}).
+     */
+    public List<TileSpec> getTileSpecsForZ(final String owner,
+                                           final String project,
+                                           final String stack,
+                                           final Double z) {
 
         LOG.info("getTileSpecsForZ: entry, owner={}, project={}, stack={}, z={}",
                  owner, project, stack, z);
@@ -892,7 +994,7 @@ public class RenderDataService {
         RenderParameters parameters = null;
         try {
             final StackId stackId = new StackId(owner, project, stack);
-            final StackMetaData stackMetaData = getStackMetaData(stackId);
+            final StackMetaData stackMetaData = getCachedStackMetaData(stackId);
 
             parameters = renderDao.getParameters(stackId, z, renderQueryParameters.getScale());
 
@@ -935,6 +1037,74 @@ public class RenderDataService {
                                            renderQueryParameters);
     }
 
+    /**
+     * @return render parameters for specified bounding box with flattened (and therefore resolved)
+     *         transform specs suitable for external use.  Tile specs are streamed as they are resolved,
+     *         making this suitable for large boxes (e.g. a full row of smaller boxes) that clients
+     *         subsequently slice into many smaller render requests.
+     */
+    @Path("v1/owner/{owner}/project/{project}/stack/{stack}/z/{z}/box/{x},{y},{width},{height},{scale}/bulk-render-parameters")
+    @GET
+    @Produces({MediaType.APPLICATION_JSON, JsonUtils.SMILE_MIME_TYPE})
+    @ApiOperation(
+            tags = "Bounding Box Data APIs",
+            value = "Get parameters to render all tiles within the specified (typically large) box",
+            notes = "Returns the same data as the render-parameters API, but tile specs are streamed as they are resolved.  Clients rendering many adjacent boxes (e.g. a row of CATMAID boxes) can use one bulk request and then locally select the tiles for each box instead of requesting parameters for every box.")
+    @ApiResponses(value = {
+            @ApiResponse(code = 400, message = "too many (> 50,000) tiles in box"),
+            @ApiResponse(code = 404, message = "stack not found")
+    })
+    public Response streamBulkRenderParameters(@PathParam("owner") final String owner,
+                                               @PathParam("project") final String project,
+                                               @PathParam("stack") final String stack,
+                                               @PathParam("x") final Double x,
+                                               @PathParam("y") final Double y,
+                                               @PathParam("z") final Double z,
+                                               @PathParam("width") final Integer width,
+                                               @PathParam("height") final Integer height,
+                                               @PathParam("scale") final Double scale,
+                                               @BeanParam final RenderQueryParameters renderQueryParameters,
+                                               @Context final HttpHeaders httpHeaders) {
+
+        LOG.info("streamBulkRenderParameters: entry, owner={}, project={}, stack={}, x={}, y={}, z={}, width={}, height={}, scale={}",
+                 owner, project, stack, x, y, z, width, height, scale);
+
+        Response response = null;
+        try {
+            final StackId stackId = new StackId(owner, project, stack);
+            renderDao.validateBoxTileCount(stackId, x, y, z, width, height);
+
+            // build everything but the tile specs up front so that errors can be reported before streaming starts
+            final RenderParameters contextParameters = new RenderParameters(null, x, y, width, height, scale);
+            renderQueryParameters.applyQueryAndDefaultParameters(contextParameters,
+                                                                 getCachedStackMetaData(stackId),
+                                                                 this);
+
+            response = JsonStreamingOutput.buildResponse(
+                    httpHeaders,
+                    generator -> {
+                        final ObjectNode contextNode =
+                                ((ObjectMapper) generator.getCodec()).valueToTree(contextParameters);
+                        contextNode.remove("tileSpecs");
+
+                        generator.writeStartObject();
+                        final Iterator<Map.Entry<String, JsonNode>> fields = contextNode.fields();
+                        while (fields.hasNext()) {
+                            final Map.Entry<String, JsonNode> field = fields.next();
+                            generator.writeFieldName(field.getKey());
+                            generator.writeTree(field.getValue());
+                        }
+                        generator.writeFieldName("tileSpecs");
+                        renderDao.writeFlattenedTileSpecsForBox(stackId, x, y, z, width, height, generator);
+                        generator.writeEndObject();
+                    });
+
+        } catch (final Throwable t) {
+            RenderServiceUtil.throwServiceException(t);
+        }
+        return response;
+    }
+
     /**
      * @return render parameters for specified bounding box with flattened (and therefore resolved)
      *         transform specs suitable for external use.
@@ -1048,7 +1218,7 @@ public class RenderDataService {
             throws ObjectNotFoundException {
 
         final RenderParameters parameters = renderDao.getParameters(stackId, groupId, x, y, z, width, height, scale);
-        final StackMetaData stackMetaData = getStackMetaData(stackId);
+        final StackMetaData stackMetaData = getCachedStackMetaData(stackId);
         renderQueryParameters.applyQueryAndDefaultParameters(parameters, stackMetaData, this);
         return parameters;
     }
@@ -1058,6 +1228,14 @@ public class RenderDataService {
         return StackMetaDataService.getStackMetaData(stackId, renderDao);
     }
 
+    /**
+     * @return recently cached meta data for the specified stack (only use for read and render requests).
+     */
+    public StackMetaData getCachedStackMetaData(final StackId stackId)
+            throws ObjectNotFoundException {
+        return StackMetaDataService.getCachedStackMetaData(stackId, renderDao);
+    }
+
     public void setFilterSpecs(final String filterListName,
                                final RenderParameters renderParameters) {
         if (filterListName != null) {
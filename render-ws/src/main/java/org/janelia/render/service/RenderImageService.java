@@ -1,8 +1,11 @@
 package org.janelia.render.service;
 
+import java.awt.image.BufferedImage;
 import java.io.File;
+import java.io.IOException;
 import java.net.UnknownHostException;
 import java.nio.file.Paths;
+import java.util.function.Supplier;
 
 import javax.ws.rs.BeanParam;
 import javax.ws.rs.Consumes;
@@ -16,16 +19,21 @@ import javax.ws.rs.core.Context;
 import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.Request;
 import javax.ws.rs.core.Response;
+import javax.ws.rs.core.UriInfo;
 
 import org.janelia.alignment.RenderParameters;
 import org.janelia.alignment.Utils;
+import org.janelia.alignment.betterbox.BoxData;
+import org.janelia.alignment.betterbox.RenderedBoxParent;
 import org.janelia.alignment.spec.Bounds;
 import org.janelia.alignment.spec.stack.StackId;
 import org.janelia.alignment.spec.stack.StackMetaData;
 import org.janelia.alignment.spec.stack.StackStats;
 import org.janelia.render.service.model.RenderQueryParameters;
+import org.janelia.render.service.util.BoxMaterializationQueue;
 import org.janelia.render.service.util.RenderServiceUtil;
 import org.janelia.render.service.util.ResponseHelper;
+import org.janelia.render.service.util.SharedBoxMaterializationQueue;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -63,7 +71,7 @@ public class RenderImageService {
             value = "Render JPEG image from a provided spec")
     public Response renderJpegImageFromProvidedParameters(@PathParam("owner") final String owner,
                                                           final RenderParameters renderParameters) {
-        return RenderServiceUtil.renderImageStream(renderParameters,
+        return RenderServiceUtil.renderImageStream(() -> renderParameters,
                                                    Utils.JPEG_FORMAT,
                                                    RenderServiceUtil.IMAGE_JPEG_MIME_TYPE,
                                                    null,
@@ -80,7 +88,7 @@ public class RenderImageService {
             value = "Render PNG image from a provided spec")
     public Response renderPngImageFromProvidedParameters(@PathParam("owner") final String owner,
                                                          final RenderParameters renderParameters) {
-        return RenderServiceUtil.renderImageStream(renderParameters,
+        return RenderServiceUtil.renderImageStream(() -> renderParameters,
                                                    Utils.PNG_FORMAT,
                                                    RenderServiceUtil.IMAGE_PNG_MIME_TYPE,
                                                    null,
@@ -97,7 +105,7 @@ public class RenderImageService {
             value = "Render TIFF image from a provided spec")
     public Response renderTiffImageFromProvidedParameters(@PathParam("owner") final String owner,
                                                           final RenderParameters renderParameters) {
-        return RenderServiceUtil.renderImageStream(renderParameters,
+        return RenderServiceUtil.renderImageStream(() -> renderParameters,
                                                    Utils.TIFF_FORMAT,
                                                    RenderServiceUtil.IMAGE_TIFF_MIME_TYPE,
                                                    null,
@@ -116,18 +124,20 @@ public class RenderImageService {
                                         @PathParam("z") final Double z,
                                         @BeanParam final RenderQueryParameters renderQueryParameters,
                                         @QueryParam("maxTileSpecsToRender") final Integer maxTileSpecsToRender,
-                                        @Context final Request request) {
+                                        @Context final Request request,
+                                        @Context final UriInfo uriInfo) {
 
         LOG.info("renderJpegImageForZ: entry, owner={}, project={}, stack={}, z={}",
                  owner, project, stack, z);
 
         renderQueryParameters.setDefaultScale(0.01);
 
-        final ResponseHelper responseHelper = new ResponseHelper(request, getStackMetaData(owner, project, stack));
+        final ResponseHelper responseHelper =
+                new ResponseHelper(request, getStackMetaData(owner, project, stack), uriInfo);
         if (responseHelper.isModified()) {
-            final RenderParameters renderParameters =
-                    renderDataService.getRenderParametersForZ(owner, project, stack, z, renderQueryParameters);
-            return RenderServiceUtil.renderJpegImage(renderParameters, maxTileSpecsToRender, responseHelper);
+            final Supplier<RenderParameters> renderParametersSupplier =
+                    () -> renderDataService.getRenderParametersForZ(owner, project, stack, z, renderQueryParameters);
+            return RenderServiceUtil.renderJpegImage(renderParametersSupplier, maxTileSpecsToRender, responseHelper);
         } else {
             return responseHelper.getNotModifiedResponse();
         }
@@ -145,18 +155,20 @@ public class RenderImageService {
                                        @PathParam("z") final Double z,
                                        @BeanParam final RenderQueryParameters renderQueryParameters,
                                        @QueryParam("maxTileSpecsToRender") final Integer maxTileSpecsToRender,
-                                       @Context final Request request) {
+                                       @Context final Request request,
+                                       @Context final UriInfo uriInfo) {
 
         LOG.info("renderPngImageForZ: entry, owner={}, project={}, stack={}, z={}",
                  owner, project, stack, z);
 
         renderQueryParameters.setDefaultScale(0.01);
 
-        final ResponseHelper responseHelper = new ResponseHelper(request, getStackMetaData(owner, project, stack));
+        final ResponseHelper responseHelper =
+                new ResponseHelper(request, getStackMetaData(owner, project, stack), uriInfo);
         if (responseHelper.isModified()) {
-            final RenderParameters renderParameters =
-                    renderDataService.getRenderParametersForZ(owner, project, stack, z, renderQueryParameters);
-            return RenderServiceUtil.renderPngImage(renderParameters, maxTileSpecsToRender, responseHelper);
+            final Supplier<RenderParameters> renderParametersSupplier =
+                    () -> renderDataService.getRenderParametersForZ(owner, project, stack, z, renderQueryParameters);
+            return RenderServiceUtil.renderPngImage(renderParametersSupplier, maxTileSpecsToRender, responseHelper);
         } else {
             return responseHelper.getNotModifiedResponse();
         }
@@ -174,18 +186,20 @@ public class RenderImageService {
                                         @PathParam("z") final Double z,
                                         @BeanParam final RenderQueryParameters renderQueryParameters,
                                         @QueryParam("maxTileSpecsToRender") final Integer maxTileSpecsToRender,
-                                        @Context final Request request) {
+                                        @Context final Request request,
+                                        @Context final UriInfo uriInfo) {
 
         LOG.info("renderTiffImageForZ: entry, owner={}, project={}, stack={}, z={}",
                  owner, project, stack, z);
 
         renderQueryParameters.setDefaultScale(0.01);
 
-        final ResponseHelper responseHelper = new ResponseHelper(request, getStackMetaData(owner, project, stack));
+        final ResponseHelper responseHelper =
+                new ResponseHelper(request, getStackMetaData(owner, project, stack), uriInfo);
         if (responseHelper.isModified()) {
-            final RenderParameters renderParameters =
-                    renderDataService.getRenderParametersForZ(owner, project, stack, z, renderQueryParameters);
-            return RenderServiceUtil.renderTiffImage(renderParameters, maxTileSpecsToRender, responseHelper);
+            final Supplier<RenderParameters> renderParametersSupplier =
+                    () -> renderDataService.getRenderParametersForZ(owner, project, stack, z, renderQueryParameters);
+            return RenderServiceUtil.renderTiffImage(renderParametersSupplier, maxTileSpecsToRender, responseHelper);
         } else {
             return responseHelper.getNotModifiedResponse();
         }
@@ -208,17 +222,19 @@ public class RenderImageService {
                                           @PathParam("scale") final Double scale,
                                           @BeanParam final RenderQueryParameters renderQueryParameters,
                                           @QueryParam("maxTileSpecsToRender") final Integer maxTileSpecsToRender,
-                                          @Context final Request request) {
+                                          @Context final Request request,
+                                          @Context final UriInfo uriInfo) {
 
         LOG.info("renderJpegImageForBox: entry");
 
-        final ResponseHelper responseHelper = new ResponseHelper(request, getStackMetaData(owner, project, stack));
+        final ResponseHelper responseHelper =
+                new ResponseHelper(request, getStackMetaData(owner, project, stack), uriInfo);
         if (responseHelper.isModified()) {
-            final RenderParameters renderParameters =
-                    getRenderParametersForGroupBox(owner, project, stack, null,
-                                                   x, y, z, width, height, scale,
-                                                   renderQueryParameters);
-            return RenderServiceUtil.renderJpegImage(renderParameters, maxTileSpecsToRender, responseHelper);
+            final Supplier<RenderParameters> renderParametersSupplier =
+                    () -> getRenderParametersForGroupBox(owner, project, stack, null,
+                                                         x, y, z, width, height, scale,
+                                                         renderQueryParameters);
+            return RenderServiceUtil.renderJpegImage(renderParametersSupplier, maxTileSpecsToRender, responseHelper);
         } else {
             return responseHelper.getNotModifiedResponse();
         }
@@ -240,9 +256,10 @@ public class RenderImageService {
                                               @PathParam("height") final Integer height,
                                               @BeanParam final RenderQueryParameters renderQueryParameters,
                                               @QueryParam("maxTileSpecsToRender") final Integer maxTileSpecsToRender,
-                                              @Context final Request request) {
+                                              @Context final Request request,
+                                              @Context final UriInfo uriInfo) {
         return renderJpegImageForBox(owner, project, stack, x, y, z, width, height, null,
-                                     renderQueryParameters, maxTileSpecsToRender, request);
+                                     renderQueryParameters, maxTileSpecsToRender, request, uriInfo);
     }
 
     @Path("v1/owner/{owner}/project/{project}/stack/{stack}/z/{z}/box/{x},{y},{width},{height},{scale}/png-image")
@@ -262,17 +279,19 @@ public class RenderImageService {
                                          @PathParam("scale") final Double scale,
                                          @BeanParam final RenderQueryParameters renderQueryParameters,
                                          @QueryParam("maxTileSpecsToRender") final Integer maxTileSpecsToRender,
-                                         @Context final Request request) {
+                                         @Context final Request request,
+                                         @Context final UriInfo uriInfo) {
 
         LOG.info("renderPngImageForBox: entry");
 
-        final ResponseHelper responseHelper = new ResponseHelper(request, getStackMetaData(owner, project, stack));
+        final ResponseHelper responseHelper =
+                new ResponseHelper(request, getStackMetaData(owner, project, stack), uriInfo);
         if (responseHelper.isModified()) {
-            final RenderParameters renderParameters =
-                    getRenderParametersForGroupBox(owner, project, stack, null,
-                                                   x, y, z, width, height, scale,
-                                                   renderQueryParameters);
-            return RenderServiceUtil.renderPngImage(renderParameters, maxTileSpecsToRender, responseHelper);
+            final Supplier<RenderParameters> renderParametersSupplier =
+                    () -> getRenderParametersForGroupBox(owner, project, stack, null,
+                                                         x, y, z, width, height, scale,
+                                                         renderQueryParameters);
+            return RenderServiceUtil.renderPngImage(renderParametersSupplier, maxTileSpecsToRender, responseHelper);
         } else {
             return responseHelper.getNotModifiedResponse();
         }
@@ -294,9 +313,10 @@ public class RenderImageService {
                                              @PathParam("height") final Integer height,
                                              @BeanParam final RenderQueryParameters renderQueryParameters,
                                              @QueryParam("maxTileSpecsToRender") final Integer maxTileSpecsToRender,
-                                             @Context final Request request) {
+                                             @Context final Request request,
+                                             @Context final UriInfo uriInfo) {
         return renderPngImageForBox(owner, project, stack, x, y, z, width, height, null,
-                                    renderQueryParameters, maxTileSpecsToRender, request);
+                                    renderQueryParameters, maxTileSpecsToRender, request, uriInfo);
     }
 
     @Path("v1/owner/{owner}/project/{project}/stack/{stack}/z/{z}/box/{x},{y},{width},{height},{scale}/tiff-image")
@@ -316,17 +336,19 @@ public class RenderImageService {
                                           @PathParam("scale") final Double scale,
                                           @BeanParam final RenderQueryParameters renderQueryParameters,
                                           @QueryParam("maxTileSpecsToRender") final Integer maxTileSpecsToRender,
-                                          @Context final Request request) {
+                                          @Context final Request request,
+                                          @Context final UriInfo uriInfo) {
 
         LOG.info("renderTiffImageForBox: entry");
 
-        final ResponseHelper responseHelper = new ResponseHelper(request, getStackMetaData(owner, project, stack));
+        final ResponseHelper responseHelper =
+                new ResponseHelper(request, getStackMetaData(owner, project, stack), uriInfo);
         if (responseHelper.isModified()) {
-            final RenderParameters renderParameters =
-                    getRenderParametersForGroupBox(owner, project, stack, null,
-                                                   x, y, z, width, height, scale,
-                                                   renderQueryParameters);
-            return RenderServiceUtil.renderTiffImage(renderParameters, maxTileSpecsToRender, responseHelper);
+            final Supplier<RenderParameters> renderParametersSupplier =
+                    () -> getRenderParametersForGroupBox(owner, project, stack, null,
+                                                         x, y, z, width, height, scale,
+                                                         renderQueryParameters);
+            return RenderServiceUtil.renderTiffImage(renderParametersSupplier, maxTileSpecsToRender, responseHelper);
         } else {
             return responseHelper.getNotModifiedResponse();
         }
@@ -349,17 +371,20 @@ public class RenderImageService {
                                             @PathParam("scale") final Double scale,
                                             @BeanParam final RenderQueryParameters renderQueryParameters,
                                             @QueryParam("maxTileSpecsToRender") final Integer maxTileSpecsToRender,
-                                            @Context final Request request) {
+                                            @Context final Request request,
+                                            @Context final UriInfo uriInfo) {
 
         LOG.info("renderTiffImageForBox: entry");
 
-        final ResponseHelper responseHelper = new ResponseHelper(request, getStackMetaData(owner, project, stack));
+        final ResponseHelper responseHelper =
+                new ResponseHelper(request, getStackMetaData(owner, project, stack), uriInfo);
         if (responseHelper.isModified()) {
-            final RenderParameters renderParameters =
-                    getRenderParametersForGroupBox(owner, project, stack, null,
-                                                   x, y, z, width, height, scale,
-                                                   renderQueryParameters);
-            return RenderServiceUtil.renderTiffImage(renderParameters, maxTileSpecsToRender, responseHelper, true);
+            final Supplier<RenderParameters> renderParametersSupplier =
+                    () -> getRenderParametersForGroupBox(owner, project, stack, null,
+                                                         x, y, z, width, height, scale,
+                                                         renderQueryParameters);
+            return RenderServiceUtil.renderTiffImage(renderParametersSupplier, maxTileSpecsToRender, responseHelper,
+                                                     true);
         } else {
             return responseHelper.getNotModifiedResponse();
         }
@@ -380,9 +405,10 @@ public class RenderImageService {
                                               @PathParam("height") final Integer height,
                                               @BeanParam final RenderQueryParameters renderQueryParameters,
                                               @QueryParam("maxTileSpecsToRender") final Integer maxTileSpecsToRender,
-                                              @Context final Request request) {
+                                              @Context final Request request,
+                                              @Context final UriInfo uriInfo) {
         return renderTiffImageForBox(owner, project, stack, x, y, z, width, height, null,
-                                     renderQueryParameters, maxTileSpecsToRender, request);
+                                     renderQueryParameters, maxTileSpecsToRender, request, uriInfo);
     }
 
     @Path("v1/owner/{owner}/project/{project}/stack/{stack}/group/{groupId}/z/{z}/box/{x},{y},{width},{height},{scale}/jpeg-image")
@@ -403,17 +429,19 @@ public class RenderImageService {
                                                @PathParam("scale") final Double scale,
                                                @BeanParam final RenderQueryParameters renderQueryParameters,
                                                @QueryParam("maxTileSpecsToRender") final Integer maxTileSpecsToRender,
-                                               @Context final Request request) {
+                                               @Context final Request request,
+                                               @Context final UriInfo uriInfo) {
 
         LOG.info("renderJpegImageForGroupBox: entry");
 
-        final ResponseHelper responseHelper = new ResponseHelper(request, getStackMetaData(owner, project, stack));
+        final ResponseHelper responseHelper =
+                new ResponseHelper(request, getStackMetaData(owner, project, stack), uriInfo);
         if (responseHelper.isModified()) {
-            final RenderParameters renderParameters =
-                    getRenderParametersForGroupBox(owner, project, stack, groupId,
-                                                   x, y, z, width, height, scale,
-                                                   renderQueryParameters);
-            return RenderServiceUtil.renderJpegImage(renderParameters, maxTileSpecsToRender, responseHelper);
+            final Supplier<RenderParameters> renderParametersSupplier =
+                    () -> getRenderParametersForGroupBox(owner, project, stack, groupId,
+                                                         x, y, z, width, height, scale,
+                                                         renderQueryParameters);
+            return RenderServiceUtil.renderJpegImage(renderParametersSupplier, maxTileSpecsToRender, responseHelper);
         } else {
             return responseHelper.getNotModifiedResponse();
         }
@@ -436,9 +464,10 @@ public class RenderImageService {
                                                    @PathParam("height") final Integer height,
                                                    @BeanParam final RenderQueryParameters renderQueryParameters,
                                                    @QueryParam("maxTileSpecsToRender") final Integer maxTileSpecsToRender,
-                                                   @Context final Request request) {
+                                                   @Context final Request request,
+                                                   @Context final UriInfo uriInfo) {
         return renderJpegImageForGroupBox(owner, project, stack, groupId, x, y, z, width, height, null,
-                                          renderQueryParameters, maxTileSpecsToRender, request);
+                                          renderQueryParameters, maxTileSpecsToRender, request, uriInfo);
     }
 
     @Path("v1/owner/{owner}/project/{project}/stack/{stack}/group/{groupId}/z/{z}/box/{x},{y},{width},{height},{scale}/png-image")
@@ -459,17 +488,19 @@ public class RenderImageService {
                                               @PathParam("scale") final Double scale,
                                               @BeanParam final RenderQueryParameters renderQueryParameters,
                                               @QueryParam("maxTileSpecsToRender") final Integer maxTileSpecsToRender,
-                                              @Context final Request request) {
+                                              @Context final Request request,
+                                              @Context final UriInfo uriInfo) {
 
         LOG.info("renderPngImageForGroupBox: entry");
 
-        final ResponseHelper responseHelper = new ResponseHelper(request, getStackMetaData(owner, project, stack));
+        final ResponseHelper responseHelper =
+                new ResponseHelper(request, getStackMetaData(owner, project, stack), uriInfo);
         if (responseHelper.isModified()) {
-            final RenderParameters renderParameters =
-                    getRenderParametersForGroupBox(owner, project, stack, groupId,
-                                                   x, y, z, width, height, scale,
-                                                   renderQueryParameters);
-            return RenderServiceUtil.renderPngImage(renderParameters, maxTileSpecsToRender, responseHelper);
+            final Supplier<RenderParameters> renderParametersSupplier =
+                    () -> getRenderParametersForGroupBox(owner, project, stack, groupId,
+                                                         x, y, z, width, height, scale,
+                                                         renderQueryParameters);
+            return RenderServiceUtil.renderPngImage(renderParametersSupplier, maxTileSpecsToRender, responseHelper);
         } else {
             return responseHelper.getNotModifiedResponse();
         }
@@ -492,9 +523,10 @@ public class RenderImageService {
                                                   @PathParam("height") final Integer height,
                                                   @BeanParam final RenderQueryParameters renderQueryParameters,
                                                   @QueryParam("maxTileSpecsToRender") final Integer maxTileSpecsToRender,
-                                                  @Context final Request request) {
+                                                  @Context final Request request,
+                                                  @Context final UriInfo uriInfo) {
         return renderPngImageForGroupBox(owner, project, stack, groupId, x, y, z, width, height, null,
-                                         renderQueryParameters, maxTileSpecsToRender, request);
+                                         renderQueryParameters, maxTileSpecsToRender, request, uriInfo);
     }
 
     @Path("v1/owner/{owner}/project/{project}/stack/{stack}/group/{groupId}/z/{z}/box/{x},{y},{width},{height},{scale}/tiff-image")
@@ -515,17 +547,19 @@ public class RenderImageService {
                                                @PathParam("scale") final Double scale,
                                                @BeanParam final RenderQueryParameters renderQueryParameters,
                                                @QueryParam("maxTileSpecsToRender") final Integer maxTileSpecsToRender,
-                                               @Context final Request request) {
+                                               @Context final Request request,
+                                               @Context final UriInfo uriInfo) {
 
         LOG.info("renderTiffImageForGroupBox: entry");
 
-        final ResponseHelper responseHelper = new ResponseHelper(request, getStackMetaData(owner, project, stack));
+        final ResponseHelper responseHelper =
+                new ResponseHelper(request, getStackMetaData(owner, project, stack), uriInfo);
         if (responseHelper.isModified()) {
-            final RenderParameters renderParameters =
-                    getRenderParametersForGroupBox(owner, project, stack, groupId,
-                                                   x, y, z, width, height, scale,
-                                                   renderQueryParameters);
-            return RenderServiceUtil.renderTiffImage(renderParameters, maxTileSpecsToRender, responseHelper);
+            final Supplier<RenderParameters> renderParametersSupplier =
+                    () -> getRenderParametersForGroupBox(owner, project, stack, groupId,
+                                                         x, y, z, width, height, scale,
+                                                         renderQueryParameters);
+            return RenderServiceUtil.renderTiffImage(renderParametersSupplier, maxTileSpecsToRender, responseHelper);
         } else {
             return responseHelper.getNotModifiedResponse();
         }
@@ -548,9 +582,10 @@ public class RenderImageService {
                                                    @PathParam("height") final Integer height,
                                                    @BeanParam final RenderQueryParameters renderQueryParameters,
                                                    @QueryParam("maxTileSpecsToRender") final Integer maxTileSpecsToRender,
-                                                   @Context final Request request) {
+                                                   @Context final Request request,
+                                                   @Context final UriInfo uriInfo) {
         return renderTiffImageForGroupBox(owner, project, stack, groupId, x, y, z, width, height, null,
-                                          renderQueryParameters, maxTileSpecsToRender, request);
+                                          renderQueryParameters, maxTileSpecsToRender, request, uriInfo);
     }
 
     @Path("v1/owner/{owner}/project/{project}/stack/{stack}/largeDataTileSource/{width}/{height}/{level}/{z}/{row}/{column}.jpg")
@@ -570,11 +605,12 @@ public class RenderImageService {
                                                   @PathParam("column") final Integer column,
                                                   @BeanParam final RenderQueryParameters renderQueryParameters,
                                                   @QueryParam("maxTileSpecsToRender") final Integer maxTileSpecsToRender,
-                                                  @Context final Request request) {
+                                                  @Context final Request request,
+                                                  @Context final UriInfo uriInfo) {
 
         return renderLargeDataTileSource(owner, project, stack, width, height, level, z, row, column,
                                          Utils.JPEG_FORMAT, RenderServiceUtil.IMAGE_JPEG_MIME_TYPE,
-                                         renderQueryParameters, maxTileSpecsToRender, request);
+                                         renderQueryParameters, maxTileSpecsToRender, request, uriInfo);
     }
 
 
@@ -594,12 +630,13 @@ public class RenderImageService {
                                                 @BeanParam final RenderQueryParameters renderQueryParameters,
                                                 @QueryParam("maxTileSpecsToRender") final Integer maxTileSpecsToRender,
                                                 @QueryParam("translateOrigin") final Boolean translateOrigin,
-                                                @Context final Request request) {
+                                                @Context final Request request,
+                                                @Context final UriInfo uriInfo) {
 
         return renderLargeDataOverview(owner, project, stack, width, height, z,
                                        Utils.JPEG_FORMAT, RenderServiceUtil.IMAGE_JPEG_MIME_TYPE,
                                        maxOverviewWidthAndHeight, renderQueryParameters,
-                                       maxTileSpecsToRender, translateOrigin, request);
+                                       maxTileSpecsToRender, translateOrigin, request, uriInfo);
     }
 
     @Path("v1/owner/{owner}/project/{project}/stack/{stack}/largeDataTileSource/{width}/{height}/{level}/{z}/{row}/{column}.png")
@@ -619,11 +656,12 @@ public class RenderImageService {
                                                  @PathParam("column") final Integer column,
                                                  @BeanParam final RenderQueryParameters renderQueryParameters,
                                                  @QueryParam("maxTileSpecsToRender") final Integer maxTileSpecsToRender,
-                                                 @Context final Request request) {
+                                                 @Context final Request request,
+                                                 @Context final UriInfo uriInfo) {
 
         return renderLargeDataTileSource(owner, project, stack, width, height, level, z, row, column,
                                          Utils.PNG_FORMAT, RenderServiceUtil.IMAGE_PNG_MIME_TYPE,
-                                         renderQueryParameters, maxTileSpecsToRender, request);
+                                         renderQueryParameters, maxTileSpecsToRender, request, uriInfo);
     }
 
     @Path("v1/owner/{owner}/project/{project}/stack/{stack}/largeDataTileSource/{width}/{height}/small/{z}.png")
@@ -642,12 +680,13 @@ public class RenderImageService {
                                                @BeanParam final RenderQueryParameters renderQueryParameters,
                                                @QueryParam("maxTileSpecsToRender") final Integer maxTileSpecsToRender,
                                                @QueryParam("translateOrigin") final Boolean translateOrigin,
-                                               @Context final Request request) {
+                                               @Context final Request request,
+                                               @Context final UriInfo uriInfo) {
 
         return renderLargeDataOverview(owner, project, stack, width, height, z,
                                        Utils.PNG_FORMAT, RenderServiceUtil.IMAGE_PNG_MIME_TYPE,
                                        maxOverviewWidthAndHeight, renderQueryParameters,
-                                       maxTileSpecsToRender, translateOrigin, request);
+                                       maxTileSpecsToRender, translateOrigin, request, uriInfo);
     }
 
     private Response renderLargeDataTileSource(final String owner,
@@ -663,16 +702,24 @@ public class RenderImageService {
                                                final String mimeType,
                                                final RenderQueryParameters renderQueryParameters,
                                                Integer maxTileSpecsToRender,
-                                               final Request request) {
+                                               final Request request,
+                                               final UriInfo uriInfo) {
 
         LOG.info("renderLargeDataTileSource: entry, stack={}, width={}, height={}, z={}, row={}, column={}",
                  stack, width, height, z, row, column);
 
         final StackMetaData stackMetaData = getStackMetaData(owner, project, stack);
-        final ResponseHelper responseHelper = new ResponseHelper(request, stackMetaData);
+        final ResponseHelper responseHelper = new ResponseHelper(request, stackMetaData, uriInfo);
         if (responseHelper.isModified()) {
 
+            // materialized boxes are shared by all clients, so they are always rendered with stack defaults
+            final BoxMaterializationQueue.BoxRenderer boxRenderer =
+                    () -> renderLargeDataTileSourceForMaterialization(stackMetaData, width, height, level, z,
+                                                                      row, column, format);
+
             final File sourceFile = getLargeDataFile(stackMetaData,
+                                                     format,
+                                                     boxRenderer,
                                                      width + "x" + height,
                                                      level.toString(),
                                                      String.valueOf(z.intValue()),
@@ -681,23 +728,15 @@ public class RenderImageService {
 
             if (sourceFile == null) {
 
-                final double factor = 1 << level;
-                final double scaledWidth = width * factor;
-                final double scaledHeight = height * factor;
-                final double x = column * scaledWidth;
-                final double y = row * scaledHeight;
-                final double scale = 1.0 / factor;
-
-                final RenderParameters renderParameters =
-                        getRenderParametersForGroupBox(owner, project, stack, null,
-                                                       x, y, z, (int) scaledWidth, (int) scaledHeight, scale,
-                                                       renderQueryParameters);
+                final Supplier<RenderParameters> renderParametersSupplier =
+                        () -> getLargeDataTileSourceRenderParameters(owner, project, stack, width, height, level, z,
+                                                                     row, column, renderQueryParameters);
 
                 if (maxTileSpecsToRender == null) {
                     maxTileSpecsToRender = DEFAULT_MAX_TILE_SPECS_FOR_LARGE_DATA;
                 }
 
-                return RenderServiceUtil.renderImageStream(renderParameters,
+                return RenderServiceUtil.renderImageStream(renderParametersSupplier,
                                                            format,
                                                            mimeType,
                                                            maxTileSpecsToRender,
@@ -724,79 +763,44 @@ public class RenderImageService {
                                              final Double z,
                                              final String format,
                                              final String mimeType,
-                                             Integer maxOverviewWidthAndHeight,
+                                             final Integer maxOverviewWidthAndHeight,
                                              final RenderQueryParameters renderQueryParameters,
                                              Integer maxTileSpecsToRender,
                                              final Boolean translateOrigin,
-                                             final Request request) {
+                                             final Request request,
+                                             final UriInfo uriInfo) {
 
         LOG.info("renderLargeDataOverview: entry, stack={}, width={}, height={}, z={}",
                  stack, width, height, z);
 
         final StackMetaData stackMetaData = getStackMetaData(owner, project, stack);
-        final ResponseHelper responseHelper = new ResponseHelper(request, stackMetaData);
+        final ResponseHelper responseHelper = new ResponseHelper(request, stackMetaData, uriInfo);
         if (responseHelper.isModified()) {
 
+            // materialized boxes are shared by all clients, so they are always rendered with stack defaults
+            final BoxMaterializationQueue.BoxRenderer boxRenderer =
+                    () -> renderForMaterialization(
+                            getLargeDataOverviewRenderParameters(stackMetaData, z, null,
+                                                                 null, new RenderQueryParameters()));
+
             final File overviewSourceFile = getLargeDataFile(stackMetaData,
+                                                             format,
+                                                             boxRenderer,
                                                              width + "x" + height,
                                                              "small",
                                                              String.valueOf(z.intValue()) + "." + format);
 
             if (overviewSourceFile == null) {
 
-                Double stackMinX = 0.0;
-                Double stackMinY = 0.0;
-                int stackWidth = 1;
-                int stackHeight = 1;
-
-                final StackStats stats = stackMetaData.getStats();
-                if (stats != null) {
-                    final Bounds stackBounds = stats.getStackBounds();
-                    if (stackBounds != null) {
-
-                        stackWidth = stackBounds.getMaxX().intValue();
-                        stackHeight = stackBounds.getMaxY().intValue();
-
-                        // CATMAID overviews are expected to reflect a (0,0) origin and
-                        // stacks are expected to be entirely in positive space.
-                        // If the request explicitly asks for translation or
-                        // if one dimension of the stack is entirely in negative space,
-                        // render the overview as if the stack's minimum coordinate was (0,0).
-
-                        if (((translateOrigin != null) && translateOrigin) ||
-                            (stackWidth < 1) || (stackHeight < 1)) {
-                            stackMinX = stackBounds.getMinX();
-                            stackMinY = stackBounds.getMinY();
-                            stackWidth = stackBounds.getMaxX().intValue() - stackMinX.intValue();
-                            stackHeight = stackBounds.getMaxY().intValue() - stackMinY.intValue();
-                        }
-
-                    }
-                }
-
-                if ((maxOverviewWidthAndHeight == null) || (maxOverviewWidthAndHeight < 1)) {
-                    // default to 192 since CATMAID overview box is 192x192
-                    maxOverviewWidthAndHeight = 192;
-                }
-
-                // scale overview image based upon larger dimension - width or height
-                final double scale;
-                if (stackWidth > stackHeight) {
-                    scale = (double) maxOverviewWidthAndHeight / stackWidth;
-                } else {
-                    scale = (double) maxOverviewWidthAndHeight / stackHeight;
-                }
-
-                final RenderParameters renderParameters =
-                        getRenderParametersForGroupBox(owner, project, stack, null,
-                                                       stackMinX, stackMinY, z, stackWidth, stackHeight, scale,
-                                                       renderQueryParameters);
+                final Supplier<RenderParameters> renderParametersSupplier =
+                        () -> getLargeDataOverviewRenderParameters(stackMetaData, z, maxOverviewWidthAndHeight,
+                                                                   translateOrigin, renderQueryParameters);
 
                 if (maxTileSpecsToRender == null) {
                     maxTileSpecsToRender = DEFAULT_MAX_TILE_SPECS_FOR_LARGE_DATA;
                 }
 
-                return RenderServiceUtil.renderImageStream(renderParameters,
+                return RenderServiceUtil.renderImageStream(renderParametersSupplier,
                                                            format,
                                                            mimeType,
                                                            maxTileSpecsToRender,
@@ -815,7 +819,160 @@ public class RenderImageService {
         }
     }
 
+    private RenderParameters getLargeDataTileSourceRenderParameters(final String owner,
+                                                                    final String project,
+                                                                    final String stack,
+                                                                    final Integer width,
+                                                                    final Integer height,
+                                                                    final Integer level,
+                                                                    final Double z,
+                                                                    final Integer row,
+                                                                    final Integer column,
+                                                                    final RenderQueryParameters renderQueryParameters) {
+        final double factor = 1 << level;
+        final double scaledWidth = width * factor;
+        final double scaledHeight = height * factor;
+        final double x = column * scaledWidth;
+        final double y = row * scaledHeight;
+        final double scale = 1.0 / factor;
+
+        return getRenderParametersForGroupBox(owner, project, stack, null,
+                                              x, y, z, (int) scaledWidth, (int) scaledHeight, scale,
+                                              renderQueryParameters);
+    }
+
+    private RenderParameters getLargeDataOverviewRenderParameters(final StackMetaData stackMetaData,
+                                                                  final Double z,
+                                                                  final Integer maxOverviewWidthAndHeight,
+                                                                  final Boolean translateOrigin,
+                                                                  final RenderQueryParameters renderQueryParameters) {
+        Double stackMinX = 0.0;
+        Double stackMinY = 0.0;
+        int stackWidth = 1;
+        int stackHeight = 1;
+
+        final StackStats stats = stackMetaData.getStats();
+        if (stats != null) {
+            final Bounds stackBounds = stats.getStackBounds();
+            if (stackBounds != null) {
+
+                stackWidth = stackBounds.getMaxX().intValue();
+                stackHeight = stackBounds.getMaxY().intValue();
+
+                // CATMAID overviews are expected to reflect a (0,0) origin and
+                // stacks are expected to be entirely in positive space.
+                // If the request explicitly asks for translation or
+                // if one dimension of the stack is entirely in negative space,
+                // render the overview as if the stack's minimum coordinate was (0,0).
+
+                if (((translateOrigin != null) && translateOrigin) ||
+                    (stackWidth < 1) || (stackHeight < 1)) {
+                    stackMinX = stackBounds.getMinX();
+                    stackMinY = stackBounds.getMinY();
+                    stackWidth = stackBounds.getMaxX().intValue() - stackMinX.intValue();
+                    stackHeight = stackBounds.getMaxY().intValue() - stackMinY.intValue();
+                }
+
+            }
+        }
+
+        // default to 192 since CATMAID overview box is 192x192
+        int maxWidthAndHeight = 192;
+        if ((maxOverviewWidthAndHeight != null) && (maxOverviewWidthAndHeight > 0)) {
+            maxWidthAndHeight = maxOverviewWidthAndHeight;
+        }
+
+        // scale overview image based upon larger dimension - width or height
+        final double scale;
+        if (stackWidth > stackHeight) {
+            scale = (double) maxWidthAndHeight / stackWidth;
+        } else {
+            scale = (double) maxWidthAndHeight / stackHeight;
+        }
+
+        final StackId stackId = stackMetaData.getStackId();
+        return getRenderParametersForGroupBox(stackId.getOwner(), stackId.getProject(), stackId.getStack(), null,
+                                              stackMinX, stackMinY, z, stackWidth, stackHeight, scale,
+                                              renderQueryParameters);
+    }
+
+    /**
+     * Renders a large data box for materialization the same way the betterbox BoxGenerator does:
+     * boxes above level 0 are downsampled from their four already materialized children when possible,
+     * otherwise boxes are rendered from their tile specs.
+     * Since materialized boxes are served to every client, request specific query parameters are never applied.
+     */
+    private BufferedImage renderLargeDataTileSourceForMaterialization(final StackMetaData stackMetaData,
+                                                                      final Integer width,
+                                                                      final Integer height,
+                                                                      final Integer level,
+                                                                      final Double z,
+                                                                      final Integer row,
+                                                                      final Integer column,
+                                                                      final String format)
+            throws IOException {
+
+        BufferedImage boxImage = null;
+
+        if (level > 0) {
+
+            final String baseBoxPath =
+                    Paths.get(stackMetaData.getCurrentMaterializedBoxRootPath(), width + "x" + height).toString();
+            final String boxPathSuffix = "." + format;
+
+            final BoxData boxData = new BoxData(z, level, row, column);
+            for (int childRow = row * 2; childRow < (row * 2) + 2; childRow++) {
+                for (int childColumn = column * 2; childColumn < (column * 2) + 2; childColumn++) {
+                    final BoxData childData = new BoxData(z, level - 1, childRow, childColumn);
+                    if (childData.getAbsoluteLevelFile(baseBoxPath, boxPathSuffix).exists()) {
+                        boxData.addChild(childData);
+                    }
+                }
+            }
+
+            // missing children may simply not be materialized yet, so only use complete sets of children
+            if (boxData.getChildCount() == 4) {
+                final RenderedBoxParent renderedBoxParent = new RenderedBoxParent(boxData,
+                                                                                  baseBoxPath,
+                                                                                  boxPathSuffix);
+                renderedBoxParent.loadChildren();
+                boxImage = renderedBoxParent.buildImage(width, height);
+            }
+        }
+
+        if (boxImage == null) {
+            final StackId stackId = stackMetaData.getStackId();
+            boxImage = renderForMaterialization(
+                    getLargeDataTileSourceRenderParameters(stackId.getOwner(), stackId.getProject(),
+                                                           stackId.getStack(), width, height, level, z,
+                                                           row, column, new RenderQueryParameters()));
+        }
+
+        return boxImage;
+    }
+
+    private BufferedImage renderForMaterialization(final RenderParameters renderParameters) {
+
+        BufferedImage image = null;
+
+        final int numberOfTileSpecs = renderParameters.numberOfTileSpecs();
+        if (numberOfTileSpecs <= MAX_TILE_SPECS_TO_MATERIALIZE) {
+            image = RenderServiceUtil.renderImage(renderParameters);
+        } else {
+            LOG.info("renderForMaterialization: skipping box with {} tile specs", numberOfTileSpecs);
+        }
+
+        return image;
+    }
+
+    /**
+     * @return the materialized file for the specified path elements or null if the file does not exist.
+     *         If the stack's materialized box root path is defined but the file does not exist,
+     *         the file will be queued for materialization.
+     */
     private File getLargeDataFile(final StackMetaData stackMetaData,
+                                  final String format,
+                                  final BoxMaterializationQueue.BoxRenderer boxRenderer,
                                   final String... additionalPathElements) {
 
         File file = null;
@@ -825,9 +982,8 @@ public class RenderImageService {
 
             file = Paths.get(rootPath, additionalPathElements).toFile();
 
-            queueLargeDataFileRequest(file);
-
             if (! file.exists()) {
+                queueLargeDataFileRequest(stackMetaData, file, format, boxRenderer);
                 // force dynamic rendering if materialized box does not exist
                 file = null;
             }
@@ -837,10 +993,33 @@ public class RenderImageService {
         return file;
     }
 
-    private void queueLargeDataFileRequest(final File file) {
-        // TODO: queue (POST) request for materialize service (will either generate file or just mark usage)
-        LOG.info("need to queue materialize service request for {}",
-                 file);
+    private void queueLargeDataFileRequest(final StackMetaData stackMetaData,
+                                           final File file,
+                                           final String format,
+                                           final BoxMaterializationQueue.BoxRenderer boxRenderer) {
+
+        final BoxMaterializationQueue queue = SharedBoxMaterializationQueue.getInstance();
+
+        // tile specs for loading stacks can still change, so don't materialize their boxes
+        if ((queue != null) && (! stackMetaData.isLoading())) {
+            // default parameters are only resolved when a newly queued box is saved
+            queue.add(file, format, () -> isMaterializedBoxConvertedToGray(stackMetaData), boxRenderer);
+        }
+    }
+
+    /**
+     * Materialized boxes are rendered with stack default parameters, so they are saved the same way
+     * dynamically rendered boxes with stack default parameters are written
+     * (see {@link RenderServiceUtil#renderImageStream}).
+     *
+     * @return true if materialized boxes for the specified stack should be converted to gray scale when saved.
+     */
+    private boolean isMaterializedBoxConvertedToGray(final StackMetaData stackMetaData) {
+        final RenderParameters defaultParameters = new RenderParameters();
+        new RenderQueryParameters().applyQueryAndDefaultParameters(defaultParameters,
+                                                                   stackMetaData,
+                                                                   renderDataService);
+        return defaultParameters.isConvertToGray();
     }
 
     private RenderParameters getRenderParametersForGroupBox(final String owner,
@@ -871,10 +1050,13 @@ public class RenderImageService {
                                            final String project,
                                            final String stack) {
         final StackId stackId = new StackId(owner, project, stack);
-        return renderDataService.getStackMetaData(stackId);
+        return renderDataService.getCachedStackMetaData(stackId);
     }
 
     private static final Logger LOG = LoggerFactory.getLogger(RenderImageService.class);
 
     private static final Integer DEFAULT_MAX_TILE_SPECS_FOR_LARGE_DATA = 40;
+
+    /** Boxes with more tiles than this are left for offline (e.g. betterbox) materialization. */
+    private static final int MAX_TILE_SPECS_TO_MATERIALIZE = 500;
 }
@@ -982,6 +982,22 @@ public class StackMetaDataService {
         return stackMetaData;
     }
 
+    /**
+     * @return recently cached meta data for the specified stack (only use for read and render requests).
+     */
+    public static StackMetaData getCachedStackMetaData(final StackId stackId,
+                                                       final RenderDao renderDao)
+            throws ObjectNotFoundException {
+
+        final StackMetaData stackMetaData = renderDao.getCachedStackMetaData(stackId);
+        if (stackMetaData == null) {
+            throw getStackNotFoundException(stackId.getOwner(),
+                                            stackId.getProject(),
+                                            stackId.getStack());
+        }
+        return stackMetaData;
+    }
+
     static ObjectNotFoundException getStackNotFoundException(final String owner,
                                                              final String project,
                                                              final String stack) {
@@ -2,6 +2,7 @@ package org.janelia.render.service;
 
 import java.net.UnknownHostException;
 import java.util.Set;
+import java.util.function.Supplier;
 
 import javax.ws.rs.BeanParam;
 import javax.ws.rs.GET;
@@ -12,6 +13,7 @@ import javax.ws.rs.QueryParam;
 import javax.ws.rs.core.Context;
 import javax.ws.rs.core.Request;
 import javax.ws.rs.core.Response;
+import javax.ws.rs.core.UriInfo;
 
 import org.janelia.alignment.RenderParameters;
 import org.janelia.alignment.spec.stack.StackId;
@@ -70,19 +72,21 @@ public class TileImageService {
                                            @QueryParam("excludeTransformsAfterLast") final Set<String> excludeAfterLastLabels,
                                            @QueryParam("excludeFirstTransformAndAllAfter") final Set<String> excludeFirstAndAllAfterLabels,
                                            @QueryParam("excludeAllTransforms") final Boolean excludeAllTransforms,
-                                           @Context final Request request) {
+                                           @Context final Request request,
+                                           @Context final UriInfo uriInfo) {
 
         LOG.info("renderJpegImageForTile: entry, owner={}, project={}, stack={}, tileId={}",
                  owner, project, stack, tileId);
 
-        final ResponseHelper responseHelper = new ResponseHelper(request, getStackMetaData(owner, project, stack));
+        final ResponseHelper responseHelper =
+                new ResponseHelper(request, getStackMetaData(owner, project, stack), uriInfo);
         if (responseHelper.isModified()) {
-            final RenderParameters renderParameters =
-                    tileDataService.getRenderParameters(owner, project, stack, tileId, renderQueryParameters,
-                                                        width, height, normalizeForMatching,
-                                                        excludeAfterLastLabels, excludeFirstAndAllAfterLabels,
-                                                        excludeAllTransforms);
-            return RenderServiceUtil.renderJpegImage(renderParameters, null, responseHelper);
+            final Supplier<RenderParameters> renderParametersSupplier =
+                    () -> tileDataService.getRenderParameters(owner, project, stack, tileId, renderQueryParameters,
+                                                              width, height, normalizeForMatching,
+                                                              excludeAfterLastLabels, excludeFirstAndAllAfterLabels,
+                                                              excludeAllTransforms);
+            return RenderServiceUtil.renderJpegImage(renderParametersSupplier, null, responseHelper);
         } else {
             return responseHelper.getNotModifiedResponse();
         }
@@ -106,19 +110,21 @@ public class TileImageService {
                                           @QueryParam("excludeTransformsAfterLast") final Set<String> excludeAfterLastLabels,
                                           @QueryParam("excludeFirstTransformAndAllAfter") final Set<String> excludeFirstAndAllAfterLabels,
                                           @QueryParam("excludeAllTransforms") final Boolean excludeAllTransforms,
-                                          @Context final Request request) {
+                                          @Context final Request request,
+                                          @Context final UriInfo uriInfo) {
 
         LOG.info("renderPngImageForTile: entry, owner={}, project={}, stack={}, tileId={}",
                  owner, project, stack, tileId);
 
-        final ResponseHelper responseHelper = new ResponseHelper(request, getStackMetaData(owner, project, stack));
+        final ResponseHelper responseHelper =
+                new ResponseHelper(request, getStackMetaData(owner, project, stack), uriInfo);
         if (responseHelper.isModified()) {
-            final RenderParameters renderParameters =
-                    tileDataService.getRenderParameters(owner, project, stack, tileId, renderQueryParameters,
-                                                        width, height, normalizeForMatching,
-                                                        excludeAfterLastLabels, excludeFirstAndAllAfterLabels,
-                                                        excludeAllTransforms);
-            return RenderServiceUtil.renderPngImage(renderParameters, null, responseHelper);
+            final Supplier<RenderParameters> renderParametersSupplier =
+                    () -> tileDataService.getRenderParameters(owner, project, stack, tileId, renderQueryParameters,
+                                                              width, height, normalizeForMatching,
+                                                              excludeAfterLastLabels, excludeFirstAndAllAfterLabels,
+                                                              excludeAllTransforms);
+            return RenderServiceUtil.renderPngImage(renderParametersSupplier, null, responseHelper);
         } else {
             return responseHelper.getNotModifiedResponse();
         }
@@ -142,19 +148,21 @@ public class TileImageService {
                                            @QueryParam("excludeTransformsAfterLast") final Set<String> excludeAfterLastLabels,
                                            @QueryParam("excludeFirstTransformAndAllAfter") final Set<String> excludeFirstAndAllAfterLabels,
                                            @QueryParam("excludeAllTransforms") final Boolean excludeAllTransforms,
-                                           @Context final Request request) {
+                                           @Context final Request request,
+                                           @Context final UriInfo uriInfo) {
 
         LOG.info("renderTiffImageForTile: entry, owner={}, project={}, stack={}, tileId={}",
                  owner, project, stack, tileId);
 
-        final ResponseHelper responseHelper = new ResponseHelper(request, getStackMetaData(owner, project, stack));
+        final ResponseHelper responseHelper =
+                new ResponseHelper(request, getStackMetaData(owner, project, stack), uriInfo);
         if (responseHelper.isModified()) {
-            final RenderParameters renderParameters =
-                    tileDataService.getRenderParameters(owner, project, stack, tileId, renderQueryParameters,
-                                                        width, height, normalizeForMatching,
-                                                        excludeAfterLastLabels, excludeFirstAndAllAfterLabels,
-                                                        excludeAllTransforms);
-            return RenderServiceUtil.renderTiffImage(renderParameters, null, responseHelper);
+            final Supplier<RenderParameters> renderParametersSupplier =
+                    () -> tileDataService.getRenderParameters(owner, project, stack, tileId, renderQueryParameters,
+                                                              width, height, normalizeForMatching,
+                                                              excludeAfterLastLabels, excludeFirstAndAllAfterLabels,
+                                                              excludeAllTransforms);
+            return RenderServiceUtil.renderTiffImage(renderParametersSupplier, null, responseHelper);
         } else {
             return responseHelper.getNotModifiedResponse();
         }
@@ -172,17 +180,19 @@ public class TileImageService {
                                                  @PathParam("stack") final String stack,
                                                  @PathParam("tileId") final String tileId,
                                                  @BeanParam final RenderQueryParameters renderQueryParameters,
-                                                 @Context final Request request) {
+                                                 @Context final Request request,
+                                                 @Context final UriInfo uriInfo) {
 
         LOG.info("renderJpegSourceImageForTile: entry, owner={}, project={}, stack={}, tileId={}",
                  owner, project, stack, tileId);
 
-        final ResponseHelper responseHelper = new ResponseHelper(request, getStackMetaData(owner, project, stack));
+        final ResponseHelper responseHelper =
+                new ResponseHelper(request, getStackMetaData(owner, project, stack), uriInfo);
         if (responseHelper.isModified()) {
-            final RenderParameters renderParameters =
-                    tileDataService.getTileSourceRenderParameters(owner, project, stack, tileId, null,
-                                                                  renderQueryParameters);
-            return RenderServiceUtil.renderJpegImage(renderParameters, null, responseHelper);
+            final Supplier<RenderParameters> renderParametersSupplier =
+                    () -> tileDataService.getTileSourceRenderParameters(owner, project, stack, tileId, null,
+                                                                        renderQueryParameters);
+            return RenderServiceUtil.renderJpegImage(renderParametersSupplier, null, responseHelper);
         } else {
             return responseHelper.getNotModifiedResponse();
         }
@@ -200,17 +210,19 @@ public class TileImageService {
                                                 @PathParam("stack") final String stack,
                                                 @PathParam("tileId") final String tileId,
                                                 @BeanParam final RenderQueryParameters renderQueryParameters,
-                                                @Context final Request request) {
+                                                @Context final Request request,
+                                                @Context final UriInfo uriInfo) {
 
         LOG.info("renderPngSourceImageForTile: entry, owner={}, project={}, stack={}, tileId={}",
                  owner, project, stack, tileId);
 
-        final ResponseHelper responseHelper = new ResponseHelper(request, getStackMetaData(owner, project, stack));
+        final ResponseHelper responseHelper =
+                new ResponseHelper(request, getStackMetaData(owner, project, stack), uriInfo);
         if (responseHelper.isModified()) {
-            final RenderParameters renderParameters =
-                    tileDataService.getTileSourceRenderParameters(owner, project, stack, tileId, null,
-                                                                  renderQueryParameters);
-            return RenderServiceUtil.renderPngImage(renderParameters, null, responseHelper);
+            final Supplier<RenderParameters> renderParametersSupplier =
+                    () -> tileDataService.getTileSourceRenderParameters(owner, project, stack, tileId, null,
+                                                                        renderQueryParameters);
+            return RenderServiceUtil.renderPngImage(renderParametersSupplier, null, responseHelper);
         } else {
             return responseHelper.getNotModifiedResponse();
         }
@@ -228,17 +240,19 @@ public class TileImageService {
                                                  @PathParam("stack") final String stack,
                                                  @PathParam("tileId") final String tileId,
                                                  @BeanParam final RenderQueryParameters renderQueryParameters,
-                                                 @Context final Request request) {
+                                                 @Context final Request request,
+                                                 @Context final UriInfo uriInfo) {
 
         LOG.info("renderTiffSourceImageForTile: entry, owner={}, project={}, stack={}, tileId={}",
                  owner, project, stack, tileId);
 
-        final ResponseHelper responseHelper = new ResponseHelper(request, getStackMetaData(owner, project, stack));
+        final ResponseHelper responseHelper =
+                new ResponseHelper(request, getStackMetaData(owner, project, stack), uriInfo);
         if (responseHelper.isModified()) {
-            final RenderParameters renderParameters =
-                    tileDataService.getTileSourceRenderParameters(owner, project, stack, tileId, null,
-                                                                  renderQueryParameters);
-            return RenderServiceUtil.renderTiffImage(renderParameters, null, responseHelper);
+            final Supplier<RenderParameters> renderParametersSupplier =
+                    () -> tileDataService.getTileSourceRenderParameters(owner, project, stack, tileId, null,
+                                                                        renderQueryParameters);
+            return RenderServiceUtil.renderTiffImage(renderParametersSupplier, null, responseHelper);
         } else {
             return responseHelper.getNotModifiedResponse();
         }
@@ -256,17 +270,19 @@ public class TileImageService {
                                                @PathParam("stack") final String stack,
                                                @PathParam("tileId") final String tileId,
                                                @BeanParam final RenderQueryParameters renderQueryParameters,
-                                               @Context final Request request) {
+                                               @Context final Request request,
+                                               @Context final UriInfo uriInfo) {
 
         LOG.info("renderJpegMaskImageForTile: entry, owner={}, project={}, stack={}, tileId={}",
                  owner, project, stack, tileId);
 
-        final ResponseHelper responseHelper = new ResponseHelper(request, getStackMetaData(owner, project, stack));
+        final ResponseHelper responseHelper =
+                new ResponseHelper(request, getStackMetaData(owner, project, stack), uriInfo);
         if (responseHelper.isModified()) {
-            final RenderParameters renderParameters =
-                    tileDataService.getTileMaskRenderParameters(owner, project, stack, tileId, null,
-                                                                renderQueryParameters);
-            return RenderServiceUtil.renderJpegImage(renderParameters, null, responseHelper);
+            final Supplier<RenderParameters> renderParametersSupplier =
+                    () -> tileDataService.getTileMaskRenderParameters(owner, project, stack, tileId, null,
+                                                                      renderQueryParameters);
+            return RenderServiceUtil.renderJpegImage(renderParametersSupplier, null, responseHelper);
         } else {
             return responseHelper.getNotModifiedResponse();
         }
@@ -284,17 +300,19 @@ public class TileImageService {
                                               @PathParam("stack") final String stack,
                                               @PathParam("tileId") final String tileId,
                                               @BeanParam final RenderQueryParameters renderQueryParameters,
-                                              @Context final Request request) {
+                                              @Context final Request request,
+                                              @Context final UriInfo uriInfo) {
 
         LOG.info("renderPngMaskImageForTile: entry, owner={}, project={}, stack={}, tileId={}",
                  owner, project, stack, tileId);
 
-        final ResponseHelper responseHelper = new ResponseHelper(request, getStackMetaData(owner, project, stack));
+        final ResponseHelper responseHelper =
+                new ResponseHelper(request, getStackMetaData(owner, project, stack), uriInfo);
         if (responseHelper.isModified()) {
-            final RenderParameters renderParameters =
-                    tileDataService.getTileMaskRenderParameters(owner, project, stack, tileId, null,
-                                                                renderQueryParameters);
-            return RenderServiceUtil.renderPngImage(renderParameters, null, responseHelper);
+            final Supplier<RenderParameters> renderParametersSupplier =
+                    () -> tileDataService.getTileMaskRenderParameters(owner, project, stack, tileId, null,
+                                                                      renderQueryParameters);
+            return RenderServiceUtil.renderPngImage(renderParametersSupplier, null, responseHelper);
         } else {
             return responseHelper.getNotModifiedResponse();
         }
@@ -312,17 +330,19 @@ public class TileImageService {
                                                @PathParam("stack") final String stack,
                                                @PathParam("tileId") final String tileId,
                                                @BeanParam final RenderQueryParameters renderQueryParameters,
-                                               @Context final Request request) {
+                                               @Context final Request request,
+                                               @Context final UriInfo uriInfo) {
 
         LOG.info("renderTiffMaskImageForTile: entry, owner={}, project={}, stack={}, tileId={}",
                  owner, project, stack, tileId);
 
-        final ResponseHelper responseHelper = new ResponseHelper(request, getStackMetaData(owner, project, stack));
+        final ResponseHelper responseHelper =
+                new ResponseHelper(request, getStackMetaData(owner, project, stack), uriInfo);
         if (responseHelper.isModified()) {
-            final RenderParameters renderParameters =
-                    tileDataService.getTileMaskRenderParameters(owner, project, stack, tileId, null,
-                                                                renderQueryParameters);
-            return RenderServiceUtil.renderTiffImage(renderParameters, null, responseHelper);
+            final Supplier<RenderParameters> renderParametersSupplier =
+                    () -> tileDataService.getTileMaskRenderParameters(owner, project, stack, tileId, null,
+                                                                      renderQueryParameters);
+            return RenderServiceUtil.renderTiffImage(renderParametersSupplier, null, responseHelper);
         } else {
             return responseHelper.getNotModifiedResponse();
         }
@@ -343,21 +363,23 @@ public class TileImageService {
                                                      @QueryParam("widthFactor") final Double widthFactor,
                                                      @QueryParam("heightFactor") final Double heightFactor,
                                                      @QueryParam("boundingBoxesOnly") final Boolean boundingBoxesOnly,
-                                                     @Context final Request request) {
+                                                     @Context final Request request,
+                                                     @Context final UriInfo uriInfo) {
 
         LOG.info("renderJpegTileWithNeighborsImage: entry, owner={}, project={}, stack={}, tileId={}",
                  owner, project, stack, tileId);
 
-        final ResponseHelper responseHelper = new ResponseHelper(request, getStackMetaData(owner, project, stack));
+        final ResponseHelper responseHelper =
+                new ResponseHelper(request, getStackMetaData(owner, project, stack), uriInfo);
         if (responseHelper.isModified()) {
-            final RenderParameters renderParameters =
-                    tileDataService.getTileWithNeighborsRenderParameters(owner, project, stack, tileId,
-                                                                         widthFactor, heightFactor,
-                                                                         renderQueryParameters);
+            final Supplier<RenderParameters> renderParametersSupplier =
+                    () -> tileDataService.getTileWithNeighborsRenderParameters(owner, project, stack, tileId,
+                                                                               widthFactor, heightFactor,
+                                                                               renderQueryParameters);
             if ((boundingBoxesOnly != null) && boundingBoxesOnly) {
-                return RenderServiceUtil.renderJpegBoundingBoxes(renderParameters, responseHelper);
+                return RenderServiceUtil.renderJpegBoundingBoxes(renderParametersSupplier.get(), responseHelper);
             } else {
-                return RenderServiceUtil.renderJpegImage(renderParameters, null, responseHelper);
+                return RenderServiceUtil.renderJpegImage(renderParametersSupplier, null, responseHelper);
             }
         } else {
             return responseHelper.getNotModifiedResponse();
@@ -368,7 +390,7 @@ public class TileImageService {
                                            final String project,
                                            final String stack) {
         final StackId stackId = new StackId(owner, project, stack);
-        return renderDataService.getStackMetaData(stackId);
+        return renderDataService.getCachedStackMetaData(stackId);
     }
 
     private static final Logger LOG = LoggerFactory.getLogger(TileImageService.class);
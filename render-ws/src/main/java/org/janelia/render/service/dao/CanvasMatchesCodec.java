@@ -0,0 +1,268 @@
+package org.janelia.render.service.dao;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.bson.BsonReader;
+import org.bson.BsonType;
+import org.bson.BsonWriter;
+import org.bson.codecs.Codec;
+import org.bson.codecs.DecoderContext;
+import org.bson.codecs.EncoderContext;
+import org.janelia.alignment.match.CanvasMatches;
+import org.janelia.alignment.match.ConsensusSetData;
+import org.janelia.alignment.match.Matches;
+
+/**
+ * Codec that maps {@link CanvasMatches} directly to and from BSON.
+ *
+ * Match documents are dominated by their point and weight arrays, so those are read into and written
+ * from primitive arrays directly rather than through any generic (boxed) intermediate representation.
+ * The stored document structure is identical to the JSON representation of the matches
+ * (numeric arrays are used so that existing match collections remain compatible).
+ *
+ * @author Eric Trautman
+ */
+public class CanvasMatchesCodec
+        implements Codec<CanvasMatches> {
+
+    @Override
+    public Class<CanvasMatches> getEncoderClass() {
+        return CanvasMatches.class;
+    }
+
+    @Override
+    public void encode(final BsonWriter writer,
+                       final CanvasMatches canvasMatches,
+                       final EncoderContext encoderContext) {
+
+        writer.writeStartDocument();
+
+        writeStringIfDefined(writer, "pGroupId", canvasMatches.getpGroupId());
+        writeStringIfDefined(writer, "pId", canvasMatches.getpId());
+        writeStringIfDefined(writer, "qGroupId", canvasMatches.getqGroupId());
+        writeStringIfDefined(writer, "qId", canvasMatches.getqId());
+
+        final ConsensusSetData consensusSetData = canvasMatches.getConsensusSetData();
+        if (consensusSetData != null) {
+            writer.writeStartDocument("consensusSetData");
+            if (consensusSetData.getIndex() != null) {
+                writer.writeInt32("index", consensusSetData.getIndex());
+            }
+            writeStringIfDefined(writer, "originalPId", consensusSetData.getOriginalPId());
+            writeStringIfDefined(writer, "originalQId", consensusSetData.getOriginalQId());
+            writer.writeEndDocument();
+        }
+
+        final Matches matches = canvasMatches.getMatches();
+        if (matches != null) {
+            writer.writeStartDocument("matches");
+            writeDoubleArrays(writer, "p", matches.getPs());
+            writeDoubleArrays(writer, "q", matches.getQs());
+            if (matches.getWs() != null) {
+                writer.writeName("w");
+                writeDoubleArray(writer, matches.getWs());
+            }
+            writer.writeEndDocument();
+        }
+
+        writer.writeEndDocument();
+    }
+
+    @Override
+    public CanvasMatches decode(final BsonReader reader,
+                                final DecoderContext decoderContext) {
+
+        String pGroupId = null;
+        String pId = null;
+        String qGroupId = null;
+        String qId = null;
+        ConsensusSetData consensusSetData = null;
+        Matches matches = null;
+
+        reader.readStartDocument();
+
+        while (reader.readBsonType() != BsonType.END_OF_DOCUMENT) {
+            switch (reader.readName()) {
+                case "pGroupId":
+                    pGroupId = readString(reader);
+                    break;
+                case "pId":
+                    pId = readString(reader);
+                    break;
+                case "qGroupId":
+                    qGroupId = readString(reader);
+                    break;
+                case "qId":
+                    qId = readString(reader);
+                    break;
+                case "consensusSetData":
+                    consensusSetData = readConsensusSetData(reader);
+                    break;
+                case "matches":
+                    matches = readMatches(reader);
+                    break;
+                default:
+                    reader.skipValue();
+            }
+        }
+
+        reader.readEndDocument();
+
+        // stored matches are returned as is (like JSON parsed matches) without normalizing or validating them
+        return CanvasMatches.buildWithoutNormalizing(pGroupId, pId, qGroupId, qId, consensusSetData, matches);
+    }
+
+    private static void writeStringIfDefined(final BsonWriter writer,
+                                             final String name,
+                                             final String value) {
+        if (value != null) {
+            writer.writeString(name, value);
+        }
+    }
+
+    private static void writeDoubleArrays(final BsonWriter writer,
+                                          final String name,
+                                          final double[][] values) {
+        if (values != null) {
+            writer.writeStartArray(name);
+            for (final double[] dimensionValues : values) {
+                writeDoubleArray(writer, dimensionValues);
+            }
+            writer.writeEndArray();
+        }
+    }
+
+    private static void writeDoubleArray(final BsonWriter writer,
+                                         final double[] values) {
+        writer.writeStartArray();
+        for (final double value : values) {
+            writer.writeDouble(value);
+        }
+        writer.writeEndArray();
+    }
+
+    private static String readString(final BsonReader reader) {
+        String value = null;
+        if (reader.getCurrentBsonType() == BsonType.NULL) {
+            reader.readNull();
+        } else {
+            value = reader.readString();
+        }
+        return value;
+    }
+
+    private static ConsensusSetData readConsensusSetData(final BsonReader reader) {
+
+        if (reader.getCurrentBsonType() == BsonType.NULL) {
+            reader.readNull();
+            return null;
+        }
+
+        Integer index = null;
+        String originalPId = null;
+        String originalQId = null;
+
+        reader.readStartDocument();
+        while (reader.readBsonType() != BsonType.END_OF_DOCUMENT) {
+            switch (reader.readName()) {
+                case "index":
+                    if (reader.getCurrentBsonType() == BsonType.NULL) {
+                        reader.readNull();
+                    } else {
+                        index = (int) readNumber(reader);
+                    }
+                    break;
+                case "originalPId":
+                    originalPId = readString(reader);
+                    break;
+                case "originalQId":
+                    originalQId = readString(reader);
+                    break;
+                default:
+                    reader.skipValue();
+            }
+        }
+        reader.readEndDocument();
+
+        return new ConsensusSetData(index, originalPId, originalQId);
+    }
+
+    private static Matches readMatches(final BsonReader reader) {
+
+        if (reader.getCurrentBsonType() == BsonType.NULL) {
+            reader.readNull();
+            return null;
+        }
+
+        double[][] p = null;
+        double[][] q = null;
+        double[] w = null;
+
+        reader.readStartDocument();
+        while (reader.readBsonType() != BsonType.END_OF_DOCUMENT) {
+            switch (reader.readName()) {
+                case "p":
+                    p = readDoubleArrays(reader);
+                    break;
+                case "q":
+                    q = readDoubleArrays(reader);
+                    break;
+                case "w":
+                    w = readDoubleArray(reader);
+                    break;
+                default:
+                    reader.skipValue();
+            }
+        }
+        reader.readEndDocument();
+
+        return new Matches(p, q, w);
+    }
+
+    private static double[][] readDoubleArrays(final BsonReader reader) {
+        final List<double[]> list = new ArrayList<>();
+        reader.readStartArray();
+        while (reader.readBsonType() != BsonType.END_OF_DOCUMENT) {
+            list.add(readDoubleArray(reader));
+        }
+        reader.readEndArray();
+        return list.toArray(new double[list.size()][]);
+    }
+
+    private static double[] readDoubleArray(final BsonReader reader) {
+        double[] values = new double[64];
+        int count = 0;
+        reader.readStartArray();
+        while (reader.readBsonType() != BsonType.END_OF_DOCUMENT) {
+            if (count == values.length) {
+                values = Arrays.copyOf(values, count * 2);
+            }
+            values[count] = readNumber(reader);
+            count++;
+        }
+        reader.readEndArray();
+        return (count == values.length) ? values : Arrays.copyOf(values, count);
+    }
+
+    /**
+     * @return the current numeric value as a double
+     *         (documents parsed from JSON may contain integral values for whole numbers).
+     */
+    private static double readNumber(final BsonReader reader) {
+        final double value;
+        switch (reader.getCurrentBsonType()) {
+            case INT32:
+                value = reader.readInt32();
+                break;
+            case INT64:
+                value = reader.readInt64();
+                break;
+            default:
+                value = reader.readDouble();
+        }
+        return value;
+    }
+
+}
@@ -0,0 +1,209 @@
+package org.janelia.render.service.dao;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.util.TokenBuffer;
+
+import java.io.IOException;
+
+import org.bson.BsonBinary;
+import org.bson.BsonReader;
+import org.bson.BsonType;
+import org.bson.BsonWriter;
+import org.bson.codecs.Codec;
+import org.bson.codecs.DecoderContext;
+import org.bson.codecs.EncoderContext;
+import org.bson.codecs.configuration.CodecConfigurationException;
+
+/**
+ * Codec that maps BSON data directly to and from objects using their existing Jackson bindings.
+ *
+ * Values are passed between the BSON reader/writer and Jackson as tokens (via a {@link TokenBuffer}),
+ * so objects are stored exactly as they would be if their JSON representation was parsed into a document
+ * but without building, parsing, or garbage collecting any intermediate JSON text or document objects.
+ *
+ * @author Eric Trautman
+ */
+public class JacksonCodec<T>
+        implements Codec<T> {
+
+    private final Class<T> valueClass;
+    private final ObjectMapper mapper;
+
+    public JacksonCodec(final Class<T> valueClass,
+                        final ObjectMapper mapper) {
+        this.valueClass = valueClass;
+        this.mapper = mapper;
+    }
+
+    @Override
+    public Class<T> getEncoderClass() {
+        return valueClass;
+    }
+
+    @Override
+    public void encode(final BsonWriter writer,
+                       final T value,
+                       final EncoderContext encoderContext) {
+
+        final TokenBuffer buffer = new TokenBuffer(mapper, false);
+        try {
+            mapper.writeValue(buffer, value);
+            copyTokens(buffer.asParser(), writer);
+        } catch (final IOException e) {
+            throw new IllegalStateException("failed to encode " + valueClass.getName() + " instance", e);
+        }
+    }
+
+    @Override
+    public T decode(final BsonReader reader,
+                    final DecoderContext decoderContext) {
+
+        final TokenBuffer buffer = new TokenBuffer(mapper, false);
+        try {
+
+            reader.readStartDocument();
+            buffer.writeStartObject();
+
+            String name;
+            while (reader.readBsonType() != BsonType.END_OF_DOCUMENT) {
+                name = reader.readName();
+                if (MONGO_ID_KEY.equals(name)) {
+                    // generated ids are not part of the mapped object
+                    reader.skipValue();
+                } else {
+                    buffer.writeFieldName(name);
+                    copyValue(reader, buffer);
+                }
+            }
+
+            reader.readEndDocument();
+            buffer.writeEndObject();
+
+            return mapper.readValue(buffer.asParser(), valueClass);
+
+        } catch (final IOException e) {
+            throw new IllegalStateException("failed to decode " + valueClass.getName() + " instance", e);
+        }
+    }
+
+    private static void copyValue(final BsonReader reader,
+                                  final TokenBuffer buffer)
+            throws IOException {
+
+        final BsonType bsonType = reader.getCurrentBsonType();
+        switch (bsonType) {
+            case DOCUMENT:
+                reader.readStartDocument();
+                buffer.writeStartObject();
+                while (reader.readBsonType() != BsonType.END_OF_DOCUMENT) {
+                    buffer.writeFieldName(reader.readName());
+                    copyValue(reader, buffer);
+                }
+                reader.readEndDocument();
+                buffer.writeEndObject();
+                break;
+            case ARRAY:
+                reader.readStartArray();
+                buffer.writeStartArray();
+                while (reader.readBsonType() != BsonType.END_OF_DOCUMENT) {
+                    copyValue(reader, buffer);
+                }
+                reader.readEndArray();
+                buffer.writeEndArray();
+                break;
+            case DOUBLE:
+                buffer.writeNumber(reader.readDouble());
+                break;
+            case INT32:
+                buffer.writeNumber(reader.readInt32());
+                break;
+            case INT64:
+                buffer.writeNumber(reader.readInt64());
+                break;
+            case STRING:
+                buffer.writeString(reader.readString());
+                break;
+            case BOOLEAN:
+                buffer.writeBoolean(reader.readBoolean());
+                break;
+            case NULL:
+                reader.readNull();
+                buffer.writeNull();
+                break;
+            case OBJECT_ID:
+                buffer.writeString(reader.readObjectId().toHexString());
+                break;
+            case DATE_TIME:
+                buffer.writeNumber(reader.readDateTime());
+                break;
+            case BINARY:
+                buffer.writeBinary(reader.readBinaryData().getData());
+                break;
+            default:
+                throw new CodecConfigurationException("unsupported BSON type " + bsonType + " for field " +
+                                                      reader.getCurrentName());
+        }
+    }
+
+    private static void copyTokens(final JsonParser parser,
+                                   final BsonWriter writer)
+            throws IOException {
+
+        JsonToken token;
+        while ((token = parser.nextToken()) != null) {
+            switch (token) {
+                case START_OBJECT:
+                    writer.writeStartDocument();
+                    break;
+                case END_OBJECT:
+                    writer.writeEndDocument();
+                    break;
+                case START_ARRAY:
+                    writer.writeStartArray();
+                    break;
+                case END_ARRAY:
+                    writer.writeEndArray();
+                    break;
+                case FIELD_NAME:
+                    writer.writeName(parser.getCurrentName());
+                    break;
+                case VALUE_STRING:
+                    writer.writeString(parser.getText());
+                    break;
+                case VALUE_NUMBER_INT:
+                    if (parser.getNumberType() == JsonParser.NumberType.INT) {
+                        writer.writeInt32(parser.getIntValue());
+                    } else {
+                        writer.writeInt64(parser.getLongValue());
+                    }
+                    break;
+                case VALUE_NUMBER_FLOAT:
+                    writer.writeDouble(parser.getDoubleValue());
+                    break;
+                case VALUE_TRUE:
+                    writer.writeBoolean(true);
+                    break;
+                case VALUE_FALSE:
+                    writer.writeBoolean(false);
+                    break;
+                case VALUE_NULL:
+                    writer.writeNull();
+                    break;
+                case VALUE_EMBEDDED_OBJECT:
+                    final Object embeddedObject = parser.getEmbeddedObject();
+                    if (embeddedObject instanceof byte[]) {
+                        writer.writeBinaryData(new BsonBinary((byte[]) embeddedObject));
+                    } else {
+                        writer.writeString(String.valueOf(embeddedObject));
+                    }
+                    break;
+                default:
+                    throw new CodecConfigurationException("unsupported JSON token " + token);
+            }
+        }
+    }
+
+    private static final String MONGO_ID_KEY = "_id";
+}
@@ -0,0 +1,223 @@
+package org.janelia.render.service.dao;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import com.google.common.cache.Weigher;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+
+import org.janelia.alignment.spec.TileBounds;
+import org.janelia.alignment.spec.TileBoundsRTree;
+import org.janelia.alignment.spec.stack.StackId;
+
+/**
+ * Cache of in-memory spatial indexes ({@link TileBoundsRTree} instances) for stack layers.
+ *
+ * Box intersection queries against the tile collection can only partially use the tile bounds index,
+ * so box queries for dense layers scan many index keys.  Once a layer's tile bounds have been loaded here,
+ * intersecting tile ids can be found in memory and full tile specs can then be retrieved by id.
+ *
+ * Indexes are keyed by stack id, a caller provided stack version key, and z.
+ * The version key (e.g. stack last modified timestamp) must change whenever the stack's tiles might change
+ * (on any server) so that stale indexes are never used.  Stale entries are simply aged out of the cache,
+ * but entries for a stack can also be explicitly invalidated when the stack is changed by this server.
+ *
+ * Each cache is constrained by a max weight parameter where each layer is weighed by its number of tiles.
+ * Once a cache is full, least recently used layers are removed to make room.
+ *
+ * @author Eric Trautman
+ */
+public class LayerTileBoundsCache {
+
+    /** Rough estimate of the number of bytes needed to index one tile (used for reporting only). */
+    public static final long ESTIMATED_BYTES_PER_TILE = 400;
+
+    private final long maximumTiles;
+    private final Cache<CacheKey, TileBoundsRTree> cache;
+
+    /**
+     * Constructs a cache instance using the specified parameters.
+     *
+     * @param  maximumTiles  the maximum total number of tiles to index.
+     */
+    public LayerTileBoundsCache(final long maximumTiles) {
+
+        this.maximumTiles = maximumTiles;
+
+        final Weigher<CacheKey, TileBoundsRTree> weigher = (key, value) -> Math.max(1, value.size());
+
+        // Guava divides the maximum weight evenly across cache segments,
+        // so use a single segment to allow one layer to use the entire budget
+        this.cache = CacheBuilder.newBuilder()
+                .concurrencyLevel(1)
+                .maximumWeight(maximumTiles)
+                .weigher(weigher)
+                .recordStats()
+                .build();
+    }
+
+    /**
+     * @param  stackId           stack identifier.
+     * @param  versionKey        current version of the stack's tiles.
+     * @param  z                 layer z value.
+     * @param  minX              minimum x value of the box.
+     * @param  minY              minimum y value of the box.
+     * @param  maxX              maximum x value of the box.
+     * @param  maxY              maximum y value of the box.
+     * @param  tileBoundsLoader  loads bounds for all of the layer's tiles if the layer has not been cached.
+     *
+     * @return sorted list of ids for all tiles that intersect the specified box (boundaries inclusive).
+     *
+     * @throws ExecutionException
+     *   if the layer's tile bounds cannot be loaded.
+     */
+    public List<String> getTileIdsInBox(final StackId stackId,
+                                        final String versionKey,
+                                        final double z,
+                                        final double minX,
+                                        final double minY,
+                                        final double maxX,
+                                        final double maxY,
+                                        final Callable<List<TileBounds>> tileBoundsLoader)
+            throws ExecutionException {
+
+        final TileBoundsRTree tree = cache.get(new CacheKey(stackId, versionKey, z),
+                                               () -> new TileBoundsRTree(z, tileBoundsLoader.call()));
+
+        final List<TileBounds> intersectingTiles = tree.findTilesIntersectingBox(minX, minY, maxX, maxY);
+
+        final List<String> tileIds = new ArrayList<>(intersectingTiles.size());
+        for (final TileBounds tileBounds : intersectingTiles) {
+            tileIds.add(tileBounds.getTileId());
+        }
+
+        return tileIds;
+    }
+
+    /**
+     * Discards all cached layers for the specified stack.
+     */
+    public void invalidateStack(final StackId stackId) {
+        cache.asMap().keySet().removeIf(key -> key.stackId.equals(stackId));
+    }
+
+    /**
+     * @return the number of layers currently in this cache.
+     */
+    public long size() {
+        return cache.size();
+    }
+
+    /**
+     * Discards all entries in the cache.
+     */
+    public void invalidateAll() {
+        cache.invalidateAll();
+    }
+
+    /**
+     * @return a current snapshot of this cache's cumulative statistics.
+     */
+    public CacheStats getStats() {
+        return cache.stats();
+    }
+
+    /**
+     * @return map of current cache metrics (including tile counts and estimated memory for each cached layer)
+     *         suitable for reporting.
+     */
+    public Map<String, Object> getMetrics() {
+
+        final List<Map<String, Object>> layers = new ArrayList<>();
+        long indexedTileCount = 0;
+        for (final Map.Entry<CacheKey, TileBoundsRTree> entry : cache.asMap().entrySet()) {
+            final CacheKey key = entry.getKey();
+            final int tileCount = entry.getValue().size();
+            final Map<String, Object> layer = new LinkedHashMap<>();
+            layer.put("stackId", key.stackId);
+            layer.put("z", key.z);
+            layer.put("tileCount", tileCount);
+            layer.put("estimatedBytes", tileCount * ESTIMATED_BYTES_PER_TILE);
+            layers.add(layer);
+            indexedTileCount += tileCount;
+        }
+
+        layers.sort(Comparator.comparing((Map<String, Object> layer) -> (Integer) layer.get("tileCount")).reversed());
+
+        final CacheStats stats = cache.stats();
+
+        final Map<String, Object> metrics = new LinkedHashMap<>();
+        metrics.put("layerCount", layers.size());
+        metrics.put("indexedTileCount", indexedTileCount);
+        metrics.put("maximumTiles", maximumTiles);
+        metrics.put("estimatedBytes", indexedTileCount * ESTIMATED_BYTES_PER_TILE);
+        metrics.put("hitCount", stats.hitCount());
+        metrics.put("missCount", stats.missCount());
+        metrics.put("hitRate", stats.hitRate());
+        metrics.put("loadExceptionCount", stats.loadExceptionCount());
+        metrics.put("averageLoadPenaltyMilliseconds", stats.averageLoadPenalty() / 1_000_000.0);
+        metrics.put("evictionCount", stats.evictionCount());
+        metrics.put("layers", layers);
+
+        return metrics;
+    }
+
+    @Override
+    public String toString() {
+        return "{numberOfEntries: " + size() + ", maximumTiles: " + maximumTiles + '}';
+    }
+
+    /**
+     * Key that combines a stack id and version key with a layer z value.
+     */
+    private static class CacheKey {
+
+        private final StackId stackId;
+        private final String versionKey;
+        private final double z;
+
+        CacheKey(final StackId stackId,
+                 final String versionKey,
+                 final double z) {
+            this.stackId = stackId;
+            this.versionKey = versionKey == null ? "" : versionKey;
+            this.z = z;
+        }
+
+        @Override
+        public String toString() {
+            return "{stackId: " + stackId + ", versionKey: '" + versionKey + "', z: " + z + '}';
+        }
+
+        @Override
+        public boolean equals(final Object o) {
+            boolean result = true;
+            if (this != o) {
+                if (o instanceof CacheKey) {
+                    final CacheKey that = (CacheKey) o;
+                    result = (Double.compare(this.z, that.z) == 0) &&
+                             this.versionKey.equals(that.versionKey) &&
+                             this.stackId.equals(that.stackId);
+                } else {
+                    result = false;
+                }
+            }
+            return result;
+        }
+
+        @Override
+        public int hashCode() {
+            int result = Double.hashCode(z);
+            result = 31 * result + versionKey.hashCode();
+            result = 31 * result + stackId.hashCode();
+            return result;
+        }
+    }
+}
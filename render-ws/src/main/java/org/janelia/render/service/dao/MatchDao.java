@@ -1,5 +1,7 @@
 package org.janelia.render.service.dao;
 
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectWriter;
 import com.mongodb.MongoClient;
 import com.mongodb.QueryOperators;
 import com.mongodb.bulk.BulkWriteResult;
@@ -23,6 +25,7 @@ import java.util.Set;
 import java.util.TreeSet;
 
 import org.bson.Document;
+import org.janelia.alignment.json.JsonUtils;
 import org.janelia.alignment.match.CanvasMatches;
 import org.janelia.alignment.match.MatchCollectionId;
 import org.janelia.alignment.match.MatchCollectionMetaData;
@@ -49,7 +52,8 @@ public class MatchDao {
     private final MongoDatabase matchDatabase;
 
     public MatchDao(final MongoClient client) {
-        matchDatabase = client.getDatabase(MATCH_DB_NAME);
+        // explicitly apply render codecs in case client was not created by SharedMongoClient (e.g. for tests)
+        matchDatabase = client.getDatabase(MATCH_DB_NAME).withCodecRegistry(SharedMongoClient.CODEC_REGISTRY);
     }
 
     /**
@@ -334,9 +338,9 @@ public class MatchDao {
 
         int matchCount = 0;
         CanvasMatches canvasMatches = null;
-        try (MongoCursor<Document> cursor = collection.find(query).iterator()) {
+        try (MongoCursor<CanvasMatches> cursor = collection.find(query, CanvasMatches.class).iterator()) {
             if (cursor.hasNext()) {
-                canvasMatches = CanvasMatches.fromJson(cursor.next().toJson());
+                canvasMatches = cursor.next();
                 matchCount = canvasMatches.size();
             }
         }
@@ -510,11 +514,10 @@ public class MatchDao {
 
             ensureMatchIndexes(collection);
 
-            final List<WriteModel<Document>> modelList = new ArrayList<>(matchesList.size());
+            final List<WriteModel<CanvasMatches>> modelList = new ArrayList<>(matchesList.size());
 
             final UpdateOptions upsertOption = new UpdateOptions().upsert(true);
             Document filter;
-            Document matchesObject;
             for (final CanvasMatches canvasMatches : matchesList) {
                 canvasMatches.normalize();
                 filter = new Document(
@@ -522,11 +525,11 @@ public class MatchDao {
                         "pId", canvasMatches.getpId()).append(
                         "qGroupId", canvasMatches.getqGroupId()).append(
                         "qId", canvasMatches.getqId());
-                matchesObject = Document.parse(canvasMatches.toJson());
-                modelList.add(new ReplaceOneModel<>(filter, matchesObject, upsertOption));
+                modelList.add(new ReplaceOneModel<>(filter, canvasMatches, upsertOption));
             }
 
-            final BulkWriteResult result = collection.bulkWrite(modelList, MongoUtil.UNORDERED_OPTION);
+            final BulkWriteResult result = collection.withDocumentClass(CanvasMatches.class).bulkWrite(
+                    modelList, MongoUtil.UNORDERED_OPTION);
 
             if (LOG.isDebugEnabled()) {
                 final String bulkResultMessage = MongoUtil.toMessage("matches", result, matchesList.size());
@@ -635,9 +638,10 @@ public class MatchDao {
 
         final List<CanvasMatches> canvasMatchesList = new ArrayList<>();
 
-        try (MongoCursor<Document> cursor = collection.find(query).projection(EXCLUDE_MONGO_ID_KEY).iterator()) {
+        try (MongoCursor<CanvasMatches> cursor =
+                     collection.find(query, CanvasMatches.class).projection(EXCLUDE_MONGO_ID_KEY).iterator()) {
             while (cursor.hasNext()) {
-                canvasMatchesList.add(CanvasMatches.fromJson(cursor.next().toJson()));
+                canvasMatchesList.add(cursor.next());
             }
         }
 
@@ -667,17 +671,16 @@ public class MatchDao {
             outputStream.write(OPEN_BRACKET);
 
             int count = 0;
-            try (MongoCursor<Document> cursor = collection.find(query).projection(EXCLUDE_MONGO_ID_KEY).sort(MATCH_ORDER_BY).iterator()) {
+            try (MongoCursor<CanvasMatches> cursor =
+                         collection.find(query, CanvasMatches.class).projection(EXCLUDE_MONGO_ID_KEY).sort(MATCH_ORDER_BY).iterator()) {
 
-                Document document;
                 while (cursor.hasNext()) {
 
                     if (count > 0) {
                         outputStream.write(COMMA_WITH_NEW_LINE);
                     }
 
-                    document = cursor.next();
-                    outputStream.write(document.toJson().getBytes());
+                    MATCH_WRITER.writeValue(outputStream, cursor.next());
                     count++;
 
                     if (timer.hasIntervalPassed()) {
@@ -708,7 +711,7 @@ public class MatchDao {
         int count = 0;
 
         final int numberOfCollections = collectionList.size();
-        final List<MongoCursor<Document>> cursorList = new ArrayList<>(numberOfCollections);
+        final List<MongoCursor<CanvasMatches>> cursorList = new ArrayList<>(numberOfCollections);
         final List<CanvasMatches> matchesList = new ArrayList<>(numberOfCollections);
 
         try {
@@ -717,7 +720,7 @@ public class MatchDao {
             MongoCollection<Document> collection;
             for (int i = 0; i < numberOfCollections; i++) {
                 collection = collectionList.get(i);
-                cursorList.add(collection.find(query).projection(EXCLUDE_MONGO_ID_KEY).sort(MATCH_ORDER_BY).iterator());
+                cursorList.add(collection.find(query, CanvasMatches.class).projection(EXCLUDE_MONGO_ID_KEY).sort(MATCH_ORDER_BY).iterator());
                 matchesList.add(null);
                 numberOfCompletedCursors += updateMatches(cursorList, matchesList, i);
             }
@@ -734,7 +737,7 @@ public class MatchDao {
 
                 mergedMatches = getNextMergedMatches(cursorList, matchesList);
 
-                outputStream.write(mergedMatches.toJson().getBytes());
+                MATCH_WRITER.writeValue(outputStream, mergedMatches);
                 count++;
 
                 if (timer.hasIntervalPassed()) {
@@ -744,7 +747,7 @@ public class MatchDao {
 
         } finally {
 
-            for (final MongoCursor<Document> cursor : cursorList) {
+            for (final MongoCursor<CanvasMatches> cursor : cursorList) {
                 if (cursor != null) {
                     try {
                         cursor.close();
@@ -771,7 +774,7 @@ public class MatchDao {
         }
     }
 
-    private CanvasMatches getNextMergedMatches(final List<MongoCursor<Document>> cursorList,
+    private CanvasMatches getNextMergedMatches(final List<MongoCursor<CanvasMatches>> cursorList,
                                                final List<CanvasMatches> matchesList) {
 
         int numberOfCompletedCursors = 0;
@@ -800,9 +803,9 @@ public class MatchDao {
         return nextMatches;
     }
 
-    private void removeCompletedCursors(final List<MongoCursor<Document>> cursorList,
+    private void removeCompletedCursors(final List<MongoCursor<CanvasMatches>> cursorList,
                                         final List<CanvasMatches> matchesList) {
-        MongoCursor<Document> cursor;
+        MongoCursor<CanvasMatches> cursor;
         for (int i = matchesList.size() - 1; i >=0; i--) {
             if (matchesList.get(i) == null) {
                 matchesList.remove(i);
@@ -812,13 +815,13 @@ public class MatchDao {
         }
     }
 
-    private int updateMatches(final List<MongoCursor<Document>> cursorList,
+    private int updateMatches(final List<MongoCursor<CanvasMatches>> cursorList,
                               final List<CanvasMatches> matchesList,
                               final int index) {
         CanvasMatches canvasMatches = null;
-        final MongoCursor<Document> cursor = cursorList.get(index);
+        final MongoCursor<CanvasMatches> cursor = cursorList.get(index);
         if (cursor.hasNext()) {
-            canvasMatches = CanvasMatches.fromJson(cursor.next().toJson());
+            canvasMatches = cursor.next();
         }
         matchesList.set(index, canvasMatches);
         return (canvasMatches == null ? 1 : 0);
@@ -875,6 +878,10 @@ public class MatchDao {
     private static final byte[] COMMA_WITH_NEW_LINE = ",\n".getBytes();
     private static final byte[] CLOSE_BRACKET = "]".getBytes();
 
+    /** Writes compact match JSON directly to (and without closing) response streams. */
+    private static final ObjectWriter MATCH_WRITER =
+            JsonUtils.STREAMING_MAPPER.writerFor(CanvasMatches.class).without(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+
     private static final IndexOptions MATCH_A_OPTIONS = new IndexOptions().unique(true).background(true).name("A");
     private static final IndexOptions MATCH_B_OPTIONS = new IndexOptions().background(true).name("B");
 
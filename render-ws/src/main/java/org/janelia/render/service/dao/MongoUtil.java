@@ -65,7 +65,7 @@ public class MongoUtil {
         return false;
     }
 
-    public static String fullName(final MongoCollection<Document> collection) {
+    public static String fullName(final MongoCollection<?> collection) {
         return collection.getNamespace().getFullName();
     }
 
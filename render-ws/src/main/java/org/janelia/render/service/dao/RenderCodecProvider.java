@@ -0,0 +1,34 @@
+package org.janelia.render.service.dao;
+
+import org.bson.codecs.Codec;
+import org.bson.codecs.configuration.CodecProvider;
+import org.bson.codecs.configuration.CodecRegistry;
+import org.janelia.alignment.json.JsonUtils;
+import org.janelia.alignment.match.CanvasMatches;
+import org.janelia.alignment.spec.TileSpec;
+import org.janelia.alignment.spec.TransformSpec;
+
+/**
+ * Provides codecs that allow DAOs to read and write render objects directly
+ * (e.g. collection.find(query, TileSpec.class)) instead of converting them to and from JSON text.
+ *
+ * @author Eric Trautman
+ */
+public class RenderCodecProvider
+        implements CodecProvider {
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> Codec<T> get(final Class<T> clazz,
+                            final CodecRegistry registry) {
+        Codec<T> codec = null;
+        if (CanvasMatches.class.equals(clazz)) {
+            codec = (Codec<T>) new CanvasMatchesCodec();
+        } else if (TileSpec.class.equals(clazz) || TransformSpec.class.isAssignableFrom(clazz)) {
+            // transform spec JSON includes type information, so the same codec works for any spec class
+            codec = new JacksonCodec<>(clazz, JsonUtils.FAST_MAPPER);
+        }
+        return codec;
+    }
+
+}
@@ -1,5 +1,6 @@
 package org.janelia.render.service.dao;
 
+import com.fasterxml.jackson.core.JsonGenerator;
 import com.mongodb.BasicDBList;
 import com.mongodb.MongoClient;
 import com.mongodb.MongoException;
@@ -8,6 +9,7 @@ import com.mongodb.bulk.BulkWriteResult;
 import com.mongodb.client.MongoCollection;
 import com.mongodb.client.MongoCursor;
 import com.mongodb.client.MongoDatabase;
+import com.mongodb.client.model.CountOptions;
 import com.mongodb.client.model.IndexOptions;
 import com.mongodb.client.model.InsertOneModel;
 import com.mongodb.client.model.ReplaceOneModel;
@@ -45,6 +47,7 @@ import org.janelia.alignment.spec.stack.StackMetaData;
 import org.janelia.alignment.spec.stack.StackStats;
 import org.janelia.alignment.util.ProcessTimer;
 import org.janelia.render.service.model.ObjectNotFoundException;
+import org.janelia.render.service.util.SharedLayerTileBoundsCache;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -61,13 +64,62 @@ public class RenderDao {
     public static RenderDao build()
             throws UnknownHostException {
         final MongoClient mongoClient = SharedMongoClient.getInstance();
-        return new RenderDao(mongoClient);
+        return new RenderDao(mongoClient,
+                             SHARED_TRANSFORM_SPEC_CACHE,
+                             SHARED_STACK_META_DATA_CACHE,
+                             SharedLayerTileBoundsCache.getInstance());
     }
 
+    /** Transform spec cache shared by all DAO instances created with {@link #build()}. */
+    private static final TransformSpecCache SHARED_TRANSFORM_SPEC_CACHE = new TransformSpecCache();
+
+    /** Stack meta data cache shared by all DAO instances created with {@link #build()}. */
+    private static final StackMetaDataCache SHARED_STACK_META_DATA_CACHE = new StackMetaDataCache();
+
     private final MongoDatabase renderDatabase;
+    private final TransformSpecCache transformSpecCache;
+    private final StackMetaDataCache stackMetaDataCache;
+    private final LayerTileBoundsCache layerTileBoundsCache;
+    private int maxResolvedTileCount;
 
+    /**
+     * Constructs a DAO that does not cache any stack data (e.g. for tools and tests that
+     * change collections directly).  Use {@link #build()} for a DAO with the shared web service caches.
+     */
     public RenderDao(final MongoClient client) {
-        renderDatabase = client.getDatabase(RENDER_DB_NAME);
+        this(client, new TransformSpecCache(0), new StackMetaDataCache(0, 0), null);
+    }
+
+    /**
+     * @param  layerTileBoundsCache  cache of layer spatial indexes for box queries
+     *                               (specify null to always query the tile collection directly).
+     */
+    public RenderDao(final MongoClient client,
+                     final TransformSpecCache transformSpecCache,
+                     final StackMetaDataCache stackMetaDataCache,
+                     final LayerTileBoundsCache layerTileBoundsCache) {
+        // explicitly apply render codecs in case client was not created by SharedMongoClient (e.g. for tests)
+        renderDatabase = client.getDatabase(RENDER_DB_NAME).withCodecRegistry(SharedMongoClient.CODEC_REGISTRY);
+        this.transformSpecCache = transformSpecCache;
+        this.stackMetaDataCache = stackMetaDataCache;
+        this.layerTileBoundsCache = layerTileBoundsCache;
+        this.maxResolvedTileCount = DEFAULT_MAX_RESOLVED_TILE_COUNT;
+    }
+
+    /**
+     * Overrides the maximum number of tiles that can be resolved for a single request
+     * (allows tests to exercise the limit without loading tens of thousands of tiles).
+     */
+    void setMaxResolvedTileCount(final int maxResolvedTileCount) {
+        this.maxResolvedTileCount = maxResolvedTileCount;
+    }
+
+    public TransformSpecCache getTransformSpecCache() {
+        return transformSpecCache;
+    }
+
+    public StackMetaDataCache getStackMetaDataCache() {
+        return stackMetaDataCache;
     }
 
     /**
@@ -95,13 +147,16 @@ public class RenderDao {
 
         final double lowerRightX = x + width;
         final double lowerRightY = y + height;
-        final Document tileQuery = getIntersectsBoxQuery(z, x, y, lowerRightX, lowerRightY);
-        if (groupId != null) {
-            tileQuery.append("groupId", groupId);
-        }
 
         final RenderParameters renderParameters = new RenderParameters(null, x, y, width, height, scale);
-        addResolvedTileSpecs(stackId, tileQuery, renderParameters);
+
+        if (groupId == null) {
+            addResolvedTileSpecsForBox(stackId, z, x, y, lowerRightX, lowerRightY, renderParameters);
+        } else {
+            final Document tileQuery = getIntersectsBoxQuery(z, x, y, lowerRightX, lowerRightY);
+            tileQuery.append("groupId", groupId);
+            addResolvedTileSpecs(stackId, tileQuery, renderParameters);
+        }
 
         return renderParameters;
     }
@@ -162,20 +217,33 @@ public class RenderDao {
         MongoUtil.validateRequiredParameter("width", width);
         MongoUtil.validateRequiredParameter("height", height);
 
-        final MongoCollection<Document> tileCollection = getTileCollection(stackId);
-
         final double lowerRightX = x + width;
         final double lowerRightY = y + height;
-        final Document tileQuery = getIntersectsBoxQuery(z, x, y, lowerRightX, lowerRightY);
 
-        final long count = tileCollection.count(tileQuery);
+        final List<String> indexedTileIds = getIndexedTileIds(stackId, z, x, y, lowerRightX, lowerRightY);
 
-        if (count == 0) {
-            throwExceptionIfStackIsMissing(stackId);
-        }
+        final long count;
+        if (indexedTileIds == null) {
+
+            final MongoCollection<Document> tileCollection = getTileCollection(stackId);
+            final Document tileQuery = getIntersectsBoxQuery(z, x, y, lowerRightX, lowerRightY);
+
+            count = tileCollection.count(tileQuery);
+
+            if (count == 0) {
+                throwExceptionIfStackIsMissing(stackId);
+            }
+
+            LOG.debug("getTileCount: found {} tile spec(s) for {}.find({})",
+                      count, MongoUtil.fullName(tileCollection), tileQuery.toJson());
 
-        LOG.debug("getTileCount: found {} tile spec(s) for {}.find({})",
-                  count, MongoUtil.fullName(tileCollection), tileQuery.toJson());
+        } else {
+
+            // stack must exist since an indexed layer was found
+            count = indexedTileIds.size();
+
+            LOG.debug("getTileCount: found {} indexed tile(s) in z {} of {}", count, z, stackId);
+        }
 
         return count;
     }
@@ -207,15 +275,13 @@ public class RenderDao {
 
         // EXAMPLE:   find({ "tileId" : "140723171842050101.3299.0"})
         // INDEX:     tileId_1
-        final Document document = tileCollection.find(query).first();
+        final TileSpec tileSpec = tileCollection.find(query, TileSpec.class).first();
 
-        if (document == null) {
+        if (tileSpec == null) {
             throw new ObjectNotFoundException("tile spec with id '" + tileId + "' does not exist in the " +
                                               MongoUtil.fullName(tileCollection) + " collection");
         }
 
-        final TileSpec tileSpec = TileSpec.fromJson(document.toJson());
-
         if (resolveTransformReferences) {
             resolveTransformReferencesForTiles(stackId, Collections.singletonList(tileSpec));
         }
@@ -226,6 +292,27 @@ public class RenderDao {
     public Map<String, TransformSpec> resolveTransformReferencesForTiles(final StackId stackId,
                                                                          final List<TileSpec> tileSpecs)
             throws IllegalStateException {
+        return resolveTransformReferencesForTiles(stackId, tileSpecs, new HashMap<>());
+    }
+
+    /**
+     * Resolves transform references for the specified tiles, only retrieving
+     * transform specs that are not already in the specified map.
+     *
+     * @param  stackId              stack identifier.
+     * @param  tileSpecs            tiles to resolve.
+     * @param  resolvedIdToSpecMap  previously resolved transform specs (e.g. from prior batches of tiles).
+     *                              Any newly retrieved specs are added to this map.
+     *
+     * @return the updated resolved transform spec map.
+     *
+     * @throws IllegalStateException
+     *   if any of the tiles cannot be fully resolved.
+     */
+    private Map<String, TransformSpec> resolveTransformReferencesForTiles(final StackId stackId,
+                                                                          final List<TileSpec> tileSpecs,
+                                                                          final Map<String, TransformSpec> resolvedIdToSpecMap)
+            throws IllegalStateException {
 
         final Set<String> unresolvedIds = new HashSet<>();
         ListTransformSpec transforms;
@@ -236,17 +323,41 @@ public class RenderDao {
             }
         }
 
-        final Map<String, TransformSpec> resolvedIdToSpecMap = new HashMap<>();
-
         final int unresolvedCount = unresolvedIds.size();
         if (unresolvedCount > 0) {
 
-            final MongoCollection<Document> transformCollection = getTransformCollection(stackId);
-            getDataForTransformSpecReferences(transformCollection, unresolvedIds, resolvedIdToSpecMap, 1);
+            unresolvedIds.removeAll(resolvedIdToSpecMap.keySet());
+
+            // cached meta data avoids a database round trip for every request, specs changed by another server
+            // are only reused until that server's state change is seen (within the meta data cache time to live)
+            final String versionKey = unresolvedIds.size() > 0 ? getCachedStackVersionKey(stackId) : null;
+
+            if (versionKey != null) {
+                transformSpecCache.addCachedSpecs(stackId, versionKey, unresolvedIds, resolvedIdToSpecMap);
+            }
+
+            if (unresolvedIds.size() > 0) {
+
+                final Set<String> previouslyResolvedIds = new HashSet<>(resolvedIdToSpecMap.keySet());
+
+                final MongoCollection<Document> transformCollection = getTransformCollection(stackId);
+                getDataForTransformSpecReferences(transformCollection, unresolvedIds, resolvedIdToSpecMap, 1);
+
+                // resolve any references within the retrieved transform specs
+                for (final TransformSpec transformSpec : resolvedIdToSpecMap.values()) {
+                    transformSpec.resolveReferences(resolvedIdToSpecMap);
+                }
+
+                if (versionKey != null) {
+                    final List<TransformSpec> retrievedSpecs = new ArrayList<>();
+                    for (final Map.Entry<String, TransformSpec> entry : resolvedIdToSpecMap.entrySet()) {
+                        if (! previouslyResolvedIds.contains(entry.getKey())) {
+                            retrievedSpecs.add(entry.getValue());
+                        }
+                    }
+                    transformSpecCache.putAll(stackId, versionKey, retrievedSpecs);
+                }
 
-            // resolve any references within the retrieved transform specs
-            for (final TransformSpec transformSpec : resolvedIdToSpecMap.values()) {
-                transformSpec.resolveReferences(resolvedIdToSpecMap);
             }
 
             // apply fully resolved transform specs to tiles
@@ -284,9 +395,8 @@ public class RenderDao {
         MongoUtil.validateRequiredParameter("y", y);
         MongoUtil.validateRequiredParameter("z", z);
 
-        final Document tileQuery = getIntersectsBoxQuery(z, x, y, x, y);
         final RenderParameters renderParameters = new RenderParameters();
-        addResolvedTileSpecs(stackId, tileQuery, renderParameters);
+        addResolvedTileSpecsForBox(stackId, z, x, y, x, y, renderParameters);
 
         if (! renderParameters.hasTileSpecs()) {
             throw new IllegalArgumentException("no tile specifications found in " + stackId +
@@ -348,12 +458,16 @@ public class RenderDao {
 
         int coordinateCount = 0;
 
+        // look up the stack version once for all coordinates
+        final String layerIndexVersionKey = getLayerIndexVersionKey(stackId);
+
         double[] world;
         double coordinateZ = z == null ? -1 : z;
         Document tileQuery = new Document();
         MongoCursor<Document> cursor = null;
         Document document;
         Object tileId;
+        List<String> indexedTileIds;
         String coordinatesJson;
         try {
 
@@ -378,36 +492,62 @@ public class RenderDao {
                     }
                 }
 
-                tileQuery = getIntersectsBoxQuery(coordinateZ, world[0], world[1], world[0], world[1]);
-
-                // EXAMPLE:   find({"z": 3299.0 , "minX": {"$lte": 95000.0}, "minY": {"$lte": 200000.0}, "maxX": {"$gte": 95000.0}, "maxY": {"$gte": 200000.0}}, {"tileId":1, "_id": 0}).sort({"tileId" : 1})
-                // INDEXES:   z_1_minY_1_minX_1_maxY_1_maxX_1_tileId_1 (z1_minX_1, z1_maxX_1, ... used for edge cases)
-                cursor = tileCollection.find(tileQuery).projection(tileKeys).sort(orderBy).iterator();
-
                 if (i > 0) {
                     outputStream.write(comma);
                 }
                 outputStream.write(openBracket);
 
-                if (cursor.hasNext()) {
+                indexedTileIds = getIndexedTileIds(stackId, layerIndexVersionKey,
+                                                   coordinateZ, world[0], world[1], world[0], world[1]);
 
-                    document = cursor.next();
-                    tileId = document.get("tileId");
-                    if (tileId != null) {
-                        worldCoordinates.setTileId(tileId.toString());
-                    }
-                    coordinatesJson = worldCoordinates.toJson();
-                    outputStream.write(coordinatesJson.getBytes());
+                if (indexedTileIds == null) {
+
+                    tileQuery = getIntersectsBoxQuery(coordinateZ, world[0], world[1], world[0], world[1]);
+
+                    // EXAMPLE:   find({"z": 3299.0 , "minX": {"$lte": 95000.0}, "minY": {"$lte": 200000.0}, "maxX": {"$gte": 95000.0}, "maxY": {"$gte": 200000.0}}, {"tileId":1, "_id": 0}).sort({"tileId" : 1})
+                    // INDEXES:   z_1_minY_1_minX_1_maxY_1_maxX_1_tileId_1 (z1_minX_1, z1_maxX_1, ... used for edge cases)
+                    cursor = tileCollection.find(tileQuery).projection(tileKeys).sort(orderBy).iterator();
+
+                    if (cursor.hasNext()) {
 
-                    while (cursor.hasNext()) {
                         document = cursor.next();
                         tileId = document.get("tileId");
                         if (tileId != null) {
                             worldCoordinates.setTileId(tileId.toString());
                         }
                         coordinatesJson = worldCoordinates.toJson();
+                        outputStream.write(coordinatesJson.getBytes());
+
+                        while (cursor.hasNext()) {
+                            document = cursor.next();
+                            tileId = document.get("tileId");
+                            if (tileId != null) {
+                                worldCoordinates.setTileId(tileId.toString());
+                            }
+                            coordinatesJson = worldCoordinates.toJson();
+
+                            outputStream.write(comma);
+                            outputStream.write(coordinatesJson.getBytes());
+                        }
+
+                    } else {
+
+                        coordinatesJson = worldCoordinates.toJson();
+                        outputStream.write(coordinatesJson.getBytes());
+
+                    }
+
+                    cursor.close();
 
-                        outputStream.write(comma);
+                } else if (indexedTileIds.size() > 0) {
+
+                    // indexed tile ids are already sorted
+                    for (int j = 0; j < indexedTileIds.size(); j++) {
+                        if (j > 0) {
+                            outputStream.write(comma);
+                        }
+                        worldCoordinates.setTileId(indexedTileIds.get(j));
+                        coordinatesJson = worldCoordinates.toJson();
                         outputStream.write(coordinatesJson.getBytes());
                     }
 
@@ -418,8 +558,6 @@ public class RenderDao {
 
                 }
 
-                cursor.close();
-
                 outputStream.write(closeBracket);
 
                 coordinateCount++;
@@ -533,6 +671,265 @@ public class RenderDao {
                                               renderParameters.getTileSpecs());
     }
 
+    /**
+     * Verifies that at least one but not too many tiles have the specified z
+     * so that problems can be reported before any resolved tile data is streamed.
+     *
+     * @throws IllegalArgumentException
+     *   if any required parameters are missing or if too many tiles have the specified z.
+     *
+     * @throws ObjectNotFoundException
+     *   if the stack cannot be found or if no tile can be found for the specified z.
+     */
+    public void validateResolvedTileCount(final StackId stackId,
+                                          final Double z)
+            throws IllegalArgumentException, ObjectNotFoundException {
+
+        MongoUtil.validateRequiredParameter("stackId", stackId);
+        MongoUtil.validateRequiredParameter("z", z);
+
+        final Document tileQuery = new Document("z", z);
+        if (getBoundedTileCount(stackId, tileQuery) == 0) {
+            throwExceptionIfStackIsMissing(stackId);
+            throw new ObjectNotFoundException("no tile specifications found in " + stackId +" for z=" + z);
+        }
+    }
+
+    /**
+     * Verifies that at least one but not too many tiles match the specified criteria
+     * so that problems can be reported before any resolved tile data is streamed.
+     *
+     * @throws IllegalArgumentException
+     *   if any required parameters are missing or if too many tiles match the criteria.
+     *
+     * @throws ObjectNotFoundException
+     *   if no tile can be found for the specified criteria.
+     */
+    public void validateResolvedTileCount(final StackId stackId,
+                                          final Double minZ,
+                                          final Double maxZ,
+                                          final String groupId,
+                                          final Double minX,
+                                          final Double maxX,
+                                          final Double minY,
+                                          final Double maxY)
+            throws IllegalArgumentException, ObjectNotFoundException {
+
+        MongoUtil.validateRequiredParameter("stackId", stackId);
+
+        final Document query = getGroupQuery(minZ, maxZ, groupId, minX, maxX, minY, maxY);
+        if (getBoundedTileCount(stackId, query) == 0) {
+            throw new ObjectNotFoundException("no tile specifications found in " + stackId +" for " + query);
+        }
+    }
+
+    /**
+     * Retrieves (and validates) all transform specs referenced by tiles that have the specified z
+     * so that missing references can be reported before any resolved tile data is streamed.
+     *
+     * @return map of transform spec ids to transform specs referenced by the tiles.
+     *
+     * @throws IllegalArgumentException
+     *   if any required parameters are missing.
+     *
+     * @throws IllegalStateException
+     *   if any referenced transform spec cannot be found.
+     */
+    public Map<String, TransformSpec> getReferencedTransformSpecs(final StackId stackId,
+                                                                  final Double z)
+            throws IllegalArgumentException, IllegalStateException {
+
+        MongoUtil.validateRequiredParameter("stackId", stackId);
+        MongoUtil.validateRequiredParameter("z", z);
+
+        return getReferencedTransformSpecs(stackId, new Document("z", z));
+    }
+
+    /**
+     * Retrieves (and validates) all transform specs referenced by tiles that match the specified criteria
+     * so that missing references can be reported before any resolved tile data is streamed.
+     *
+     * @return map of transform spec ids to transform specs referenced by the tiles.
+     *
+     * @throws IllegalArgumentException
+     *   if any required parameters are missing.
+     *
+     * @throws IllegalStateException
+     *   if any referenced transform spec cannot be found.
+     */
+    public Map<String, TransformSpec> getReferencedTransformSpecs(final StackId stackId,
+                                                                  final Double minZ,
+                                                                  final Double maxZ,
+                                                                  final String groupId,
+                                                                  final Double minX,
+                                                                  final Double maxX,
+                                                                  final Double minY,
+                                                                  final Double maxY)
+            throws IllegalArgumentException, IllegalStateException {
+
+        MongoUtil.validateRequiredParameter("stackId", stackId);
+
+        return getReferencedTransformSpecs(stackId, getGroupQuery(minZ, maxZ, groupId, minX, maxX, minY, maxY));
+    }
+
+    /**
+     * Writes a resolved tile spec collection for all tiles that have the specified z
+     * to the specified generator as each tile is retrieved
+     * (see {@link #validateResolvedTileCount(StackId, Double)} and
+     * {@link #getReferencedTransformSpecs(StackId, Double)}).
+     *
+     * @param  referencedTransformSpecs  previously retrieved transform specs referenced by the tiles.
+     *
+     * @throws IllegalArgumentException
+     *   if any required parameters are missing.
+     *
+     * @throws IOException
+     *   if the data cannot be written.
+     */
+    public void writeResolvedTiles(final StackId stackId,
+                                   final Double z,
+                                   final Map<String, TransformSpec> referencedTransformSpecs,
+                                   final JsonGenerator generator)
+            throws IllegalArgumentException, IOException {
+
+        MongoUtil.validateRequiredParameter("stackId", stackId);
+        MongoUtil.validateRequiredParameter("z", z);
+
+        writeResolvedTiles(stackId, new Document("z", z), referencedTransformSpecs, generator);
+    }
+
+    /**
+     * Writes a resolved tile spec collection for all tiles that match the specified criteria
+     * to the specified generator as each tile is retrieved
+     * (see {@link #validateResolvedTileCount(StackId, Double, Double, String, Double, Double, Double, Double)} and
+     * {@link #getReferencedTransformSpecs(StackId, Double, Double, String, Double, Double, Double, Double)}).
+     *
+     * @param  referencedTransformSpecs  previously retrieved transform specs referenced by the tiles.
+     *
+     * @throws IllegalArgumentException
+     *   if any required parameters are missing.
+     *
+     * @throws IOException
+     *   if the data cannot be written.
+     */
+    public void writeResolvedTiles(final StackId stackId,
+                                   final Double minZ,
+                                   final Double maxZ,
+                                   final String groupId,
+                                   final Double minX,
+                                   final Double maxX,
+                                   final Double minY,
+                                   final Double maxY,
+                                   final Map<String, TransformSpec> referencedTransformSpecs,
+                                   final JsonGenerator generator)
+            throws IllegalArgumentException, IOException {
+
+        MongoUtil.validateRequiredParameter("stackId", stackId);
+
+        writeResolvedTiles(stackId,
+                           getGroupQuery(minZ, maxZ, groupId, minX, maxX, minY, maxY),
+                           referencedTransformSpecs,
+                           generator);
+    }
+
+    /**
+     * Writes a JSON array of tile specs with flattened (and therefore resolved) transform specs
+     * for all tiles that have the specified z.  Tiles are retrieved, resolved, and written in batches
+     * so that memory usage stays bounded regardless of the number of tiles in the layer
+     * (see {@link #validateResolvedTileCount(StackId, Double)}).
+     *
+     * @throws IllegalArgumentException
+     *   if any required parameters are missing.
+     *
+     * @throws IllegalStateException
+     *   if any tile cannot be fully resolved.
+     *
+     * @throws IOException
+     *   if the data cannot be written.
+     */
+    public void writeFlattenedTileSpecs(final StackId stackId,
+                                        final Double z,
+                                        final JsonGenerator generator)
+            throws IllegalArgumentException, IllegalStateException, IOException {
+
+        MongoUtil.validateRequiredParameter("stackId", stackId);
+        MongoUtil.validateRequiredParameter("z", z);
+
+        writeFlattenedTileSpecs(stackId, new Document("z", z), generator);
+    }
+
+    /**
+     * Verifies that the stack exists and that not too many tiles intersect the specified box
+     * so that problems can be reported before any resolved tile data is streamed.
+     * Empty boxes are valid (just like they are for non-streamed box render parameters).
+     *
+     * @throws IllegalArgumentException
+     *   if any required parameters are missing or if too many tiles intersect the box.
+     *
+     * @throws ObjectNotFoundException
+     *   if the stack cannot be found.
+     */
+    public void validateBoxTileCount(final StackId stackId,
+                                     final Double x,
+                                     final Double y,
+                                     final Double z,
+                                     final Integer width,
+                                     final Integer height)
+            throws IllegalArgumentException, ObjectNotFoundException {
+
+        MongoUtil.validateRequiredParameter("stackId", stackId);
+        MongoUtil.validateRequiredParameter("x", x);
+        MongoUtil.validateRequiredParameter("y", y);
+        MongoUtil.validateRequiredParameter("z", z);
+        MongoUtil.validateRequiredParameter("width", width);
+        MongoUtil.validateRequiredParameter("height", height);
+
+        final Document tileQuery = getBoxTileQuery(stackId, z, x, y, x + width, y + height);
+        if ((tileQuery == null) || (getBoundedTileCount(stackId, tileQuery) == 0)) {
+            throwExceptionIfStackIsMissing(stackId);
+        }
+    }
+
+    /**
+     * Writes a JSON array of tile specs with flattened (and therefore resolved) transform specs
+     * for all tiles that intersect the specified box.  Each tile is written once, so clients
+     * rendering many smaller boxes within the specified box can share the tile data
+     * (see {@link #validateBoxTileCount}).
+     *
+     * @throws IllegalArgumentException
+     *   if any required parameters are missing.
+     *
+     * @throws IllegalStateException
+     *   if any tile cannot be fully resolved.
+     *
+     * @throws IOException
+     *   if the data cannot be written.
+     */
+    public void writeFlattenedTileSpecsForBox(final StackId stackId,
+                                              final Double x,
+                                              final Double y,
+                                              final Double z,
+                                              final Integer width,
+                                              final Integer height,
+                                              final JsonGenerator generator)
+            throws IllegalArgumentException, IllegalStateException, IOException {
+
+        MongoUtil.validateRequiredParameter("stackId", stackId);
+        MongoUtil.validateRequiredParameter("x", x);
+        MongoUtil.validateRequiredParameter("y", y);
+        MongoUtil.validateRequiredParameter("z", z);
+        MongoUtil.validateRequiredParameter("width", width);
+        MongoUtil.validateRequiredParameter("height", height);
+
+        final Document tileQuery = getBoxTileQuery(stackId, z, x, y, x + width, y + height);
+        if (tileQuery == null) {
+            generator.writeStartArray();
+            generator.writeEndArray();
+        } else {
+            writeFlattenedTileSpecs(stackId, tileQuery, generator);
+        }
+    }
+
     /**
      * Saves the specified tile spec to the database.
      *
@@ -554,19 +951,19 @@ public class RenderDao {
 
         if (transformSpecs.size() > 0) {
             saveResolvedTransforms(stackId, transformSpecs);
+            transformSpecCache.invalidateStack(stackId);
         }
 
         if (tileSpecs.size() > 0) {
 
-            final MongoCollection<Document> tileCollection = getTileCollection(stackId);
+            final MongoCollection<TileSpec> tileCollection =
+                    getTileCollection(stackId).withDocumentClass(TileSpec.class);
 
-            final List<WriteModel<Document>> modelList = new ArrayList<>(tileSpecs.size());
+            final List<WriteModel<TileSpec>> modelList = new ArrayList<>(tileSpecs.size());
             Document query = new Document();
-            Document tileSpecObject;
             for (final TileSpec tileSpec : tileSpecs) {
                 query = new Document("tileId", tileSpec.getTileId());
-                tileSpecObject = Document.parse(tileSpec.toJson());
-                modelList.add(new ReplaceOneModel<>(query, tileSpecObject, MongoUtil.UPSERT_OPTION));
+                modelList.add(new ReplaceOneModel<>(query, tileSpec, MongoUtil.UPSERT_OPTION));
             }
 
             final BulkWriteResult result = tileCollection.bulkWrite(modelList, MongoUtil.UNORDERED_OPTION);
@@ -607,9 +1004,9 @@ public class RenderDao {
         final Document query = new Document();
         query.put("tileId", tileSpec.getTileId());
 
-        final Document tileSpecObject = Document.parse(tileSpec.toJson());
-
-        final UpdateResult result = tileCollection.replaceOne(query, tileSpecObject, MongoUtil.UPSERT_OPTION);
+        final UpdateResult result = tileCollection.withDocumentClass(TileSpec.class).replaceOne(query,
+                                                                                               tileSpec,
+                                                                                               MongoUtil.UPSERT_OPTION);
 
         LOG.debug("saveTileSpec: {}.{},({}), upsertedId is {}",
                   MongoUtil.fullName(tileCollection),
@@ -644,15 +1041,15 @@ public class RenderDao {
 
         LOG.debug("getTransformSpec: {}.find({})", MongoUtil.fullName(transformCollection), query.toJson());
 
-        final Document document = transformCollection.find(query).first();
+        final TransformSpec transformSpec = transformCollection.find(query, TransformSpec.class).first();
 
-        if (document == null) {
+        if (transformSpec == null) {
             throwExceptionIfStackIsMissing(stackId);
             throw new ObjectNotFoundException("transform spec with id '" + transformId + "' does not exist in the " +
                                               stackId);
         }
 
-        return TransformSpec.fromJson(document.toJson());
+        return transformSpec;
     }
 
     /**
@@ -682,11 +1079,12 @@ public class RenderDao {
         final Document query = new Document();
         query.put("id", transformSpec.getId());
 
-        final Document transformSpecObject = Document.parse(transformSpec.toJson());
+        final UpdateResult result = transformCollection.withDocumentClass(TransformSpec.class).replaceOne(
+                query,
+                transformSpec,
+                MongoUtil.UPSERT_OPTION);
 
-        final UpdateResult result = transformCollection.replaceOne(query,
-                                                                   transformSpecObject,
-                                                                   MongoUtil.UPSERT_OPTION);
+        transformSpecCache.invalidateStack(stackId);
 
         LOG.debug("saveTransformSpec: {}.{},({}), upsertedId is {}",
                   MongoUtil.fullName(transformCollection),
@@ -760,15 +1158,13 @@ public class RenderDao {
         final MongoCollection<Document> tileCollection = getTileCollection(stackId);
         final Document query = new Document("layout.sectionId", sectionId);
 
-        final Document document = tileCollection.find(query).first();
+        final TileSpec tileSpec = tileCollection.find(query, TileSpec.class).first();
 
-        if (document == null) {
+        if (tileSpec == null) {
             throwExceptionIfStackIsMissing(stackId);
             throw new ObjectNotFoundException("sectionId '" + sectionId + "' does not exist in the " + stackId);
         }
 
-        final TileSpec tileSpec = TileSpec.fromJson(document.toJson());
-
         return tileSpec.getZ();
     }
 
@@ -976,6 +1372,9 @@ public class RenderDao {
     }
 
     /**
+     * Always reads the current meta data for the specified stack from the database,
+     * so this should be used for validation and state changes.
+     *
      * @return meta data for the specified stack or null if the stack cannot be found.
      *
      * @throws IllegalArgumentException
@@ -994,6 +1393,32 @@ public class RenderDao {
         final Document document = stackMetaDataCollection.find(query).first();
         if (document != null) {
             stackMetaData = StackMetaData.fromJson(document.toJson());
+            stackMetaDataCache.put(stackMetaData);
+        }
+
+        return stackMetaData;
+    }
+
+    /**
+     * Returns recently cached meta data for the specified stack when possible.
+     * Changes made by this server are seen immediately, but changes made by other servers
+     * (e.g. another render-ws instance behind the same load balancer) can be missed for up to the cache's
+     * time to live ({@link StackMetaDataCache#DEFAULT_TIME_TO_LIVE_MILLISECONDS 5 seconds} by default),
+     * so this should only be used for read and render requests.
+     *
+     * @return meta data for the specified stack or null if the stack cannot be found.
+     *
+     * @throws IllegalArgumentException
+     *   if required parameters are not specified.
+     */
+    public StackMetaData getCachedStackMetaData(final StackId stackId)
+            throws IllegalArgumentException {
+
+        MongoUtil.validateRequiredParameter("stackId", stackId);
+
+        StackMetaData stackMetaData = stackMetaDataCache.get(stackId);
+        if (stackMetaData == null) {
+            stackMetaData = getStackMetaData(stackId);
         }
 
         return stackMetaData;
@@ -1013,6 +1438,7 @@ public class RenderDao {
         final UpdateResult result = stackMetaDataCollection.replaceOne(query,
                                                                        stackMetaDataObject,
                                                                        MongoUtil.UPSERT_OPTION);
+        stackMetaDataCache.invalidate(stackId);
 
         final String action;
         if (result.getMatchedCount() > 0) {
@@ -1183,6 +1609,7 @@ public class RenderDao {
         final UpdateResult result = stackMetaDataCollection.replaceOne(query,
                                                                        stackMetaDataObject,
                                                                        MongoUtil.UPSERT_OPTION);
+        stackMetaDataCache.invalidate(stackId);
 
         LOG.debug("ensureIndexesAndDeriveStats: {}.{}({})",
                   MongoUtil.fullName(stackMetaDataCollection), MongoUtil.action(result), query.toJson());
@@ -1264,6 +1691,10 @@ public class RenderDao {
         final MongoCollection<Document> transformCollection = getTransformCollection(stackId);
         final long transformCount = transformCollection.count();
         transformCollection.drop();
+        transformSpecCache.invalidateStack(stackId);
+        if (layerTileBoundsCache != null) {
+            layerTileBoundsCache.invalidateStack(stackId);
+        }
 
         LOG.debug("removeStack: {}.drop() deleted {} document(s)",
                   MongoUtil.fullName(transformCollection), transformCount);
@@ -1279,6 +1710,7 @@ public class RenderDao {
             final MongoCollection<Document> stackMetaDataCollection = getStackMetaDataCollection();
             final Document stackIdQuery = getStackIdQuery(stackId);
             final DeleteResult stackMetaDataRemoveResult = stackMetaDataCollection.deleteOne(stackIdQuery);
+            stackMetaDataCache.invalidate(stackId);
 
             LOG.debug("removeStack: {}.remove({}) deleted {} document(s)",
                       MongoUtil.fullName(stackMetaDataCollection),
@@ -1437,6 +1869,7 @@ public class RenderDao {
             final MongoCollection<Document> fromTransformCollection = getTransformCollection(fromStackId);
             final MongoCollection<Document> toTransformCollection = getTransformCollection(toStackId);
             cloneCollection(fromTransformCollection, toTransformCollection, new Document());
+            transformSpecCache.invalidateStack(toStackId);
         }
 
         final Document filterQuery = new Document();
@@ -1450,6 +1883,9 @@ public class RenderDao {
         final MongoCollection<Document> fromTileCollection = getTileCollection(fromStackId);
         final MongoCollection<Document> toTileCollection = getTileCollection(toStackId);
         cloneCollection(fromTileCollection, toTileCollection, filterQuery);
+        if (layerTileBoundsCache != null) {
+            layerTileBoundsCache.invalidateStack(toStackId);
+        }
     }
 
     /**
@@ -1490,6 +1926,12 @@ public class RenderDao {
                                    fromStackId.getSectionCollectionName(), toStackId.getSectionCollectionName());
         MongoUtil.renameCollection(renderDatabase,
                                    fromStackId.getTransformCollectionName(), toStackId.getTransformCollectionName());
+        transformSpecCache.invalidateStack(fromStackId);
+        transformSpecCache.invalidateStack(toStackId);
+        if (layerTileBoundsCache != null) {
+            layerTileBoundsCache.invalidateStack(fromStackId);
+            layerTileBoundsCache.invalidateStack(toStackId);
+        }
         MongoUtil.renameCollection(renderDatabase,
                                    fromStackId.getTileCollectionName(), toStackId.getTileCollectionName());
 
@@ -1501,6 +1943,8 @@ public class RenderDao {
         final UpdateResult result = stackMetaDataCollection.replaceOne(query,
                                                                        stackMetaDataObject,
                                                                        MongoUtil.UPSERT_OPTION);
+        stackMetaDataCache.invalidate(fromStackId);
+        stackMetaDataCache.invalidate(toStackId);
 
         LOG.debug("renameStack: ran {}.{},({}), upsertedId is {}",
                   MongoUtil.fullName(stackMetaDataCollection),
@@ -1575,15 +2019,13 @@ public class RenderDao {
         final ProcessTimer timer = new ProcessTimer();
         int tileSpecCount = 0;
         final Document orderBy = format.getOrderBy();
-        try (MongoCursor<Document> cursor =
-                     tileCollection.find(tileQuery).projection(tileKeys).sort(orderBy).iterator()) {
+        try (MongoCursor<TileSpec> cursor =
+                     tileCollection.find(tileQuery, TileSpec.class).projection(tileKeys).sort(orderBy).iterator()) {
 
-            Document document;
             TileSpec tileSpec;
             String layoutText;
             while (cursor.hasNext()) {
-                document = cursor.next();
-                tileSpec = TileSpec.fromJson(document.toJson());
+                tileSpec = cursor.next();
                 layoutText = format.formatTileSpec(tileSpec, stackRequestUri);
                 outputStream.write(layoutText.getBytes());
                 tileSpecCount++;
@@ -1729,6 +2171,30 @@ public class RenderDao {
         return list;
     }
 
+    /**
+     * Derives a version key from recently cached stack meta data (see {@link #getCachedStackMetaData}).
+     * This is the only source of version keys for cached stack data (resolved transform specs,
+     * layer tile bounds indexes, and inverse meshes), so repeated requests do not need to read
+     * stack meta data from the database.  Data cached with the key can be reused for up to the
+     * meta data cache's time to live after another server reopens the stack for loading.
+     *
+     * @return version key for caching data derived from the specified stack's tiles or
+     *         null if the stack's data should not be cached.
+     */
+    public String getCachedStackVersionKey(final StackId stackId) {
+        final StackMetaData stackMetaData = getCachedStackMetaData(stackId);
+        String versionKey = null;
+        // tile and transform specs can only be changed while a stack is loading,
+        // and the stack's timestamp is updated whenever it transitions out of the loading state
+        if ((stackMetaData != null) &&
+            (! stackMetaData.isLoading()) &&
+            (stackMetaData.getLastModifiedTimestamp() != null)) {
+            versionKey = stackMetaData.getCurrentVersionNumber() + "::" +
+                         stackMetaData.getLastModifiedTimestamp().getTime();
+        }
+        return versionKey;
+    }
+
     private List<TransformSpec> getTransformSpecs(final MongoCollection<Document> transformCollection,
                                                   final Set<String> specIds) {
         final int specCount = specIds.size();
@@ -1741,13 +2207,10 @@ public class RenderDao {
             LOG.debug("getTransformSpecs: {}.find({})",
                       MongoUtil.fullName(transformCollection), transformQuery.toJson());
 
-            try (MongoCursor<Document> cursor = transformCollection.find(transformQuery).iterator()) {
-                Document document;
-                TransformSpec transformSpec;
+            try (MongoCursor<TransformSpec> cursor =
+                         transformCollection.find(transformQuery, TransformSpec.class).iterator()) {
                 while (cursor.hasNext()) {
-                    document = cursor.next();
-                    transformSpec = TransformSpec.fromJson(document.toJson());
-                    transformSpecList.add(transformSpec);
+                    transformSpecList.add(cursor.next());
                 }
             }
 
@@ -1795,6 +2258,119 @@ public class RenderDao {
         }
     }
 
+    /**
+     * Adds resolved tile specs for all tiles that intersect the specified box,
+     * using the layer spatial index when possible.
+     */
+    private void addResolvedTileSpecsForBox(final StackId stackId,
+                                            final double z,
+                                            final double x,
+                                            final double y,
+                                            final double lowerRightX,
+                                            final double lowerRightY,
+                                            final RenderParameters renderParameters)
+            throws IllegalArgumentException {
+
+        final Document tileQuery = getBoxTileQuery(stackId, z, x, y, lowerRightX, lowerRightY);
+        if (tileQuery != null) {
+            addResolvedTileSpecs(stackId, tileQuery, renderParameters);
+        }
+    }
+
+    /**
+     * @return query for all tiles that intersect the specified box (using the layer spatial index when possible)
+     *         or null if the layer index shows that no tiles intersect the box.
+     *
+     * @throws IllegalArgumentException
+     *   if the layer index shows that too many tiles intersect the box.
+     */
+    private Document getBoxTileQuery(final StackId stackId,
+                                     final double z,
+                                     final double x,
+                                     final double y,
+                                     final double lowerRightX,
+                                     final double lowerRightY)
+            throws IllegalArgumentException {
+
+        final Document tileQuery;
+
+        final List<String> indexedTileIds = getIndexedTileIds(stackId, z, x, y, lowerRightX, lowerRightY);
+
+        if (indexedTileIds == null) {
+
+            tileQuery = getIntersectsBoxQuery(z, x, y, lowerRightX, lowerRightY);
+
+        } else if (indexedTileIds.size() > maxResolvedTileCount) {
+
+            throw new IllegalArgumentException("query too broad, over " + maxResolvedTileCount +
+                                               " tiles intersect box with z " + z + ", x " + x + ", y " + y +
+                                               ", lowerRightX " + lowerRightX + ", and lowerRightY " + lowerRightY);
+
+        } else if (indexedTileIds.size() > 0) {
+
+            tileQuery = new Document("tileId", new Document("$in", indexedTileIds));
+
+        } else {
+
+            tileQuery = null;
+
+        }
+
+        return tileQuery;
+    }
+
+    /**
+     * @return sorted list of ids for all tiles that intersect the specified box or
+     *         null if the box's layer is not (and cannot be) indexed in memory.
+     */
+    private List<String> getIndexedTileIds(final StackId stackId,
+                                           final double z,
+                                           final double x,
+                                           final double y,
+                                           final double lowerRightX,
+                                           final double lowerRightY) {
+        return getIndexedTileIds(stackId, getLayerIndexVersionKey(stackId), z, x, y, lowerRightX, lowerRightY);
+    }
+
+    /**
+     * @return version key for in-memory layer indexes or null if layers should not be indexed
+     *         (because there is no index cache or the stack's data should not be cached).
+     */
+    private String getLayerIndexVersionKey(final StackId stackId) {
+        return layerTileBoundsCache == null ? null : getCachedStackVersionKey(stackId);
+    }
+
+    /**
+     * @return sorted list of ids for all tiles that intersect the specified box or
+     *         null if the box's layer is not (and cannot be) indexed in memory.
+     */
+    private List<String> getIndexedTileIds(final StackId stackId,
+                                           final String versionKey,
+                                           final double z,
+                                           final double x,
+                                           final double y,
+                                           final double lowerRightX,
+                                           final double lowerRightY) {
+
+        List<String> tileIds = null;
+
+        if (layerTileBoundsCache != null) {
+
+            if (versionKey != null) {
+                try {
+                    tileIds = layerTileBoundsCache.getTileIdsInBox(stackId, versionKey,
+                                                                   z, x, y, lowerRightX, lowerRightY,
+                                                                   () -> getTileBoundsForZ(stackId, z));
+                } catch (final Throwable t) {
+                    LOG.warn("getIndexedTileIds: failed to index z " + z + " in " + stackId +
+                             ", querying tile collection directly", t);
+                }
+            }
+        }
+
+        return tileIds;
+    }
+
     private Map<String, TransformSpec> addResolvedTileSpecs(final StackId stackId,
                                                             final Document tileQuery,
                                                             final RenderParameters renderParameters) {
@@ -1807,17 +2383,13 @@ public class RenderDao {
         // order tile specs by tileId to ensure consistent coordinate mapping
         final Document orderBy = new Document("tileId", 1);
 
-        try (MongoCursor<Document> cursor = tileCollection.find(tileQuery).sort(orderBy).iterator()) {
-            Document document;
-            TileSpec tileSpec;
+        try (MongoCursor<TileSpec> cursor = tileCollection.find(tileQuery, TileSpec.class).sort(orderBy).iterator()) {
             int count = 0;
             while (cursor.hasNext()) {
-                if (count > 50000) {
+                if (count > maxResolvedTileCount) {
                     throw new IllegalArgumentException("query too broad, over " + count + " tiles match " + tileQuery);
                 }
-                document = cursor.next();
-                tileSpec = TileSpec.fromJson(document.toJson());
-                renderParameters.addTileSpec(tileSpec);
+                renderParameters.addTileSpec(cursor.next());
                 count++;
             }
         }
@@ -1835,6 +2407,184 @@ public class RenderDao {
         return resolveTransformReferencesForTiles(stackId, renderParameters.getTileSpecs());
     }
 
+    /**
+     * @return number of tiles matching the specified query (counting stops once the max resolved tile limit is exceeded).
+     *
+     * @throws IllegalArgumentException
+     *   if too many tiles match the query.
+     */
+    private long getBoundedTileCount(final StackId stackId,
+                                     final Document tileQuery)
+            throws IllegalArgumentException {
+
+        final MongoCollection<Document> tileCollection = getTileCollection(stackId);
+        final long count = tileCollection.count(tileQuery, new CountOptions().limit(maxResolvedTileCount + 1));
+
+        if (count > maxResolvedTileCount) {
+            throw new IllegalArgumentException("query too broad, over " + maxResolvedTileCount +
+                                               " tiles match " + tileQuery);
+        }
+
+        return count;
+    }
+
+    private Map<String, TransformSpec> getReferencedTransformSpecs(final StackId stackId,
+                                                                   final Document tileQuery)
+            throws IllegalStateException {
+
+        final MongoCollection<Document> tileCollection = getTileCollection(stackId);
+        final Document transformKeys = new Document("_id", 0).append("transforms", 1);
+
+        // only transform lists are retrieved here, so this pass is much cheaper than the streaming pass
+        final Set<String> unresolvedIds = new HashSet<>();
+        try (MongoCursor<TileSpec> cursor =
+                     tileCollection.find(tileQuery, TileSpec.class).projection(transformKeys).iterator()) {
+            ListTransformSpec transforms;
+            while (cursor.hasNext()) {
+                transforms = cursor.next().getTransforms();
+                if (transforms != null) {
+                    transforms.addUnresolvedIds(unresolvedIds);
+                }
+            }
+        }
+
+        final Map<String, TransformSpec> resolvedIdToSpecMap = new HashMap<>();
+        if (unresolvedIds.size() > 0) {
+            getDataForTransformSpecReferences(getTransformCollection(stackId), unresolvedIds, resolvedIdToSpecMap, 1);
+            if (! resolvedIdToSpecMap.keySet().containsAll(unresolvedIds)) {
+                final Set<String> missingIds = new HashSet<>(unresolvedIds);
+                missingIds.removeAll(resolvedIdToSpecMap.keySet());
+                throw new IllegalStateException(
+                        missingIds.size() + " transform spec(s) referenced by tiles in " + stackId +
+                        " matching " + tileQuery.toJson() + " cannot be found, missing ids are " + missingIds);
+            }
+        }
+
+        LOG.debug("getReferencedTransformSpecs: found {} transform spec(s) referenced by tiles in {}.find({})",
+                  resolvedIdToSpecMap.size(), MongoUtil.fullName(tileCollection), tileQuery.toJson());
+
+        return resolvedIdToSpecMap;
+    }
+
+    private void writeResolvedTiles(final StackId stackId,
+                                    final Document tileQuery,
+                                    final Map<String, TransformSpec> referencedTransformSpecs,
+                                    final JsonGenerator generator)
+            throws IOException {
+
+        final MongoCollection<Document> tileCollection = getTileCollection(stackId);
+        final Document tileKeys = new Document("_id", 0);
+        final Document orderBy = new Document("tileId", 1);
+
+        final ProcessTimer timer = new ProcessTimer();
+        int tileSpecCount = 0;
+
+        // field names match ResolvedTileSpecCollection so that clients can parse the data as usual
+        generator.writeStartObject();
+        generator.writeObjectFieldStart("tileIdToSpecMap");
+
+        try (MongoCursor<TileSpec> cursor =
+                     tileCollection.find(tileQuery, TileSpec.class).projection(tileKeys).sort(orderBy).iterator()) {
+
+            TileSpec tileSpec;
+            while (cursor.hasNext()) {
+
+                // reference transforms are written as references and resolved by clients
+                tileSpec = cursor.next();
+
+                generator.writeFieldName(tileSpec.getTileId());
+                generator.writeObject(tileSpec);
+                tileSpecCount++;
+
+                if (timer.hasIntervalPassed()) {
+                    LOG.debug("writeResolvedTiles: data written for {} tiles", tileSpecCount);
+                }
+            }
+        }
+
+        generator.writeEndObject();
+
+        generator.writeObjectFieldStart("transformIdToSpecMap");
+        for (final TransformSpec transformSpec : referencedTransformSpecs.values()) {
+            generator.writeFieldName(transformSpec.getId());
+            generator.writeObject(transformSpec);
+        }
+        generator.writeEndObject();
+
+        generator.writeEndObject();
+
+        LOG.debug("writeResolvedTiles: wrote data for {} tile spec(s) and {} transform spec(s) returned by {}.find({},{}).sort({}), elapsedSeconds={}",
+                  tileSpecCount, referencedTransformSpecs.size(), MongoUtil.fullName(tileCollection),
+                  tileQuery.toJson(), tileKeys.toJson(), orderBy.toJson(), timer.getElapsedSeconds());
+    }
+
+    private void writeFlattenedTileSpecs(final StackId stackId,
+                                         final Document tileQuery,
+                                         final JsonGenerator generator)
+            throws IllegalStateException, IOException {
+
+        final MongoCollection<Document> tileCollection = getTileCollection(stackId);
+        final Document tileKeys = new Document("_id", 0);
+
+        // order tile specs by tileId to ensure consistent coordinate mapping
+        final Document orderBy = new Document("tileId", 1);
+
+        final ProcessTimer timer = new ProcessTimer();
+        final Map<String, TransformSpec> resolvedIdToSpecMap = new HashMap<>();
+        final List<TileSpec> batch = new ArrayList<>(TILE_SPEC_WRITE_BATCH_SIZE);
+        int tileSpecCount = 0;
+
+        generator.writeStartArray();
+
+        try (MongoCursor<TileSpec> cursor =
+                     tileCollection.find(tileQuery, TileSpec.class).projection(tileKeys).sort(orderBy).iterator()) {
+
+            while (cursor.hasNext()) {
+
+                batch.add(cursor.next());
+
+                if (batch.size() == TILE_SPEC_WRITE_BATCH_SIZE) {
+                    writeFlattenedTileSpecBatch(stackId, batch, resolvedIdToSpecMap, generator);
+                    tileSpecCount += batch.size();
+                    batch.clear();
+
+                    if (timer.hasIntervalPassed()) {
+                        LOG.debug("writeFlattenedTileSpecs: data written for {} tiles", tileSpecCount);
+                    }
+                }
+            }
+        }
+
+        writeFlattenedTileSpecBatch(stackId, batch, resolvedIdToSpecMap, generator);
+        tileSpecCount += batch.size();
+
+        generator.writeEndArray();
+
+        if (LOG.isDebugEnabled()) {
+            String queryJson = tileQuery.toJson();
+            if (queryJson.length() > 100) {
+                queryJson = queryJson.substring(0, 95) + " ...}";
+            }
+            LOG.debug("writeFlattenedTileSpecs: wrote data for {} tile spec(s) returned by {}.find({},{}).sort({}), elapsedSeconds={}",
+                      tileSpecCount, MongoUtil.fullName(tileCollection),
+                      queryJson, tileKeys.toJson(), orderBy.toJson(), timer.getElapsedSeconds());
+        }
+    }
+
+    private void writeFlattenedTileSpecBatch(final StackId stackId,
+                                             final List<TileSpec> tileSpecs,
+                                             final Map<String, TransformSpec> resolvedIdToSpecMap,
+                                             final JsonGenerator generator)
+            throws IllegalStateException, IOException {
+
+        resolveTransformReferencesForTiles(stackId, tileSpecs, resolvedIdToSpecMap);
+
+        for (final TileSpec tileSpec : tileSpecs) {
+            tileSpec.flattenTransforms();
+            generator.writeObject(tileSpec);
+        }
+    }
+
     private Document lte(final double value) {
         return new Document(QueryOperators.LTE, value);
     }
@@ -2062,17 +2812,17 @@ public class RenderDao {
     private void saveResolvedTransforms(final StackId stackId,
                                         final Collection<TransformSpec> transformSpecs) {
 
-        final MongoCollection<Document> transformCollection = getTransformCollection(stackId);
+        final MongoCollection<TransformSpec> transformCollection =
+                getTransformCollection(stackId).withDocumentClass(TransformSpec.class);
 
         int updateCount = 0;
         int insertCount = 0;
         UpdateResult result;
         for (final TransformSpec transformSpec : transformSpecs) {
             final Document query = new Document("id", transformSpec.getId());
-            final Document transformSpecObject = Document.parse(transformSpec.toJson());
             try {
                 result = transformCollection.replaceOne(query,
-                                                        transformSpecObject,
+                                                        transformSpec,
                                                         MongoUtil.UPSERT_OPTION);
                 if (result.getMatchedCount() > 0) {
                     updateCount++;
@@ -2083,7 +2833,7 @@ public class RenderDao {
                 LOG.warn("possible duplicate key exception thrown for upsert, retrying operation ...", e);
 
                 result = transformCollection.replaceOne(query,
-                                                        transformSpecObject,
+                                                        transformSpec,
                                                         MongoUtil.UPSERT_OPTION);
                 if (result.getMatchedCount() > 0) {
                     updateCount++;
@@ -2173,6 +2923,12 @@ public class RenderDao {
 
     private static final Logger LOG = LoggerFactory.getLogger(RenderDao.class);
 
+    /** Maximum number of tiles that can be resolved for a single request. */
+    private static final int DEFAULT_MAX_RESOLVED_TILE_COUNT = 50000;
+
+    /** Number of tiles to resolve at a time when streaming flattened tile specs. */
+    private static final int TILE_SPEC_WRITE_BATCH_SIZE = 1000;
+
     /** Explicitly named index options allow a little more namespace room for stack id components. */
     private static final IndexOptions TRANSFORM_A_OPTIONS = new IndexOptions().unique(true).background(true).name("A");
     private static final IndexOptions TILE_A_OPTIONS = new IndexOptions().unique(true).background(true).name("A");
@@ -14,6 +14,8 @@ import java.util.List;
 import java.util.jar.Attributes;
 import java.util.jar.Manifest;
 
+import org.bson.codecs.configuration.CodecRegistries;
+import org.bson.codecs.configuration.CodecRegistry;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -34,6 +36,11 @@ import org.slf4j.LoggerFactory;
  */
 public class SharedMongoClient {
 
+    /** Registry that includes codecs for render objects (see {@link RenderCodecProvider}) and all default codecs. */
+    public static final CodecRegistry CODEC_REGISTRY =
+            CodecRegistries.fromRegistries(CodecRegistries.fromProviders(new RenderCodecProvider()),
+                                           MongoClient.getDefaultCodecRegistry());
+
     private static SharedMongoClient sharedMongoClient;
 
     public static MongoClient getInstance()
@@ -53,7 +60,9 @@ public class SharedMongoClient {
 
             // use connectionString for everything (see https://docs.mongodb.com/manual/reference/connection-string )
 
-            final MongoClientURI mongoClientURI = new MongoClientURI(dbConfig.getConnectionString());
+            final MongoClientOptions.Builder optionsBuilder =
+                    new MongoClientOptions.Builder().codecRegistry(CODEC_REGISTRY);
+            final MongoClientURI mongoClientURI = new MongoClientURI(dbConfig.getConnectionString(), optionsBuilder);
             client = new MongoClient(mongoClientURI);
 
         } else {
@@ -75,6 +84,7 @@ public class SharedMongoClient {
                     .connectionsPerHost(dbConfig.getMaxConnectionsPerHost())
                     .maxConnectionIdleTime(dbConfig.getMaxConnectionIdleTime())
                     .readPreference(dbConfig.getReadPreference())
+                    .codecRegistry(CODEC_REGISTRY)
                     .build();
 
             client = new MongoClient(dbConfig.getServerAddressList(), credentialsList, options);
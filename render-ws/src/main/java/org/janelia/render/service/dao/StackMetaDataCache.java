@@ -0,0 +1,124 @@
+package org.janelia.render.service.dao;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+
+import java.util.concurrent.TimeUnit;
+
+import org.janelia.alignment.spec.stack.StackId;
+import org.janelia.alignment.spec.stack.StackMetaData;
+
+/**
+ * Short lived cache of stack meta data.
+ *
+ * Almost every render web service request starts by looking up the meta data for the requested stack
+ * (for entity tags, materialized box paths, etc.), so caching the meta data for a few seconds removes
+ * a serial database round trip from most requests (e.g. CATMAID tile fetches).
+ *
+ * Entries for a stack are explicitly invalidated whenever the stack's meta data is changed by this server.
+ * Changes made by other servers are picked up once the (short) time to live for an entry expires,
+ * so cached meta data is only used for read and render requests.  Validation and state changes
+ * (e.g. checking that a stack is loading before saving tiles) always read meta data from the database.
+ *
+ * Since callers routinely modify the meta data they retrieve before saving it,
+ * the cache retains serialized meta data and returns a new instance for each request.
+ * Missing stacks are not cached.
+ *
+ * @author Eric Trautman
+ */
+public class StackMetaDataCache {
+
+    /** Default time to live is 5 seconds. */
+    public static final long DEFAULT_TIME_TO_LIVE_MILLISECONDS = 5_000;
+
+    /** Default maximum number of cached stacks is 10,000. */
+    public static final long DEFAULT_MAX_ENTRIES = 10_000;
+
+    private final long timeToLiveMilliseconds;
+    private final long maximumEntries;
+    private final Cache<StackId, String> cache;
+
+    /**
+     * Constructs a cache instance with default parameters.
+     */
+    public StackMetaDataCache() {
+        this(DEFAULT_TIME_TO_LIVE_MILLISECONDS, DEFAULT_MAX_ENTRIES);
+    }
+
+    /**
+     * Constructs a cache instance using the specified parameters.
+     *
+     * @param  timeToLiveMilliseconds  number of milliseconds after which cached meta data is discarded
+     *                                 (specify 0 to disable caching).
+     * @param  maximumEntries          maximum number of stacks to cache.
+     */
+    public StackMetaDataCache(final long timeToLiveMilliseconds,
+                              final long maximumEntries) {
+
+        this.timeToLiveMilliseconds = timeToLiveMilliseconds;
+        this.maximumEntries = maximumEntries;
+
+        this.cache = CacheBuilder.newBuilder()
+                .expireAfterWrite(timeToLiveMilliseconds, TimeUnit.MILLISECONDS)
+                .maximumSize(maximumEntries)
+                .recordStats()
+                .build();
+    }
+
+    /**
+     * @return a new instance of the cached meta data for the specified stack or
+     *         null if the stack's meta data is not cached.
+     */
+    public StackMetaData get(final StackId stackId) {
+        StackMetaData stackMetaData = null;
+        final String json = cache.getIfPresent(stackId);
+        if (json != null) {
+            stackMetaData = StackMetaData.fromJson(json);
+        }
+        return stackMetaData;
+    }
+
+    /**
+     * Adds the specified meta data to the cache.
+     */
+    public void put(final StackMetaData stackMetaData) {
+        cache.put(stackMetaData.getStackId(), stackMetaData.toJson());
+    }
+
+    /**
+     * Discards any cached meta data for the specified stack.
+     */
+    public void invalidate(final StackId stackId) {
+        cache.invalidate(stackId);
+    }
+
+    /**
+     * @return the number of entries currently in this cache.
+     */
+    public long size() {
+        return cache.size();
+    }
+
+    /**
+     * Discards all entries in the cache.
+     */
+    public void invalidateAll() {
+        cache.invalidateAll();
+    }
+
+    /**
+     * @return a current snapshot of this cache's cumulative statistics.
+     */
+    public CacheStats getStats() {
+        return cache.stats();
+    }
+
+    @Override
+    public String toString() {
+        return "{numberOfEntries: " + size() +
+               ", timeToLiveMilliseconds: " + timeToLiveMilliseconds +
+               ", maximumEntries: " + maximumEntries + '}';
+    }
+
+}
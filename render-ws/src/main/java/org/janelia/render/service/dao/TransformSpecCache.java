@@ -0,0 +1,227 @@
+package org.janelia.render.service.dao;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import com.google.common.cache.Weigher;
+
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+
+import org.janelia.alignment.spec.LeafTransformSpec;
+import org.janelia.alignment.spec.ListTransformSpec;
+import org.janelia.alignment.spec.ReferenceTransformSpec;
+import org.janelia.alignment.spec.TransformSpec;
+import org.janelia.alignment.spec.stack.StackId;
+
+/**
+ * Cache of fully resolved shared (referenced) {@link TransformSpec} instances for each stack.
+ *
+ * Most stacks reference the same small set of shared transforms (e.g. lens corrections) from every tile,
+ * so caching resolved specs avoids a transform collection query for most box, tile, and coordinate requests.
+ *
+ * Cached specs are keyed by stack id, a caller provided stack version key, and spec id.
+ * The version key (e.g. stack last modified timestamp) must change whenever the stack's transforms might change
+ * (on any server) so that stale specs are never used.  Stale entries are simply aged out of the cache,
+ * but entries for a stack can also be explicitly invalidated when the stack is changed by this server.
+ *
+ * Each cache is constrained by a max weight parameter where each spec is weighed by
+ * its (approximate) number of kilobytes of leaf transform data.
+ * Once a cache is full, least recently used specs are removed to make room.
+ *
+ * Cached specs are shared across requests, so they must not be modified.
+ * Only fully resolved specs are cached to ensure that no further resolution (modification) will occur.
+ *
+ * @author Eric Trautman
+ */
+public class TransformSpecCache {
+
+    /** Default max weight is 100,000 (roughly 100MB of leaf transform data). */
+    public static final long DEFAULT_MAX_WEIGHT = 100_000;
+
+    private final long maximumWeight;
+    private final Cache<CacheKey, TransformSpec> cache;
+
+    /**
+     * Constructs a cache instance with default parameters.
+     */
+    public TransformSpecCache() {
+        this(DEFAULT_MAX_WEIGHT);
+    }
+
+    /**
+     * Constructs a cache instance using the specified parameters.
+     *
+     * @param  maximumWeight  the maximum total weight (roughly kilobytes of transform data) to cache.
+     */
+    public TransformSpecCache(final long maximumWeight) {
+
+        this.maximumWeight = maximumWeight;
+
+        final Weigher<CacheKey, TransformSpec> weigher = (key, value) -> getWeight(value);
+
+        this.cache = CacheBuilder.newBuilder()
+                .maximumWeight(maximumWeight)
+                .weigher(weigher)
+                .recordStats()
+                .build();
+    }
+
+    /**
+     * Adds cached specs with the specified ids to the resolved spec map.
+     *
+     * @param  stackId              stack identifier.
+     * @param  versionKey           current version of the stack's transforms.
+     * @param  unresolvedIds        ids of the specs to find.
+     *                              Ids for cached specs are removed from this set.
+     * @param  resolvedIdToSpecMap  map to which cached specs are added.
+     */
+    public void addCachedSpecs(final StackId stackId,
+                               final String versionKey,
+                               final Set<String> unresolvedIds,
+                               final Map<String, TransformSpec> resolvedIdToSpecMap) {
+
+        final Iterator<String> idIterator = unresolvedIds.iterator();
+        String specId;
+        TransformSpec spec;
+        while (idIterator.hasNext()) {
+            specId = idIterator.next();
+            spec = cache.getIfPresent(new CacheKey(stackId, versionKey, specId));
+
+            // references to references need the ultimate target to resolve as well
+            for (int depth = 0; (spec instanceof ReferenceTransformSpec) && (depth < 10); depth++) {
+                resolvedIdToSpecMap.put(specId, spec);
+                specId = ((ReferenceTransformSpec) spec).getEffectiveRefId();
+                spec = cache.getIfPresent(new CacheKey(stackId, versionKey, specId));
+            }
+
+            if (spec != null) {
+                resolvedIdToSpecMap.put(specId, spec);
+                idIterator.remove();
+            }
+        }
+    }
+
+    /**
+     * Adds the fully resolved specs from the specified collection to the cache.
+     *
+     * @param  stackId     stack identifier.
+     * @param  versionKey  current version of the stack's transforms.
+     * @param  specs       specs to add.
+     */
+    public void putAll(final StackId stackId,
+                       final String versionKey,
+                       final Collection<TransformSpec> specs) {
+        for (final TransformSpec spec : specs) {
+            if (spec.hasId() && spec.isFullyResolved()) {
+                cache.put(new CacheKey(stackId, versionKey, spec.getId()), spec);
+            }
+        }
+    }
+
+    /**
+     * Discards all cached specs for the specified stack.
+     */
+    public void invalidateStack(final StackId stackId) {
+        cache.asMap().keySet().removeIf(key -> key.stackId.equals(stackId));
+    }
+
+    /**
+     * @return the number of entries currently in this cache.
+     */
+    public long size() {
+        return cache.size();
+    }
+
+    /**
+     * Discards all entries in the cache.
+     */
+    public void invalidateAll() {
+        cache.invalidateAll();
+    }
+
+    /**
+     * @return a current snapshot of this cache's cumulative statistics.
+     */
+    public CacheStats getStats() {
+        return cache.stats();
+    }
+
+    @Override
+    public String toString() {
+        return "{numberOfEntries: " + size() + ", maximumWeight: " + maximumWeight + '}';
+    }
+
+    /**
+     * @return approximate number of kilobytes of leaf transform data owned by the specified spec
+     *         (resolved references are weighed separately).
+     */
+    private static int getWeight(final TransformSpec spec) {
+        int weight = 1;
+        if (spec instanceof LeafTransformSpec) {
+            final String dataString = ((LeafTransformSpec) spec).getDataString();
+            if (dataString != null) {
+                weight += dataString.length() / 1024;
+            }
+        } else if (spec instanceof ListTransformSpec) {
+            final ListTransformSpec listSpec = (ListTransformSpec) spec;
+            for (int i = 0; i < listSpec.size(); i++) {
+                final TransformSpec childSpec = listSpec.getSpec(i);
+                if (! (childSpec instanceof ReferenceTransformSpec)) {
+                    weight += getWeight(childSpec);
+                }
+            }
+        }
+        return weight;
+    }
+
+    /**
+     * Key that combines a stack id and version key with a spec id.
+     */
+    private static class CacheKey {
+
+        private final StackId stackId;
+        private final String versionKey;
+        private final String specId;
+
+        CacheKey(final StackId stackId,
+                 final String versionKey,
+                 final String specId) {
+            this.stackId = stackId;
+            this.versionKey = versionKey == null ? "" : versionKey;
+            this.specId = specId == null ? "" : specId;
+        }
+
+        @Override
+        public String toString() {
+            return "{stackId: " + stackId + ", versionKey: '" + versionKey + "', specId: '" + specId + "'}";
+        }
+
+        @Override
+        public boolean equals(final Object o) {
+            boolean result = true;
+            if (this != o) {
+                if (o instanceof CacheKey) {
+                    final CacheKey that = (CacheKey) o;
+                    result = this.specId.equals(that.specId) &&
+                             this.versionKey.equals(that.versionKey) &&
+                             this.stackId.equals(that.stackId);
+                } else {
+                    result = false;
+                }
+            }
+            return result;
+        }
+
+        @Override
+        public int hashCode() {
+            int result = specId.hashCode();
+            result = 31 * result + versionKey.hashCode();
+            result = 31 * result + stackId.hashCode();
+            return result;
+        }
+    }
+
+}
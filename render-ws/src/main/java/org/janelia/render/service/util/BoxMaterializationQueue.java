@@ -0,0 +1,344 @@
+package org.janelia.render.service.util;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BooleanSupplier;
+
+import org.janelia.alignment.Utils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Deduplicating priority queue of missing materialized box files along with
+ * a bounded pool of worker threads that render and save the queued boxes.
+ *
+ * Boxes requested more often are materialized first (ties are materialized in request order).
+ * Requests for boxes that are already queued simply raise the priority of the queued box
+ * and requests for boxes that are currently being materialized are ignored.
+ * Each box is written to a temporary file in the target directory and then moved into place,
+ * so partially written boxes are never served.
+ *
+ * @author Eric Trautman
+ */
+public class BoxMaterializationQueue {
+
+    /**
+     * Renders the pixels for a box.
+     */
+    public interface BoxRenderer {
+
+        /**
+         * @return the rendered box image or null if the box should not be materialized.
+         *
+         * @throws Exception
+         *   if the box cannot be rendered.
+         */
+        BufferedImage render()
+                throws Exception;
+    }
+
+    private final int numberOfThreads;
+    private final int maxQueueSize;
+    private final ExecutorService executorService;
+
+    private final Map<File, BoxRequest> fileToQueuedRequest;
+    private final TreeSet<BoxRequest> queuedRequests;
+    private final Set<File> filesInProgress;
+    private long requestSequence;
+
+    private final AtomicLong materializedCount;
+    private final AtomicLong skippedCount;
+    private final AtomicLong failedCount;
+    private final AtomicLong droppedCount;
+
+    /**
+     * @param  numberOfThreads  maximum number of boxes to materialize concurrently.
+     * @param  maxQueueSize     maximum number of boxes to queue (requests for other boxes are dropped when full).
+     *
+     * @throws IllegalArgumentException
+     *   if the number of threads or max queue size is less than 1.
+     */
+    public BoxMaterializationQueue(final int numberOfThreads,
+                                   final int maxQueueSize)
+            throws IllegalArgumentException {
+
+        if (numberOfThreads < 1) {
+            throw new IllegalArgumentException("numberOfThreads must be greater than 0");
+        }
+        if (maxQueueSize < 1) {
+            throw new IllegalArgumentException("maxQueueSize must be greater than 0");
+        }
+
+        this.numberOfThreads = numberOfThreads;
+        this.maxQueueSize = maxQueueSize;
+
+        final AtomicInteger threadCount = new AtomicInteger(0);
+        final ThreadFactory threadFactory = runnable -> {
+            final Thread thread = new Thread(runnable, "box-materializer-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            thread.setPriority(Thread.MIN_PRIORITY);
+            return thread;
+        };
+
+        this.executorService = Executors.newFixedThreadPool(numberOfThreads, threadFactory);
+
+        final Comparator<BoxRequest> mostRequestedFirst =
+                Comparator.comparingLong((BoxRequest r) -> r.requestCount).reversed()
+                        .thenComparingLong(r -> r.sequence);
+
+        this.fileToQueuedRequest = new HashMap<>();
+        this.queuedRequests = new TreeSet<>(mostRequestedFirst);
+        this.filesInProgress = new HashSet<>();
+        this.requestSequence = 0;
+
+        this.materializedCount = new AtomicLong(0);
+        this.skippedCount = new AtomicLong(0);
+        this.failedCount = new AtomicLong(0);
+        this.droppedCount = new AtomicLong(0);
+    }
+
+    /**
+     * Queues the specified box for materialization if it is not already queued or being materialized.
+     *
+     * @param  boxFile        file for the materialized box.
+     * @param  format         image format for the box (e.g. jpg).
+     * @param  convertToGray  indicates whether the box pixels should be converted to gray scale when saved
+     *                        (this should match how dynamically rendered versions of the box are written).
+     * @param  renderer       renders the box pixels.
+     *
+     * @return true if the box was added to the queue; otherwise false.
+     */
+    public boolean add(final File boxFile,
+                       final String format,
+                       final boolean convertToGray,
+                       final BoxRenderer renderer) {
+        return add(boxFile, format, () -> convertToGray, renderer);
+    }
+
+    /**
+     * Queues the specified box for materialization if it is not already queued or being materialized.
+     *
+     * @param  boxFile        file for the materialized box.
+     * @param  format         image format for the box (e.g. jpg).
+     * @param  convertToGray  indicates whether the box pixels should be converted to gray scale when saved
+     *                        (this should match how dynamically rendered versions of the box are written).
+     *                        It is only evaluated (by a worker thread) when the rendered box is saved,
+     *                        so requests for boxes that are already queued or in progress don't pay for it.
+     * @param  renderer       renders the box pixels.
+     *
+     * @return true if the box was added to the queue; otherwise false.
+     */
+    public boolean add(final File boxFile,
+                       final String format,
+                       final BooleanSupplier convertToGray,
+                       final BoxRenderer renderer) {
+
+        boolean added = false;
+
+        synchronized (this) {
+
+            final BoxRequest queuedRequest = fileToQueuedRequest.get(boxFile);
+
+            if (queuedRequest != null) {
+
+                // re-insert to reflect increased priority
+                queuedRequests.remove(queuedRequest);
+                queuedRequest.requestCount++;
+                queuedRequests.add(queuedRequest);
+
+            } else if (! filesInProgress.contains(boxFile)) {
+
+                if (fileToQueuedRequest.size() < maxQueueSize) {
+                    final BoxRequest request = new BoxRequest(boxFile, format, convertToGray, renderer,
+                                                                      requestSequence++);
+                    fileToQueuedRequest.put(boxFile, request);
+                    queuedRequests.add(request);
+                    added = true;
+                } else {
+                    droppedCount.incrementAndGet();
+                }
+
+            }
+        }
+
+        if (added) {
+            // each submitted task materializes the highest priority request at the time it runs
+            executorService.submit(this::materializeNextRequest);
+            LOG.debug("add: queued {}", boxFile);
+        }
+
+        return added;
+    }
+
+    /**
+     * @return number of boxes waiting to be materialized.
+     */
+    public synchronized int size() {
+        return fileToQueuedRequest.size();
+    }
+
+    /**
+     * @return map of current queue metrics suitable for reporting.
+     */
+    public Map<String, Object> getMetrics() {
+        final Map<String, Object> metrics = new LinkedHashMap<>();
+        synchronized (this) {
+            metrics.put("queuedCount", fileToQueuedRequest.size());
+            metrics.put("inProgressCount", filesInProgress.size());
+        }
+        metrics.put("materializedCount", materializedCount.get());
+        metrics.put("skippedCount", skippedCount.get());
+        metrics.put("failedCount", failedCount.get());
+        metrics.put("droppedCount", droppedCount.get());
+        return metrics;
+    }
+
+    /**
+     * Stops accepting new boxes (previously queued boxes are still materialized).
+     */
+    public void shutdown() {
+        executorService.shutdown();
+    }
+
+    @Override
+    public String toString() {
+        return "{numberOfThreads: " + numberOfThreads + ", maxQueueSize: " + maxQueueSize + '}';
+    }
+
+    /**
+     * Saves an image (the same way betterbox boxes are saved) by writing it to a temporary file
+     * in the target directory and then atomically moving the temporary file into place.
+     *
+     * @param  image          image to save.
+     * @param  format         image format (e.g. jpg).
+     * @param  convertToGray  indicates whether the image should be converted to gray scale before it is saved.
+     * @param  targetFile     target file for the image.
+     *
+     * @throws IOException
+     *   if the image cannot be saved.
+     */
+    public static void saveImageAtomically(final BufferedImage image,
+                                           final String format,
+                                           final boolean convertToGray,
+                                           final File targetFile)
+            throws IOException {
+
+        final Path targetPath = targetFile.toPath();
+        final Path parentPath = targetPath.getParent();
+        Files.createDirectories(parentPath);
+
+        final Path tempPath = Files.createTempFile(parentPath, "." + targetFile.getName() + ".", ".tmp");
+        try {
+            Utils.saveImage(image, tempPath.toString(), format, convertToGray, BOX_QUALITY);
+            try {
+                Files.move(tempPath, targetPath, StandardCopyOption.ATOMIC_MOVE);
+            } catch (final AtomicMoveNotSupportedException e) {
+                Files.move(tempPath, targetPath, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            Files.deleteIfExists(tempPath);
+        }
+    }
+
+    private void materializeNextRequest() {
+
+        final BoxRequest request;
+        synchronized (this) {
+            request = queuedRequests.pollFirst();
+            if (request != null) {
+                fileToQueuedRequest.remove(request.boxFile);
+                filesInProgress.add(request.boxFile);
+            }
+        }
+
+        if (request != null) {
+            try {
+                materialize(request);
+            } finally {
+                synchronized (this) {
+                    filesInProgress.remove(request.boxFile);
+                }
+            }
+        }
+    }
+
+    private void materialize(final BoxRequest request) {
+
+        final File boxFile = request.boxFile;
+
+        try {
+
+            if (boxFile.exists()) {
+
+                skippedCount.incrementAndGet();
+                LOG.debug("materialize: {} already exists", boxFile);
+
+            } else {
+
+                final BufferedImage image = request.renderer.render();
+
+                if (image == null) {
+                    skippedCount.incrementAndGet();
+                    LOG.info("materialize: skipped {}", boxFile);
+                } else {
+                    saveImageAtomically(image, request.format, request.convertToGray.getAsBoolean(), boxFile);
+                    materializedCount.incrementAndGet();
+                    LOG.info("materialize: saved {} (requested {} times)", boxFile, request.requestCount);
+                }
+
+            }
+
+        } catch (final Throwable t) {
+            failedCount.incrementAndGet();
+            LOG.warn("materialize: failed to materialize " + boxFile, t);
+        }
+    }
+
+    /**
+     * Queued box information.
+     */
+    private static class BoxRequest {
+
+        private final File boxFile;
+        private final String format;
+        private final BooleanSupplier convertToGray;
+        private final BoxRenderer renderer;
+        private final long sequence;
+        private long requestCount;
+
+        BoxRequest(final File boxFile,
+                   final String format,
+                   final BooleanSupplier convertToGray,
+                   final BoxRenderer renderer,
+                   final long sequence) {
+            this.boxFile = boxFile;
+            this.format = format;
+            this.convertToGray = convertToGray;
+            this.renderer = renderer;
+            this.sequence = sequence;
+            this.requestCount = 1;
+        }
+    }
+
+    private static final Logger LOG = LoggerFactory.getLogger(BoxMaterializationQueue.class);
+
+    /** Quality used by the betterbox BoxGenerator (see BoxMipmapGenerator.saveImage). */
+    private static final float BOX_QUALITY = 0.85f;
+}
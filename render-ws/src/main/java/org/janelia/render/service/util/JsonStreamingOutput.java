@@ -0,0 +1,102 @@
+package org.janelia.render.service.util;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.core.HttpHeaders;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
+import javax.ws.rs.core.StreamingOutput;
+
+import org.janelia.alignment.json.JsonUtils;
+
+/**
+ * Streams JSON (or binary Smile) content element by element as the response for a JAX-RS API request
+ * so that large responses do not need to be built in memory before the first byte is sent.
+ *
+ * @author Eric Trautman
+ */
+public class JsonStreamingOutput
+        implements StreamingOutput {
+
+    /** Media type for the binary (Smile) JSON format. */
+    public static final MediaType SMILE_MEDIA_TYPE = MediaType.valueOf(JsonUtils.SMILE_MIME_TYPE);
+
+    /**
+     * Writes content to a generator.
+     */
+    public interface ContentWriter {
+        void write(final JsonGenerator generator)
+                throws IOException;
+    }
+
+    private final ObjectMapper mapper;
+    private final ContentWriter contentWriter;
+
+    public JsonStreamingOutput(final ObjectMapper mapper,
+                               final ContentWriter contentWriter) {
+        this.mapper = mapper;
+        this.contentWriter = contentWriter;
+    }
+
+    @Override
+    public void write(final OutputStream outputStream)
+            throws IOException, WebApplicationException {
+
+        final JsonGenerator generator = mapper.getFactory().createGenerator(outputStream);
+
+        // let the container manage (close) the response stream
+        generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+
+        try {
+            contentWriter.write(generator);
+        } finally {
+            generator.close();
+        }
+    }
+
+    /**
+     * @param  httpHeaders    request headers.
+     * @param  contentWriter  writer for the response content.
+     *
+     * @return a response that streams Smile content if the request prefers it; otherwise streams JSON content.
+     */
+    public static Response buildResponse(final HttpHeaders httpHeaders,
+                                         final ContentWriter contentWriter) {
+
+        final Response.ResponseBuilder responseBuilder;
+        if (isSmilePreferred(httpHeaders)) {
+            responseBuilder = Response.ok(new JsonStreamingOutput(JsonUtils.SMILE_MAPPER, contentWriter),
+                                          SMILE_MEDIA_TYPE);
+        } else {
+            responseBuilder = Response.ok(new JsonStreamingOutput(JsonUtils.STREAMING_MAPPER, contentWriter),
+                                          MediaType.APPLICATION_JSON_TYPE);
+        }
+
+        return responseBuilder.build();
+    }
+
+    /**
+     * @return true if the Smile media type is acceptable and is preferred over (or as good as) JSON.
+     */
+    private static boolean isSmilePreferred(final HttpHeaders httpHeaders) {
+        boolean isSmilePreferred = false;
+        if (httpHeaders != null) {
+            // acceptable types are sorted by preference
+            for (final MediaType mediaType : httpHeaders.getAcceptableMediaTypes()) {
+                if (mediaType.isWildcardType() || mediaType.isCompatible(MediaType.APPLICATION_JSON_TYPE)) {
+                    break;
+                } else if (mediaType.isCompatible(SMILE_MEDIA_TYPE)) {
+                    isSmilePreferred = true;
+                    break;
+                }
+            }
+        }
+        return isSmilePreferred;
+    }
+
+}
@@ -2,7 +2,9 @@ package org.janelia.render.service.util;
 
 import java.awt.Color;
 import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
+import java.util.function.Supplier;
 
 import javax.ws.rs.core.Response;
 
@@ -10,6 +12,7 @@ import org.janelia.alignment.ArgbRenderer;
 import org.janelia.alignment.BoundingBoxRenderer;
 import org.janelia.alignment.RenderParameters;
 import org.janelia.alignment.ShortRenderer;
+import org.janelia.alignment.TriangleMappingPool;
 import org.janelia.alignment.Utils;
 import org.janelia.render.service.model.IllegalServiceArgumentException;
 import org.janelia.render.service.model.ServiceException;
@@ -66,10 +69,10 @@ public class RenderServiceUtil {
         return response;
     }
 
-    public static Response renderJpegImage(final RenderParameters renderParameters,
+    public static Response renderJpegImage(final Supplier<RenderParameters> renderParametersSupplier,
                                            final Integer maxTileSpecsToRender,
                                            final ResponseHelper responseHelper) {
-        return renderImageStream(renderParameters,
+        return renderImageStream(renderParametersSupplier,
                                  Utils.JPEG_FORMAT,
                                  IMAGE_JPEG_MIME_TYPE,
                                  maxTileSpecsToRender,
@@ -77,41 +80,42 @@ public class RenderServiceUtil {
     }
 
 
-    public static Response renderPngImage(final RenderParameters renderParameters,
+    public static Response renderPngImage(final Supplier<RenderParameters> renderParametersSupplier,
                                           final Integer maxTileSpecsToRender,
                                           final ResponseHelper responseHelper) {
-        return renderImageStream(renderParameters,
+        return renderImageStream(renderParametersSupplier,
                                  Utils.PNG_FORMAT,
                                  IMAGE_PNG_MIME_TYPE,
                                  maxTileSpecsToRender,
                                  responseHelper);
     }
 
-    public static Response renderTiffImage(final RenderParameters renderParameters,
+    public static Response renderTiffImage(final Supplier<RenderParameters> renderParametersSupplier,
     final Integer maxTileSpecsToRender,
     final ResponseHelper responseHelper) {
-return renderTiffImage(renderParameters, maxTileSpecsToRender, responseHelper, false);
+return renderTiffImage(renderParametersSupplier, maxTileSpecsToRender, responseHelper, false);
 }
 
-    public static Response renderTiffImage(final RenderParameters renderParameters,
+    public static Response renderTiffImage(final Supplier<RenderParameters> renderParametersSupplier,
                                            final Integer maxTileSpecsToRender,
                                            final ResponseHelper responseHelper,
                                            final boolean render16bit) {
-        return renderImageStream(renderParameters,
+        return renderImageStream(renderParametersSupplier,
                                  Utils.TIFF_FORMAT,
                                  IMAGE_TIFF_MIME_TYPE,
                                  maxTileSpecsToRender,
                                  responseHelper,
                                  render16bit);
     }
-    public static Response renderImageStream(final RenderParameters renderParameters,
+    public static Response renderImageStream(final Supplier<RenderParameters> renderParametersSupplier,
     final String format,
     final String mimeType,
     final Integer maxTileSpecsToRender,
     final ResponseHelper responseHelper) {
-        return renderImageStream(renderParameters, format, mimeType, maxTileSpecsToRender, responseHelper,false);
+        return renderImageStream(renderParametersSupplier, format, mimeType, maxTileSpecsToRender, responseHelper,
+                                 false);
     }
-    public static Response renderImageStream(final RenderParameters renderParameters,
+    public static Response renderImageStream(final Supplier<RenderParameters> renderParametersSupplier,
                                              final String format,
                                              final String mimeType,
                                              final Integer maxTileSpecsToRender,
@@ -131,18 +135,59 @@ return renderTiffImage(renderParameters, maxTileSpecsToRender, responseHelper, f
                 maxTilesToRender = RenderServerProperties.getProperties().getInteger("webService.maxTileSpecsToRender");
             }
 
-            final boolean renderBoundingBoxesOnly = (maxTilesToRender != null) &&
-                                                    (renderParameters.numberOfTileSpecs() > maxTilesToRender);
-
-            final BufferedImage targetImage = validateParametersAndRenderImage(renderParameters,
-                                                                               renderBoundingBoxesOnly,
-                                                                               render16bit);
-            final BufferedImageStreamingOutput out =
+            final RenderedImageCache renderedImageCache =
+                    responseHelper.isRenderedImageCacheable() ? SharedRenderedImageCache.getInstance() : null;
+
+            if (renderedImageCache == null) {
+
+                final RenderParameters renderParameters = renderParametersSupplier.get();
+                final BufferedImage targetImage =
+                        validateParametersAndRenderImage(renderParameters,
+                                                         isBoundingBoxRenderRequired(renderParameters,
+                                                                                     maxTilesToRender),
+                                                         render16bit);
+                final BufferedImageStreamingOutput out =
+                        new BufferedImageStreamingOutput(targetImage,
+                                                         format,
+                                                         renderParameters.isConvertToGray(),
+                                                         renderParameters.getQuality());
+                response = responseHelper.getImageByteResponse(out, mimeType);
+
+            } else {
+
+                // key on the request (instead of the resolved render parameters) so that
+                // cache hits skip tile spec queries and transform resolution entirely
+                final RenderedImageCache.Key key =
+                        RenderedImageCache.buildKey(responseHelper.getStackMetaData().getStackId(),
+                                                    responseHelper.getStackTag().getValue(),
+                                                    format,
+                                                    responseHelper.getRequestKey(),
+                                                    "maxTilesToRender=" + maxTilesToRender +
+                                                    ",render16bit=" + render16bit);
+
+                byte[] imageBytes = renderedImageCache.get(key);
+
+                if (imageBytes == null) {
+                    final RenderParameters renderParameters = renderParametersSupplier.get();
+                    final BufferedImage targetImage =
+                            validateParametersAndRenderImage(renderParameters,
+                                                             isBoundingBoxRenderRequired(renderParameters,
+                                                                                         maxTilesToRender),
+                                                             render16bit);
+                    final ByteArrayOutputStream encodedImage = new ByteArrayOutputStream();
                     new BufferedImageStreamingOutput(targetImage,
                                                      format,
                                                      renderParameters.isConvertToGray(),
-                                                     renderParameters.getQuality());
-            response = responseHelper.getImageByteResponse(out, mimeType);
+                                                     renderParameters.getQuality()).write(encodedImage);
+                    imageBytes = encodedImage.toByteArray();
+                    renderedImageCache.put(key, imageBytes);
+                } else {
+                    LOG.info("renderImageStream: returning cached image for {}", key);
+                }
+
+                final byte[] responseBytes = imageBytes;
+                response = responseHelper.getImageByteResponse(output -> output.write(responseBytes), mimeType);
+            }
         } catch (final Throwable t) {
             RenderServiceUtil.throwServiceException(t);
         }
@@ -171,6 +216,23 @@ return renderTiffImage(renderParameters, maxTileSpecsToRender, responseHelper, f
 
         return response;
     }
+
+    /**
+     * @return image with the full (not bounding box only) content for the specified parameters.
+     *
+     * @throws IllegalArgumentException
+     *   if the parameters are invalid.
+     */
+    public static BufferedImage renderImage(final RenderParameters renderParameters)
+            throws IllegalArgumentException {
+        return validateParametersAndRenderImage(renderParameters, false);
+    }
+
+    private static boolean isBoundingBoxRenderRequired(final RenderParameters renderParameters,
+                                                       final Integer maxTilesToRender) {
+        return (maxTilesToRender != null) && (renderParameters.numberOfTileSpecs() > maxTilesToRender);
+    }
+
     private static BufferedImage validateParametersAndRenderImage(final RenderParameters renderParameters,
                                                                   final boolean renderBoundingBoxesOnly){
         return validateParametersAndRenderImage(renderParameters, renderBoundingBoxesOnly,false);
@@ -184,7 +246,7 @@ return renderTiffImage(renderParameters, maxTileSpecsToRender, responseHelper, f
 
         renderParameters.initializeDerivedValues();
         renderParameters.validate();
-        renderParameters.setNumberOfThreads(1); // service requests should always be single threaded
+        renderParameters.setNumberOfThreads(getNumberOfMappingThreadsPerRender());
 
         final BufferedImage targetImage;
 
@@ -200,13 +262,15 @@ return renderTiffImage(renderParameters, maxTileSpecsToRender, responseHelper, f
                 targetImage = renderParameters.openTargetImage(BufferedImage.TYPE_USHORT_GRAY);
                 ShortRenderer.render(renderParameters,
                                      targetImage,
-                                     SharedImageProcessorCache.getInstance());
+                                     SharedImageProcessorCache.getInstance(),
+                                     SharedCanvasLoadingPool.getInstance());
             }
             else{
                 targetImage = renderParameters.openTargetImage();
                 ArgbRenderer.render(renderParameters,
                                     targetImage,
-                                    SharedImageProcessorCache.getInstance());
+                                    SharedImageProcessorCache.getInstance(),
+                                    SharedCanvasLoadingPool.getInstance());
             }
             
 
@@ -217,5 +281,36 @@ return renderTiffImage(renderParameters, maxTileSpecsToRender, responseHelper, f
         return targetImage;
     }
 
+    /**
+     * @return maximum number of shared pool threads each request may use for pixel mapping.
+     *         Since mapping threads come from a pool shared across all requests, values greater than 1 are safe.
+     */
+    private static int getNumberOfMappingThreadsPerRender() {
+        return MappingConfigurationHolder.NUMBER_OF_MAPPING_THREADS_PER_RENDER;
+    }
+
+    /**
+     * Loads the mapping configuration (and initializes the shared mapping pool) when it is first needed.
+     * Class initialization guarantees this happens exactly once and is visible to all request threads.
+     */
+    private static class MappingConfigurationHolder {
+
+        private static final int NUMBER_OF_MAPPING_THREADS_PER_RENDER = loadNumberOfMappingThreadsPerRender();
+
+        private static int loadNumberOfMappingThreadsPerRender() {
+
+            final Integer poolThreads =
+                    RenderServerProperties.getProperties().getInteger("webService.maxMappingPoolThreads");
+            if (poolThreads != null) {
+                TriangleMappingPool.initializeSharedInstance(poolThreads);
+            }
+
+            final Integer configuredValue =
+                    RenderServerProperties.getProperties().getInteger("webService.maxMappingThreadsPerRender");
+
+            return ((configuredValue == null) || (configuredValue < 1)) ? 1 : configuredValue;
+        }
+    }
+
     private static final Logger LOG = LoggerFactory.getLogger(RenderServiceUtil.class);
 }
\ No newline at end of file
@@ -0,0 +1,404 @@
+package org.janelia.render.service.util;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import com.google.common.cache.RemovalCause;
+import com.google.common.cache.RemovalListener;
+import com.google.common.cache.Weigher;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+
+import org.janelia.alignment.spec.stack.StackId;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Cache of encoded (e.g. JPEG or PNG) rendered images.
+ *
+ * Encoded images are kept in a memory tier that is constrained by a max byte count parameter.
+ * Once the memory tier is full, least recently used images are removed to make room.
+ * If a cache directory is specified, images are also written to a local disk tier
+ * (constrained by its own max byte count) so that images evicted from memory can be served without re-rendering.
+ *
+ * Images are keyed by stack id, stack tag (derived from the stack's last modified timestamp), image format,
+ * and a digest of the request (path and query options) that identifies the image.  Keying on the request
+ * instead of the resolved render parameters allows cached images to be returned without
+ * querying or resolving any tile specs.
+ * When a new tag is seen for a stack, all of the stack's images with any other tag are discarded.
+ * Keys are also indexed by stack so that discarding stale images does not require scanning the whole cache.
+ *
+ * @author Eric Trautman
+ */
+public class RenderedImageCache {
+
+    /** Default max number of bytes for the memory tier is 256MB. */
+    public static final long DEFAULT_MAX_MEMORY_BYTES = 256L * 1024 * 1024;
+
+    private final long maximumMemoryBytes;
+    private final File diskDirectory;
+    private final long maximumDiskBytes;
+
+    private final Cache<Key, byte[]> memoryCache;
+    private final Cache<Key, File> diskCache;
+    private final Map<StackId, String> stackIdToLatestTag;
+    private final Map<StackId, Set<Key>> stackIdToKeys;
+
+    private final AtomicLong diskHitCount;
+    private final AtomicLong diskMissCount;
+
+    /**
+     * Constructs a cache instance without a disk tier.
+     *
+     * @param  maximumMemoryBytes  the maximum number of encoded image bytes to keep in memory.
+     */
+    public RenderedImageCache(final long maximumMemoryBytes) {
+        this(maximumMemoryBytes, null, 0);
+    }
+
+    /**
+     * Constructs a cache instance using the specified parameters.
+     *
+     * @param  maximumMemoryBytes  the maximum number of encoded image bytes to keep in memory.
+     * @param  diskDirectory       directory for the disk tier (or null to skip the disk tier).
+     *                             Any previously cached images in the directory are removed.
+     * @param  maximumDiskBytes    the maximum number of encoded image bytes to keep on disk.
+     *
+     * @throws IllegalArgumentException
+     *   if the disk directory cannot be created.
+     */
+    public RenderedImageCache(final long maximumMemoryBytes,
+                              final File diskDirectory,
+                              final long maximumDiskBytes)
+            throws IllegalArgumentException {
+
+        this.maximumMemoryBytes = maximumMemoryBytes;
+        this.maximumDiskBytes = maximumDiskBytes;
+
+        final Weigher<Key, byte[]> memoryWeigher = (key, value) -> value.length;
+
+        final RemovalListener<Key, byte[]> memoryRemovalListener = notification -> {
+            if (notification.getCause() != RemovalCause.REPLACED) {
+                removeIndexedKeyIfUncached(notification.getKey());
+            }
+        };
+
+        this.memoryCache = CacheBuilder.newBuilder()
+                .maximumWeight(maximumMemoryBytes)
+                .weigher(memoryWeigher)
+                .removalListener(memoryRemovalListener)
+                .recordStats()
+                .build();
+
+        if ((diskDirectory != null) && (maximumDiskBytes > 0)) {
+
+            this.diskDirectory = diskDirectory.getAbsoluteFile();
+            prepareDiskDirectory();
+
+            // weigh files in kilobytes so that large disk tiers do not overflow integer weights
+            final Weigher<Key, File> diskWeigher = (key, value) -> (int) Math.max(1, value.length() / 1024);
+
+            final RemovalListener<Key, File> diskRemovalListener = notification -> {
+                // replaced entries reuse the same file, so only remove files for other causes
+                if (notification.getCause() != RemovalCause.REPLACED) {
+                    deleteFile(notification.getValue());
+                    removeIndexedKeyIfUncached(notification.getKey());
+                }
+            };
+
+            this.diskCache = CacheBuilder.newBuilder()
+                    .maximumWeight(Math.max(1, maximumDiskBytes / 1024))
+                    .weigher(diskWeigher)
+                    .removalListener(diskRemovalListener)
+                    .build();
+
+        } else {
+            this.diskDirectory = null;
+            this.diskCache = null;
+        }
+
+        this.stackIdToLatestTag = new ConcurrentHashMap<>();
+        this.stackIdToKeys = new ConcurrentHashMap<>();
+        this.diskHitCount = new AtomicLong(0);
+        this.diskMissCount = new AtomicLong(0);
+    }
+
+    /**
+     * @param  stackId        stack being rendered.
+     * @param  stackTag       current tag for the stack (changes whenever the stack is modified).
+     * @param  format         image format (e.g. jpg).
+     * @param  requestKey     identifies the requested image (e.g. request path and query parameters).
+     * @param  renderContext  any other options that affect the rendered result (e.g. 16-bit rendering).
+     *
+     * @return key for the specified image.
+     */
+    public static Key buildKey(final StackId stackId,
+                               final String stackTag,
+                               final String format,
+                               final String requestKey,
+                               final String renderContext) {
+        final String parametersDigest = Hashing.sha256().newHasher()
+                .putString(String.valueOf(renderContext), StandardCharsets.UTF_8)
+                .putString(String.valueOf(requestKey), StandardCharsets.UTF_8)
+                .hash()
+                .toString();
+        return new Key(stackId, stackTag, format, parametersDigest);
+    }
+
+    /**
+     * @return the cached encoded image bytes for the specified key or null if the image is not cached.
+     */
+    public byte[] get(final Key key) {
+
+        discardStaleEntries(key);
+
+        byte[] imageBytes = memoryCache.getIfPresent(key);
+
+        if ((imageBytes == null) && (diskCache != null)) {
+            final File file = diskCache.getIfPresent(key);
+            if (file != null) {
+                try {
+                    imageBytes = Files.readAllBytes(file.toPath());
+                    memoryCache.put(key, imageBytes);
+                    diskHitCount.incrementAndGet();
+                } catch (final IOException e) {
+                    LOG.warn("get: failed to read " + file + ", removing it from cache", e);
+                    diskCache.invalidate(key);
+                }
+            }
+            if (imageBytes == null) {
+                diskMissCount.incrementAndGet();
+            }
+        }
+
+        return imageBytes;
+    }
+
+    /**
+     * Adds the specified encoded image bytes to the cache.
+     */
+    public void put(final Key key,
+                    final byte[] imageBytes) {
+
+        discardStaleEntries(key);
+
+        memoryCache.put(key, imageBytes);
+
+        if (diskCache != null) {
+            final File file = new File(diskDirectory, key.getDigest() + CACHED_FILE_SUFFIX);
+            final File tempFile = new File(diskDirectory, key.getDigest() + ".tmp" + Thread.currentThread().getId());
+            try {
+                Files.write(tempFile.toPath(), imageBytes);
+                Files.move(tempFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+                diskCache.put(key, file);
+            } catch (final IOException e) {
+                LOG.warn("put: failed to write " + file, e);
+                deleteFile(tempFile);
+            }
+        }
+
+        // index after adding to the tiers so that an immediate memory eviction does not remove the index entry
+        stackIdToKeys.computeIfAbsent(key.stackId, k -> ConcurrentHashMap.newKeySet()).add(key);
+    }
+
+    /**
+     * Discards all entries in the cache.
+     */
+    public void invalidateAll() {
+        memoryCache.invalidateAll();
+        if (diskCache != null) {
+            diskCache.invalidateAll();
+        }
+        stackIdToLatestTag.clear();
+        stackIdToKeys.clear();
+    }
+
+    /**
+     * @return a current snapshot of the memory tier's cumulative statistics.
+     */
+    public CacheStats getStats() {
+        return memoryCache.stats();
+    }
+
+    /**
+     * @return map of current cache metrics suitable for reporting.
+     */
+    public Map<String, Object> getMetrics() {
+        final CacheStats stats = getStats();
+        final Map<String, Object> metrics = new LinkedHashMap<>();
+        metrics.put("memoryEntryCount", memoryCache.size());
+        metrics.put("maximumMemoryBytes", maximumMemoryBytes);
+        metrics.put("memoryHitCount", stats.hitCount());
+        metrics.put("memoryMissCount", stats.missCount());
+        metrics.put("memoryEvictionCount", stats.evictionCount());
+        metrics.put("memoryHitRate", stats.hitRate());
+        if (diskCache != null) {
+            metrics.put("diskDirectory", diskDirectory.getPath());
+            metrics.put("diskEntryCount", diskCache.size());
+            metrics.put("maximumDiskBytes", maximumDiskBytes);
+            metrics.put("diskHitCount", diskHitCount.get());
+            metrics.put("diskMissCount", diskMissCount.get());
+        }
+        return metrics;
+    }
+
+    @Override
+    public String toString() {
+        return "{memoryEntryCount: " + memoryCache.size() +
+               ", maximumMemoryBytes: " + maximumMemoryBytes +
+               ", diskEntryCount: " + (diskCache == null ? 0 : diskCache.size()) +
+               ", maximumDiskBytes: " + (diskCache == null ? 0 : maximumDiskBytes) +
+               ", diskDirectory: " + diskDirectory +
+               '}';
+    }
+
+    /**
+     * Removes all of the key's stack entries with a different tag if the key's tag differs from
+     * the stack's previously seen tag.
+     */
+    private void discardStaleEntries(final Key key) {
+
+        final String previousTag = stackIdToLatestTag.put(key.stackId, key.stackTag);
+
+        if ((previousTag != null) && (! previousTag.equals(key.stackTag))) {
+
+            final Set<Key> stackKeys = stackIdToKeys.get(key.stackId);
+            if (stackKeys != null) {
+
+                final List<Key> staleKeys =
+                        stackKeys.stream().filter(k -> k.isStaleVersionOf(key)).collect(Collectors.toList());
+
+                LOG.debug("discardStaleEntries: tag for {} changed from {} to {}, removing {} stale entries",
+                          key.stackId, previousTag, key.stackTag, staleKeys.size());
+
+                stackKeys.removeAll(staleKeys);
+                memoryCache.invalidateAll(staleKeys);
+                if (diskCache != null) {
+                    diskCache.invalidateAll(staleKeys);
+                }
+            }
+        }
+    }
+
+    /**
+     * Removes the specified key from the stack index once its image has been removed from all tiers.
+     */
+    private void removeIndexedKeyIfUncached(final Key key) {
+        final boolean isCached = memoryCache.asMap().containsKey(key) ||
+                                 ((diskCache != null) && diskCache.asMap().containsKey(key));
+        final Set<Key> stackKeys = stackIdToKeys.get(key.stackId);
+        if ((stackKeys != null) && (! isCached)) {
+            stackKeys.remove(key);
+        }
+    }
+
+    private void prepareDiskDirectory()
+            throws IllegalArgumentException {
+
+        if (! diskDirectory.exists()) {
+            if (! diskDirectory.mkdirs()) {
+                throw new IllegalArgumentException("failed to create " + diskDirectory);
+            }
+        }
+
+        // disk tier index is not persisted, so remove any images left over from a prior run
+        final File[] leftoverFiles = diskDirectory.listFiles((dir, name) -> name.endsWith(CACHED_FILE_SUFFIX));
+        if (leftoverFiles != null) {
+            for (final File file : leftoverFiles) {
+                deleteFile(file);
+            }
+        }
+    }
+
+    private static void deleteFile(final File file) {
+        final Path path = file.toPath();
+        try {
+            Files.deleteIfExists(path);
+        } catch (final IOException e) {
+            LOG.warn("deleteFile: failed to delete " + path, e);
+        }
+    }
+
+    /**
+     * Key that identifies a specific version of a rendered image.
+     */
+    public static class Key {
+
+        private final StackId stackId;
+        private final String stackTag;
+        private final String format;
+        private final String digest;
+
+        Key(final StackId stackId,
+            final String stackTag,
+            final String format,
+            final String parametersDigest) {
+            this.stackId = stackId;
+            this.stackTag = stackTag == null ? "" : stackTag;
+            this.format = format == null ? "" : format;
+            this.digest = Hashing.sha256().newHasher()
+                    .putString(stackId.toString(), StandardCharsets.UTF_8)
+                    .putString(this.stackTag, StandardCharsets.UTF_8)
+                    .putString(this.format, StandardCharsets.UTF_8)
+                    .putString(parametersDigest, StandardCharsets.UTF_8)
+                    .hash()
+                    .toString();
+        }
+
+        /**
+         * @return hex digest that uniquely identifies this key (used for disk tier file names).
+         */
+        public String getDigest() {
+            return digest;
+        }
+
+        private boolean isStaleVersionOf(final Key currentKey) {
+            return this.stackId.equals(currentKey.stackId) && (! this.stackTag.equals(currentKey.stackTag));
+        }
+
+        @Override
+        public String toString() {
+            return "{stackId: " + stackId + ", stackTag: '" + stackTag + "', format: '" + format +
+                   "', digest: '" + digest + "'}";
+        }
+
+        @Override
+        public boolean equals(final Object o) {
+            boolean result = true;
+            if (this != o) {
+                if (o instanceof Key) {
+                    final Key that = (Key) o;
+                    result = this.digest.equals(that.digest) &&
+                             this.stackTag.equals(that.stackTag) &&
+                             this.stackId.equals(that.stackId);
+                } else {
+                    result = false;
+                }
+            }
+            return result;
+        }
+
+        @Override
+        public int hashCode() {
+            return digest.hashCode();
+        }
+    }
+
+    private static final Logger LOG = LoggerFactory.getLogger(RenderedImageCache.class);
+
+    private static final String CACHED_FILE_SUFFIX = ".cached-image";
+}
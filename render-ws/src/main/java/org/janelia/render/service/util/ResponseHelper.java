@@ -1,10 +1,15 @@
 package org.janelia.render.service.util;
 
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
 import javax.ws.rs.core.CacheControl;
 import javax.ws.rs.core.EntityTag;
 import javax.ws.rs.core.Request;
 import javax.ws.rs.core.Response;
 import javax.ws.rs.core.StreamingOutput;
+import javax.ws.rs.core.UriInfo;
 
 import org.janelia.alignment.spec.stack.StackMetaData;
 import org.janelia.render.service.model.ObjectNotFoundException;
@@ -22,18 +27,32 @@ public class ResponseHelper {
     public static final ResponseHelper NO_CACHE_HELPER = new ResponseHelper();
 
     private final StackMetaData stackMetaData;
+    private final String requestKey;
     private Response.ResponseBuilder notModifiedBuilder;
 
     public ResponseHelper() {
         this.stackMetaData = null;
+        this.requestKey = null;
         this.notModifiedBuilder = null;
     }
 
     public ResponseHelper(final Request request,
                           final StackMetaData stackMetaData)
             throws ObjectNotFoundException {
+        this(request, stackMetaData, null);
+    }
+
+    /**
+     * @param  uriInfo  information about the request URI (used to identify server-side cached rendered images)
+     *                  or null if rendered results should not be cached server-side.
+     */
+    public ResponseHelper(final Request request,
+                          final StackMetaData stackMetaData,
+                          final UriInfo uriInfo)
+            throws ObjectNotFoundException {
 
         this.stackMetaData = stackMetaData;
+        this.requestKey = uriInfo == null ? null : buildRequestKey(uriInfo);
         final EntityTag eTag = getStackTag();
         this.notModifiedBuilder = request.evaluatePreconditions(eTag);
         if (this.notModifiedBuilder != null) {
@@ -52,6 +71,26 @@ public class ResponseHelper {
         return (notModifiedBuilder == null);
     }
 
+    /**
+     * @return true if rendered results for this response can be cached server-side
+     *         (request is identified, stack is known, and its tile specs are no longer changing).
+     */
+    public boolean isRenderedImageCacheable() {
+        return (requestKey != null) && (stackMetaData != null) && (! stackMetaData.isLoading());
+    }
+
+    /**
+     * @return request path and (normalized) query parameters that identify the rendered result for this response
+     *         (or null if the request is not identified).
+     */
+    public String getRequestKey() {
+        return requestKey;
+    }
+
+    public StackMetaData getStackMetaData() {
+        return stackMetaData;
+    }
+
     public Response getNotModifiedResponse() {
         return notModifiedBuilder.build();
     }
@@ -73,6 +112,16 @@ public class ResponseHelper {
         return builder.cacheControl(cc);
     }
 
+    /**
+     * @return key built from the request path and its decoded query parameters sorted by name,
+     *         so that equivalent requests with differently ordered or encoded parameters share the same key.
+     */
+    private static String buildRequestKey(final UriInfo uriInfo) {
+        // values for each parameter remain in request order since repeated parameter order may be significant
+        final Map<String, List<String>> sortedQueryParameters = new TreeMap<>(uriInfo.getQueryParameters());
+        return uriInfo.getRequestUri().getRawPath() + '?' + sortedQueryParameters;
+    }
+
     private static final Logger LOG = LoggerFactory.getLogger(ResponseHelper.class);
 
 }
@@ -0,0 +1,58 @@
+package org.janelia.render.service.util;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The box materialization queue to be shared across all large data web service requests.
+ *
+ * @author Eric Trautman
+ */
+public class SharedBoxMaterializationQueue {
+
+    private static BoxMaterializationQueue sharedQueue;
+    private static volatile boolean isInitialized = false;
+
+    /**
+     * @return the shared queue or null if box materialization has not been enabled
+     *         (by setting webService.maxBoxMaterializationThreads to a value greater than 0).
+     */
+    public static BoxMaterializationQueue getInstance() {
+        if (! isInitialized) {
+            setSharedQueue();
+        }
+        return sharedQueue;
+    }
+
+    private static synchronized void setSharedQueue() {
+        if (! isInitialized) {
+
+            final RenderServerProperties properties = RenderServerProperties.getProperties();
+
+            Integer numberOfThreads = properties.getInteger("webService.maxBoxMaterializationThreads");
+            if (numberOfThreads == null) {
+                numberOfThreads = DEFAULT_NUMBER_OF_THREADS;
+            }
+
+            Integer maxQueueSize = properties.getInteger("webService.maxBoxMaterializationQueueSize");
+            if ((maxQueueSize == null) || (maxQueueSize < 1)) {
+                maxQueueSize = DEFAULT_MAX_QUEUE_SIZE;
+            }
+
+            if (numberOfThreads > 0) {
+                sharedQueue = new BoxMaterializationQueue(numberOfThreads, maxQueueSize);
+                LOG.info("setSharedQueue: exit, created {}", sharedQueue);
+            } else {
+                sharedQueue = null;
+                LOG.info("setSharedQueue: exit, box materialization is disabled");
+            }
+
+            isInitialized = true;
+        }
+    }
+
+    private static final Logger LOG = LoggerFactory.getLogger(SharedBoxMaterializationQueue.class);
+
+    private static final int DEFAULT_NUMBER_OF_THREADS = 0;
+    private static final int DEFAULT_MAX_QUEUE_SIZE = 10000;
+}
@@ -0,0 +1,74 @@
+package org.janelia.render.service.util;
+
+import org.janelia.alignment.mipmap.CanvasLoadingPool;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The canvas loading pool to be shared across all render web service requests.
+ *
+ * @author Eric Trautman
+ */
+public class SharedCanvasLoadingPool {
+
+    private static CanvasLoadingPool sharedPool;
+    private static volatile boolean isInitialized = false;
+
+    /** Default maximum number of tile images prefetched concurrently across all requests. */
+    private static final int DEFAULT_PREFETCH_THREADS = 16;
+
+    /** Default maximum number of tile images prefetched concurrently for a single request. */
+    private static final int DEFAULT_PREFETCHES_PER_REQUEST = 8;
+
+    /**
+     * @return the shared pool or null if concurrent canvas loading (and therefore prefetching) has been disabled.
+     */
+    public static CanvasLoadingPool getInstance() {
+        if (! isInitialized) {
+            setSharedPool();
+        }
+        return sharedPool;
+    }
+
+    private static synchronized void setSharedPool() {
+        if (! isInitialized) {
+
+            Integer numberOfThreads =
+                    RenderServerProperties.getProperties().getInteger("webService.maxCanvasLoadingThreads");
+
+            if (numberOfThreads == null) {
+                numberOfThreads = Runtime.getRuntime().availableProcessors();
+            }
+
+            Integer numberOfPrefetchThreads =
+                    RenderServerProperties.getProperties().getInteger("webService.maxTilePrefetchThreads");
+
+            if (numberOfPrefetchThreads == null) {
+                numberOfPrefetchThreads = DEFAULT_PREFETCH_THREADS;
+            }
+
+            Integer maxPrefetchesPerRequest =
+                    RenderServerProperties.getProperties().getInteger("webService.maxTilePrefetchesPerRequest");
+
+            if ((maxPrefetchesPerRequest == null) || (maxPrefetchesPerRequest < 1)) {
+                maxPrefetchesPerRequest = Math.min(DEFAULT_PREFETCHES_PER_REQUEST,
+                                                   Math.max(1, numberOfPrefetchThreads));
+            }
+
+            // a single canvas loading thread means tiles are loaded sequentially without any pool
+            if (numberOfThreads > 1) {
+                sharedPool = new CanvasLoadingPool(numberOfThreads,
+                                                   numberOfPrefetchThreads,
+                                                   maxPrefetchesPerRequest);
+                LOG.info("setSharedPool: exit, created {}", sharedPool);
+            } else {
+                sharedPool = null;
+                LOG.info("setSharedPool: exit, concurrent canvas loading and prefetching are disabled");
+            }
+
+            isInitialized = true;
+        }
+    }
+
+    private static final Logger LOG = LoggerFactory.getLogger(SharedCanvasLoadingPool.class);
+}
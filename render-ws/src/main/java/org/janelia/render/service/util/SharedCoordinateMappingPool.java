@@ -0,0 +1,67 @@
+package org.janelia.render.service.util;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The bounded pool of threads used to map batched coordinates, shared across all coordinate web service requests.
+ * A dedicated pool is used (instead of the JVM wide common fork join pool) so that large coordinate requests
+ * cannot starve other users of the common pool.
+ *
+ * @author Eric Trautman
+ */
+public class SharedCoordinateMappingPool {
+
+    private static ExecutorService sharedPool;
+    private static volatile boolean isInitialized = false;
+
+    /**
+     * @return the shared pool or null if coordinates should be mapped on the request thread
+     *         (because webService.maxCoordinateMappingThreads has been set to 1 or less).
+     */
+    public static ExecutorService getInstance() {
+        if (! isInitialized) {
+            setSharedPool();
+        }
+        return sharedPool;
+    }
+
+    private static synchronized void setSharedPool() {
+        if (! isInitialized) {
+
+            Integer numberOfThreads =
+                    RenderServerProperties.getProperties().getInteger("webService.maxCoordinateMappingThreads");
+
+            if (numberOfThreads == null) {
+                numberOfThreads = Runtime.getRuntime().availableProcessors();
+            }
+
+            if (numberOfThreads > 1) {
+
+                final AtomicInteger threadCount = new AtomicInteger(0);
+                final ThreadFactory threadFactory = runnable -> {
+                    final Thread thread = new Thread(runnable,
+                                                     "coordinate-mapper-" + threadCount.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                };
+
+                sharedPool = Executors.newFixedThreadPool(numberOfThreads, threadFactory);
+                LOG.info("setSharedPool: exit, created pool with {} threads", numberOfThreads);
+
+            } else {
+                sharedPool = null;
+                LOG.info("setSharedPool: exit, coordinates will be mapped on request threads");
+            }
+
+            isInitialized = true;
+        }
+    }
+
+    private static final Logger LOG = LoggerFactory.getLogger(SharedCoordinateMappingPool.class);
+}
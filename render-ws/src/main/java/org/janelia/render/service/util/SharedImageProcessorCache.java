@@ -23,6 +23,15 @@ public class SharedImageProcessorCache {
     private static synchronized void setSharedCache() {
         if (sharedCache == null) {
 
+            long maxOffHeapBytes = 0;
+
+            final Integer maxOffHeapGb =
+                    RenderServerProperties.getProperties().getInteger("webService.maxImageProcessorOffHeapCacheGb");
+
+            if ((maxOffHeapGb != null) && (maxOffHeapGb > 0)) {
+                maxOffHeapBytes = maxOffHeapGb * 1_000_000_000L;
+            }
+
             long maxCachedPixels = ImageProcessorCache.DEFAULT_MAX_CACHED_PIXELS;
 
             final Integer maxGb = RenderServerProperties.getProperties().getInteger("webService.maxImageProcessorCacheGb");
@@ -30,17 +39,42 @@ public class SharedImageProcessorCache {
             if (maxGb == null) {
                 final long maxMemory = Runtime.getRuntime().maxMemory();
                 if (maxMemory < Long.MAX_VALUE) {
-                    maxCachedPixels = maxMemory / 2;
+                    // when evicted pixels are kept off-heap, the on-heap tier only needs to hold the working set,
+                    // so leave most of the heap for rendering instead of duplicating the off-heap tier
+                    if (maxOffHeapBytes > 0) {
+                        maxCachedPixels = maxMemory / OFF_HEAP_TIER_HEAP_DIVISOR;
+                    } else {
+                        maxCachedPixels = maxMemory / 2;
+                    }
                 }
             } else {
-                maxCachedPixels = maxGb * 1_000_000_000;
+                maxCachedPixels = maxGb * 1_000_000_000L;
+            }
+
+            long maxCachedMaskBytes = DEFAULT_MAX_CACHED_MASK_BYTES;
+
+            final Integer maxMaskMb =
+                    RenderServerProperties.getProperties().getInteger("webService.maxMaskCacheMb");
+
+            if (maxMaskMb != null) {
+                maxCachedMaskBytes = maxMaskMb * 1_000_000L;
             }
 
-            sharedCache = new ImageProcessorCache(maxCachedPixels, true, false);
+            sharedCache = new ImageProcessorCache(maxCachedPixels,
+                                                  true,
+                                                  false,
+                                                  maxOffHeapBytes,
+                                                  maxCachedMaskBytes);
 
             LOG.info("setSharedCache: exit, created {}", sharedCache);
         }
     }
 
+    /** Default on-heap cache is 1/8 of the heap when an off-heap tier is configured. */
+    private static final long OFF_HEAP_TIER_HEAP_DIVISOR = 8;
+
+    /** Default max number of distinct mask pixel bytes is 256MB. */
+    private static final long DEFAULT_MAX_CACHED_MASK_BYTES = 256 * 1_000_000L;
+
     private static final Logger LOG = LoggerFactory.getLogger(SharedImageProcessorCache.class);
 }
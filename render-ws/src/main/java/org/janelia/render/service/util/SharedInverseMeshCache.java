@@ -0,0 +1,42 @@
+package org.janelia.render.service.util;
+
+import org.janelia.alignment.spec.TileInverseMeshCache;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The inverse mesh cache to be shared across all coordinate mapping web service requests.
+ *
+ * @author Eric Trautman
+ */
+public class SharedInverseMeshCache {
+
+    private static TileInverseMeshCache sharedCache;
+
+    public static TileInverseMeshCache getInstance() {
+        if (sharedCache == null) {
+            setSharedCache();
+        }
+        return sharedCache;
+    }
+
+    private static synchronized void setSharedCache() {
+        if (sharedCache == null) {
+
+            long maxCachedTriangles = TileInverseMeshCache.DEFAULT_MAX_CACHED_TRIANGLES;
+
+            final Integer maxTriangles =
+                    RenderServerProperties.getProperties().getInteger("webService.maxInverseMeshCacheTriangles");
+
+            if (maxTriangles != null) {
+                maxCachedTriangles = maxTriangles;
+            }
+
+            sharedCache = new TileInverseMeshCache(maxCachedTriangles);
+
+            LOG.info("setSharedCache: exit, created {}", sharedCache);
+        }
+    }
+
+    private static final Logger LOG = LoggerFactory.getLogger(SharedInverseMeshCache.class);
+}
@@ -0,0 +1,45 @@
+package org.janelia.render.service.util;
+
+import org.janelia.render.service.dao.LayerTileBoundsCache;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The layer tile bounds (spatial index) cache to be shared across all web service requests.
+ *
+ * @author Eric Trautman
+ */
+public class SharedLayerTileBoundsCache {
+
+    private static LayerTileBoundsCache sharedCache;
+    private static volatile boolean isConfigured = false;
+
+    /**
+     * @return the shared cache or null if layer indexing has not been enabled
+     *         (by setting webService.maxLayerTileBoundsCacheTiles to a positive value).
+     */
+    public static LayerTileBoundsCache getInstance() {
+        if (! isConfigured) {
+            setSharedCache();
+        }
+        return sharedCache;
+    }
+
+    private static synchronized void setSharedCache() {
+        if (! isConfigured) {
+
+            final Integer maxTiles =
+                    RenderServerProperties.getProperties().getInteger("webService.maxLayerTileBoundsCacheTiles");
+
+            if ((maxTiles != null) && (maxTiles > 0)) {
+                sharedCache = new LayerTileBoundsCache(maxTiles);
+            }
+
+            isConfigured = true;
+
+            LOG.info("setSharedCache: exit, created {}", sharedCache);
+        }
+    }
+
+    private static final Logger LOG = LoggerFactory.getLogger(SharedLayerTileBoundsCache.class);
+}
@@ -0,0 +1,75 @@
+package org.janelia.render.service.util;
+
+import java.io.File;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The encoded image cache to be shared across all image rendering web service requests.
+ *
+ * @author Eric Trautman
+ */
+public class SharedRenderedImageCache {
+
+    private static RenderedImageCache sharedCache;
+    private static volatile boolean isConfigured = false;
+
+    /**
+     * @return the shared cache or null if caching of rendered images has been disabled
+     *         (by setting webService.maxRenderedImageCacheMb to 0).
+     */
+    public static RenderedImageCache getInstance() {
+        if (! isConfigured) {
+            setSharedCache();
+        }
+        return sharedCache;
+    }
+
+    private static synchronized void setSharedCache() {
+        if (! isConfigured) {
+
+            final RenderServerProperties properties = RenderServerProperties.getProperties();
+
+            long maximumMemoryBytes = RenderedImageCache.DEFAULT_MAX_MEMORY_BYTES;
+            final Integer maxMemoryMb = properties.getInteger("webService.maxRenderedImageCacheMb");
+            if (maxMemoryMb != null) {
+                maximumMemoryBytes = maxMemoryMb * ONE_MEGABYTE;
+            }
+
+            if (maximumMemoryBytes > 0) {
+
+                File diskDirectory = null;
+                long maximumDiskBytes = 0;
+
+                final String diskDirectoryPath = properties.get("webService.renderedImageCacheDirectory");
+                if ((diskDirectoryPath != null) && (diskDirectoryPath.trim().length() > 0)) {
+                    diskDirectory = new File(diskDirectoryPath.trim());
+                    maximumDiskBytes = DEFAULT_MAX_DISK_GB * ONE_GIGABYTE;
+                    final Integer maxDiskGb = properties.getInteger("webService.maxRenderedImageCacheDiskGb");
+                    if (maxDiskGb != null) {
+                        maximumDiskBytes = maxDiskGb * ONE_GIGABYTE;
+                    }
+                }
+
+                try {
+                    sharedCache = new RenderedImageCache(maximumMemoryBytes, diskDirectory, maximumDiskBytes);
+                } catch (final IllegalArgumentException e) {
+                    LOG.warn("setSharedCache: failed to create disk tier, caching images in memory only", e);
+                    sharedCache = new RenderedImageCache(maximumMemoryBytes);
+                }
+
+            }
+
+            isConfigured = true;
+
+            LOG.info("setSharedCache: exit, created {}", sharedCache);
+        }
+    }
+
+    private static final Logger LOG = LoggerFactory.getLogger(SharedRenderedImageCache.class);
+
+    private static final long ONE_MEGABYTE = 1024L * 1024L;
+    private static final long ONE_GIGABYTE = 1024L * ONE_MEGABYTE;
+    private static final long DEFAULT_MAX_DISK_GB = 10;
+}
@@ -42,6 +42,21 @@ VIEW_MATCH_COLLECTION=$(stripQuotes ${VIEW_MATCH_COLLECTION})
 
 WEB_SERVICE_MAX_TILE_SPECS_TO_RENDER=$(stripQuotes ${WEB_SERVICE_MAX_TILE_SPECS_TO_RENDER})
 WEB_SERVICE_MAX_IMAGE_PROCESSOR_GB=$(stripQuotes ${WEB_SERVICE_MAX_IMAGE_PROCESSOR_GB})
+WEB_SERVICE_MAX_IMAGE_PROCESSOR_OFF_HEAP_GB=$(stripQuotes ${WEB_SERVICE_MAX_IMAGE_PROCESSOR_OFF_HEAP_GB})
+WEB_SERVICE_MAX_MASK_CACHE_MB=$(stripQuotes ${WEB_SERVICE_MAX_MASK_CACHE_MB})
+WEB_SERVICE_MAX_CANVAS_LOADING_THREADS=$(stripQuotes ${WEB_SERVICE_MAX_CANVAS_LOADING_THREADS})
+WEB_SERVICE_MAX_TILE_PREFETCH_THREADS=$(stripQuotes ${WEB_SERVICE_MAX_TILE_PREFETCH_THREADS})
+WEB_SERVICE_MAX_TILE_PREFETCHES_PER_REQUEST=$(stripQuotes ${WEB_SERVICE_MAX_TILE_PREFETCHES_PER_REQUEST})
+WEB_SERVICE_MAX_MAPPING_THREADS_PER_RENDER=$(stripQuotes ${WEB_SERVICE_MAX_MAPPING_THREADS_PER_RENDER})
+WEB_SERVICE_MAX_MAPPING_POOL_THREADS=$(stripQuotes ${WEB_SERVICE_MAX_MAPPING_POOL_THREADS})
+WEB_SERVICE_MAX_COORDINATE_MAPPING_THREADS=$(stripQuotes ${WEB_SERVICE_MAX_COORDINATE_MAPPING_THREADS})
+WEB_SERVICE_MAX_INVERSE_MESH_CACHE_TRIANGLES=$(stripQuotes ${WEB_SERVICE_MAX_INVERSE_MESH_CACHE_TRIANGLES})
+WEB_SERVICE_MAX_RENDERED_IMAGE_CACHE_MB=$(stripQuotes ${WEB_SERVICE_MAX_RENDERED_IMAGE_CACHE_MB})
+WEB_SERVICE_RENDERED_IMAGE_CACHE_DIRECTORY=$(stripQuotes ${WEB_SERVICE_RENDERED_IMAGE_CACHE_DIRECTORY})
+WEB_SERVICE_MAX_RENDERED_IMAGE_CACHE_DISK_GB=$(stripQuotes ${WEB_SERVICE_MAX_RENDERED_IMAGE_CACHE_DISK_GB})
+WEB_SERVICE_MAX_BOX_MATERIALIZATION_THREADS=$(stripQuotes ${WEB_SERVICE_MAX_BOX_MATERIALIZATION_THREADS})
+WEB_SERVICE_MAX_BOX_MATERIALIZATION_QUEUE_SIZE=$(stripQuotes ${WEB_SERVICE_MAX_BOX_MATERIALIZATION_QUEUE_SIZE})
+WEB_SERVICE_MAX_LAYER_TILE_BOUNDS_CACHE_TILES=$(stripQuotes ${WEB_SERVICE_MAX_LAYER_TILE_BOUNDS_CACHE_TILES})
 
 # --------------------------------------------------------------
 # Mongo config
@@ -157,4 +172,19 @@ sed -i """
   s@view.renderStackProject=.*@view.renderStackProject=${VIEW_RENDER_STACK_PROJECT}@
   s@webService.maxTileSpecsToRender=.*@webService.maxTileSpecsToRender=${WEB_SERVICE_MAX_TILE_SPECS_TO_RENDER}@
   s@webService.maxImageProcessorCacheGb=.*@webService.maxImageProcessorCacheGb=${WEB_SERVICE_MAX_IMAGE_PROCESSOR_GB}@
+  s@webService.maxImageProcessorOffHeapCacheGb=.*@webService.maxImageProcessorOffHeapCacheGb=${WEB_SERVICE_MAX_IMAGE_PROCESSOR_OFF_HEAP_GB}@
+  s@webService.maxMaskCacheMb=.*@webService.maxMaskCacheMb=${WEB_SERVICE_MAX_MASK_CACHE_MB}@
+  s@webService.maxCanvasLoadingThreads=.*@webService.maxCanvasLoadingThreads=${WEB_SERVICE_MAX_CANVAS_LOADING_THREADS}@
+  s@webService.maxTilePrefetchThreads=.*@webService.maxTilePrefetchThreads=${WEB_SERVICE_MAX_TILE_PREFETCH_THREADS}@
+  s@webService.maxTilePrefetchesPerRequest=.*@webService.maxTilePrefetchesPerRequest=${WEB_SERVICE_MAX_TILE_PREFETCHES_PER_REQUEST}@
+  s@webService.maxMappingThreadsPerRender=.*@webService.maxMappingThreadsPerRender=${WEB_SERVICE_MAX_MAPPING_THREADS_PER_RENDER}@
+  s@webService.maxMappingPoolThreads=.*@webService.maxMappingPoolThreads=${WEB_SERVICE_MAX_MAPPING_POOL_THREADS}@
+  s@webService.maxCoordinateMappingThreads=.*@webService.maxCoordinateMappingThreads=${WEB_SERVICE_MAX_COORDINATE_MAPPING_THREADS}@
+  s@webService.maxInverseMeshCacheTriangles=.*@webService.maxInverseMeshCacheTriangles=${WEB_SERVICE_MAX_INVERSE_MESH_CACHE_TRIANGLES}@
+  s@webService.maxRenderedImageCacheMb=.*@webService.maxRenderedImageCacheMb=${WEB_SERVICE_MAX_RENDERED_IMAGE_CACHE_MB}@
+  s@webService.renderedImageCacheDirectory=.*@webService.renderedImageCacheDirectory=${WEB_SERVICE_RENDERED_IMAGE_CACHE_DIRECTORY}@
+  s@webService.maxRenderedImageCacheDiskGb=.*@webService.maxRenderedImageCacheDiskGb=${WEB_SERVICE_MAX_RENDERED_IMAGE_CACHE_DISK_GB}@
+  s@webService.maxBoxMaterializationThreads=.*@webService.maxBoxMaterializationThreads=${WEB_SERVICE_MAX_BOX_MATERIALIZATION_THREADS}@
+  s@webService.maxBoxMaterializationQueueSize=.*@webService.maxBoxMaterializationQueueSize=${WEB_SERVICE_MAX_BOX_MATERIALIZATION_QUEUE_SIZE}@
+  s@webService.maxLayerTileBoundsCacheTiles=.*@webService.maxLayerTileBoundsCacheTiles=${WEB_SERVICE_MAX_LAYER_TILE_BOUNDS_CACHE_TILES}@
 """ "${JETTY_BASE}/resources/render-server.properties"
\ No newline at end of file
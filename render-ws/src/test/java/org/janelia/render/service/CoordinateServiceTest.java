@@ -1,9 +1,16 @@
 package org.janelia.render.service;
 
+import java.io.ByteArrayOutputStream;
 import java.io.File;
+import java.io.IOException;
+import java.io.StringReader;
 import java.util.ArrayList;
 import java.util.List;
 
+import javax.ws.rs.core.Response;
+import javax.ws.rs.core.StreamingOutput;
+
+import org.bson.Document;
 import org.janelia.alignment.spec.TileCoordinates;
 import org.janelia.render.service.dao.RenderDao;
 import org.janelia.alignment.spec.stack.StackId;
@@ -174,6 +181,108 @@ public class CoordinateServiceTest {
         }
     }
 
+    @Test
+    public void testBatchWorldCoordinatesWithProblemTiles() throws Exception {
+
+        final StackId problemStackId = new StackId(stackId.getOwner(), stackId.getProject(), "elastic_with_problems");
+
+        embeddedMongoDb.importCollection(problemStackId.getTileCollectionName(),
+                                         new File("src/test/resources/mongodb/elastic-3903.json"),
+                                         true,
+                                         false,
+                                         true);
+
+        embeddedMongoDb.importCollection(problemStackId.getTransformCollectionName(),
+                                         new File("src/test/resources/mongodb/elastic-transform.json"),
+                                         true,
+                                         false,
+                                         true);
+
+        // save directly to the collection since the dao will not save tiles with unresolvable references
+        final String unresolvableTileJson =
+                "{ \"tileId\": \"" + ID_FOR_TILE_WITH_MISSING_REFERENCE + "\", \"z\": 3903.0, " +
+                "  \"width\": 2560, \"height\": 2160, " +
+                "  \"transforms\": { \"type\": \"list\", " +
+                "                    \"specList\": [ { \"type\": \"ref\", \"refId\": \"missing-transform\" } ] } }";
+        embeddedMongoDb.getMongoClient()
+                .getDatabase(RenderDao.RENDER_DB_NAME)
+                .getCollection(problemStackId.getTileCollectionName())
+                .insertOne(Document.parse(unresolvableTileJson));
+
+        final String[] tileIds = {
+                ID_FOR_TILE_WITH_REAL_TRANSFORMS,
+                ID_FOR_TILE_WITH_MISSING_REFERENCE,
+                "missing-tile",
+                "252",
+                ID_FOR_TILE_WITH_REAL_TRANSFORMS
+        };
+        final boolean[] expectError = { false, true, true, false, false };
+
+        final List<TileCoordinates> localCoordinatesList = new ArrayList<>();
+        for (int i = 0; i < tileIds.length; i++) {
+            localCoordinatesList.add(TileCoordinates.buildLocalInstance(tileIds[i],
+                                                                        new double[] { 100.0 + i, 200.0 + i }));
+        }
+
+        final List<TileCoordinates> worldCoordinatesList =
+                service.getWorldCoordinates(problemStackId.getOwner(),
+                                            problemStackId.getProject(),
+                                            problemStackId.getStack(),
+                                            localCoordinatesList);
+
+        Assert.assertEquals("invalid world list size", tileIds.length, worldCoordinatesList.size());
+
+        TileCoordinates tileCoordinates;
+        for (int i = 0; i < tileIds.length; i++) {
+            tileCoordinates = worldCoordinatesList.get(i);
+            if (expectError[i]) {
+                Assert.assertTrue("world list [" + i + "] should have error", tileCoordinates.hasError());
+                Assert.assertEquals("world list [" + i + "] with error should retain tile id",
+                                    tileIds[i], tileCoordinates.getTileId());
+            } else {
+                final TileCoordinates expectedCoordinates =
+                        service.getWorldCoordinates(problemStackId.getOwner(),
+                                                    problemStackId.getProject(),
+                                                    problemStackId.getStack(),
+                                                    tileIds[i],
+                                                    100.0 + i,
+                                                    200.0 + i);
+                final double[] expectedWorld = expectedCoordinates.getWorld();
+                validateCoordinates("world list [" + i + "]",
+                                    tileCoordinates,
+                                    tileIds[i],
+                                    false,
+                                    expectedWorld[0],
+                                    expectedWorld[1],
+                                    Z);
+            }
+        }
+
+        final List<TileCoordinates> streamedCoordinatesList =
+                readWorldCoordinates(service.streamWorldCoordinates(problemStackId.getOwner(),
+                                                                    problemStackId.getProject(),
+                                                                    problemStackId.getStack(),
+                                                                    localCoordinatesList));
+
+        Assert.assertEquals("invalid streamed list size", tileIds.length, streamedCoordinatesList.size());
+
+        for (int i = 0; i < tileIds.length; i++) {
+            tileCoordinates = streamedCoordinatesList.get(i);
+            if (expectError[i]) {
+                Assert.assertTrue("streamed list [" + i + "] should have error", tileCoordinates.hasError());
+            } else {
+                final double[] expectedWorld = worldCoordinatesList.get(i).getWorld();
+                validateCoordinates("streamed list [" + i + "]",
+                                    tileCoordinates,
+                                    tileIds[i],
+                                    false,
+                                    expectedWorld[0],
+                                    expectedWorld[1],
+                                    Z);
+            }
+        }
+    }
+
     @Test
     public void testPointWithMultipleTiles() throws Exception {
 
@@ -201,6 +310,13 @@ public class CoordinateServiceTest {
                            localCoordinates.isVisible());
     }
 
+    private static List<TileCoordinates> readWorldCoordinates(final Response response)
+            throws IOException {
+        final ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        ((StreamingOutput) response.getEntity()).write(outputStream);
+        return TileCoordinates.fromJsonArray(new StringReader(outputStream.toString()));
+    }
+
     private void validateCoordinates(final String context,
                                      final TileCoordinates coordinates,
                                      final String expectedTileId,
@@ -239,6 +355,7 @@ public class CoordinateServiceTest {
     }
 
     private static final String ID_FOR_TILE_WITH_REAL_TRANSFORMS = "254-with-real-transforms";
+    private static final String ID_FOR_TILE_WITH_MISSING_REFERENCE = "255-with-missing-reference";
     private static final Double Z = 3903.0;
     private static final double ACCEPTABLE_DELTA = 0.1;
 }
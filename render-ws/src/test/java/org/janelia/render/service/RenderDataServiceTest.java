@@ -1,11 +1,14 @@
 package org.janelia.render.service;
 
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.net.URI;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.List;
 
+import javax.ws.rs.core.Response;
+import javax.ws.rs.core.StreamingOutput;
 import javax.ws.rs.core.UriInfo;
 
 import org.janelia.alignment.RenderParameters;
@@ -16,6 +19,7 @@ import org.janelia.alignment.spec.TileSpec;
 import org.janelia.alignment.spec.TransformSpec;
 import org.janelia.alignment.spec.stack.StackId;
 import org.janelia.render.service.dao.RenderDao;
+import org.janelia.render.service.model.ObjectNotFoundException;
 import org.janelia.render.service.model.RenderQueryParameters;
 import org.janelia.test.EmbeddedMongoDb;
 import org.jboss.resteasy.spi.ResteasyUriInfo;
@@ -86,6 +90,53 @@ public class RenderDataServiceTest {
         Assert.assertNotNull("null parameters returned", renderParameters);
     }
 
+    @Test
+    public void testStreamBulkRenderParameters() throws Exception {
+
+        final RenderParameters expectedParameters =
+                service.getExternalRenderParameters(alignStackId.getOwner(),
+                                                    alignStackId.getProject(),
+                                                    alignStackId.getStack(),
+                                                    99000.0,
+                                                    17000.0,
+                                                    Z,
+                                                    4000,
+                                                    200,
+                                                    0.5,
+                                                    new RenderQueryParameters());
+
+        final RenderParameters bulkParameters = getBulkRenderParameters(99000.0, 17000.0, 4000, 200);
+
+        Assert.assertEquals("invalid x", expectedParameters.getX(), bulkParameters.getX(), 0.0);
+        Assert.assertEquals("invalid width", expectedParameters.getWidth(), bulkParameters.getWidth());
+        Assert.assertEquals("invalid scale", expectedParameters.getScale(), bulkParameters.getScale(), 0.0);
+        Assert.assertEquals("invalid number of tile specs", 1, bulkParameters.getTileSpecs().size());
+
+        final TileSpec expectedTileSpec = expectedParameters.getTileSpecs().get(0);
+        final TileSpec bulkTileSpec = bulkParameters.getTileSpecs().get(0);
+        Assert.assertEquals("invalid tile streamed", expectedTileSpec.getTileId(), bulkTileSpec.getTileId());
+        Assert.assertEquals("invalid number of flattened transforms streamed",
+                            expectedTileSpec.getTransforms().size(), bulkTileSpec.getTransforms().size());
+
+        final RenderParameters emptyParameters = getBulkRenderParameters(200000.0, 17000.0, 4000, 200);
+        Assert.assertFalse("tiles should not be found outside of layer", emptyParameters.hasTileSpecs());
+    }
+
+    @Test(expected = ObjectNotFoundException.class)
+    public void testStreamBulkRenderParametersForMissingStack() throws Exception {
+        service.streamBulkRenderParameters(alignStackId.getOwner(),
+                                           alignStackId.getProject(),
+                                           "missingStack",
+                                           99000.0,
+                                           17000.0,
+                                           Z,
+                                           4000,
+                                           200,
+                                           0.5,
+                                           new RenderQueryParameters(),
+                                           null);
+    }
+
     @Test
     public void testGetAndSaveResolvedTiles() throws Exception {
 
@@ -170,6 +221,32 @@ public class RenderDataServiceTest {
                             LeafTransformSpec.class, firstEntry.getLastTransform().getClass());
     }
 
+    private RenderParameters getBulkRenderParameters(final Double x,
+                                                     final Double y,
+                                                     final Integer width,
+                                                     final Integer height)
+            throws Exception {
+
+        final Response response = service.streamBulkRenderParameters(alignStackId.getOwner(),
+                                                                     alignStackId.getProject(),
+                                                                     alignStackId.getStack(),
+                                                                     x,
+                                                                     y,
+                                                                     Z,
+                                                                     width,
+                                                                     height,
+                                                                     0.5,
+                                                                     new RenderQueryParameters(),
+                                                                     null);
+
+        Assert.assertEquals("invalid response status", 200, response.getStatus());
+
+        final ByteArrayOutputStream outputStream = new ByteArrayOutputStream(1024);
+        ((StreamingOutput) response.getEntity()).write(outputStream);
+
+        return RenderParameters.parseJson(outputStream.toString());
+    }
+
     private void validateResolvedTiles(final String context,
                                        final ResolvedTileSpecCollection resolvedTiles,
                                        final int expectedNumberOfTileSpecs,
@@ -0,0 +1,50 @@
+package org.janelia.render.service.dao;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.janelia.alignment.spec.TileBounds;
+import org.janelia.alignment.spec.stack.StackId;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Tests the {@link LayerTileBoundsCache} class.
+ *
+ * @author Eric Trautman
+ */
+public class LayerTileBoundsCacheTest {
+
+    @Test
+    public void testLargeLayerIsRetained() throws Exception {
+
+        final int maximumTiles = 100;
+        final LayerTileBoundsCache cache = new LayerTileBoundsCache(maximumTiles);
+        final StackId stackId = new StackId("testOwner", "testProject", "testStack");
+
+        // layer with most (but not all) of the cache's tile budget
+        final int tileCount = maximumTiles - 10;
+        final double z = 1.0;
+
+        for (int i = 0; i < 3; i++) {
+            final List<String> tileIds = cache.getTileIdsInBox(stackId, "v1", z, 0, 0, 15, 5,
+                                                               () -> buildLayer(z, tileCount));
+            Assert.assertEquals("invalid tile ids found for query " + i, 2, tileIds.size());
+        }
+
+        Assert.assertEquals("layer should be cached", 1, cache.size());
+        Assert.assertEquals("layer should only be loaded once", 1, cache.getStats().missCount());
+        Assert.assertEquals("layer should not be evicted", 0, cache.getStats().evictionCount());
+    }
+
+    private static List<TileBounds> buildLayer(final double z,
+                                               final int tileCount) {
+        final List<TileBounds> layer = new ArrayList<>(tileCount);
+        for (int i = 0; i < tileCount; i++) {
+            final double minX = i * 10.0;
+            layer.add(new TileBounds("tile_" + i, String.valueOf(z), z, minX, 0.0, minX + 9.0, 9.0));
+        }
+        return layer;
+    }
+
+}
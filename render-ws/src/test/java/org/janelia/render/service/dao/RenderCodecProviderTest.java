@@ -0,0 +1,141 @@
+package org.janelia.render.service.dao;
+
+import org.bson.BsonDocument;
+import org.bson.BsonDocumentReader;
+import org.bson.BsonDocumentWriter;
+import org.bson.codecs.Codec;
+import org.bson.codecs.DecoderContext;
+import org.bson.codecs.EncoderContext;
+import org.janelia.alignment.match.CanvasMatches;
+import org.janelia.alignment.match.ConsensusSetData;
+import org.janelia.alignment.match.Matches;
+import org.janelia.alignment.spec.LeafTransformSpec;
+import org.janelia.alignment.spec.TileSpec;
+import org.janelia.alignment.spec.TransformSpec;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Tests the {@link RenderCodecProvider} codecs.
+ *
+ * @author Eric Trautman
+ */
+public class RenderCodecProviderTest {
+
+    @Test
+    public void testTileSpecCodec() throws Exception {
+
+        final TileSpec tileSpec = TileSpec.fromJson(TILE_SPEC_JSON);
+        final Codec<TileSpec> codec = SharedMongoClient.CODEC_REGISTRY.get(TileSpec.class);
+
+        final BsonDocument encoded = encode(codec, tileSpec);
+
+        // stored documents must be the same as they were when specs were parsed from JSON
+        Assert.assertEquals("invalid encoded document", BsonDocument.parse(tileSpec.toJson()), encoded);
+
+        encoded.put("_id", new BsonDocument());
+        final TileSpec decoded = codec.decode(new BsonDocumentReader(encoded), DecoderContext.builder().build());
+
+        Assert.assertEquals("invalid decoded tile spec", tileSpec.toJson(), decoded.toJson());
+    }
+
+    @Test
+    public void testTransformSpecCodec() throws Exception {
+
+        final LeafTransformSpec leafSpec = new LeafTransformSpec("1", null, AFFINE_2D, "1  0  0  1  0  0");
+        final Codec<TransformSpec> codec = SharedMongoClient.CODEC_REGISTRY.get(TransformSpec.class);
+
+        final BsonDocument encoded = encode(codec, leafSpec);
+
+        Assert.assertEquals("invalid encoded document", BsonDocument.parse(leafSpec.toJson()), encoded);
+
+        final TransformSpec decoded = codec.decode(new BsonDocumentReader(encoded), DecoderContext.builder().build());
+
+        Assert.assertTrue("invalid decoded class " + decoded.getClass(), decoded instanceof LeafTransformSpec);
+        Assert.assertEquals("invalid decoded transform spec", leafSpec.toJson(), decoded.toJson());
+    }
+
+    @Test
+    public void testCanvasMatchesCodec() throws Exception {
+
+        final Matches matches = new Matches(new double[][] {{1.1, 2.2, 3.3}, {4.4, 5.5, 6.6}},
+                                            new double[][] {{11.1, 12.2, 13.3}, {14.4, 15.5, 16.6}},
+                                            new double[] {1.0, 0.5, 0.25});
+        final CanvasMatches canvasMatches = new CanvasMatches("section1", "tile1", "section2", "tile2", matches);
+        canvasMatches.setConsensusSetData(new ConsensusSetData(1, "tile1", "tile2"));
+
+        final Codec<CanvasMatches> codec = SharedMongoClient.CODEC_REGISTRY.get(CanvasMatches.class);
+
+        final BsonDocument encoded = encode(codec, canvasMatches);
+
+        Assert.assertEquals("invalid encoded document", BsonDocument.parse(canvasMatches.toJson()), encoded);
+
+        final CanvasMatches decoded = codec.decode(new BsonDocumentReader(encoded), DecoderContext.builder().build());
+
+        Assert.assertEquals("invalid decoded matches", canvasMatches.toJson(), decoded.toJson());
+
+        // documents saved from JSON with whole numbers contain integer values
+        final String integralJson =
+                "{ \"_id\": { \"$oid\": \"5735f1fd2a4b1a3a7e2c1e3f\" }, " +
+                "\"pGroupId\": \"section1\", \"pId\": \"tile1\", \"qGroupId\": \"section2\", \"qId\": \"tile2\", " +
+                "\"matches\": { \"p\": [[1, 2], [3, 4]], \"q\": [[5, 6], [7, 8]], \"w\": [1, 1] } }";
+
+        final CanvasMatches decodedIntegral =
+                codec.decode(new BsonDocumentReader(BsonDocument.parse(integralJson)), DecoderContext.builder().build());
+
+        Assert.assertEquals("invalid number of matches decoded", 2, decodedIntegral.size());
+        Assert.assertEquals("invalid q value decoded", 8.0, decodedIntegral.getMatches().getQs()[1][1], 0.0);
+    }
+
+    @Test
+    public void testCanvasMatchesCodecDoesNotNormalize() throws Exception {
+
+        final Codec<CanvasMatches> codec = SharedMongoClient.CODEC_REGISTRY.get(CanvasMatches.class);
+
+        // stored documents are not necessarily normalized, so they must be decoded as is
+        final String reversedJson =
+                "{ \"pGroupId\": \"section2\", \"pId\": \"tile2\", \"qGroupId\": \"section1\", \"qId\": \"tile1\", " +
+                "\"matches\": { \"p\": [[1.0], [2.0]], \"q\": [[3.0], [4.0]], \"w\": [1.0] } }";
+
+        final CanvasMatches decodedReversed =
+                codec.decode(new BsonDocumentReader(BsonDocument.parse(reversedJson)), DecoderContext.builder().build());
+
+        Assert.assertEquals("invalid pGroupId decoded", "section2", decodedReversed.getpGroupId());
+        Assert.assertEquals("invalid qId decoded", "tile1", decodedReversed.getqId());
+        Assert.assertEquals("invalid p value decoded", 1.0, decodedReversed.getMatches().getPs()[0][0], 0.0);
+
+        final String missingIdJson =
+                "{ \"pGroupId\": \"section1\", \"qGroupId\": \"section2\", \"qId\": \"tile2\" }";
+
+        final CanvasMatches decodedMissingId =
+                codec.decode(new BsonDocumentReader(BsonDocument.parse(missingIdJson)), DecoderContext.builder().build());
+
+        Assert.assertNull("pId should not be decoded", decodedMissingId.getpId());
+    }
+
+    private static <T> BsonDocument encode(final Codec<T> codec,
+                                           final T value) {
+        final BsonDocument document = new BsonDocument();
+        codec.encode(new BsonDocumentWriter(document), value, EncoderContext.builder().build());
+        return document;
+    }
+
+    private static final String AFFINE_2D = "mpicbg.trakem2.transform.AffineModel2D";
+
+    private static final String TILE_SPEC_JSON =
+            "{\n" +
+            "  \"tileId\": \"tile1\",\n" +
+            "  \"layout\": { \"sectionId\": \"1.0\", \"imageRow\": 1, \"imageCol\": 2 },\n" +
+            "  \"z\": 1.0, \"minX\": 0.0, \"minY\": 0.0, \"maxX\": 2650.0, \"maxY\": 2260.0,\n" +
+            "  \"width\": 2650.0, \"height\": 2260.0,\n" +
+            "  \"mipmapLevels\": { \"0\": { \"imageUrl\": \"file:///tmp/tile1.png\" } },\n" +
+            "  \"transforms\": {\n" +
+            "    \"type\": \"list\",\n" +
+            "    \"specList\": [\n" +
+            "      { \"type\": \"leaf\", \"className\": \"" + AFFINE_2D + "\", \"dataString\": \"1 0 0 1 0 0\" },\n" +
+            "      { \"type\": \"ref\", \"refId\": \"align\" }\n" +
+            "    ]\n" +
+            "  },\n" +
+            "  \"meshCellSize\": 64.0\n" +
+            "}";
+}
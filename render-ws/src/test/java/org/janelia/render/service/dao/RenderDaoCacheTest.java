@@ -0,0 +1,213 @@
+package org.janelia.render.service.dao;
+
+import java.io.File;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import mpicbg.trakem2.transform.AffineModel2D;
+
+import org.janelia.alignment.spec.LeafTransformSpec;
+import org.janelia.alignment.spec.ListTransformSpec;
+import org.janelia.alignment.spec.TileSpec;
+import org.janelia.alignment.spec.stack.StackId;
+import org.janelia.alignment.spec.stack.StackMetaData;
+import org.janelia.test.EmbeddedMongoDb;
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import static org.janelia.alignment.spec.stack.StackMetaData.StackState.LOADING;
+
+/**
+ * Tests the {@link RenderDao} stack meta data, transform spec, and layer tile bounds caches.
+ * The embedded database is rebuilt for each test, so these tests take longer to run.
+ *
+ * @author Eric Trautman
+ */
+public class RenderDaoCacheTest {
+
+    private static StackId stackId;
+    private static EmbeddedMongoDb embeddedMongoDb;
+    private static RenderDao dao;
+
+    @BeforeClass
+    public static void before() throws Exception {
+        stackId = new StackId("flyTEM", "test", "elastic");
+        embeddedMongoDb = new EmbeddedMongoDb(RenderDao.RENDER_DB_NAME);
+        dao = new RenderDao(embeddedMongoDb.getMongoClient(),
+                            new TransformSpecCache(),
+                            new StackMetaDataCache(),
+                            null);
+    }
+
+    @Before
+    public void setUp() throws Exception {
+        embeddedMongoDb.importCollection(RenderDao.STACK_META_DATA_COLLECTION_NAME,
+                                         new File("src/test/resources/mongodb/admin__stack_meta_data.json"),
+                                         true,
+                                         false,
+                                         true);
+
+        embeddedMongoDb.importCollection(stackId.getTileCollectionName(),
+                                         new File("src/test/resources/mongodb/elastic-3903.json"),
+                                         true,
+                                         false,
+                                         true);
+
+        embeddedMongoDb.importCollection(stackId.getTransformCollectionName(),
+                                         new File("src/test/resources/mongodb/elastic-transform.json"),
+                                         true,
+                                         false,
+                                         true);
+
+        // collections are re-imported directly (bypassing the dao), so cached data must be dropped
+        dao.getTransformSpecCache().invalidateAll();
+        dao.getStackMetaDataCache().invalidateAll();
+    }
+
+    @AfterClass
+    public static void after() throws Exception {
+        embeddedMongoDb.stop();
+    }
+
+    @Test
+    public void testStackMetaDataCache() throws Exception {
+
+        final StackMetaDataCache cache = dao.getStackMetaDataCache();
+
+        final StackMetaData stackMetaData = dao.getCachedStackMetaData(stackId);
+        Assert.assertNotNull("null stackMetaData retrieved", stackMetaData);
+        Assert.assertEquals("meta data should be cached after retrieval", 1, cache.size());
+
+        long hitCount = cache.getStats().hitCount();
+        final StackMetaData cachedStackMetaData = dao.getCachedStackMetaData(stackId);
+        Assert.assertEquals("second retrieval should be served from cache",
+                            hitCount + 1, cache.getStats().hitCount());
+        Assert.assertNotSame("cache should return distinct instances", stackMetaData, cachedStackMetaData);
+
+        hitCount = cache.getStats().hitCount();
+        dao.getStackMetaData(stackId);
+        Assert.assertEquals("uncached retrieval should not use cache",
+                            hitCount, cache.getStats().hitCount());
+
+        cachedStackMetaData.setState(LOADING);
+        dao.saveStackMetaData(cachedStackMetaData);
+        Assert.assertEquals("cache should be invalidated after save", 0, cache.size());
+
+        final StackMetaData updatedStackMetaData = dao.getCachedStackMetaData(stackId);
+        Assert.assertEquals("invalid state retrieved after update", LOADING, updatedStackMetaData.getState());
+
+        // simulate a state change made by another server (bypassing this server's cache)
+        cache.put(stackMetaData);
+        Assert.assertEquals("uncached retrieval should return current state",
+                            LOADING, dao.getStackMetaData(stackId).getState());
+
+        dao.removeStack(stackId, true);
+        Assert.assertNull("stackMetaData should be missing after removal", dao.getStackMetaData(stackId));
+        Assert.assertNull("cached stackMetaData should be missing after removal", dao.getCachedStackMetaData(stackId));
+    }
+
+    @Test
+    public void testRepeatedBoxQueryUsesCachedStackMetaData() throws Exception {
+
+        // every database read of existing stack meta data is added to the cache
+        final AtomicInteger stackMetaDataReadCount = new AtomicInteger(0);
+        final StackMetaDataCache countingStackMetaDataCache = new StackMetaDataCache() {
+            @Override
+            public void put(final StackMetaData stackMetaData) {
+                stackMetaDataReadCount.incrementAndGet();
+                super.put(stackMetaData);
+            }
+        };
+
+        final LayerTileBoundsCache layerTileBoundsCache = new LayerTileBoundsCache(1000);
+        final RenderDao indexedDao = new RenderDao(embeddedMongoDb.getMongoClient(),
+                                                   new TransformSpecCache(),
+                                                   countingStackMetaDataCache,
+                                                   layerTileBoundsCache);
+
+        final Double x = 1000.0;
+        final Double y = 3000.0;
+        final Double z = 3903.0;
+        final Integer width = 5000;
+        final Integer height = 2000;
+
+        indexedDao.getParameters(stackId, null, x, y, z, width, height, 1.0);
+        Assert.assertEquals("stack meta data should be read once for first box query",
+                            1, stackMetaDataReadCount.get());
+        Assert.assertEquals("layer should be indexed by first box query", 1, layerTileBoundsCache.size());
+
+        final long indexHitCount = layerTileBoundsCache.getStats().hitCount();
+
+        indexedDao.getParameters(stackId, null, x, y, z, width, height, 1.0);
+        indexedDao.getTileCount(stackId, x, y, z, width, height);
+        Assert.assertEquals("repeated box queries should not read stack meta data again",
+                            1, stackMetaDataReadCount.get());
+        Assert.assertEquals("repeated box queries should use layer index",
+                            indexHitCount + 2, layerTileBoundsCache.getStats().hitCount());
+    }
+
+    @Test
+    public void testTransformSpecCache() throws Exception {
+
+        final TransformSpecCache cache = dao.getTransformSpecCache();
+        Assert.assertEquals("cache should be empty before tile retrieval", 0, cache.size());
+
+        final TileSpec tileSpec = dao.getTileSpec(stackId, "134", true);
+        Assert.assertTrue("tile transforms should be resolved", tileSpec.getTransforms().isFullyResolved());
+        Assert.assertEquals("referenced transform should be cached", 1, cache.size());
+
+        final long missCount = cache.getStats().missCount();
+        dao.getTileSpec(stackId, "134", true);
+        Assert.assertEquals("second retrieval should be served from cache", missCount, cache.getStats().missCount());
+
+        final LeafTransformSpec updatedSpec = new LeafTransformSpec("1",
+                                                                    null,
+                                                                    AffineModel2D.class.getName(),
+                                                                    "2  0  0  2  0  0");
+        dao.saveTransformSpec(stackId, updatedSpec);
+        Assert.assertEquals("cache should be invalidated after transform save", 0, cache.size());
+
+        final TileSpec updatedTileSpec = dao.getTileSpec(stackId, "134", true);
+        final ListTransformSpec flattenedTransforms = new ListTransformSpec();
+        updatedTileSpec.getTransforms().flatten(flattenedTransforms);
+        Assert.assertEquals("updated transform should be retrieved after invalidation",
+                            updatedSpec.getDataString(),
+                            ((LeafTransformSpec) flattenedTransforms.getSpec(0)).getDataString());
+    }
+
+
+    @Test
+    public void testTransformSpecCacheWithChangesFromAnotherServer() throws Exception {
+
+        final TransformSpecCache cache = dao.getTransformSpecCache();
+
+        dao.getTileSpec(stackId, "134", true);
+        Assert.assertEquals("referenced transform should be cached", 1, cache.size());
+        Assert.assertNotNull("stack meta data should be cached", dao.getStackMetaDataCache().get(stackId));
+
+        // another server (with its own caches) reopens the stack and changes the referenced transform
+        final RenderDao otherServerDao = new RenderDao(embeddedMongoDb.getMongoClient());
+        final StackMetaData loadingStackMetaData = otherServerDao.getStackMetaData(stackId);
+        loadingStackMetaData.setState(LOADING);
+        otherServerDao.saveStackMetaData(loadingStackMetaData);
+
+        final LeafTransformSpec updatedSpec = new LeafTransformSpec("1",
+                                                                    null,
+                                                                    AffineModel2D.class.getName(),
+                                                                    "3  0  0  3  0  0");
+        otherServerDao.saveTransformSpec(stackId, updatedSpec);
+
+        // simulate expiration of this server's cached meta data
+        dao.getStackMetaDataCache().invalidate(stackId);
+
+        final TileSpec updatedTileSpec = dao.getTileSpec(stackId, "134", true);
+        final ListTransformSpec flattenedTransforms = new ListTransformSpec();
+        updatedTileSpec.getTransforms().flatten(flattenedTransforms);
+        Assert.assertEquals("transform changed by another server should be retrieved once cached meta data expires",
+                            updatedSpec.getDataString(),
+                            ((LeafTransformSpec) flattenedTransforms.getSpec(0)).getDataString());
+    }
+
+}
@@ -3,9 +3,14 @@ package org.janelia.render.service.dao;
 import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
 import org.janelia.alignment.RenderParameters;
+import org.janelia.alignment.json.JsonUtils;
 import org.janelia.alignment.spec.Bounds;
 import org.janelia.alignment.spec.ListTransformSpec;
 import org.janelia.alignment.spec.ReferenceTransformSpec;
@@ -276,6 +281,57 @@ public class RenderDaoReadOnlyTest {
         Assert.assertEquals("invalid number of tiles found", 2, list.size());
     }
 
+    @Test
+    public void testIndexedLayerQueries() throws Exception {
+
+        final LayerTileBoundsCache layerTileBoundsCache = new LayerTileBoundsCache(1000);
+        final RenderDao indexedDao = new RenderDao(embeddedMongoDb.getMongoClient(),
+                                                   new TransformSpecCache(),
+                                                   new StackMetaDataCache(),
+                                                   layerTileBoundsCache);
+
+        final Double x = 1000.0;
+        final Double y = 3000.0;
+        final Double z = 3903.0;
+        final Integer width = 5000;
+        final Integer height = 2000;
+
+        final RenderParameters expectedParameters = dao.getParameters(stackId, null, x, y, z, width, height, 1.0);
+        final RenderParameters indexedParameters = indexedDao.getParameters(stackId, null, x, y, z, width, height, 1.0);
+
+        Assert.assertEquals("invalid tiles found with layer index",
+                            getTileIds(expectedParameters), getTileIds(indexedParameters));
+
+        Assert.assertEquals("invalid tile count found with layer index",
+                            dao.getTileCount(stackId, x, y, z, width, height),
+                            indexedDao.getTileCount(stackId, x, y, z, width, height));
+
+        final List<TileCoordinates> worldCoordinates = new ArrayList<>();
+        worldCoordinates.add(TileCoordinates.buildWorldInstance(null, new double[]{1900, 3000}));
+        worldCoordinates.add(TileCoordinates.buildWorldInstance(null, new double[]{3700, 3000}));
+        worldCoordinates.add(TileCoordinates.buildWorldInstance(null, new double[]{-500, 3000}));
+
+        final ByteArrayOutputStream expectedStream = new ByteArrayOutputStream(1024);
+        dao.writeCoordinatesWithTileIds(stackId, z, worldCoordinates, expectedStream);
+
+        final ByteArrayOutputStream indexedStream = new ByteArrayOutputStream(1024);
+        indexedDao.writeCoordinatesWithTileIds(stackId, z, worldCoordinates, indexedStream);
+
+        Assert.assertEquals("invalid coordinates written with layer index",
+                            expectedStream.toString(), indexedStream.toString());
+
+        Assert.assertEquals("invalid number of indexed layers", 1, layerTileBoundsCache.size());
+        Assert.assertEquals("layer should only be loaded once", 1, layerTileBoundsCache.getStats().missCount());
+    }
+
+    private static List<String> getTileIds(final RenderParameters parameters) {
+        final List<String> tileIds = new ArrayList<>();
+        for (final TileSpec tileSpec : parameters.getTileSpecs()) {
+            tileIds.add(tileSpec.getTileId());
+        }
+        return tileIds;
+    }
+
     @Test
     public void testWriteCoordinatesWithTileIds() throws Exception {
         final Double z = 3903.0;
@@ -353,6 +409,176 @@ public class RenderDaoReadOnlyTest {
 
     }
 
+    @Test
+    public void testWriteResolvedTiles() throws Exception {
+        final Double z = 3903.0;
+
+        final ResolvedTileSpecCollection expectedTiles = dao.getResolvedTiles(stackId, z);
+
+        for (final ObjectMapper mapper : new ObjectMapper[] { JsonUtils.STREAMING_MAPPER, JsonUtils.SMILE_MAPPER }) {
+
+            final ByteArrayOutputStream outputStream = new ByteArrayOutputStream(1024);
+            try (JsonGenerator generator = mapper.getFactory().createGenerator(outputStream)) {
+                dao.writeResolvedTiles(stackId, z, dao.getReferencedTransformSpecs(stackId, z), generator);
+            }
+
+            final ResolvedTileSpecCollection streamedTiles =
+                    mapper.readValue(outputStream.toByteArray(), ResolvedTileSpecCollection.class);
+
+            Assert.assertEquals("invalid number of tiles streamed",
+                                expectedTiles.getTileCount(), streamedTiles.getTileCount());
+            Assert.assertEquals("invalid number of transforms streamed",
+                                expectedTiles.getTransformCount(), streamedTiles.getTransformCount());
+
+            for (final TileSpec tileSpec : streamedTiles.getTileSpecs()) {
+                Assert.assertTrue("streamed tile " + tileSpec.getTileId() + " should be fully resolved",
+                                  tileSpec.getTransforms().isFullyResolved());
+            }
+        }
+    }
+
+    @Test
+    public void testWriteFlattenedTileSpecs() throws Exception {
+        final Double z = 3903.0;
+
+        final ByteArrayOutputStream outputStream = new ByteArrayOutputStream(1024);
+        try (JsonGenerator generator = JsonUtils.STREAMING_MAPPER.getFactory().createGenerator(outputStream)) {
+            dao.writeFlattenedTileSpecs(stackId, z, generator);
+        }
+
+        final List<TileSpec> tileSpecs = TileSpec.fromJsonArray(outputStream.toString());
+
+        Assert.assertEquals("invalid number of tiles streamed", 12, tileSpecs.size());
+
+        TransformSpec transformSpec;
+        for (final TileSpec tileSpec : tileSpecs) {
+            final ListTransformSpec transforms = tileSpec.getTransforms();
+            for (int i = 0; i < transforms.size(); i++) {
+                transformSpec = transforms.getSpec(i);
+                Assert.assertFalse("streamed tile " + tileSpec.getTileId() + " has nested or reference transforms",
+                                   (transformSpec instanceof ListTransformSpec) ||
+                                   (transformSpec instanceof ReferenceTransformSpec));
+            }
+        }
+    }
+
+    @Test
+    public void testWriteFlattenedTileSpecsForBox() throws Exception {
+
+        final RenderDao indexedDao = new RenderDao(embeddedMongoDb.getMongoClient(),
+                                                   new TransformSpecCache(),
+                                                   new StackMetaDataCache(),
+                                                   new LayerTileBoundsCache(1000));
+
+        final Double x = 1000.0;
+        final Double y = 3000.0;
+        final Double z = 3903.0;
+        final Integer width = 5000;
+        final Integer height = 2000;
+
+        final List<String> expectedTileIds = getTileIds(dao.getParameters(stackId, null, x, y, z, width, height, 1.0));
+
+        for (final RenderDao boxDao : new RenderDao[] { dao, indexedDao }) {
+
+            final List<TileSpec> tileSpecs = writeFlattenedTileSpecsForBox(boxDao, x, y, z, width, height);
+
+            final List<String> streamedTileIds = new ArrayList<>();
+            for (final TileSpec tileSpec : tileSpecs) {
+                streamedTileIds.add(tileSpec.getTileId());
+                for (int i = 0; i < tileSpec.getTransforms().size(); i++) {
+                    final TransformSpec transformSpec = tileSpec.getTransforms().getSpec(i);
+                    Assert.assertFalse("streamed tile " + tileSpec.getTileId() + " has nested or reference transforms",
+                                       (transformSpec instanceof ListTransformSpec) ||
+                                       (transformSpec instanceof ReferenceTransformSpec));
+                }
+            }
+
+            Assert.assertEquals("invalid tiles streamed for box", expectedTileIds, streamedTileIds);
+
+            // box with left edge on the max x and bottom edge on the min y of tile 252
+            Assert.assertEquals("tile touching box edges should be streamed",
+                                Collections.singletonList("252"),
+                                getTileIds(writeFlattenedTileSpecsForBox(boxDao, 9639.0, 1669.0, z, 100, 100)));
+
+            // same box shifted just past tile 252
+            Assert.assertEquals("tiles should not be streamed for box past layer edge",
+                                0, writeFlattenedTileSpecsForBox(boxDao, 9640.0, 1668.0, z, 100, 100).size());
+        }
+    }
+
+    @Test
+    public void testValidateBoxTileCount() throws Exception {
+
+        final Double x = 1000.0;
+        final Double y = 3000.0;
+        final Double z = 3903.0;
+        final Integer width = 5000;
+        final Integer height = 2000;
+
+        final int boxTileCount = (int) dao.getTileCount(stackId, x, y, z, width, height);
+
+        final RenderDao limitedDao = new RenderDao(embeddedMongoDb.getMongoClient());
+        final RenderDao limitedIndexedDao = new RenderDao(embeddedMongoDb.getMongoClient(),
+                                                          new TransformSpecCache(),
+                                                          new StackMetaDataCache(),
+                                                          new LayerTileBoundsCache(1000));
+
+        for (final RenderDao boxDao : new RenderDao[] { limitedDao, limitedIndexedDao }) {
+
+            boxDao.setMaxResolvedTileCount(boxTileCount);
+            boxDao.validateBoxTileCount(stackId, x, y, z, width, height);
+
+            // empty box in existing stack is valid
+            boxDao.validateBoxTileCount(stackId, -9000.0, -9000.0, z, 100, 100);
+
+            boxDao.setMaxResolvedTileCount(boxTileCount - 1);
+            try {
+                boxDao.validateBoxTileCount(stackId, x, y, z, width, height);
+                Assert.fail("box with " + boxTileCount + " tiles should exceed limit of " + (boxTileCount - 1));
+            } catch (final IllegalArgumentException e) {
+                Assert.assertTrue("invalid exception message: " + e.getMessage(),
+                                  e.getMessage().startsWith("query too broad"));
+            }
+        }
+
+        try {
+            dao.validateBoxTileCount(new StackId(stackId.getOwner(), stackId.getProject(), "missingStack"),
+                                     x, y, z, width, height);
+            Assert.fail("missing stack should cause exception");
+        } catch (final ObjectNotFoundException e) {
+            LOG.debug("caught expected exception", e);
+        }
+    }
+
+    private static List<TileSpec> writeFlattenedTileSpecsForBox(final RenderDao boxDao,
+                                                                final Double x,
+                                                                final Double y,
+                                                                final Double z,
+                                                                final Integer width,
+                                                                final Integer height)
+            throws Exception {
+
+        final ByteArrayOutputStream outputStream = new ByteArrayOutputStream(1024);
+        try (JsonGenerator generator = JsonUtils.STREAMING_MAPPER.getFactory().createGenerator(outputStream)) {
+            boxDao.writeFlattenedTileSpecsForBox(stackId, x, y, z, width, height, generator);
+        }
+
+        return TileSpec.fromJsonArray(outputStream.toString());
+    }
+
+    private static List<String> getTileIds(final List<TileSpec> tileSpecs) {
+        final List<String> tileIds = new ArrayList<>();
+        for (final TileSpec tileSpec : tileSpecs) {
+            tileIds.add(tileSpec.getTileId());
+        }
+        return tileIds;
+    }
+
+    @Test(expected = ObjectNotFoundException.class)
+    public void testValidateResolvedTileCountForMissingZ() throws Exception {
+        dao.validateResolvedTileCount(stackId, 9999.0);
+    }
+
     @Test
     public void testWriteTileIds() throws Exception {
         final ByteArrayOutputStream outputStream = new ByteArrayOutputStream(1024);
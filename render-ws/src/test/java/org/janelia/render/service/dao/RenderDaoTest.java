@@ -5,9 +5,11 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Date;
 import java.util.List;
+import java.util.Map;
 
 import mpicbg.trakem2.transform.AffineModel2D;
 
+import org.bson.Document;
 import org.janelia.alignment.spec.Bounds;
 import org.janelia.alignment.spec.LayoutData;
 import org.janelia.alignment.spec.LeafTransformSpec;
@@ -394,6 +396,28 @@ public class RenderDaoTest {
         Assert.assertFalse("transformSpec should not be resolved after update", updatedSpec.isFullyResolved());
     }
 
+    @Test
+    public void testGetReferencedTransformSpecsWithMissingReference() throws Exception {
+
+        final Double z = 3903.0;
+        final Map<String, TransformSpec> referencedSpecs = dao.getReferencedTransformSpecs(stackId, z);
+        Assert.assertTrue("tiles should reference at least one transform spec", referencedSpecs.size() > 0);
+
+        final String removedSpecId = referencedSpecs.keySet().iterator().next();
+        embeddedMongoDb.getMongoClient()
+                .getDatabase(RenderDao.RENDER_DB_NAME)
+                .getCollection(stackId.getTransformCollectionName())
+                .deleteOne(new Document("id", removedSpecId));
+
+        try {
+            dao.getReferencedTransformSpecs(stackId, z);
+            Assert.fail("missing transform spec " + removedSpecId + " should cause exception");
+        } catch (final IllegalStateException e) {
+            Assert.assertTrue("exception message should identify missing spec " + removedSpecId,
+                              e.getMessage().contains(removedSpecId));
+        }
+    }
+
     @Test
     public void testUpdateZForSection() throws Exception {
 
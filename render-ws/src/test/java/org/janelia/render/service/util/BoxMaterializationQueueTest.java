@@ -0,0 +1,135 @@
+package org.janelia.render.service.util;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+
+import javax.imageio.ImageIO;
+
+import org.janelia.alignment.Utils;
+import org.janelia.alignment.util.FileUtil;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests the {@link BoxMaterializationQueue} class.
+ *
+ * @author Eric Trautman
+ */
+public class BoxMaterializationQueueTest {
+
+    private File testDirectory;
+
+    @Before
+    public void setup() throws Exception {
+        final SimpleDateFormat TIMESTAMP = new SimpleDateFormat("yyyyMMddHHmmssSSS");
+        testDirectory = new File("test-box-materialization-" + TIMESTAMP.format(new Date())).getCanonicalFile();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        FileUtil.deleteRecursive(testDirectory);
+    }
+
+    @Test
+    public void testMaterialization() throws Exception {
+
+        final BoxMaterializationQueue queue = new BoxMaterializationQueue(1, 10);
+
+        final List<String> renderedNames = Collections.synchronizedList(new ArrayList<>());
+        final CountDownLatch firstBoxStarted = new CountDownLatch(1);
+        final CountDownLatch releaseFirstBox = new CountDownLatch(1);
+
+        // gray conversion for duplicate requests should never be resolved
+        final AtomicInteger duplicateGrayCheckCount = new AtomicInteger(0);
+        final BooleanSupplier duplicateConvertToGray = () -> {
+            duplicateGrayCheckCount.incrementAndGet();
+            return true;
+        };
+
+        final File fileA = new File(testDirectory, "0/1/0/0.jpg");
+        final File fileB = new File(testDirectory, "0/1/0/1.jpg");
+        final File fileC = new File(testDirectory, "0/1/1/0.jpg");
+
+        // block the only worker so that remaining requests stay queued
+        Assert.assertTrue("box A should be queued",
+                          queue.add(fileA, Utils.JPEG_FORMAT, true, () -> {
+                              firstBoxStarted.countDown();
+                              releaseFirstBox.await();
+                              renderedNames.add("A");
+                              return buildImage();
+                          }));
+
+        Assert.assertTrue("first box never started", firstBoxStarted.await(10, TimeUnit.SECONDS));
+
+        Assert.assertFalse("in progress box A should not be queued again",
+                           queue.add(fileA, Utils.JPEG_FORMAT, duplicateConvertToGray, () -> null));
+
+        Assert.assertTrue("box B should be queued",
+                          queue.add(fileB, Utils.JPEG_FORMAT, true, () -> {
+                              renderedNames.add("B");
+                              return buildImage();
+                          }));
+
+        final BoxMaterializationQueue.BoxRenderer rendererC = () -> {
+            renderedNames.add("C");
+            return buildImage();
+        };
+        Assert.assertTrue("box C should be queued", queue.add(fileC, Utils.JPEG_FORMAT, true, rendererC));
+        Assert.assertFalse("duplicate box C should not be queued",
+                           queue.add(fileC, Utils.JPEG_FORMAT, duplicateConvertToGray, rendererC));
+
+        Assert.assertEquals("invalid queue size", 2, queue.size());
+
+        releaseFirstBox.countDown();
+
+        queue.shutdown();
+        for (int i = 0; (i < 100) && (! Long.valueOf(3).equals(queue.getMetrics().get("materializedCount"))); i++) {
+            Thread.sleep(100);
+        }
+
+        Assert.assertEquals("invalid materialized count", 3L, queue.getMetrics().get("materializedCount"));
+
+        // box C was requested twice, so it should be materialized before box B
+        Assert.assertEquals("invalid materialization order", "[A, C, B]", renderedNames.toString());
+        Assert.assertEquals("gray conversion should not be resolved for duplicate requests",
+                            0, duplicateGrayCheckCount.get());
+
+        for (final File file : new File[] { fileA, fileB, fileC }) {
+            Assert.assertTrue(file + " not materialized", file.exists());
+        }
+
+        final File[] leftoverFiles = fileA.getParentFile().listFiles((dir, name) -> name.endsWith(".tmp"));
+        Assert.assertNotNull("missing box directory", leftoverFiles);
+        Assert.assertEquals("temporary files should be removed", 0, leftoverFiles.length);
+    }
+
+    @Test
+    public void testSaveColorImage() throws Exception {
+
+        final BufferedImage colorImage = new BufferedImage(10, 10, BufferedImage.TYPE_INT_ARGB);
+        colorImage.setRGB(5, 5, 0xffff0000);
+
+        final File colorFile = new File(testDirectory, "color.png");
+        BoxMaterializationQueue.saveImageAtomically(colorImage, Utils.PNG_FORMAT, false, colorFile);
+
+        final BufferedImage savedImage = ImageIO.read(colorFile);
+        Assert.assertEquals("color pixel should not be converted to gray",
+                            0xff0000, savedImage.getRGB(5, 5) & 0xffffff);
+    }
+
+    private static BufferedImage buildImage() {
+        return new BufferedImage(10, 10, BufferedImage.TYPE_INT_ARGB);
+    }
+
+}
@@ -0,0 +1,130 @@
+package org.janelia.render.service.util;
+
+import java.io.File;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Map;
+
+import org.janelia.alignment.Utils;
+import org.janelia.alignment.spec.stack.StackId;
+import org.janelia.alignment.util.FileUtil;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests the {@link RenderedImageCache} class.
+ *
+ * @author Eric Trautman
+ */
+public class RenderedImageCacheTest {
+
+    private StackId stackId;
+    private File testDirectory;
+
+    @Before
+    public void setup() throws Exception {
+        stackId = new StackId("testOwner", "testProject", "testStack");
+        final SimpleDateFormat TIMESTAMP = new SimpleDateFormat("yyyyMMddHHmmssSSS");
+        testDirectory = new File("test-rendered-image-cache-" + TIMESTAMP.format(new Date())).getCanonicalFile();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        FileUtil.deleteRecursive(testDirectory);
+    }
+
+    @Test
+    public void testKeys() throws Exception {
+
+        final RenderedImageCache.Key key = buildKey("1", 0.5, "");
+
+        Assert.assertEquals("equivalent keys should be equal", key, buildKey("1", 0.5, ""));
+        Assert.assertNotEquals("keys with different tags should differ", key, buildKey("2", 0.5, ""));
+        Assert.assertNotEquals("keys with different requests should differ", key, buildKey("1", 0.25, ""));
+        Assert.assertNotEquals("keys with different contexts should differ", key, buildKey("1", 0.5, "16bit"));
+    }
+
+    @Test
+    public void testMemoryTier() throws Exception {
+
+        final RenderedImageCache cache = new RenderedImageCache(1024 * 1024);
+
+        final RenderedImageCache.Key keyA = buildKey("1", 0.5, "");
+        final RenderedImageCache.Key keyB = buildKey("1", 0.25, "");
+
+        Assert.assertNull("image should not be cached before put", cache.get(keyA));
+
+        cache.put(keyA, new byte[60]);
+        cache.put(keyB, new byte[60]);
+        Assert.assertNotNull("image A should be cached after put", cache.get(keyA));
+        Assert.assertNotNull("image B should be cached after put", cache.get(keyB));
+
+        Map<String, Object> metrics = cache.getMetrics();
+        Assert.assertEquals("invalid hit count", 2L, metrics.get("memoryHitCount"));
+        Assert.assertEquals("invalid miss count", 1L, metrics.get("memoryMissCount"));
+
+        // a new stack tag should discard all images with the prior tag
+        Assert.assertNull("modified image should not be cached", cache.get(buildKey("2", 0.5, "")));
+
+        metrics = cache.getMetrics();
+        Assert.assertEquals("stale images should be discarded", 0L, metrics.get("memoryEntryCount"));
+    }
+
+    @Test
+    public void testTagChangeOnlyDiscardsStackEntries() throws Exception {
+
+        final RenderedImageCache cache = new RenderedImageCache(1024 * 1024);
+
+        final StackId otherStackId = new StackId("testOwner", "testProject", "otherStack");
+        final RenderedImageCache.Key otherKey =
+                RenderedImageCache.buildKey(otherStackId, "1", Utils.JPEG_FORMAT, "other-request", "");
+
+        cache.put(buildKey("1", 0.5, ""), new byte[60]);
+        cache.put(otherKey, new byte[60]);
+
+        // a new tag for one stack should not discard images for other stacks
+        cache.put(buildKey("2", 0.5, ""), new byte[60]);
+
+        Assert.assertNull("stale image should be discarded", cache.get(buildKey("1", 0.5, "")));
+        Assert.assertNotNull("image for other stack should remain cached", cache.get(otherKey));
+        Assert.assertNotNull("current image should be cached", cache.get(buildKey("2", 0.5, "")));
+        Assert.assertEquals("invalid entry count", 2L, cache.getMetrics().get("memoryEntryCount"));
+    }
+
+    @Test
+    public void testDiskTier() throws Exception {
+
+        // omit memory tier so that all images must be retrieved from disk
+        final RenderedImageCache cache = new RenderedImageCache(0, testDirectory, 1024 * 1024);
+
+        final RenderedImageCache.Key keyA = buildKey("1", 0.5, "");
+
+        final byte[] bytesA = new byte[60];
+        bytesA[0] = 11;
+
+        cache.put(keyA, bytesA);
+
+        final byte[] cachedBytesA = cache.get(keyA);
+        Assert.assertNotNull("image A should be retrieved from disk", cachedBytesA);
+        Assert.assertArrayEquals("invalid bytes retrieved from disk", bytesA, cachedBytesA);
+        Assert.assertEquals("invalid disk hit count", 1L, cache.getMetrics().get("diskHitCount"));
+
+        // a new stack tag should remove all files with the prior tag
+        Assert.assertNull("modified image should not be cached", cache.get(buildKey("2", 0.5, "")));
+
+        final File[] remainingFiles = testDirectory.listFiles();
+        Assert.assertNotNull("missing test directory", remainingFiles);
+        Assert.assertEquals("stale files should be removed", 0, remainingFiles.length);
+    }
+
+    private RenderedImageCache.Key buildKey(final String stackTag,
+                                            final double scale,
+                                            final String renderContext) {
+        final String requestKey =
+                "/render-ws/v1/owner/o/project/p/stack/s/z/1/box/0,0,100,100," + scale + "/jpeg-image";
+        return RenderedImageCache.buildKey(stackId, stackTag, Utils.JPEG_FORMAT, requestKey, renderContext);
+    }
+
+}